@@ -0,0 +1,227 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.assets;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.extern.java.Log;
+import org.dragonskulle.core.AssetBundle;
+import org.dragonskulle.renderer.Font;
+import org.dragonskulle.renderer.ShaderCache;
+import org.dragonskulle.renderer.Texture;
+
+/**
+ * Offline tool that cooks resources into an {@link AssetBundle}.
+ *
+ * @author DragonSkulle
+ *     <p>Resources are stored in forms that are the quickest to load: textures are decoded with
+ *     their full mip chain, fonts are rasterized into atlases with glyph metrics, glTF files are
+ *     converted to binary glTF with all buffers embedded, and compiled SPIR-V is taken from a
+ *     {@link ShaderCache} directory. Anything else stays on the classpath.
+ *     <p>Usage: {@code AssetCooker [-o bundle] [-s shader_cache] resource_dir...}. From the game
+ *     module, run {@code mvn exec:java -Pcook}, which writes {@code assets.bundle}. The game
+ *     mounts it on startup when {@code ASSET_BUNDLE} environment variable points to it.
+ */
+@Log
+public class AssetCooker {
+    private final AssetBundle.Builder mBuilder = new AssetBundle.Builder();
+    private int mFailures = 0;
+
+    /**
+     * Cook all supported resources in a resource directory.
+     *
+     * @param root resource directory, the one containing textures, fonts, and gltf directories.
+     * @throws IOException if listing the directory fails.
+     */
+    public void addResources(Path root) throws IOException {
+        for (Path file : listFiles(root)) {
+            String path = relativePath(root, file);
+            String lower = path.toLowerCase(Locale.ROOT);
+
+            try {
+                if (path.startsWith("textures/") && isImage(lower)) {
+                    add(path, Texture.cook(Files.readAllBytes(file)));
+                } else if (path.startsWith("fonts/")
+                        && (lower.endsWith(".ttf") || lower.endsWith(".otf"))) {
+                    add(path, Font.cook(Files.readAllBytes(file)));
+                } else if (path.startsWith("gltf/") && lower.endsWith(".gltf")) {
+                    Path dir = file.getParent();
+                    byte[] glb =
+                            GLTF.cook(
+                                    Files.readAllBytes(file),
+                                    (uri) -> {
+                                        try {
+                                            return Files.readAllBytes(dir.resolve(uri));
+                                        } catch (IOException e) {
+                                            throw new UncheckedIOException(e);
+                                        }
+                                    });
+                    add(path.substring(0, path.length() - ".gltf".length()) + ".glb", glb);
+                }
+            } catch (Exception e) {
+                log.warning("Failed to cook " + path + ": " + e);
+                mFailures++;
+            }
+        }
+    }
+
+    /**
+     * Add all compiled shaders of a shader cache directory.
+     *
+     * @param cacheDir directory of a {@link ShaderCache}.
+     * @throws IOException if reading the directory fails.
+     */
+    public void addShaderCache(Path cacheDir) throws IOException {
+        for (Path file : listFiles(cacheDir)) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(".spv")) {
+                add(ShaderCache.BUNDLE_DIRECTORY + name, Files.readAllBytes(file));
+            }
+        }
+    }
+
+    /**
+     * Write the cooked bundle.
+     *
+     * @param out path of the bundle.
+     * @throws IOException if writing fails.
+     */
+    public void write(Path out) throws IOException {
+        mBuilder.write(out);
+    }
+
+    /**
+     * Get the number of cooked resources.
+     *
+     * @return number of bundle entries.
+     */
+    public int getCookedCount() {
+        return mBuilder.size();
+    }
+
+    /**
+     * Get the number of resources that failed to cook.
+     *
+     * @return number of failures.
+     */
+    public int getFailureCount() {
+        return mFailures;
+    }
+
+    /**
+     * Add a cooked entry.
+     *
+     * @param path resource path of the entry.
+     * @param data cooked data, {@code null} if cooking failed.
+     */
+    private void add(String path, byte[] data) {
+        if (data == null) {
+            log.warning("Failed to cook " + path);
+            mFailures++;
+            return;
+        }
+
+        log.fine("Cooked " + path + " (" + data.length + " bytes)");
+        mBuilder.add(path, data);
+    }
+
+    /**
+     * List all regular files under a directory.
+     *
+     * @param root directory to walk.
+     * @return sorted list of files.
+     * @throws IOException if walking fails.
+     */
+    private static List<Path> listFiles(Path root) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return new ArrayList<>();
+        }
+
+        try (Stream<Path> stream = Files.walk(root)) {
+            return stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Get the resource path of a file, with forward slashes.
+     *
+     * @param root resource directory.
+     * @param file file within the directory.
+     * @return path relative to the resource directory.
+     */
+    private static String relativePath(Path root, Path file) {
+        return root.relativize(file).toString().replace('\\', '/');
+    }
+
+    /**
+     * Check whether a file is an image that can be decoded.
+     *
+     * @param lower lower case path of the file.
+     * @return {@code true} for supported image formats.
+     */
+    private static boolean isImage(String lower) {
+        return lower.endsWith(".png")
+                || lower.endsWith(".jpg")
+                || lower.endsWith(".jpeg")
+                || lower.endsWith(".bmp")
+                || lower.endsWith(".tga");
+    }
+
+    /**
+     * Entrypoint of the cooker.
+     *
+     * @param args command line arguments.
+     * @throws IOException if writing the bundle fails.
+     */
+    public static void main(String[] args) throws IOException {
+        Path out = Paths.get("assets.bundle");
+        List<Path> resourceDirs = new ArrayList<>();
+        List<Path> shaderCaches = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-o") && i + 1 < args.length) {
+                out = Paths.get(args[++i]);
+            } else if (args[i].equals("-s") && i + 1 < args.length) {
+                shaderCaches.add(Paths.get(args[++i]));
+            } else {
+                resourceDirs.add(Paths.get(args[i]));
+            }
+        }
+
+        if (resourceDirs.isEmpty()) {
+            System.err.println("Usage: AssetCooker [-o bundle] [-s shader_cache] resource_dir...");
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+
+        AssetCooker cooker = new AssetCooker();
+
+        for (Path dir : resourceDirs) {
+            cooker.addResources(dir);
+        }
+
+        for (Path dir : shaderCaches) {
+            cooker.addShaderCache(dir);
+        }
+
+        cooker.write(out);
+
+        log.info(
+                String.format(
+                        "Cooked %d assets into %s in %.1fs",
+                        cooker.getCookedCount(), out, (System.nanoTime() - start) * 1e-9));
+
+        if (cooker.getFailureCount() > 0) {
+            log.warning(cooker.getFailureCount() + " assets failed to cook");
+            System.exit(1);
+        }
+    }
+}
@@ -1,11 +1,17 @@
 /* (C) 2021 DragonSkulle */
 package org.dragonskulle.assets;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.lang.reflect.Field;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
 import lombok.experimental.Accessors;
 import lombok.extern.java.Log;
 import org.dragonskulle.components.Component;
@@ -17,12 +23,14 @@ import org.dragonskulle.core.ResourceManager;
 import org.dragonskulle.core.Scene;
 import org.dragonskulle.network.components.sync.ISyncVar;
 import org.dragonskulle.renderer.Mesh;
+import org.dragonskulle.renderer.MeshSimplifier;
 import org.dragonskulle.renderer.SampledTexture;
 import org.dragonskulle.renderer.Texture;
 import org.dragonskulle.renderer.TextureMapping;
 import org.dragonskulle.renderer.TextureMapping.TextureFiltering;
 import org.dragonskulle.renderer.TextureMapping.TextureWrapping;
 import org.dragonskulle.renderer.Vertex;
+import org.dragonskulle.renderer.Vertexc;
 import org.dragonskulle.renderer.components.Camera;
 import org.dragonskulle.renderer.components.Light;
 import org.dragonskulle.renderer.components.Renderable;
@@ -30,14 +38,12 @@ import org.dragonskulle.renderer.materials.IRefCountedMaterial;
 import org.dragonskulle.renderer.materials.PBRMaterial;
 import org.joml.Quaternionf;
 import org.joml.Vector2f;
-import org.joml.Vector2i;
 import org.joml.Vector3f;
-import org.joml.Vector3i;
+import org.joml.Vector3fc;
 import org.joml.Vector4f;
-import org.joml.Vector4i;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.JSONValue;
+import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 import org.lwjgl.system.NativeResource;
 
@@ -47,7 +53,9 @@ import org.lwjgl.system.NativeResource;
  * @author Aurimas Blažulionis
  *     <p>Our engine mostly follows the glTF standard, except we set up direction to be Z+, instead
  *     of Y+, which is what our engine uses. In addition, "DSKULLE_game_object" extension is
- *     utilized to store components and their properties directly on the glTF files.
+ *     utilized to store components and their properties directly on the glTF files, and
+ *     "DSKULLE_mesh_levels" extension stores levels of detail of mesh primitives, generated when
+ *     cooking.
  *     <p>Retrieving a {@link GLTF} resource is done through {@link GLTF#getResource} static method.
  *     The resulting resource should be freed when no longer used. It contains parsed {@link Scene}
  *     objects, with {@link GameObject} nodes, which have {@link Component} objects attached to
@@ -57,227 +65,190 @@ import org.lwjgl.system.NativeResource;
 @Log
 public class GLTF implements NativeResource {
 
-    /** Describes glTF buffer accessor. */
-    private static class GLTFAccessor<T> {
+    /**
+     * Describes glTF buffer accessor.
+     *
+     * <p>Elements are read with absolute reads straight from the underlying buffer, which may be
+     * memory mapped, so accessing never mutates buffer state, nor allocates.
+     */
+    private static class GLTFAccessor {
         ByteBuffer mBuffer;
         int mPosition;
         int mCount;
-        IGetObj<T> mGetObj;
-
-        /** Get a specific object at byte offset. */
-        private static interface IGetObj<T> {
-            /**
-             * Read an object from buffer.
-             *
-             * @param buffer buffer to read from.
-             * @param position position within the buffer where the array starts.
-             * @param index index of the array.
-             * @return read buffer.
-             */
-            T get(ByteBuffer buffer, int position, int index);
-        }
+        int mStride;
+        int mComponentType;
+        int mComponentSize;
+        int mComponents;
 
         /**
          * Create a glTF accessor.
          *
-         * @param buffer buffer to wrap.
-         * @param position position within the buffer.
+         * @param buffer buffer view to wrap, with little endian byte order.
+         * @param position byte offset of the first element within the buffer.
+         * @param stride byte stride between elements, 0 for tightly packed.
          * @param count number of elements in the accessor array.
-         * @param getObj interface to read elements of the array.
+         * @param componentType glTF component type.
+         * @param components number of components per element.
          */
-        public GLTFAccessor(ByteBuffer buffer, int position, int count, IGetObj<T> getObj) {
+        GLTFAccessor(
+                ByteBuffer buffer,
+                int position,
+                int stride,
+                int count,
+                int componentType,
+                int components) {
             mBuffer = buffer;
             mPosition = position;
             mCount = count;
-            mGetObj = getObj;
+            mComponentType = componentType;
+            mComponentSize = componentSize(componentType);
+            mComponents = components;
+            mStride = stride > 0 ? stride : mComponentSize * components;
         }
 
         /**
-         * Access an object at index.
+         * Get the size of a glTF component type.
          *
-         * @param index array index to read.
-         * @return object at a given index.
+         * @param componentType glTF component type.
+         * @return size of the component in bytes, 0 if the type is invalid.
          */
-        public T get(int index) {
-            if (index >= mCount || index < 0) {
-                return null;
+        private static int componentSize(int componentType) {
+            switch (componentType) {
+                case 5120: // BYTE
+                case 5121: // UNSIGNED_BYTE
+                    return 1;
+                case 5122: // SHORT
+                case 5123: // UNSIGNED_SHORT
+                    return 2;
+                case 5124: // INT
+                case 5125: // UNSIGNED_INT
+                case 5126: // FLOAT
+                    return 4;
+                default:
+                    return 0;
             }
-            return mGetObj.get(mBuffer, mPosition, index);
         }
 
         /**
-         * Get an accessor from a string type.
+         * Get the number of components of a glTF element type.
          *
          * @param type string value of the type.
-         * @param componentType type of the components within the type.
-         * @param buffer buffer to read from. Must set its position to the target array start
-         *     position.
-         * @param count number of elements within the accessor.
-         * @return a glTF accessor, if valid type is passed. {@code null} otherwise.
+         * @return number of components, 0 if the type is not supported.
          */
-        public static GLTFAccessor<?> fromStringType(
-                String type, int componentType, ByteBuffer buffer, int count) {
-
-            int position = buffer.position();
-
-            IGetObj<?> getObj = null;
-
+        private static int componentCount(String type) {
             switch (type) {
                 case "SCALAR":
-                    switch (componentType) {
-                        case 5120: // BYTE
-                        case 5121: // UNSIGNED_BYTE
-                            getObj =
-                                    (buf, pos, idx) -> {
-                                        buf.rewind();
-                                        buf.position(pos + idx);
-                                        byte ret = buf.get();
-                                        buf.rewind();
-                                        return ret;
-                                    };
-                            break;
-                        case 5122: // SHORT
-                            getObj =
-                                    (buf, pos, idx) -> {
-                                        buf.rewind();
-                                        buf.position(pos + idx * 2);
-                                        short ret = buf.getShort();
-                                        buf.rewind();
-                                        return ret;
-                                    };
-                            break;
-                        case 5123: // UNSIGNED_SHORT
-                            getObj =
-                                    (buf, pos, idx) -> {
-                                        buf.rewind();
-                                        buf.position(pos + idx * 2);
-                                        int ret = ((int) buf.getShort()) & 0xffff;
-                                        buf.rewind();
-                                        return ret;
-                                    };
-                            break;
-                        case 5124: // INT
-                        case 5125: // UNSIGNED_INT
-                            getObj =
-                                    (buf, pos, idx) -> {
-                                        buf.rewind();
-                                        buf.position(pos + idx * 4);
-                                        int ret = buf.getInt();
-                                        buf.rewind();
-                                        return ret;
-                                    };
-                            break;
-                        case 5126: // FLOAT
-                            getObj =
-                                    (buf, pos, idx) -> {
-                                        buf.rewind();
-                                        buf.position(pos + idx * 4);
-                                        float ret = buf.getFloat();
-                                        buf.rewind();
-                                        return ret;
-                                    };
-                            break;
-                        default:
-                            break;
-                    }
-                    break;
+                    return 1;
                 case "VEC2":
-                    switch (componentType) {
-                        case 5125: // UNSIGNED_INT
-                            getObj =
-                                    (buf, pos, idx) -> {
-                                        Vector2i ret = new Vector2i();
-                                        buf.rewind();
-                                        buf.position(pos + idx * 2 * 4);
-                                        ret.set(buf.getInt(), buf.getInt());
-                                        buf.rewind();
-                                        return ret;
-                                    };
-                            break;
-                        case 5126: // FLOAT
-                            getObj =
-                                    (buf, pos, idx) -> {
-                                        Vector2f ret = new Vector2f();
-                                        buf.rewind();
-                                        buf.position(pos + idx * 2 * 4);
-                                        ret.set(buf.getFloat(), buf.getFloat());
-                                        buf.rewind();
-                                        return ret;
-                                    };
-                            break;
-                        default:
-                            break;
-                    }
-                    break;
+                    return 2;
                 case "VEC3":
-                    switch (componentType) {
-                        case 5125: // UNSIGNED_INT
-                            getObj =
-                                    (buf, pos, idx) -> {
-                                        Vector3i ret = new Vector3i();
-                                        buf.rewind();
-                                        buf.position(pos + idx * 3 * 4);
-                                        ret.set(buf.getInt(), buf.getInt(), buf.getInt());
-                                        buf.rewind();
-                                        return ret;
-                                    };
-                            break;
-                        case 5126: // FLOAT
-                            getObj =
-                                    (buf, pos, idx) -> {
-                                        Vector3f ret = new Vector3f();
-                                        buf.rewind();
-                                        buf.position(pos + idx * 3 * 4);
-                                        ret.set(buf.getFloat(), buf.getFloat(), buf.getFloat());
-                                        buf.rewind();
-                                        return ret;
-                                    };
-                            break;
-                        default:
-                            break;
-                    }
-                    break;
+                    return 3;
                 case "VEC4":
-                    switch (componentType) {
-                        case 5125: // UNSIGNED_INT
-                            getObj =
-                                    (buf, pos, idx) -> {
-                                        Vector4i ret = new Vector4i();
-                                        buf.rewind();
-                                        buf.position(pos + idx * 4 * 4);
-                                        ret.set(
-                                                buf.getInt(),
-                                                buf.getInt(),
-                                                buf.getInt(),
-                                                buf.getInt());
-                                        buf.rewind();
-                                        return ret;
-                                    };
-                            break;
-                        case 5126: // FLOAT
-                            getObj =
-                                    (buf, pos, idx) -> {
-                                        Vector4f ret = new Vector4f();
-                                        buf.rewind();
-                                        buf.position(pos + idx * 4 * 4);
-                                        ret.set(
-                                                buf.getFloat(),
-                                                buf.getFloat(),
-                                                buf.getFloat(),
-                                                buf.getFloat());
-                                        buf.rewind();
-                                        return ret;
-                                    };
-                            break;
-                        default:
-                            break;
-                    }
-                    break;
+                    return 4;
                 default:
-                    break;
+                    return 0;
             }
+        }
 
-            return getObj == null ? null : new GLTFAccessor<>(buffer, position, count, getObj);
+        /**
+         * Get byte offset of a component.
+         *
+         * @param index element index.
+         * @param component component within the element.
+         * @return absolute byte offset within the buffer.
+         */
+        private int offset(int index, int component) {
+            return mPosition + index * mStride + component * mComponentSize;
+        }
+
+        /**
+         * Read a component as an integer.
+         *
+         * @param index element index.
+         * @param component component within the element.
+         * @return the value, floats are truncated.
+         */
+        int getInt(int index, int component) {
+            int off = offset(index, component);
+
+            switch (mComponentType) {
+                case 5120: // BYTE
+                    return mBuffer.get(off);
+                case 5121: // UNSIGNED_BYTE
+                    return mBuffer.get(off) & 0xff;
+                case 5122: // SHORT
+                    return mBuffer.getShort(off);
+                case 5123: // UNSIGNED_SHORT
+                    return mBuffer.getShort(off) & 0xffff;
+                case 5124: // INT
+                case 5125: // UNSIGNED_INT
+                    return mBuffer.getInt(off);
+                case 5126: // FLOAT
+                    return (int) mBuffer.getFloat(off);
+                default:
+                    return 0;
+            }
+        }
+
+        /**
+         * Read a component as a float.
+         *
+         * @param index element index.
+         * @param component component within the element.
+         * @return the value. Integers are not normalized.
+         */
+        float getFloat(int index, int component) {
+            if (mComponentType == 5126) {
+                return mBuffer.getFloat(offset(index, component));
+            }
+            return getInt(index, component);
+        }
+
+        /**
+         * Read a 2 component element.
+         *
+         * @param index element index.
+         * @param out vector to write to.
+         */
+        void get(int index, Vector2f out) {
+            out.set(getFloat(index, 0), getFloat(index, 1));
+        }
+
+        /**
+         * Read a 3 component element.
+         *
+         * @param index element index.
+         * @param out vector to write to.
+         */
+        void get(int index, Vector3f out) {
+            out.set(getFloat(index, 0), getFloat(index, 1), getFloat(index, 2));
+        }
+
+        /**
+         * Get an accessor from a string type.
+         *
+         * @param type string value of the type.
+         * @param componentType type of the components within the type.
+         * @param view buffer view to read from.
+         * @param position byte offset within the view.
+         * @param stride byte stride of the view, 0 for tightly packed.
+         * @param count number of elements within the accessor.
+         * @return a glTF accessor, if valid type is passed. {@code null} otherwise.
+         */
+        static GLTFAccessor fromStringType(
+                String type,
+                int componentType,
+                ByteBuffer view,
+                int position,
+                int stride,
+                int count) {
+            int components = componentCount(type);
+
+            if (components == 0 || componentSize(componentType) == 0) {
+                return null;
+            }
+
+            return new GLTFAccessor(view, position, stride, count, componentType, components);
         }
     }
 
@@ -301,24 +272,596 @@ public class GLTF implements NativeResource {
     private List<Camera> mCameras = new ArrayList<>();
     private List<Light> mLights = new ArrayList<>();
 
+    /** "glTF" magic at the start of binary glTF files. */
+    private static final int GLB_MAGIC = 0x46546C67;
+    /** Chunk type of the JSON chunk in binary glTF files. */
+    private static final int GLB_CHUNK_JSON = 0x4E4F534A;
+    /** Chunk type of the binary buffer chunk in binary glTF files. */
+    private static final int GLB_CHUNK_BIN = 0x004E4942;
+    /** Extension of mesh primitives, holding their levels of detail. */
+    private static final String MESH_LEVELS_EXTENSION = "DSKULLE_mesh_levels";
+
     static {
         ResourceManager.registerResource(
-                GLTF.class,
-                (args) -> String.format("gltf/%s.gltf", args.getName()),
-                (buffer, __) -> new GLTF(new String(buffer)));
+                GLTF.class, (args) -> resolvePath(args.getName()), (buffer, __) -> load(buffer));
     }
 
     /**
      * Load a GLTF resource.
      *
-     * @param name name of the glTF file. gltf subdirectory will be added, alongside the .gltf
-     *     extension.
+     * <p>Binary glTF files ({@code .glb}) take precedence over JSON ones ({@code .gltf}).
+     *
+     * @param name name of the glTF file. gltf subdirectory will be added, alongside the .glb, or
+     *     .gltf extension.
      * @return GLTF resource if successfully loaded, {@code null} otherwise
      */
     public static Resource<GLTF> getResource(String name) {
         return ResourceManager.getResource(GLTF.class, name);
     }
 
+    /**
+     * Start loading a GLTF resource in the background.
+     *
+     * <p>A later {@link #getResource} call will then only wait for the load to finish.
+     *
+     * @param name name of the glTF file, same as in {@link #getResource}.
+     */
+    public static void prefetch(String name) {
+        ResourceManager.prefetch(GLTF.class, name);
+    }
+
+    /**
+     * Resolve the path of a glTF file, preferring the binary variant.
+     *
+     * @param name name of the glTF file.
+     * @return path to the file, relative to the resources directory.
+     */
+    private static String resolvePath(String name) {
+        String glb = "gltf/" + name + ".glb";
+        return ResourceManager.resourceExists(glb) ? glb : "gltf/" + name + ".gltf";
+    }
+
+    /**
+     * Load a glTF file, either in JSON, or binary form.
+     *
+     * @param data contents of the file.
+     * @return loaded glTF.
+     * @throws ParseException when parsing JSON fails.
+     * @throws IOException when the binary container is malformed.
+     */
+    private static GLTF load(byte[] data) throws ParseException, IOException {
+        ByteBuffer header = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (data.length < 12 || header.getInt(0) != GLB_MAGIC) {
+            return new GLTF(data, 0, data.length, null);
+        }
+
+        int length = Math.min(header.getInt(8), data.length);
+        int jsonOffset = -1;
+        int jsonLength = 0;
+        ByteBuffer binChunk = null;
+
+        for (int off = 12; off + 8 <= length; ) {
+            int chunkLength = header.getInt(off);
+            int chunkType = header.getInt(off + 4);
+            int chunkStart = off + 8;
+
+            if (chunkLength < 0 || chunkStart + chunkLength > length) {
+                throw new IOException("Truncated GLB chunk");
+            }
+
+            if (chunkType == GLB_CHUNK_JSON && jsonOffset < 0) {
+                jsonOffset = chunkStart;
+                jsonLength = chunkLength;
+            } else if (chunkType == GLB_CHUNK_BIN && binChunk == null) {
+                binChunk = ByteBuffer.wrap(data, chunkStart, chunkLength).slice();
+            }
+
+            off = chunkStart + chunkLength;
+        }
+
+        if (jsonOffset < 0) {
+            throw new IOException("GLB is missing the JSON chunk");
+        }
+
+        return new GLTF(data, jsonOffset, jsonLength, binChunk);
+    }
+
+    /**
+     * Convert a JSON glTF file into a binary glTF, for storing in an asset bundle.
+     *
+     * <p>All external buffers are merged into the single binary chunk, so that the whole file loads
+     * with one read. Images are left external, since they get cooked separately. Every mesh
+     * primitive also gets its levels of detail generated by {@link MeshSimplifier#generateLevels},
+     * and appended to the binary chunk.
+     *
+     * @param data contents of the JSON glTF file.
+     * @param readBuffer reads external buffer files, given their URI.
+     * @return binary glTF data.
+     * @throws ParseException when parsing JSON fails.
+     * @throws IOException when a buffer can not be read.
+     */
+    @SuppressWarnings("unchecked")
+    public static byte[] cook(byte[] data, Function<String, byte[]> readBuffer)
+            throws ParseException, IOException {
+        if (data.length >= 4
+                && ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).getInt(0) == GLB_MAGIC) {
+            return data;
+        }
+
+        JSONObject decoded =
+                (JSONObject)
+                        new JSONParser()
+                                .parse(
+                                        new InputStreamReader(
+                                                new ByteArrayInputStream(data),
+                                                StandardCharsets.UTF_8));
+
+        JSONArray buffers = (JSONArray) decoded.get("buffers");
+        List<byte[]> bufferData = new ArrayList<>();
+        int[] bufferOffsets = new int[buffers == null ? 0 : buffers.size()];
+        int binLength = 0;
+
+        for (int i = 0; i < bufferOffsets.length; i++) {
+            String uri = (String) ((JSONObject) buffers.get(i)).get("uri");
+            byte[] buffer = uri == null ? null : readBuffer.apply(uri);
+
+            if (buffer == null) {
+                throw new IOException("Failed to read buffer " + uri);
+            }
+
+            bufferOffsets[i] = binLength;
+            bufferData.add(buffer);
+            binLength = (binLength + buffer.length + 3) & ~3;
+        }
+
+        JSONArray bufferViews = (JSONArray) decoded.get("bufferViews");
+
+        if (bufferViews != null) {
+            for (Object obj : bufferViews) {
+                JSONObject view = (JSONObject) obj;
+                int buf = parseInt(view, "buffer");
+                view.put("buffer", 0);
+                view.put("byteOffset", parseInt(view, "byteOffset", 0) + bufferOffsets[buf]);
+            }
+        }
+
+        ByteBuffer bin = ByteBuffer.allocate(binLength).order(ByteOrder.LITTLE_ENDIAN);
+
+        for (int i = 0; i < bufferData.size(); i++) {
+            bin.position(bufferOffsets[i]);
+            bin.put(bufferData.get(i));
+        }
+
+        bin.rewind();
+
+        byte[] levels = buffers == null ? new byte[0] : cookLevels(decoded, bin);
+        binLength += levels.length;
+
+        if (buffers != null) {
+            JSONObject binBuffer = new JSONObject();
+            binBuffer.put("byteLength", binLength);
+            JSONArray newBuffers = new JSONArray();
+            newBuffers.add(binBuffer);
+            decoded.put("buffers", newBuffers);
+        }
+
+        byte[] json = decoded.toJSONString().getBytes(StandardCharsets.UTF_8);
+        int jsonLength = (json.length + 3) & ~3;
+        int total = 12 + 8 + jsonLength + (binLength > 0 ? 8 + binLength : 0);
+
+        ByteBuffer out = ByteBuffer.allocate(total).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(GLB_MAGIC).putInt(2).putInt(total);
+        out.putInt(jsonLength).putInt(GLB_CHUNK_JSON).put(json);
+
+        while (out.position() % 4 != 0) {
+            out.put((byte) ' ');
+        }
+
+        if (binLength > 0) {
+            out.putInt(binLength).putInt(GLB_CHUNK_BIN);
+            out.put(bin);
+            out.put(levels);
+        }
+
+        return out.array();
+    }
+
+    /**
+     * Generate levels of detail of all mesh primitives, and store them in the {@code
+     * DSKULLE_mesh_levels} extension of each primitive.
+     *
+     * @param decoded JSON of the glTF file, with all buffers merged into one.
+     * @param bin contents of the merged buffer.
+     * @return data of the levels, to be appended to the merged buffer.
+     */
+    @SuppressWarnings("unchecked")
+    private static byte[] cookLevels(JSONObject decoded, ByteBuffer bin) {
+        JSONArray meshes = (JSONArray) decoded.get("meshes");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        if (meshes == null) {
+            return out.toByteArray();
+        }
+
+        List<ByteBuffer> bufferList = new ArrayList<>();
+        bufferList.add(bin);
+        List<GLTFAccessor> accessorList = readAccessors(decoded, bufferList);
+
+        JSONArray bufferViews = getArray(decoded, "bufferViews");
+        JSONArray accessors = getArray(decoded, "accessors");
+
+        for (Object meshObj : meshes) {
+            JSONArray primitives = (JSONArray) ((JSONObject) meshObj).get("primitives");
+
+            if (primitives == null) {
+                continue;
+            }
+
+            for (Object primitiveObj : primitives) {
+                JSONObject primitive = (JSONObject) primitiveObj;
+                Integer indices = parseInt(primitive, "indices");
+                Vertex[] vertices =
+                        readVertices((JSONObject) primitive.get("attributes"), accessorList);
+
+                if (indices == null || vertices == null) {
+                    continue;
+                }
+
+                Mesh mesh = new Mesh(vertices, readIndices(accessorList.get(indices)));
+                JSONArray levels = new JSONArray();
+                boolean simplified = false;
+
+                for (Mesh level : MeshSimplifier.generateLevels(mesh)) {
+                    if (level == null) {
+                        levels.add(null);
+                    } else {
+                        levels.add(
+                                writeLevel(
+                                        level, bin.capacity(), out, bufferViews, accessors));
+                        simplified = true;
+                    }
+                }
+
+                if (!simplified) {
+                    continue;
+                }
+
+                JSONObject extension = new JSONObject();
+                extension.put("levels", levels);
+
+                JSONObject extensions = (JSONObject) primitive.get("extensions");
+
+                if (extensions == null) {
+                    extensions = new JSONObject();
+                    primitive.put("extensions", extensions);
+                }
+
+                extensions.put(MESH_LEVELS_EXTENSION, extension);
+            }
+        }
+
+        if (out.size() > 0) {
+            JSONArray used = getArray(decoded, "extensionsUsed");
+
+            if (!used.contains(MESH_LEVELS_EXTENSION)) {
+                used.add(MESH_LEVELS_EXTENSION);
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Write a level of detail into the binary chunk, with a buffer view and accessor for each
+     * attribute.
+     *
+     * @param mesh mesh of the level.
+     * @param binOffset offset of {@code out} within the binary chunk.
+     * @param out output of the binary data.
+     * @param bufferViews JSON array of buffer views to add to.
+     * @param accessors JSON array of accessors to add to.
+     * @return JSON of the level, in the same form as a primitive.
+     */
+    @SuppressWarnings("unchecked")
+    private static JSONObject writeLevel(
+            Mesh mesh,
+            int binOffset,
+            ByteArrayOutputStream out,
+            JSONArray bufferViews,
+            JSONArray accessors) {
+        Vertexc[] vertices = mesh.getVertices();
+        int[] indices = mesh.getIndices();
+        int count = vertices.length;
+
+        ByteBuffer data =
+                ByteBuffer.allocate(count * 8 * 4 + indices.length * 4)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+
+        for (Vertexc vertex : vertices) {
+            data.putFloat(vertex.getPos().x())
+                    .putFloat(vertex.getPos().y())
+                    .putFloat(vertex.getPos().z());
+        }
+
+        for (Vertexc vertex : vertices) {
+            data.putFloat(vertex.getNormal().x())
+                    .putFloat(vertex.getNormal().y())
+                    .putFloat(vertex.getNormal().z());
+        }
+
+        for (Vertexc vertex : vertices) {
+            data.putFloat(vertex.getUv().x()).putFloat(vertex.getUv().y());
+        }
+
+        for (int index : indices) {
+            data.putInt(index);
+        }
+
+        int offset = binOffset + out.size();
+
+        JSONObject attributes = new JSONObject();
+        int position = addAccessor(bufferViews, accessors, offset, count, "VEC3", 5126);
+        JSONObject positionAccessor = (JSONObject) accessors.get(position);
+        positionAccessor.put("min", toJson(mesh.getBBMin()));
+        positionAccessor.put("max", toJson(mesh.getBBMax()));
+        attributes.put("POSITION", position);
+        attributes.put(
+                "NORMAL",
+                addAccessor(bufferViews, accessors, offset + count * 12, count, "VEC3", 5126));
+        attributes.put(
+                "TEXCOORD_0",
+                addAccessor(bufferViews, accessors, offset + count * 24, count, "VEC2", 5126));
+
+        JSONObject level = new JSONObject();
+        level.put("attributes", attributes);
+        level.put(
+                "indices",
+                addAccessor(
+                        bufferViews,
+                        accessors,
+                        offset + count * 32,
+                        indices.length,
+                        "SCALAR",
+                        5125));
+
+        out.write(data.array(), 0, data.capacity());
+
+        return level;
+    }
+
+    /**
+     * Add a tightly packed accessor, and the buffer view it reads from.
+     *
+     * @param bufferViews JSON array of buffer views to add to.
+     * @param accessors JSON array of accessors to add to.
+     * @param offset byte offset of the data within the binary chunk.
+     * @param count number of elements.
+     * @param type glTF type of the elements.
+     * @param componentType glTF component type, either float or unsigned int.
+     * @return index of the new accessor.
+     */
+    @SuppressWarnings("unchecked")
+    private static int addAccessor(
+            JSONArray bufferViews,
+            JSONArray accessors,
+            int offset,
+            int count,
+            String type,
+            int componentType) {
+        JSONObject view = new JSONObject();
+        view.put("buffer", 0);
+        view.put("byteOffset", offset);
+        view.put("byteLength", count * GLTFAccessor.componentCount(type) * 4);
+        bufferViews.add(view);
+
+        JSONObject accessor = new JSONObject();
+        accessor.put("bufferView", bufferViews.size() - 1);
+        accessor.put("componentType", componentType);
+        accessor.put("count", count);
+        accessor.put("type", type);
+        accessors.add(accessor);
+
+        return accessors.size() - 1;
+    }
+
+    /**
+     * Convert a vector to a JSON array.
+     *
+     * @param vec vector to convert.
+     * @return JSON array of the components.
+     */
+    @SuppressWarnings("unchecked")
+    private static JSONArray toJson(Vector3fc vec) {
+        JSONArray array = new JSONArray();
+        array.add(vec.x());
+        array.add(vec.y());
+        array.add(vec.z());
+        return array;
+    }
+
+    /**
+     * Get a JSON array of an object, adding an empty one if it is missing.
+     *
+     * @param obj object to get the array of.
+     * @param key key of the array.
+     * @return the array.
+     */
+    @SuppressWarnings("unchecked")
+    private static JSONArray getArray(JSONObject obj, String key) {
+        JSONArray array = (JSONArray) obj.get(key);
+
+        if (array == null) {
+            array = new JSONArray();
+            obj.put(key, array);
+        }
+
+        return array;
+    }
+
+    /**
+     * Read all accessors of a glTF file.
+     *
+     * @param decoded JSON of the glTF file.
+     * @param bufferList contents of every buffer of the file.
+     * @return list of accessors, with {@code null} for unsupported ones.
+     */
+    private static List<GLTFAccessor> readAccessors(
+            JSONObject decoded, List<ByteBuffer> bufferList) {
+        JSONArray bufferViews = (JSONArray) decoded.get("bufferViews");
+        List<ByteBuffer> bufferViewList = new ArrayList<>();
+        List<Integer> bufferViewStrides = new ArrayList<>();
+
+        if (bufferViews != null) {
+            for (Object obj : bufferViews) {
+                JSONObject view = (JSONObject) obj;
+                int buf = parseInt(view, "buffer");
+                int len = parseInt(view, "byteLength");
+                int off = parseInt(view, "byteOffset", 0);
+                ByteBuffer bBuf = bufferList.get(buf).duplicate();
+                bBuf.position(off);
+                bBuf.limit(off + len);
+                bufferViewList.add(bBuf.slice().order(ByteOrder.LITTLE_ENDIAN));
+                bufferViewStrides.add(parseInt(view, "byteStride", 0));
+            }
+        }
+
+        JSONArray accessors = (JSONArray) decoded.get("accessors");
+        List<GLTFAccessor> accessorList = new ArrayList<>();
+
+        if (accessors != null) {
+            for (Object obj : accessors) {
+                JSONObject accessor = (JSONObject) obj;
+                int view = parseInt(accessor, "bufferView");
+                int off = parseInt(accessor, "byteOffset", 0);
+                int count = parseInt(accessor, "count");
+                String type = accessor.get("type").toString();
+                int componentType = parseInt(accessor, "componentType");
+                accessorList.add(
+                        GLTFAccessor.fromStringType(
+                                type,
+                                componentType,
+                                bufferViewList.get(view),
+                                off,
+                                bufferViewStrides.get(view),
+                                count));
+            }
+        }
+
+        return accessorList;
+    }
+
+    /**
+     * Read the vertices of a primitive.
+     *
+     * @param attributes JSON of the primitive's attributes.
+     * @param accessorList accessors of the file.
+     * @return the vertices, or {@code null}, if the attributes are missing, or do not match.
+     */
+    private static Vertex[] readVertices(JSONObject attributes, List<GLTFAccessor> accessorList) {
+        if (attributes == null) {
+            return null;
+        }
+
+        GLTFAccessor posAccessor = accessorList.get(parseInt(attributes, "POSITION"));
+        GLTFAccessor normAccessor = accessorList.get(parseInt(attributes, "NORMAL"));
+        GLTFAccessor uvAccessor = accessorList.get(parseInt(attributes, "TEXCOORD_0"));
+
+        if (posAccessor.mCount != uvAccessor.mCount) {
+            return null;
+        }
+
+        Vertex[] vertices = new Vertex[posAccessor.mCount];
+
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = new Vertex();
+            posAccessor.get(i, vertices[i].getPos());
+            normAccessor.get(i, vertices[i].getNormal());
+            uvAccessor.get(i, vertices[i].getUv());
+        }
+
+        return vertices;
+    }
+
+    /**
+     * Read the indices of a primitive.
+     *
+     * @param indexAccessor accessor of the indices.
+     * @return the indices.
+     */
+    private static int[] readIndices(GLTFAccessor indexAccessor) {
+        int[] indices = new int[indexAccessor.mCount];
+
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = indexAccessor.getInt(i, 0);
+        }
+
+        return indices;
+    }
+
+    /**
+     * Read the cooked levels of detail of a primitive.
+     *
+     * @param primitive JSON of the primitive.
+     * @param accessorList accessors of the file.
+     * @return levels of detail, as made by {@link MeshSimplifier#generateLevels}. {@code null}, if
+     *     the primitive has none.
+     */
+    private static Mesh[] readLevels(JSONObject primitive, List<GLTFAccessor> accessorList) {
+        JSONObject extensions = (JSONObject) primitive.get("extensions");
+        JSONObject extension =
+                extensions == null ? null : (JSONObject) extensions.get(MESH_LEVELS_EXTENSION);
+
+        if (extension == null) {
+            return null;
+        }
+
+        JSONArray levels = (JSONArray) extension.get("levels");
+        Mesh[] out = new Mesh[levels.size()];
+
+        for (int i = 0; i < out.length; i++) {
+            JSONObject level = (JSONObject) levels.get(i);
+
+            if (level == null) {
+                continue;
+            }
+
+            Vertex[] vertices = readVertices((JSONObject) level.get("attributes"), accessorList);
+
+            if (vertices == null) {
+                return null;
+            }
+
+            out[i] = new Mesh(vertices, readIndices(accessorList.get(parseInt(level, "indices"))));
+        }
+
+        return out;
+    }
+
+    /**
+     * Get the texture resource name of a glTF image.
+     *
+     * @param image JSON of the image.
+     * @return name of the texture, relative to the textures directory.
+     */
+    private static String imageName(JSONObject image) {
+        String uri = (String) image.get("uri");
+        if (uri.startsWith("../textures/")) {
+            uri = uri.replaceFirst("../textures/", "");
+        }
+        return uri;
+    }
+
+    /**
+     * Get the byte resource name of a glTF buffer.
+     *
+     * @param buffer JSON of the buffer.
+     * @return name of the buffer file.
+     */
+    private static String bufferName(JSONObject buffer) {
+        return "gltf/" + (String) buffer.get("uri");
+    }
+
     /**
      * Parses a floating point variable from JSON object.
      *
@@ -421,22 +964,63 @@ public class GLTF implements NativeResource {
     /**
      * Constructor for {@link GLTF}.
      *
-     * @param data JSON string data to parse.
+     * <p>External buffers are memory mapped when possible, and all buffer data is read in place,
+     * without copying it.
+     *
+     * @param data bytes containing the JSON.
+     * @param jsonOffset offset of the JSON within {@code data}.
+     * @param jsonLength length of the JSON in bytes.
+     * @param binChunk binary chunk of a GLB file, {@code null} for JSON glTF.
      * @throws ParseException when parsing JSON fails.
+     * @throws IOException when reading the JSON fails.
      */
-    private GLTF(String data) throws ParseException {
-        JSONObject decoded = (JSONObject) JSONValue.parse(data);
+    private GLTF(byte[] data, int jsonOffset, int jsonLength, ByteBuffer binChunk)
+            throws ParseException, IOException {
+        JSONObject decoded =
+                (JSONObject)
+                        new JSONParser()
+                                .parse(
+                                        new InputStreamReader(
+                                                new ByteArrayInputStream(
+                                                        data, jsonOffset, jsonLength),
+                                                StandardCharsets.UTF_8));
 
         JSONArray images = (JSONArray) decoded.get("images");
-        List<Resource<Texture>> loadedImages = new ArrayList<>();
+        JSONArray buffers = (JSONArray) decoded.get("buffers");
+
+        List<ByteBuffer> bufferList = new ArrayList<>();
 
+        // Kick off loading of all external files, so that they get decoded in parallel, instead of
+        // one by one as they are needed below. Buffers that can be viewed in place are mapped.
         if (images != null) {
             for (Object image : images) {
-                String uri = (String) ((JSONObject) image).get("uri");
-                if (uri.startsWith("../textures/")) {
-                    uri = uri.replaceFirst("../textures/", "");
+                ResourceManager.prefetch(Texture.class, imageName((JSONObject) image));
+            }
+        }
+
+        if (buffers != null) {
+            for (Object obj : buffers) {
+                JSONObject buffer = (JSONObject) obj;
+                ByteBuffer mapped;
+
+                if (buffer.get("uri") == null) {
+                    mapped = binChunk;
+                } else {
+                    mapped = ResourceManager.mapResource(bufferName(buffer));
+                    if (mapped == null) {
+                        ResourceManager.prefetch(byte[].class, bufferName(buffer));
+                    }
                 }
-                loadedImages.add(Texture.getResource(uri));
+
+                bufferList.add(mapped);
+            }
+        }
+
+        List<Resource<Texture>> loadedImages = new ArrayList<>();
+
+        if (images != null) {
+            for (Object image : images) {
+                loadedImages.add(Texture.getResource(imageName((JSONObject) image)));
             }
         }
 
@@ -570,48 +1154,23 @@ public class GLTF implements NativeResource {
             }
         }
 
-        JSONArray buffers = (JSONArray) decoded.get("buffers");
-        List<Resource<byte[]>> bufferList = new ArrayList<>();
+        List<Resource<byte[]>> bufferResources = new ArrayList<>();
 
-        if (buffers != null) {
-            for (Object obj : buffers) {
-                JSONObject buf = (JSONObject) obj;
-                bufferList.add(
-                        ResourceManager.getResource(
-                                byte[].class, "gltf/" + (String) buf.get("uri")));
+        for (int i = 0; i < bufferList.size(); i++) {
+            if (bufferList.get(i) != null) {
+                continue;
             }
-        }
 
-        JSONArray bufferViews = (JSONArray) decoded.get("bufferViews");
-        List<ByteBuffer> bufferViewList = new ArrayList<>();
+            String name = bufferName((JSONObject) buffers.get(i));
+            Resource<byte[]> res = ResourceManager.getResource(byte[].class, name);
 
-        if (bufferViews != null) {
-            for (Object obj : bufferViews) {
-                JSONObject view = (JSONObject) obj;
-                int buf = parseInt(view, "buffer");
-                int len = parseInt(view, "byteLength");
-                int off = parseInt(view, "byteOffset");
-                ByteBuffer bBuf = ByteBuffer.wrap(bufferList.get(buf).get(), off, len);
-                bBuf.order(ByteOrder.LITTLE_ENDIAN);
-                bufferViewList.add(bBuf);
+            if (res != null) {
+                bufferResources.add(res);
+                bufferList.set(i, ByteBuffer.wrap(res.get()));
             }
         }
 
-        JSONArray accessors = (JSONArray) decoded.get("accessors");
-        List<GLTFAccessor<?>> accessorList = new ArrayList<>();
-
-        if (accessors != null) {
-            for (Object obj : accessors) {
-                JSONObject accessor = (JSONObject) obj;
-                int view = parseInt(accessor, "bufferView");
-                int count = parseInt(accessor, "count");
-                String type = accessor.get("type").toString();
-                int componentType = parseInt(accessor, "componentType");
-                accessorList.add(
-                        GLTFAccessor.fromStringType(
-                                type, componentType, bufferViewList.get(view), count));
-            }
-        }
+        List<GLTFAccessor> accessorList = readAccessors(decoded, bufferList);
 
         JSONArray meshes = (JSONArray) decoded.get("meshes");
 
@@ -633,39 +1192,17 @@ public class GLTF implements NativeResource {
 
                         matIdx = parseInt(submesh, "material");
 
-                        GLTFAccessor<?> indexAccessor =
-                                accessorList.get(parseInt(submesh, "indices"));
-                        indices = new int[indexAccessor.mCount];
-
-                        for (int i = 0; i < indices.length; i++) {
-                            indices[i] = parseIntFromScalar(indexAccessor.get(i));
-                        }
+                        indices = readIndices(accessorList.get(parseInt(submesh, "indices")));
 
-                        JSONObject attributes = (JSONObject) submesh.get("attributes");
-                        if (attributes != null) {
-                            GLTFAccessor<?> posAccessor =
-                                    accessorList.get(parseInt(attributes, "POSITION"));
-                            GLTFAccessor<?> normAccessor =
-                                    accessorList.get(parseInt(attributes, "NORMAL"));
-                            GLTFAccessor<?> uvAccessor =
-                                    accessorList.get(parseInt(attributes, "TEXCOORD_0"));
-                            if (posAccessor.mCount == uvAccessor.mCount) {
-                                vertices = new Vertex[posAccessor.mCount];
-
-                                for (int i = 0; i < vertices.length; i++) {
-                                    Vector3f pos = (Vector3f) posAccessor.get(i);
-                                    Vector3f norm = (Vector3f) normAccessor.get(i);
-                                    Vector2f uv = (Vector2f) uvAccessor.get(i);
-                                    vertices[i] = new Vertex();
-                                    vertices[i].getPos().set(pos);
-                                    vertices[i].getNormal().set(norm);
-                                    vertices[i].getUv().set(uv);
-                                }
-                            }
+                        Vertex[] read =
+                                readVertices((JSONObject) submesh.get("attributes"), accessorList);
+                        if (read != null) {
+                            vertices = read;
                         }
 
                         GLTFPrimitive outPrimitive = new GLTFPrimitive();
                         outPrimitive.mMesh = new Mesh(vertices, indices);
+                        outPrimitive.mMesh.setLevels(readLevels(submesh, accessorList));
                         outPrimitive.mMaterial = matIdx == null ? null : mMaterials.get(matIdx);
                         outMesh.mPrimitives.add(outPrimitive);
                     }
@@ -775,7 +1312,7 @@ public class GLTF implements NativeResource {
             }
         }
 
-        bufferList.stream().filter(b -> b != null).forEach(Resource::free);
+        bufferResources.forEach(Resource::free);
         loadedImages.stream().filter(e -> e != null).forEach(Resource::free);
     }
 
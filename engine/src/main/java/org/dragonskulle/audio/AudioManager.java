@@ -5,7 +5,6 @@ import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.List;
 import lombok.Getter;
 import lombok.experimental.Accessors;
 import lombok.extern.java.Log;
@@ -27,6 +26,8 @@ import org.lwjgl.openal.ALC;
 import org.lwjgl.openal.ALC11;
 import org.lwjgl.openal.ALCCapabilities;
 import org.lwjgl.openal.ALCapabilities;
+import org.lwjgl.openal.SOFTLoopback;
+import org.lwjgl.system.MemoryStack;
 
 /**
  * The manager for the engine's audio system.
@@ -34,6 +35,10 @@ import org.lwjgl.openal.ALCapabilities;
  * @author Harry Stoltz
  *     <p>This class will handle the loading and buffering of all sound files, and will also manage
  *     a pool of sources that can be used by AudioSources to play the sounds back
+ *     <p>When there are more sounds playing than sources, the sources go to the sounds with the
+ *     highest priority times loudness at the listener, picked by a {@link VoiceAllocator}. The rest
+ *     play virtually, until they get a source back. Sources are taken away by fading them out, so a
+ *     sound taking over only gets one once the previous sound is silent.
  */
 @Accessors(prefix = "m")
 @Log
@@ -46,6 +51,13 @@ public class AudioManager {
     private final ArrayList<Sound> mSounds = new ArrayList<>();
     private final ArrayList<Source> mSources = new ArrayList<>();
     private final HashSet<Reference<AudioSource>> mAudioSources = new HashSet<>();
+    /** Valid AudioSources of the current update, in the order they were given to the allocator. */
+    private final ArrayList<AudioSource> mCandidates = new ArrayList<>();
+
+    private final VoiceAllocator mAllocator = new VoiceAllocator();
+    /** Position of the listener, as of the last update. */
+    private final Vector3f mListenerPosition = new Vector3f();
+
     public static final String SETTINGS_VOLUME_STRING = "masterVolume";
     public static final String SETTINGS_MUTE_STRING = "masterMuted";
 
@@ -126,9 +138,8 @@ public class AudioManager {
     }
 
     /**
-     * Attempt to get the first source in mSources that is not in use. In theory, this should never
-     * return null as if there are more than MAX_SOURCES AudioSources currently active, some will
-     * have their source detached before this is ever called
+     * Attempt to get the first source in mSources that is not in use. This returns null while the
+     * sounds that lost their sources are still fading out
      *
      * @return An inactive Source, or null if none were available
      */
@@ -141,37 +152,6 @@ public class AudioManager {
         return null;
     }
 
-    /**
-     * Attach an OpenAL source to all AudioSources in the list.
-     *
-     * @param audioSources List of AudioSources to attach a source to
-     */
-    private void attachSources(List<Reference<AudioSource>> audioSources) {
-        for (Reference<AudioSource> ref : audioSources) {
-            AudioSource audioSource = ref.get();
-
-            if (audioSource.getSource() == null) {
-                Source source = getAvailableSource();
-                if (source == null) {
-                    break;
-                }
-
-                audioSource.attachSource(source);
-            }
-        }
-    }
-
-    /**
-     * Detach the OpenAL source from each AudioSource in the list.
-     *
-     * @param audioSources List of AudioSources to detach a source from
-     */
-    private void detachSources(List<Reference<AudioSource>> audioSources) {
-        for (Reference<AudioSource> ref : audioSources) {
-            ref.get().detachSource();
-        }
-    }
-
     /**
      * Initialise the audio manager by opening a device, creating a context and then creating as
      * many sources as possible.
@@ -189,11 +169,62 @@ public class AudioManager {
             return;
         }
 
-        long ctx = ALC11.alcCreateContext(device, (IntBuffer) null);
+        initDevice(device, null);
+    }
+
+    /**
+     * Initialise the audio manager on an OpenAL Soft loopback device. It renders into memory, via
+     * {@link SOFTLoopback#alcRenderSamplesSOFT}, instead of an output device. Useful for headless
+     * runs, and tests.
+     *
+     * @param frequency Sample rate of the device, in Hz
+     * @return Whether the manager was initialised. It is not if it already is, or if loopback
+     *     devices are not supported
+     */
+    public boolean initLoopback(int frequency) {
+        if (mAlDev != -1 || mAlCtx != -1) {
+            return false;
+        }
+
+        if (!ALC11.alcIsExtensionPresent(0L, "ALC_SOFT_loopback")) {
+            log.warning("OpenAL loopback devices are not supported");
+            return false;
+        }
+
+        long device = SOFTLoopback.alcLoopbackOpenDeviceSOFT((ByteBuffer) null);
+        if (device == 0L) {
+            log.warning("Failed to open OpenAL loopback device");
+            return false;
+        }
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer attributes =
+                    stack.ints(
+                            SOFTLoopback.ALC_FORMAT_CHANNELS_SOFT,
+                            SOFTLoopback.ALC_STEREO_SOFT,
+                            SOFTLoopback.ALC_FORMAT_TYPE_SOFT,
+                            SOFTLoopback.ALC_FLOAT_SOFT,
+                            ALC11.ALC_FREQUENCY,
+                            frequency,
+                            0);
+
+            return initDevice(device, attributes);
+        }
+    }
+
+    /**
+     * Create a context on an opened device, and as many sources as possible.
+     *
+     * @param device Opened OpenAL device. It is closed if the context can not be created
+     * @param attributes Context attributes, or null for the defaults
+     * @return Whether the manager was initialised
+     */
+    private boolean initDevice(long device, IntBuffer attributes) {
+        long ctx = ALC11.alcCreateContext(device, attributes);
         if (!ALC11.alcMakeContextCurrent(ctx)) {
             log.severe("Failed to set OpenAL context, no audio will be available");
             ALC11.alcCloseDevice(device);
-            return;
+            return false;
         }
 
         // Get and set OpenAL capabilities
@@ -215,6 +246,7 @@ public class AudioManager {
         mInitialized = true;
 
         log.fine("Initialize AudioManager: " + mSources.size() + " sources available");
+        return true;
     }
 
     /**
@@ -225,7 +257,7 @@ public class AudioManager {
 
         Transform t = mAudioListener.get().getGameObject().getTransform();
 
-        Vector3f pos = t.getPosition();
+        Vector3f pos = t.getPosition(mListenerPosition);
         AL11.alListener3f(AL11.AL_POSITION, pos.x, pos.y, pos.z);
 
         Vector3f up = t.getUpVector();
@@ -246,49 +278,50 @@ public class AudioManager {
             return;
         }
 
-        ArrayList<Reference<AudioSource>> audioSources = new ArrayList<>(mAudioSources);
-
         updateListenerPosAndRot();
 
-        // remove any references to AudioSources that are no longer valid
-        audioSources.removeIf(Reference::isInvalid);
-
-        // All references will be valid because they any invalid ones are removed at the start
-        for (int i = 0; i < audioSources.size(); i++) {
-            AudioSource audioSource = audioSources.get(i).get();
-
-            // Get the distance of the source from the listener
-            float distance = 100000f;
-            if (Reference.isValid(mAudioListener)) {
-                distance =
-                        mAudioListener
-                                .get()
-                                .getGameObject()
-                                .getTransform()
-                                .getPosition()
-                                .distance(audioSource.getPosition());
+        mCandidates.clear();
+        mAllocator.clear();
+
+        for (Reference<AudioSource> ref : mAudioSources) {
+            if (Reference.isInvalid(ref)) {
+                continue;
             }
 
-            // Don't attach a source if the AudioSource:
-            //      Has no sound
-            //      Has finished playing it's sound
-            //      Is out of range of the listener
-            if (audioSource.getSound() == null
-                    || audioSource.getTimeLeft() < 0f
-                    || distance > audioSource.getRadius()) {
-                audioSources.remove(i);
-                audioSource.detachSource();
-                i--;
+            AudioSource audioSource = ref.get();
+
+            // Sounds that are missing, or have finished playing, are never heard
+            float score = 0f;
+            if (audioSource.getSound() != null && audioSource.getTimeLeft() >= 0f) {
+                score =
+                        VoiceAllocator.score(
+                                audioSource.getPriority(),
+                                audioSource.getVolume(),
+                                mListenerPosition.distance(audioSource.getPosition()),
+                                audioSource.getRadius());
             }
+
+            mCandidates.add(audioSource);
+            mAllocator.add(score, audioSource.getSource() != null && !audioSource.isReleasing());
         }
 
-        if (audioSources.size() > mSources.size()) {
-            detachSources(audioSources.subList(mSources.size(), mAudioSources.size()));
-            attachSources(audioSources.subList(0, mSources.size()));
-        } else {
-            attachSources(audioSources);
+        mAllocator.select(mSources.size());
+
+        // Losing sounds fade out, and their sources are handed over once they have detached.
+        // Until then, the sounds taking over stay virtual.
+        for (int i = 0; i < mCandidates.size(); i++) {
+            AudioSource audioSource = mCandidates.get(i);
+
+            if (!mAllocator.isSelected(i)) {
+                audioSource.releaseSource();
+            } else if (audioSource.getSource() == null) {
+                audioSource.attachSource(getAvailableSource());
+            } else if (audioSource.isReleasing()) {
+                audioSource.cancelRelease();
+            }
         }
 
+        mCandidates.clear();
         mAudioSources.clear();
     }
 
@@ -372,6 +405,16 @@ public class AudioManager {
         ALC11.alcCloseDevice(mAlDev);
         mAlDev = -1;
         mAlCtx = -1;
+        mInitialized = false;
+    }
+
+    /**
+     * Get the number of OpenAL sources sounds share.
+     *
+     * @return Number of sources
+     */
+    int getSourceCount() {
+        return mSources.size();
     }
 
     /**
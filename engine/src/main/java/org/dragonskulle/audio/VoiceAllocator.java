@@ -0,0 +1,182 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.audio;
+
+import java.util.Arrays;
+
+/**
+ * Picks which of the playing sounds get one of the limited OpenAL voices.
+ *
+ * @author DragonSkulle
+ *     <p>Every candidate is scored by its priority times how loud it would be at the listener. The
+ *     highest scoring ones are picked with a bounded min-heap, which costs {@code O(n log v)} for
+ *     {@code n} candidates, and {@code v} voices, instead of sorting every candidate. Candidates
+ *     that already hold a voice get their score boosted by {@link #HOLD_BONUS}, so that sounds at
+ *     near equal scores do not keep stealing each other's voice.
+ *     <p>Candidates that are not picked are virtual. They keep tracking their playback position,
+ *     and pick up from it once they get a voice back.
+ *     <p>All storage is reused between ticks, so steady state allocation does not produce garbage.
+ */
+class VoiceAllocator {
+    /** Score multiplier of candidates that already hold a voice. */
+    static final float HOLD_BONUS = 1.25f;
+
+    /** Scores of the candidates, including the hold bonus. */
+    private float[] mScores = new float[64];
+    /** Whether each candidate was picked. */
+    private boolean[] mSelected = new boolean[64];
+    /** Min-heap of picked candidate indices, ordered by score. */
+    private int[] mHeap = new int[0];
+    /** Number of candidates. */
+    private int mCount = 0;
+    /** Number of elements in {@link #mHeap}. */
+    private int mHeapSize = 0;
+
+    /**
+     * Compute the score of a sound.
+     *
+     * <p>Audibility follows the inverse distance model the manager sets up, with a reference
+     * distance of 1.
+     *
+     * @param priority priority of the sound.
+     * @param volume volume of the sound.
+     * @param distance distance of the sound from the listener.
+     * @param radius distance the sound can be heard within.
+     * @return score of the sound, zero if it can not be heard.
+     */
+    static float score(float priority, float volume, float distance, float radius) {
+        if (distance > radius) {
+            return 0f;
+        }
+
+        return priority * volume / Math.max(distance, 1f);
+    }
+
+    /** Remove all candidates. */
+    void clear() {
+        mCount = 0;
+        mHeapSize = 0;
+    }
+
+    /**
+     * Add a candidate.
+     *
+     * @param score score of the candidate. Candidates with non-positive scores are never picked.
+     * @param holding whether the candidate currently holds a voice.
+     * @return index of the candidate.
+     */
+    int add(float score, boolean holding) {
+        if (mCount == mScores.length) {
+            mScores = Arrays.copyOf(mScores, mCount * 2);
+            mSelected = Arrays.copyOf(mSelected, mCount * 2);
+        }
+
+        mScores[mCount] = holding ? score * HOLD_BONUS : score;
+        mSelected[mCount] = false;
+        return mCount++;
+    }
+
+    /**
+     * Pick the highest scoring candidates.
+     *
+     * @param voices number of voices available.
+     * @return number of picked candidates.
+     */
+    int select(int voices) {
+        if (mHeap.length < voices) {
+            mHeap = new int[voices];
+        }
+
+        mHeapSize = 0;
+
+        if (voices <= 0) {
+            return 0;
+        }
+
+        for (int i = 0; i < mCount; i++) {
+            float score = mScores[i];
+
+            // Also rejects NaN
+            if (!(score > 0f)) {
+                continue;
+            }
+
+            if (mHeapSize < voices) {
+                mHeap[mHeapSize] = i;
+                siftUp(mHeapSize++);
+            } else if (score > mScores[mHeap[0]]) {
+                mHeap[0] = i;
+                siftDown(0);
+            }
+        }
+
+        for (int i = 0; i < mHeapSize; i++) {
+            mSelected[mHeap[i]] = true;
+        }
+
+        return mHeapSize;
+    }
+
+    /**
+     * Check whether a candidate was picked by the last {@link #select}.
+     *
+     * @param index index of the candidate.
+     * @return {@code true} if the candidate should hold a voice.
+     */
+    boolean isSelected(int index) {
+        return mSelected[index];
+    }
+
+    /**
+     * Move a heap element up, until its parent scores lower.
+     *
+     * @param pos position of the element.
+     */
+    private void siftUp(int pos) {
+        int idx = mHeap[pos];
+        float score = mScores[idx];
+
+        while (pos > 0) {
+            int parent = (pos - 1) >> 1;
+
+            if (mScores[mHeap[parent]] <= score) {
+                break;
+            }
+
+            mHeap[pos] = mHeap[parent];
+            pos = parent;
+        }
+
+        mHeap[pos] = idx;
+    }
+
+    /**
+     * Move a heap element down, until its children score higher.
+     *
+     * @param pos position of the element.
+     */
+    private void siftDown(int pos) {
+        int idx = mHeap[pos];
+        float score = mScores[idx];
+
+        while (true) {
+            int child = pos * 2 + 1;
+
+            if (child >= mHeapSize) {
+                break;
+            }
+
+            if (child + 1 < mHeapSize && mScores[mHeap[child + 1]] < mScores[mHeap[child]]) {
+                child++;
+            }
+
+            if (mScores[mHeap[child]] >= score) {
+                break;
+            }
+
+            mHeap[pos] = mHeap[child];
+            pos = child;
+        }
+
+        mHeap[pos] = idx;
+    }
+}
@@ -10,8 +10,8 @@ import org.dragonskulle.audio.formats.Sound;
 import org.dragonskulle.components.Component;
 import org.dragonskulle.components.IFixedUpdate;
 import org.dragonskulle.components.ILateFrameUpdate;
+import org.dragonskulle.components.IOnRecycle;
 import org.dragonskulle.core.Engine;
-import org.dragonskulle.core.Reference;
 import org.dragonskulle.core.Resource;
 import org.dragonskulle.core.Scene;
 import org.joml.Vector3f;
@@ -24,12 +24,19 @@ import org.lwjgl.openal.AL11;
  *     <p>By itself does nothing, but when playSound is called, it will be assigned an openAL source
  *     by the AudioManager and then will start playing sound. The sound is played from the location
  *     of the parent game object in the world.
+ *     <p>While it has no source, the sound keeps playing virtually: its position is tracked, and
+ *     once a source is attached, playback resumes from there, fading in. Losing a source fades the
+ *     sound out first, and the source is only given away once it is silent.
  */
 @Accessors(prefix = "m")
 @Log
-public class AudioSource extends Component implements IFixedUpdate, ILateFrameUpdate {
+public class AudioSource extends Component
+        implements IFixedUpdate, ILateFrameUpdate, IOnRecycle {
+    /** Sounds resumed less than this many seconds in start from the beginning. */
+    private static final float MIN_SEEK = 0.05f;
+    /** Time it takes a resumed sound to fade in, or a released one to fade out, in seconds. */
+    private static final float FADE_TIME = 0.05f;
 
-    private final Reference<AudioSource> mReference = getReference(AudioSource.class);
     @Getter private final Vector3f mPosition = new Vector3f();
 
     @Getter private Sound mSound = null;
@@ -39,6 +46,12 @@ public class AudioSource extends Component implements IFixedUpdate, ILateFrameUp
     @Getter private float mRadius = 50000f;
     @Getter private float mTimeLeft = -1f;
     @Getter private int mLooping = AL11.AL_FALSE;
+    @Getter private float mPriority = 1f;
+
+    /** Fade multiplier of the volume, from 0f to 1f. */
+    private float mFade = 1f;
+    /** Whether the Source is fading out, to be detached once silent. */
+    @Getter private boolean mReleasing = false;
 
     /** Update the position of the source to that of the GameObject. */
     private void updatePosition() {
@@ -63,18 +76,27 @@ public class AudioSource extends Component implements IFixedUpdate, ILateFrameUp
         }
 
         mSource = source;
+        mReleasing = false;
 
         mSource.setInUse(true);
 
         int s = mSource.getSource();
 
-        AL11.alSourcef(s, AL11.AL_GAIN, mVolume);
+        // Jumping into the middle of a sound would click, so it is faded in instead
+        float position = getPlaybackPosition();
+        mFade = position > MIN_SEEK ? 0f : 1f;
+
+        AL11.alSourcef(s, AL11.AL_GAIN, mVolume * mFade);
         AL11.alSourcef(s, AL11.AL_PITCH, mPitch);
         AL11.alSourcef(s, AL11.AL_MAX_DISTANCE, mRadius);
         AL11.alSourcei(s, AL11.AL_LOOPING, mLooping);
 
         if (mSound != null) {
             AL11.alSourcei(s, AL11.AL_BUFFER, mSound.mBuffer);
+
+            if (position > MIN_SEEK) {
+                AL11.alSourcef(s, AL11.AL_SEC_OFFSET, position);
+            }
         }
         updatePosition();
 
@@ -97,6 +119,24 @@ public class AudioSource extends Component implements IFixedUpdate, ILateFrameUp
         log.finer("Detached source " + mSource.getSource());
         mSource.setInUse(false);
         mSource = null;
+        mReleasing = false;
+    }
+
+    /**
+     * Fade the sound out, and detach the Source once it is silent. Until then, the Source stays in
+     * use, so stopping a sound mid-way does not click.
+     */
+    public void releaseSource() {
+        if (mSource == null) {
+            return;
+        }
+
+        mReleasing = true;
+    }
+
+    /** Stop fading out a released Source, and fade back in. */
+    public void cancelRelease() {
+        mReleasing = false;
     }
 
     /**
@@ -110,10 +150,33 @@ public class AudioSource extends Component implements IFixedUpdate, ILateFrameUp
 
         mVolume = volume;
         if (mSource != null) {
-            AL11.alSourcef(mSource.getSource(), AL11.AL_GAIN, volume);
+            AL11.alSourcef(mSource.getSource(), AL11.AL_GAIN, volume * mFade);
         }
     }
 
+    /**
+     * Set the priority of the AudioSource. When there are more sounds playing than there are
+     * sources, those with the highest priority times loudness at the listener are heard.
+     *
+     * @param priority New priority. Must be a positive value, 1f by default
+     */
+    public void setPriority(float priority) {
+        mPriority = Math.max(0f, priority);
+    }
+
+    /**
+     * Get how far into the sound playback is, whether or not it has a source.
+     *
+     * @return Playback position in seconds, or 0f if there is no sound
+     */
+    public float getPlaybackPosition() {
+        if (mSound == null) {
+            return 0f;
+        }
+
+        return Math.max(0f, Math.min(mSound.mLength - mTimeLeft, mSound.mLength));
+    }
+
     /**
      * Set whether the AudioSource should loop.
      *
@@ -148,7 +211,21 @@ public class AudioSource extends Component implements IFixedUpdate, ILateFrameUp
             return;
         }
 
-        mSound = sound.get();
+        playSound(sound.get());
+    }
+
+    /**
+     * Set the sound of this AudioSource. It will be played as soon as the AudioSource is given a
+     * source by the AudioManager.
+     *
+     * @param sound Sound to play
+     */
+    public void playSound(Sound sound) {
+        if (sound == null) {
+            return;
+        }
+
+        mSound = sound;
         detachSource();
         mTimeLeft = mSound.mLength;
     }
@@ -188,6 +265,15 @@ public class AudioSource extends Component implements IFixedUpdate, ILateFrameUp
         mSound = null;
     }
 
+    @Override
+    public void onRecycle() {
+        // Pooled objects never get destroyed, so the source has to be given back here
+        detachSource();
+        mSound = null;
+        mTimeLeft = -1f;
+        mFade = 1f;
+    }
+
     @Override
     public void fixedUpdate(float deltaTime) {
         if (Scene.getActiveScene() != Engine.getInstance().getPresentationScene()) {
@@ -202,13 +288,27 @@ public class AudioSource extends Component implements IFixedUpdate, ILateFrameUp
 
     @Override
     public void lateFrameUpdate(float deltaTime) {
-        AudioManager.getInstance().addAudioSource(mReference);
-        if (mSource == null || mSound == null) {
+        // Not cached, since references get recreated when the object is recycled
+        AudioManager.getInstance().addAudioSource(getReference(AudioSource.class));
+        if (mSound == null) {
             return;
         }
 
+        // Time passes for virtual sounds too, so that they resume in the right place
         mTimeLeft -= deltaTime;
 
+        if (mSource != null && mReleasing) {
+            mFade = Math.max(0f, mFade - deltaTime / FADE_TIME);
+            AL11.alSourcef(mSource.getSource(), AL11.AL_GAIN, mVolume * mFade);
+
+            if (mFade <= 0f) {
+                detachSource();
+            }
+        } else if (mSource != null && mFade < 1f) {
+            mFade = Math.min(1f, mFade + deltaTime / FADE_TIME);
+            AL11.alSourcef(mSource.getSource(), AL11.AL_GAIN, mVolume * mFade);
+        }
+
         while (mLooping == AL11.AL_TRUE && mTimeLeft < 0f) {
             mTimeLeft += mSound.mLength;
         }
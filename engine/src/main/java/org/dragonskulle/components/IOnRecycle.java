@@ -0,0 +1,21 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.components;
+
+/**
+ * IOnRecycle interface.
+ *
+ * @author DragonSkulle
+ *     <p>One of the optional interfaces for a component. Has the single method onRecycle, which is
+ *     called on components of pooled objects.
+ */
+public interface IOnRecycle {
+
+    /**
+     * Called when the object is destroyed, but returned to its pool instead of being torn down.
+     *
+     * <p>Components should reset any per-use state here, so that the object can be handed out
+     * again. onDestroy is not called for recycled objects, and onAwake will not be called again
+     * when the object is reused, but onStart will be.
+     */
+    void onRecycle();
+}
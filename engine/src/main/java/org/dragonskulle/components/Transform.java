@@ -1,7 +1,6 @@
 /* (C) 2021 DragonSkulle */
 package org.dragonskulle.components;
 
-import org.dragonskulle.core.GameObject;
 import org.joml.AxisAngle4f;
 import org.joml.Matrix4f;
 import org.joml.Matrix4fc;
@@ -29,6 +28,9 @@ public abstract class Transform extends Component {
 
     protected boolean mHasInverted = false;
 
+    /** Number of times the world matrix got invalidated. */
+    protected int mChangeCount = 0;
+
     /**
      * Get the world matrix for this transform. If mShouldUpdate is true, it will then recursively
      * synchronise the transformation.
@@ -63,6 +65,19 @@ public abstract class Transform extends Component {
         return mInvMatrix;
     }
 
+    /**
+     * Get the number of times the transform has changed.
+     *
+     * <p>If the value differs from one read earlier, the world matrix may have changed since then.
+     * This allows caches of world space data to be updated without computing world matrices of
+     * every object.
+     *
+     * @return number of world matrix invalidations.
+     */
+    public int getChangeCount() {
+        return mChangeCount;
+    }
+
     /** Set mShouldUpdate to true in all children transforms. */
     protected void setUpdateFlag() {
         if (mShouldUpdate) {
@@ -70,8 +85,9 @@ public abstract class Transform extends Component {
         }
         mShouldUpdate = true;
         mHasInverted = false;
-        for (GameObject obj : mGameObject.getChildren()) {
-            obj.getTransform().setUpdateFlag();
+        mChangeCount++;
+        for (int i = 0; i < mGameObject.getChildCount(); i++) {
+            mGameObject.getChild(i).getTransform().setUpdateFlag();
         }
     }
 
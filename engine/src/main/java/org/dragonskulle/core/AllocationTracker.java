@@ -0,0 +1,306 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.core;
+
+import static org.dragonskulle.utils.Env.envBool;
+import static org.dragonskulle.utils.Env.envInt;
+
+import java.lang.management.ManagementFactory;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import lombok.extern.java.Log;
+
+/**
+ * Tracks heap allocations of the main loop.
+ *
+ * @author DragonSkulle
+ *     <p>Uses the per-thread allocation counter of the JVM to attribute allocated bytes to each
+ *     {@link EnginePhase} of a frame. The engine marks the start of each phase with {@link
+ *     #enterPhase}, and the end of the frame with {@link #endFrame}. Steady state frames are
+ *     expected to allocate nothing, {@link #getFramesOverBudget} counts the ones that exceed {@link
+ *     #getBudgetBytes}.
+ *     <p>Tracking is disabled by default, it can be turned on with the {@code TRACK_ALLOCATIONS}
+ *     environment variable, or {@link #setEnabled}.
+ */
+@Accessors(prefix = "m")
+@Log
+public class AllocationTracker {
+    private static final int PHASE_COUNT = EnginePhase.VALUES.length;
+
+    /**
+     * Default number of bytes a frame may allocate, taken from the {@code ALLOCATION_BUDGET}
+     * environment variable.
+     */
+    public static final long DEFAULT_BUDGET_BYTES = envInt("ALLOCATION_BUDGET", 0);
+
+    private final com.sun.management.ThreadMXBean mThreadBean;
+
+    /** Whether the JVM is able to report per-thread allocations. */
+    @Getter private final boolean mSupported;
+
+    /** Whether allocations are currently being tracked. */
+    @Getter private boolean mEnabled = false;
+
+    /** Number of bytes a frame may allocate before being counted as over budget. */
+    @Getter @Setter private long mBudgetBytes = DEFAULT_BUDGET_BYTES;
+
+    /** Bytes allocated by reading the counter itself, subtracted from every measurement. */
+    private long mOverhead = 0;
+
+    private final long[] mCurrentFrame = new long[PHASE_COUNT];
+    private final long[] mLastFrame = new long[PHASE_COUNT];
+    private final long[] mTotal = new long[PHASE_COUNT];
+    /** Number of times each phase was entered in the current frame. */
+    private final int[] mCurrentEntries = new int[PHASE_COUNT];
+    /** Number of times each phase was entered since the last reset. */
+    private final long[] mTotalEntries = new long[PHASE_COUNT];
+
+    private EnginePhase mCurrentPhase = null;
+    private long mLastMark = 0;
+
+    /** Number of frames measured since the last reset. */
+    @Getter private long mFrameCount = 0;
+    /** Number of frames that allocated more than the budget since the last reset. */
+    @Getter private long mFramesOverBudget = 0;
+    /** Total bytes allocated by the last complete frame. */
+    @Getter private long mLastFrameBytes = 0;
+
+    /** Create an allocation tracker. */
+    AllocationTracker() {
+        com.sun.management.ThreadMXBean bean = null;
+        boolean supported = false;
+
+        try {
+            java.lang.management.ThreadMXBean base = ManagementFactory.getThreadMXBean();
+            if (base instanceof com.sun.management.ThreadMXBean) {
+                bean = (com.sun.management.ThreadMXBean) base;
+                supported = bean.isThreadAllocatedMemorySupported();
+                if (supported && !bean.isThreadAllocatedMemoryEnabled()) {
+                    bean.setThreadAllocatedMemoryEnabled(true);
+                }
+            }
+        } catch (UnsupportedOperationException | SecurityException e) {
+            log.warning("Thread allocation tracking unavailable: " + e.getMessage());
+            supported = false;
+        }
+
+        mThreadBean = bean;
+        mSupported = supported;
+
+        setEnabled(envBool("TRACK_ALLOCATIONS", false));
+    }
+
+    /**
+     * Enable or disable tracking.
+     *
+     * <p>Tracking can only be enabled when the JVM supports it. Toggling it discards the frame that
+     * is currently being measured.
+     *
+     * @param enabled whether to track allocations.
+     */
+    public void setEnabled(boolean enabled) {
+        enabled = enabled && mSupported;
+
+        if (enabled && !mEnabled) {
+            calibrate();
+        }
+
+        mEnabled = enabled;
+        mCurrentPhase = null;
+        clearCurrentFrame();
+    }
+
+    /**
+     * Mark the start of a phase.
+     *
+     * <p>Everything allocated since the previous mark is attributed to the previous phase. Must be
+     * called from the main loop thread.
+     *
+     * @param phase phase that starts now.
+     */
+    public void enterPhase(EnginePhase phase) {
+        if (!mEnabled) {
+            return;
+        }
+
+        long now = mark();
+
+        if (mCurrentPhase != null) {
+            mCurrentFrame[mCurrentPhase.ordinal()] += Math.max(0, now - mLastMark - mOverhead);
+        }
+
+        if (phase != null) {
+            mCurrentEntries[phase.ordinal()]++;
+        }
+
+        mCurrentPhase = phase;
+        mLastMark = mark();
+    }
+
+    /**
+     * Mark the end of a frame.
+     *
+     * <p>Closes the current phase and publishes the frame's numbers through {@link
+     * #getLastFrameBytes(EnginePhase)}.
+     */
+    public void endFrame() {
+        // Nothing was measured, if tracking got enabled in the middle of the frame
+        if (!mEnabled || mCurrentPhase == null) {
+            return;
+        }
+
+        enterPhase(null);
+
+        long frameTotal = 0;
+
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            long bytes = mCurrentFrame[i];
+            mLastFrame[i] = bytes;
+            mTotal[i] += bytes;
+            mTotalEntries[i] += mCurrentEntries[i];
+            frameTotal += bytes;
+        }
+
+        clearCurrentFrame();
+
+        mLastFrameBytes = frameTotal;
+        mFrameCount++;
+
+        if (frameTotal > mBudgetBytes) {
+            mFramesOverBudget++;
+        }
+    }
+
+    /**
+     * Get the number of bytes a phase allocated in the last complete frame.
+     *
+     * @param phase phase to query.
+     * @return allocated bytes.
+     */
+    public long getLastFrameBytes(EnginePhase phase) {
+        return mLastFrame[phase.ordinal()];
+    }
+
+    /**
+     * Get the number of bytes a phase allocated since the last reset.
+     *
+     * @param phase phase to query.
+     * @return allocated bytes.
+     */
+    public long getTotalBytes(EnginePhase phase) {
+        return mTotal[phase.ordinal()];
+    }
+
+    /**
+     * Get the average number of bytes a phase allocated per frame since the last reset.
+     *
+     * @param phase phase to query.
+     * @return average bytes per frame, 0 if no frames were measured.
+     */
+    public double getAverageBytes(EnginePhase phase) {
+        return mFrameCount == 0 ? 0 : mTotal[phase.ordinal()] / (double) mFrameCount;
+    }
+
+    /**
+     * Get the number of times a phase was entered since the last reset.
+     *
+     * <p>Phases like {@link EnginePhase#FIXED_UPDATE} run any number of times per frame, including
+     * none at all.
+     *
+     * @param phase phase to query.
+     * @return number of times the phase ran in measured frames.
+     */
+    public long getEntryCount(EnginePhase phase) {
+        return mTotalEntries[phase.ordinal()];
+    }
+
+    /**
+     * Get the average number of bytes a phase allocated every time it ran since the last reset.
+     *
+     * @param phase phase to query.
+     * @return average bytes per run of the phase, 0 if it did not run.
+     */
+    public double getAverageBytesPerEntry(EnginePhase phase) {
+        long entries = mTotalEntries[phase.ordinal()];
+        return entries == 0 ? 0 : mTotal[phase.ordinal()] / (double) entries;
+    }
+
+    /**
+     * Get the average number of bytes allocated per frame since the last reset.
+     *
+     * @return average bytes per frame, 0 if no frames were measured.
+     */
+    public double getAverageFrameBytes() {
+        if (mFrameCount == 0) {
+            return 0;
+        }
+
+        long total = 0;
+
+        for (long bytes : mTotal) {
+            total += bytes;
+        }
+
+        return total / (double) mFrameCount;
+    }
+
+    /** Reset all accumulated statistics. Useful for ignoring warm-up frames. */
+    public void reset() {
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            mLastFrame[i] = 0;
+            mTotal[i] = 0;
+            mTotalEntries[i] = 0;
+        }
+        clearCurrentFrame();
+        mFrameCount = 0;
+        mFramesOverBudget = 0;
+        mLastFrameBytes = 0;
+    }
+
+    /**
+     * Write a per-phase summary of the last frame and averages to the log.
+     *
+     * <p>This allocates, and thus should not be called every frame.
+     */
+    public void logSummary() {
+        StringBuilder builder = new StringBuilder("Allocations per frame (last/avg bytes):");
+
+        for (EnginePhase phase : EnginePhase.VALUES) {
+            builder.append(
+                    String.format(
+                            "%n  %-20s %10d %12.1f",
+                            phase, getLastFrameBytes(phase), getAverageBytes(phase)));
+        }
+
+        builder.append(
+                String.format(
+                        "%n  %d of %d frames over the %d byte budget",
+                        mFramesOverBudget, mFrameCount, mBudgetBytes));
+
+        log.info(builder.toString());
+    }
+
+    private void clearCurrentFrame() {
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            mCurrentFrame[i] = 0;
+            mCurrentEntries[i] = 0;
+        }
+    }
+
+    private long mark() {
+        return mThreadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /** Measure how many bytes a pair of counter reads allocates, so it can be discounted. */
+    private void calibrate() {
+        long min = Long.MAX_VALUE;
+
+        for (int i = 0; i < 16; i++) {
+            long start = mark();
+            long end = mark();
+            min = Math.min(min, end - start);
+        }
+
+        mOverhead = Math.max(0, min);
+    }
+}
@@ -0,0 +1,281 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+/**
+ * Read-only archive of precooked resources.
+ *
+ * @author DragonSkulle
+ *     <p>A bundle is a single memory mapped file, containing an index of resource paths, followed
+ *     by their data. Once mounted with {@link ResourceManager#mountBundle}, resource manager reads
+ *     resources from the bundle, instead of the classpath. Bundles are produced offline by {@link
+ *     org.dragonskulle.assets.AssetCooker}, which stores resources in forms that are quick to load
+ *     - decoded textures, rasterized fonts, binary glTF, and compiled shaders.
+ *     <p>The layout is little endian. A header of magic, version, and entry count is followed by
+ *     index entries of UTF-8 path, data offset, and data length. Entry data is 16 byte aligned.
+ */
+@Accessors(prefix = "m")
+public class AssetBundle {
+    /** "DSAB" in little endian. */
+    private static final int MAGIC = 0x42415344;
+
+    private static final int VERSION = 1;
+
+    private static final int ALIGNMENT = 16;
+
+    /** Location of an entry within the bundle. */
+    private static class Entry {
+        private final int mOffset;
+        private final int mLength;
+
+        /**
+         * Create an entry.
+         *
+         * @param offset offset of the data within the file.
+         * @param length length of the data.
+         */
+        Entry(int offset, int length) {
+            mOffset = offset;
+            mLength = length;
+        }
+    }
+
+    /** File the bundle was loaded from. */
+    @Getter private final Path mPath;
+    /** Last modification time of the file, in milliseconds since the epoch. */
+    @Getter private final long mModified;
+    /** Mapped contents of the file. */
+    private final ByteBuffer mData;
+
+    private final Map<String, Entry> mEntries = new HashMap<>();
+
+    /**
+     * Open a bundle.
+     *
+     * @param path path to the bundle file.
+     * @throws IOException if the file can not be read, or is not a valid bundle.
+     */
+    public AssetBundle(Path path) throws IOException {
+        mPath = path;
+        mModified = Files.getLastModifiedTime(path).toMillis();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            mData =
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                            .order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        try {
+            if (mData.getInt() != MAGIC) {
+                throw new IOException("Not an asset bundle: " + path);
+            }
+
+            int version = mData.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported asset bundle version " + version);
+            }
+
+            int count = mData.getInt();
+
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[mData.getShort() & 0xffff];
+                mData.get(name);
+                int offset = mData.getInt();
+                int length = mData.getInt();
+
+                if (offset < 0 || length < 0 || offset + length > mData.capacity()) {
+                    throw new IOException("Corrupt asset bundle: " + path);
+                }
+
+                mEntries.put(new String(name, StandardCharsets.UTF_8), new Entry(offset, length));
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt asset bundle: " + path, e);
+        }
+    }
+
+    /**
+     * Check whether the bundle contains a resource.
+     *
+     * @param path path of the resource, same as on the classpath.
+     * @return {@code true} if the resource is in the bundle.
+     */
+    public boolean contains(String path) {
+        return mEntries.containsKey(path);
+    }
+
+    /**
+     * Get paths of all resources in the bundle.
+     *
+     * @return unmodifiable set of resource paths.
+     */
+    public Set<String> getPaths() {
+        return Collections.unmodifiableSet(mEntries.keySet());
+    }
+
+    /**
+     * Get a view of a resource, without copying it.
+     *
+     * @param path path of the resource.
+     * @return read-only little endian view of the data, {@code null} if there is no such resource.
+     */
+    public ByteBuffer view(String path) {
+        Entry entry = mEntries.get(path);
+
+        if (entry == null) {
+            return null;
+        }
+
+        ByteBuffer view = mData.asReadOnlyBuffer();
+        view.limit(entry.mOffset + entry.mLength);
+        view.position(entry.mOffset);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Read a resource.
+     *
+     * @param path path of the resource.
+     * @return copy of the data, {@code null} if there is no such resource.
+     */
+    public byte[] read(String path) {
+        ByteBuffer view = view(path);
+
+        if (view == null) {
+            return null;
+        }
+
+        byte[] ret = new byte[view.remaining()];
+        view.get(ret);
+        return ret;
+    }
+
+    /** Collects resources, and writes them out as a bundle. */
+    public static class Builder {
+        private final TreeMap<String, byte[]> mEntries = new TreeMap<>();
+
+        /**
+         * Add a resource to the bundle.
+         *
+         * @param path path of the resource, same as on the classpath.
+         * @param data contents of the resource.
+         * @return this builder.
+         */
+        public Builder add(String path, byte[] data) {
+            mEntries.put(path, data);
+            return this;
+        }
+
+        /**
+         * Get the number of added resources.
+         *
+         * @return number of entries.
+         */
+        public int size() {
+            return mEntries.size();
+        }
+
+        /**
+         * Write the bundle.
+         *
+         * <p>The bundle is written to a temporary file first, and then moved in place, so that a
+         * running game never observes a partially written bundle.
+         *
+         * @param path path to write the bundle to.
+         * @throws IOException if writing fails.
+         */
+        public void write(Path path) throws IOException {
+            int indexSize = 12;
+
+            for (String name : mEntries.keySet()) {
+                indexSize += 2 + name.getBytes(StandardCharsets.UTF_8).length + 8;
+            }
+
+            long offset = align(indexSize);
+
+            ByteBuffer index = ByteBuffer.allocate(indexSize).order(ByteOrder.LITTLE_ENDIAN);
+            index.putInt(MAGIC).putInt(VERSION).putInt(mEntries.size());
+
+            for (Map.Entry<String, byte[]> entry : mEntries.entrySet()) {
+                byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                int length = entry.getValue().length;
+
+                if (name.length > 0xffff || offset + length > Integer.MAX_VALUE) {
+                    throw new IOException("Asset bundle entry too large: " + entry.getKey());
+                }
+
+                index.putShort((short) name.length).put(name);
+                index.putInt((int) offset).putInt(length);
+                offset = align(offset + length);
+            }
+
+            index.flip();
+
+            Path absolute = path.toAbsolutePath();
+            Path tmp = Files.createTempFile(absolute.getParent(), "bundle", ".tmp");
+
+            try {
+                try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                    writeFully(channel, index, 0);
+
+                    long pos = align(indexSize);
+
+                    for (byte[] data : mEntries.values()) {
+                        writeFully(channel, ByteBuffer.wrap(data), pos);
+                        pos = align(pos + data.length);
+                    }
+                }
+
+                try {
+                    Files.move(tmp, absolute, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, absolute, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+
+        /**
+         * Write the whole buffer at a position.
+         *
+         * @param channel channel to write to.
+         * @param buffer data to write.
+         * @param position position within the file.
+         * @throws IOException if writing fails.
+         */
+        private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+                throws IOException {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+
+        /**
+         * Align an offset to entry alignment.
+         *
+         * @param offset offset to align.
+         * @return the next aligned offset.
+         */
+        private static long align(long offset) {
+            return (offset + ALIGNMENT - 1) & ~(ALIGNMENT - 1);
+        }
+    }
+}
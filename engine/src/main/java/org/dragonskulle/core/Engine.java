@@ -1,11 +1,16 @@
 /* (C) 2021 DragonSkulle */
 package org.dragonskulle.core;
 
+import static org.dragonskulle.utils.Env.envBool;
+
 import com.rits.cloning.Cloner;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import lombok.Getter;
 import lombok.experimental.Accessors;
 import lombok.extern.java.Log;
@@ -21,11 +26,14 @@ import org.dragonskulle.components.IOnStart;
 import org.dragonskulle.core.futures.Future;
 import org.dragonskulle.input.Bindings;
 import org.dragonskulle.network.UPnP;
+import org.dragonskulle.renderer.RenderPipeline;
+import org.dragonskulle.renderer.Renderer;
 import org.dragonskulle.renderer.RendererException;
 import org.dragonskulle.renderer.components.Camera;
 import org.dragonskulle.renderer.components.Light;
 import org.dragonskulle.renderer.components.Renderable;
 import org.dragonskulle.settings.Settings;
+import org.dragonskulle.ui.UIBatcher;
 import org.dragonskulle.ui.UIManager;
 
 /**
@@ -46,6 +54,19 @@ public class Engine {
     private static final int WINDOW_WIDTH = 1600;
     private static final int WINDOW_HEIGHT = 900;
 
+    /**
+     * Controls whether frames are rendered on a render thread of their own, while the next frame
+     * gets simulated. Set {@code PIPELINED_RENDERING} environment variable to enable it.
+     */
+    private static final boolean PIPELINED_RENDERING = envBool("PIPELINED_RENDERING", false);
+
+    /**
+     * Controls whether UI elements are merged into a few batches before rendering. Set {@code
+     * UI_BATCHING} environment variable to {@code true} to enable it. Off by default, until it is
+     * measured in game.
+     */
+    private static final boolean UI_BATCHING = envBool("UI_BATCHING", false);
+
     @Accessors(prefix = "s")
     @Getter
     private static final Cloner sCloner = new Cloner();
@@ -64,12 +85,22 @@ public class Engine {
     private final HashSet<Scene> mScenesToUnload = new HashSet<>();
     private Scene mNewPresentationScene = null;
 
+    /** Object pools, keyed by the template they instantiate. */
+    private final Map<GameObject, GameObjectPool> mPools = new IdentityHashMap<>();
+    /** Whether a scene was unloaded this frame, so the pools should be cleared. */
+    private boolean mClearPools = false;
+
     private final HashSet<Scene> mInactiveScenes = new HashSet<>();
     private final HashSet<Scene> mActiveScenes = new HashSet<>();
+    /** Same scenes as mActiveScenes, kept for allocation-free iteration in the main loop. */
+    private final ArrayList<Scene> mActiveSceneList = new ArrayList<>();
+
     @Getter private Scene mPresentationScene = null;
 
     /** Engine's GLFW window state. */
     @Getter private GLFWState mGLFWState = null;
+    /** Renders frames on a separate thread, {@code null} if they are rendered on this one. */
+    private RenderPipeline mRenderPipeline = null;
 
     private ArrayList<IScheduledEvent> mFrameEvents = new ArrayList<>();
     private ArrayList<IScheduledEvent> mEndOfLoopEvents = new ArrayList<>();
@@ -81,6 +112,15 @@ public class Engine {
 
     private final ArrayList<Renderable> mTmpRenderables = new ArrayList<>();
     private final ArrayList<Light> mTmpLights = new ArrayList<>();
+    /** Merges UI elements of every frame, {@code null} if they are drawn on their own. */
+    private final UIBatcher mUIBatcher = UI_BATCHING ? new UIBatcher() : null;
+
+    /** Tracks heap allocations made by each phase of the main loop. */
+    @Getter private final AllocationTracker mAllocationTracker = new AllocationTracker();
+    /** Times each phase of the main loop. */
+    @Getter private final Profiler mProfiler = new Profiler();
+    /** Reloads changed resources during development. {@code null} unless hot reload is on. */
+    @Getter private ResourceWatcher mResourceWatcher = null;
 
     /** Interface used for supplying an exit condition to the main game loop. */
     public interface IEngineExitCondition {
@@ -122,6 +162,14 @@ public class Engine {
 
         UPnP.initialise();
 
+        if (ResourceWatcher.ENABLED) {
+            mResourceWatcher = ResourceWatcher.startDefault();
+        }
+
+        if (PIPELINED_RENDERING) {
+            mRenderPipeline = new RenderPipeline(mGLFWState.getRenderer());
+        }
+
         mIsRunning = true;
         mainLoop(mGLFWState::processEvents, true);
 
@@ -319,26 +367,37 @@ public class Engine {
             boolean triggerFixedUpdate = cumulativeTime > UPDATE_TIME;
 
             // Update scenes
+            enterPhase(EnginePhase.SWITCH_SCENES);
+            if (mResourceWatcher != null) {
+                // Reloads change resources in place, which the render thread may be reading
+                syncRenderThread();
+                mResourceWatcher.update();
+            }
             switchScenes();
 
             // Wake up all components that aren't awake (Called on all active scenes)
+            enterPhase(EnginePhase.WAKE_COMPONENTS);
             wakeComponents();
 
             // Start all enabled components (Called on all active scenes)
+            enterPhase(EnginePhase.START_COMPONENTS);
             startEnabledComponents();
 
             mIsRunning = exitCondition.shouldExit();
 
             if (present) {
                 Scene.setActiveScene(mPresentationScene);
-                UIManager.getInstance().uiUpdate(mPresentationScene.getEnabledComponents());
+                enterPhase(EnginePhase.UI_UPDATE);
+                UIManager.getInstance().uiUpdate(mPresentationScene);
 
                 // Call FrameUpdate on the presentation scene
+                enterPhase(EnginePhase.FRAME_UPDATE);
                 frameUpdate((float) deltaTime);
                 Scene.setActiveScene(null);
             }
 
             if (triggerFixedUpdate) {
+                enterPhase(EnginePhase.NETWORK_UPDATE);
                 networkUpdate();
 
                 do {
@@ -346,7 +405,9 @@ public class Engine {
                     mCurTime += UPDATE_TIME;
                     cumulativeDeltaTime -= UPDATE_TIME;
 
+                    enterPhase(EnginePhase.FIXED_UPDATE);
                     fixedUpdate();
+                    enterPhase(EnginePhase.AUDIO_UPDATE);
                     AudioManager.getInstance().update();
                 } while (cumulativeTime > UPDATE_TIME);
             }
@@ -358,36 +419,85 @@ public class Engine {
                 AudioManager.getInstance().updateAudioListener();
 
                 // Call LateFrameUpdate on the presentation scene
+                enterPhase(EnginePhase.LATE_FRAME_UPDATE);
                 lateFrameUpdate((float) deltaTime);
 
+                enterPhase(EnginePhase.RENDER_FRAME);
                 renderFrame();
                 Scene.setActiveScene(null);
             }
 
             if (triggerFixedUpdate) {
+                enterPhase(EnginePhase.LATE_NETWORK_UPDATE);
                 lateNetworkUpdate();
             }
 
+            enterPhase(EnginePhase.END_OF_LOOP_EVENTS);
             ArrayList<IScheduledEvent> toConsume = mEndOfLoopEvents;
             mEndOfLoopEvents = mEventsToConsume;
             consumeEvents(toConsume);
 
             // Disable all objects that have been deferred to do so
+            enterPhase(EnginePhase.DESTROY_OBJECTS);
             disableObjects();
 
+            // The last snapshot may still use materials of the objects being destroyed
+            if (!mDestroyedObjects.isEmpty() || !mDestroyedComponents.isEmpty()) {
+                syncRenderThread();
+            }
+
             // Destroy all objects and components that were destroyed this frame
             destroyObjectsAndComponents();
+
+            endFrame();
         }
     }
 
+    /**
+     * Mark the start of a main loop phase for the profiler and the allocation tracker.
+     *
+     * @param phase phase that starts now.
+     */
+    private void enterPhase(EnginePhase phase) {
+        mProfiler.enterPhase(phase);
+        mAllocationTracker.enterPhase(phase);
+    }
+
+    /**
+     * Wait for the render thread to finish drawing, if frames are rendered on one.
+     *
+     * <p>This must be done before freeing, or changing in place anything the last snapshot may
+     * reference, like materials and their textures.
+     */
+    private void syncRenderThread() {
+        if (mRenderPipeline == null) {
+            return;
+        }
+
+        try {
+            mRenderPipeline.waitIdle();
+        } catch (RendererException e) {
+            log.severe("Renderer exception! " + e);
+            mIsRunning = false;
+        }
+    }
+
+    /** Mark the end of a main loop iteration for the profiler and the allocation tracker. */
+    private void endFrame() {
+        mAllocationTracker.endFrame();
+        mProfiler.endFrame();
+    }
+
     /** Iterate through a list of components that aren't awake and wake them. */
     private void wakeComponents() {
-        for (Scene s : mActiveScenes) {
+        for (int i = 0; i < mActiveSceneList.size(); i++) {
+            Scene s = mActiveSceneList.get(i);
             Scene.setActiveScene(s);
 
             List<Component> list = s.getNotAwakeComponents();
 
-            for (Component component : list) {
+            for (int j = 0; j < list.size(); j++) {
+                Component component = list.get(j);
                 if (component instanceof IOnAwake) {
                     ((IOnAwake) component).onAwake();
                 }
@@ -408,12 +518,14 @@ public class Engine {
      * them.
      */
     private void startEnabledComponents() {
-        for (Scene s : mActiveScenes) {
+        for (int i = 0; i < mActiveSceneList.size(); i++) {
+            Scene s = mActiveSceneList.get(i);
             Scene.setActiveScene(s);
 
             List<Component> list = s.getEnabledButNotStartedComponents();
 
-            for (Component component : list) {
+            for (int j = 0; j < list.size(); j++) {
+                Component component = list.get(j);
                 if (component instanceof IOnStart) {
                     ((IOnStart) component).onStart();
                 }
@@ -436,8 +548,8 @@ public class Engine {
      */
     private void consumeEvents(ArrayList<IScheduledEvent> toConsume) {
         mEventsToConsume = toConsume;
-        for (IScheduledEvent event : mEventsToConsume) {
-            event.invoke();
+        for (int i = 0; i < mEventsToConsume.size(); i++) {
+            mEventsToConsume.get(i).invoke();
         }
         mEventsToConsume.clear();
     }
@@ -453,8 +565,13 @@ public class Engine {
         mFrameEvents = mEventsToConsume;
         consumeEvents(toConsume);
 
-        for (IFrameUpdate component : mPresentationScene.getComponentsByIface(IFrameUpdate.class)) {
+        List<IFrameUpdate> components = mPresentationScene.getComponentsByIface(IFrameUpdate.class);
+
+        for (int i = 0; i < components.size(); i++) {
+            IFrameUpdate component = components.get(i);
+            long start = mProfiler.startComponent();
             component.frameUpdate(deltaTime);
+            mProfiler.endComponent(component, EnginePhase.FRAME_UPDATE, start);
         }
     }
 
@@ -464,10 +581,17 @@ public class Engine {
         mFixedUpdateEvents = mEventsToConsume;
         consumeEvents(toConsume);
 
-        for (Scene s : mActiveScenes) {
+        for (int i = 0; i < mActiveSceneList.size(); i++) {
+            Scene s = mActiveSceneList.get(i);
             Scene.setActiveScene(s);
-            for (IFixedUpdate component : s.getComponentsByIface(IFixedUpdate.class)) {
+
+            List<IFixedUpdate> components = s.getComponentsByIface(IFixedUpdate.class);
+
+            for (int j = 0; j < components.size(); j++) {
+                IFixedUpdate component = components.get(j);
+                long start = mProfiler.startComponent();
                 component.fixedUpdate(UPDATE_TIME);
+                mProfiler.endComponent(component, EnginePhase.FIXED_UPDATE, start);
             }
         }
         Scene.setActiveScene(null);
@@ -475,10 +599,14 @@ public class Engine {
 
     /** Do all Network Updates on components that implement it. */
     private void networkUpdate() {
-        for (Scene s : mActiveScenes) {
+        for (int i = 0; i < mActiveSceneList.size(); i++) {
+            Scene s = mActiveSceneList.get(i);
             Scene.setActiveScene(s);
-            for (INetworkUpdate component : s.getComponentsByIface(INetworkUpdate.class)) {
-                component.networkUpdate();
+
+            List<INetworkUpdate> components = s.getComponentsByIface(INetworkUpdate.class);
+
+            for (int j = 0; j < components.size(); j++) {
+                components.get(j).networkUpdate();
             }
         }
         Scene.setActiveScene(null);
@@ -486,10 +614,14 @@ public class Engine {
 
     /** Do all Late Network Updates on components that implement it. */
     private void lateNetworkUpdate() {
-        for (Scene s : mActiveScenes) {
+        for (int i = 0; i < mActiveSceneList.size(); i++) {
+            Scene s = mActiveSceneList.get(i);
             Scene.setActiveScene(s);
-            for (ILateNetworkUpdate component : s.getComponentsByIface(ILateNetworkUpdate.class)) {
-                component.lateNetworkUpdate();
+
+            List<ILateNetworkUpdate> components = s.getComponentsByIface(ILateNetworkUpdate.class);
+
+            for (int j = 0; j < components.size(); j++) {
+                components.get(j).lateNetworkUpdate();
             }
         }
         Scene.setActiveScene(null);
@@ -501,9 +633,11 @@ public class Engine {
      * @param deltaTime Time change since last frame
      */
     private void lateFrameUpdate(float deltaTime) {
-        for (ILateFrameUpdate component :
-                mPresentationScene.getComponentsByIface(ILateFrameUpdate.class)) {
-            component.lateFrameUpdate(deltaTime);
+        List<ILateFrameUpdate> components =
+                mPresentationScene.getComponentsByIface(ILateFrameUpdate.class);
+
+        for (int i = 0; i < components.size(); i++) {
+            components.get(i).lateFrameUpdate(deltaTime);
         }
     }
 
@@ -517,7 +651,9 @@ public class Engine {
     private void destroyObjectsAndComponents() {
         // Destroy all game objects that need to be destroyed
         for (GameObject object : mDestroyedObjects) {
-            object.engineDestroy();
+            if (!object.recycleToPool()) {
+                object.engineDestroy();
+            }
 
             if (object.isRootObject()) {
                 for (Scene s : mActiveScenes) {
@@ -530,6 +666,12 @@ public class Engine {
         }
         mDestroyedObjects.clear();
 
+        // Objects of unloaded scenes have been recycled by now, drop them with their pools
+        if (mClearPools) {
+            clearPools();
+            mClearPools = false;
+        }
+
         // Destroy all components that need to be destroyed
         for (Component component : mDestroyedComponents) {
             component.engineDestroy();
@@ -542,19 +684,39 @@ public class Engine {
         mTmpRenderables.clear();
         mTmpLights.clear();
 
-        for (Renderable component : mPresentationScene.getComponentsByIface(Renderable.class)) {
-            mTmpRenderables.add(component);
+        // Indexed loops, because addAll would copy the lists into a temporary array
+        List<Renderable> renderables = mPresentationScene.getComponentsByIface(Renderable.class);
+
+        if (mUIBatcher != null) {
+            mUIBatcher.batch(renderables, mTmpRenderables);
+        } else {
+            for (int i = 0; i < renderables.size(); i++) {
+                mTmpRenderables.add(renderables.get(i));
+            }
         }
 
-        for (Light component : mPresentationScene.getComponentsByIface(Light.class)) {
-            mTmpLights.add(component);
+        List<Light> lights = mPresentationScene.getComponentsByIface(Light.class);
+
+        for (int i = 0; i < lights.size(); i++) {
+            mTmpLights.add(lights.get(i));
         }
 
         Camera mainCamera = mPresentationScene.getSingleton(Camera.class);
 
         if (mainCamera != null) {
+            Renderer renderer = mGLFWState.getRenderer();
+
             try {
-                mGLFWState.getRenderer().render(mainCamera, mTmpRenderables, mTmpLights);
+                if (mRenderPipeline != null) {
+                    mRenderPipeline.submit(
+                            mainCamera,
+                            mTmpRenderables,
+                            mTmpLights,
+                            renderer.getFramebufferWidth(),
+                            renderer.getFramebufferHeight());
+                } else {
+                    renderer.render(mainCamera, mTmpRenderables, mTmpLights);
+                }
             } catch (RendererException e) {
                 log.severe("Renderer exception! " + e);
                 mIsRunning = false;
@@ -567,6 +729,7 @@ public class Engine {
      * should be enabled and switching the presentation scene if necessary.
      */
     private void switchScenes() {
+        boolean activeChanged = false;
 
         // Load the new presentation scene
         if (mNewPresentationScene != null) {
@@ -577,7 +740,7 @@ public class Engine {
             }
 
             // And then load the new one
-            mActiveScenes.add(mNewPresentationScene);
+            activeChanged |= mActiveScenes.add(mNewPresentationScene);
             mPresentationScene = mNewPresentationScene;
             mNewPresentationScene = null;
         }
@@ -585,7 +748,7 @@ public class Engine {
         // Disable all scenes that need to be disabled
         for (Scene s : mScenesToDeactivate) {
             if (s == null) continue;
-            mActiveScenes.remove(s);
+            activeChanged |= mActiveScenes.remove(s);
             mInactiveScenes.add(s);
         }
 
@@ -593,13 +756,13 @@ public class Engine {
         for (Scene s : mScenesToActivate) {
             if (s == null) continue;
             mInactiveScenes.remove(s);
-            mActiveScenes.add(s);
+            activeChanged |= mActiveScenes.add(s);
         }
 
         // Unload all scenes that need to be unloaded and flag all gameobjects for destruction
         for (Scene s : mScenesToUnload) {
             if (s == null) continue;
-            mActiveScenes.remove(s);
+            activeChanged |= mActiveScenes.remove(s);
             mInactiveScenes.remove(s);
             if (mPresentationScene != null && mPresentationScene == s) {
                 mPresentationScene = null;
@@ -607,8 +770,15 @@ public class Engine {
             for (GameObject r : s.getGameObjects()) {
                 r.destroy();
             }
+            // Templates of the pools usually belong to the scene's resources
+            mClearPools = true;
         }
         mScenesToUnload.clear();
+
+        if (activeChanged) {
+            mActiveSceneList.clear();
+            mActiveSceneList.addAll(mActiveScenes);
+        }
     }
 
     /** Destroy all game objects and components in all scenes. Used for cleanup */
@@ -635,7 +805,23 @@ public class Engine {
         // TODO: Release all resources that are still used at the time of shutdown here
 
         UPnP.deleteAllMappings();
+
+        if (mRenderPipeline != null) {
+            mRenderPipeline.close();
+            mRenderPipeline = null;
+        }
+
         destroyAllObjects();
+        clearPools();
+
+        if (mUIBatcher != null) {
+            mUIBatcher.free();
+        }
+
+        if (mResourceWatcher != null) {
+            mResourceWatcher.close();
+            mResourceWatcher = null;
+        }
 
         if (mGLFWState != null) {
             mGLFWState.free();
@@ -643,6 +829,37 @@ public class Engine {
         }
     }
 
+    /**
+     * Get the object pool of a template.
+     *
+     * <p>The pool is created on first use, with {@link GameObjectPool#DEFAULT_MAX_SIZE} as its size
+     * limit. All pools are dropped when a scene gets unloaded, and created again on next use.
+     *
+     * @param template template the pool should instantiate.
+     * @return the pool of the template.
+     */
+    public GameObjectPool getPool(GameObject template) {
+        return mPools.computeIfAbsent(
+                template, (t) -> new GameObjectPool(t, GameObjectPool.DEFAULT_MAX_SIZE));
+    }
+
+    /**
+     * Get all object pools created so far.
+     *
+     * @return list of pools, which can be used to inspect their statistics.
+     */
+    public ArrayList<GameObjectPool> getPools() {
+        return new ArrayList<>(mPools.values());
+    }
+
+    /** Destroy all idle pooled objects, and drop the pools. */
+    public void clearPools() {
+        for (GameObjectPool pool : mPools.values()) {
+            pool.clear();
+        }
+        mPools.clear();
+    }
+
     /**
      * Add a component to the set of all components to be destroyed.
      *
@@ -670,6 +887,15 @@ public class Engine {
         return new ArrayList<>(mActiveScenes);
     }
 
+    /**
+     * Get the active scenes without copying them.
+     *
+     * @return set of active scenes, owned by the engine.
+     */
+    Collection<Scene> getActiveScenesView() {
+        return mActiveScenes;
+    }
+
     /**
      * Get the single instance of the engine.
      *
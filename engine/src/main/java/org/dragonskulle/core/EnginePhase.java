@@ -0,0 +1,27 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.core;
+
+/**
+ * Phases of a single iteration of the engine's main loop.
+ *
+ * @author DragonSkulle
+ *     <p>These are used to attribute per-frame measurements to the part of the loop they come from.
+ */
+public enum EnginePhase {
+    SWITCH_SCENES,
+    WAKE_COMPONENTS,
+    START_COMPONENTS,
+    UI_UPDATE,
+    FRAME_UPDATE,
+    NETWORK_UPDATE,
+    FIXED_UPDATE,
+    AUDIO_UPDATE,
+    LATE_FRAME_UPDATE,
+    RENDER_FRAME,
+    LATE_NETWORK_UPDATE,
+    END_OF_LOOP_EVENTS,
+    DESTROY_OBJECTS;
+
+    /** Cached values, so that iterating over phases does not clone the array every time. */
+    public static final EnginePhase[] VALUES = values();
+}
@@ -137,6 +137,8 @@ public class GLFWState implements NativeResource {
         Input.beforePoll();
         glfwPollEvents();
 
+        mRenderer.updateFramebufferSize();
+
         if (mFramebufferResized) {
             mFramebufferResized = false;
             try {
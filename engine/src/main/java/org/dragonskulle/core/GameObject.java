@@ -1,8 +1,11 @@
 /* (C) 2021 DragonSkulle */
 package org.dragonskulle.core;
 
+import com.rits.cloning.IDeepCloner;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import lombok.Getter;
 import lombok.experimental.Accessors;
@@ -28,14 +31,23 @@ public class GameObject {
 
     @Getter private GameObject mRoot;
     @Getter private GameObject mParent;
-    @Getter private Transform mTransform = new Transform3D();
-    @Getter private final String mName;
+    @Getter private Transform mTransform;
+    @Getter private String mName;
+    /** Tags of the object, used for lookups through {@link Scene#findObjectsByTag}. */
+    private ArrayList<String> mTags = null;
+
     @Getter private boolean mEnabled;
     @Getter private Scene mScene;
+    /** Scene whose indices this object is in. Only set while the object is within the scene. */
+    private Scene mIndexedScene = null;
     /** How deep the object is within the game object structure. */
     @Getter private int mDepth = 0;
     /** How much depth is added by the object. */
     @Getter private int mDepthOffset = 1;
+    /** Precomputed instantiation plan, used when this root object is cloned as a template. */
+    TemplatePlan mTemplatePlan = null;
+    /** Pool this object was obtained from. When set, destroying the object recycles it instead. */
+    GameObjectPool mPool = null;
 
     static {
         Engine.getCloner()
@@ -43,6 +55,9 @@ public class GameObject {
                         GameObject.class,
                         (t, cloner, clones) -> {
                             GameObject toClone = (GameObject) t;
+                            if (toClone.mTemplatePlan != null && toClone.mParent == null) {
+                                return clonePlanned(toClone.mTemplatePlan, cloner, clones);
+                            }
                             GameObject cloned = new GameObject(toClone.mName);
                             clones.put(toClone, cloned);
                             cloned.mRoot = cloner.deepClone(toClone.mRoot, clones);
@@ -55,12 +70,61 @@ public class GameObject {
                                 cloned.mChildren.add(cloner.deepClone(go, clones));
                             }
                             cloned.mEnabled = toClone.mEnabled;
+                            cloned.copyTags(toClone);
                             cloned.mDepth = toClone.mDepth;
                             cloned.mDepthOffset = toClone.mDepthOffset;
                             return cloned;
                         });
     }
 
+    /**
+     * Clone a template hierarchy using its precomputed {@link TemplatePlan}.
+     *
+     * <p>All objects of the hierarchy are created and linked up front, and registered in the clone
+     * map. This way transforms and components that refer back to any object in the hierarchy get
+     * the new instance straight from the map, instead of recursing through the tree.
+     *
+     * @param plan plan of the template.
+     * @param cloner cloner used for transforms and components.
+     * @param clones identity map of objects cloned so far.
+     * @return the cloned root object.
+     */
+    private static GameObject clonePlanned(
+            TemplatePlan plan, IDeepCloner cloner, Map<Object, Object> clones) {
+        GameObject[] nodes = plan.getNodes();
+        int[] parents = plan.getParents();
+        GameObject[] cloned = new GameObject[nodes.length];
+
+        for (int i = 0; i < nodes.length; i++) {
+            GameObject node = nodes[i];
+            GameObject go = new GameObject(node.mName, node.mEnabled, (Transform) null);
+            go.mDepth = node.mDepth;
+            go.mDepthOffset = node.mDepthOffset;
+            go.copyTags(node);
+            go.mComponents.ensureCapacity(node.mComponents.size());
+            cloned[i] = go;
+            clones.put(node, go);
+
+            if (i > 0) {
+                GameObject parent = cloned[parents[i]];
+                go.mParent = parent;
+                go.mRoot = parent.mRoot == null ? parent : parent.mRoot;
+                parent.mChildren.add(go);
+            }
+        }
+
+        for (int i = 0; i < nodes.length; i++) {
+            GameObject node = nodes[i];
+            GameObject go = cloned[i];
+            go.mTransform = cloner.deepClone(node.mTransform, clones);
+            for (Component comp : node.mComponents) {
+                go.mComponents.add(cloner.deepClone(comp, clones));
+            }
+        }
+
+        return cloned[0];
+    }
+
     /**
      * A handler interface for building game objects
      *
@@ -107,28 +171,24 @@ public class GameObject {
     }
 
     /**
-     * Find an instance of a GameObject with a given name in the currently active scene. This is
-     * very, very slow and should not be used in any update loops. Instead, you should get all
-     * references to necessary GameObjects in onAwake or onStart and save them for future use.
+     * Find an instance of a GameObject with a given name in the currently active scenes.
+     *
+     * <p>This goes through the name index of every active scene, so it is cheap, but it is still
+     * preferable to get all references to necessary GameObjects in onAwake or onStart and save them
+     * for future use.
+     *
+     * <p>Every scene is searched in hierarchy order, as in {@link Scene#findObjectByName}, which
+     * includes matching the root objects themselves.
      *
      * @param name Name of the object to search for
      * @return A reference to the first GameObject found, or null if nothing is found
      */
     public static Reference<GameObject> findObjectByName(String name) {
-        List<Scene> activeScenes = Engine.getInstance().getActiveScenes();
-
-        for (Scene s : activeScenes) {
-            for (GameObject root : s.getGameObjects()) {
+        for (Scene s : Engine.getInstance().getActiveScenesView()) {
+            GameObject obj = s.findObjectByName(name);
 
-                ArrayList<GameObject> children = new ArrayList<>();
-                root.getAllChildren(children);
-
-                for (GameObject obj : children) {
-
-                    if (obj.mName.equals(name)) {
-                        return obj.getReference();
-                    }
-                }
+            if (obj != null) {
+                return obj.getReference();
             }
         }
 
@@ -155,6 +215,7 @@ public class GameObject {
         mParent = null;
         mName = name;
         mEnabled = enabled;
+        mTransform = new Transform3D();
         mTransform.setGameObject(this);
     }
 
@@ -227,7 +288,9 @@ public class GameObject {
         mName = name;
         mEnabled = enabled;
         mTransform = transform;
-        mTransform.setGameObject(this);
+        if (mTransform != null) {
+            mTransform.setGameObject(this);
+        }
     }
 
     /**
@@ -238,12 +301,16 @@ public class GameObject {
      * @return The first component of type T found, or null if none were found
      */
     public <T extends Component> Reference<T> getComponent(Class<T> type) {
-        return mComponents.stream()
-                .filter(type::isInstance)
-                .map(component -> component.getReference(type))
-                .filter(Reference::isValid)
-                .findFirst()
-                .orElse(null);
+        for (int i = 0; i < mComponents.size(); i++) {
+            Component component = mComponents.get(i);
+            if (type.isInstance(component)) {
+                Reference<T> ref = component.getReference(type);
+                if (Reference.isValid(ref)) {
+                    return ref;
+                }
+            }
+        }
+        return null;
     }
 
     /**
@@ -286,7 +353,8 @@ public class GameObject {
      * @param ret The List that will be populated with children.
      */
     protected void getAllChildren(List<GameObject> ret) {
-        for (GameObject child : mChildren) {
+        for (int i = 0; i < mChildren.size(); i++) {
+            GameObject child = mChildren.get(i);
             ret.add(child);
             child.getAllChildren(ret);
         }
@@ -314,6 +382,29 @@ public class GameObject {
      * @return child game object if found, {@code null} otherwise
      */
     public GameObject findChildByName(String name) {
+        if (mIndexedScene != null) {
+            List<GameObject> named = mIndexedScene.findObjectsByName(name);
+
+            // Only worth going through the index, when it narrows the search down
+            if (named.size() < mChildren.size()) {
+                GameObject found = null;
+                boolean several = false;
+
+                for (int i = 0; i < named.size() && !several; i++) {
+                    GameObject obj = named.get(i);
+                    if (obj.mParent == this) {
+                        several = found != null;
+                        found = obj;
+                    }
+                }
+
+                // Children sharing the name are returned in child order, found below
+                if (!several) {
+                    return found;
+                }
+            }
+        }
+
         for (GameObject child : mChildren) {
             if (child.getName().equals(name)) {
                 return child;
@@ -322,6 +413,30 @@ public class GameObject {
         return null;
     }
 
+    /**
+     * Finds a descendant by its name, going through the children depth-first.
+     *
+     * @param name name of the descendant.
+     * @return the first descendant with the name, {@code null} if there is none.
+     */
+    GameObject findDescendantByName(String name) {
+        for (int i = 0; i < mChildren.size(); i++) {
+            GameObject child = mChildren.get(i);
+
+            if (child.getName().equals(name)) {
+                return child;
+            }
+
+            GameObject found = child.findDescendantByName(name);
+
+            if (found != null) {
+                return found;
+            }
+        }
+
+        return null;
+    }
+
     /**
      * Add a component to the GameObject. If the component's GameObject is null, it is set to this
      * If the component's GameObject is another GameObject, the component is removed from that
@@ -364,6 +479,8 @@ public class GameObject {
         child.setDepth(mDepth + child.getDepthOffset());
         mChildren.add(child);
         child.setScene(mScene);
+        child.setIndexedScene(mIndexedScene);
+        invalidateTemplatePlan();
         dirtyComponentLists();
     }
 
@@ -383,8 +500,10 @@ public class GameObject {
             child.setEnabled(mEnabled && child.isEnabled());
             child.setDepth(this.mDepth + child.getDepthOffset());
             child.setScene(mScene);
+            child.setIndexedScene(mIndexedScene);
         }
         mChildren.addAll(children);
+        invalidateTemplatePlan();
         dirtyComponentLists();
     }
 
@@ -471,6 +590,8 @@ public class GameObject {
     public void removeChild(GameObject child) {
         mChildren.remove(child);
         child.setScene(null);
+        child.setIndexedScene(null);
+        invalidateTemplatePlan();
         dirtyComponentLists();
     }
 
@@ -517,6 +638,28 @@ public class GameObject {
         return new ArrayList<>(mChildren);
     }
 
+    /**
+     * Get the number of direct children of the GameObject.
+     *
+     * <p>Together with {@link #getChild}, this allows to iterate the children without copying them,
+     * like {@link #getChildren} does.
+     *
+     * @return number of children.
+     */
+    public int getChildCount() {
+        return mChildren.size();
+    }
+
+    /**
+     * Get a direct child of the GameObject.
+     *
+     * @param index index of the child, in range {@code [0; getChildCount())}.
+     * @return the child at the index.
+     */
+    public GameObject getChild(int index) {
+        return mChildren.get(index);
+    }
+
     /**
      * Getter for mTransform with cast.
      *
@@ -642,6 +785,123 @@ public class GameObject {
         }
     }
 
+    /**
+     * Sets the scene whose indices the object and its children should be in.
+     *
+     * <p>Unlike {@link #setScene}, this is only set for objects that are actually part of the
+     * scene's hierarchy, so that loose clones of templates do not end up in the indices.
+     *
+     * @param scene scene the object was attached to, {@code null} if it was detached.
+     */
+    void setIndexedScene(Scene scene) {
+        if (mIndexedScene != scene) {
+            if (mIndexedScene != null) {
+                mIndexedScene.unindexObject(this);
+            }
+            mIndexedScene = scene;
+            if (scene != null) {
+                scene.indexObject(this);
+            }
+        }
+
+        for (GameObject obj : mChildren) {
+            obj.setIndexedScene(scene);
+        }
+    }
+
+    /**
+     * Rename the object.
+     *
+     * @param name new name of the object.
+     */
+    public void setName(String name) {
+        String oldName = mName;
+        mName = name;
+
+        if (mIndexedScene != null) {
+            mIndexedScene.onObjectRenamed(this, oldName);
+        }
+    }
+
+    /**
+     * Add a tag to the object.
+     *
+     * <p>Tags allow to group objects, and look them up with {@link Scene#findObjectsByTag}.
+     *
+     * @param tag tag to add.
+     */
+    public void addTag(String tag) {
+        if (hasTag(tag)) {
+            return;
+        }
+
+        if (mTags == null) {
+            mTags = new ArrayList<>(1);
+        }
+
+        mTags.add(tag);
+
+        if (mIndexedScene != null) {
+            mIndexedScene.onObjectTagged(this, tag, true);
+        }
+    }
+
+    /**
+     * Remove a tag from the object.
+     *
+     * @param tag tag to remove.
+     */
+    public void removeTag(String tag) {
+        if (mTags == null || !mTags.remove(tag)) {
+            return;
+        }
+
+        if (mIndexedScene != null) {
+            mIndexedScene.onObjectTagged(this, tag, false);
+        }
+    }
+
+    /**
+     * Check whether the object has a tag.
+     *
+     * @param tag tag to check.
+     * @return {@code true} if the object is tagged with it.
+     */
+    public boolean hasTag(String tag) {
+        return mTags != null && mTags.contains(tag);
+    }
+
+    /**
+     * Get all tags of the object.
+     *
+     * @return read-only list of tags.
+     */
+    public List<String> getTags() {
+        return mTags == null ? Collections.emptyList() : Collections.unmodifiableList(mTags);
+    }
+
+    /**
+     * Copy tags of another object, used when cloning.
+     *
+     * @param other object to copy the tags from.
+     */
+    private void copyTags(GameObject other) {
+        if (other.mTags != null) {
+            mTags = new ArrayList<>(other.mTags);
+        }
+    }
+
+    /**
+     * Drop the template plan of the hierarchy this object belongs to.
+     *
+     * <p>Plans cache the structure of the tree, thus they have to be recompiled once children
+     * change.
+     */
+    private void invalidateTemplatePlan() {
+        GameObject root = mRoot == null ? this : mRoot;
+        root.mTemplatePlan = null;
+    }
+
     /** Dirty the component list of the object's scene. */
     public void dirtyComponentLists() {
         if (mScene != null) {
@@ -649,6 +909,30 @@ public class GameObject {
         }
     }
 
+    /**
+     * Return the object back to the pool it came from, instead of destroying it.
+     *
+     * @return {@code true} if the object was recycled, {@code false} if it should be destroyed.
+     */
+    boolean recycleToPool() {
+        // Objects already torn down (for example, with their parent) can not be reused
+        if (mPool == null || mTransform == null) {
+            return false;
+        }
+
+        return mPool.recycle(this);
+    }
+
+    /** Detach the object from its parent, making it a standalone root object. */
+    void detachFromParent() {
+        if (mParent != null) {
+            mParent.removeChild(this);
+            mParent = null;
+            setDepth(0);
+        }
+        mRoot = null;
+    }
+
     /** Handle the destruction of the object. */
     protected void engineDestroy() {
         // Create a copy of the list of children this object has
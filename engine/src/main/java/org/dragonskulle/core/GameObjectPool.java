@@ -0,0 +1,195 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import org.dragonskulle.components.Component;
+import org.dragonskulle.components.IOnRecycle;
+
+/**
+ * Pool of instances of a single template.
+ *
+ * @author DragonSkulle
+ *     <p>Objects obtained from a pool are regular game objects, but once they get destroyed, they
+ *     are detached, disabled and kept in the pool instead of being torn down. Components
+ *     implementing {@link IOnRecycle} get notified when this happens, so they can reset their
+ *     state. The next {@link #obtain} call then reuses the object instead of cloning the template.
+ *     <p>Pools are retrieved through {@link Engine#getPool}.
+ */
+@Accessors(prefix = "m")
+public class GameObjectPool {
+    /** Default number of objects a pool holds on to. */
+    public static final int DEFAULT_MAX_SIZE = 64;
+
+    /** Template objects of this pool are cloned from. */
+    @Getter private final GameObject mTemplate;
+
+    /** Maximum number of idle objects kept in the pool. Anything above is destroyed. */
+    @Getter @Setter private int mMaxSize;
+
+    /** Idle objects, ready to be reused. */
+    private final ArrayDeque<GameObject> mPooled = new ArrayDeque<>();
+
+    /** Number of objects cloned from the template. */
+    @Getter private int mInstantiated = 0;
+    /** Number of objects handed out from the idle list. */
+    @Getter private int mReused = 0;
+    /** Number of objects returned to the idle list. */
+    @Getter private int mRecycled = 0;
+    /** Number of objects destroyed, because the pool was full. */
+    @Getter private int mDiscarded = 0;
+
+    /** Whether the pool was cleared, and no longer takes objects back. */
+    private boolean mCleared = false;
+
+    /** Temporary list used to collect the children of recycled objects. */
+    private final ArrayList<GameObject> mTmpChildren = new ArrayList<>();
+    /** Temporary list used to collect the components of recycled objects. */
+    private final ArrayList<Component> mTmpComponents = new ArrayList<>();
+
+    /**
+     * Create a pool.
+     *
+     * @param template template to clone objects from.
+     * @param maxSize maximum number of idle objects to keep.
+     */
+    GameObjectPool(GameObject template, int maxSize) {
+        mTemplate = template;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Obtain an object from the pool.
+     *
+     * <p>The returned object is not attached to any scene or parent, just like one returned by
+     * {@link GameObject#instantiate}. Reused objects keep whatever transformation they had, so it
+     * should be set by the caller.
+     *
+     * @return an object of the template.
+     */
+    public GameObject obtain() {
+        GameObject object = mPooled.pollFirst();
+
+        if (object != null) {
+            mReused++;
+            object.setEnabledImmediate(mTemplate.isEnabled());
+            return object;
+        }
+
+        return instantiate();
+    }
+
+    /**
+     * Fill the pool with idle objects ahead of time.
+     *
+     * @param count number of objects the pool should hold.
+     */
+    public void prewarm(int count) {
+        count = Math.min(count, mMaxSize);
+
+        while (mPooled.size() < count) {
+            GameObject object = instantiate();
+            object.setEnabledImmediate(false);
+            mPooled.addLast(object);
+        }
+    }
+
+    /**
+     * Clone a new object of the pool from the template.
+     *
+     * <p>The template's plan is compiled first, if it has none, so that every clone goes through
+     * it.
+     *
+     * @return the new object.
+     */
+    private GameObject instantiate() {
+        if (mTemplate.isRootObject() && !TemplatePlan.isCompiled(mTemplate)) {
+            TemplatePlan.compile(mTemplate);
+        }
+
+        GameObject object = GameObject.instantiate(mTemplate);
+        object.mPool = this;
+        mInstantiated++;
+        return object;
+    }
+
+    /**
+     * Get the number of idle objects currently in the pool.
+     *
+     * @return number of idle objects.
+     */
+    public int getPooledCount() {
+        return mPooled.size();
+    }
+
+    /**
+     * Return a destroyed object back to the pool.
+     *
+     * <p>This is called by the engine at the point where the object would otherwise get destroyed.
+     * The object is expected to already be disabled.
+     *
+     * @param object object to recycle.
+     * @return {@code true} if the object was recycled, {@code false} if it has to be destroyed.
+     */
+    boolean recycle(GameObject object) {
+        if (mCleared) {
+            return false;
+        }
+
+        if (mPooled.size() >= mMaxSize) {
+            mDiscarded++;
+            return false;
+        }
+
+        object.detachFromParent();
+
+        mTmpChildren.clear();
+        mTmpChildren.add(object);
+        object.getAllChildren(mTmpChildren);
+
+        for (GameObject go : mTmpChildren) {
+            // Components may remove others, like ones they added on start, while recycling
+            mTmpComponents.addAll(go.getComponents());
+
+            for (Component comp : mTmpComponents) {
+                if (comp.getGameObject() != go) {
+                    continue;
+                }
+                if (comp instanceof IOnRecycle) {
+                    ((IOnRecycle) comp).onRecycle();
+                }
+                comp.setStarted(false);
+            }
+
+            mTmpComponents.clear();
+        }
+
+        mTmpChildren.clear();
+
+        // Anyone still holding on to the object should see it as destroyed
+        object.recreateReferences();
+
+        mRecycled++;
+        mPooled.addLast(object);
+        return true;
+    }
+
+    /**
+     * Destroy all idle objects held by the pool.
+     *
+     * <p>The pool is dropped by the engine afterwards, so objects still in use are destroyed
+     * normally once they are done, instead of being returned to it.
+     */
+    void clear() {
+        mCleared = true;
+
+        for (GameObject object : mPooled) {
+            object.mPool = null;
+            object.engineDestroy();
+        }
+        mPooled.clear();
+    }
+}
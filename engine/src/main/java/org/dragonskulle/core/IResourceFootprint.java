@@ -0,0 +1,20 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.core;
+
+/**
+ * Report memory footprint of a resource.
+ *
+ * @author DragonSkulle
+ *     <p>{@link ResourceManager} accounts memory of cached resources to decide when to evict the
+ *     unused ones. By default, the size of the file the resource was loaded from is used, which may
+ *     be far off for compressed data, such as images. Resources can implement this interface to
+ *     report a better estimate.
+ */
+public interface IResourceFootprint {
+    /**
+     * Get the memory footprint of the resource.
+     *
+     * @return approximate number of bytes the resource keeps allocated.
+     */
+    long getFootprintBytes();
+}
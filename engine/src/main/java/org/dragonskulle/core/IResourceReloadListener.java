@@ -0,0 +1,24 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.core;
+
+/**
+ * Get notified about cached resources being reloaded.
+ *
+ * @author DragonSkulle
+ *     <p>When a resource is reloaded, every {@link Resource} handle to it starts returning the new
+ *     object. Anything derived from the old object, such as GPU copies of textures, or pipelines
+ *     built from shaders, should be rebuilt. Register listeners with {@link
+ *     ResourceManager#addReloadListener}.
+ */
+public interface IResourceReloadListener {
+    /**
+     * Called after a resource was swapped, but before the previous object gets freed.
+     *
+     * <p>This is called on the thread performing the reload - usually the main thread.
+     *
+     * @param args arguments of the reloaded resource.
+     * @param previous the object handles used to return. It is freed right after this call.
+     * @param current the newly loaded object.
+     */
+    void onResourceReloaded(ResourceArguments<?, ?> args, Object previous, Object current);
+}
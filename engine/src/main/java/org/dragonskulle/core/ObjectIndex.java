@@ -0,0 +1,79 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Multimap from string keys to game objects.
+ *
+ * @author DragonSkulle
+ *     <p>Used by {@link Scene} to look objects up by their name or tag. Lists handed out by {@link
+ *     #get} are read-only views of the lists owned by the index. Objects are kept in the order
+ *     they were added, not in hierarchy order.
+ */
+class ObjectIndex {
+    private final HashMap<String, ArrayList<GameObject>> mEntries = new HashMap<>();
+
+    /**
+     * Add an object under a key.
+     *
+     * @param key key to add the object under.
+     * @param object object to add.
+     */
+    void add(String key, GameObject object) {
+        if (key == null) {
+            return;
+        }
+        mEntries.computeIfAbsent(key, (k) -> new ArrayList<>(1)).add(object);
+    }
+
+    /**
+     * Remove an object from a key.
+     *
+     * @param key key the object was added under.
+     * @param object object to remove.
+     */
+    void remove(String key, GameObject object) {
+        if (key == null) {
+            return;
+        }
+
+        ArrayList<GameObject> list = mEntries.get(key);
+
+        if (list == null) {
+            return;
+        }
+
+        // Identity comparison, GameObject does not override equals
+        list.remove(object);
+
+        if (list.isEmpty()) {
+            mEntries.remove(key);
+        }
+    }
+
+    /**
+     * Get all objects under a key.
+     *
+     * @param key key to look up.
+     * @return read-only list of objects. Empty list if there are none.
+     */
+    List<GameObject> get(String key) {
+        ArrayList<GameObject> list = mEntries.get(key);
+        return list == null ? Collections.emptyList() : Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Get the first object under a key.
+     *
+     * @param key key to look up.
+     * @return the first object added under the key, {@code null} if there are none.
+     */
+    GameObject getFirst(String key) {
+        ArrayList<GameObject> list = mEntries.get(key);
+        return list == null ? null : list.get(0);
+    }
+}
@@ -0,0 +1,559 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.core;
+
+import static org.dragonskulle.utils.Env.envBool;
+import static org.dragonskulle.utils.Env.envInt;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import lombok.extern.java.Log;
+import org.json.simple.JSONValue;
+
+/**
+ * Hierarchical main loop profiler.
+ *
+ * @author DragonSkulle
+ *     <p>The engine wraps every frame, and every {@link EnginePhase} within it, into profiler
+ *     scopes. Additional nested scopes can be opened with {@link #scope}, or {@link #begin} and
+ *     {@link #end}. Completed scopes are stored in a fixed size ring buffer, which can be exported
+ *     in Chrome's trace event format with {@link #exportChromeTrace}, and viewed in {@code
+ *     chrome://tracing}.
+ *     <p>Optionally, time spent in update methods of every component class is accumulated as well,
+ *     see {@link #setComponentTiming}.
+ *     <p>The profiler is only meant to be used from the main loop thread. When disabled, every call
+ *     returns straight away, and nothing gets allocated when enabled either, apart from the first
+ *     time a component class is timed.
+ */
+@Accessors(prefix = "m")
+@Log
+public class Profiler {
+    /** Default number of samples kept in the ring buffer. */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    /** Maximum depth of nested scopes. Scopes beyond this depth are ignored. */
+    public static final int MAX_DEPTH = 64;
+
+    /** Name of the root scope of every frame. */
+    private static final String FRAME_SCOPE = "Frame";
+
+    private static final int PHASE_COUNT = EnginePhase.VALUES.length;
+    private static final String[] PHASE_NAMES = new String[PHASE_COUNT];
+
+    static {
+        for (EnginePhase phase : EnginePhase.VALUES) {
+            PHASE_NAMES[phase.ordinal()] = phase.toString();
+        }
+    }
+
+    /** Scope handle, closing it ends the scope. */
+    public static class Scope implements AutoCloseable {
+        private final Profiler mProfiler;
+
+        /**
+         * Create a scope handle.
+         *
+         * @param profiler profiler to end the scope on. {@code null} for a no-op handle.
+         */
+        private Scope(Profiler profiler) {
+            mProfiler = profiler;
+        }
+
+        @Override
+        public void close() {
+            if (mProfiler != null) {
+                mProfiler.end();
+            }
+        }
+    }
+
+    /** Scope handle returned while the profiler is disabled. */
+    private static final Scope NO_OP_SCOPE = new Scope(null);
+
+    /** Accumulated timings of a single component class. */
+    @Accessors(prefix = "m")
+    public static class ComponentTiming {
+        /** The component class. */
+        @Getter private final Class<?> mType;
+
+        private final long[] mCalls = new long[PHASE_COUNT];
+        private final long[] mTotalNanos = new long[PHASE_COUNT];
+        private final long[] mMaxNanos = new long[PHASE_COUNT];
+        private final long[] mFrameNanos = new long[PHASE_COUNT];
+        private final long[] mLastFrameNanos = new long[PHASE_COUNT];
+
+        /**
+         * Create component timing.
+         *
+         * @param type component class to time.
+         */
+        private ComponentTiming(Class<?> type) {
+            mType = type;
+        }
+
+        /**
+         * Get the number of timed calls in a phase.
+         *
+         * @param phase phase to query.
+         * @return number of calls since the last reset.
+         */
+        public long getCalls(EnginePhase phase) {
+            return mCalls[phase.ordinal()];
+        }
+
+        /**
+         * Get the time spent in a phase.
+         *
+         * @param phase phase to query.
+         * @return nanoseconds spent since the last reset.
+         */
+        public long getTotalNanos(EnginePhase phase) {
+            return mTotalNanos[phase.ordinal()];
+        }
+
+        /**
+         * Get the longest single call in a phase.
+         *
+         * @param phase phase to query.
+         * @return nanoseconds of the longest call since the last reset.
+         */
+        public long getMaxNanos(EnginePhase phase) {
+            return mMaxNanos[phase.ordinal()];
+        }
+
+        /**
+         * Get the time spent in a phase in the last complete frame.
+         *
+         * @param phase phase to query.
+         * @return nanoseconds spent.
+         */
+        public long getLastFrameNanos(EnginePhase phase) {
+            return mLastFrameNanos[phase.ordinal()];
+        }
+
+        /**
+         * Get the time spent in all phases in the last complete frame.
+         *
+         * @return nanoseconds spent.
+         */
+        public long getLastFrameNanos() {
+            long total = 0;
+            for (long nanos : mLastFrameNanos) {
+                total += nanos;
+            }
+            return total;
+        }
+
+        /** Move the current frame into the last frame. */
+        private void endFrame() {
+            for (int i = 0; i < PHASE_COUNT; i++) {
+                mLastFrameNanos[i] = mFrameNanos[i];
+                mFrameNanos[i] = 0;
+            }
+        }
+
+        /** Reset all the accumulated statistics. */
+        private void reset() {
+            for (int i = 0; i < PHASE_COUNT; i++) {
+                mCalls[i] = 0;
+                mTotalNanos[i] = 0;
+                mMaxNanos[i] = 0;
+                mFrameNanos[i] = 0;
+                mLastFrameNanos[i] = 0;
+            }
+        }
+    }
+
+    /** Whether the profiler is recording. */
+    @Getter private boolean mEnabled = false;
+
+    /** Whether update calls of individual components are timed. */
+    @Getter @Setter private boolean mComponentTiming = envBool("PROFILE_COMPONENTS", false);
+
+    /** Time all samples are relative to. */
+    private final long mEpoch = System.nanoTime();
+
+    private final String[] mSampleNames;
+    private final long[] mSampleStarts;
+    private final long[] mSampleDurations;
+    private final int[] mSampleDepths;
+    /** Index the next sample will be written to. */
+    private int mSampleHead = 0;
+    /** Number of valid samples in the ring buffer. */
+    @Getter private int mSampleCount = 0;
+
+    private final String[] mStackNames = new String[MAX_DEPTH];
+    private final long[] mStackStarts = new long[MAX_DEPTH];
+    /** Handle returned by {@link #scope}. All scopes share it, since closing any ends one. */
+    private final Scope mScope = new Scope(this);
+    /** Number of currently open scopes. */
+    private int mDepth = 0;
+    /** Number of scopes opened past {@link #MAX_DEPTH}, which are ignored. */
+    private int mOverflow = 0;
+
+    private EnginePhase mCurrentPhase = null;
+    private final long[] mPhaseNanos = new long[PHASE_COUNT];
+    private final long[] mLastPhaseNanos = new long[PHASE_COUNT];
+
+    /** Duration of the last complete frame. */
+    @Getter private long mLastFrameNanos = 0;
+    /** Number of frames recorded since the profiler was enabled. */
+    @Getter private long mFrameCount = 0;
+
+    private final IdentityHashMap<Class<?>, ComponentTiming> mComponentTimings =
+            new IdentityHashMap<>();
+    private final ArrayList<ComponentTiming> mComponentTimingList = new ArrayList<>();
+
+    /** Create a profiler with the default capacity. */
+    Profiler() {
+        this(envInt("PROFILE_SAMPLES", DEFAULT_CAPACITY));
+        setEnabled(envBool("PROFILE", false));
+    }
+
+    /**
+     * Create a profiler.
+     *
+     * @param capacity number of samples kept in the ring buffer.
+     */
+    Profiler(int capacity) {
+        capacity = Math.max(capacity, 1);
+        mSampleNames = new String[capacity];
+        mSampleStarts = new long[capacity];
+        mSampleDurations = new long[capacity];
+        mSampleDepths = new int[capacity];
+    }
+
+    /**
+     * Enable or disable the profiler.
+     *
+     * <p>Scopes that are open at the time are discarded, recorded samples are kept.
+     *
+     * @param enabled whether to record.
+     */
+    public void setEnabled(boolean enabled) {
+        if (enabled == mEnabled) {
+            return;
+        }
+
+        mEnabled = enabled;
+        mDepth = 0;
+        mOverflow = 0;
+        mCurrentPhase = null;
+
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            mPhaseNanos[i] = 0;
+        }
+    }
+
+    /**
+     * Begin a named scope.
+     *
+     * <p>Every call must be matched by a call to {@link #end}. The name should be a constant, as
+     * the reference is stored in the sample buffer.
+     *
+     * @param name name of the scope.
+     */
+    public void begin(String name) {
+        if (!mEnabled) {
+            return;
+        }
+
+        if (mDepth >= MAX_DEPTH) {
+            mOverflow++;
+            return;
+        }
+
+        mStackNames[mDepth] = name;
+        mStackStarts[mDepth] = System.nanoTime();
+        mDepth++;
+    }
+
+    /** End the innermost scope. */
+    public void end() {
+        if (!mEnabled) {
+            return;
+        }
+
+        if (mOverflow > 0) {
+            mOverflow--;
+            return;
+        }
+
+        if (mDepth == 0) {
+            return;
+        }
+
+        endScope(System.nanoTime());
+    }
+
+    /**
+     * Begin a named scope that ends when the returned handle is closed.
+     *
+     * <p>Intended for use with try-with-resources. The handle is shared, so it must not be closed
+     * more than once.
+     *
+     * @param name name of the scope.
+     * @return scope handle.
+     */
+    public Scope scope(String name) {
+        if (!mEnabled) {
+            return NO_OP_SCOPE;
+        }
+
+        begin(name);
+
+        return mScope;
+    }
+
+    /**
+     * Mark the start of an engine phase.
+     *
+     * <p>Closes any scopes left open in the previous phase, and starts the frame scope if this is
+     * the first phase of the frame.
+     *
+     * @param phase phase that starts now.
+     */
+    void enterPhase(EnginePhase phase) {
+        if (!mEnabled) {
+            return;
+        }
+
+        long now = System.nanoTime();
+
+        mOverflow = 0;
+
+        if (mDepth == 0) {
+            mStackNames[0] = FRAME_SCOPE;
+            mStackStarts[0] = now;
+            mDepth = 1;
+        }
+
+        while (mDepth > 1) {
+            endScope(now);
+        }
+
+        if (mCurrentPhase != null) {
+            mPhaseNanos[mCurrentPhase.ordinal()] += now - mStackStarts[1];
+        }
+
+        mCurrentPhase = phase;
+
+        mStackNames[1] = PHASE_NAMES[phase.ordinal()];
+        mStackStarts[1] = now;
+        mDepth = 2;
+    }
+
+    /** Mark the end of a frame. Closes all scopes. */
+    void endFrame() {
+        if (!mEnabled || mDepth == 0) {
+            return;
+        }
+
+        long now = System.nanoTime();
+
+        mOverflow = 0;
+
+        if (mCurrentPhase != null && mDepth > 1) {
+            mPhaseNanos[mCurrentPhase.ordinal()] += now - mStackStarts[1];
+        }
+
+        mCurrentPhase = null;
+        mLastFrameNanos = now - mStackStarts[0];
+
+        while (mDepth > 0) {
+            endScope(now);
+        }
+
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            mLastPhaseNanos[i] = mPhaseNanos[i];
+            mPhaseNanos[i] = 0;
+        }
+
+        for (int i = 0; i < mComponentTimingList.size(); i++) {
+            mComponentTimingList.get(i).endFrame();
+        }
+
+        mFrameCount++;
+    }
+
+    /**
+     * Start timing a component update call.
+     *
+     * @return start timestamp to pass to {@link #endComponent}, 0 if components are not timed.
+     */
+    long startComponent() {
+        if (!mEnabled || !mComponentTiming) {
+            return 0;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Finish timing a component update call.
+     *
+     * @param component component that was updated.
+     * @param phase phase the update belongs to.
+     * @param start value returned by {@link #startComponent}.
+     */
+    void endComponent(Object component, EnginePhase phase, long start) {
+        if (start == 0) {
+            return;
+        }
+
+        long nanos = System.nanoTime() - start;
+
+        Class<?> type = component.getClass();
+        ComponentTiming timing = mComponentTimings.get(type);
+
+        if (timing == null) {
+            timing = new ComponentTiming(type);
+            mComponentTimings.put(type, timing);
+            mComponentTimingList.add(timing);
+        }
+
+        int idx = phase.ordinal();
+        timing.mCalls[idx]++;
+        timing.mTotalNanos[idx] += nanos;
+        timing.mFrameNanos[idx] += nanos;
+        timing.mMaxNanos[idx] = Math.max(timing.mMaxNanos[idx], nanos);
+    }
+
+    /**
+     * Get the time a phase took in the last complete frame.
+     *
+     * @param phase phase to query.
+     * @return nanoseconds spent in the phase.
+     */
+    public long getLastFrameNanos(EnginePhase phase) {
+        return mLastPhaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * Get the timings of all component classes seen so far.
+     *
+     * @return read-only list of component timings, owned by the profiler.
+     */
+    public List<ComponentTiming> getComponentTimings() {
+        return Collections.unmodifiableList(mComponentTimingList);
+    }
+
+    /**
+     * Get the component classes that took the most time in the last complete frame.
+     *
+     * <p>This allocates, and is meant for debug displays.
+     *
+     * @param count maximum number of classes to return.
+     * @return list of component timings, most expensive first.
+     */
+    public List<ComponentTiming> getSlowestComponents(int count) {
+        ArrayList<ComponentTiming> sorted = new ArrayList<>(mComponentTimingList);
+        sorted.sort((a, b) -> Long.compare(b.getLastFrameNanos(), a.getLastFrameNanos()));
+        return sorted.subList(0, Math.min(count, sorted.size()));
+    }
+
+    /** Clear all recorded samples, and component timings. */
+    public void reset() {
+        for (int i = 0; i < mSampleNames.length; i++) {
+            mSampleNames[i] = null;
+        }
+        mSampleHead = 0;
+        mSampleCount = 0;
+        mFrameCount = 0;
+        mLastFrameNanos = 0;
+
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            mLastPhaseNanos[i] = 0;
+        }
+
+        for (int i = 0; i < mComponentTimingList.size(); i++) {
+            mComponentTimingList.get(i).reset();
+        }
+    }
+
+    /**
+     * Write the recorded samples in Chrome's trace event format.
+     *
+     * @param writer writer to output the JSON to.
+     * @throws IOException if writing fails.
+     */
+    public void exportChromeTrace(Writer writer) throws IOException {
+        int capacity = mSampleNames.length;
+        int first = (mSampleHead - mSampleCount + capacity) % capacity;
+
+        writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+
+        for (int i = 0; i < mSampleCount; i++) {
+            int idx = (first + i) % capacity;
+
+            if (i > 0) {
+                writer.write(',');
+            }
+
+            writer.write("\n{\"name\":\"");
+            writer.write(JSONValue.escape(mSampleNames[idx]));
+            writer.write("\",\"cat\":\"");
+            writer.write(mSampleDepths[idx] <= 1 ? "engine" : "user");
+            writer.write(
+                    String.format(
+                            Locale.ROOT,
+                            "\",\"ph\":\"X\",\"pid\":0,\"tid\":0,\"ts\":%.3f,\"dur\":%.3f,"
+                                    + "\"args\":{\"depth\":%d}}",
+                            mSampleStarts[idx] / 1000.0,
+                            mSampleDurations[idx] / 1000.0,
+                            mSampleDepths[idx]));
+        }
+
+        writer.write("\n]}\n");
+        writer.flush();
+    }
+
+    /**
+     * Write the recorded samples in Chrome's trace event format to a file.
+     *
+     * @param file file to write to.
+     * @return {@code true} if the trace was written successfully.
+     */
+    public boolean exportChromeTrace(File file) {
+        try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+            exportChromeTrace(writer);
+            log.info("Wrote profiler trace to " + file.getAbsolutePath());
+            return true;
+        } catch (IOException e) {
+            log.warning("Failed to write profiler trace: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Pop the innermost scope and store it as a sample.
+     *
+     * @param now timestamp the scope ended at.
+     */
+    private void endScope(long now) {
+        mDepth--;
+
+        long start = mStackStarts[mDepth];
+
+        mSampleNames[mSampleHead] = mStackNames[mDepth];
+        mSampleStarts[mSampleHead] = start - mEpoch;
+        mSampleDurations[mSampleHead] = now - start;
+        mSampleDepths[mSampleHead] = mDepth;
+
+        mSampleHead = (mSampleHead + 1) % mSampleNames.length;
+
+        if (mSampleCount < mSampleNames.length) {
+            mSampleCount++;
+        }
+
+        mStackNames[mDepth] = null;
+    }
+}
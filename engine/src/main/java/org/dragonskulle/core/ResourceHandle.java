@@ -0,0 +1,55 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.core;
+
+import java.util.concurrent.CompletableFuture;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+/**
+ * Handle to a resource that is being loaded asynchronously.
+ *
+ * @author DragonSkulle
+ *     <p>Returned by {@link ResourceManager#getResourceAsync}. Poll {@link #isDone} every frame, or
+ *     chain a {@link org.dragonskulle.core.futures.Future#loadResource} future, and then retrieve
+ *     the resource with {@link #get}.
+ */
+@Accessors(prefix = "m")
+public class ResourceHandle<T> {
+    /** Arguments the resource is loaded with. */
+    @Getter private final ResourceArguments<T, ?> mArguments;
+    /** Completes once the resource is in cache, or failed to load. */
+    private final CompletableFuture<Void> mLoad;
+
+    /**
+     * Create a resource handle.
+     *
+     * @param arguments arguments the resource is loaded with.
+     * @param load future that completes once loading is finished.
+     */
+    ResourceHandle(ResourceArguments<T, ?> arguments, CompletableFuture<Void> load) {
+        mArguments = arguments;
+        mLoad = load;
+    }
+
+    /**
+     * Check whether loading has finished.
+     *
+     * @return {@code true} if {@link #get} will not block.
+     */
+    public boolean isDone() {
+        return mLoad.isDone();
+    }
+
+    /**
+     * Retrieve the loaded resource.
+     *
+     * <p>Blocks, if the resource is not loaded yet. Every call returns a new reference, which has
+     * to be freed by the caller.
+     *
+     * @return the resource, {@code null} if it failed to load.
+     */
+    public Resource<T> get() {
+        mLoad.join();
+        return ResourceManager.getResource(mArguments);
+    }
+}
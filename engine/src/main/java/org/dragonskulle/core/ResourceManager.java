@@ -1,13 +1,38 @@
 /* (C) 2021 DragonSkulle */
 package org.dragonskulle.core;
 
+import static org.dragonskulle.utils.Env.envInt;
+import static org.dragonskulle.utils.Env.envString;
+
+import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import lombok.Getter;
 import lombok.experimental.Accessors;
+import lombok.extern.java.Log;
 
 /**
  * Shared resource manager.
@@ -30,25 +55,185 @@ import lombok.experimental.Accessors;
  *      );
  * }
  * }</pre>
+ *     <p>Resources can also be loaded asynchronously with {@link #getResourceAsync}, or started
+ *     ahead of time with {@link #prefetch}. Reading and decoding then happens on a pool of worker
+ *     threads, thus loaders must not touch anything that is bound to the main thread, such as GPU
+ *     state. Any GPU uploads happen lazily on the main thread, when the resource is first used.
+ *     <p>The cache is safe to access from any thread. Resources that are no longer referenced can
+ *     be kept around in a "warm" tier, so that quickly requesting them again does not reload them
+ *     from scratch. See {@link #setWarmBudget}, and {@link #getTypeStats} for sizing it.
+ *     <p>Precooked {@link AssetBundle}s can be mounted, in which case resources are read from them
+ *     first. The bundle named by {@code ASSET_BUNDLE} environment variable is mounted
+ *     automatically, if the variable is set. Bundled resources older than their classpath copies
+ *     are logged, since the bundle then needs cooking again.
+ *     <p>During development, resources can be read straight from source directories (see {@link
+ *     #addSourceDirectory}), and reloaded in place, once they change. See {@link ResourceWatcher}.
  */
+@Log
 public class ResourceManager {
     private static final ClassLoader CLASS_LOADER = ResourceManager.class.getClassLoader();
-    private static HashMap<ResourceArguments<?, ?>, CountedResource<?>> sLoadedResources =
-            new HashMap<>();
-    private static HashMap<Class<?>, IResourceLoader<?, ?>> sLoaders = new HashMap<>();
+
+    private static final ConcurrentHashMap<ResourceArguments<?, ?>, CountedResource<?>>
+            sLoadedResources = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Class<?>, IResourceLoader<?, ?>> sLoaders =
+            new ConcurrentHashMap<>();
+    /** Resources that are being loaded, either synchronously, or on the worker pool. */
+    private static final ConcurrentHashMap<ResourceArguments<?, ?>, CompletableFuture<Void>>
+            sPendingLoads = new ConcurrentHashMap<>();
+
+    /**
+     * Unused resources that are kept cached, in least recently used order.
+     *
+     * <p>Values are footprints the resources were accounted with. Guarded by itself. No {@link
+     * CountedResource} gets locked while holding this lock. Entries may be stale (referenced again,
+     * or freed), those get dropped on eviction.
+     */
+    private static final LinkedHashMap<CountedResource<?>, Long> WARM_RESOURCES =
+            new LinkedHashMap<>(16, 0.75f, true);
+    /** Total footprint of {@link #WARM_RESOURCES}. */
+    private static long sWarmBytes = 0;
+    /** Maximum footprint of unused resources kept in cache. 0 frees resources immediately. */
+    private static volatile long sWarmBudget = envInt("RESOURCE_CACHE_BUDGET", 64 << 20);
+    /**
+     * Footprint of prefetched resources, which were never retrieved, kept in the warm tier on top
+     * of {@link #sWarmBudget}. Read from {@code RESOURCE_PREFETCH_BUDGET} environment variable.
+     */
+    private static final long PREFETCH_BUDGET = envInt("RESOURCE_PREFETCH_BUDGET", 64 << 20);
+
+    /** Cache statistics for each resource type. */
+    private static final ConcurrentHashMap<Class<?>, TypeStats> sTypeStats =
+            new ConcurrentHashMap<>();
+
+    /** Worker pool used for asynchronous loading. */
+    private static final ForkJoinPool LOADER_POOL =
+            new ForkJoinPool(
+                    envInt(
+                            "RESOURCE_THREADS",
+                            Math.max(1, Runtime.getRuntime().availableProcessors() - 1)));
+
+    /** Mounted asset bundles, searched before the classpath. */
+    private static final CopyOnWriteArrayList<AssetBundle> sBundles = new CopyOnWriteArrayList<>();
+
+    /** Bundled paths already checked for being older than their classpath copies. */
+    private static final Set<String> sCheckedBundled = ConcurrentHashMap.newKeySet();
+
+    /** Resource source directories, searched before bundles, and the classpath. */
+    private static final CopyOnWriteArrayList<Path> sSourceDirectories =
+            new CopyOnWriteArrayList<>();
+    /** Listeners notified whenever a cached resource gets reloaded. */
+    private static final CopyOnWriteArrayList<IResourceReloadListener> sReloadListeners =
+            new CopyOnWriteArrayList<>();
+
+    /** Whether loads record the resource files they depend on. Enabled while watching files. */
+    private static volatile boolean sTrackDependencies = false;
+    /** Dependency sets of loads that are in progress on the current thread, innermost on top. */
+    private static final ThreadLocal<ArrayDeque<Set<String>>> LOAD_DEPENDENCIES =
+            ThreadLocal.withInitial(ArrayDeque::new);
 
     static {
         registerResource(byte[].class, (a) -> a.getName(), (b, __) -> b);
         registerResource(String.class, (a) -> a.getName(), (b, __) -> new String(b));
+        mountDefaultBundle();
+    }
+
+    /**
+     * Cache statistics of a single resource type.
+     *
+     * <p>Hits count requests served from cache, misses count requests that had to load the
+     * resource, and evictions count unused resources freed to stay within the warm budget.
+     */
+    public static class TypeStats {
+        private final LongAdder mHits = new LongAdder();
+        private final LongAdder mMisses = new LongAdder();
+        private final LongAdder mEvictions = new LongAdder();
+        private final AtomicLong mCachedBytes = new AtomicLong();
+        private final AtomicLong mWarmBytes = new AtomicLong();
+        private final AtomicInteger mCachedCount = new AtomicInteger();
+
+        /**
+         * Get the number of requests served from cache.
+         *
+         * @return cache hit count.
+         */
+        public long getHits() {
+            return mHits.sum();
+        }
+
+        /**
+         * Get the number of requests that had to load the resource.
+         *
+         * @return cache miss count.
+         */
+        public long getMisses() {
+            return mMisses.sum();
+        }
+
+        /**
+         * Get the number of unused resources that were evicted from the warm tier.
+         *
+         * @return eviction count.
+         */
+        public long getEvictions() {
+            return mEvictions.sum();
+        }
+
+        /**
+         * Get the footprint of all cached resources of this type, used or not.
+         *
+         * @return number of bytes.
+         */
+        public long getCachedBytes() {
+            return mCachedBytes.get();
+        }
+
+        /**
+         * Get the footprint of unused resources of this type kept in the warm tier.
+         *
+         * @return number of bytes.
+         */
+        public long getWarmBytes() {
+            return mWarmBytes.get();
+        }
+
+        /**
+         * Get the number of cached resources of this type.
+         *
+         * @return number of resources.
+         */
+        public int getCachedCount() {
+            return mCachedCount.get();
+        }
+
+        /** Reset hit, miss, and eviction counters. Memory accounting is left intact. */
+        private void resetCounters() {
+            mHits.reset();
+            mMisses.reset();
+            mEvictions.reset();
+        }
     }
 
-    /** Reference counts the accesses. */
+    /**
+     * Reference counts the accesses.
+     *
+     * <p>Reference count and the resource itself are guarded by the instance's monitor. Once the
+     * resource is freed, the instance is dead, and any concurrent lookup has to retry.
+     */
     @Accessors(prefix = "m")
     static class CountedResource<T> {
         @Getter private ResourceArguments<T, ?> mArgs;
         @Getter T mResource;
         private int mRefcount;
         private boolean mLinked;
+        /** Footprint of the resource, for memory accounting. */
+        private long mSize;
+        /** Whether the footprint is accounted in {@link TypeStats}. */
+        private boolean mAccounted;
+        /** Whether the resource is in {@link #WARM_RESOURCES}. Written under its lock. */
+        private volatile boolean mWarm;
+        /** Whether the resource was prefetched, and never referenced since. */
+        private volatile boolean mUnclaimed;
+        /** Resource files the resource was loaded from. Only recorded while tracking is on. */
+        private volatile Set<String> mDependencies = Collections.emptySet();
 
         /**
          * Create a counted resource.
@@ -57,49 +242,121 @@ public class ResourceManager {
          * @param resource loaded resource itself.
          */
         CountedResource(ResourceArguments<T, ?> args, T resource) {
+            this(args, resource, 0);
+        }
+
+        /**
+         * Create a counted resource.
+         *
+         * @param args original arguments for the resource.
+         * @param resource loaded resource itself.
+         * @param size size of the data the resource was loaded from.
+         */
+        CountedResource(ResourceArguments<T, ?> args, T resource, long size) {
             this.mArgs = args;
             this.mResource = resource;
             mRefcount = 0;
             mLinked = true;
+            mSize = footprint(resource, size);
         }
 
-        /** Decrease reference count. Potentially free and unlink the resource */
+        /**
+         * Decrease reference count.
+         *
+         * <p>Once the count reaches zero, the resource is either kept in the warm tier, or freed
+         * and unlinked, if it does not fit in the budget, or it has been unlinked already.
+         */
         public void decrRefCount() {
-            if (--mRefcount == 0) {
-                if (AutoCloseable.class.isInstance(mResource)) {
-                    try {
-                        ((AutoCloseable) mResource).close();
-                    } catch (Throwable e) {
-                        e.printStackTrace();
-                    }
+            boolean warm;
+
+            synchronized (this) {
+                if (--mRefcount < 0) {
+                    throw new RuntimeException("Failed to do this!");
+                }
+
+                if (mRefcount > 0) {
+                    return;
                 }
-                mResource = null;
-                if (mLinked) {
-                    ResourceManager.unlinkResource(mArgs);
+
+                warm = mLinked && mResource != null && sWarmBudget > 0;
+
+                if (!warm) {
+                    destroy();
                 }
             }
 
-            if (mRefcount < 0) {
-                throw new RuntimeException("Failed to do this!");
+            if (warm) {
+                ResourceManager.makeWarm(this);
+            }
+        }
+
+        /**
+         * Try increasing the reference count.
+         *
+         * @return {@code true} if the reference was taken, {@code false} if the resource is dead.
+         */
+        private boolean acquire() {
+            boolean wasUnused;
+
+            synchronized (this) {
+                if (mResource == null) {
+                    return false;
+                }
+                wasUnused = mRefcount++ == 0;
+                mUnclaimed = false;
+            }
+
+            if (wasUnused) {
+                ResourceManager.makeCold(this);
+            }
+
+            return true;
+        }
+
+        /** Free the resource, and unlink it from cache. Has to be called with the monitor held. */
+        private void destroy() {
+            closeResource(mResource);
+            mResource = null;
+            if (mLinked) {
+                mLinked = false;
+                sLoadedResources.remove(mArgs, this);
+            }
+            setAccounted(false);
+        }
+
+        /**
+         * Add or remove the resource's footprint from the type's statistics.
+         *
+         * @param accounted whether the resource should be accounted.
+         */
+        private void setAccounted(boolean accounted) {
+            if (mAccounted == accounted) {
+                return;
             }
+            mAccounted = accounted;
+            TypeStats stats = getTypeStats(mArgs.getType());
+            stats.mCachedBytes.addAndGet(accounted ? mSize : -mSize);
+            stats.mCachedCount.addAndGet(accounted ? 1 : -1);
         }
 
         /**
-         * Increase reference count, and return a Resource instance.
+         * Wrap an already taken reference in a Resource instance.
          *
          * @param <F> target cast type of the resource.
          * @param type class of the type. Should really be {@code Class<T>}.
-         * @return a resource with reference to underlying resource.
+         * @return a resource with reference to underlying resource, or {@code null}, if the type
+         *     does not match. In that case the reference is given back.
          */
         @SuppressWarnings("unchecked")
-        private <F> Resource<F> incRefCount(Class<F> type) {
+        private <F> Resource<F> wrap(Class<F> type) {
             // We are checking if T == F
-            if (type.isInstance(mResource)) {
-                mRefcount += 1;
-                return new Resource<F>((CountedResource<F>) this);
-            } else {
-                return null;
+            synchronized (this) {
+                if (type.isInstance(mResource)) {
+                    return new Resource<F>((CountedResource<F>) this);
+                }
             }
+            decrRefCount();
+            return null;
         }
 
         /**
@@ -108,8 +365,10 @@ public class ResourceManager {
          * @return a resource with reference to underlying resource.
          */
         public Resource<T> incRefCount() {
-            mRefcount += 1;
-            return new Resource<T>(this);
+            synchronized (this) {
+                mRefcount += 1;
+                return new Resource<T>(this);
+            }
         }
 
         /**
@@ -119,20 +378,86 @@ public class ResourceManager {
          *     unchanged.
          */
         public boolean reload() {
-            T res = ResourceManager.loadResource(mArgs);
-            if (res == null) {
+            CountedResource<T> loaded = loadReplacement();
+            if (loaded == null) {
                 return false;
             }
-            if (AutoCloseable.class.isInstance(mResource)) {
-                try {
-                    ((AutoCloseable) mResource).close();
-                } catch (Throwable e) {
-                    e.printStackTrace();
+            if (!swap(loaded)) {
+                closeResource(loaded.mResource);
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Load a fresh copy of the resource, without touching this instance.
+         *
+         * <p>This is the slow part of a reload, and can be done on any thread, before calling
+         * {@link #swap} on the thread that uses the resource.
+         *
+         * @return the loaded copy, or {@code null}, if loading failed.
+         */
+        CountedResource<T> loadReplacement() {
+            return ResourceManager.loadEntry(mArgs);
+        }
+
+        /**
+         * Replace the underlying resource object with a reloaded one.
+         *
+         * <p>All handles start returning the new object. Reload listeners are notified, and then
+         * the previous object gets closed.
+         *
+         * @param loaded copy loaded with {@link #loadReplacement}.
+         * @return {@code true} if swapped, {@code false} if this resource has been freed in the
+         *     meantime. In that case, {@code loaded} is left untouched.
+         */
+        boolean swap(CountedResource<T> loaded) {
+            T previous;
+
+            synchronized (this) {
+                if (mResource == null) {
+                    return false;
                 }
+
+                previous = mResource;
+                mResource = loaded.mResource;
+                mDependencies = loaded.mDependencies;
+
+                if (mAccounted) {
+                    setAccounted(false);
+                    mSize = loaded.mSize;
+                    setAccounted(true);
+                } else {
+                    mSize = loaded.mSize;
+                }
+            }
+
+            for (IResourceReloadListener listener : sReloadListeners) {
+                listener.onResourceReloaded(mArgs, previous, loaded.mResource);
             }
-            mResource = res;
+
+            closeResource(previous);
             return true;
         }
+
+        /**
+         * Check whether there are no references to the resource.
+         *
+         * @return {@code true} if the resource is unused.
+         */
+        synchronized boolean isUnused() {
+            return mRefcount == 0;
+        }
+
+        /**
+         * Check whether the resource was loaded from, or depends on a resource file.
+         *
+         * @param path path of the resource file.
+         * @return {@code true} if the file is one of the resource's dependencies.
+         */
+        boolean dependsOn(String path) {
+            return mDependencies.contains(path);
+        }
     }
 
     /** Simple composed {@link IResourceLoader}. */
@@ -177,7 +502,7 @@ public class ResourceManager {
             Class<T> type,
             IResourcePathResolver<T, F> pathResolver,
             IResourceBufferLoader<T, F> bufferLoader) {
-        sLoaders.put(type, new CompositeResourceLoader<>(pathResolver, bufferLoader));
+        registerResource(type, new CompositeResourceLoader<>(pathResolver, bufferLoader));
     }
 
     /**
@@ -217,7 +542,8 @@ public class ResourceManager {
      * Get a resource object by name and class type
      *
      * <p>This method returns a resource, cached, or newly loaded from `loader`, if nothing was
-     * cached.
+     * cached. If the same resource is being loaded by another thread, this waits for it to finish,
+     * instead of loading it twice.
      *
      * @param <T> type of the resource.
      * @param <F> type of the resource arguments.
@@ -226,15 +552,162 @@ public class ResourceManager {
      *     {@code null} is returned if the object type does not match the input name
      */
     public static <T, F> Resource<T> getResource(ResourceArguments<T, F> arguments) {
-        CountedResource<?> inst = sLoadedResources.get(arguments);
+        if (sTrackDependencies) {
+            recordDependency(arguments);
+        }
+
+        TypeStats stats = getTypeStats(arguments.getType());
+        boolean waited = false;
+
+        while (true) {
+            CountedResource<?> inst = sLoadedResources.get(arguments);
+
+            if (inst != null) {
+                if (inst.acquire()) {
+                    if (!waited) {
+                        stats.mHits.increment();
+                    }
+                    return inst.wrap(arguments.getType());
+                }
+                // Freed in the meantime, drop it, and look again
+                sLoadedResources.remove(arguments, inst);
+                continue;
+            }
+
+            if (waited) {
+                // Whoever we waited on failed to load the resource
+                return null;
+            }
+
+            CompletableFuture<Void> load = new CompletableFuture<>();
+            CompletableFuture<Void> pending = sPendingLoads.putIfAbsent(arguments, load);
+
+            if (pending != null) {
+                stats.mHits.increment();
+                pending.join();
+                waited = true;
+                continue;
+            }
+
+            try {
+                // The resource may have been cached, right before we claimed the load
+                if (sLoadedResources.containsKey(arguments)) {
+                    continue;
+                }
+
+                stats.mMisses.increment();
+
+                CountedResource<T> loaded = loadEntry(arguments);
+
+                if (loaded == null) {
+                    return null;
+                }
 
-        if (inst == null) {
-            return loadAndCacheResource(arguments);
-        } else {
-            return inst.incRefCount(arguments.getType());
+                loaded.mRefcount = 1;
+                return cacheResource(loaded).wrap(arguments.getType());
+            } finally {
+                sPendingLoads.remove(arguments, load);
+                load.complete(null);
+            }
         }
     }
 
+    /**
+     * Get a resource object asynchronously.
+     *
+     * <p>If the resource is not cached, it will be read and decoded on the loader pool, and the
+     * returned handle completes once it is done. Retrieve the resource with {@link
+     * ResourceHandle#get} on the main thread.
+     *
+     * @param <T> type of the resource.
+     * @param <F> type of the resource arguments.
+     * @param arguments arguments used for loading.
+     * @return handle to the resource being loaded.
+     */
+    public static <T, F> ResourceHandle<T> getResourceAsync(ResourceArguments<T, F> arguments) {
+        return new ResourceHandle<>(arguments, startLoad(arguments));
+    }
+
+    /**
+     * Get a resource object asynchronously.
+     *
+     * @param <T> type of the resource.
+     * @param type class of {@code T}. Usually {@code T.class}.
+     * @param name name of the resource to load.
+     * @return handle to the resource being loaded.
+     */
+    public static <T> ResourceHandle<T> getResourceAsync(Class<T> type, String name) {
+        return getResourceAsync(new ResourceArguments<>(type, name, null));
+    }
+
+    /**
+     * Start loading a resource in the background.
+     *
+     * <p>Once loaded, the resource is kept in the warm tier until it gets retrieved, so that a
+     * later {@link #getResource} call does not need to wait for it. If it is never retrieved, it
+     * eventually gets evicted, like any unused resource. This allows resources that
+     * depend on others to start loading all their dependencies in parallel.
+     *
+     * @param arguments arguments used for loading.
+     */
+    public static void prefetch(ResourceArguments<?, ?> arguments) {
+        startLoad(arguments);
+    }
+
+    /**
+     * Start loading a resource in the background.
+     *
+     * @param type type of the resource.
+     * @param name name of the resource to load.
+     */
+    public static void prefetch(Class<?> type, String name) {
+        prefetch(new ResourceArguments<>(type, name, null));
+    }
+
+    /**
+     * Start loading a resource on the loader pool, unless it is cached, or already being loaded.
+     *
+     * @param <T> type of the resource.
+     * @param <F> type of the resource arguments.
+     * @param arguments arguments used for loading.
+     * @return future that completes once the resource is in cache, or failed to load.
+     */
+    private static <T, F> CompletableFuture<Void> startLoad(ResourceArguments<T, F> arguments) {
+        if (sLoadedResources.containsKey(arguments)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Void> load = new CompletableFuture<>();
+        CompletableFuture<Void> pending = sPendingLoads.putIfAbsent(arguments, load);
+
+        if (pending != null) {
+            return pending;
+        }
+
+        LOADER_POOL.execute(
+                () -> {
+                    try {
+                        if (sLoadedResources.containsKey(arguments)) {
+                            return;
+                        }
+
+                        getTypeStats(arguments.getType()).mMisses.increment();
+
+                        CountedResource<T> loaded = loadEntry(arguments);
+                        if (loaded != null) {
+                            cacheUnclaimed(loaded);
+                        } else {
+                            log.warning("Failed to load " + arguments.getName());
+                        }
+                    } finally {
+                        sPendingLoads.remove(arguments, load);
+                        load.complete(null);
+                    }
+                });
+
+        return load;
+    }
+
     /**
      * Get a resource object by name and class type
      *
@@ -273,14 +746,27 @@ public class ResourceManager {
      * Unlinks a resource from internal cache
      *
      * <p>Use this method if you want to preemptively remove a resource from cache. Useful when
-     * reloading is needed, but active references should not be mutated.
+     * reloading is needed, but active references should not be mutated. If the resource is not in
+     * use, it gets freed.
      *
      * @param args full arguments that were used to load the resource with
      */
     public static void unlinkResource(ResourceArguments<?, ?> args) {
         CountedResource<?> res = sLoadedResources.remove(args);
-        if (res != null) {
-            res.mLinked = false;
+
+        if (res == null) {
+            return;
+        }
+
+        makeCold(res);
+
+        synchronized (res) {
+            if (res.mRefcount == 0) {
+                res.destroy();
+            } else {
+                res.mLinked = false;
+                res.setAccounted(false);
+            }
         }
     }
 
@@ -307,10 +793,102 @@ public class ResourceManager {
      * @param arguments arguments to load the resource with, including class, name, and custom args.
      * @return loaded object object, or {@code null}, if there was an error.
      */
-    @SuppressWarnings("unchecked")
     public static <T, F> T loadResource(ResourceArguments<T, F> arguments) {
+        CountedResource<T> loaded = loadEntry(arguments);
+        return loaded != null ? loaded.mResource : null;
+    }
+
+    /**
+     * Set the memory budget of unused resources.
+     *
+     * <p>Resources that are no longer referenced are kept in cache, until their total footprint
+     * exceeds the budget, at which point the least recently used ones get freed. This avoids
+     * reloading resources that are released and quickly requested again, for instance, when
+     * switching between scenes. The default budget is read from {@code RESOURCE_CACHE_BUDGET}
+     * environment variable, and is 64 MiB. That holds every texture of the game decoded (about 30
+     * MiB), along with its glTF scenes (about 5 MiB), so going between the menu and the game does
+     * not reload them. A budget of 0 frees resources as soon as they are unused.
+     *
+     * @param bytes budget in bytes.
+     */
+    public static void setWarmBudget(long bytes) {
+        sWarmBudget = Math.max(0, bytes);
+        evictWarm();
+    }
+
+    /**
+     * Get the memory budget of unused resources.
+     *
+     * @return budget in bytes.
+     */
+    public static long getWarmBudget() {
+        return sWarmBudget;
+    }
+
+    /**
+     * Get the total footprint of unused resources kept in cache.
+     *
+     * @return number of bytes.
+     */
+    public static long getWarmBytes() {
+        synchronized (WARM_RESOURCES) {
+            return sWarmBytes;
+        }
+    }
+
+    /** Free all unused resources that are kept in cache. */
+    public static void clearWarm() {
+        evictUntil(0, 0);
+    }
+
+    /**
+     * Get cache statistics of a resource type.
+     *
+     * @param type type of the resource.
+     * @return statistics of the type. Never {@code null}.
+     */
+    public static TypeStats getTypeStats(Class<?> type) {
+        TypeStats stats = sTypeStats.get(type);
+
+        if (stats == null) {
+            stats = new TypeStats();
+            TypeStats existing = sTypeStats.putIfAbsent(type, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+
+        return stats;
+    }
+
+    /**
+     * Get cache statistics of all resource types that were ever requested.
+     *
+     * @return unmodifiable view of statistics, keyed by resource type.
+     */
+    public static Map<Class<?>, TypeStats> getTypeStats() {
+        return Collections.unmodifiableMap(sTypeStats);
+    }
+
+    /** Reset hit, miss, and eviction counters of all types. */
+    public static void resetStats() {
+        for (TypeStats stats : sTypeStats.values()) {
+            stats.resetCounters();
+        }
+    }
+
+    /**
+     * Load a resource, and wrap it in an unlinked {@link CountedResource}.
+     *
+     * @param <T> type of the resource.
+     * @param <F> type of the resource arguments.
+     * @param arguments arguments to load the resource with.
+     * @return loaded resource, or {@code null}, if there was an error.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T, F> CountedResource<T> loadEntry(ResourceArguments<T, F> arguments) {
 
-        IResourceLoader<?, ?> loader = sLoaders.get(arguments.getType());
+        IResourceLoader<?, ?> loader = getLoader(arguments.getType());
         if (loader == null) {
             return null;
         }
@@ -319,64 +897,576 @@ public class ResourceManager {
 
         String path = castLoader.toPath(arguments);
 
-        try (InputStream inputStream = CLASS_LOADER.getResourceAsStream(path)) {
-            byte[] buffer = readAllBytes(inputStream);
-            return castLoader.loadFromBuffer(buffer, arguments);
+        Set<String> dependencies = null;
+
+        if (sTrackDependencies) {
+            recordDependency(path);
+            dependencies = new HashSet<>();
+            dependencies.add(path);
+            LOAD_DEPENDENCIES.get().push(dependencies);
+        }
+
+        try {
+            byte[] buffer = readSource(path);
+
+            if (buffer == null) {
+                buffer = readBundled(path);
+            }
+
+            if (buffer == null) {
+                try (InputStream inputStream = CLASS_LOADER.getResourceAsStream(path)) {
+                    buffer = readAllBytes(inputStream);
+                }
+            }
+
+            T ret = castLoader.loadFromBuffer(buffer, arguments);
+
+            if (ret == null) {
+                return null;
+            }
+
+            CountedResource<T> loaded = new CountedResource<>(arguments, ret, buffer.length);
+
+            if (dependencies != null) {
+                loaded.mDependencies = dependencies;
+            }
+
+            return loaded;
         } catch (Throwable e) {
             return null;
+        } finally {
+            if (dependencies != null) {
+                LOAD_DEPENDENCIES.get().pop();
+            }
+        }
+    }
+
+    /**
+     * Add a resource source directory.
+     *
+     * <p>Resource files are looked up in source directories before mounted bundles, and the
+     * classpath, so that edited files can be loaded without rebuilding. This is meant for
+     * development only.
+     *
+     * @param directory directory with the same layout as the resources on the classpath.
+     */
+    public static void addSourceDirectory(Path directory) {
+        sSourceDirectories.addIfAbsent(directory);
+    }
+
+    /**
+     * Remove a resource source directory.
+     *
+     * @param directory directory to remove.
+     */
+    public static void removeSourceDirectory(Path directory) {
+        sSourceDirectories.remove(directory);
+    }
+
+    /**
+     * Add a listener that gets notified whenever a cached resource gets reloaded.
+     *
+     * @param listener listener to add.
+     */
+    public static void addReloadListener(IResourceReloadListener listener) {
+        sReloadListeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Remove a reload listener.
+     *
+     * @param listener listener to remove.
+     */
+    public static void removeReloadListener(IResourceReloadListener listener) {
+        sReloadListeners.remove(listener);
+    }
+
+    /**
+     * Enable or disable recording of resource file dependencies.
+     *
+     * <p>When enabled, every load records the paths of all resource files read while loading it,
+     * including the ones of resources retrieved by the loader itself, such as shader includes. Only
+     * resources loaded while tracking is on have their dependencies known.
+     *
+     * @param track whether to track dependencies.
+     */
+    static void setTrackDependencies(boolean track) {
+        sTrackDependencies = track;
+    }
+
+    /**
+     * Find cached resources that depend on a resource file.
+     *
+     * @param path path of the resource file.
+     * @return cached resources that were loaded from, or depend on the file.
+     */
+    static List<CountedResource<?>> findDependents(String path) {
+        List<CountedResource<?>> ret = new ArrayList<>();
+
+        for (CountedResource<?> res : sLoadedResources.values()) {
+            if (res.dependsOn(path)) {
+                ret.add(res);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Record a resource as a dependency of the load in progress on this thread, if any.
+     *
+     * @param arguments arguments of the resource.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T, F> void recordDependency(ResourceArguments<T, F> arguments) {
+        if (LOAD_DEPENDENCIES.get().isEmpty()) {
+            return;
+        }
+
+        IResourceLoader<T, F> loader = (IResourceLoader<T, F>) getLoader(arguments.getType());
+
+        if (loader != null) {
+            recordDependency(loader.toPath(arguments));
+        }
+    }
+
+    /**
+     * Record a resource file as a dependency of the load in progress on this thread, if any.
+     *
+     * @param path path of the resource file.
+     */
+    private static void recordDependency(String path) {
+        Set<String> dependencies = LOAD_DEPENDENCIES.get().peek();
+
+        if (dependencies != null) {
+            dependencies.add(path);
+        }
+    }
+
+    /**
+     * Read a resource file from source directories.
+     *
+     * @param path path of the resource.
+     * @return contents of the file, {@code null} if no source directory contains it.
+     * @throws IOException if the file exists, but could not be read.
+     */
+    private static byte[] readSource(String path) throws IOException {
+        for (Path directory : sSourceDirectories) {
+            Path file = directory.resolve(path);
+            if (Files.isRegularFile(file)) {
+                return Files.readAllBytes(file);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Close a resource object, if it is closeable.
+     *
+     * @param resource the object to close.
+     */
+    static void closeResource(Object resource) {
+        if (resource instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) resource).close();
+            } catch (Exception e) {
+                log.warning("Failed to close " + resource + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Mount an asset bundle.
+     *
+     * <p>Resources in the bundle take precedence over the ones on the classpath, and over the ones
+     * in previously mounted bundles. Already cached resources are not affected.
+     *
+     * @param bundle bundle to mount.
+     */
+    public static void mountBundle(AssetBundle bundle) {
+        sBundles.add(0, bundle);
+    }
+
+    /**
+     * Unmount an asset bundle.
+     *
+     * @param bundle bundle to unmount.
+     */
+    public static void unmountBundle(AssetBundle bundle) {
+        sBundles.remove(bundle);
+    }
+
+    /**
+     * Read a resource file from mounted bundles.
+     *
+     * @param path path of the resource.
+     * @return contents of the resource, {@code null} if no mounted bundle contains it.
+     */
+    public static byte[] readBundled(String path) {
+        for (AssetBundle bundle : sBundles) {
+            byte[] data = bundle.read(path);
+            if (data != null) {
+                if (sCheckedBundled.add(path)) {
+                    warnIfStale(bundle, path);
+                }
+                return data;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Log a warning if the classpath copy of a bundled resource is newer than the bundle.
+     *
+     * @param bundle bundle the resource is read from.
+     * @param path path of the resource.
+     */
+    private static void warnIfStale(AssetBundle bundle, String path) {
+        URL url = CLASS_LOADER.getResource(path);
+
+        if (url == null) {
+            return;
+        }
+
+        try {
+            long modified = url.openConnection().getLastModified();
+
+            if (modified > bundle.getModified()) {
+                log.warning(
+                        path
+                                + " in "
+                                + bundle.getPath()
+                                + " is older than "
+                                + url
+                                + ", the bundle needs cooking again");
+            }
+        } catch (IOException e) {
+            log.fine("Failed to check the age of " + url + ": " + e);
+        }
+    }
+
+    /**
+     * Get the contents of a resource file without copying them, where possible.
+     *
+     * <p>Files are looked up in the same order as by {@link #getResource}: source directories,
+     * mounted bundles, and then the classpath. Bundled files are viewed in place, and plain
+     * classpath files are memory mapped. The file is recorded as a dependency of the load in
+     * progress, so that hot reloading picks its changes up.
+     *
+     * @param path path of the resource.
+     * @return read-only contents of the file, or {@code null}, if it can not be viewed without a
+     *     copy (for instance, it is packaged inside a jar), in which case it should be loaded as a
+     *     regular resource.
+     */
+    public static ByteBuffer mapResource(String path) {
+        if (sTrackDependencies) {
+            recordDependency(path);
+        }
+
+        try {
+            // Source files are read, rather than mapped, so that they are not locked while edited
+            byte[] source = readSource(path);
+            if (source != null) {
+                return ByteBuffer.wrap(source).asReadOnlyBuffer();
+            }
+        } catch (IOException e) {
+            log.fine("Failed to read " + path + ": " + e);
+            return null;
+        }
+
+        for (AssetBundle bundle : sBundles) {
+            ByteBuffer view = bundle.view(path);
+            if (view != null) {
+                if (sCheckedBundled.add(path)) {
+                    warnIfStale(bundle, path);
+                }
+                return view;
+            }
+        }
+
+        URL url = CLASS_LOADER.getResource(path);
+
+        if (url == null || !"file".equals(url.getProtocol())) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(Paths.get(url.toURI()))) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            log.fine("Failed to map " + path + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Check whether a resource file exists in any mounted bundle, or on the classpath.
+     *
+     * @param path path of the resource.
+     * @return {@code true} if the resource can be loaded.
+     */
+    public static boolean resourceExists(String path) {
+        for (Path directory : sSourceDirectories) {
+            if (Files.isRegularFile(directory.resolve(path))) {
+                return true;
+            }
+        }
+        for (AssetBundle bundle : sBundles) {
+            if (bundle.contains(path)) {
+                return true;
+            }
+        }
+        return CLASS_LOADER.getResource(path) != null;
+    }
+
+    /**
+     * Mount the bundle pointed to by {@code ASSET_BUNDLE} environment variable, if it is set.
+     *
+     * <p>Bundles are never picked up implicitly, since a bundle left over from an earlier cook
+     * would silently override every resource edited since.
+     */
+    private static void mountDefaultBundle() {
+        String bundlePath = envString("ASSET_BUNDLE", null);
+
+        if (bundlePath == null || bundlePath.isEmpty()) {
+            return;
+        }
+
+        Path path = Paths.get(bundlePath);
+
+        if (!Files.isRegularFile(path)) {
+            log.warning("Asset bundle " + path + " does not exist");
+            return;
+        }
+
+        try {
+            AssetBundle bundle = new AssetBundle(path);
+            mountBundle(bundle);
+            log.info("Mounted " + bundle.getPaths().size() + " cooked assets from " + path);
+        } catch (IOException e) {
+            log.warning("Failed to mount asset bundle " + path + ": " + e);
         }
     }
 
     /**
-     * Loads and caches a resource.
+     * Put a loaded resource into the cache.
      *
-     * <p>This method simply loads a resource, and caches it in the internal map
+     * <p>If another thread managed to cache the same resource in the meantime, the passed in
+     * instance is closed, and the already cached one is kept, with the passed in references
+     * transferred to it.
      *
      * @param <T> type of the resource.
-     * @param <F> type of the resource arguments.
-     * @param arguments resource arguments.
-     * @return loaded resource with increased reference count, or {@code null}, if loading fails.
+     * @param loaded the loaded resource.
+     * @return the cached resource instance.
      */
-    private static <T, F> Resource<T> loadAndCacheResource(ResourceArguments<T, F> arguments) {
-        T ret = loadResource(arguments);
-        if (ret == null) {
+    @SuppressWarnings("unchecked")
+    private static <T> CountedResource<T> cacheResource(CountedResource<T> loaded) {
+        // Account before publishing, so that a concurrent free can not be missed
+        loaded.setAccounted(true);
+
+        while (true) {
+            CountedResource<?> existing = sLoadedResources.putIfAbsent(loaded.mArgs, loaded);
+
+            if (existing == null) {
+                return loaded;
+            }
+
+            if (loaded.mRefcount == 0 || existing.acquire()) {
+                synchronized (loaded) {
+                    loaded.mLinked = false;
+                    loaded.destroy();
+                }
+                return (CountedResource<T>) existing;
+            }
+
+            sLoadedResources.remove(loaded.mArgs, existing);
+        }
+    }
+
+    /**
+     * Put a prefetched resource into the cache, and the warm tier.
+     *
+     * <p>Nothing references the resource until it is retrieved, thus it is kept in the warm tier,
+     * so that it gets evicted, if it is never retrieved. Unclaimed resources have {@link
+     * #PREFETCH_BUDGET} on top of the warm budget, so that prefetching is of use even when unused
+     * resources are otherwise freed immediately.
+     *
+     * @param <T> type of the resource.
+     * @param loaded freshly loaded resource.
+     */
+    private static <T> void cacheUnclaimed(CountedResource<T> loaded) {
+        if (cacheResource(loaded) != loaded) {
+            return;
+        }
+
+        synchronized (loaded) {
+            // It may have been retrieved already
+            if (loaded.mRefcount != 0 || loaded.mResource == null) {
+                return;
+            }
+            loaded.mUnclaimed = true;
+        }
+
+        makeWarm(loaded);
+    }
+
+    /**
+     * Get the footprint of a loaded resource.
+     *
+     * @param resource the resource.
+     * @param size size of the data the resource was loaded from.
+     * @return number of bytes the resource is accounted with.
+     */
+    private static long footprint(Object resource, long size) {
+        if (resource instanceof IResourceFootprint) {
+            return ((IResourceFootprint) resource).getFootprintBytes();
+        }
+        return size;
+    }
+
+    /**
+     * Put an unused resource in the warm tier, and evict others to fit in the budget.
+     *
+     * @param res resource that is no longer referenced.
+     */
+    private static void makeWarm(CountedResource<?> res) {
+        synchronized (WARM_RESOURCES) {
+            long size = res.mSize;
+            Long prev = WARM_RESOURCES.put(res, size);
+            res.mWarm = true;
+            long delta = prev == null ? size : size - prev;
+            sWarmBytes += delta;
+            getTypeStats(res.mArgs.getType()).mWarmBytes.addAndGet(delta);
+        }
+
+        evictWarm();
+    }
+
+    /**
+     * Take a resource out of the warm tier, because it is referenced again.
+     *
+     * @param res resource that got referenced.
+     */
+    private static void makeCold(CountedResource<?> res) {
+        synchronized (WARM_RESOURCES) {
+            Long size = WARM_RESOURCES.remove(res);
+            if (size != null) {
+                res.mWarm = false;
+                sWarmBytes -= size;
+                getTypeStats(res.mArgs.getType()).mWarmBytes.addAndGet(-size);
+            }
+        }
+    }
+
+    /** Evict least recently used resources, until the warm tier fits in the budget. */
+    private static void evictWarm() {
+        evictUntil(sWarmBudget, PREFETCH_BUDGET);
+    }
+
+    /**
+     * Evict least recently used resources, until the warm tier fits in the given size.
+     *
+     * <p>Victims are picked under the warm tier lock, but freed outside of it, since closing a
+     * resource may release others, which would then enter the warm tier.
+     *
+     * @param budget maximum footprint to keep.
+     * @param prefetchBudget maximum footprint of unclaimed prefetched resources to keep on top.
+     */
+    private static void evictUntil(long budget, long prefetchBudget) {
+        ArrayList<CountedResource<?>> victims = null;
+
+        synchronized (WARM_RESOURCES) {
+            Iterator<Map.Entry<CountedResource<?>, Long>> iter =
+                    WARM_RESOURCES.entrySet().iterator();
+            long keptUnclaimed = 0;
+
+            while (sWarmBytes - keptUnclaimed > budget && iter.hasNext()) {
+                Map.Entry<CountedResource<?>, Long> entry = iter.next();
+                CountedResource<?> res = entry.getKey();
+                long size = entry.getValue();
+
+                if (res.mUnclaimed && keptUnclaimed + size <= prefetchBudget) {
+                    keptUnclaimed += size;
+                    continue;
+                }
+
+                iter.remove();
+                res.mWarm = false;
+                sWarmBytes -= size;
+                getTypeStats(res.mArgs.getType()).mWarmBytes.addAndGet(-size);
+
+                if (victims == null) {
+                    victims = new ArrayList<>();
+                }
+                victims.add(res);
+            }
+        }
+
+        if (victims == null) {
+            return;
+        }
+
+        for (CountedResource<?> res : victims) {
+            synchronized (res) {
+                // Stale entries are referenced again, freed, or re-entered the warm tier
+                if (res.mRefcount == 0 && res.mResource != null && !res.mWarm) {
+                    res.destroy();
+                    getTypeStats(res.mArgs.getType()).mEvictions.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the loader of a resource type.
+     *
+     * <p>Loaders are registered in static initialisers of resource classes, thus the class gets
+     * initialised, if its loader is not found.
+     *
+     * @param type type of the resource.
+     * @return the loader, {@code null} if there is none.
+     */
+    private static IResourceLoader<?, ?> getLoader(Class<?> type) {
+        IResourceLoader<?, ?> loader = sLoaders.get(type);
+        if (loader != null) {
+            return loader;
+        }
+
+        try {
+            Class.forName(type.getName(), true, type.getClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
             return null;
         }
-        CountedResource<T> inst = new CountedResource<T>(arguments, ret);
-        sLoadedResources.put(arguments, inst);
-        return inst.incRefCount(arguments.getType());
+
+        return sLoaders.get(type);
     }
 
     /**
      * Essentially Java 9 readAllBytes.
      *
+     * <p>Reads straight into a buffer sized after what the stream reports to be available, only
+     * growing it if the stream turns out to be longer.
+     *
      * @param stream stream to read the bytes from.
      * @return all bytes of the stream.
      */
     private static byte[] readAllBytes(InputStream stream) throws Exception {
-        List<byte[]> chunks = new ArrayList<byte[]>();
-        int n = 0;
+        byte[] buffer = new byte[Math.max(stream.available(), 4096)];
         int total = 0;
-        final int CHUNK_SIZE = 4096;
-        while (n >= 0) {
-            byte[] chunk = new byte[CHUNK_SIZE];
-            n = stream.read(chunk);
-            if (n > 0) {
-                total += n;
-                if (n == CHUNK_SIZE) {
-                    chunks.add(chunk);
-                } else {
-                    chunks.add(Arrays.copyOfRange(chunk, 0, n));
-                }
+
+        while (true) {
+            if (total == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
             }
-        }
 
-        byte[] result = new byte[total];
-        int offset = 0;
-        for (byte[] c : chunks) {
-            System.arraycopy(c, 0, result, offset, c.length);
-            offset += c.length;
+            int n = stream.read(buffer, total, buffer.length - total);
+
+            if (n < 0) {
+                break;
+            }
+
+            total += n;
         }
-        return result;
+
+        return total == buffer.length ? buffer : Arrays.copyOf(buffer, total);
     }
 }
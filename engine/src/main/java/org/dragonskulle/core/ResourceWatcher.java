@@ -0,0 +1,379 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.core;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static org.dragonskulle.utils.Env.envBool;
+import static org.dragonskulle.utils.Env.envString;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import lombok.extern.java.Log;
+
+/**
+ * Reloads resources as their files change on disk.
+ *
+ * @author DragonSkulle
+ *     <p>This is a development tool. The watcher adds resource source directories to {@link
+ *     ResourceManager}, so that resources are read from there, and watches them for changes. Once a
+ *     file changes, every cached resource that was loaded from it, or depends on it (for instance,
+ *     shaders including it) is reloaded on a background thread. The reloaded objects are swapped
+ *     into existing {@link Resource} handles on the main thread, in {@link #update}, and {@link
+ *     IResourceReloadListener}s get notified, so that derived state can be rebuilt. Unused cached
+ *     resources are simply dropped, and get loaded afresh when next requested.
+ *     <p>Reload latency, from the change being noticed to the new object being in place, is logged
+ *     for every reload, and available through {@link #getLastLatencyMillis}, and {@link
+ *     #getAverageLatencyMillis}.
+ *     <p>The engine only starts a watcher when {@code HOT_RELOAD} environment variable is set to
+ *     true. Otherwise, nothing is watched, and no dependencies are recorded. Watched directories
+ *     are taken from {@code HOT_RELOAD_DIRS}, separated by the platform's path separator, and
+ *     default to the game's and engine's resource source directories.
+ */
+@Accessors(prefix = "m")
+@Log
+public class ResourceWatcher implements AutoCloseable {
+    /** Whether the engine should watch resources. */
+    public static final boolean ENABLED = envBool("HOT_RELOAD", false);
+
+    /** Time without new changes, after which the changed files get reloaded. */
+    private static final long DEBOUNCE_MILLIS = 100;
+
+    /** A reloaded resource, waiting to be swapped in on the main thread. */
+    private static class PendingSwap<T> {
+        private final ResourceManager.CountedResource<T> mTarget;
+        private final ResourceManager.CountedResource<T> mLoaded;
+        /** Time the change was noticed at. */
+        private final long mDetectedAt;
+
+        /**
+         * Create a pending swap.
+         *
+         * @param target cached resource to swap the object of.
+         * @param loaded freshly loaded copy.
+         * @param detectedAt {@link System#nanoTime} when the change was noticed.
+         */
+        PendingSwap(
+                ResourceManager.CountedResource<T> target,
+                ResourceManager.CountedResource<T> loaded,
+                long detectedAt) {
+            mTarget = target;
+            mLoaded = loaded;
+            mDetectedAt = detectedAt;
+        }
+
+        /**
+         * Swap the loaded object in.
+         *
+         * @return {@code true} if swapped, {@code false} if the target has been freed already.
+         */
+        boolean apply() {
+            if (mTarget.swap(mLoaded)) {
+                return true;
+            }
+            discard();
+            return false;
+        }
+
+        /** Free the loaded object without using it. */
+        void discard() {
+            ResourceManager.closeResource(mLoaded.getResource());
+        }
+    }
+
+    /** Directories the resources are read from. */
+    private final List<Path> mRoots;
+    /** Underlying file system watcher. */
+    private final WatchService mWatchService;
+    /** Watched directories, and the root directory they are in. */
+    private final Map<WatchKey, Path[]> mKeys = new ConcurrentHashMap<>();
+    /** Reloaded resources, ready to be swapped in. */
+    private final ConcurrentLinkedQueue<PendingSwap<?>> mReady = new ConcurrentLinkedQueue<>();
+    /** Thread waiting for file changes, and loading the changed resources. */
+    private final Thread mThread;
+
+    private volatile boolean mClosed = false;
+
+    /** Number of resources reloaded so far. */
+    @Getter private int mReloadCount = 0;
+    /** Sum of all reload latencies. */
+    private long mTotalLatencyNanos = 0;
+    /** Latency of the last reload. */
+    private long mLastLatencyNanos = 0;
+
+    /**
+     * Start watching resource directories.
+     *
+     * @param roots resource source directories, laid out the same way as the classpath resources.
+     *     Earlier ones take precedence.
+     * @throws IOException if the directories can not be watched.
+     */
+    public ResourceWatcher(List<Path> roots) throws IOException {
+        mRoots = new ArrayList<>(roots);
+        mWatchService = FileSystems.getDefault().newWatchService();
+
+        for (Path root : mRoots) {
+            registerAll(root, root);
+        }
+
+        // Later added directories are searched later, thus add them in order
+        for (Path root : mRoots) {
+            ResourceManager.addSourceDirectory(root);
+        }
+
+        ResourceManager.setTrackDependencies(true);
+
+        mThread = new Thread(this::watch, "ResourceWatcher");
+        mThread.setDaemon(true);
+        mThread.start();
+
+        log.info("Watching resources in " + mRoots);
+    }
+
+    /**
+     * Start watching the directories configured by environment.
+     *
+     * @return the started watcher, {@code null}, if there is nothing to watch.
+     */
+    public static ResourceWatcher startDefault() {
+        String dirs =
+                envString(
+                        "HOT_RELOAD_DIRS",
+                        String.join(
+                                File.pathSeparator,
+                                "src/main/resources",
+                                "../engine/src/main/resources"));
+
+        List<Path> roots =
+                Stream.of(dirs.split(File.pathSeparator))
+                        .filter((d) -> !d.isEmpty())
+                        .map((d) -> Paths.get(d).toAbsolutePath().normalize())
+                        .filter(Files::isDirectory)
+                        .collect(Collectors.toList());
+
+        if (roots.isEmpty()) {
+            log.warning("Hot reload is enabled, but none of the directories exist: " + dirs);
+            return null;
+        }
+
+        try {
+            return new ResourceWatcher(roots);
+        } catch (IOException e) {
+            log.warning("Failed to watch resources: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Swap reloaded resources in.
+     *
+     * <p>Call this from the thread that uses the resources, at a point where none of them are being
+     * accessed. The engine does this at the start of every frame.
+     */
+    public void update() {
+        PendingSwap<?> swap;
+
+        while ((swap = mReady.poll()) != null) {
+            if (!swap.apply()) {
+                continue;
+            }
+
+            long latency = System.nanoTime() - swap.mDetectedAt;
+            mReloadCount++;
+            mTotalLatencyNanos += latency;
+            mLastLatencyNanos = latency;
+
+            log.info(
+                    String.format(
+                            "Reloaded %s %s in %.1fms",
+                            swap.mTarget.getArgs().getType().getSimpleName(),
+                            swap.mTarget.getArgs().getName(),
+                            latency * 1e-6));
+        }
+    }
+
+    /**
+     * Get the latency of the last reload.
+     *
+     * @return time from the change being noticed, until the reloaded resource was swapped in.
+     */
+    public float getLastLatencyMillis() {
+        return mLastLatencyNanos * 1e-6f;
+    }
+
+    /**
+     * Get the average reload latency.
+     *
+     * @return average time from a change being noticed, until the resource was swapped in.
+     */
+    public float getAverageLatencyMillis() {
+        return mReloadCount == 0 ? 0 : mTotalLatencyNanos * 1e-6f / mReloadCount;
+    }
+
+    /** Stop watching, and read resources from their usual locations again. */
+    @Override
+    public void close() {
+        mClosed = true;
+
+        try {
+            mWatchService.close();
+        } catch (IOException e) {
+            log.fine("Failed to close watch service: " + e);
+        }
+
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (Path root : mRoots) {
+            ResourceManager.removeSourceDirectory(root);
+        }
+
+        ResourceManager.setTrackDependencies(false);
+
+        PendingSwap<?> swap;
+
+        while ((swap = mReady.poll()) != null) {
+            swap.discard();
+        }
+    }
+
+    /** Body of the watcher thread. */
+    private void watch() {
+        Map<String, Long> changed = new LinkedHashMap<>();
+
+        while (!mClosed) {
+            WatchKey key;
+
+            try {
+                key =
+                        changed.isEmpty()
+                                ? mWatchService.take()
+                                : mWatchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            // Editors tend to write files in several steps, wait for them to settle down
+            if (key == null) {
+                reload(changed);
+                changed.clear();
+                continue;
+            }
+
+            Path[] dirs = mKeys.get(key);
+
+            if (dirs != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        continue;
+                    }
+
+                    Path file = dirs[0].resolve((Path) event.context());
+
+                    if (Files.isDirectory(file)) {
+                        if (event.kind() == ENTRY_CREATE) {
+                            registerAll(dirs[1], file);
+                        }
+                        continue;
+                    }
+
+                    String path = dirs[1].relativize(file).toString().replace('\\', '/');
+                    changed.putIfAbsent(path, System.nanoTime());
+                }
+            }
+
+            if (!key.reset()) {
+                mKeys.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Reload all resources depending on the changed files.
+     *
+     * @param changed paths of the changed resource files, and times they changed at.
+     */
+    private void reload(Map<String, Long> changed) {
+        Map<ResourceManager.CountedResource<?>, Long> dependents = new LinkedHashMap<>();
+
+        for (Map.Entry<String, Long> entry : changed.entrySet()) {
+            for (ResourceManager.CountedResource<?> res :
+                    ResourceManager.findDependents(entry.getKey())) {
+                dependents.putIfAbsent(res, entry.getValue());
+            }
+        }
+
+        // Drop unused ones first, so that reloads of their dependents do not pick them up
+        Iterator<ResourceManager.CountedResource<?>> iter = dependents.keySet().iterator();
+
+        while (iter.hasNext()) {
+            ResourceManager.CountedResource<?> res = iter.next();
+            if (res.isUnused()) {
+                ResourceManager.unlinkResource(res.getArgs());
+                iter.remove();
+            }
+        }
+
+        for (Map.Entry<ResourceManager.CountedResource<?>, Long> entry : dependents.entrySet()) {
+            prepare(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Load a fresh copy of a resource, and queue it for swapping.
+     *
+     * @param <T> type of the resource.
+     * @param res the resource to reload.
+     * @param detectedAt time the change was noticed at.
+     */
+    private <T> void prepare(ResourceManager.CountedResource<T> res, long detectedAt) {
+        ResourceManager.CountedResource<T> loaded = res.loadReplacement();
+
+        if (loaded == null) {
+            log.warning("Failed to reload " + res.getArgs().getName() + ", keeping the old one");
+            return;
+        }
+
+        mReady.add(new PendingSwap<>(res, loaded, detectedAt));
+    }
+
+    /**
+     * Watch a directory, and all its subdirectories.
+     *
+     * @param root resource source directory the directory is in.
+     * @param dir directory to watch.
+     */
+    private void registerAll(Path root, Path dir) {
+        try (Stream<Path> stream = Files.walk(dir)) {
+            for (Path sub : (Iterable<Path>) stream.filter(Files::isDirectory)::iterator) {
+                WatchKey key = sub.register(mWatchService, ENTRY_CREATE, ENTRY_MODIFY);
+                mKeys.put(key, new Path[] {sub, root});
+            }
+        } catch (IOException | ClosedWatchServiceException e) {
+            log.warning("Failed to watch " + dir + ": " + e);
+        }
+    }
+}
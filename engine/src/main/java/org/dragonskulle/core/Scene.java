@@ -3,8 +3,8 @@ package org.dragonskulle.core;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
@@ -40,9 +40,16 @@ public class Scene {
     private final ArrayList<Component> mEnabledComponents = new ArrayList<>();
     /** Whether or not mEnabledComponents is dirty. */
     private boolean mEnabledComponentsDirty = false;
+    /** Number of times mEnabledComponents got rebuilt. */
+    private int mEnabledComponentsVersion = 0;
 
     /** List of enabled components by specific class types. */
     private final Map<Class<?>, CompList<?>> mInterfaceComponents = new HashMap<>();
+    /** Same lists as in mInterfaceComponents, kept for allocation-free iteration. */
+    private final ArrayList<CompList<?>> mInterfaceComponentLists = new ArrayList<>();
+
+    /** Temporary list used to collect children when rebuilding the component list. */
+    private final ArrayList<GameObject> mTmpChildren = new ArrayList<>();
 
     /** Name used to identify the scene. */
     @Getter private final String mName;
@@ -50,6 +57,11 @@ public class Scene {
     /** Registered singletons on the scene. */
     @Getter private final SingletonStore mSingletons = new SingletonStore();
 
+    /** Index of all objects within the scene by their name. */
+    private final ObjectIndex mNameIndex = new ObjectIndex();
+    /** Index of all objects within the scene by their tags. */
+    private final ObjectIndex mTagIndex = new ObjectIndex();
+
     /** Per-class component list. */
     private class CompList<T> {
         /** Is this list valid. */
@@ -89,7 +101,10 @@ public class Scene {
             if (!mIsValid) {
                 mList.clear();
 
-                for (Component comp : getEnabledComponents()) {
+                ArrayList<Component> enabled = getEnabledComponents();
+
+                for (int i = 0; i < enabled.size(); i++) {
+                    Component comp = enabled.get(i);
                     if (mType.isInstance(comp)) {
                         mList.add(mType.cast(comp));
                     }
@@ -152,6 +167,7 @@ public class Scene {
     public void addRootObject(GameObject object) {
         mGameObjects.add(object);
         object.setScene(this);
+        object.setIndexedScene(this);
         dirtyComponentLists();
     }
 
@@ -162,10 +178,148 @@ public class Scene {
      * @return the object, if found. {@code null} otherwise.
      */
     public GameObject findRootObject(String name) {
-        return mGameObjects.stream()
-                .filter(go -> go.getName().equals(name))
-                .findFirst()
-                .orElse(null);
+        List<GameObject> objects = mNameIndex.get(name);
+        GameObject found = null;
+
+        for (int i = 0; i < objects.size(); i++) {
+            GameObject go = objects.get(i);
+            if (!go.isRootObject()) {
+                continue;
+            }
+
+            if (found != null) {
+                // Several roots share the name, return the first one in the scene
+                for (GameObject root : mGameObjects) {
+                    if (root.getName().equals(name)) {
+                        return root;
+                    }
+                }
+            }
+
+            found = go;
+        }
+
+        return found;
+    }
+
+    /**
+     * Finds an object anywhere in the scene by its name.
+     *
+     * <p>If several objects share the name, the first one in hierarchy order is returned. That is,
+     * root objects are visited in scene order, each followed by its children, depth-first.
+     *
+     * @param name name of the object.
+     * @return the first object with the name. {@code null} if there is none.
+     */
+    public GameObject findObjectByName(String name) {
+        List<GameObject> objects = mNameIndex.get(name);
+
+        if (objects.size() <= 1) {
+            return objects.isEmpty() ? null : objects.get(0);
+        }
+
+        for (GameObject root : mGameObjects) {
+            if (root.getName().equals(name)) {
+                return root;
+            }
+
+            GameObject found = root.findDescendantByName(name);
+
+            if (found != null) {
+                return found;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Finds all objects in the scene with a given name.
+     *
+     * @param name name of the objects.
+     * @return read-only list of objects with the name, in the order they were added to the scene.
+     *     The list is owned by the scene, and will change as objects are added and removed, thus it
+     *     should not be held on to.
+     */
+    public List<GameObject> findObjectsByName(String name) {
+        return mNameIndex.get(name);
+    }
+
+    /**
+     * Finds all objects in the scene with a given tag.
+     *
+     * @param tag tag to look for.
+     * @return read-only list of tagged objects, in the order they were added to the scene. The list
+     *     is owned by the scene, and will change as objects are added and removed, thus it should
+     *     not be held on to.
+     */
+    public List<GameObject> findObjectsByTag(String tag) {
+        return mTagIndex.get(tag);
+    }
+
+    /**
+     * Get all enabled components of a given type in the scene.
+     *
+     * <p>The list is cached between calls, and only gets rebuilt when components change.
+     *
+     * @param <T> type of the component, or interface it implements.
+     * @param type class of type T.
+     * @return read-only list of components. The list is owned by the scene.
+     */
+    public <T> List<T> getEnabledComponentsOfType(Class<T> type) {
+        return getComponentsByIface(type);
+    }
+
+    /**
+     * Add an object to the indices of this scene.
+     *
+     * @param object object that became part of the scene.
+     */
+    void indexObject(GameObject object) {
+        mNameIndex.add(object.getName(), object);
+        List<String> tags = object.getTags();
+        for (int i = 0; i < tags.size(); i++) {
+            mTagIndex.add(tags.get(i), object);
+        }
+    }
+
+    /**
+     * Remove an object from the indices of this scene.
+     *
+     * @param object object that is no longer part of the scene.
+     */
+    void unindexObject(GameObject object) {
+        mNameIndex.remove(object.getName(), object);
+        List<String> tags = object.getTags();
+        for (int i = 0; i < tags.size(); i++) {
+            mTagIndex.remove(tags.get(i), object);
+        }
+    }
+
+    /**
+     * Update the name index after an object got renamed.
+     *
+     * @param object renamed object.
+     * @param oldName previous name of the object.
+     */
+    void onObjectRenamed(GameObject object, String oldName) {
+        mNameIndex.remove(oldName, object);
+        mNameIndex.add(object.getName(), object);
+    }
+
+    /**
+     * Update the tag index after a tag was added to, or removed from an object.
+     *
+     * @param object object whose tags changed.
+     * @param tag the tag.
+     * @param added whether the tag was added, or removed.
+     */
+    void onObjectTagged(GameObject object, String tag, boolean added) {
+        if (added) {
+            mTagIndex.add(tag, object);
+        } else {
+            mTagIndex.remove(tag, object);
+        }
     }
 
     /**
@@ -174,7 +328,9 @@ public class Scene {
      * @param object The GameObject to be removed from the scene
      */
     public void removeRootObject(GameObject object) {
-        mGameObjects.remove(object);
+        if (mGameObjects.remove(object)) {
+            object.setIndexedScene(null);
+        }
         object.setScene(null);
         dirtyComponentLists();
     }
@@ -188,6 +344,7 @@ public class Scene {
      */
     public void destroyRootObjectImmediate(GameObject object) {
         if (mGameObjects.remove(object)) {
+            object.setIndexedScene(null);
             object.engineDestroy();
         }
         dirtyComponentLists();
@@ -269,25 +426,34 @@ public class Scene {
 
         mComponents.clear();
 
-        mInterfaceComponents.values().stream().forEach(CompList::clear);
+        clearInterfaceComponents();
 
-        for (GameObject root : mGameObjects) {
+        for (int i = 0; i < mGameObjects.size(); i++) {
+            GameObject root = mGameObjects.get(i);
             mComponents.addAll(root.getComponents());
 
-            ArrayList<GameObject> children = new ArrayList<>();
-            root.getAllChildren(children);
-
-            for (GameObject child : children) {
+            mTmpChildren.clear();
+            root.getAllChildren(mTmpChildren);
 
-                mComponents.addAll(child.getComponents());
+            for (int j = 0; j < mTmpChildren.size(); j++) {
+                mComponents.addAll(mTmpChildren.get(j).getComponents());
             }
         }
+
+        mTmpChildren.clear();
+    }
+
+    /** Invalidate all per-class component lists. */
+    private void clearInterfaceComponents() {
+        for (int i = 0; i < mInterfaceComponentLists.size(); i++) {
+            mInterfaceComponentLists.get(i).clear();
+        }
     }
 
     /** Dirty the enabled component list. */
     public void dirtyEnabledComponents() {
         mEnabledComponentsDirty = true;
-        mInterfaceComponents.values().stream().forEach(CompList::clear);
+        clearInterfaceComponents();
     }
 
     /**
@@ -300,19 +466,38 @@ public class Scene {
 
         if (mEnabledComponentsDirty) {
             mEnabledComponents.clear();
-            mComponents.stream()
-                    .filter(component -> component.getGameObject() != null)
-                    .filter(component -> component.getGameObject().isEnabled())
-                    .filter(component -> component.isAwake())
-                    .filter(component -> component.isStarted())
-                    .filter(Component::isEnabled)
-                    .collect(Collectors.toCollection(() -> mEnabledComponents));
+            for (int i = 0; i < mComponents.size(); i++) {
+                Component component = mComponents.get(i);
+                GameObject go = component.getGameObject();
+                if (go != null
+                        && go.isEnabled()
+                        && component.isAwake()
+                        && component.isStarted()
+                        && component.isEnabled()) {
+                    mEnabledComponents.add(component);
+                }
+            }
             mEnabledComponentsDirty = false;
+            mEnabledComponentsVersion++;
         }
 
         return mEnabledComponents;
     }
 
+    /**
+     * Get the version of the enabled component lists.
+     *
+     * <p>The version changes every time enabled components get collected again, thus caches built
+     * from {@link #getEnabledComponentsOfType} can compare it to skip going through the lists when
+     * nothing was enabled, or disabled.
+     *
+     * @return current version of the enabled component lists.
+     */
+    public int getEnabledComponentsVersion() {
+        getEnabledComponents();
+        return mEnabledComponentsVersion;
+    }
+
     /**
      * Get a component list by their class.
      *
@@ -323,7 +508,16 @@ public class Scene {
     @SuppressWarnings("unchecked")
     protected <T> ArrayList<T> getComponentsByIface(Class<T> type) {
         updateComponentsList();
-        return (ArrayList<T>) mInterfaceComponents.computeIfAbsent(type, CompList::new).getList();
+
+        CompList<?> list = mInterfaceComponents.get(type);
+
+        if (list == null) {
+            list = new CompList<>(type);
+            mInterfaceComponents.put(type, list);
+            mInterfaceComponentLists.add(list);
+        }
+
+        return (ArrayList<T>) list.getList();
     }
 
     /**
@@ -337,10 +531,12 @@ public class Scene {
         if (mNotAwakeComponentsDirty) {
 
             mNotAwakeComponents.clear();
-            mComponents.stream()
-                    .filter(component -> component.getGameObject() != null)
-                    .filter(component -> !component.isAwake())
-                    .collect(Collectors.toCollection(() -> mNotAwakeComponents));
+            for (int i = 0; i < mComponents.size(); i++) {
+                Component component = mComponents.get(i);
+                if (component.getGameObject() != null && !component.isAwake()) {
+                    mNotAwakeComponents.add(component);
+                }
+            }
 
             mNotAwakeComponentsDirty = false;
         }
@@ -363,12 +559,13 @@ public class Scene {
 
         if (mToStartComponentsDirty) {
             mToStartComponents.clear();
-            mComponents.stream()
-                    .filter(component -> component.getGameObject() != null)
-                    .filter(component -> component.getGameObject().isEnabled())
-                    .filter(component -> component.isAwake())
-                    .filter(component -> !component.isStarted())
-                    .collect(Collectors.toCollection(() -> mToStartComponents));
+            for (int i = 0; i < mComponents.size(); i++) {
+                Component component = mComponents.get(i);
+                GameObject go = component.getGameObject();
+                if (go != null && go.isEnabled() && component.isAwake() && !component.isStarted()) {
+                    mToStartComponents.add(component);
+                }
+            }
             mToStartComponentsDirty = false;
         }
 
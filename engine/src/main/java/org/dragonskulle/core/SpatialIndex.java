@@ -0,0 +1,702 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import org.dragonskulle.components.Transform;
+import org.joml.FrustumIntersection;
+import org.joml.Intersectionf;
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+/**
+ * Bounding volume hierarchy over world space bounding boxes of objects.
+ *
+ * @author DragonSkulle
+ *     <p>Every entry has a box in local space of a {@link Transform}. {@link #refresh} recomputes
+ *     world bounds of entries whose transforms changed since last time, which is checked through
+ *     {@link Transform#getChangeCount}, without computing any other world matrices.
+ *     <p>Entries that stay within their leaf nodes are simply updated. The ones that leave them,
+ *     and newly added entries are moved to a flat list of pending entries, which every query tests
+ *     one by one. Once there are too many of them, the whole tree is rebuilt, by splitting the
+ *     entries at the median along the longest axis. Static objects thus end up in a well balanced
+ *     tree, while moving ones cost about as much as they would in a plain list.
+ *     <p>Queries skip whole subtrees whose bounds miss the frustum, ray, or point. Subtrees that
+ *     are fully within the frustum are accepted without testing individual entries.
+ *     <p>The index is not thread safe.
+ * @param <T> type of objects in the index.
+ */
+@Accessors(prefix = "m")
+public class SpatialIndex<T> {
+    /** Maximum number of entries in a leaf node. */
+    private static final int LEAF_SIZE = 4;
+    /** Minimum number of pending entries, before the tree gets rebuilt. */
+    private static final int MIN_PENDING = 64;
+
+    /** Orders entries by their centres along each axis. */
+    private static final List<Comparator<Entry<?>>> BY_AXIS =
+            Arrays.asList(
+                    (a, b) -> Float.compare(a.mMin.x + a.mMax.x, b.mMin.x + b.mMax.x),
+                    (a, b) -> Float.compare(a.mMin.y + a.mMax.y, b.mMin.y + b.mMax.y),
+                    (a, b) -> Float.compare(a.mMin.z + a.mMax.z, b.mMin.z + b.mMax.z));
+
+    /** Object within the index. */
+    @Accessors(prefix = "m")
+    public static class Entry<T> {
+        /** The indexed object. */
+        @Getter private final T mObject;
+        /** Transform the bounds are relative to. */
+        @Getter private final Transform mTransform;
+        /** Index the entry is in, {@code null} if it was removed. */
+        @Getter private SpatialIndex<T> mIndex;
+
+        /** Minimum coordinates of the box, in local space. */
+        private final Vector3f mLocalMin = new Vector3f();
+        /** Maximum coordinates of the box, in local space. */
+        private final Vector3f mLocalMax = new Vector3f();
+        /** Minimum coordinates of the box, in world space. */
+        private final Vector3f mMin = new Vector3f();
+        /** Maximum coordinates of the box, in world space. */
+        private final Vector3f mMax = new Vector3f();
+
+        /** Change count of the transform, as of the last bounds update. */
+        private int mChangeCount;
+        /** Whether the local bounds changed since the last bounds update. */
+        private boolean mBoundsChanged;
+
+        /** Leaf node containing the entry, {@code null} if pending. */
+        private Node<T> mLeaf;
+        /** Index within the leaf, or the pending list. */
+        private int mSlot;
+        /** Index within the list of all entries. */
+        private int mEntrySlot;
+
+        /** Mark set by the last {@link SpatialIndex#cull(FrustumIntersection, int)} hit. */
+        @Getter private int mMark;
+
+        /**
+         * Create an entry.
+         *
+         * @param index index the entry is in.
+         * @param object the indexed object.
+         * @param transform transform the bounds are relative to.
+         */
+        private Entry(SpatialIndex<T> index, T object, Transform transform) {
+            mIndex = index;
+            mObject = object;
+            mTransform = transform;
+        }
+
+        /**
+         * Set the bounding box of the object.
+         *
+         * <p>The change is picked up by the next {@link SpatialIndex#refresh}.
+         *
+         * @param min minimum coordinates of the box, in local space of the transform.
+         * @param max maximum coordinates of the box, in local space of the transform.
+         */
+        public void setLocalBounds(Vector3fc min, Vector3fc max) {
+            mLocalMin.set(min);
+            mLocalMax.set(max);
+            mBoundsChanged = true;
+        }
+
+        /**
+         * Get the minimum coordinates of the world space bounding box.
+         *
+         * @return world space minimum, as of the last refresh.
+         */
+        public Vector3fc getWorldMin() {
+            return mMin;
+        }
+
+        /**
+         * Get the maximum coordinates of the world space bounding box.
+         *
+         * @return world space maximum, as of the last refresh.
+         */
+        public Vector3fc getWorldMax() {
+            return mMax;
+        }
+
+        /** Remove the entry from its index. Does nothing if it was removed already. */
+        public void remove() {
+            if (mIndex != null) {
+                mIndex.remove(this);
+            }
+        }
+
+        /** Recompute the world space bounds. */
+        private void updateBounds() {
+            mChangeCount = mTransform.getChangeCount();
+            mBoundsChanged = false;
+            mTransform.getWorldMatrix().transformAab(mLocalMin, mLocalMax, mMin, mMax);
+        }
+    }
+
+    /** Node of the tree. */
+    private static class Node<T> {
+        /** Minimum coordinates of all entries within. */
+        private final Vector3f mMin = new Vector3f();
+        /** Maximum coordinates of all entries within. */
+        private final Vector3f mMax = new Vector3f();
+
+        private Node<T> mParent;
+        private Node<T> mLeft;
+        private Node<T> mRight;
+
+        /** Entries of a leaf node, {@code null} for inner nodes. */
+        private Entry<T>[] mEntries;
+        /** Number of entries in a leaf node. */
+        private int mCount;
+
+        /**
+         * Check whether the node contains no entries.
+         *
+         * @return {@code true} if the bounds are empty.
+         */
+        private boolean isEmpty() {
+            return mMin.x > mMax.x;
+        }
+
+        /**
+         * Check whether the node's bounds contain a box.
+         *
+         * @param min minimum coordinates of the box.
+         * @param max maximum coordinates of the box.
+         * @return {@code true} if the box is fully within the node.
+         */
+        private boolean contains(Vector3fc min, Vector3fc max) {
+            return mMin.x <= min.x()
+                    && mMin.y <= min.y()
+                    && mMin.z <= min.z()
+                    && mMax.x >= max.x()
+                    && mMax.y >= max.y()
+                    && mMax.z >= max.z();
+        }
+
+        /** Recompute the bounds from the children, or entries. */
+        private void fit() {
+            mMin.set(Float.POSITIVE_INFINITY);
+            mMax.set(Float.NEGATIVE_INFINITY);
+
+            if (mEntries != null) {
+                for (int i = 0; i < mCount; i++) {
+                    mMin.min(mEntries[i].mMin);
+                    mMax.max(mEntries[i].mMax);
+                }
+            } else {
+                if (!mLeft.isEmpty()) {
+                    mMin.min(mLeft.mMin);
+                    mMax.max(mLeft.mMax);
+                }
+                if (!mRight.isEmpty()) {
+                    mMin.min(mRight.mMin);
+                    mMax.max(mRight.mMax);
+                }
+            }
+        }
+    }
+
+    /** All entries in the index. */
+    private final ArrayList<Entry<T>> mEntries = new ArrayList<>();
+    /** Entries that are not in the tree. */
+    private final ArrayList<Entry<T>> mPending = new ArrayList<>();
+    /** Root of the tree, {@code null} if there is none. */
+    private Node<T> mRoot;
+
+    /** Entries hit by the current ray query. */
+    private final ArrayList<Entry<T>> mHits = new ArrayList<>();
+    /** Distances to {@link #mHits}. */
+    private float[] mHitDistances = new float[16];
+    /** Temporary ray intersection result. */
+    private final Vector2f mTmpNearFar = new Vector2f();
+
+    /**
+     * Add an object to the index.
+     *
+     * @param object object to add.
+     * @param transform transform the bounds are relative to.
+     * @param min minimum coordinates of the bounding box, in local space of the transform.
+     * @param max maximum coordinates of the bounding box, in local space of the transform.
+     * @return entry of the object, used to update, or remove it.
+     */
+    public Entry<T> add(T object, Transform transform, Vector3fc min, Vector3fc max) {
+        Entry<T> entry = new Entry<>(this, object, transform);
+        entry.setLocalBounds(min, max);
+        entry.updateBounds();
+        entry.mEntrySlot = mEntries.size();
+        mEntries.add(entry);
+        addPending(entry);
+        return entry;
+    }
+
+    /**
+     * Remove an entry from the index.
+     *
+     * @param entry entry to remove.
+     */
+    public void remove(Entry<T> entry) {
+        if (entry.mIndex != this) {
+            return;
+        }
+
+        removeFromNode(entry);
+        removeSwap(mEntries, entry.mEntrySlot).mEntrySlot = entry.mEntrySlot;
+        entry.mIndex = null;
+    }
+
+    /** Remove all entries. */
+    public void clear() {
+        for (Entry<T> entry : mEntries) {
+            entry.mIndex = null;
+            entry.mLeaf = null;
+        }
+
+        mEntries.clear();
+        mPending.clear();
+        mRoot = null;
+    }
+
+    /**
+     * Get the number of entries.
+     *
+     * @return number of objects in the index.
+     */
+    public int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Update bounds of entries that moved, or whose bounds were changed.
+     *
+     * <p>Call this before querying, once objects may have moved.
+     */
+    public void refresh() {
+        for (int i = 0; i < mEntries.size(); i++) {
+            Entry<T> entry = mEntries.get(i);
+
+            if (entry.mChangeCount == entry.mTransform.getChangeCount() && !entry.mBoundsChanged) {
+                continue;
+            }
+
+            entry.updateBounds();
+
+            // Entries that leave their leaves get tested separately until the next rebuild
+            if (entry.mLeaf != null && !entry.mLeaf.contains(entry.mMin, entry.mMax)) {
+                removeFromNode(entry);
+                addPending(entry);
+            }
+        }
+
+        if (mPending.size() > Math.max(MIN_PENDING, mEntries.size() / 8)) {
+            rebuild();
+        }
+    }
+
+    /** Rebuild the tree from all the entries. */
+    public void rebuild() {
+        mPending.clear();
+
+        if (mEntries.isEmpty()) {
+            mRoot = null;
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        Entry<T>[] entries = mEntries.toArray(new Entry[mEntries.size()]);
+        mRoot = build(entries, 0, entries.length, null);
+    }
+
+    /**
+     * Mark all entries that intersect a frustum.
+     *
+     * <p>The mark is then read with {@link Entry#getMark}. This is useful, when objects are
+     * iterated in some other order anyway.
+     *
+     * @param frustum frustum to test against.
+     * @param mark value to set on all entries within the frustum.
+     */
+    public void cull(FrustumIntersection frustum, int mark) {
+        cull(frustum, null, mark);
+    }
+
+    /**
+     * Find all objects whose bounds intersect a frustum.
+     *
+     * @param frustum frustum to test against.
+     * @param out list the objects get added to.
+     */
+    public void cull(FrustumIntersection frustum, List<? super T> out) {
+        cull(frustum, out, 0);
+    }
+
+    /**
+     * Find all objects whose bounds are hit by a ray.
+     *
+     * @param origin origin of the ray.
+     * @param dir direction of the ray.
+     * @param out list the objects get added to, ordered from the nearest to the furthest hit.
+     */
+    public void raycast(Vector3fc origin, Vector3fc dir, List<? super T> out) {
+        mHits.clear();
+
+        raycast(mRoot, origin, dir);
+
+        for (int i = 0; i < mPending.size(); i++) {
+            raycast(mPending.get(i), origin, dir);
+        }
+
+        int count = mHits.size();
+        float[] distances = mHitDistances;
+
+        // Insertion sort, only a handful of objects are under a ray
+        for (int i = 1; i < count; i++) {
+            Entry<T> entry = mHits.get(i);
+            float dist = distances[i];
+            int j = i - 1;
+
+            while (j >= 0 && distances[j] > dist) {
+                mHits.set(j + 1, mHits.get(j));
+                distances[j + 1] = distances[j];
+                j--;
+            }
+
+            mHits.set(j + 1, entry);
+            distances[j + 1] = dist;
+        }
+
+        for (int i = 0; i < count; i++) {
+            out.add(mHits.get(i).mObject);
+        }
+
+        mHits.clear();
+    }
+
+    /**
+     * Find all objects whose bounds contain a point.
+     *
+     * @param point point to test.
+     * @param out list the objects get added to.
+     */
+    public void queryPoint(Vector3fc point, List<? super T> out) {
+        queryPoint(mRoot, point, out);
+
+        for (int i = 0; i < mPending.size(); i++) {
+            Entry<T> entry = mPending.get(i);
+            if (containsPoint(entry.mMin, entry.mMax, point)) {
+                out.add(entry.mObject);
+            }
+        }
+    }
+
+    /**
+     * Put an entry to the pending list.
+     *
+     * @param entry entry to add.
+     */
+    private void addPending(Entry<T> entry) {
+        entry.mLeaf = null;
+        entry.mSlot = mPending.size();
+        mPending.add(entry);
+    }
+
+    /**
+     * Remove an entry from its leaf, or the pending list.
+     *
+     * @param entry entry to remove.
+     */
+    private void removeFromNode(Entry<T> entry) {
+        Node<T> leaf = entry.mLeaf;
+
+        if (leaf == null) {
+            removeSwap(mPending, entry.mSlot).mSlot = entry.mSlot;
+            return;
+        }
+
+        Entry<T> last = leaf.mEntries[--leaf.mCount];
+        leaf.mEntries[entry.mSlot] = last;
+        last.mSlot = entry.mSlot;
+        leaf.mEntries[leaf.mCount] = null;
+        entry.mLeaf = null;
+
+        for (Node<T> node = leaf; node != null; node = node.mParent) {
+            node.fit();
+        }
+    }
+
+    /**
+     * Remove an element from a list, by moving the last element in its place.
+     *
+     * @param <E> type of list elements.
+     * @param list list to remove from.
+     * @param index index of the element to remove.
+     * @return the element now at {@code index}, or the removed one, if it was the last.
+     */
+    private static <E> E removeSwap(ArrayList<E> list, int index) {
+        E last = list.remove(list.size() - 1);
+
+        if (index == list.size()) {
+            return last;
+        }
+
+        list.set(index, last);
+        return last;
+    }
+
+    /**
+     * Build a subtree.
+     *
+     * @param entries array of entries. The range gets reordered.
+     * @param start first entry of the subtree.
+     * @param end index after the last entry of the subtree.
+     * @param parent parent of the subtree.
+     * @return the root of the subtree.
+     */
+    private Node<T> build(Entry<T>[] entries, int start, int end, Node<T> parent) {
+        Node<T> node = new Node<>();
+        node.mParent = parent;
+
+        if (end - start <= LEAF_SIZE) {
+            @SuppressWarnings("unchecked")
+            Entry<T>[] leafEntries = new Entry[LEAF_SIZE];
+            node.mEntries = leafEntries;
+
+            for (int i = start; i < end; i++) {
+                Entry<T> entry = entries[i];
+                entry.mLeaf = node;
+                entry.mSlot = node.mCount;
+                leafEntries[node.mCount++] = entry;
+            }
+
+            node.fit();
+            return node;
+        }
+
+        // Split along the axis the centres are spread the most along. Node bounds are used as
+        // temporaries here, the actual bounds are computed after the children are built.
+        Vector3f min = node.mMin.set(Float.POSITIVE_INFINITY);
+        Vector3f max = node.mMax.set(Float.NEGATIVE_INFINITY);
+        Vector3f centre = new Vector3f();
+
+        for (int i = start; i < end; i++) {
+            Entry<T> entry = entries[i];
+            entry.mMin.add(entry.mMax, centre);
+            min.min(centre);
+            max.max(centre);
+        }
+
+        float dx = max.x - min.x;
+        float dy = max.y - min.y;
+        float dz = max.z - min.z;
+        int axis = dx >= dy && dx >= dz ? 0 : dy >= dz ? 1 : 2;
+
+        Arrays.sort(entries, start, end, BY_AXIS.get(axis));
+
+        int mid = (start + end) >>> 1;
+        node.mLeft = build(entries, start, mid, node);
+        node.mRight = build(entries, mid, end, node);
+        node.fit();
+
+        return node;
+    }
+
+    /**
+     * Find entries intersecting a frustum.
+     *
+     * @param frustum frustum to test against.
+     * @param out list to add the objects to, {@code null} to mark the entries instead.
+     * @param mark value to mark the entries with.
+     */
+    private void cull(FrustumIntersection frustum, List<? super T> out, int mark) {
+        if (mRoot != null) {
+            cull(mRoot, frustum, out, mark);
+        }
+
+        for (int i = 0; i < mPending.size(); i++) {
+            Entry<T> entry = mPending.get(i);
+            if (frustum.testAab(entry.mMin, entry.mMax)) {
+                accept(entry, out, mark);
+            }
+        }
+    }
+
+    /**
+     * Find entries intersecting a frustum within a subtree.
+     *
+     * @param node root of the subtree.
+     * @param frustum frustum to test against.
+     * @param out list to add the objects to, {@code null} to mark the entries instead.
+     * @param mark value to mark the entries with.
+     */
+    private void cull(Node<T> node, FrustumIntersection frustum, List<? super T> out, int mark) {
+        if (node.isEmpty()) {
+            return;
+        }
+
+        int result = frustum.intersectAab(node.mMin, node.mMax);
+
+        if (result == FrustumIntersection.INSIDE) {
+            acceptAll(node, out, mark);
+        } else if (result == FrustumIntersection.INTERSECT) {
+            if (node.mEntries == null) {
+                cull(node.mLeft, frustum, out, mark);
+                cull(node.mRight, frustum, out, mark);
+                return;
+            }
+
+            for (int i = 0; i < node.mCount; i++) {
+                Entry<T> entry = node.mEntries[i];
+                if (frustum.testAab(entry.mMin, entry.mMax)) {
+                    accept(entry, out, mark);
+                }
+            }
+        }
+    }
+
+    /**
+     * Accept all entries of a subtree.
+     *
+     * @param node root of the subtree.
+     * @param out list to add the objects to, {@code null} to mark the entries instead.
+     * @param mark value to mark the entries with.
+     */
+    private void acceptAll(Node<T> node, List<? super T> out, int mark) {
+        if (node.mEntries == null) {
+            acceptAll(node.mLeft, out, mark);
+            acceptAll(node.mRight, out, mark);
+            return;
+        }
+
+        for (int i = 0; i < node.mCount; i++) {
+            accept(node.mEntries[i], out, mark);
+        }
+    }
+
+    /**
+     * Accept an entry found by culling.
+     *
+     * @param entry the found entry.
+     * @param out list to add the object to, {@code null} to mark the entry instead.
+     * @param mark value to mark the entry with.
+     */
+    private void accept(Entry<T> entry, List<? super T> out, int mark) {
+        if (out == null) {
+            entry.mMark = mark;
+        } else {
+            out.add(entry.mObject);
+        }
+    }
+
+    /**
+     * Find entries hit by a ray within a subtree, and add them to {@link #mHits}.
+     *
+     * @param node root of the subtree.
+     * @param origin origin of the ray.
+     * @param dir direction of the ray.
+     */
+    private void raycast(Node<T> node, Vector3fc origin, Vector3fc dir) {
+        if (node == null || node.isEmpty() || rayDistance(node.mMin, node.mMax, origin, dir) < 0) {
+            return;
+        }
+
+        if (node.mEntries == null) {
+            raycast(node.mLeft, origin, dir);
+            raycast(node.mRight, origin, dir);
+            return;
+        }
+
+        for (int i = 0; i < node.mCount; i++) {
+            raycast(node.mEntries[i], origin, dir);
+        }
+    }
+
+    /**
+     * Add an entry to {@link #mHits}, if the ray hits it.
+     *
+     * @param entry entry to test.
+     * @param origin origin of the ray.
+     * @param dir direction of the ray.
+     */
+    private void raycast(Entry<T> entry, Vector3fc origin, Vector3fc dir) {
+        float dist = rayDistance(entry.mMin, entry.mMax, origin, dir);
+
+        if (dist < 0) {
+            return;
+        }
+
+        int count = mHits.size();
+
+        if (mHitDistances.length <= count) {
+            mHitDistances = Arrays.copyOf(mHitDistances, count * 2);
+        }
+
+        mHitDistances[count] = dist;
+        mHits.add(entry);
+    }
+
+    /**
+     * Compute the distance along a ray to a box.
+     *
+     * @param min minimum coordinates of the box.
+     * @param max maximum coordinates of the box.
+     * @param origin origin of the ray.
+     * @param dir direction of the ray.
+     * @return distance to where the ray enters the box, 0 if it starts inside, and -1 if the box is
+     *     missed.
+     */
+    private float rayDistance(Vector3fc min, Vector3fc max, Vector3fc origin, Vector3fc dir) {
+        if (!Intersectionf.intersectRayAab(origin, dir, min, max, mTmpNearFar)) {
+            return -1;
+        }
+        return Math.max(mTmpNearFar.x, 0);
+    }
+
+    /**
+     * Find entries containing a point within a subtree.
+     *
+     * @param node root of the subtree.
+     * @param point point to test.
+     * @param out list the objects get added to.
+     */
+    private void queryPoint(Node<T> node, Vector3fc point, List<? super T> out) {
+        if (node == null || node.isEmpty() || !containsPoint(node.mMin, node.mMax, point)) {
+            return;
+        }
+
+        if (node.mEntries == null) {
+            queryPoint(node.mLeft, point, out);
+            queryPoint(node.mRight, point, out);
+            return;
+        }
+
+        for (int i = 0; i < node.mCount; i++) {
+            Entry<T> entry = node.mEntries[i];
+            if (containsPoint(entry.mMin, entry.mMax, point)) {
+                out.add(entry.mObject);
+            }
+        }
+    }
+
+    /**
+     * Check whether a box contains a point.
+     *
+     * @param min minimum coordinates of the box.
+     * @param max maximum coordinates of the box.
+     * @param point point to test.
+     * @return {@code true} if the point is within the box, or on its boundary.
+     */
+    private static boolean containsPoint(Vector3fc min, Vector3fc max, Vector3fc point) {
+        return point.x() >= min.x()
+                && point.y() >= min.y()
+                && point.z() >= min.z()
+                && point.x() <= max.x()
+                && point.y() <= max.y()
+                && point.z() <= max.z();
+    }
+}
@@ -11,7 +11,9 @@ import lombok.experimental.Accessors;
  * Spawnable template manager.
  *
  * @author Aurimas Blažulionis
- *     <p>This class acts as a collection of spawnable object templates.
+ *     <p>This class acts as a collection of spawnable object templates. Every template gets a
+ *     {@link TemplatePlan} compiled for it, so that spawning does not need to walk the template
+ *     tree through the cloner.
  */
 @Accessors(prefix = "m")
 public class TemplateManager {
@@ -30,7 +32,13 @@ public class TemplateManager {
             return null;
         }
 
-        return GameObject.instantiate(mTemplates.get(id));
+        GameObject template = mTemplates.get(id);
+
+        if (!TemplatePlan.isCompiled(template)) {
+            TemplatePlan.compile(template);
+        }
+
+        return GameObject.instantiate(template);
     }
 
     /**
@@ -56,6 +64,7 @@ public class TemplateManager {
         int idx = mTemplates.size();
         mNameToIndex.put(object.getName(), idx);
         mTemplates.add(object);
+        TemplatePlan.compile(object);
         return idx;
     }
 
@@ -0,0 +1,99 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.core;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+/**
+ * Precomputed instantiation plan of a template object.
+ *
+ * @author DragonSkulle
+ *     <p>Cloning a template through the deep cloner walks the object tree recursively, going
+ *     through the clone map for every parent, root and child link of every object. A plan flattens
+ *     the tree once, so that instantiation creates and links all objects in a single pass, and only
+ *     transforms and components are left to the cloner (and its fast cloners).
+ *     <p>Plans are attached to the root object of the template, and are picked up automatically by
+ *     {@link GameObject#instantiate}. Any change to the children of the template drops the plan,
+ *     after which cloning falls back to the regular path until it is compiled again.
+ */
+@Accessors(prefix = "m")
+public class TemplatePlan {
+    /** Objects of the template in depth-first order. The first entry is the template root. */
+    @Getter(AccessLevel.PACKAGE)
+    private final GameObject[] mNodes;
+
+    /** Index of the parent of every node within {@link #mNodes}. {@code -1} for the root. */
+    @Getter(AccessLevel.PACKAGE)
+    private final int[] mParents;
+
+    /**
+     * Construct a plan for a template.
+     *
+     * @param template root object of the template.
+     */
+    private TemplatePlan(GameObject template) {
+        ArrayList<GameObject> nodes = new ArrayList<>();
+        nodes.add(template);
+        template.getAllChildren(nodes);
+
+        mNodes = nodes.toArray(new GameObject[0]);
+        mParents = new int[mNodes.length];
+
+        Map<GameObject, Integer> indices = new IdentityHashMap<>();
+
+        for (int i = 0; i < mNodes.length; i++) {
+            indices.put(mNodes[i], i);
+            mParents[i] = i == 0 ? -1 : indices.get(mNodes[i].getParent());
+        }
+    }
+
+    /**
+     * Compile an instantiation plan for a template, and attach it to the template.
+     *
+     * <p>Only root objects can be compiled, because the plan does not describe links outside the
+     * template.
+     *
+     * @param template root object to compile the plan for.
+     * @return the compiled plan. {@code null}, if the template is not a root object.
+     */
+    public static TemplatePlan compile(GameObject template) {
+        if (!template.isRootObject()) {
+            return null;
+        }
+
+        template.mTemplatePlan = new TemplatePlan(template);
+        return template.mTemplatePlan;
+    }
+
+    /**
+     * Detach a compiled plan from the template, if there is any.
+     *
+     * @param template template to detach the plan from.
+     */
+    public static void discard(GameObject template) {
+        template.mTemplatePlan = null;
+    }
+
+    /**
+     * Check whether the template currently has a compiled plan.
+     *
+     * @param template template to check.
+     * @return {@code true} if the template will be instantiated through a plan.
+     */
+    public static boolean isCompiled(GameObject template) {
+        return template.mTemplatePlan != null;
+    }
+
+    /**
+     * Get the number of objects in the template.
+     *
+     * @return number of objects, including the root.
+     */
+    public int getObjectCount() {
+        return mNodes.length;
+    }
+}
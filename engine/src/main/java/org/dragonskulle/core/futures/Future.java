@@ -4,6 +4,8 @@ package org.dragonskulle.core.futures;
 import lombok.Getter;
 import lombok.experimental.Accessors;
 import org.dragonskulle.core.Engine;
+import org.dragonskulle.core.Resource;
+import org.dragonskulle.core.ResourceArguments;
 import org.dragonskulle.core.Scene;
 import org.dragonskulle.core.futures.AwaitFuture.IAwaitFuture;
 import org.dragonskulle.core.futures.ProducerFuture.IProducerFuture;
@@ -174,4 +176,24 @@ public class Future {
         mNextFuture = producer;
         return producer;
     }
+
+    /**
+     * Build a {@link ResourceFuture}.
+     *
+     * <p>This will build a new {@link ResourceFuture}, and chain it after the current one.
+     *
+     * <p>This future will load a resource on the resource loader pool, and then invoke a post load
+     * interface with it on the main thread.
+     *
+     * @param <T> type of the resource.
+     * @param arguments arguments of the resource to load.
+     * @param postLoad action to invoke with the loaded resource.
+     * @return the newly constructed {@link ResourceFuture}.
+     */
+    public <T> ResourceFuture<T> loadResource(
+            ResourceArguments<T, ?> arguments, IProducerFuture<Resource<T>> postLoad) {
+        ResourceFuture<T> loader = new ResourceFuture<>(mRoot, arguments, postLoad);
+        mNextFuture = loader;
+        return loader;
+    }
 }
@@ -0,0 +1,87 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.core.futures;
+
+import org.dragonskulle.core.Engine;
+import org.dragonskulle.core.Resource;
+import org.dragonskulle.core.ResourceArguments;
+import org.dragonskulle.core.ResourceHandle;
+import org.dragonskulle.core.ResourceManager;
+import org.dragonskulle.core.Scene;
+import org.dragonskulle.core.futures.ProducerFuture.IProducerFuture;
+
+/**
+ * "Resource" future.
+ *
+ * @author DragonSkulle
+ *     <p>This future can be built with {@link Future#loadResource}. It will start loading a
+ *     resource on the resource loader pool, and wait until it is loaded. Once it happens, future
+ *     handler is called with the resource on the main thread, and the next future is called in the
+ *     chain. The handler takes ownership of the resource, and is responsible for freeing it.
+ */
+public class ResourceFuture<T> extends Future {
+
+    /** Arguments of the resource to load. */
+    private final ResourceArguments<T, ?> mArguments;
+    /** The underlying action to invoke after loading the resource. */
+    private final IProducerFuture<Resource<T>> mPostLoad;
+    /** Handle to the resource being loaded. */
+    private ResourceHandle<T> mHandle;
+
+    /**
+     * Constructor for {@link ResourceFuture}.
+     *
+     * @param root root of the future chain.
+     * @param arguments arguments of the resource to load.
+     * @param postLoad action to invoke with the loaded resource.
+     */
+    public ResourceFuture(
+            Future root, ResourceArguments<T, ?> arguments, IProducerFuture<Resource<T>> postLoad) {
+        super(root);
+        mArguments = arguments;
+        mPostLoad = postLoad;
+    }
+
+    /**
+     * Constructor for {@link ResourceFuture}.
+     *
+     * <p>This future will be constructed as root future.
+     *
+     * @param arguments arguments of the resource to load.
+     * @param postLoad action to invoke with the loaded resource.
+     */
+    public ResourceFuture(
+            ResourceArguments<T, ?> arguments, IProducerFuture<Resource<T>> postLoad) {
+        this(null, arguments, postLoad);
+    }
+
+    @Override
+    protected void invoke(Scene scene) {
+        mHandle = ResourceManager.getResourceAsync(mArguments);
+        forwardCheck(scene);
+    }
+
+    /**
+     * This method will check if loading was finished, then invoke the post load interface,
+     * alongside scheduling the next future.
+     *
+     * @param scene scene of the context.
+     */
+    private void forwardCheck(Scene scene) {
+        if (!mHandle.isDone()) {
+            Engine.getInstance().scheduleEndOfLoopEvent(() -> forwardCheck(scene));
+            return;
+        }
+
+        mComplete = true;
+
+        mPostLoad.invoke(scene, mHandle.get());
+
+        if (mNextFuture != null) {
+            Engine.getInstance()
+                    .scheduleEndOfLoopEvent(
+                            () -> {
+                                mNextFuture.invoke(scene);
+                            });
+        }
+    }
+}
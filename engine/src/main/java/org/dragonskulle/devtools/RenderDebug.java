@@ -1,6 +1,8 @@
 /* (C) 2021 DragonSkulle */
 package org.dragonskulle.devtools;
 
+import java.io.File;
+import java.util.List;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
@@ -10,6 +12,9 @@ import org.dragonskulle.components.IOnAwake;
 import org.dragonskulle.components.Transform;
 import org.dragonskulle.components.TransformHex;
 import org.dragonskulle.core.Engine;
+import org.dragonskulle.core.EnginePhase;
+import org.dragonskulle.core.Profiler;
+import org.dragonskulle.core.Profiler.ComponentTiming;
 import org.dragonskulle.core.Reference;
 import org.dragonskulle.core.Scene;
 import org.dragonskulle.input.Action;
@@ -32,12 +37,18 @@ import org.joml.Vector3f;
 public class RenderDebug extends Component implements IOnAwake, IFrameUpdate {
 
     public static final Action DEBUG_ACTION = new Action();
+    /** Toggles the profiler. Stopping it writes a Chrome trace to the working directory. */
+    public static final Action PROFILE_ACTION = new Action();
+
+    /** Number of slowest component classes to display. */
+    private static final int SLOWEST_COMPONENT_COUNT = 5;
 
     private Reference<UIText> mText;
 
     @Getter @Setter private Reference<Transform> mTrackTransform;
 
     private boolean mLastPressed = false;
+    private boolean mLastProfilePressed = false;
 
     private float mLastTime = 0f;
 
@@ -58,6 +69,13 @@ public class RenderDebug extends Component implements IOnAwake, IFrameUpdate {
     @Override
     public void frameUpdate(float deltaTime) {
         boolean debugPressed = DEBUG_ACTION.isActivated();
+        boolean profilePressed = PROFILE_ACTION.isActivated();
+
+        if (profilePressed && !mLastProfilePressed) {
+            toggleProfiler();
+        }
+
+        mLastProfilePressed = profilePressed;
 
         if (Engine.getInstance().getCurTime() - mLastTime < 0.016f) {
             return;
@@ -121,15 +139,68 @@ public class RenderDebug extends Component implements IOnAwake, IFrameUpdate {
 
             String rendererText =
                     String.format(
-                            "Instanced Draws: %d\nSlow Draws: %d\nIB Size: %d\nMB Size: VB - %d | IB - %d\n",
+                            "Instanced Draws: %d\nSlow Draws: %d\nIB Size: %d\nIB Writes: %d / %d\nMB Size: VB - %d | IB - %d\n",
                             instancedDrawCalls,
                             slowDrawCalls,
-                            rend.getInstancedCalls(),
+                            rend.getInstanceBufferSize(),
+                            rend.getInstanceBytesWritten(),
+                            rend.getInstanceDataSize(),
                             rend.getVertexBufferSize(),
                             rend.getIndexBufferSize());
 
-            mText.get().setText(fps + cameraText + cursorText + rendererText);
+            mText.get().setText(fps + cameraText + cursorText + rendererText + profilerText());
+        }
+    }
+
+    /** Start the profiler, or stop it and write out the recorded trace. */
+    private void toggleProfiler() {
+        Profiler profiler = Engine.getInstance().getProfiler();
+
+        if (profiler.isEnabled()) {
+            profiler.setEnabled(false);
+            profiler.exportChromeTrace(new File("trace-" + System.currentTimeMillis() + ".json"));
+        } else {
+            profiler.reset();
+            profiler.setComponentTiming(true);
+            profiler.setEnabled(true);
+        }
+    }
+
+    /**
+     * Build the profiler breakdown of the last frame.
+     *
+     * @return profiler text, empty if the profiler is disabled.
+     */
+    private String profilerText() {
+        Profiler profiler = Engine.getInstance().getProfiler();
+
+        if (!profiler.isEnabled()) {
+            return "";
         }
+
+        StringBuilder builder = new StringBuilder();
+
+        builder.append(
+                String.format("Profiler: %.2f ms\n", profiler.getLastFrameNanos() / 1000000f));
+
+        for (EnginePhase phase : EnginePhase.VALUES) {
+            long nanos = profiler.getLastFrameNanos(phase);
+            if (nanos > 0) {
+                builder.append(String.format("  %s: %.2f ms\n", phase, nanos / 1000000f));
+            }
+        }
+
+        List<ComponentTiming> slowest = profiler.getSlowestComponents(SLOWEST_COMPONENT_COUNT);
+
+        for (ComponentTiming timing : slowest) {
+            builder.append(
+                    String.format(
+                            "  %s: %.2f ms\n",
+                            timing.getType().getSimpleName(),
+                            timing.getLastFrameNanos() / 1000000f));
+        }
+
+        return builder.toString();
     }
 
     @Override
@@ -28,6 +28,19 @@ public abstract class BaseSyncVar implements ISyncVar {
         return mDirty;
     }
 
+    /**
+     * Copy the dirty flags from another syncvar.
+     *
+     * <p>This is used by the fast cloners of concrete syncvars, so that template instantiation does
+     * not need to reflect over them.
+     *
+     * @param other syncvar to copy the flags from.
+     */
+    protected void copyFlags(BaseSyncVar other) {
+        mDirty = other.mDirty;
+        mIsClientDirty = other.mIsClientDirty;
+    }
+
     @Override
     public void resetDirtyFlag() {
         mDirty = false;
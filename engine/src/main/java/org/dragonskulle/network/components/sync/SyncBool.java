@@ -5,6 +5,7 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.Objects;
+import org.dragonskulle.core.Engine;
 
 /**
  * The type Sync bool.
@@ -16,6 +17,19 @@ public class SyncBool extends BaseSyncVar {
     /** The Data. */
     private boolean mData;
 
+    static {
+        Engine.getCloner()
+                .registerFastCloner(
+                        SyncBool.class,
+                        (t, cloner, clones) -> {
+                            SyncBool toClone = (SyncBool) t;
+                            SyncBool cloned = new SyncBool(toClone.mData);
+                            cloned.copyFlags(toClone);
+                            clones.put(toClone, cloned);
+                            return cloned;
+                        });
+    }
+
     /**
      * Instantiates a new SyncBool.
      *
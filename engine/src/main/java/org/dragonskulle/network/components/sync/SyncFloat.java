@@ -5,6 +5,7 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.Objects;
+import org.dragonskulle.core.Engine;
 
 /**
  * The type Sync float.
@@ -15,6 +16,19 @@ public class SyncFloat extends BaseSyncVar {
 
     private float mData;
 
+    static {
+        Engine.getCloner()
+                .registerFastCloner(
+                        SyncFloat.class,
+                        (t, cloner, clones) -> {
+                            SyncFloat toClone = (SyncFloat) t;
+                            SyncFloat cloned = new SyncFloat(toClone.mData);
+                            cloned.copyFlags(toClone);
+                            clones.put(toClone, cloned);
+                            return cloned;
+                        });
+    }
+
     /**
      * Instantiates a new Sync float.
      *
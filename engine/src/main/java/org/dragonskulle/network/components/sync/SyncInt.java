@@ -4,6 +4,7 @@ package org.dragonskulle.network.components.sync;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import org.dragonskulle.core.Engine;
 
 /**
  * The type Sync int.
@@ -15,6 +16,19 @@ public class SyncInt extends BaseSyncVar {
     /** The Data. */
     private int mData;
 
+    static {
+        Engine.getCloner()
+                .registerFastCloner(
+                        SyncInt.class,
+                        (t, cloner, clones) -> {
+                            SyncInt toClone = (SyncInt) t;
+                            SyncInt cloned = new SyncInt(toClone.mData);
+                            cloned.copyFlags(toClone);
+                            clones.put(toClone, cloned);
+                            return cloned;
+                        });
+    }
+
     /**
      * Instantiates a new Sync int.
      *
@@ -5,6 +5,7 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.Objects;
+import org.dragonskulle.core.Engine;
 
 /**
  * The type Sync long.
@@ -16,6 +17,19 @@ public class SyncLong extends BaseSyncVar {
     /** The Data. */
     private long mData;
 
+    static {
+        Engine.getCloner()
+                .registerFastCloner(
+                        SyncLong.class,
+                        (t, cloner, clones) -> {
+                            SyncLong toClone = (SyncLong) t;
+                            SyncLong cloned = new SyncLong(toClone.mData);
+                            cloned.copyFlags(toClone);
+                            clones.put(toClone, cloned);
+                            return cloned;
+                        });
+    }
+
     /**
      * Instantiates a new SyncBool.
      *
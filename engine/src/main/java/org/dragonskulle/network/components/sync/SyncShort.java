@@ -4,6 +4,7 @@ package org.dragonskulle.network.components.sync;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import org.dragonskulle.core.Engine;
 
 /**
  * The type Sync short.
@@ -16,6 +17,19 @@ public class SyncShort extends BaseSyncVar {
     /** The Data. */
     private short mData;
 
+    static {
+        Engine.getCloner()
+                .registerFastCloner(
+                        SyncShort.class,
+                        (t, cloner, clones) -> {
+                            SyncShort toClone = (SyncShort) t;
+                            SyncShort cloned = new SyncShort(toClone.mData);
+                            cloned.copyFlags(toClone);
+                            clones.put(toClone, cloned);
+                            return cloned;
+                        });
+    }
+
     /**
      * Instantiates a new Sync short.
      *
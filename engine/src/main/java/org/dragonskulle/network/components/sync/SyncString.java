@@ -5,6 +5,7 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.Objects;
+import org.dragonskulle.core.Engine;
 
 /**
  * The type Sync string.
@@ -16,6 +17,19 @@ public class SyncString extends BaseSyncVar {
     /** The Data. */
     private String mData;
 
+    static {
+        Engine.getCloner()
+                .registerFastCloner(
+                        SyncString.class,
+                        (t, cloner, clones) -> {
+                            SyncString toClone = (SyncString) t;
+                            SyncString cloned = new SyncString(toClone.mData);
+                            cloned.copyFlags(toClone);
+                            clones.put(toClone, cloned);
+                            return cloned;
+                        });
+    }
+
     /**
      * Instantiates a new SyncBool.
      *
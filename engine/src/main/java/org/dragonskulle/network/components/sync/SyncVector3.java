@@ -4,6 +4,7 @@ package org.dragonskulle.network.components.sync;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import org.dragonskulle.core.Engine;
 import org.joml.Vector3f;
 import org.joml.Vector3fc;
 
@@ -15,6 +16,19 @@ import org.joml.Vector3fc;
 public class SyncVector3 extends BaseSyncVar {
     private Vector3f mData = new Vector3f();
 
+    static {
+        Engine.getCloner()
+                .registerFastCloner(
+                        SyncVector3.class,
+                        (t, cloner, clones) -> {
+                            SyncVector3 toClone = (SyncVector3) t;
+                            SyncVector3 cloned = new SyncVector3(new Vector3f(toClone.mData));
+                            cloned.copyFlags(toClone);
+                            clones.put(toClone, cloned);
+                            return cloned;
+                        });
+    }
+
     /**
      * Serialize the SyncVector3.
      *
@@ -39,6 +39,21 @@ class BoxPacker<T extends IBox> {
             mWidth = width;
             mHeight = height;
         }
+
+        /**
+         * Construct an already packed box node.
+         *
+         * <p>This is used for restoring previously packed boxes, for instance, from cooked fonts.
+         *
+         * @param box the packed box.
+         * @param x X coordinate the box was packed at.
+         * @param y Y coordinate the box was packed at.
+         */
+        BoxNode(T box, int x, int y) {
+            this(x, y, box.getWidth(), box.getHeight());
+            mBox = box;
+            mFilledLeaf = true;
+        }
     }
 
     private BoxNode<T> mRoot;
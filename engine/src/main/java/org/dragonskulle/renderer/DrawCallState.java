@@ -8,12 +8,13 @@ import static org.lwjgl.vulkan.VK10.vkUnmapMemory;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import lombok.Builder;
 import lombok.Getter;
 import lombok.experimental.Accessors;
 import org.dragonskulle.renderer.components.Light;
@@ -38,6 +39,10 @@ class DrawCallState implements NativeResource {
     private VkDevice mDevice;
     /** Descriptor pool for this drawcall state. */
     private VulkanShaderDescriptorPool mDescriptorPool;
+    /** Shared frame uniform pool, if the shader set uses it. */
+    private VulkanShaderDescriptorPool mFramePool;
+    /** Allocator of the instance buffer, which reserves ranges for draw data. */
+    private RangeAllocator mInstanceAllocator;
     /** Reference to the shader set of the state. */
     @Getter private ShaderSet mShaderSet;
     /** Vulkan pipeline used to render the objects with. */
@@ -80,7 +85,7 @@ class DrawCallState implements NativeResource {
          */
         public void setData(IMaterial material, Renderable renderable) {
             mMatTextures = material.getFragmentTextures();
-            mMesh = renderable.getMesh();
+            mMesh = renderable.getDrawMesh();
         }
 
         @Override
@@ -121,24 +126,203 @@ class DrawCallState implements NativeResource {
         long[] mDescriptorSets;
         /** Offset within the instance buffer where the per-instance data of this group begins. */
         int mInstanceBufferOffset;
+        /** Size in bytes of the instance buffer range reserved for this group, 0 if none. */
+        int mInstanceRangeSize;
 
-        /** Objects in this group. */
+        /** Objects of this group that are drawn this frame. */
         List<Renderable> mObjects = new ArrayList<>();
+        /** Total number of instances the objects of this group draw. */
+        int mInstanceCount;
+        /** Slots of the objects in {@link #mObjects}. */
+        private Slot[] mObjectSlots = new Slot[16];
+
+        /** Slots of the objects drawn recently, including ones culled this frame. */
+        private final Map<Renderable, Slot> mSlots = new IdentityHashMap<>();
+        /** Allocator of slots within the group's range, in instances. */
+        private final RangeAllocator mSlotAllocator = new RangeAllocator(0, 0);
+        /** Instances drawn this frame. */
+        private final BitSet mDrawnInstances = new BitSet();
+        /** First instance of every run of consecutive drawn instances. */
+        private int[] mRunStarts = new int[4];
+        /** Number of instances in every run. */
+        private int[] mRunLengths = new int[4];
+        /** Number of runs, -1 if they need to be found again. */
+        private int mRunCount = -1;
+        /** Number of {@link #clearObjects} calls so far. */
+        private int mFrame = 0;
 
         /**
-         * Update the instance buffer.
+         * Add an object to the group.
+         *
+         * <p>Objects keep the place of their instances in the group's range, also while they are
+         * culled, until they have not been added for {@link #MAX_IDLE_FRAMES}. Thus, objects that
+         * do not change, never need their data rewritten, no matter what else is visible.
+         *
+         * <p>The instance count, and version of the object are read once, and must stay the same
+         * until the instance data of the frame is written.
+         *
+         * @param object object to add.
+         */
+        void addObject(Renderable object) {
+            int count = object.getInstanceCount();
+            Slot slot = mSlots.get(object);
+
+            if (slot != null && slot.mCount != count) {
+                mSlotAllocator.free(slot.mFirst, slot.mCount);
+                slot = null;
+            }
+
+            if (slot == null) {
+                slot = new Slot(allocateSlot(count), count);
+                mSlots.put(object, slot);
+            }
+
+            slot.mFrame = mFrame;
+            slot.mVersion = object.getInstanceVersion();
+
+            int index = mObjects.size();
+
+            if (index == mObjectSlots.length) {
+                mObjectSlots = Arrays.copyOf(mObjectSlots, index * 2);
+            }
+
+            mObjectSlots[index] = slot;
+            mObjects.add(object);
+            mInstanceCount += count;
+            mDrawnInstances.set(slot.mFirst, slot.mFirst + count);
+            mRunCount = -1;
+        }
+
+        /**
+         * Remove all objects from the group.
+         *
+         * <p>The instance buffer range, and slots of the objects are kept, so that they can be
+         * reused by the next frames. Slots of objects that have not been added for long enough are
+         * given back.
+         */
+        void clearObjects() {
+            Arrays.fill(mObjectSlots, 0, mObjects.size(), null);
+            mObjects.clear();
+            mInstanceCount = 0;
+            mDrawnInstances.clear();
+            mRunCount = -1;
+            mFrame++;
+
+            // Going through every slot is only worth it once in a while
+            if (mFrame % MAX_IDLE_FRAMES == 0) {
+                mSlots.values().removeIf(this::freeIdleSlot);
+            }
+
+            mSlotAllocator.nextFrame();
+        }
+
+        /**
+         * Check whether the group holds slots of any objects.
+         *
+         * @return {@code true} if no objects were added recently.
+         */
+        boolean isUnused() {
+            return mSlots.isEmpty();
+        }
+
+        /**
+         * Get the index of the first instance of an object.
+         *
+         * @param object index of the object within the group.
+         * @return index of the object's first instance within the group's instances.
+         */
+        public int getFirstInstance(int object) {
+            return mObjectSlots[object].mFirst;
+        }
+
+        /**
+         * Get the number of runs of consecutive instances drawn this frame.
+         *
+         * <p>Every run is drawn with a single instanced call. Runs are found once all objects of
+         * the frame have been added, thus this must be called before the runs are read from other
+         * threads.
+         *
+         * @return number of runs.
+         */
+        public int getRunCount() {
+            if (mRunCount < 0) {
+                findRuns();
+            }
+            return mRunCount;
+        }
+
+        /**
+         * Get the first instance of a run.
+         *
+         * @param run index of the run.
+         * @return index of the run's first instance within the group's instances.
+         */
+        public int getRunStart(int run) {
+            return mRunStarts[run];
+        }
+
+        /**
+         * Get the number of instances in a run.
+         *
+         * @param run index of the run.
+         * @return number of instances.
+         */
+        public int getRunLength(int run) {
+            return mRunLengths[run];
+        }
+
+        /**
+         * Update a range of objects in the instance buffer.
+         *
+         * <p>Objects whose version did not change since they were last written to this image's
+         * buffer are skipped without writing anything. The rest are written to a scratch buffer
+         * first, and compared with the shadow copy of the instance buffer. Only the span of the
+         * instance's data that differs is copied to the shadow and the instance buffer. Instance
+         * data strides are expected to be multiples of 4 bytes.
+         *
+         * <p>Different ranges write to different parts of the buffers, thus they can be updated
+         * concurrently, as long as each thread uses its own views of the buffers, and its own
+         * scratch buffer.
          *
          * @param shaderSet the shader set of the parent supergroup.
          * @param buffer the instance buffer.
+         * @param shadow copy of what the instance buffer currently holds.
+         * @param scratch buffer of at least one instance stride, in the same byte order.
          * @param lights world lights.
+         * @param image index of the image the instance buffer belongs to.
+         * @param start index of the first object to write.
+         * @param end index after the last object to write.
+         * @return number of bytes written to the instance buffer.
          */
-        public void updateInstanceBuffer(
-                ShaderSet shaderSet, ByteBuffer buffer, List<Light> lights) {
-            int cur_off = mInstanceBufferOffset;
-            for (Renderable object : mObjects) {
-                object.writeVertexInstanceData(cur_off, buffer, lights);
-                cur_off += shaderSet.getVertexBindingDescription().mSize;
+        public int updateInstanceBuffer(
+                ShaderSet shaderSet,
+                ByteBuffer buffer,
+                ByteBuffer shadow,
+                ByteBuffer scratch,
+                List<Light> lights,
+                int image,
+                int start,
+                int end) {
+            int size = shaderSet.getVertexBindingDescription().mSize;
+            int written = 0;
+            for (int i = start; i < end; i++) {
+                Slot slot = mObjectSlots[i];
+
+                if (slot.isWritten(image)) {
+                    continue;
+                }
+
+                Renderable object = mObjects.get(i);
+                int cur_off = mInstanceBufferOffset + size * slot.mFirst;
+                for (int instance = 0; instance < slot.mCount; instance++) {
+                    object.writeVertexInstanceData(instance, 0, scratch, lights);
+                    written += copyChanged(scratch, shadow, buffer, cur_off, size);
+                    cur_off += size;
+                }
+
+                slot.setWritten(image);
             }
+            return written;
         }
 
         /**
@@ -150,86 +334,228 @@ class DrawCallState implements NativeResource {
          * @param shaderSet the shader set of the parent supergroup.
          * @param pData temporary pointer.
          * @param memory the memory address of the instance buffer.
+         * @param shadow copy of the instance buffer, which is kept up to date.
          * @param lights world lights.
+         * @param image index of the image the instance buffer belongs to.
          * @throws RendererException if there is an failure mapping GPU memory.
          */
         public void slowUpdateInstanceBuffer(
-                ShaderSet shaderSet, PointerBuffer pData, long memory, List<Light> lights)
+                ShaderSet shaderSet,
+                PointerBuffer pData,
+                long memory,
+                ByteBuffer shadow,
+                List<Light> lights,
+                int image)
                 throws RendererException {
             int shaderSetSize = shaderSet.getVertexBindingDescription().mSize;
-            int cur_off = mInstanceBufferOffset;
-            for (Renderable object : mObjects) {
-                pData.rewind();
-                int res = vkMapMemory(mDevice, memory, cur_off, shaderSetSize, 0, pData);
-
-                if (res != VK_SUCCESS) {
-                    throw new RendererException(
-                            String.format(
-                                    "Failed to map memory! Out of resources! off: %x sz: %x",
-                                    cur_off, shaderSetSize));
-                }
+            for (int i = 0; i < mObjects.size(); i++) {
+                Renderable object = mObjects.get(i);
+                Slot slot = mObjectSlots[i];
+                int cur_off = mInstanceBufferOffset + shaderSetSize * slot.mFirst;
+                for (int instance = 0; instance < slot.mCount; instance++) {
+                    pData.rewind();
+                    int res = vkMapMemory(mDevice, memory, cur_off, shaderSetSize, 0, pData);
+
+                    if (res != VK_SUCCESS) {
+                        throw new RendererException(
+                                String.format(
+                                        "Failed to map memory! Out of resources! off: %x sz: %x",
+                                        cur_off, shaderSetSize));
+                    }
+
+                    ByteBuffer byteBuffer = pData.getByteBuffer(shaderSetSize);
 
-                ByteBuffer byteBuffer = pData.getByteBuffer(shaderSetSize);
+                    object.writeVertexInstanceData(instance, 0, byteBuffer, lights);
+                    object.writeVertexInstanceData(instance, cur_off, shadow, lights);
 
-                object.writeVertexInstanceData(0, byteBuffer, lights);
+                    vkUnmapMemory(mDevice, memory);
 
-                vkUnmapMemory(mDevice, memory);
+                    cur_off += shaderSetSize;
+                }
 
-                cur_off += shaderSetSize;
+                slot.setWritten(image);
             }
         }
 
         /**
-         * Set the instance buffer offset and reserve space for itself.
+         * Make sure the group has a range of the instance buffer that fits all its slots.
          *
-         * @param shaderSet the shader set of the parent subgroup.
-         * @param offset the current offset witin the instance buffer.
-         * @return offset + any additional data that's needed for this group.
+         * <p>Ranges are kept across frames, so that objects keep their place in the buffer, and
+         * unchanged data does not need rewriting. When a range gets too small, a new one with space
+         * for twice as many instances is reserved, and every object gets rewritten.
+         *
+         * @param shaderSet the shader set of the parent group.
+         * @param allocator allocator of the instance buffer, in bytes.
+         * @return {@code true} if the group has a large enough range, {@code false} if the
+         *     allocator ran out of space.
          */
-        public int setInstanceBufferOffset(ShaderSet shaderSet, int offset) {
+        boolean reserveInstanceRange(ShaderSet shaderSet, RangeAllocator allocator) {
+            int stride = shaderSet.getVertexBindingDescription().mSize;
+            int count = mSlotAllocator.getEnd();
+
+            if (count * stride <= mInstanceRangeSize) {
+                return true;
+            }
+
+            int capacity = Math.max(MIN_INSTANCE_CAPACITY, Integer.highestOneBit(count - 1) << 1);
+            int offset = allocator.allocate(capacity * stride);
+
+            if (offset < 0) {
+                return false;
+            }
+
+            freeInstanceRange(allocator);
             mInstanceBufferOffset = offset;
-            return offset + shaderSet.getVertexBindingDescription().mSize * mObjects.size();
+            mInstanceRangeSize = capacity * stride;
+
+            for (Slot slot : mSlots.values()) {
+                slot.clearWritten();
+            }
+
+            return true;
+        }
+
+        /**
+         * Give the instance buffer range of the group back.
+         *
+         * @param allocator allocator of the instance buffer.
+         */
+        void freeInstanceRange(RangeAllocator allocator) {
+            allocator.free(mInstanceBufferOffset, mInstanceRangeSize);
+            mInstanceRangeSize = 0;
         }
 
         /**
          * Ends the draw data, sets the right descriptor sets.
          *
          * @param imageIndex the image context index.
+         * @param frameSet optional descriptor set for frame uniforms.
          * @param descriptorSet optional descriptor set for uniform data.
          */
-        public void endDrawData(int imageIndex, Long descriptorSet) {
+        public void endDrawData(int imageIndex, Long frameSet, Long descriptorSet) {
             mDescriptorSets =
                     combineDescriptorSets(
                             mDescriptorSets,
+                            frameSet,
                             descriptorSet,
                             mTextureSet == null ? null : mTextureSet.getDescriptorSet(imageIndex));
         }
+
+        /**
+         * Allocate consecutive instances for an object.
+         *
+         * @param count number of instances.
+         * @return index of the first instance.
+         */
+        private int allocateSlot(int count) {
+            int first = mSlotAllocator.allocate(count);
+
+            if (first < 0) {
+                int capacity = mSlotAllocator.getCapacity();
+                mSlotAllocator.grow(
+                        Math.max(Math.max(MIN_INSTANCE_CAPACITY, capacity * 2), capacity + count));
+                first = mSlotAllocator.allocate(count);
+            }
+
+            return first;
+        }
+
+        /**
+         * Give the slot back, if its object has not been added for long enough.
+         *
+         * @param slot slot to check.
+         * @return {@code true} if the slot was freed.
+         */
+        private boolean freeIdleSlot(Slot slot) {
+            if (mFrame - slot.mFrame < MAX_IDLE_FRAMES) {
+                return false;
+            }
+            mSlotAllocator.free(slot.mFirst, slot.mCount);
+            return true;
+        }
+
+        /** Find the runs of consecutive instances drawn this frame. */
+        private void findRuns() {
+            mRunCount = 0;
+
+            for (int start = mDrawnInstances.nextSetBit(0);
+                    start >= 0;
+                    start = mDrawnInstances.nextSetBit(start)) {
+                int end = mDrawnInstances.nextClearBit(start);
+
+                if (mRunCount == mRunStarts.length) {
+                    mRunStarts = Arrays.copyOf(mRunStarts, mRunCount * 2);
+                    mRunLengths = Arrays.copyOf(mRunLengths, mRunCount * 2);
+                }
+
+                mRunStarts[mRunCount] = start;
+                mRunLengths[mRunCount++] = end - start;
+                start = end;
+            }
+        }
     }
 
-    /** Specifies a non-instanced draw object. Mainly used in object pre-sorting. */
-    @Builder
-    @Accessors(prefix = "m")
-    @Getter
-    public static class NonInstancedDraw {
-        /** The super draw call state. */
-        private DrawCallState mState;
-        /** The draw data for this object. */
-        private DrawData mData;
-        /** The ID of this object. */
-        private int mObjectId;
+    /** Place of an object's instances within the range of its draw data. */
+    private static class Slot {
+        /** Index of the first instance. */
+        final int mFirst;
+        /** Number of instances. */
+        final int mCount;
+        /** Instance data version of the object, as of the frame it was last added on. */
+        long mVersion;
+        /** Frame the object was last added on. */
+        int mFrame;
+        /** Version last written to the instance buffer of every image. */
+        long[] mWritten = new long[0];
 
         /**
-         * Retrieves the offset within the instance buffer for this object.
+         * Create a slot.
          *
-         * @return offset within the instance buffer to data.
+         * @param first index of the first instance.
+         * @param count number of instances.
          */
-        public int getInstanceBufferOffset() {
-            ShaderSet shaderSet = mState.getShaderSet();
-            return mData.getInstanceBufferOffset()
-                    + shaderSet.getVertexBindingDescription().mSize * mObjectId;
+        Slot(int first, int count) {
+            mFirst = first;
+            mCount = count;
+        }
+
+        /**
+         * Check whether the buffer of an image already holds the current data.
+         *
+         * @param image index of the image.
+         * @return {@code true} if the data does not need writing.
+         */
+        boolean isWritten(int image) {
+            return mVersion != Renderable.UNVERSIONED
+                    && image < mWritten.length
+                    && mWritten[image] == mVersion;
+        }
+
+        /**
+         * Mark the current data as written to the buffer of an image.
+         *
+         * @param image index of the image.
+         */
+        void setWritten(int image) {
+            if (image >= mWritten.length) {
+                int length = mWritten.length;
+                mWritten = Arrays.copyOf(mWritten, image + 1);
+                Arrays.fill(mWritten, length, image + 1, Renderable.UNVERSIONED);
+            }
+            mWritten[image] = mVersion;
+        }
+
+        /** Mark the data as not written to any buffer. */
+        void clearWritten() {
+            Arrays.fill(mWritten, Renderable.UNVERSIONED);
         }
     }
 
+    /** Number of frames objects keep their slots for, while they are not drawn. */
+    static final int MAX_IDLE_FRAMES = 120;
+    /** Smallest number of instances an instance buffer range is reserved for. */
+    private static final int MIN_INSTANCE_CAPACITY = 4;
+
     /** The error texture that every failed to load texture is subsituded with. */
     private static final SampledTexture ERROR_TEXTURE =
             new SampledTexture(
@@ -256,6 +582,8 @@ class DrawCallState implements NativeResource {
                 renderer.getTextureSetLayoutFactory(),
                 renderer.getTextureSetFactory(),
                 renderer.getTextureFactory(),
+                renderer.getFrameUniformPool(),
+                renderer.getInstanceAllocator(),
                 imageCount,
                 renderer.getRendererSettings().getMSAACount(),
                 shaderSet);
@@ -271,6 +599,8 @@ class DrawCallState implements NativeResource {
      * @param layoutFactory texture descriptor set layout factory.
      * @param textureSetFactory texture descriptor set factory.
      * @param textureFactory texture factory.
+     * @param framePool frame uniform descriptor pool.
+     * @param instanceAllocator allocator of the instance buffer.
      * @param imageCount number of swapchain images used.
      * @param msaaCount number of MSAA samples used.
      * @param shaderSet the shader set that will be used to draw the objects with.
@@ -284,6 +614,8 @@ class DrawCallState implements NativeResource {
             TextureSetLayoutFactory layoutFactory,
             TextureSetFactory textureSetFactory,
             VulkanSampledTextureFactory textureFactory,
+            VulkanShaderDescriptorPool framePool,
+            RangeAllocator instanceAllocator,
             int imageCount,
             int msaaCount,
             ShaderSet shaderSet)
@@ -292,12 +624,15 @@ class DrawCallState implements NativeResource {
         mDescriptorPool =
                 VulkanShaderDescriptorPool.createPool(
                         device, physicalDevice, shaderSet, imageCount);
+        mFramePool = shaderSet.isFrameUniforms() ? framePool : null;
+        mInstanceAllocator = instanceAllocator;
         mShaderSet = shaderSet;
         mTextureSetFactory = textureSetFactory;
         mTextureFactory = textureFactory;
 
         long[] descriptorSetLayouts =
                 combineDescriptorSetLayouts(
+                        mFramePool == null ? null : mFramePool.getSetLayout(),
                         mDescriptorPool == null ? null : mDescriptorPool.getSetLayout(),
                         shaderSet.getNumFragmentTextures() < 0
                                 ? null
@@ -324,10 +659,23 @@ class DrawCallState implements NativeResource {
      */
     public void startDrawData() {
         for (DrawData d : mDrawData.values()) {
-            d.mObjects.clear();
+            d.clearObjects();
         }
 
-        mDrawData.entrySet().removeIf(e -> e.getValue().getMesh().getRefCount() <= 0);
+        mDrawData.values().removeIf(this::removeIfUnusedMesh);
+    }
+
+    /**
+     * Drop all draw data.
+     *
+     * <p>This is needed when texture sets get freed, since draw data references them. The data is
+     * recreated as objects get added again.
+     */
+    public void clearDrawData() {
+        for (DrawData d : mDrawData.values()) {
+            d.freeInstanceRange(mInstanceAllocator);
+        }
+        mDrawData.clear();
     }
 
     /**
@@ -336,10 +684,11 @@ class DrawCallState implements NativeResource {
      * @param imageIndex the index of framebuffer image that's used this frame.
      */
     public void endDrawData(int imageIndex) {
+        Long frameSet = mFramePool == null ? null : mFramePool.getDescriptorSet(imageIndex);
         Long descriptorSet =
                 mDescriptorPool == null ? null : mDescriptorPool.getDescriptorSet(imageIndex);
         for (DrawData d : mDrawData.values()) {
-            d.endDrawData(imageIndex, descriptorSet);
+            d.endDrawData(imageIndex, frameSet, descriptorSet);
         }
     }
 
@@ -351,7 +700,7 @@ class DrawCallState implements NativeResource {
      *     {@code cleanupOutput} to be cleaned up at appropriate time it's data.
      */
     public boolean shouldCleanup(List<DrawCallState> cleanupOutput) {
-        mDrawData.entrySet().removeIf(e -> e.getValue().mObjects.isEmpty());
+        mDrawData.values().removeIf(this::removeIfEmpty);
 
         if (mDrawData.isEmpty()) {
             cleanupOutput.add(this);
@@ -392,11 +741,11 @@ class DrawCallState implements NativeResource {
                 drawData.mTextureSet = mTextureSetFactory.getSet(textures, mTextureFactory);
             }
 
-            drawData.mMesh = object.getMesh();
+            drawData.mMesh = object.getDrawMesh();
 
             mDrawData.put(new DrawDataHashKey(material, object), drawData);
         }
-        drawData.mObjects.add(object);
+        drawData.addObject(object);
     }
 
     /**
@@ -411,31 +760,18 @@ class DrawCallState implements NativeResource {
     }
 
     /**
-     * Sets the instance buffer offset.
+     * Reserve instance buffer ranges for all draw data.
      *
-     * <p>Call this method to set an instance buffer offset. It will reserve enough space for itself
-     * and then return the next free offset within the buffer.
-     *
-     * @param offset input offset.
-     * @return offset + any data this state needs.
+     * @return {@code true} if every draw data has a large enough range, {@code false} if the
+     *     instance buffer needs to grow first.
      */
-    public int setInstanceBufferOffset(int offset) {
+    public boolean reserveInstanceRanges() {
         for (DrawData d : mDrawData.values()) {
-            offset = d.setInstanceBufferOffset(mShaderSet, offset);
-        }
-        return offset;
-    }
-
-    /**
-     * Update the instance buffer with new data.
-     *
-     * @param buffer the instance buffer.
-     * @param lights lights in the world.
-     */
-    public void updateInstanceBuffer(ByteBuffer buffer, List<Light> lights) {
-        for (DrawData d : mDrawData.values()) {
-            d.updateInstanceBuffer(mShaderSet, buffer, lights);
+            if (!d.reserveInstanceRange(mShaderSet, mInstanceAllocator)) {
+                return false;
+            }
         }
+        return true;
     }
 
     /**
@@ -445,24 +781,92 @@ class DrawCallState implements NativeResource {
      *
      * @param pData temporary data pointer.
      * @param memory instance buffer memory handle.
+     * @param shadow copy of the instance buffer, which is kept up to date.
      * @param lights lights in the world.
+     * @param image index of the image the instance buffer belongs to.
      * @throws RendererException if there is a failure creating the state.
      */
-    public void slowUpdateInstanceBuffer(PointerBuffer pData, long memory, List<Light> lights)
+    public void slowUpdateInstanceBuffer(
+            PointerBuffer pData, long memory, ByteBuffer shadow, List<Light> lights, int image)
             throws RendererException {
         for (DrawData d : mDrawData.values()) {
-            d.slowUpdateInstanceBuffer(mShaderSet, pData, memory, lights);
+            d.slowUpdateInstanceBuffer(mShaderSet, pData, memory, shadow, lights, image);
         }
     }
 
     @Override
     public void free() {
+        clearDrawData();
+
         if (mPipeline != null) {
             mPipeline.free();
         }
         mPipeline = null;
     }
 
+    /**
+     * Free the instance buffer range of draw data, if its mesh is no longer used.
+     *
+     * @param data draw data to check.
+     * @return {@code true} if the draw data should be removed.
+     */
+    private boolean removeIfUnusedMesh(DrawData data) {
+        if (data.getMesh().getRefCount() > 0) {
+            return false;
+        }
+        data.freeInstanceRange(mInstanceAllocator);
+        return true;
+    }
+
+    /**
+     * Free the instance buffer range of draw data, if no objects were added to it recently.
+     *
+     * @param data draw data to check.
+     * @return {@code true} if the draw data should be removed.
+     */
+    private boolean removeIfEmpty(DrawData data) {
+        if (!data.isUnused()) {
+            return false;
+        }
+        data.freeInstanceRange(mInstanceAllocator);
+        return true;
+    }
+
+    /**
+     * Copy the part of an object's instance data that changed.
+     *
+     * @param scratch newly written data, starting at 0.
+     * @param shadow copy of the instance buffer.
+     * @param buffer the instance buffer.
+     * @param offset offset of the object within the instance buffer.
+     * @param size size of the object's data.
+     * @return number of bytes copied.
+     */
+    private static int copyChanged(
+            ByteBuffer scratch, ByteBuffer shadow, ByteBuffer buffer, int offset, int size) {
+        int first = 0;
+        while (first < size && scratch.getInt(first) == shadow.getInt(offset + first)) {
+            first += 4;
+        }
+
+        if (first >= size) {
+            return 0;
+        }
+
+        int last = size - 4;
+        while (scratch.getInt(last) == shadow.getInt(offset + last)) {
+            last -= 4;
+        }
+
+        for (int i = first; i <= last; i += 4) {
+            int value = scratch.getInt(i);
+            shadow.putInt(offset + i, value);
+            buffer.putInt(offset + i, value);
+        }
+
+        return last + 4 - first;
+    }
+
     /**
      * Combine the descriptor sets into one long array.
      *
@@ -0,0 +1,363 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import java.util.Arrays;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import org.dragonskulle.renderer.DrawCallState.DrawData;
+
+/**
+ * Flat list of draw commands, ordered by packed 64-bit sort keys.
+ *
+ * @author DragonSkulle
+ *     <p>Every command is either an instanced draw of a run of consecutive instances of a {@link
+ *     DrawData}, or a single object of a presorted {@link ShaderSet}. Sort keys are laid out as
+ *     follows, from the highest bit:
+ *     <ul>
+ *       <li>1 bit: always 0.
+ *       <li>1 bit: whether the command is presorted. Presorted commands are drawn after all the
+ *           instanced ones.
+ *       <li>16 bits: render order.
+ *       <li>46 bits: for instanced commands, 16 bits of pipeline (draw call state) index, followed
+ *           by 30 bits of material (draw data) index. For presorted ones, 32 bits of inverted,
+ *           order preserving depth bits, so that the furthest objects come first, followed by 14
+ *           zero bits.
+ *     </ul>
+ *     <p>Keys are sorted with an LSD radix sort, which does not allocate once the list has grown to
+ *     its working size. The sort is stable, thus equal keys keep the order they were added in.
+ */
+@Accessors(prefix = "m")
+class DrawCommandList {
+    private static final int PRESORT_SHIFT = 62;
+    private static final int ORDER_SHIFT = 46;
+    private static final int ORDER_BITS = 16;
+    private static final int STATE_SHIFT = 30;
+    private static final int STATE_BITS = 16;
+    private static final int DATA_BITS = 30;
+    private static final int DEPTH_SHIFT = 14;
+
+    /** Number of bits sorted per radix sort pass. */
+    private static final int RADIX_BITS = 8;
+    /** Number of buckets in a radix sort pass. */
+    private static final int RADIX = 1 << RADIX_BITS;
+    /** Number of radix sort passes needed to sort whole keys. */
+    private static final int PASSES = Long.SIZE / RADIX_BITS;
+
+    /** Sort keys, in the order commands were added. */
+    private long[] mKeys = new long[64];
+    /** Draw call states of the commands, in the order they were added. */
+    private DrawCallState[] mStates = new DrawCallState[64];
+    /** Draw data of the commands, in the order they were added. */
+    private DrawData[] mData = new DrawData[64];
+    /** Object IDs within the draw data of presorted commands, run indices for instanced ones. */
+    private int[] mObjectIds = new int[64];
+
+    /** Sorted keys. */
+    private long[] mSortedKeys = new long[64];
+    /** Indices of commands, in sorted order. */
+    private int[] mOrder = new int[64];
+    /** Temporary keys for radix sort passes. */
+    private long[] mTmpKeys = new long[64];
+    /** Temporary indices for radix sort passes. */
+    private int[] mTmpOrder = new int[64];
+    /** Histograms of every radix sort pass. */
+    private final int[] mCounts = new int[PASSES * RADIX];
+
+    /** Number of commands in the list. */
+    @Getter private int mSize = 0;
+
+    /**
+     * Build the sort key of an instanced draw.
+     *
+     * @param renderOrder render order of the shader set.
+     * @param stateIndex index of the draw call state.
+     * @param dataIndex index of the draw data within the state.
+     * @return the sort key.
+     */
+    static long instancedKey(int renderOrder, int stateIndex, int dataIndex) {
+        return orderBits(renderOrder)
+                | (long) (stateIndex & ((1 << STATE_BITS) - 1)) << STATE_SHIFT
+                | (dataIndex & ((1L << DATA_BITS) - 1));
+    }
+
+    /**
+     * Build the sort key of a presorted draw.
+     *
+     * @param renderOrder render order of the shader set.
+     * @param depth depth of the object. Usually squared distance from the camera, but UI elements
+     *     use negative depths.
+     * @return the sort key.
+     */
+    static long sortedKey(int renderOrder, float depth) {
+        return 1L << PRESORT_SHIFT
+                | orderBits(renderOrder)
+                | (0xffffffffL - depthBits(depth)) << DEPTH_SHIFT;
+    }
+
+    /**
+     * Map a float to unsigned bits that sort the same way as the float does.
+     *
+     * <p>Sign bit of positive floats is flipped, while all bits of negative ones are, so that
+     * larger magnitude negative values come first.
+     *
+     * @param depth the value to map.
+     * @return unsigned 32 bits, in the lower half of the result.
+     */
+    private static long depthBits(float depth) {
+        // Adding zero turns -0 into 0, so that both get the same key
+        int bits = Float.floatToIntBits(depth + 0f);
+        return (bits ^ ((bits >> 31) | 0x80000000)) & 0xffffffffL;
+    }
+
+    /**
+     * Pack the render order into its part of the key.
+     *
+     * @param renderOrder render order of the shader set.
+     * @return render order bits of the key.
+     */
+    private static long orderBits(int renderOrder) {
+        int max = (1 << ORDER_BITS) - 1;
+        int biased = Math.max(0, Math.min(max, renderOrder + (1 << (ORDER_BITS - 1))));
+        return (long) biased << ORDER_SHIFT;
+    }
+
+    /** Remove all commands, and drop references to their states. */
+    void clear() {
+        Arrays.fill(mStates, 0, mSize, null);
+        Arrays.fill(mData, 0, mSize, null);
+        mSize = 0;
+    }
+
+    /**
+     * Add an instanced draw of a run of a draw data's instances.
+     *
+     * @param renderOrder render order of the shader set.
+     * @param stateIndex index of the draw call state within the frame.
+     * @param dataIndex index of the draw data within the state.
+     * @param state the draw call state.
+     * @param data the draw data.
+     * @param run index of the run within the draw data, see {@link DrawData#getRunCount}.
+     */
+    void addInstanced(
+            int renderOrder,
+            int stateIndex,
+            int dataIndex,
+            DrawCallState state,
+            DrawData data,
+            int run) {
+        add(instancedKey(renderOrder, stateIndex, dataIndex), state, data, run);
+    }
+
+    /**
+     * Add a draw of a single object, sorted back to front.
+     *
+     * @param renderOrder render order of the shader set.
+     * @param depth squared distance of the object from the camera.
+     * @param state the draw call state.
+     * @param data the draw data of the object.
+     * @param objectId index of the object within the draw data.
+     */
+    void addSorted(int renderOrder, float depth, DrawCallState state, DrawData data, int objectId) {
+        add(sortedKey(renderOrder, depth), state, data, objectId);
+    }
+
+    /**
+     * Add a command.
+     *
+     * @param key sort key of the command.
+     * @param state the draw call state.
+     * @param data the draw data.
+     * @param objectId index of the object within the draw data, or of the run for instanced draws.
+     */
+    void add(long key, DrawCallState state, DrawData data, int objectId) {
+        if (mSize == mKeys.length) {
+            int capacity = mSize * 2;
+            mKeys = Arrays.copyOf(mKeys, capacity);
+            mStates = Arrays.copyOf(mStates, capacity);
+            mData = Arrays.copyOf(mData, capacity);
+            mObjectIds = Arrays.copyOf(mObjectIds, capacity);
+            mSortedKeys = new long[capacity];
+            mOrder = new int[capacity];
+            mTmpKeys = new long[capacity];
+            mTmpOrder = new int[capacity];
+        }
+
+        mKeys[mSize] = key;
+        mStates[mSize] = state;
+        mData[mSize] = data;
+        mObjectIds[mSize] = objectId;
+        mSize++;
+    }
+
+    /** Sort the commands by their keys. Must be called before reading them back. */
+    void sort() {
+        int size = mSize;
+        long[] keys = mSortedKeys;
+        int[] order = mOrder;
+        long[] tmpKeys = mTmpKeys;
+        int[] tmpOrder = mTmpOrder;
+        int[] counts = mCounts;
+
+        Arrays.fill(counts, 0);
+
+        // Histograms of all passes are gathered at once
+        for (int i = 0; i < size; i++) {
+            long key = mKeys[i];
+            keys[i] = key;
+            order[i] = i;
+
+            for (int pass = 0; pass < PASSES; pass++) {
+                counts[pass * RADIX + (int) ((key >>> (pass * RADIX_BITS)) & (RADIX - 1))]++;
+            }
+        }
+
+        for (int pass = 0; pass < PASSES; pass++) {
+            int base = pass * RADIX;
+            int shift = pass * RADIX_BITS;
+
+            // Passes where every key has the same digit would not move anything
+            if (size == 0 || counts[base + (int) ((keys[0] >>> shift) & (RADIX - 1))] == size) {
+                continue;
+            }
+
+            int offset = 0;
+            for (int digit = 0; digit < RADIX; digit++) {
+                int count = counts[base + digit];
+                counts[base + digit] = offset;
+                offset += count;
+            }
+
+            for (int i = 0; i < size; i++) {
+                long key = keys[i];
+                int target = counts[base + (int) ((key >>> shift) & (RADIX - 1))]++;
+                tmpKeys[target] = key;
+                tmpOrder[target] = order[i];
+            }
+
+            long[] swapKeys = keys;
+            keys = tmpKeys;
+            tmpKeys = swapKeys;
+
+            int[] swapOrder = order;
+            order = tmpOrder;
+            tmpOrder = swapOrder;
+        }
+
+        mSortedKeys = keys;
+        mOrder = order;
+        mTmpKeys = tmpKeys;
+        mTmpOrder = tmpOrder;
+    }
+
+    /**
+     * Get the sort key of a command.
+     *
+     * @param index index of the command, in sorted order.
+     * @return the sort key.
+     */
+    long getKey(int index) {
+        return mSortedKeys[index];
+    }
+
+    /**
+     * Check whether a command draws a run of a draw data in a single instanced call.
+     *
+     * @param index index of the command, in sorted order.
+     * @return {@code true} for instanced commands, {@code false} for presorted ones.
+     */
+    boolean isInstanced(int index) {
+        return (mSortedKeys[index] >>> PRESORT_SHIFT) == 0;
+    }
+
+    /**
+     * Get the draw call state of a command.
+     *
+     * @param index index of the command, in sorted order.
+     * @return the draw call state.
+     */
+    DrawCallState getState(int index) {
+        return mStates[mOrder[index]];
+    }
+
+    /**
+     * Get the draw data of a command.
+     *
+     * @param index index of the command, in sorted order.
+     * @return the draw data.
+     */
+    DrawData getData(int index) {
+        return mData[mOrder[index]];
+    }
+
+    /**
+     * Get the object ID of a command.
+     *
+     * @param index index of the command, in sorted order.
+     * @return index of the object within the draw data, or of the run for instanced commands.
+     */
+    int getObjectId(int index) {
+        return mObjectIds[mOrder[index]];
+    }
+
+    /**
+     * Get the offset of a command's instance data within the instance buffer.
+     *
+     * @param index index of the command, in sorted order.
+     * @return offset of the first instance the command draws.
+     */
+    int getInstanceBufferOffset(int index) {
+        int id = mOrder[index];
+        int stride = mStates[id].getShaderSet().getVertexBindingDescription().mSize;
+        DrawData data = mData[id];
+        int first =
+                isInstanced(index)
+                        ? data.getRunStart(mObjectIds[id])
+                        : data.getFirstInstance(mObjectIds[id]);
+        return data.getInstanceBufferOffset() + stride * first;
+    }
+
+    /**
+     * Split sorted commands into contiguous ranges, that can be recorded separately.
+     *
+     * <p>Ranges are roughly equal in size, but every boundary moves forward to the next change of
+     * draw call state, if there is one within half a range, so that fewer ranges have to bind the
+     * same pipeline.
+     *
+     * @param minSize smallest number of commands worth a range of its own.
+     * @param maxRanges largest number of ranges to split into.
+     * @param ends receives exclusive end indices of the ranges, must hold {@code maxRanges} values.
+     * @return number of ranges written to {@code ends}.
+     */
+    int splitRanges(int minSize, int maxRanges, int[] ends) {
+        if (mSize == 0) {
+            return 0;
+        }
+
+        int count = Math.max(1, Math.min(maxRanges, mSize / minSize));
+        int slack = mSize / count / 2;
+        int start = 0;
+        int written = 0;
+
+        for (int i = 1; i < count; i++) {
+            int end = Math.max(start + 1, (int) ((long) mSize * i / count));
+            int limit = Math.min(mSize, end + slack);
+
+            for (int j = end; j < limit; j++) {
+                if (getState(j) != getState(j - 1)) {
+                    end = j;
+                    break;
+                }
+            }
+
+            if (end >= mSize) {
+                break;
+            }
+
+            ends[written++] = end;
+            start = end;
+        }
+
+        ends[written++] = mSize;
+        return written;
+    }
+}
@@ -10,6 +10,7 @@ import static org.lwjgl.stb.STBTruetype.stbtt_ScaleForPixelHeight;
 import static org.lwjgl.system.MemoryStack.stackPush;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Map;
@@ -128,6 +129,9 @@ public final class Font extends Texture {
         {0, 0}
     };
 
+    /** "DSFN" in little endian, marks cooked fonts. */
+    private static final int COOKED_MAGIC = 0x4E465344;
+
     /** What is the size of the generated font textures. */
     private static final int ATLAS_SIZE = 2048;
     /** How high is a single line of text. */
@@ -137,114 +141,219 @@ public final class Font extends Texture {
         ResourceManager.registerResource(
                 Font.class,
                 (a) -> String.format("fonts/%s", a.getName()),
-                (buffer, __) -> {
-                    Font ret = new Font();
-                    ByteBuffer buf = MemoryUtil.memAlloc(buffer.length);
-                    buf.put(buffer);
-                    buf.rewind();
-                    try (MemoryStack stack = stackPush()) {
-
-                        STBTTFontinfo info = STBTTFontinfo.callocStack(stack);
-
-                        if (!stbtt_InitFont(info, buf, 0)) {
-                            MemoryUtil.memFree(buf);
-                            return null;
-                        }
-
-                        float scale = stbtt_ScaleForPixelHeight(info, (float) LINE_HEIGHT);
-
-                        IntBuffer pAscent = stack.ints(0);
-                        IntBuffer pDescent = stack.ints(0);
-                        IntBuffer pLineGap = stack.ints(0);
-                        stbtt_GetFontVMetrics(info, pAscent, pDescent, pLineGap);
-
-                        ret.mNextLineOffset =
-                                (int) ((pAscent.get(0) - pDescent.get(0)) * scale) + LINE_HEIGHT;
-
-                        IntBuffer pOffsetToNext = stack.ints(0);
-                        IntBuffer pOffsetToStart = stack.ints(0);
-
-                        IntBuffer pSX = stack.ints(0);
-                        IntBuffer pSY = stack.ints(0);
-                        IntBuffer pEX = stack.ints(0);
-                        IntBuffer pEY = stack.ints(0);
-
-                        ret.mBuffer = MemoryUtil.memCalloc(ATLAS_SIZE * ATLAS_SIZE * 4);
-                        ret.mWidth = ATLAS_SIZE;
-                        ret.mHeight = ATLAS_SIZE;
-                        ret.mChannels = 4;
-
-                        ByteBuffer tmpBuffer =
-                                MemoryUtil.memCalloc(LINE_HEIGHT * 2 * LINE_HEIGHT * 2);
-
-                        BoxPacker<Glyph> packer = new BoxPacker<>(ret.mWidth, ret.mHeight);
-
-                        ArrayList<Glyph> glyphList = new ArrayList<>();
-
-                        for (int[] range : GLYPH_RANGES) {
-                            int start = range[0];
-                            int end = range[1];
-
-                            for (int i = start; i <= end; i++) {
-                                stbtt_GetCodepointHMetrics(info, i, pOffsetToNext, pOffsetToStart);
-                                stbtt_GetCodepointBitmapBox(
-                                        info, i, scale, scale, pSX, pSY, pEX, pEY);
-
-                                glyphList.add(
-                                        new Glyph(
-                                                pEX.get(0) - pSX.get(0),
-                                                pEY.get(0) - pSY.get(0),
-                                                pEY.get(0),
-                                                (int) (pOffsetToStart.get(0) * scale),
-                                                (int) (pOffsetToNext.get(0) * scale),
-                                                i));
-                            }
-                        }
-
-                        glyphList.sort(
-                                (a, b) ->
-                                        -Integer.compare(
-                                                a.getWidth() * a.getHeight(),
-                                                b.getWidth() * b.getHeight()));
-
-                        for (Glyph glyph : glyphList) {
-                            BoxPacker.BoxNode<Glyph> packedGlyph = packer.pack(glyph, 8);
-
-                            ret.mBuffer.rewind();
-                            tmpBuffer.rewind();
-                            stbtt_MakeCodepointBitmap(
-                                    info,
-                                    tmpBuffer,
-                                    glyph.getWidth(),
-                                    glyph.getHeight(),
-                                    LINE_HEIGHT * 2,
-                                    scale,
-                                    scale,
-                                    glyph.mCode);
-                            tmpBuffer.rewind();
-
-                            for (int i = 0; i < glyph.mHeight; i++) {
-                                for (int o = 0; o < glyph.mWidth; o++) {
-                                    ret.mBuffer.position(
-                                            ((packedGlyph.getX() + o)
-                                                            + (packedGlyph.getY() + i) * ret.mWidth)
-                                                    * 4);
-                                    ret.mBuffer.put((byte) 255);
-                                    ret.mBuffer.put((byte) 255);
-                                    ret.mBuffer.put((byte) 255);
-                                    byte alpha = tmpBuffer.get(i * LINE_HEIGHT * 2 + o);
-                                    ret.mBuffer.put(alpha);
-                                    ret.mBuffer.rewind();
-                                }
-                            }
-
-                            ret.mCharToGlyph.put(glyph.mCode, packedGlyph);
-                        }
-                        MemoryUtil.memFree(tmpBuffer);
+                (buffer, __) -> isCooked(buffer) ? loadCooked(buffer) : loadTrueType(buffer));
+    }
+
+    /**
+     * Rasterize a TrueType font into an atlas.
+     *
+     * @param buffer bytes of the font file.
+     * @return loaded font, {@code null} if the font is invalid.
+     */
+    private static Font loadTrueType(byte[] buffer) {
+        Font ret = new Font();
+        ByteBuffer buf = MemoryUtil.memAlloc(buffer.length);
+        buf.put(buffer);
+        buf.rewind();
+        try (MemoryStack stack = stackPush()) {
+
+            STBTTFontinfo info = STBTTFontinfo.callocStack(stack);
+
+            if (!stbtt_InitFont(info, buf, 0)) {
+                MemoryUtil.memFree(buf);
+                return null;
+            }
+
+            float scale = stbtt_ScaleForPixelHeight(info, (float) LINE_HEIGHT);
+
+            IntBuffer pAscent = stack.ints(0);
+            IntBuffer pDescent = stack.ints(0);
+            IntBuffer pLineGap = stack.ints(0);
+            stbtt_GetFontVMetrics(info, pAscent, pDescent, pLineGap);
+
+            ret.mNextLineOffset = (int) ((pAscent.get(0) - pDescent.get(0)) * scale) + LINE_HEIGHT;
+
+            IntBuffer pOffsetToNext = stack.ints(0);
+            IntBuffer pOffsetToStart = stack.ints(0);
+
+            IntBuffer pSX = stack.ints(0);
+            IntBuffer pSY = stack.ints(0);
+            IntBuffer pEX = stack.ints(0);
+            IntBuffer pEY = stack.ints(0);
+
+            ret.mBuffer = MemoryUtil.memCalloc(ATLAS_SIZE * ATLAS_SIZE * 4);
+            ret.mWidth = ATLAS_SIZE;
+            ret.mHeight = ATLAS_SIZE;
+            ret.mChannels = 4;
+
+            ByteBuffer tmpBuffer = MemoryUtil.memCalloc(LINE_HEIGHT * 2 * LINE_HEIGHT * 2);
+
+            BoxPacker<Glyph> packer = new BoxPacker<>(ret.mWidth, ret.mHeight);
+
+            ArrayList<Glyph> glyphList = new ArrayList<>();
+
+            for (int[] range : GLYPH_RANGES) {
+                int start = range[0];
+                int end = range[1];
+
+                for (int i = start; i <= end; i++) {
+                    stbtt_GetCodepointHMetrics(info, i, pOffsetToNext, pOffsetToStart);
+                    stbtt_GetCodepointBitmapBox(info, i, scale, scale, pSX, pSY, pEX, pEY);
+
+                    glyphList.add(
+                            new Glyph(
+                                    pEX.get(0) - pSX.get(0),
+                                    pEY.get(0) - pSY.get(0),
+                                    pEY.get(0),
+                                    (int) (pOffsetToStart.get(0) * scale),
+                                    (int) (pOffsetToNext.get(0) * scale),
+                                    i));
+                }
+            }
+
+            glyphList.sort(
+                    (a, b) ->
+                            -Integer.compare(
+                                    a.getWidth() * a.getHeight(), b.getWidth() * b.getHeight()));
+
+            for (Glyph glyph : glyphList) {
+                BoxPacker.BoxNode<Glyph> packedGlyph = packer.pack(glyph, 8);
+
+                ret.mBuffer.rewind();
+                tmpBuffer.rewind();
+                stbtt_MakeCodepointBitmap(
+                        info,
+                        tmpBuffer,
+                        glyph.getWidth(),
+                        glyph.getHeight(),
+                        LINE_HEIGHT * 2,
+                        scale,
+                        scale,
+                        glyph.mCode);
+                tmpBuffer.rewind();
+
+                for (int i = 0; i < glyph.mHeight; i++) {
+                    for (int o = 0; o < glyph.mWidth; o++) {
+                        ret.mBuffer.position(
+                                ((packedGlyph.getX() + o) + (packedGlyph.getY() + i) * ret.mWidth)
+                                        * 4);
+                        ret.mBuffer.put((byte) 255);
+                        ret.mBuffer.put((byte) 255);
+                        ret.mBuffer.put((byte) 255);
+                        byte alpha = tmpBuffer.get(i * LINE_HEIGHT * 2 + o);
+                        ret.mBuffer.put(alpha);
+                        ret.mBuffer.rewind();
                     }
-                    MemoryUtil.memFree(buf);
-                    return ret;
-                });
+                }
+
+                ret.mCharToGlyph.put(glyph.mCode, packedGlyph);
+            }
+            MemoryUtil.memFree(tmpBuffer);
+        }
+        MemoryUtil.memFree(buf);
+        return ret;
+    }
+
+    /**
+     * Check whether the buffer contains a cooked font.
+     *
+     * @param buffer bytes of the font file.
+     * @return {@code true} if the buffer starts with cooked font header.
+     */
+    private static boolean isCooked(byte[] buffer) {
+        return buffer.length >= 12
+                && ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN).getInt(0) == COOKED_MAGIC;
+    }
+
+    /**
+     * Load a prebuilt font atlas.
+     *
+     * @param buffer cooked font data, produced by {@link #cook}.
+     * @return loaded font.
+     */
+    private static Font loadCooked(byte[] buffer) {
+        ByteBuffer in = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+        in.position(4);
+
+        Font ret = new Font();
+        ret.mNextLineOffset = in.getInt();
+        int glyphCount = in.getInt();
+
+        for (int i = 0; i < glyphCount; i++) {
+            int code = in.getInt();
+            Glyph glyph =
+                    new Glyph(
+                            in.getInt(), in.getInt(), in.getInt(), in.getInt(), in.getInt(), code);
+            int x = in.getInt();
+            int y = in.getInt();
+            ret.mCharToGlyph.put(code, new BoxPacker.BoxNode<>(glyph, x, y));
+        }
+
+        ret.mWidth = ATLAS_SIZE;
+        ret.mHeight = ATLAS_SIZE;
+        ret.mChannels = 4;
+        ret.mBuffer = MemoryUtil.memAlloc(ATLAS_SIZE * ATLAS_SIZE * 4);
+
+        // Only alpha is stored, glyphs are white
+        ByteBuffer out = ret.mBuffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int pixels = ATLAS_SIZE * ATLAS_SIZE;
+        int alphaStart = in.position();
+
+        for (int i = 0; i < pixels; i++) {
+            out.putInt(i * 4, 0x00ffffff | (buffer[alphaStart + i] << 24));
+        }
+
+        return ret;
+    }
+
+    /**
+     * Rasterize a font file for storing in an asset bundle.
+     *
+     * <p>Cooked fonts contain the prebuilt atlas, and glyph metrics, and thus skip rasterization
+     * and packing when loaded.
+     *
+     * @param buffer bytes of the font file.
+     * @return cooked font data, or {@code null}, if the font is invalid.
+     */
+    public static byte[] cook(byte[] buffer) {
+        if (isCooked(buffer)) {
+            return buffer;
+        }
+
+        Font font = loadTrueType(buffer);
+
+        if (font == null) {
+            return null;
+        }
+
+        try {
+            int pixels = ATLAS_SIZE * ATLAS_SIZE;
+            ByteBuffer out =
+                    ByteBuffer.allocate(12 + font.mCharToGlyph.size() * 32 + pixels)
+                            .order(ByteOrder.LITTLE_ENDIAN);
+
+            out.putInt(COOKED_MAGIC).putInt(font.mNextLineOffset).putInt(font.mCharToGlyph.size());
+
+            for (BoxPacker.BoxNode<Glyph> node : font.mCharToGlyph.values()) {
+                Glyph glyph = node.getBox();
+                out.putInt(glyph.mCode)
+                        .putInt(glyph.mWidth)
+                        .putInt(glyph.mHeight)
+                        .putInt(glyph.mYBearing)
+                        .putInt(glyph.mXBearing)
+                        .putInt(glyph.mAdvance)
+                        .putInt(node.getX())
+                        .putInt(node.getY());
+            }
+
+            for (int i = 0; i < pixels; i++) {
+                out.put(font.mBuffer.get(i * 4 + 3));
+            }
+
+            return out.array();
+        } finally {
+            font.free();
+        }
     }
 
     /**
@@ -0,0 +1,77 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import org.dragonskulle.renderer.components.Light;
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+/**
+ * Uniform data shared by all objects drawn in a frame.
+ *
+ * @author DragonSkulle
+ *     <p>This is written once per frame, and bound as descriptor set 0 of shader sets that {@link
+ *     ShaderSet#isFrameUniforms use it}, instead of every object carrying its own copy of the
+ *     camera and lights. The layout follows std140 rules, and matches the {@code FrameUniforms}
+ *     block in {@code frame_uniforms.glsl}:
+ *     <ul>
+ *       <li>{@code mat4 view}: world to view matrix.
+ *       <li>{@code mat4 proj}: projection matrix.
+ *       <li>{@code vec4 camPos}: camera position, with w set to 1.
+ *       <li>{@code vec4 lightDir[MAX_LIGHTS]}: light directions, w is unused.
+ *       <li>{@code vec4 lightCol[MAX_LIGHTS]}: light colours multiplied by intensity, w is unused.
+ *     </ul>
+ */
+public class FrameUniforms {
+    /** Number of lights the uniform block has space for. */
+    public static final int MAX_LIGHTS = 4;
+
+    /** Size of vec3 and vec4 array elements, and of vec4 fields under std140. */
+    static final int VEC4_SIZE = 4 * 4;
+
+    static final int VIEW_OFFSET = 0;
+    static final int PROJ_OFFSET = VIEW_OFFSET + AttributeDescription.MATRIX_SIZE;
+    static final int CAM_OFFSET = PROJ_OFFSET + AttributeDescription.MATRIX_SIZE;
+    static final int LIGHT_DIR_OFFSET = CAM_OFFSET + VEC4_SIZE;
+    static final int LIGHT_COL_OFFSET = LIGHT_DIR_OFFSET + VEC4_SIZE * MAX_LIGHTS;
+    static final int SIZEOF = LIGHT_COL_OFFSET + VEC4_SIZE * MAX_LIGHTS;
+
+    /**
+     * Largest uniform buffer offset alignment Vulkan allows an implementation to require. Blocks of
+     * different images are this far apart, so no device limits need to be queried.
+     */
+    static final int MAX_OFFSET_ALIGNMENT = 256;
+
+    /** Distance between blocks of different images within the uniform buffer. */
+    static final int STRIDE =
+            (SIZEOF + MAX_OFFSET_ALIGNMENT - 1) / MAX_OFFSET_ALIGNMENT * MAX_OFFSET_ALIGNMENT;
+
+    /** World to view matrix of the camera. */
+    Matrix4fc mView = new Matrix4f();
+    /** Projection matrix of the camera. */
+    Matrix4fc mProj = new Matrix4f();
+    /** World position of the camera. */
+    Vector3fc mCamPosition = new Vector3f();
+    /** Lights of the frame, prepared with {@link Light#prepareLights}. */
+    List<Light> mLights = Collections.emptyList();
+
+    /**
+     * Copy the uniforms to a byte buffer.
+     *
+     * <p>Only the first {@link #MAX_LIGHTS} lights are written, the rest of the slots are zeroed.
+     *
+     * @param buffer the buffer to write the data to.
+     * @param offset the offset within the buffer.
+     */
+    void copyTo(ByteBuffer buffer, int offset) {
+        mView.get(offset + VIEW_OFFSET, buffer);
+        mProj.get(offset + PROJ_OFFSET, buffer);
+        mCamPosition.get(offset + CAM_OFFSET, buffer);
+        buffer.putFloat(offset + CAM_OFFSET + 12, 1f);
+        Light.writeLights(offset + LIGHT_DIR_OFFSET, buffer, mLights, MAX_LIGHTS, VEC4_SIZE);
+    }
+}
@@ -0,0 +1,139 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.dragonskulle.renderer.components.Light;
+import org.dragonskulle.renderer.components.Renderable;
+import org.joml.FrustumIntersection;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+/**
+ * Copy of a renderable, as it was when a {@link RenderSnapshot} was taken.
+ *
+ * @author DragonSkulle
+ *     <p>Instance data, and depth of the original object are computed at extraction, thus the
+ *     renderer never has to read the original object, its transform, or its material parameters.
+ *     Mesh, at the chosen level of detail, and material objects are shared with the original, and
+ *     the mesh is kept referenced until the copy gets reused.
+ *     <p>Copies are already culled, thus they are always visible, and never go to the spatial
+ *     index.
+ */
+class FrozenRenderable extends Renderable {
+    /** Snapshot holding the instance data. */
+    private final RenderSnapshot mSnapshot;
+    /** Object the copy was taken from, only set during extraction. */
+    private Renderable mSource;
+    /** Offset of the first instance within the snapshot's instance data. */
+    private int mOffset;
+    /** Size of a single instance's data. */
+    private int mStride;
+    /** Number of instances. */
+    private int mInstanceCount;
+    /** Depth of the object from the snapshot's camera. */
+    private float mDepth;
+
+    /**
+     * Create an empty copy.
+     *
+     * @param snapshot snapshot the copy belongs to.
+     */
+    FrozenRenderable(RenderSnapshot snapshot) {
+        super(null, null);
+        mSnapshot = snapshot;
+        mGameObject = snapshot.getRoot();
+    }
+
+    /**
+     * Take the state of an object, apart from its instance data.
+     *
+     * @param source object to copy.
+     * @param offset offset of the copy's instance data.
+     * @param stride size of a single instance's data.
+     * @param camPosition position of the snapshot's camera.
+     * @param tmpVec temporary vector.
+     */
+    void freeze(Renderable source, int offset, int stride, Vector3fc camPosition, Vector3f tmpVec) {
+        setMesh(source.getDrawMesh());
+        mMaterial = source.getMaterial();
+        mSource = source;
+        mOffset = offset;
+        mStride = stride;
+        mInstanceCount = source.getInstanceCount();
+        mDepth = source.getDepth(camPosition, tmpVec);
+    }
+
+    /**
+     * Write instance data of the original object into the snapshot.
+     *
+     * <p>Different copies can be written from different threads at the same time.
+     *
+     * @param buffer instance data of the snapshot.
+     * @param lights prepared lights of the frame.
+     */
+    void writeSource(ByteBuffer buffer, List<Light> lights) {
+        for (int i = 0; i < mInstanceCount; i++) {
+            mSource.writeVertexInstanceData(i, mOffset + i * mStride, buffer, lights);
+        }
+    }
+
+    /** Drop the original object, once extraction is done. */
+    void dropSource() {
+        mSource = null;
+    }
+
+    /** Release the mesh and material, so that the copy can be pooled. */
+    void release() {
+        setMesh(null);
+        mMaterial = null;
+        mSource = null;
+    }
+
+    @Override
+    public int getInstanceCount() {
+        return mInstanceCount;
+    }
+
+    @Override
+    public long getInstanceVersion() {
+        // Copies get reused for different objects every snapshot
+        return UNVERSIONED;
+    }
+
+    @Override
+    public void writeVertexInstanceData(int offset, ByteBuffer buffer, List<Light> lights) {
+        writeVertexInstanceData(0, offset, buffer, lights);
+    }
+
+    @Override
+    public void writeVertexInstanceData(
+            int instance, int offset, ByteBuffer buffer, List<Light> lights) {
+        ByteBuffer data = mSnapshot.getInstanceData();
+        int base = mOffset + instance * mStride;
+        for (int i = 0; i < mStride; i += 4) {
+            buffer.putInt(offset + i, data.getInt(base + i));
+        }
+    }
+
+    @Override
+    public float getDepth(Vector3fc camPosition, Vector3f tmpVec) {
+        return mDepth;
+    }
+
+    @Override
+    public boolean isAlwaysVisible() {
+        return true;
+    }
+
+    @Override
+    public boolean frustumCull(FrustumIntersection intersection) {
+        return true;
+    }
+
+    @Override
+    public void onDestroy() {
+        // The material belongs to the original object
+        setMesh(null);
+    }
+}
@@ -0,0 +1,20 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+/**
+ * Something that can draw {@link RenderSnapshot}s.
+ *
+ * @author DragonSkulle
+ *     <p>{@link RenderPipeline} calls this on its own render thread, thus implementations must not
+ *     touch any live objects, only the contents of the snapshot.
+ */
+public interface IRenderBackend {
+
+    /**
+     * Draw a snapshot.
+     *
+     * @param snapshot snapshot to draw. It does not change until this method returns.
+     * @throws RendererException if drawing fails. In this case, the backend should not be used.
+     */
+    void render(RenderSnapshot snapshot) throws RendererException;
+}
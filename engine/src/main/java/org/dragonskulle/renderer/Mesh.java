@@ -5,6 +5,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.experimental.Accessors;
 import org.joml.Vector2f;
 import org.joml.Vector2fc;
@@ -18,6 +19,13 @@ import org.joml.Vector4f;
  * <p>This stores all meshes and provides a way to query
  *
  * @author Aurimas Blažulionis
+ *     <p>Meshes are compared by their contents, so that equal meshes share their data on the GPU.
+ *     Dynamic meshes, created with {@link #createDynamic}, are compared by identity instead, and
+ *     their contents can be replaced with {@link #update}. The renderer then uploads only the new
+ *     contents, keeping the mesh, and everything drawn with it.
+ *     <p>Some of the vertices of a dynamic mesh can also be replaced with {@link #updateVertices}.
+ *     Every vertex then remembers the version it was last replaced at, so that the renderer only
+ *     uploads those replaced since its copy.
  */
 @Accessors(prefix = "m")
 public class Mesh {
@@ -27,6 +35,12 @@ public class Mesh {
     /** Indices of the mesh. In pairs of 3, forming triangles. */
     @Getter private int[] mIndices;
 
+    /**
+     * Less detailed versions of the mesh, as made by {@link MeshSimplifier#generateLevels}. Set
+     * when the mesh gets loaded from a cooked asset, {@code null} otherwise.
+     */
+    @Getter @Setter private Mesh[] mLevels = null;
+
     /** The minimum coordinate of the bounding box. */
     private final Vector3f mBBMin = new Vector3f();
     /** The maximum coordinate of the bounding box. */
@@ -37,6 +51,18 @@ public class Mesh {
     /** Reference count of the mesh used for resource tracking. */
     @Getter private int mRefCount = 0;
 
+    /** Whether contents of the mesh can be replaced with {@link #update}. */
+    @Getter private final boolean mDynamic;
+    /** Number of times the contents were replaced. */
+    @Getter private volatile int mVersion = 0;
+    /** Version the number of vertices, or the indices last changed at. */
+    private int mShapeVersion = 0;
+    /**
+     * Version every vertex was last replaced at, or {@code null} if none were replaced since {@link
+     * #mShapeVersion}.
+     */
+    private int[] mVertexVersions = null;
+
     /**
      * Cached hash code this hashcode is cached so that there is no need to recalculate it every
      * time the method is called.
@@ -114,11 +140,116 @@ public class Mesh {
      * @param indices indices of the mesh
      */
     public Mesh(Vertexc[] vertices, int[] indices) {
+        this(vertices, indices, false);
+    }
+
+    /**
+     * Create a mesh.
+     *
+     * @param vertices vertices of the mesh
+     * @param indices indices of the mesh
+     * @param dynamic whether the contents can be replaced
+     */
+    private Mesh(Vertexc[] vertices, int[] indices, boolean dynamic) {
         mVertices = vertices;
         mIndices = indices;
+        mDynamic = dynamic;
         calculateBoundingBox();
     }
 
+    /**
+     * Create a mesh, whose contents can be replaced.
+     *
+     * <p>Such meshes suit contents that change often, like text counters, since the renderer keeps
+     * them, and only uploads what changed.
+     *
+     * @param vertices initial vertices of the mesh
+     * @param indices initial indices of the mesh
+     * @return the dynamic mesh
+     */
+    public static Mesh createDynamic(Vertexc[] vertices, int[] indices) {
+        return new Mesh(vertices, indices, true);
+    }
+
+    /**
+     * Replace contents of a dynamic mesh.
+     *
+     * <p>The given arrays are taken over by the mesh, and must not be modified afterwards, since
+     * the renderer may still be reading them.
+     *
+     * @param vertices new vertices of the mesh
+     * @param indices new indices of the mesh
+     * @throws IllegalStateException if the mesh is not dynamic
+     */
+    public synchronized void update(Vertexc[] vertices, int[] indices) {
+        if (!mDynamic) {
+            throw new IllegalStateException("Only dynamic meshes can be updated!");
+        }
+        mVertices = vertices;
+        mIndices = indices;
+        calculateBoundingBox();
+        mVersion++;
+        mShapeVersion = mVersion;
+        mVertexVersions = null;
+    }
+
+    /**
+     * Replace some of the vertices of a dynamic mesh, keeping the indices.
+     *
+     * <p>The vertex array is copied, rather than modified, since the renderer may still be reading
+     * the old one. The given vertices must not be modified afterwards.
+     *
+     * @param first index of the first vertex to replace
+     * @param vertices new vertices
+     * @throws IllegalStateException if the mesh is not dynamic
+     * @throws IndexOutOfBoundsException if the vertices do not fit in the mesh
+     */
+    public synchronized void updateVertices(int first, Vertexc[] vertices) {
+        if (!mDynamic) {
+            throw new IllegalStateException("Only dynamic meshes can be updated!");
+        }
+        if (first < 0 || first + vertices.length > mVertices.length) {
+            throw new IndexOutOfBoundsException("Vertices do not fit in the mesh!");
+        }
+
+        mVersion++;
+
+        Vertexc[] newVertices = mVertices.clone();
+        System.arraycopy(vertices, 0, newVertices, first, vertices.length);
+
+        // Vertices never replaced keep version 0, which is not newer than any upload
+        int[] versions =
+                mVertexVersions == null ? new int[mVertices.length] : mVertexVersions.clone();
+        Arrays.fill(versions, first, first + vertices.length, mVersion);
+
+        mVertices = newVertices;
+        mVertexVersions = versions;
+        calculateBoundingBox();
+    }
+
+    /**
+     * Get the version the number of vertices, or the indices last changed at.
+     *
+     * <p>Must be read while synchronised on the mesh, along with its contents.
+     *
+     * @return the shape version.
+     */
+    int getShapeVersion() {
+        return mShapeVersion;
+    }
+
+    /**
+     * Get the version every vertex was last replaced at.
+     *
+     * <p>Must be read while synchronised on the mesh, along with its contents.
+     *
+     * @return vertex versions, or {@code null} if no vertices were replaced since the shape last
+     *     changed. The array must not be modified.
+     */
+    int[] getVertexVersions() {
+        return mVertexVersions;
+    }
+
     /**
      * Get the bounding box minimum.
      *
@@ -257,6 +388,9 @@ public class Mesh {
 
     @Override
     public int hashCode() {
+        if (mDynamic) {
+            return System.identityHashCode(this);
+        }
         if (mCachedHashCode == 0) {
             mCachedHashCode = Objects.hash(Arrays.hashCode(mVertices), Arrays.hashCode(mIndices));
         }
@@ -268,7 +402,7 @@ public class Mesh {
         if (o == this) {
             return true;
         }
-        if (!(o instanceof Mesh)) {
+        if (!(o instanceof Mesh) || mDynamic || ((Mesh) o).mDynamic) {
             return false;
         }
         if (o.hashCode() != hashCode()) {
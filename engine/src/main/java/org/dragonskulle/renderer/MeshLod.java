@@ -0,0 +1,177 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+/**
+ * Levels of detail of a mesh.
+ *
+ * @author DragonSkulle
+ *     <p>Every level has a mesh, and the minimum screen size the level is used at. Screen size is
+ *     the fraction of the screen's height the object's bounding sphere covers. Levels go from the
+ *     most detailed one, at index 0, to the least detailed one, and objects smaller than the
+ *     minimum size of the last level are not drawn at all.
+ *     <p>To stop objects near a threshold from flickering between 2 levels, switching levels
+ *     requires the screen size to go past the threshold by a fraction of {@link #getHysteresis}.
+ *     <p>Levels are shared between objects using the same mesh, and hold a reference to their
+ *     meshes for every {@link #incRefCount} call.
+ */
+@Accessors(prefix = "m")
+public class MeshLod {
+    /** Meshes of the levels. */
+    private final Mesh[] mMeshes;
+    /** Minimum screen sizes of the levels, in decreasing order. */
+    private final float[] mMinSizes;
+    /** Fraction of a threshold screen size has to go past it to switch levels. */
+    @Getter private final float mHysteresis;
+
+    /** Builds {@link MeshLod}s level by level. */
+    public static class Builder {
+        private final List<Mesh> mMeshes = new ArrayList<>();
+        private final List<Float> mMinSizes = new ArrayList<>();
+        private float mHysteresis = 0.1f;
+
+        /**
+         * Add a level, less detailed than the previous ones.
+         *
+         * @param mesh mesh of the level.
+         * @param minSize minimum screen size the level is drawn at. It must not be larger than the
+         *     minimum size of the previous level.
+         * @return this builder.
+         */
+        public Builder level(Mesh mesh, float minSize) {
+            if (!mMinSizes.isEmpty() && minSize > mMinSizes.get(mMinSizes.size() - 1)) {
+                throw new IllegalArgumentException("Levels must have decreasing minimum sizes!");
+            }
+            mMeshes.add(mesh);
+            mMinSizes.add(minSize);
+            return this;
+        }
+
+        /**
+         * Set the hysteresis of level switches.
+         *
+         * @param hysteresis fraction of a threshold the screen size has to go past it.
+         * @return this builder.
+         */
+        public Builder hysteresis(float hysteresis) {
+            mHysteresis = hysteresis;
+            return this;
+        }
+
+        /**
+         * Build the levels.
+         *
+         * @return levels of detail.
+         */
+        public MeshLod build() {
+            if (mMeshes.isEmpty()) {
+                throw new IllegalStateException("At least one level is needed!");
+            }
+
+            float[] minSizes = new float[mMinSizes.size()];
+
+            for (int i = 0; i < minSizes.length; i++) {
+                minSizes[i] = mMinSizes.get(i);
+            }
+
+            return new MeshLod(mMeshes.toArray(new Mesh[0]), minSizes, mHysteresis);
+        }
+    }
+
+    /**
+     * Create levels of detail.
+     *
+     * @param meshes meshes of the levels.
+     * @param minSizes minimum screen sizes of the levels.
+     * @param hysteresis fraction of a threshold screen size has to go past it to switch levels.
+     */
+    private MeshLod(Mesh[] meshes, float[] minSizes, float hysteresis) {
+        mMeshes = meshes;
+        mMinSizes = minSizes;
+        mHysteresis = hysteresis;
+    }
+
+    /**
+     * Get the number of levels.
+     *
+     * @return number of levels.
+     */
+    public int getLevelCount() {
+        return mMeshes.length;
+    }
+
+    /**
+     * Get the mesh of a level.
+     *
+     * @param level index of the level.
+     * @return mesh of the level.
+     */
+    public Mesh getMesh(int level) {
+        return mMeshes[level];
+    }
+
+    /**
+     * Get the minimum screen size of a level.
+     *
+     * @param level index of the level.
+     * @return minimum screen size of the level.
+     */
+    public float getMinSize(int level) {
+        return mMinSizes[level];
+    }
+
+    /**
+     * Choose the level to draw an object at.
+     *
+     * @param screenSize screen size of the object.
+     * @param current level the object was drawn at last, -1 if it was not drawn.
+     * @return index of the level to draw, or -1 if the object is too small to be drawn.
+     */
+    public int select(float screenSize, int current) {
+        int count = mMeshes.length;
+        int previous = current < 0 || current >= count ? count : current;
+        int target = levelFor(screenSize);
+
+        if (target > previous) {
+            // Only go less detailed once the size is clearly below the threshold
+            target = Math.max(previous, levelFor(screenSize * (1 + mHysteresis)));
+        } else if (target < previous) {
+            target = Math.min(previous, levelFor(screenSize * (1 - mHysteresis)));
+        }
+
+        return target == count ? -1 : target;
+    }
+
+    /**
+     * Find the level of a screen size, without hysteresis.
+     *
+     * @param screenSize screen size of the object.
+     * @return index of the level, or the number of levels if the object is too small.
+     */
+    private int levelFor(float screenSize) {
+        for (int i = 0; i < mMinSizes.length; i++) {
+            if (screenSize >= mMinSizes[i]) {
+                return i;
+            }
+        }
+        return mMinSizes.length;
+    }
+
+    /** Increase the reference count of all level meshes. */
+    public void incRefCount() {
+        for (Mesh mesh : mMeshes) {
+            mesh.incRefCount();
+        }
+    }
+
+    /** Decrease the reference count of all level meshes. */
+    public void decRefCount() {
+        for (Mesh mesh : mMeshes) {
+            mesh.decRefCount();
+        }
+    }
+}
@@ -0,0 +1,381 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.joml.Vector4f;
+
+/**
+ * Generates less detailed versions of meshes, for {@link MeshLod}.
+ *
+ * @author DragonSkulle
+ *     <p>Simplification is done by vertex clustering. The bounding box of the mesh is split into a
+ *     grid of cells, and all vertices within a cell, facing the same general direction, get merged
+ *     into their average. Triangles that collapse into lines, or points get dropped. This does not
+ *     preserve the shape as well as edge collapsing would, but it is fast, and good enough for
+ *     objects that only cover a few pixels on screen.
+ *     <p>Impostors are the least detailed levels. They are made of 3 perpendicular, double-sided
+ *     planes, spanning the bounding box of the mesh, and coloured with its average colour. Unlike
+ *     camera facing billboards, they need no textures rendered ahead of time, nor orienting every
+ *     frame, and thus draw with the material of the mesh they replace.
+ *     <p>{@link org.dragonskulle.assets.AssetCooker} generates the levels of glTF meshes ahead of
+ *     time, and {@link #getLevels} only generates them at runtime for meshes that were not cooked.
+ */
+public class MeshSimplifier {
+    /** Number of distinct directions vertex normals are grouped into. */
+    private static final int NORMAL_DIRECTIONS = 6;
+
+    /** Grid resolutions of the simplified levels, from the most detailed one. */
+    public static final int[] LEVEL_RESOLUTIONS = {8, 4};
+
+    private MeshSimplifier() {}
+
+    /**
+     * Get the less detailed levels of a mesh, generating them if the mesh was not cooked.
+     *
+     * @param mesh most detailed mesh.
+     * @return levels, as returned by {@link #generateLevels}.
+     */
+    public static Mesh[] getLevels(Mesh mesh) {
+        Mesh[] levels = mesh.getLevels();
+
+        if (levels != null && levels.length == LEVEL_RESOLUTIONS.length + 1) {
+            return levels;
+        }
+
+        return generateLevels(mesh);
+    }
+
+    /**
+     * Generate the less detailed levels of a mesh.
+     *
+     * @param mesh most detailed mesh.
+     * @return one simplified mesh for each of {@link #LEVEL_RESOLUTIONS}, followed by the
+     *     impostor. Levels that would not be any simpler than the previous ones are {@code null}.
+     */
+    public static Mesh[] generateLevels(Mesh mesh) {
+        Mesh[] levels = new Mesh[LEVEL_RESOLUTIONS.length + 1];
+        Mesh previous = mesh;
+
+        for (int i = 0; i < LEVEL_RESOLUTIONS.length; i++) {
+            Mesh simplified = simplify(mesh, LEVEL_RESOLUTIONS[i]);
+
+            // Already simple meshes come back as they were, and do not need another level
+            if (simplified == mesh
+                    || simplified.getIndices().length >= previous.getIndices().length) {
+                continue;
+            }
+
+            levels[i] = simplified;
+            previous = simplified;
+        }
+
+        Mesh impostor = impostor(mesh);
+
+        // Impostors of small meshes can be more complex than the meshes themselves
+        if (impostor.getIndices().length < previous.getIndices().length) {
+            levels[LEVEL_RESOLUTIONS.length] = impostor;
+        }
+
+        return levels;
+    }
+
+    /**
+     * Simplify a mesh.
+     *
+     * @param mesh mesh to simplify.
+     * @param resolution number of grid cells along the longest side of the bounding box.
+     * @return simplified mesh, or the input mesh, if it could not be simplified any further.
+     */
+    public static Mesh simplify(Mesh mesh, int resolution) {
+        Vertexc[] vertices = mesh.getVertices();
+        int[] indices = mesh.getIndices();
+
+        if (vertices.length == 0 || resolution < 1) {
+            return mesh;
+        }
+
+        Vector3f size = new Vector3f(mesh.getBBMax()).sub(mesh.getBBMin());
+        float cellSize = Math.max(size.x, Math.max(size.y, size.z)) / resolution;
+
+        if (cellSize <= 0) {
+            return mesh;
+        }
+
+        Map<Long, Integer> clusterIds = new HashMap<>();
+        List<Vertex> clusters = new ArrayList<>();
+        List<Integer> clusterCounts = new ArrayList<>();
+        int[] remap = new int[vertices.length];
+
+        for (int i = 0; i < vertices.length; i++) {
+            Vertexc vertex = vertices[i];
+            long key = clusterKey(vertex, mesh.getBBMin(), cellSize, resolution);
+            Integer id = clusterIds.get(key);
+
+            if (id == null) {
+                id = clusters.size();
+                clusterIds.put(key, id);
+                clusters.add(
+                        new Vertex(new Vector3f(), new Vector3f(), new Vector4f(), new Vector2f()));
+                clusterCounts.add(0);
+            }
+
+            Vertex cluster = clusters.get(id);
+            cluster.getPos().add(vertex.getPos());
+            cluster.getNormal().add(vertex.getNormal());
+            cluster.getColor().add(vertex.getColor());
+            cluster.getUv().add(vertex.getUv());
+            clusterCounts.set(id, clusterCounts.get(id) + 1);
+            remap[i] = id;
+        }
+
+        if (clusters.size() == vertices.length) {
+            return mesh;
+        }
+
+        for (int i = 0; i < clusters.size(); i++) {
+            Vertex cluster = clusters.get(i);
+            float inv = 1f / clusterCounts.get(i);
+            cluster.getPos().mul(inv);
+            cluster.getColor().mul(inv);
+            cluster.getUv().mul(inv);
+
+            if (cluster.getNormal().lengthSquared() > 0) {
+                cluster.getNormal().normalize();
+            } else {
+                cluster.getNormal().set(0, 0, 1);
+            }
+        }
+
+        List<Integer> newIndices = new ArrayList<>();
+        Set<List<Integer>> seen = new HashSet<>();
+
+        for (int i = 0; i + 2 < indices.length; i += 3) {
+            int a = remap[indices[i]];
+            int b = remap[indices[i + 1]];
+            int c = remap[indices[i + 2]];
+
+            if (a == b || b == c || a == c) {
+                continue;
+            }
+
+            // The same triangle can come out of several original ones
+            if (!seen.add(triangleKey(a, b, c))) {
+                continue;
+            }
+
+            newIndices.add(a);
+            newIndices.add(b);
+            newIndices.add(c);
+        }
+
+        if (newIndices.isEmpty()) {
+            return mesh;
+        }
+
+        return compact(clusters, newIndices);
+    }
+
+    /**
+     * Build an impostor of a mesh.
+     *
+     * @param mesh mesh to build the impostor of.
+     * @return impostor mesh.
+     */
+    public static Mesh impostor(Mesh mesh) {
+        Vertexc[] vertices = mesh.getVertices();
+        Vector4f colour = new Vector4f(0);
+        Vector2f uv = new Vector2f();
+
+        for (Vertexc vertex : vertices) {
+            colour.add(vertex.getColor());
+            uv.add(vertex.getUv());
+        }
+
+        if (vertices.length > 0) {
+            colour.mul(1f / vertices.length);
+            uv.mul(1f / vertices.length);
+        } else {
+            colour.set(1);
+        }
+
+        Vector3fc min = mesh.getBBMin();
+        Vector3fc max = mesh.getBBMax();
+        Vector3fc center = mesh.getBBCenter();
+
+        List<Vertex> outVertices = new ArrayList<>();
+        List<Integer> outIndices = new ArrayList<>();
+
+        // Plane along X and Z
+        addPlane(
+                outVertices,
+                outIndices,
+                new Vector3f(min.x(), center.y(), min.z()),
+                new Vector3f(max.x() - min.x(), 0, 0),
+                new Vector3f(0, 0, max.z() - min.z()),
+                colour,
+                uv);
+        // Plane along Y and Z
+        addPlane(
+                outVertices,
+                outIndices,
+                new Vector3f(center.x(), min.y(), min.z()),
+                new Vector3f(0, max.y() - min.y(), 0),
+                new Vector3f(0, 0, max.z() - min.z()),
+                colour,
+                uv);
+        // Plane along X and Y
+        addPlane(
+                outVertices,
+                outIndices,
+                new Vector3f(min.x(), min.y(), center.z()),
+                new Vector3f(max.x() - min.x(), 0, 0),
+                new Vector3f(0, max.y() - min.y(), 0),
+                colour,
+                uv);
+
+        return compact(outVertices, outIndices);
+    }
+
+    /**
+     * Add a double-sided plane to a list of vertices and indices.
+     *
+     * <p>Both sides have their normals pointing up, so that the impostor gets lit the same way from
+     * every direction.
+     *
+     * @param vertices output vertex list.
+     * @param indices output index list.
+     * @param origin corner of the plane.
+     * @param u first side of the plane.
+     * @param v second side of the plane.
+     * @param colour colour of the plane.
+     * @param uv texture coordinate of the whole plane.
+     */
+    private static void addPlane(
+            List<Vertex> vertices,
+            List<Integer> indices,
+            Vector3f origin,
+            Vector3f u,
+            Vector3f v,
+            Vector4f colour,
+            Vector2f uv) {
+        int start = vertices.size();
+        Vector3f normal = new Vector3f(0, 0, 1);
+
+        vertices.add(new Vertex(origin, normal, colour, uv));
+        vertices.add(new Vertex(new Vector3f(origin).add(u), normal, colour, uv));
+        vertices.add(new Vertex(new Vector3f(origin).add(u).add(v), normal, colour, uv));
+        vertices.add(new Vertex(new Vector3f(origin).add(v), normal, colour, uv));
+
+        int[] quad = {0, 1, 2, 0, 2, 3, 0, 2, 1, 0, 3, 2};
+
+        for (int index : quad) {
+            indices.add(start + index);
+        }
+    }
+
+    /**
+     * Compute the cluster a vertex belongs to.
+     *
+     * @param vertex vertex to compute the cluster of.
+     * @param min minimum corner of the bounding box.
+     * @param cellSize size of a grid cell.
+     * @param resolution number of cells along the longest side.
+     * @return key of the cluster.
+     */
+    private static long clusterKey(Vertexc vertex, Vector3fc min, float cellSize, int resolution) {
+        Vector3fc pos = vertex.getPos();
+        long x = cell(pos.x() - min.x(), cellSize, resolution);
+        long y = cell(pos.y() - min.y(), cellSize, resolution);
+        long z = cell(pos.z() - min.z(), cellSize, resolution);
+        long cells = resolution + 1L;
+        return ((x * cells + y) * cells + z) * NORMAL_DIRECTIONS + direction(vertex.getNormal());
+    }
+
+    /**
+     * Compute the grid cell of a coordinate.
+     *
+     * @param offset offset of the coordinate from the bounding box minimum.
+     * @param cellSize size of a grid cell.
+     * @param resolution number of cells along the longest side.
+     * @return index of the cell.
+     */
+    private static long cell(float offset, float cellSize, int resolution) {
+        return Math.max(0, Math.min(resolution, (long) (offset / cellSize)));
+    }
+
+    /**
+     * Compute the main direction of a normal, so that hard edges do not get smoothed out.
+     *
+     * @param normal normal vector.
+     * @return index of the axis, and sign of the largest component.
+     */
+    private static int direction(Vector3fc normal) {
+        float x = Math.abs(normal.x());
+        float y = Math.abs(normal.y());
+        float z = Math.abs(normal.z());
+
+        if (x >= y && x >= z) {
+            return normal.x() >= 0 ? 0 : 1;
+        } else if (y >= z) {
+            return normal.y() >= 0 ? 2 : 3;
+        } else {
+            return normal.z() >= 0 ? 4 : 5;
+        }
+    }
+
+    /**
+     * Get a key of a triangle, which does not depend on the winding order's starting vertex.
+     *
+     * @param a first vertex.
+     * @param b second vertex.
+     * @param c third vertex.
+     * @return key of the triangle.
+     */
+    private static List<Integer> triangleKey(int a, int b, int c) {
+        if (a < b && a < c) {
+            return Arrays.asList(a, b, c);
+        } else if (b < c) {
+            return Arrays.asList(b, c, a);
+        } else {
+            return Arrays.asList(c, a, b);
+        }
+    }
+
+    /**
+     * Build a mesh out of the used vertices of a list.
+     *
+     * @param vertices list of vertices.
+     * @param indices list of indices.
+     * @return the mesh.
+     */
+    private static Mesh compact(List<Vertex> vertices, List<Integer> indices) {
+        int[] remap = new int[vertices.size()];
+        List<Vertexc> used = new ArrayList<>();
+
+        Arrays.fill(remap, -1);
+
+        int[] outIndices = new int[indices.size()];
+
+        for (int i = 0; i < outIndices.length; i++) {
+            int index = indices.get(i);
+
+            if (remap[index] < 0) {
+                remap[index] = used.size();
+                used.add(vertices.get(index));
+            }
+
+            outIndices[i] = remap[index];
+        }
+
+        return new Mesh(used.toArray(new Vertexc[0]), outIndices);
+    }
+}
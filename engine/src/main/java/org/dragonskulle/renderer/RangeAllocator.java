@@ -0,0 +1,196 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+/**
+ * First-fit free list allocator over a linear range of units.
+ *
+ * @author DragonSkulle
+ *     <p>This only does the bookkeeping of which parts of a buffer are in use, it does not own any
+ *     memory itself. Units are whatever the owner decides, for example, vertices of a vertex
+ *     buffer.
+ *     <p>Freed ranges may still be read by frames that are in flight on the GPU, thus they only
+ *     become available again after a number of calls to {@link #nextFrame}. Adjacent free ranges
+ *     are always merged together.
+ */
+@Accessors(prefix = "m")
+class RangeAllocator {
+    /** A range waiting to become free. */
+    private static class PendingFree {
+        private final int mOffset;
+        private final int mSize;
+        /** Frame the range was freed on. */
+        private final long mFrame;
+
+        /**
+         * Create a pending free.
+         *
+         * @param offset start of the range.
+         * @param size size of the range.
+         * @param frame frame the range was freed on.
+         */
+        private PendingFree(int offset, int size, long frame) {
+            mOffset = offset;
+            mSize = size;
+            mFrame = frame;
+        }
+    }
+
+    /** Free ranges, mapping their offsets to sizes. */
+    private final TreeMap<Integer, Integer> mFree = new TreeMap<>();
+    /** Freed ranges, from the oldest one. */
+    private final ArrayDeque<PendingFree> mPending = new ArrayDeque<>();
+    /** Number of frames freed ranges stay unavailable for. */
+    private final int mFrameDelay;
+    /** Number of {@link #nextFrame} calls so far. */
+    private long mFrame = 0;
+
+    /** Total number of units managed. */
+    @Getter private int mCapacity = 0;
+    /** Number of units that are allocated, or waiting to be freed. */
+    @Getter private int mUsed = 0;
+
+    /**
+     * Create an allocator.
+     *
+     * @param capacity initial number of units.
+     * @param frameDelay number of frames freed ranges stay unavailable for.
+     */
+    RangeAllocator(int capacity, int frameDelay) {
+        mFrameDelay = frameDelay;
+        grow(capacity);
+    }
+
+    /**
+     * Allocate a range.
+     *
+     * @param size number of units to allocate.
+     * @return offset of the range, or -1 if there is no free range large enough.
+     */
+    int allocate(int size) {
+        return allocateBelow(size, mCapacity);
+    }
+
+    /**
+     * Allocate a range that ends at, or before a limit.
+     *
+     * <p>The lowest range that fits is picked, which is what allows moving allocations down to
+     * compact the buffer.
+     *
+     * @param size number of units to allocate.
+     * @param limit offset the range must end before.
+     * @return offset of the range, or -1 if there is no such free range.
+     */
+    int allocateBelow(int size, int limit) {
+        if (size <= 0) {
+            return 0;
+        }
+
+        for (Map.Entry<Integer, Integer> block : mFree.entrySet()) {
+            int offset = block.getKey();
+            int blockSize = block.getValue();
+
+            if (offset + size > limit) {
+                return -1;
+            }
+
+            if (blockSize < size) {
+                continue;
+            }
+
+            mFree.remove(offset);
+
+            if (blockSize > size) {
+                mFree.put(offset + size, blockSize - size);
+            }
+
+            mUsed += size;
+            return offset;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Free a range once enough frames have passed.
+     *
+     * @param offset offset of the range.
+     * @param size number of units in the range.
+     */
+    void free(int offset, int size) {
+        if (size > 0) {
+            mPending.add(new PendingFree(offset, size, mFrame));
+        }
+    }
+
+    /** Advance to the next frame, and make ranges freed long enough ago available. */
+    void nextFrame() {
+        mFrame++;
+
+        while (!mPending.isEmpty() && mFrame - mPending.peek().mFrame >= mFrameDelay) {
+            PendingFree pending = mPending.poll();
+            release(pending.mOffset, pending.mSize);
+        }
+    }
+
+    /**
+     * Add more units at the end of the range.
+     *
+     * @param capacity new total number of units. Does nothing, if not larger than the current one.
+     */
+    void grow(int capacity) {
+        if (capacity <= mCapacity) {
+            return;
+        }
+
+        int oldCapacity = mCapacity;
+        mCapacity = capacity;
+        mUsed += capacity - oldCapacity;
+        release(oldCapacity, capacity - oldCapacity);
+    }
+
+    /**
+     * Get the end of the used part of the range.
+     *
+     * @return offset after the last allocated, or pending unit.
+     */
+    int getEnd() {
+        Map.Entry<Integer, Integer> last = mFree.lastEntry();
+
+        if (last != null && last.getKey() + last.getValue() == mCapacity) {
+            return last.getKey();
+        }
+
+        return mCapacity;
+    }
+
+    /**
+     * Make a range available, merging it with its free neighbours.
+     *
+     * @param offset offset of the range.
+     * @param size number of units in the range.
+     */
+    private void release(int offset, int size) {
+        mUsed -= size;
+
+        Map.Entry<Integer, Integer> before = mFree.lowerEntry(offset);
+
+        if (before != null && before.getKey() + before.getValue() == offset) {
+            offset = before.getKey();
+            size += before.getValue();
+        }
+
+        Integer afterSize = mFree.remove(offset + size);
+
+        if (afterSize != null) {
+            size += afterSize;
+        }
+
+        mFree.put(offset, size);
+    }
+}
@@ -0,0 +1,472 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import static org.dragonskulle.utils.Env.envBool;
+import static org.dragonskulle.utils.Env.envInt;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import org.dragonskulle.components.Transform;
+import org.dragonskulle.core.SpatialIndex;
+import org.dragonskulle.renderer.components.Light;
+import org.dragonskulle.renderer.components.Renderable;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4fc;
+import org.joml.Vector3fc;
+
+/**
+ * Culls and groups renderables for drawing, and writes their instance data, on a pool of worker
+ * threads.
+ *
+ * @author DragonSkulle
+ *     <p>Work is split into chunks of {@link #CHUNK_SIZE} objects. Culling is done per chunk, and
+ *     every chunk groups its visible objects by {@link ShaderSet}. Chunk groups are then merged in
+ *     chunk order, so that objects end up in the same order as they would when processed serially.
+ *     Instance data is written in chunks too, each into its own range of the buffer, and only where
+ *     it differs from a shadow copy of the buffer.
+ *     <p>Before any work is split up, world matrices of all objects are computed serially, since
+ *     transforms compute them lazily, and share them with their children. Materials must not modify
+ *     any shared state while writing instance data. Lights need to be prepared with {@link
+ *     Light#prepareLights} beforehand.
+ *     <p>By default, objects are kept in a {@link SpatialIndex}, which is culled as a whole, and
+ *     chunks only check which objects the index found visible. Setting {@code RENDER_SPATIAL_INDEX}
+ *     environment variable to false makes every object get tested against the frustum separately
+ *     instead.
+ *     <p>Objects with levels of detail get theirs chosen while culling, if the camera is given.
+ *     <p>Small workloads, and pools without threads run everything on the calling thread. The
+ *     number of worker threads is set with {@code RENDER_THREADS} environment variable.
+ */
+@Accessors(prefix = "m")
+class RenderBatcher implements AutoCloseable {
+    /** Number of objects processed by a single task. */
+    static final int CHUNK_SIZE = 256;
+
+    /** Culls a range of renderables, and groups the visible ones by their shader sets. */
+    private static class CullTask extends RecursiveAction {
+        /** Visible objects of this chunk, grouped by shader set. */
+        private final Map<ShaderSet, ArrayList<Renderable>> mBuckets = new HashMap<>();
+
+        private List<Renderable> mRenderables;
+        /** Frustum to cull against, {@code null} if the spatial index was culled already. */
+        private FrustumIntersection mIntersector;
+        /** Mark of index entries found visible. */
+        private int mMark;
+        /** Position of the camera, {@code null} if levels of detail are not chosen. */
+        private Vector3fc mCamPosition;
+        /** Projection of the camera. */
+        private Matrix4fc mProj;
+
+        private int mStart;
+        private int mEnd;
+
+        /**
+         * Set the range to cull.
+         *
+         * @param renderables all renderables.
+         * @param intersector frustum to cull against, {@code null} to use index entry marks.
+         * @param mark mark of visible index entries.
+         * @param camPosition position of the camera, {@code null} to not choose levels of detail.
+         * @param proj projection of the camera.
+         * @param start first index of the range.
+         * @param end index after the last one of the range.
+         */
+        void set(
+                List<Renderable> renderables,
+                FrustumIntersection intersector,
+                int mark,
+                Vector3fc camPosition,
+                Matrix4fc proj,
+                int start,
+                int end) {
+            mRenderables = renderables;
+            mIntersector = intersector;
+            mMark = mark;
+            mCamPosition = camPosition;
+            mProj = proj;
+            mStart = start;
+            mEnd = end;
+        }
+
+        /**
+         * Check whether an object is visible.
+         *
+         * @param renderable object to check.
+         * @return {@code true} if the object should be drawn.
+         */
+        private boolean isVisible(Renderable renderable) {
+            if (mIntersector != null) {
+                return renderable.frustumCull(mIntersector);
+            }
+
+            return renderable.isAlwaysVisible() || renderable.getSpatialEntry().getMark() == mMark;
+        }
+
+        @Override
+        protected void compute() {
+            // Drop shader sets that were not seen last frame, and clear the rest for reuse
+            mBuckets.values().removeIf(ArrayList::isEmpty);
+
+            for (ArrayList<Renderable> bucket : mBuckets.values()) {
+                bucket.clear();
+            }
+
+            for (int i = mStart; i < mEnd; i++) {
+                Renderable renderable = mRenderables.get(i);
+
+                if (!isDrawable(renderable) || !isVisible(renderable)) {
+                    continue;
+                }
+
+                if (mCamPosition != null && !renderable.selectLod(mCamPosition, mProj)) {
+                    continue;
+                }
+
+                ShaderSet shaderSet = renderable.getMaterial().getShaderSet();
+                ArrayList<Renderable> bucket = mBuckets.get(shaderSet);
+
+                if (bucket == null) {
+                    bucket = new ArrayList<>();
+                    mBuckets.put(shaderSet, bucket);
+                }
+
+                bucket.add(renderable);
+            }
+        }
+    }
+
+    /** Writes instance data of a range of objects within a single draw. */
+    private static class WriteTask extends RecursiveAction {
+        private ShaderSet mShaderSet;
+        private DrawCallState.DrawData mData;
+        private ByteBuffer mBuffer;
+        private ByteBuffer mShadow;
+        private List<Light> mLights;
+        private int mImage;
+        private int mStart;
+        private int mEnd;
+        /** Objects are written here first, to be compared with the shadow. */
+        private ByteBuffer mScratch;
+        /** Number of bytes the task wrote to the instance buffer. */
+        private int mBytesWritten;
+
+        @Override
+        protected void compute() {
+            int stride = mShaderSet.getVertexBindingDescription().mSize;
+
+            if (mScratch == null || mScratch.capacity() < stride) {
+                mScratch = ByteBuffer.allocateDirect(stride).order(mBuffer.order());
+            }
+
+            // Relative puts move the position, thus every task needs its own view of the buffer
+            ByteBuffer view = mBuffer.duplicate().order(mBuffer.order());
+            ByteBuffer shadow = mShadow.duplicate().order(mShadow.order());
+            mBytesWritten =
+                    mData.updateInstanceBuffer(
+                            mShaderSet, view, shadow, mScratch, mLights, mImage, mStart, mEnd);
+        }
+    }
+
+    /** Runs a list of tasks on the pool. */
+    private static class InvokeAll extends RecursiveAction {
+        private List<? extends RecursiveAction> mTasks;
+
+        @Override
+        protected void compute() {
+            invokeAll(mTasks);
+        }
+    }
+
+    /** Worker threads, {@code null} if everything runs on the calling thread. */
+    private final ForkJoinPool mPool;
+    /** Index of the renderables, {@code null} if every object is culled separately. */
+    private final SpatialIndex<Renderable> mIndex;
+    /** Number of {@link #cull} calls so far, used to mark visible index entries. */
+    private int mCullCount = 0;
+
+    /** Culling tasks, kept around across frames. */
+    private final List<CullTask> mCullTasks = new ArrayList<>();
+    /** Instance data writing tasks, kept around across frames. */
+    private final List<WriteTask> mWriteTasks = new ArrayList<>();
+    /** Root task used to wait for all the others. */
+    private final InvokeAll mInvokeAll = new InvokeAll();
+
+    /** Visible objects of the last {@link #cull} call, grouped by shader set. */
+    @Getter private final Map<ShaderSet, List<Renderable>> mBuckets = new LinkedHashMap<>();
+
+    /** Create a batcher configured by environment. */
+    RenderBatcher() {
+        this(
+                envInt("RENDER_THREADS", Runtime.getRuntime().availableProcessors() - 1),
+                envBool("RENDER_SPATIAL_INDEX", true));
+    }
+
+    /**
+     * Create a batcher.
+     *
+     * @param threadCount number of worker threads. With 1 or less, work runs on the calling thread.
+     * @param useIndex whether to cull through a spatial index.
+     */
+    RenderBatcher(int threadCount, boolean useIndex) {
+        mPool = threadCount > 1 ? new ForkJoinPool(threadCount) : null;
+        mIndex = useIndex ? new SpatialIndex<>() : null;
+    }
+
+    /**
+     * Check whether a renderable has anything to draw.
+     *
+     * @param renderable object to check.
+     * @return {@code true} if the object has a non-empty mesh.
+     */
+    static boolean isDrawable(Renderable renderable) {
+        Mesh mesh = renderable.getMesh();
+        return mesh != null && mesh.getVertices().length != 0 && mesh.getIndices().length != 0;
+    }
+
+    /**
+     * Cull renderables, and group the visible ones by shader set.
+     *
+     * <p>Results are available in {@link #getBuckets}, until the next call. Levels of detail are
+     * left as they are.
+     *
+     * @param renderables objects to cull.
+     * @param intersector frustum to cull against.
+     * @return {@link #getBuckets}.
+     */
+    Map<ShaderSet, List<Renderable>> cull(
+            List<Renderable> renderables, FrustumIntersection intersector) {
+        return cull(renderables, intersector, null, null);
+    }
+
+    /**
+     * Cull renderables, choose their levels of detail, and group the visible ones by shader set.
+     *
+     * <p>Results are available in {@link #getBuckets}, until the next call. Objects too small to be
+     * drawn at any of their levels of detail are culled too.
+     *
+     * @param renderables objects to cull.
+     * @param intersector frustum to cull against.
+     * @param camPosition position of the camera, {@code null} to not choose levels of detail.
+     * @param proj projection of the camera.
+     * @return {@link #getBuckets}.
+     */
+    Map<ShaderSet, List<Renderable>> cull(
+            List<Renderable> renderables,
+            FrustumIntersection intersector,
+            Vector3fc camPosition,
+            Matrix4fc proj) {
+        int size = renderables.size();
+        int mark = ++mCullCount;
+
+        // World matrices are computed lazily, and shared with children, thus compute them serially
+        for (int i = 0; i < size; i++) {
+            Renderable renderable = renderables.get(i);
+
+            if (!isDrawable(renderable)) {
+                continue;
+            }
+
+            Transform transform = renderable.getGameObject().getTransform();
+            transform.getWorldMatrix();
+
+            if (mIndex != null && !renderable.isAlwaysVisible()) {
+                addToIndex(renderable, transform);
+            }
+        }
+
+        if (mIndex != null) {
+            mIndex.refresh();
+            mIndex.cull(intersector, mark);
+        }
+
+        FrustumIntersection chunkIntersector = mIndex == null ? intersector : null;
+
+        int chunkCount = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+        while (mCullTasks.size() < chunkCount) {
+            mCullTasks.add(new CullTask());
+        }
+
+        for (int i = 0; i < chunkCount; i++) {
+            CullTask task = mCullTasks.get(i);
+            int start = i * CHUNK_SIZE;
+            task.reinitialize();
+            int end = Math.min(size, start + CHUNK_SIZE);
+            task.set(renderables, chunkIntersector, mark, camPosition, proj, start, end);
+        }
+
+        run(mCullTasks, chunkCount);
+
+        mBuckets.values().removeIf(List::isEmpty);
+
+        for (List<Renderable> bucket : mBuckets.values()) {
+            bucket.clear();
+        }
+
+        for (int i = 0; i < chunkCount; i++) {
+            CullTask task = mCullTasks.get(i);
+
+            for (Map.Entry<ShaderSet, ArrayList<Renderable>> entry : task.mBuckets.entrySet()) {
+                if (entry.getValue().isEmpty()) {
+                    continue;
+                }
+
+                List<Renderable> bucket = mBuckets.get(entry.getKey());
+
+                if (bucket == null) {
+                    bucket = new ArrayList<>();
+                    mBuckets.put(entry.getKey(), bucket);
+                }
+
+                bucket.addAll(entry.getValue());
+            }
+
+            task.mRenderables = null;
+            task.mIntersector = null;
+            task.mCamPosition = null;
+            task.mProj = null;
+        }
+
+        return mBuckets;
+    }
+
+    /**
+     * Make sure a renderable is in the spatial index.
+     *
+     * @param renderable object to add.
+     * @param transform transform of the object.
+     */
+    private void addToIndex(Renderable renderable, Transform transform) {
+        SpatialIndex.Entry<Renderable> entry = renderable.getSpatialEntry();
+
+        if (entry != null && entry.getIndex() == mIndex) {
+            return;
+        }
+
+        if (entry != null) {
+            entry.remove();
+        }
+
+        Mesh mesh = renderable.getMesh();
+        entry = mIndex.add(renderable, transform, mesh.getBBMin(), mesh.getBBMax());
+        renderable.setSpatialEntry(entry);
+    }
+
+    /**
+     * Write instance data of all objects in the draw call states.
+     *
+     * <p>Instance buffer ranges of the draw data must be reserved beforehand. Objects whose data
+     * was already written to this image's buffer are skipped, and only data that differs from the
+     * shadow copy gets written to the instance buffer.
+     *
+     * @param states draw call states to write the data of.
+     * @param buffer the mapped instance buffer.
+     * @param shadow copy of what the instance buffer holds, in the same byte order.
+     * @param lights lights in the world, prepared with {@link Light#prepareLights}.
+     * @param image index of the image the instance buffer belongs to.
+     * @return number of bytes written to the instance buffer.
+     */
+    int writeInstanceData(
+            List<DrawCallState> states,
+            ByteBuffer buffer,
+            ByteBuffer shadow,
+            List<Light> lights,
+            int image) {
+        int taskCount = 0;
+
+        for (DrawCallState state : states) {
+            ShaderSet shaderSet = state.getShaderSet();
+
+            for (DrawCallState.DrawData data : state.getDrawData()) {
+                int size = data.mObjects.size();
+
+                for (int start = 0; start < size; start += CHUNK_SIZE) {
+                    if (mWriteTasks.size() <= taskCount) {
+                        mWriteTasks.add(new WriteTask());
+                    }
+
+                    WriteTask task = mWriteTasks.get(taskCount++);
+                    task.reinitialize();
+                    task.mShaderSet = shaderSet;
+                    task.mData = data;
+                    task.mBuffer = buffer;
+                    task.mShadow = shadow;
+                    task.mLights = lights;
+                    task.mImage = image;
+                    task.mStart = start;
+                    task.mEnd = Math.min(size, start + CHUNK_SIZE);
+                }
+            }
+        }
+
+        run(mWriteTasks, taskCount);
+
+        int bytesWritten = 0;
+
+        for (int i = 0; i < taskCount; i++) {
+            WriteTask task = mWriteTasks.get(i);
+            bytesWritten += task.mBytesWritten;
+            task.mShaderSet = null;
+            task.mData = null;
+            task.mBuffer = null;
+            task.mShadow = null;
+            task.mLights = null;
+        }
+
+        return bytesWritten;
+    }
+
+    /**
+     * Check whether work is spread across worker threads.
+     *
+     * @return {@code true} if there is a worker pool, {@code false} if everything runs on the
+     *     calling thread.
+     */
+    boolean isParallel() {
+        return mPool != null;
+    }
+
+    /**
+     * Run the first tasks of a list, and wait for them to finish.
+     *
+     * <p>Tasks run on the worker threads, unless there are none, or there is just one task.
+     *
+     * @param tasks list of tasks.
+     * @param count number of tasks to run.
+     */
+    void run(List<? extends RecursiveAction> tasks, int count) {
+        if (mPool == null || count <= 1) {
+            for (int i = 0; i < count; i++) {
+                tasks.get(i).invoke();
+            }
+            return;
+        }
+
+        mInvokeAll.reinitialize();
+        mInvokeAll.mTasks = tasks.subList(0, count);
+        try {
+            mPool.invoke(mInvokeAll);
+        } finally {
+            mInvokeAll.mTasks = null;
+        }
+    }
+
+    /** Stop the worker threads. */
+    @Override
+    public void close() {
+        if (mPool != null) {
+            mPool.shutdown();
+        }
+
+        if (mIndex != null) {
+            mIndex.clear();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import java.util.List;
+import java.util.logging.Level;
+import lombok.extern.java.Log;
+import org.dragonskulle.renderer.components.Camera;
+import org.dragonskulle.renderer.components.Light;
+import org.dragonskulle.renderer.components.Renderable;
+
+/**
+ * Draws frames on a render thread of its own, while the next frame gets simulated.
+ *
+ * @author DragonSkulle
+ *     <p>At the end of every simulation frame, {@link #submit} extracts a {@link RenderSnapshot} of
+ *     the objects, and hands it over to the render thread. There are two snapshots: one that the
+ *     render thread draws, and one that the next frame gets extracted into. Thus the main thread
+ *     runs at most one frame ahead, and only waits for the render thread when handing over the next
+ *     snapshot.
+ *     <p>Errors of the render thread are thrown by the next {@link #submit}, or {@link #waitIdle}
+ *     call.
+ */
+@Log
+public class RenderPipeline implements AutoCloseable {
+    /** Backend drawing the snapshots. */
+    private final IRenderBackend mBackend;
+    /** Extracts snapshots on the calling thread. */
+    private final RenderSnapshotExtractor mExtractor;
+    /** The two snapshots, alternating between extraction and drawing. */
+    private final RenderSnapshot[] mSnapshots = {new RenderSnapshot(), new RenderSnapshot()};
+    /** Index of the snapshot the next frame gets extracted into. */
+    private int mNext = 0;
+
+    /** The render thread. */
+    private final Thread mThread;
+
+    /** Snapshot handed over, but not yet taken by the render thread. */
+    private RenderSnapshot mPending = null;
+    /** Whether the render thread is drawing a snapshot. */
+    private boolean mRendering = false;
+    /** Whether the render thread should stop. */
+    private boolean mClosed = false;
+    /** Error of the render thread, not yet thrown. */
+    private RendererException mError = null;
+
+    /**
+     * Create a pipeline, and start its render thread.
+     *
+     * @param backend backend drawing the snapshots.
+     */
+    public RenderPipeline(IRenderBackend backend) {
+        this(backend, new RenderSnapshotExtractor());
+    }
+
+    /**
+     * Create a pipeline, and start its render thread.
+     *
+     * @param backend backend drawing the snapshots.
+     * @param extractor extractor filling the snapshots.
+     */
+    RenderPipeline(IRenderBackend backend, RenderSnapshotExtractor extractor) {
+        mBackend = backend;
+        mExtractor = extractor;
+        mThread = new Thread(this::run, "Render Thread");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Extract a snapshot of a frame, and hand it over to the render thread.
+     *
+     * <p>Extraction happens while the render thread still draws the previous frame, and only the
+     * hand-over waits for it to finish.
+     *
+     * @param camera camera to render from.
+     * @param renderables objects to render.
+     * @param lights lights to light the objects with.
+     * @param width width of the render target, used for the camera's aspect ratio.
+     * @param height height of the render target.
+     * @throws RendererException if the render thread failed to draw a previous frame.
+     */
+    public void submit(
+            Camera camera, List<Renderable> renderables, List<Light> lights, int width, int height)
+            throws RendererException {
+        RenderSnapshot snapshot = mSnapshots[mNext];
+
+        mExtractor.extract(snapshot, camera, renderables, lights, width, height);
+
+        waitIdle();
+
+        synchronized (this) {
+            mPending = snapshot;
+            notifyAll();
+        }
+
+        mNext = 1 - mNext;
+    }
+
+    /**
+     * Wait until the render thread has drawn everything handed over to it.
+     *
+     * <p>Once this returns, no live objects are referenced by the render thread, until the next
+     * {@link #submit}.
+     *
+     * @throws RendererException if the render thread failed to draw a frame.
+     */
+    public synchronized void waitIdle() throws RendererException {
+        boolean interrupted = false;
+
+        while (mPending != null || mRendering) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (mError != null) {
+            RendererException error = mError;
+            mError = null;
+            throw error;
+        }
+    }
+
+    /** Body of the render thread. */
+    private void run() {
+        while (true) {
+            RenderSnapshot snapshot;
+
+            synchronized (this) {
+                while (mPending == null && !mClosed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+
+                if (mPending == null) {
+                    return;
+                }
+
+                snapshot = mPending;
+                mPending = null;
+                mRendering = true;
+            }
+
+            RendererException error = null;
+
+            try {
+                mBackend.render(snapshot);
+            } catch (RendererException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                log.log(Level.SEVERE, "Render thread failed!", e);
+                error = new RendererException("Render thread failed! " + e);
+            }
+
+            synchronized (this) {
+                mRendering = false;
+                if (error != null && mError == null) {
+                    mError = error;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Stop the render thread, once it has drawn everything handed over to it.
+     *
+     * <p>Errors of the last frames are only logged.
+     */
+    @Override
+    public void close() {
+        try {
+            waitIdle();
+        } catch (RendererException e) {
+            log.severe("Renderer exception! " + e);
+        }
+
+        synchronized (this) {
+            mClosed = true;
+            notifyAll();
+        }
+
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        mExtractor.close();
+    }
+}
@@ -0,0 +1,192 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import org.dragonskulle.core.GameObject;
+import org.dragonskulle.renderer.components.Light;
+import org.dragonskulle.renderer.components.Renderable;
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+/**
+ * Everything the renderer needs to draw a single frame.
+ *
+ * @author DragonSkulle
+ *     <p>Snapshots are filled by {@link RenderSnapshotExtractor} at the end of a simulation frame,
+ *     and only read afterwards, thus the renderer can draw one on another thread, while the next
+ *     frame gets simulated. Visible objects are replaced with copies holding their instance data,
+ *     and lights with copies holding their prepared values.
+ *     <p>Snapshots are reused, and the memory of their copies is kept across frames.
+ */
+@Accessors(prefix = "m")
+public class RenderSnapshot {
+    /** World to view transformation of the camera. */
+    private final Matrix4f mView = new Matrix4f();
+    /** Projection of the camera. */
+    private final Matrix4f mProj = new Matrix4f();
+    /** Position of the camera. */
+    private final Vector3f mCameraPosition = new Vector3f();
+
+    /** Copies of the visible objects, grouped by shader set. */
+    private final ArrayList<Renderable> mRenderables = new ArrayList<>();
+    /** Copies of the lights. */
+    private final ArrayList<Light> mLights = new ArrayList<>();
+
+    /** Number of the frame the snapshot holds, counted by the extractor. */
+    @Getter private int mFrame = 0;
+
+    /** Packed instance data of all copied objects. */
+    @Getter(AccessLevel.PACKAGE)
+    private ByteBuffer mInstanceData =
+            ByteBuffer.allocateDirect(4096).order(ByteOrder.nativeOrder());
+    /** Object at the world origin, holding all the copies. */
+    @Getter(AccessLevel.PACKAGE)
+    private final GameObject mRoot = new GameObject("Render Snapshot");
+
+    /** Object copies, including unused ones. */
+    private final ArrayList<FrozenRenderable> mFrozenPool = new ArrayList<>();
+    /** Light copies, including unused ones. */
+    private final ArrayList<Light> mLightPool = new ArrayList<>();
+
+    /**
+     * Get the world to view transformation of the camera.
+     *
+     * @return the view matrix.
+     */
+    public Matrix4fc getView() {
+        return mView;
+    }
+
+    /**
+     * Get the projection of the camera.
+     *
+     * @return the projection matrix.
+     */
+    public Matrix4fc getProj() {
+        return mProj;
+    }
+
+    /**
+     * Get the position of the camera.
+     *
+     * @return the camera position.
+     */
+    public Vector3fc getCameraPosition() {
+        return mCameraPosition;
+    }
+
+    /**
+     * Get the copies of the visible objects.
+     *
+     * @return list of objects to draw. It must not be modified.
+     */
+    public List<Renderable> getRenderables() {
+        return mRenderables;
+    }
+
+    /**
+     * Get the copies of the lights.
+     *
+     * <p>The copies are already prepared, and must not be prepared again.
+     *
+     * @return list of lights. It must not be modified.
+     */
+    public List<Light> getLights() {
+        return mLights;
+    }
+
+    /**
+     * Start a new extraction, dropping the previous contents.
+     *
+     * @param view view matrix of the camera.
+     * @param proj projection matrix of the camera.
+     * @param cameraPosition position of the camera.
+     * @param frame number of the frame.
+     */
+    void begin(Matrix4fc view, Matrix4fc proj, Vector3fc cameraPosition, int frame) {
+        for (int i = 0; i < mRenderables.size(); i++) {
+            mFrozenPool.get(i).release();
+        }
+
+        mRenderables.clear();
+        mLights.clear();
+
+        mView.set(view);
+        mProj.set(proj);
+        mCameraPosition.set(cameraPosition);
+        mFrame = frame;
+    }
+
+    /**
+     * Add a copy of a prepared light.
+     *
+     * @param light light to copy.
+     */
+    void addLight(Light light) {
+        int index = mLights.size();
+
+        if (index == mLightPool.size()) {
+            mLightPool.add(new Light());
+        }
+
+        Light copy = mLightPool.get(index);
+        copy.copyPrepared(light);
+        mLights.add(copy);
+    }
+
+    /**
+     * Add a copy of a visible object.
+     *
+     * <p>The copy's instance data is not written until {@link FrozenRenderable#writeSource}.
+     *
+     * @param source object to copy.
+     * @param offset offset of the copy's instance data.
+     * @param stride size of a single instance's data.
+     * @param tmpVec temporary vector.
+     * @return the copy.
+     */
+    FrozenRenderable addRenderable(Renderable source, int offset, int stride, Vector3f tmpVec) {
+        int index = mRenderables.size();
+
+        if (index == mFrozenPool.size()) {
+            mFrozenPool.add(new FrozenRenderable(this));
+        }
+
+        FrozenRenderable copy = mFrozenPool.get(index);
+        copy.freeze(source, offset, stride, mCameraPosition, tmpVec);
+        mRenderables.add(copy);
+        return copy;
+    }
+
+    /**
+     * Make sure the instance data can hold a number of bytes.
+     *
+     * <p>This must be called before any instance data is written.
+     *
+     * @param size number of bytes needed.
+     */
+    void reserveInstanceData(int size) {
+        if (size > mInstanceData.capacity()) {
+            int capacity = Math.max(size, mInstanceData.capacity() * 2);
+            mInstanceData = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    /**
+     * Get a copied object.
+     *
+     * @param index index of the object.
+     * @return the copy.
+     */
+    FrozenRenderable getFrozen(int index) {
+        return mFrozenPool.get(index);
+    }
+}
@@ -0,0 +1,157 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+import org.dragonskulle.renderer.components.Camera;
+import org.dragonskulle.renderer.components.Light;
+import org.dragonskulle.renderer.components.Renderable;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.joml.Vector3f;
+
+/**
+ * Fills {@link RenderSnapshot}s from live objects.
+ *
+ * @author DragonSkulle
+ *     <p>Objects are culled against the camera, and the visible ones get their instance data
+ *     written into the snapshot. Both steps are spread across worker threads, the same way the
+ *     renderer does them, but with a {@link RenderBatcher} of its own, since the renderer may be
+ *     drawing the previous snapshot at the same time.
+ */
+public class RenderSnapshotExtractor implements AutoCloseable {
+    /** Writes instance data of a range of copied objects. */
+    private static class WriteTask extends RecursiveAction {
+        private RenderSnapshot mSnapshot;
+        private List<Light> mLights;
+        private int mStart;
+        private int mEnd;
+
+        @Override
+        protected void compute() {
+            for (int i = mStart; i < mEnd; i++) {
+                mSnapshot.getFrozen(i).writeSource(mSnapshot.getInstanceData(), mLights);
+            }
+        }
+    }
+
+    /** Culls objects, and runs the write tasks. */
+    private final RenderBatcher mBatcher;
+    /** Instance data writing tasks, kept around across frames. */
+    private final List<WriteTask> mWriteTasks = new ArrayList<>();
+    /** Number of snapshots extracted so far. */
+    private int mFrameCount = 0;
+
+    private final Matrix4f mCombinedMatrix = new Matrix4f();
+    private final FrustumIntersection mFrustumIntersection = new FrustumIntersection();
+    private final Vector3f mCameraPosition = new Vector3f();
+    private final Vector3f mTmpVec = new Vector3f();
+
+    /** Create an extractor configured by environment, like the renderer's batcher. */
+    public RenderSnapshotExtractor() {
+        this(new RenderBatcher());
+    }
+
+    /**
+     * Create an extractor.
+     *
+     * @param batcher batcher used to cull objects, and write their data.
+     */
+    RenderSnapshotExtractor(RenderBatcher batcher) {
+        mBatcher = batcher;
+    }
+
+    /**
+     * Fill a snapshot.
+     *
+     * <p>This must be called on the thread that updates the objects, and the snapshot must not be
+     * read by anyone else at the same time.
+     *
+     * @param snapshot snapshot to fill.
+     * @param camera camera to render from.
+     * @param renderables objects to render.
+     * @param lights lights to light the objects with.
+     * @param width width of the render target, used for the camera's aspect ratio.
+     * @param height height of the render target.
+     */
+    public void extract(
+            RenderSnapshot snapshot,
+            Camera camera,
+            List<Renderable> renderables,
+            List<Light> lights,
+            int width,
+            int height) {
+        if (width > 0 && height > 0) {
+            camera.updateAspectRatio(width, height);
+        }
+
+        Matrix4fc proj = camera.getProj();
+        Matrix4fc view = camera.getView();
+        camera.getGameObject().getTransform().getPosition(mCameraPosition);
+
+        snapshot.begin(view, proj, mCameraPosition, ++mFrameCount);
+
+        Light.prepareLights(lights);
+
+        for (int i = 0; i < lights.size(); i++) {
+            snapshot.addLight(lights.get(i));
+        }
+
+        mCombinedMatrix.set(proj).mul(view);
+        mFrustumIntersection.set(mCombinedMatrix);
+
+        int size = 0;
+
+        for (Map.Entry<ShaderSet, List<Renderable>> bucket :
+                mBatcher.cull(renderables, mFrustumIntersection, mCameraPosition, proj)
+                        .entrySet()) {
+            BindingDescription binding = bucket.getKey().getVertexBindingDescription();
+            int stride = binding == null ? 0 : binding.mSize;
+
+            for (Renderable renderable : bucket.getValue()) {
+                snapshot.addRenderable(renderable, size, stride, mTmpVec);
+                size += stride * renderable.getInstanceCount();
+            }
+        }
+
+        snapshot.reserveInstanceData(size);
+
+        int count = snapshot.getRenderables().size();
+        int taskCount = (count + RenderBatcher.CHUNK_SIZE - 1) / RenderBatcher.CHUNK_SIZE;
+
+        while (mWriteTasks.size() < taskCount) {
+            mWriteTasks.add(new WriteTask());
+        }
+
+        for (int i = 0; i < taskCount; i++) {
+            WriteTask task = mWriteTasks.get(i);
+            task.reinitialize();
+            task.mSnapshot = snapshot;
+            task.mLights = lights;
+            task.mStart = i * RenderBatcher.CHUNK_SIZE;
+            task.mEnd = Math.min(count, task.mStart + RenderBatcher.CHUNK_SIZE);
+        }
+
+        mBatcher.run(mWriteTasks, taskCount);
+
+        for (int i = 0; i < taskCount; i++) {
+            WriteTask task = mWriteTasks.get(i);
+            task.mSnapshot = null;
+            task.mLights = null;
+        }
+
+        // Copies must not keep destroyed objects alive
+        for (int i = 0; i < count; i++) {
+            snapshot.getFrozen(i).dropSource();
+        }
+    }
+
+    /** Stop the worker threads. */
+    @Override
+    public void close() {
+        mBatcher.close();
+    }
+}
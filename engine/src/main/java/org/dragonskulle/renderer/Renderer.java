@@ -45,6 +45,7 @@ import static org.lwjgl.vulkan.VK10.VK_ATTACHMENT_STORE_OP_STORE;
 import static org.lwjgl.vulkan.VK10.VK_BUFFER_USAGE_VERTEX_BUFFER_BIT;
 import static org.lwjgl.vulkan.VK10.VK_COMMAND_BUFFER_LEVEL_PRIMARY;
 import static org.lwjgl.vulkan.VK10.VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT;
+import static org.lwjgl.vulkan.VK10.VK_COMMAND_BUFFER_USAGE_RENDER_PASS_CONTINUE_BIT;
 import static org.lwjgl.vulkan.VK10.VK_COMMAND_POOL_CREATE_RESET_COMMAND_BUFFER_BIT;
 import static org.lwjgl.vulkan.VK10.VK_FALSE;
 import static org.lwjgl.vulkan.VK10.VK_FENCE_CREATE_SIGNALED_BIT;
@@ -63,12 +64,12 @@ import static org.lwjgl.vulkan.VK10.VK_PIPELINE_BIND_POINT_GRAPHICS;
 import static org.lwjgl.vulkan.VK10.VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT;
 import static org.lwjgl.vulkan.VK10.VK_PIPELINE_STAGE_EARLY_FRAGMENT_TESTS_BIT;
 import static org.lwjgl.vulkan.VK10.VK_SAMPLE_COUNT_1_BIT;
-import static org.lwjgl.vulkan.VK10.VK_SHADER_STAGE_VERTEX_BIT;
 import static org.lwjgl.vulkan.VK10.VK_SHARING_MODE_CONCURRENT;
 import static org.lwjgl.vulkan.VK10.VK_SHARING_MODE_EXCLUSIVE;
 import static org.lwjgl.vulkan.VK10.VK_STRUCTURE_TYPE_APPLICATION_INFO;
 import static org.lwjgl.vulkan.VK10.VK_STRUCTURE_TYPE_COMMAND_BUFFER_ALLOCATE_INFO;
 import static org.lwjgl.vulkan.VK10.VK_STRUCTURE_TYPE_COMMAND_BUFFER_BEGIN_INFO;
+import static org.lwjgl.vulkan.VK10.VK_STRUCTURE_TYPE_COMMAND_BUFFER_INHERITANCE_INFO;
 import static org.lwjgl.vulkan.VK10.VK_STRUCTURE_TYPE_COMMAND_POOL_CREATE_INFO;
 import static org.lwjgl.vulkan.VK10.VK_STRUCTURE_TYPE_DEVICE_CREATE_INFO;
 import static org.lwjgl.vulkan.VK10.VK_STRUCTURE_TYPE_DEVICE_QUEUE_CREATE_INFO;
@@ -80,6 +81,7 @@ import static org.lwjgl.vulkan.VK10.VK_STRUCTURE_TYPE_RENDER_PASS_CREATE_INFO;
 import static org.lwjgl.vulkan.VK10.VK_STRUCTURE_TYPE_SEMAPHORE_CREATE_INFO;
 import static org.lwjgl.vulkan.VK10.VK_STRUCTURE_TYPE_SUBMIT_INFO;
 import static org.lwjgl.vulkan.VK10.VK_SUBPASS_CONTENTS_INLINE;
+import static org.lwjgl.vulkan.VK10.VK_SUBPASS_CONTENTS_SECONDARY_COMMAND_BUFFERS;
 import static org.lwjgl.vulkan.VK10.VK_SUBPASS_EXTERNAL;
 import static org.lwjgl.vulkan.VK10.VK_SUCCESS;
 import static org.lwjgl.vulkan.VK10.vkAllocateCommandBuffers;
@@ -91,7 +93,7 @@ import static org.lwjgl.vulkan.VK10.vkCmdBindPipeline;
 import static org.lwjgl.vulkan.VK10.vkCmdBindVertexBuffers;
 import static org.lwjgl.vulkan.VK10.vkCmdDrawIndexed;
 import static org.lwjgl.vulkan.VK10.vkCmdEndRenderPass;
-import static org.lwjgl.vulkan.VK10.vkCmdPushConstants;
+import static org.lwjgl.vulkan.VK10.vkCmdExecuteCommands;
 import static org.lwjgl.vulkan.VK10.vkCreateCommandPool;
 import static org.lwjgl.vulkan.VK10.vkCreateDevice;
 import static org.lwjgl.vulkan.VK10.vkCreateFence;
@@ -120,6 +122,7 @@ import static org.lwjgl.vulkan.VK10.vkUnmapMemory;
 import static org.lwjgl.vulkan.VK10.vkWaitForFences;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
@@ -131,7 +134,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -139,8 +144,10 @@ import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.experimental.Accessors;
 import lombok.extern.java.Log;
+import org.dragonskulle.core.IResourceReloadListener;
+import org.dragonskulle.core.ResourceArguments;
+import org.dragonskulle.core.ResourceManager;
 import org.dragonskulle.renderer.DrawCallState.DrawData;
-import org.dragonskulle.renderer.DrawCallState.NonInstancedDraw;
 import org.dragonskulle.renderer.components.Camera;
 import org.dragonskulle.renderer.components.Light;
 import org.dragonskulle.renderer.components.Renderable;
@@ -159,6 +166,7 @@ import org.lwjgl.vulkan.VkClearValue;
 import org.lwjgl.vulkan.VkCommandBuffer;
 import org.lwjgl.vulkan.VkCommandBufferAllocateInfo;
 import org.lwjgl.vulkan.VkCommandBufferBeginInfo;
+import org.lwjgl.vulkan.VkCommandBufferInheritanceInfo;
 import org.lwjgl.vulkan.VkCommandPoolCreateInfo;
 import org.lwjgl.vulkan.VkDebugUtilsMessengerCallbackDataEXT;
 import org.lwjgl.vulkan.VkDebugUtilsMessengerCreateInfoEXT;
@@ -188,18 +196,27 @@ import org.lwjgl.vulkan.VkSwapchainCreateInfoKHR;
  *
  * @author Aurimas Blažulionis
  *     <p>This renderer allows to draw {@code Renderable} objects on screen. Application needs to
- *     call {@link Renderer#onResize} when its window gets resized.
- *     <p>Use {@link Renderer#render} method to render a frame.
+ *     call {@link Renderer#onResize} when its window gets resized, and {@link
+ *     #updateFramebufferSize} on the window's thread every frame.
+ *     <p>Use {@link Renderer#render} method to render a frame. Frames can also be rendered from
+ *     {@link RenderSnapshot}s, on a thread other than the window's, see {@link RenderPipeline}.
  *     <p>This renderer was originally based on<a href="https://vulkan-tutorial.com/">Vulkan
  *     Tutorial</a>, and was later rewritten with a much more manageable design.
  */
 @Accessors(prefix = "m")
 @Getter(AccessLevel.PACKAGE)
 @Log
-public class Renderer implements NativeResource {
+public class Renderer implements NativeResource, IRenderBackend {
 
     /** Reference to the GLFW window. */
     private long mWindow;
+    /**
+     * Size of the window's framebuffer, width in the high, and height in the low 32 bits. It is
+     * queried on the window's thread, because GLFW does not allow doing it from others.
+     */
+    private volatile long mFramebufferSize;
+    /** Whether the swapchain has to be recreated before the next frame. */
+    private volatile boolean mSwapchainDirty = false;
 
     /** A vulkan context instance. */
     private VkInstance mInstance;
@@ -229,11 +246,17 @@ public class Renderer implements NativeResource {
     private TextureSetLayoutFactory mTextureSetLayoutFactory;
     /** Factory for individual image descriptor sets. */
     private TextureSetFactory mTextureSetFactory;
-    /**
-     * Constants that are passed to vertex shaders (camera view and perspective projection
-     * matrices).
-     */
-    private VertexConstants mVertexConstants = new VertexConstants();
+
+    /** Shaders that were reloaded, whose pipelines need rebuilding. */
+    private final ConcurrentLinkedQueue<ShaderBuf> mReloadedShaders = new ConcurrentLinkedQueue<>();
+    /** Replaced texture objects, whose GPU copies need freeing. */
+    private final ConcurrentLinkedQueue<Texture> mReplacedTextures = new ConcurrentLinkedQueue<>();
+    /** Listens for reloaded shaders and textures. */
+    private final IResourceReloadListener mReloadListener = this::onResourceReloaded;
+    /** Camera and lights shared by all objects, written once per frame. */
+    private final FrameUniforms mFrameUniforms = new FrameUniforms();
+    /** Descriptor sets of {@link #mFrameUniforms}, one per swapchain image. */
+    private VulkanShaderDescriptorPool mFrameUniformPool;
 
     /** Active surface format. */
     private VkSurfaceFormatKHR mSurfaceFormat;
@@ -259,6 +282,21 @@ public class Renderer implements NativeResource {
     @Getter(AccessLevel.PUBLIC)
     private int mInstanceBufferSize = 0;
 
+    /**
+     * Reserves ranges of the instance buffer for draw data, in bytes. The layout is shared by the
+     * instance buffers of all images. Images are only written while they are not in flight, thus
+     * freed ranges can be reused on the next frame.
+     */
+    private final RangeAllocator mInstanceAllocator = new RangeAllocator(4096, 0);
+
+    /** Bytes of instance data that were visible last frame. */
+    @Getter(AccessLevel.PUBLIC)
+    private int mInstanceDataSize = 0;
+
+    /** Bytes of instance data that had changed, and were written to the GPU last frame. */
+    @Getter(AccessLevel.PUBLIC)
+    private int mInstanceBytesWritten = 0;
+
     /** Handle to colour attachment (multisampled off-screen buffer). */
     private VulkanImage mColorImage;
     /** View to {@code mColorImage}. */
@@ -287,8 +325,8 @@ public class Renderer implements NativeResource {
      * the mesh buffer the next time the same image is used, and we can guarantee that all frames
      * that used the buffer have rendered.
      *
-     * <p>It would be possible to optimize the release of resources in cases where mesh buffer is
-     * updated every frame, but that would be a future improvement.
+     * <p>Mesh buffers are only replaced when they run out of space, other changes are done in
+     * place.
      */
     private Map<Integer, VulkanMeshBuffer> mDiscardedMeshBuffers = new HashMap<>();
 
@@ -300,26 +338,51 @@ public class Renderer implements NativeResource {
     private Map<Integer, List<DrawCallState>> mDiscardedDrawCallStates = new HashMap<>();
 
     /**
-     * Maps render orders to maps of draw call states. This allows us to change the order draws are
-     * done in and keep similar draws packed together in instantiatable draw calls.
+     * Maps shader sets to their draw call states. This keeps similar draws packed together in
+     * instantiatable draw calls.
      *
-     * <p>TreeMap is used to iterate through the maps in correct order.
+     * <p>The order draws are done in is decided by {@link #mDrawCommands}.
      *
      * <p>A future expansion here would be to add another layer of indirection for individual render
      * passes.
      */
-    private TreeMap<Integer, Map<ShaderSet, DrawCallState>> mDrawInstances = new TreeMap<>();
+    private final Map<ShaderSet, DrawCallState> mDrawInstances = new HashMap<>();
+    /** All draw call states of the current frame. */
+    private final ArrayList<DrawCallState> mFrameStates = new ArrayList<>();
+    /** Culls objects, and writes their instance data on worker threads. */
+    private final RenderBatcher mBatcher = new RenderBatcher();
 
     /**
-     * Maps a render order to a list of unsorted objects that are not supposed to be drawn in
-     * instanced fashion.
+     * Draw commands of the current frame, sorted by render order, and then either by pipeline and
+     * material, or back to front for presorted shader sets.
      */
-    private TreeMap<Integer, List<DrawCallState>> mToPresort = new TreeMap<>();
-    /** Maps a render order to list of non-instanced draw calls. */
-    private TreeMap<Integer, TreeMap<Float, List<NonInstancedDraw>>> mPreSorted = new TreeMap<>();
+    private final DrawCommandList mDrawCommands = new DrawCommandList();
+    /** Tasks recording secondary command buffers, kept around across frames. */
+    private final List<RecordTask> mRecordTasks = new ArrayList<>();
+    /** Exclusive end indices of the draw command ranges recorded by {@link #mRecordTasks}. */
+    private final int[] mRecordRangeEnds = new int[MAX_SECONDARY_BUFFERS];
+
+    /** Projection matrix of the current frame. */
+    private final Matrix4f mFrameProj = new Matrix4f();
+    /** View matrix of the current frame. */
+    private final Matrix4f mFrameView = new Matrix4f();
+    /** Combined projection and view matrix of the current frame. */
+    private final Matrix4f mCombinedMatrix = new Matrix4f();
+    /** Frustum intersection of the current frame. */
+    private final FrustumIntersection mFrustumIntersection = new FrustumIntersection();
+    /** Camera position of the current frame. */
+    private final Vector3f mCameraPosition = new Vector3f();
+    /** Temporary vector used for depth calculations. */
+    private final Vector3f mTmpDepthVec = new Vector3f();
 
     @Getter private RendererSettings mRendererSettings;
 
+    /** Number of secondary command buffers the last frame was recorded into. */
+    @Getter private int mSecondaryBufferCount = 0;
+
+    /** Number of errors the validation layers reported since startup. */
+    private static final AtomicInteger sValidationErrors = new AtomicInteger();
+
     /** List of validation layers to activate when debug mode is on. */
     private static final List<String> WANTED_VALIDATION_LAYERS_LIST =
             Arrays.asList("VK_LAYER_KHRONOS_validation");
@@ -334,6 +397,17 @@ public class Renderer implements NativeResource {
      * (Khronos Vulkan SDK if on windows)
      */
     static final boolean DEBUG_MODE = envBool("DEBUG_RENDERER", false);
+    /**
+     * Controls whether draw commands get recorded into secondary command buffers on the render
+     * worker threads. Set {@code RENDER_SECONDARY_COMMANDS} to {@code true} to enable it. Off by
+     * default, until it is checked clean against the validation layers, in which case all commands
+     * are recorded into the primary command buffer on the render thread.
+     */
+    static final boolean SECONDARY_COMMANDS = envBool("RENDER_SECONDARY_COMMANDS", false);
+    /** Smallest number of draw commands worth recording into a secondary command buffer. */
+    private static final int MIN_SECONDARY_COMMANDS = 64;
+    /** Largest number of secondary command buffers recorded per frame. */
+    private static final int MAX_SECONDARY_BUFFERS = 8;
     /**
      * Target GPU to use. When {@code TARGET_GPU} environment variale is set, the renderer will only
      * pick GPUs that contain the substring of the provided value in their name. If no such GPU
@@ -378,6 +452,16 @@ public class Renderer implements NativeResource {
         public int mInstanceBufferSize;
         /** The actual instance buffer (a buffer for per-instance shader data). */
         public VulkanBuffer mInstanceBuffer;
+        /**
+         * Copy of what {@link #mInstanceBuffer} holds, so that unchanged data is not rewritten.
+         * Reading it is much cheaper than reading the mapped GPU memory.
+         */
+        public ByteBuffer mInstanceShadow;
+        /** Whether the shadow has to be uploaded whole, because the buffer was recreated. */
+        public boolean mInstanceShadowStale;
+
+        /** Command buffers draw commands get recorded into on worker threads. */
+        public SecondaryCommandBuffers mSecondaryBuffers;
 
         /** A view to this image. */
         private long mImageView;
@@ -404,6 +488,10 @@ public class Renderer implements NativeResource {
             this.mImageIndex = imageIndex;
 
             this.mDevice = renderer.mDevice;
+            this.mSecondaryBuffers =
+                    new SecondaryCommandBuffers(
+                            renderer.mDevice,
+                            renderer.mPhysicalDevice.getIndices().mGraphicsFamily);
 
             mInstanceBufferSize = 0;
         }
@@ -449,6 +537,7 @@ public class Renderer implements NativeResource {
             if (mInstanceBuffer != null) {
                 mInstanceBuffer.free();
             }
+            mSecondaryBuffers.free();
             vkDestroyFramebuffer(mDevice, mFramebuffer, null);
             vkDestroyImageView(mDevice, mImageView, null);
         }
@@ -471,6 +560,7 @@ public class Renderer implements NativeResource {
         mRendererSettings = settings;
         mInstanceBufferSize = 4096;
         this.mWindow = window;
+        updateFramebufferSize();
         mInstance = createInstance(appName);
         if (DEBUG_MODE) {
             mDebugMessenger = createDebugLogger();
@@ -486,9 +576,10 @@ public class Renderer implements NativeResource {
                 new VulkanSampledTextureFactory(
                         mDevice, mPhysicalDevice, mCommandPool, mGraphicsQueue, mSamplerFactory);
         mTextureSetLayoutFactory = new TextureSetLayoutFactory(mDevice);
-        mCurrentMeshBuffer = new VulkanMeshBuffer(mDevice, mPhysicalDevice);
+        mCurrentMeshBuffer = new VulkanMeshBuffer(mDevice, mPhysicalDevice, FRAMES_IN_FLIGHT);
         createSwapchainObjects();
         mFrameContexts = createFrameContexts(FRAMES_IN_FLIGHT);
+        ResourceManager.addReloadListener(mReloadListener);
     }
 
     /**
@@ -522,7 +613,7 @@ public class Renderer implements NativeResource {
      * Set renderer graphics settings.
      *
      * <p>Depending on the settings changed, there may be a longer, or shorter time rendering
-     * freeze.
+     * freeze. The settings are applied when the next frame is rendered.
      *
      * @param newSettings new graphics settings to choose
      * @throws RendererException if an error occurs within the renderer. After this point, in this
@@ -536,7 +627,7 @@ public class Renderer implements NativeResource {
         }
 
         mRendererSettings = newSettings;
-        recreateSwapchain();
+        mSwapchainDirty = true;
     }
 
     /**
@@ -553,16 +644,76 @@ public class Renderer implements NativeResource {
      */
     public void render(Camera camera, List<Renderable> objects, List<Light> lights)
             throws RendererException {
-        if (mImageContexts == null) {
+        if (!beginFrame()) {
+            return;
+        }
+
+        camera.updateAspectRatio(mExtent.width(), mExtent.height());
+
+        mFrameProj.set(camera.getProj());
+        mFrameView.set(camera.getView());
+        camera.getGameObject().getTransform().getPosition(mCameraPosition);
+
+        Light.prepareLights(lights);
+
+        drawFrame(objects, lights);
+    }
+
+    /**
+     * Render a frame from a snapshot.
+     *
+     * <p>Only the contents of the snapshot are read, thus this can be called on another thread,
+     * while the objects the snapshot was taken from keep changing.
+     *
+     * @param snapshot snapshot to render.
+     * @throws RendererException if an error occurs in the renderer. In this case, renderer should
+     *     not be used.
+     */
+    @Override
+    public void render(RenderSnapshot snapshot) throws RendererException {
+        if (!beginFrame()) {
+            return;
+        }
+
+        mFrameProj.set(snapshot.getProj());
+        mFrameView.set(snapshot.getView());
+        mCameraPosition.set(snapshot.getCameraPosition());
+
+        // Lights of snapshots are already prepared
+        drawFrame(snapshot.getRenderables(), snapshot.getLights());
+    }
+
+    /**
+     * Get ready to draw a frame.
+     *
+     * <p>This recreates the swapchain if needed, and rebuilds reloaded resources.
+     *
+     * @return {@code true} if a frame can be drawn, {@code false} if the window is minimised.
+     * @throws RendererException if the swapchain fails to be recreated.
+     */
+    private boolean beginFrame() throws RendererException {
+        if (mImageContexts == null || mSwapchainDirty) {
+            mSwapchainDirty = false;
             recreateSwapchain();
         }
 
         if (mImageContexts == null) {
-            return;
+            return false;
         }
 
-        camera.updateAspectRatio(mExtent.width(), mExtent.height());
+        rebuildReloadedResources();
+
+        return true;
+    }
 
+    /**
+     * Draw a frame, using the camera matrices set up for it.
+     *
+     * @param objects list of objects that should be rendered.
+     * @param lights list of prepared lights to light the objects with.
+     * @throws RendererException if an error occurs in the renderer.
+     */
+    private void drawFrame(List<Renderable> objects, List<Light> lights) throws RendererException {
         try (MemoryStack stack = stackPush()) {
             FrameContext ctx = mFrameContexts[mFrameCounter];
             mFrameCounter = (mFrameCounter + 1) % FRAMES_IN_FLIGHT;
@@ -607,13 +758,13 @@ public class Renderer implements NativeResource {
                 discardedStates.clear();
             }
 
-            Matrix4f combined = new Matrix4f();
-
-            combined.set(camera.getProj());
-            combined.mul(camera.getView());
+            mCombinedMatrix.set(mFrameProj);
+            mCombinedMatrix.mul(mFrameView);
+            mFrustumIntersection.set(mCombinedMatrix);
 
-            updateInstanceBuffer(image, new FrustumIntersection(combined), objects, lights);
-            recordCommandBuffer(image, camera);
+            updateFrameUniforms(image, lights);
+            updateInstanceBuffer(image, mFrustumIntersection, objects, lights);
+            recordCommandBuffer(image);
 
             VkSubmitInfo submitInfo = VkSubmitInfo.callocStack(stack);
             submitInfo.sType(VK_STRUCTURE_TYPE_SUBMIT_INFO);
@@ -664,10 +815,44 @@ public class Renderer implements NativeResource {
      * Inform the renderer about window being resized.
      *
      * <p>This method needs to be called by the app every time the window gets resized, so that the
-     * renderer can change its render resolution.
+     * renderer can change its render resolution. The resolution changes when the next frame is
+     * rendered.
      */
     public void onResize() throws RendererException {
-        recreateSwapchain();
+        mSwapchainDirty = true;
+    }
+
+    /**
+     * Query the size of the window's framebuffer.
+     *
+     * <p>This must be called on the window's thread, and the renderer uses the last queried size
+     * whenever it recreates the swapchain.
+     */
+    public void updateFramebufferSize() {
+        try (MemoryStack stack = stackPush()) {
+            IntBuffer x = stack.ints(0);
+            IntBuffer y = stack.ints(0);
+            glfwGetFramebufferSize(mWindow, x, y);
+            mFramebufferSize = ((long) x.get(0) << 32) | (y.get(0) & 0xffffffffL);
+        }
+    }
+
+    /**
+     * Get the width of the window's framebuffer.
+     *
+     * @return width, as of the last {@link #updateFramebufferSize} call.
+     */
+    public int getFramebufferWidth() {
+        return (int) (mFramebufferSize >>> 32);
+    }
+
+    /**
+     * Get the height of the window's framebuffer.
+     *
+     * @return height, as of the last {@link #updateFramebufferSize} call.
+     */
+    public int getFramebufferHeight() {
+        return (int) mFramebufferSize;
     }
 
     /**
@@ -695,6 +880,8 @@ public class Renderer implements NativeResource {
      */
     @Override
     public void free() {
+        ResourceManager.removeReloadListener(mReloadListener);
+        mBatcher.close();
         vkDeviceWaitIdle(mDevice);
         for (FrameContext frame : mFrameContexts) {
             vkDestroySemaphore(mDevice, frame.mRenderFinishedSemaphore, null);
@@ -717,6 +904,68 @@ public class Renderer implements NativeResource {
 
     /// Internal code
 
+    /**
+     * Record a reloaded resource, so that its GPU state is rebuilt before the next frame.
+     *
+     * @param args arguments of the reloaded resource.
+     * @param previous the replaced object.
+     * @param current the reloaded object.
+     */
+    private void onResourceReloaded(ResourceArguments<?, ?> args, Object previous, Object current) {
+        if (current instanceof ShaderBuf) {
+            mReloadedShaders.add((ShaderBuf) current);
+        } else if (previous instanceof Texture) {
+            mReplacedTextures.add((Texture) previous);
+        }
+    }
+
+    /**
+     * Rebuild GPU state of reloaded resources.
+     *
+     * <p>Draw call states of shader sets using a reloaded shader are freed, so that their pipelines
+     * get recreated with the new shader. GPU copies of replaced textures are freed, along with all
+     * texture sets, which may reference them. Reloads are rare, thus the device is simply waited on
+     * to finish all work first.
+     */
+    private void rebuildReloadedResources() {
+        if (mReloadedShaders.isEmpty() && mReplacedTextures.isEmpty()) {
+            return;
+        }
+
+        vkDeviceWaitIdle(mDevice);
+
+        ShaderBuf shader;
+
+        while ((shader = mReloadedShaders.poll()) != null) {
+            final ShaderBuf reloaded = shader;
+            mDrawInstances
+                    .entrySet()
+                    .removeIf(
+                            (e) -> {
+                                if (!e.getKey().usesShader(reloaded)) {
+                                    return false;
+                                }
+                                e.getValue().free();
+                                return true;
+                            });
+        }
+
+        boolean texturesChanged = false;
+        Texture texture;
+
+        while ((texture = mReplacedTextures.poll()) != null) {
+            texturesChanged |= mTextureFactory.invalidate(texture);
+        }
+
+        if (texturesChanged) {
+            for (DrawCallState state : mDrawInstances.values()) {
+                state.clearDrawData();
+            }
+
+            mTextureSetFactory.free();
+        }
+    }
+
     /**
      * Recreate swapchain when it becomes invalid.
      *
@@ -731,14 +980,11 @@ public class Renderer implements NativeResource {
             cleanupSwapchain();
         }
 
-        try (MemoryStack stack = stackPush()) {
-            IntBuffer x = stack.ints(0);
-            IntBuffer y = stack.ints(0);
-            glfwGetFramebufferSize(mWindow, x, y);
-            log.finer(String.format("%d %d", x.get(0), y.get(0)));
-            if (x.get(0) == 0 || y.get(0) == 0) {
-                return;
-            }
+        int width = getFramebufferWidth();
+        int height = getFramebufferHeight();
+        log.finer(String.format("%d %d", width, height));
+        if (width == 0 || height == 0) {
+            return;
         }
 
         mPhysicalDevice.onRecreateSwapchain(mSurface);
@@ -763,12 +1009,12 @@ public class Renderer implements NativeResource {
 
         mImageContexts = null;
 
-        for (Map<ShaderSet, DrawCallState> stateMap : mDrawInstances.values()) {
-            for (DrawCallState state : stateMap.values()) {
-                state.free();
-            }
+        for (DrawCallState state : mDrawInstances.values()) {
+            state.free();
         }
         mDrawInstances.clear();
+        mFrameStates.clear();
+        mDrawCommands.clear();
 
         for (VulkanMeshBuffer meshBuffer : mDiscardedMeshBuffers.values()) {
             meshBuffer.free();
@@ -787,6 +1033,9 @@ public class Renderer implements NativeResource {
         mTextureSetFactory.free();
         mTextureSetFactory = null;
 
+        mFrameUniformPool.free();
+        mFrameUniformPool = null;
+
         vkDestroyRenderPass(mDevice, mRenderPass, null);
 
         vkDestroyImageView(mDevice, mDepthImageView, null);
@@ -818,7 +1067,10 @@ public class Renderer implements NativeResource {
         mRendererSettings.setMSAACount(
                 mPhysicalDevice.findSuitableMSAACount(mRendererSettings.getMSAACount()));
         mSurfaceFormat = mPhysicalDevice.getSwapchainSupport().chooseSurfaceFormat();
-        mExtent = mPhysicalDevice.getSwapchainSupport().chooseExtent(mWindow);
+        mExtent =
+                mPhysicalDevice
+                        .getSwapchainSupport()
+                        .chooseExtent(getFramebufferWidth(), getFramebufferHeight());
         mSwapchain = createSwapchain();
         mRenderPass = createRenderPass();
         mColorImage = createColorImage();
@@ -828,6 +1080,8 @@ public class Renderer implements NativeResource {
         int imageCount = getImageCount();
         mImageContexts = createImageContexts(imageCount);
         mTextureSetFactory = new TextureSetFactory(mDevice, mTextureSetLayoutFactory, imageCount);
+        mFrameUniformPool =
+                VulkanShaderDescriptorPool.createFramePool(mDevice, mPhysicalDevice, imageCount);
     }
 
     /// Instance setup
@@ -1026,6 +1280,7 @@ public class Renderer implements NativeResource {
 
         if (messageSeverity == VK_DEBUG_UTILS_MESSAGE_SEVERITY_ERROR_BIT_EXT) {
             level = Level.SEVERE;
+            sValidationErrors.incrementAndGet();
         } else if (messageSeverity == VK_DEBUG_UTILS_MESSAGE_SEVERITY_WARNING_BIT_EXT) {
             level = Level.WARNING;
         } else if (messageSeverity == VK_DEBUG_UTILS_MESSAGE_SEVERITY_INFO_BIT_EXT) {
@@ -1037,6 +1292,17 @@ public class Renderer implements NativeResource {
         return VK_FALSE;
     }
 
+    /**
+     * Get the number of errors the validation layers reported.
+     *
+     * <p>Errors are only reported with {@code DEBUG_RENDERER} set.
+     *
+     * @return number of validation errors since startup.
+     */
+    public static int getValidationErrorCount() {
+        return sValidationErrors.get();
+    }
+
     /**
      * Initializes debugMessenger to receive VK log messages.
      *
@@ -1691,108 +1957,88 @@ public class Renderer implements NativeResource {
             List<Light> lights)
             throws RendererException {
 
-        mToPresort.clear();
-
         mCurrentMeshBuffer.cleanupUnusedMeshes();
 
-        for (Map<ShaderSet, DrawCallState> stateMap : mDrawInstances.values()) {
-            for (DrawCallState state : stateMap.values()) {
-                state.startDrawData();
-            }
+        for (DrawCallState state : mDrawInstances.values()) {
+            state.startDrawData();
         }
 
-        for (Renderable renderable : renderables) {
-            if (renderable.getMesh() == null) {
-                continue;
-            }
-
-            Mesh m = renderable.getMesh();
+        // Culling runs in parallel, but adding objects may create texture sets, thus is serial
+        for (Map.Entry<ShaderSet, List<Renderable>> bucket :
+                mBatcher.cull(renderables, intersector, mCameraPosition, mFrameProj).entrySet()) {
+            ShaderSet shaderSet = bucket.getKey();
 
-            if (m.getVertices().length == 0 || m.getIndices().length == 0) {
-                continue;
+            DrawCallState state = mDrawInstances.get(shaderSet);
+            if (state == null) {
+                state = new DrawCallState(this, mImageContexts.length, shaderSet);
+                state.startDrawData();
+                mDrawInstances.put(shaderSet, state);
             }
 
-            if (!renderable.frustumCull(intersector)) {
-                continue;
+            for (Renderable renderable : bucket.getValue()) {
+                state.addObject(renderable);
             }
+        }
+
+        List<DrawCallState> discardedDrawCallStates =
+                mDiscardedDrawCallStates.computeIfAbsent(ctx.mImageIndex, k -> new ArrayList<>());
 
-            ShaderSet shaderSet = renderable.getMaterial().getShaderSet();
-            Integer renderOrder = shaderSet.mRenderOrder;
+        mDrawInstances.values().removeIf(state -> state.shouldCleanup(discardedDrawCallStates));
 
-            Map<ShaderSet, DrawCallState> stateMap = mDrawInstances.get(renderOrder);
+        mInstanceAllocator.nextFrame();
 
-            if (stateMap == null) {
-                stateMap = new HashMap<>();
-                mDrawInstances.put(renderOrder, stateMap);
-            }
+        mFrameStates.clear();
+        mInstanceDataSize = 0;
+        mInstanceBytesWritten = 0;
 
-            DrawCallState state = stateMap.get(shaderSet);
-            if (state == null) {
-                state = new DrawCallState(this, mImageContexts.length, shaderSet);
-                state.startDrawData();
-                stateMap.put(shaderSet, state);
+        for (DrawCallState state : mDrawInstances.values()) {
+            mFrameStates.add(state);
+            state.updateMeshBuffer(mCurrentMeshBuffer);
+
+            // Draw data keep their ranges across frames, the buffer only grows when they do not fit
+            while (!state.reserveInstanceRanges()) {
+                mInstanceAllocator.grow(mInstanceAllocator.getCapacity() * 2);
             }
-            state.addObject(renderable);
-        }
 
-        List<DrawCallState> discardedDrawCallStates =
-                mDiscardedDrawCallStates.computeIfAbsent(ctx.mImageIndex, k -> new ArrayList<>());
+            int stride = state.getShaderSet().getVertexBindingDescription().mSize;
 
-        mDrawInstances
-                .entrySet()
-                .removeIf(
-                        e -> {
-                            e.getValue()
-                                    .entrySet()
-                                    .removeIf(
-                                            e2 ->
-                                                    e2.getValue()
-                                                            .shouldCleanup(
-                                                                    discardedDrawCallStates));
-                            return e.getValue().isEmpty();
-                        });
-
-        int instanceBufferSize = 0;
-
-        for (Map<ShaderSet, DrawCallState> stateMap : mDrawInstances.values()) {
-            for (DrawCallState state : stateMap.values()) {
-                state.updateMeshBuffer(mCurrentMeshBuffer);
-                instanceBufferSize = state.setInstanceBufferOffset(instanceBufferSize);
-
-                ShaderSet shaderSet = state.getShaderSet();
-
-                if (shaderSet.isPreSort()) {
-                    Integer renderOrder = shaderSet.mRenderOrder;
-
-                    List<DrawCallState> sortState = mToPresort.get(renderOrder);
-                    if (sortState == null) {
-                        sortState = new ArrayList<>();
-                        mToPresort.put(renderOrder, sortState);
-                    }
-                    sortState.add(state);
-                }
+            for (DrawData drawData : state.getDrawData()) {
+                mInstanceDataSize += stride * drawData.mInstanceCount;
             }
         }
 
+        int instanceBufferSize = mInstanceAllocator.getCapacity();
+
         if (instanceBufferSize > ctx.mInstanceBufferSize) {
-            int cursize = mInstanceBufferSize > 0 ? mInstanceBufferSize : 4096;
-            while (instanceBufferSize > cursize) {
-                cursize *= 2;
-            }
             if (ctx.mInstanceBuffer != null) {
                 ctx.mInstanceBuffer.free();
             }
-            ctx.mInstanceBuffer = createInstanceBuffer(cursize);
-            ctx.mInstanceBufferSize = cursize;
-            mInstanceBufferSize = cursize;
+            ctx.mInstanceBuffer = createInstanceBuffer(instanceBufferSize);
+            ctx.mInstanceBufferSize = instanceBufferSize;
+            mInstanceBufferSize = instanceBufferSize;
+
+            // Data of unchanged objects stays valid, as long as the new buffer gets all of it
+            ByteBuffer shadow =
+                    ByteBuffer.allocate(instanceBufferSize).order(ByteOrder.nativeOrder());
+            if (ctx.mInstanceShadow != null) {
+                shadow.put((ByteBuffer) ctx.mInstanceShadow.clear()).clear();
+            }
+            ctx.mInstanceShadow = shadow;
+            ctx.mInstanceShadowStale = true;
         }
 
         if (mCurrentMeshBuffer.isDirty()) {
-            mDiscardedMeshBuffers.put(ctx.mImageIndex, mCurrentMeshBuffer);
-            mCurrentMeshBuffer = mCurrentMeshBuffer.commitChanges(mGraphicsQueue, mCommandPool);
+            VulkanMeshBuffer committed =
+                    mCurrentMeshBuffer.commitChanges(mGraphicsQueue, mCommandPool);
+
+            // Buffers only get replaced when they grow, and the old ones may still be in use
+            if (committed != mCurrentMeshBuffer) {
+                mDiscardedMeshBuffers.put(ctx.mImageIndex, mCurrentMeshBuffer);
+                mCurrentMeshBuffer = committed;
+            }
         }
 
-        if (instanceBufferSize <= 0) {
+        if (mFrameStates.isEmpty()) {
             return;
         }
 
@@ -1805,23 +2051,125 @@ public class Renderer implements NativeResource {
             if (res == VK_SUCCESS) {
                 ByteBuffer byteBuffer = pData.getByteBuffer(instanceBufferSize);
 
-                for (Map<ShaderSet, DrawCallState> stateMap : mDrawInstances.values()) {
-                    for (DrawCallState state : stateMap.values()) {
-                        state.updateInstanceBuffer(byteBuffer, lights);
-                        state.endDrawData(ctx.mImageIndex);
-                    }
+                if (ctx.mInstanceShadowStale) {
+                    byteBuffer.put((ByteBuffer) ctx.mInstanceShadow.clear()).clear();
+                    ctx.mInstanceShadowStale = false;
+                    mInstanceBytesWritten += instanceBufferSize;
+                }
+
+                // Every draw data writes its own range of the buffer, so they can run in parallel
+                mInstanceBytesWritten +=
+                        mBatcher.writeInstanceData(
+                                mFrameStates,
+                                byteBuffer,
+                                ctx.mInstanceShadow,
+                                lights,
+                                ctx.mImageIndex);
+
+                for (DrawCallState state : mFrameStates) {
+                    state.endDrawData(ctx.mImageIndex);
                 }
 
                 vkUnmapMemory(mDevice, ctx.mInstanceBuffer.mMemory);
             } else {
-                for (Map<ShaderSet, DrawCallState> stateMap : mDrawInstances.values()) {
-                    for (DrawCallState state : stateMap.values()) {
-                        state.slowUpdateInstanceBuffer(pData, ctx.mInstanceBuffer.mMemory, lights);
-                        state.endDrawData(ctx.mImageIndex);
+                for (DrawCallState state : mFrameStates) {
+                    state.slowUpdateInstanceBuffer(
+                            pData,
+                            ctx.mInstanceBuffer.mMemory,
+                            ctx.mInstanceShadow,
+                            lights,
+                            ctx.mImageIndex);
+                    state.endDrawData(ctx.mImageIndex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the frame uniforms of an image.
+     *
+     * <p>The camera and lights are written once here, instead of into every object's instance data.
+     * Lights must already be prepared with {@link Light#prepareLights}.
+     *
+     * @param ctx the image context to write the uniforms for.
+     * @param lights the list of lights that exist in the world.
+     * @throws RendererException if the uniform buffer fails to map.
+     */
+    private void updateFrameUniforms(ImageContext ctx, List<Light> lights)
+            throws RendererException {
+        mFrameUniforms.mView = mFrameView;
+        mFrameUniforms.mProj = mFrameProj;
+        mFrameUniforms.mCamPosition = mCameraPosition;
+        mFrameUniforms.mLights = lights;
+
+        VulkanBuffer buffer = mFrameUniformPool.getUniformBuffer(0);
+
+        try (MemoryStack stack = stackPush()) {
+            PointerBuffer pData = stack.pointers(0);
+            int res =
+                    vkMapMemory(
+                            mDevice,
+                            buffer.mMemory,
+                            FrameUniforms.STRIDE * ctx.mImageIndex,
+                            FrameUniforms.SIZEOF,
+                            0,
+                            pData);
+
+            if (res != VK_SUCCESS) {
+                throw new RendererException(
+                        String.format("Failed to map frame uniforms! Ret: %x", -res));
+            }
+
+            mFrameUniforms.copyTo(pData.getByteBuffer(FrameUniforms.SIZEOF), 0);
+
+            vkUnmapMemory(mDevice, buffer.mMemory);
+        }
+    }
+
+    /**
+     * Build the sorted list of draw commands of the current frame.
+     *
+     * <p>Regular shader sets get one instanced command per run of a draw data's visible instances,
+     * while objects of presorted shader sets get a command each, keyed by their distance from the
+     * camera.
+     *
+     * @param camPosition position of the camera.
+     */
+    private void buildDrawCommands(Vector3f camPosition) {
+        mDrawCommands.clear();
+
+        for (int stateIndex = 0; stateIndex < mFrameStates.size(); stateIndex++) {
+            DrawCallState state = mFrameStates.get(stateIndex);
+            ShaderSet shaderSet = state.getShaderSet();
+            int renderOrder = shaderSet.getRenderOrder();
+            int dataIndex = 0;
+
+            for (DrawData drawData : state.getDrawData()) {
+                List<Renderable> objects = drawData.mObjects;
+
+                if (objects.isEmpty()) {
+                    continue;
+                }
+
+                if (!shaderSet.isPreSort()) {
+                    // Culled objects keep their slots, thus visible ones may be split into runs
+                    int runCount = drawData.getRunCount();
+                    for (int run = 0; run < runCount; run++) {
+                        mDrawCommands.addInstanced(
+                                renderOrder, stateIndex, dataIndex, state, drawData, run);
                     }
+                    dataIndex++;
+                    continue;
+                }
+
+                for (int objID = 0; objID < objects.size(); objID++) {
+                    float dist = objects.get(objID).getDepth(camPosition, mTmpDepthVec);
+                    mDrawCommands.addSorted(renderOrder, dist, state, drawData, objID);
                 }
             }
         }
+
+        mDrawCommands.sort();
     }
 
     /**
@@ -1830,41 +2178,14 @@ public class Renderer implements NativeResource {
      * <p>This method will record the actual draw commands that will be executed bu the GPU. Those
      * draw commands will make things go on screen.
      *
+     * <p>With render worker threads available, and enough draw commands, the commands are split
+     * into ranges recorded into secondary command buffers in parallel, which the primary buffer
+     * then executes in order.
+     *
      * @param ctx the image context to record the command buffer for
-     * @param camera the camera to render from
-     */
-    void recordCommandBuffer(ImageContext ctx, Camera camera) throws RendererException {
-
-        mInstancedCalls = 0;
-        mSlowCalls = 0;
-
-        mVertexConstants.mProj = camera.getProj();
-        mVertexConstants.mView = camera.getView();
-
-        mPreSorted.clear();
-        Vector3f camPosition = camera.getGameObject().getTransform().getPosition();
-        Vector3f tmpVec = new Vector3f();
-
-        // Presort objects that need to be rendered in a sorted manner
-        for (Integer key : mToPresort.keySet()) {
-            List<DrawCallState> states = mToPresort.get(key);
-            TreeMap<Float, List<NonInstancedDraw>> output = new TreeMap<>();
-            for (DrawCallState state : states) {
-                for (DrawData drawData : state.getDrawData()) {
-                    int objID = 0;
-                    for (Renderable obj : drawData.mObjects) {
-                        Float dist = obj.getDepth(camPosition, tmpVec);
-                        List<NonInstancedDraw> equalList = output.get(dist);
-                        if (equalList == null) {
-                            equalList = new ArrayList<>();
-                            output.put(dist, equalList);
-                        }
-                        equalList.add(new NonInstancedDraw(state, drawData, objID++));
-                    }
-                }
-            }
-            mPreSorted.put(key, output);
-        }
+     */
+    void recordCommandBuffer(ImageContext ctx) throws RendererException {
+        buildDrawCommands(mCameraPosition);
 
         try (MemoryStack stack = stackPush()) {
             // Record the command buffers
@@ -1896,142 +2217,43 @@ public class Renderer implements NativeResource {
 
             renderPassInfo.framebuffer(ctx.mFramebuffer);
 
-            // This is the beginning :)
-            vkCmdBeginRenderPass(ctx.mCommandBuffer, renderPassInfo, VK_SUBPASS_CONTENTS_INLINE);
-
-            ByteBuffer pConstants = stack.calloc(VertexConstants.SIZEOF);
-            mVertexConstants.copyTo(pConstants);
+            int commandCount = mDrawCommands.getSize();
+            int rangeCount = 0;
 
-            LongBuffer vertexBuffers =
-                    mDrawInstances.size() == 0
-                            ? null
-                            : stack.longs(
-                                    mCurrentMeshBuffer.getVertexBuffer(),
-                                    ctx.mInstanceBuffer.mBuffer);
+            if (SECONDARY_COMMANDS && mBatcher.isParallel()) {
+                rangeCount =
+                        mDrawCommands.splitRanges(
+                                MIN_SECONDARY_COMMANDS, MAX_SECONDARY_BUFFERS, mRecordRangeEnds);
+            }
 
-            // Render regular objects in an instanced manner
-            for (Map<ShaderSet, DrawCallState> stateMap : mDrawInstances.values()) {
-                for (DrawCallState callState : stateMap.values()) {
+            // A single range is cheaper to record inline, than through a secondary buffer
+            boolean secondary = rangeCount > 1;
 
-                    Collection<DrawData> drawDataCollection = callState.getDrawData();
+            // This is the beginning :)
+            vkCmdBeginRenderPass(
+                    ctx.mCommandBuffer,
+                    renderPassInfo,
+                    secondary
+                            ? VK_SUBPASS_CONTENTS_SECONDARY_COMMAND_BUFFERS
+                            : VK_SUBPASS_CONTENTS_INLINE);
 
-                    if (drawDataCollection.isEmpty() || callState.getShaderSet().isPreSort()) {
-                        continue;
-                    }
+            mSecondaryBufferCount = secondary ? rangeCount : 0;
 
-                    VulkanPipeline pipeline = callState.getPipeline();
+            if (secondary) {
+                mInstancedCalls = recordSecondary(ctx, rangeCount);
 
-                    vkCmdBindPipeline(
-                            ctx.mCommandBuffer,
-                            VK_PIPELINE_BIND_POINT_GRAPHICS,
-                            pipeline.mPipeline);
-
-                    vkCmdPushConstants(
-                            ctx.mCommandBuffer,
-                            pipeline.mLayout,
-                            VK_SHADER_STAGE_VERTEX_BIT,
-                            0,
-                            pConstants);
-
-                    for (DrawCallState.DrawData drawData : drawDataCollection) {
-                        try (MemoryStack innerStack = stackPush()) {
-                            VulkanMeshBuffer.MeshDescriptor meshDescriptor =
-                                    drawData.getMeshDescriptor();
-
-                            LongBuffer offsets =
-                                    innerStack.longs(
-                                            meshDescriptor.getVertexOffset(),
-                                            drawData.getInstanceBufferOffset());
-                            vkCmdBindVertexBuffers(ctx.mCommandBuffer, 0, vertexBuffers, offsets);
-
-                            vkCmdBindIndexBuffer(
-                                    ctx.mCommandBuffer,
-                                    mCurrentMeshBuffer.getIndexBuffer(),
-                                    meshDescriptor.getIndexOffset(),
-                                    VK_INDEX_TYPE_UINT32);
-
-                            long[] descriptorSets = drawData.getDescriptorSets();
-
-                            if (descriptorSets != null && descriptorSets.length > 0) {
-                                LongBuffer pDescriptorSets = innerStack.longs(descriptorSets);
-
-                                vkCmdBindDescriptorSets(
-                                        ctx.mCommandBuffer,
-                                        VK_PIPELINE_BIND_POINT_GRAPHICS,
-                                        pipeline.mLayout,
-                                        0,
-                                        pDescriptorSets,
-                                        null);
-                            }
-
-                            mInstancedCalls++;
-                            vkCmdDrawIndexed(
-                                    ctx.mCommandBuffer,
-                                    meshDescriptor.getIndexCount(),
-                                    drawData.getObjects().size(),
-                                    0,
-                                    0,
-                                    0);
-                        }
-                    }
+                PointerBuffer pSecondaryBuffers = stack.mallocPointer(rangeCount);
+                for (int i = 0; i < rangeCount; i++) {
+                    pSecondaryBuffers.put(i, ctx.mSecondaryBuffers.get(i));
                 }
-            }
 
-            // Render sorted objects one by one. Sadly, we can not batch them.
-            for (TreeMap<Float, List<NonInstancedDraw>> renderOrderGroup : mPreSorted.values()) {
-                for (List<NonInstancedDraw> objects : renderOrderGroup.descendingMap().values()) {
-                    for (NonInstancedDraw object : objects) {
-                        try (MemoryStack innerStack = stackPush()) {
-
-                            VulkanPipeline pipeline = object.getState().getPipeline();
-                            VulkanMeshBuffer.MeshDescriptor meshDescriptor =
-                                    object.getData().getMeshDescriptor();
-
-                            vkCmdBindPipeline(
-                                    ctx.mCommandBuffer,
-                                    VK_PIPELINE_BIND_POINT_GRAPHICS,
-                                    pipeline.mPipeline);
-
-                            vkCmdPushConstants(
-                                    ctx.mCommandBuffer,
-                                    pipeline.mLayout,
-                                    VK_SHADER_STAGE_VERTEX_BIT,
-                                    0,
-                                    pConstants);
-
-                            LongBuffer offsets =
-                                    innerStack.longs(
-                                            meshDescriptor.getVertexOffset(),
-                                            object.getInstanceBufferOffset());
-                            vkCmdBindVertexBuffers(ctx.mCommandBuffer, 0, vertexBuffers, offsets);
-                            vkCmdBindIndexBuffer(
-                                    ctx.mCommandBuffer,
-                                    mCurrentMeshBuffer.getIndexBuffer(),
-                                    meshDescriptor.getIndexOffset(),
-                                    VK_INDEX_TYPE_UINT32);
-
-                            long[] descriptorSets = object.getData().getDescriptorSets();
-
-                            if (descriptorSets != null && descriptorSets.length > 0) {
-                                LongBuffer pDescriptorSets = innerStack.longs(descriptorSets);
-
-                                vkCmdBindDescriptorSets(
-                                        ctx.mCommandBuffer,
-                                        VK_PIPELINE_BIND_POINT_GRAPHICS,
-                                        pipeline.mLayout,
-                                        0,
-                                        pDescriptorSets,
-                                        null);
-                            }
-
-                            mSlowCalls++;
-                            vkCmdDrawIndexed(
-                                    ctx.mCommandBuffer, meshDescriptor.getIndexCount(), 1, 0, 0, 0);
-                        }
-                    }
-                }
+                vkCmdExecuteCommands(ctx.mCommandBuffer, pSecondaryBuffers);
+            } else {
+                mInstancedCalls = recordDraws(ctx.mCommandBuffer, ctx, 0, commandCount);
             }
 
+            mSlowCalls = commandCount - mInstancedCalls;
+
             vkCmdEndRenderPass(ctx.mCommandBuffer);
 
             // And this is the end
@@ -2045,6 +2267,218 @@ public class Renderer implements NativeResource {
         }
     }
 
+    /**
+     * Record draw commands into secondary command buffers, on the render worker threads.
+     *
+     * <p>Every range from {@link #mRecordRangeEnds} is recorded into a secondary command buffer of
+     * the same index.
+     *
+     * @param ctx the image context to record the command buffers for.
+     * @param rangeCount number of draw command ranges.
+     * @return number of instanced draw calls recorded.
+     * @throws RendererException if any of the buffers fail to be recorded.
+     */
+    private int recordSecondary(ImageContext ctx, int rangeCount) throws RendererException {
+        ctx.mSecondaryBuffers.ensureCount(rangeCount);
+
+        while (mRecordTasks.size() < rangeCount) {
+            mRecordTasks.add(new RecordTask());
+        }
+
+        int start = 0;
+
+        for (int i = 0; i < rangeCount; i++) {
+            RecordTask task = mRecordTasks.get(i);
+            task.reinitialize();
+            task.mCtx = ctx;
+            task.mBufferIndex = i;
+            task.mStart = start;
+            task.mEnd = mRecordRangeEnds[i];
+            start = task.mEnd;
+        }
+
+        mBatcher.run(mRecordTasks, rangeCount);
+
+        int instancedCalls = 0;
+        RendererException error = null;
+
+        for (int i = 0; i < rangeCount; i++) {
+            RecordTask task = mRecordTasks.get(i);
+            instancedCalls += task.mInstancedCalls;
+
+            if (error == null) {
+                error = task.mError;
+            }
+
+            task.mCtx = null;
+            task.mError = null;
+        }
+
+        if (error != null) {
+            throw error;
+        }
+
+        return instancedCalls;
+    }
+
+    /**
+     * Record a range of the sorted draw commands.
+     *
+     * <p>This only reads renderer state, thus different ranges can be recorded on different threads
+     * at the same time, as long as each of them records into its own command buffer.
+     *
+     * @param commandBuffer command buffer to record into, inside the render pass.
+     * @param ctx the image context the commands are recorded for.
+     * @param start index of the first command to record.
+     * @param end index after the last command to record.
+     * @return number of instanced draw calls recorded.
+     */
+    private int recordDraws(VkCommandBuffer commandBuffer, ImageContext ctx, int start, int end) {
+        if (start >= end) {
+            return 0;
+        }
+
+        int instancedCalls = 0;
+
+        try (MemoryStack stack = stackPush()) {
+            LongBuffer vertexBuffers =
+                    stack.longs(mCurrentMeshBuffer.getVertexBuffer(), ctx.mInstanceBuffer.mBuffer);
+
+            DrawCallState boundState = null;
+
+            // Walk the sorted commands, only rebinding the pipeline when it changes
+            for (int i = start; i < end; i++) {
+                DrawCallState callState = mDrawCommands.getState(i);
+                DrawCallState.DrawData drawData = mDrawCommands.getData(i);
+                VulkanPipeline pipeline = callState.getPipeline();
+
+                if (callState != boundState) {
+                    boundState = callState;
+
+                    vkCmdBindPipeline(
+                            commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, pipeline.mPipeline);
+                }
+
+                try (MemoryStack innerStack = stackPush()) {
+                    VulkanMeshBuffer.MeshDescriptor meshDescriptor = drawData.getMeshDescriptor();
+
+                    LongBuffer offsets =
+                            innerStack.longs(
+                                    meshDescriptor.getVertexOffset(),
+                                    mDrawCommands.getInstanceBufferOffset(i));
+                    vkCmdBindVertexBuffers(commandBuffer, 0, vertexBuffers, offsets);
+
+                    vkCmdBindIndexBuffer(
+                            commandBuffer,
+                            mCurrentMeshBuffer.getIndexBuffer(),
+                            meshDescriptor.getIndexOffset(),
+                            VK_INDEX_TYPE_UINT32);
+
+                    long[] descriptorSets = drawData.getDescriptorSets();
+
+                    if (descriptorSets != null && descriptorSets.length > 0) {
+                        LongBuffer pDescriptorSets = innerStack.longs(descriptorSets);
+
+                        vkCmdBindDescriptorSets(
+                                commandBuffer,
+                                VK_PIPELINE_BIND_POINT_GRAPHICS,
+                                pipeline.mLayout,
+                                0,
+                                pDescriptorSets,
+                                null);
+                    }
+
+                    int instanceCount;
+
+                    if (mDrawCommands.isInstanced(i)) {
+                        instanceCount = drawData.getRunLength(mDrawCommands.getObjectId(i));
+                        instancedCalls++;
+                    } else {
+                        // Sorted objects are drawn one by one. Sadly, we can not batch them.
+                        instanceCount =
+                                drawData.getObjects()
+                                        .get(mDrawCommands.getObjectId(i))
+                                        .getInstanceCount();
+                    }
+
+                    vkCmdDrawIndexed(
+                            commandBuffer, meshDescriptor.getIndexCount(), instanceCount, 0, 0, 0);
+                }
+            }
+        }
+
+        return instancedCalls;
+    }
+
+    /**
+     * Records a range of draw commands into a secondary command buffer.
+     *
+     * <p>Secondary buffers inherit nothing but the render pass, thus every range binds its own
+     * pipeline, and pushes its own constants.
+     */
+    private class RecordTask extends RecursiveAction {
+        /** The image context to record for. */
+        private ImageContext mCtx;
+        /** Index of the secondary command buffer to record into. */
+        private int mBufferIndex;
+        /** Index of the first command to record. */
+        private int mStart;
+        /** Index after the last command to record. */
+        private int mEnd;
+
+        /** Number of instanced draw calls recorded. */
+        private int mInstancedCalls;
+        /** Error that stopped the recording, {@code null} if there was none. */
+        private RendererException mError;
+
+        @Override
+        protected void compute() {
+            mInstancedCalls = 0;
+            mError = null;
+
+            VkCommandBuffer commandBuffer = mCtx.mSecondaryBuffers.reset(mBufferIndex);
+
+            try (MemoryStack stack = stackPush()) {
+                VkCommandBufferInheritanceInfo inheritanceInfo =
+                        VkCommandBufferInheritanceInfo.callocStack(stack);
+                inheritanceInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_INHERITANCE_INFO);
+                inheritanceInfo.renderPass(mRenderPass);
+                inheritanceInfo.subpass(0);
+                inheritanceInfo.framebuffer(mCtx.mFramebuffer);
+
+                VkCommandBufferBeginInfo beginInfo = VkCommandBufferBeginInfo.callocStack(stack);
+                beginInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_BEGIN_INFO);
+                beginInfo.flags(
+                        VK_COMMAND_BUFFER_USAGE_RENDER_PASS_CONTINUE_BIT
+                                | VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT);
+                beginInfo.pInheritanceInfo(inheritanceInfo);
+
+                int res = vkBeginCommandBuffer(commandBuffer, beginInfo);
+
+                if (res != VK_SUCCESS) {
+                    mError =
+                            new RendererException(
+                                    String.format(
+                                            "Failed to begin recording secondary buffer! Err: %x",
+                                            res));
+                    return;
+                }
+
+                mInstancedCalls = recordDraws(commandBuffer, mCtx, mStart, mEnd);
+
+                res = vkEndCommandBuffer(commandBuffer);
+
+                if (res != VK_SUCCESS) {
+                    mError =
+                            new RendererException(
+                                    String.format(
+                                            "Failed to end recording secondary buffer! Err: %x",
+                                            res));
+                }
+            }
+        }
+    }
+
     /// Setup texture
 
     /// Cleanup code
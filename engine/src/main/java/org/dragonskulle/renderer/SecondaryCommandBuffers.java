@@ -0,0 +1,148 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.VK_COMMAND_BUFFER_LEVEL_SECONDARY;
+import static org.lwjgl.vulkan.VK10.VK_COMMAND_POOL_CREATE_TRANSIENT_BIT;
+import static org.lwjgl.vulkan.VK10.VK_STRUCTURE_TYPE_COMMAND_BUFFER_ALLOCATE_INFO;
+import static org.lwjgl.vulkan.VK10.VK_STRUCTURE_TYPE_COMMAND_POOL_CREATE_INFO;
+import static org.lwjgl.vulkan.VK10.VK_SUCCESS;
+import static org.lwjgl.vulkan.VK10.vkAllocateCommandBuffers;
+import static org.lwjgl.vulkan.VK10.vkCreateCommandPool;
+import static org.lwjgl.vulkan.VK10.vkDestroyCommandPool;
+import static org.lwjgl.vulkan.VK10.vkResetCommandPool;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.NativeResource;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import org.lwjgl.vulkan.VkCommandBufferAllocateInfo;
+import org.lwjgl.vulkan.VkCommandPoolCreateInfo;
+import org.lwjgl.vulkan.VkDevice;
+
+/**
+ * Secondary command buffers of a single swapchain image.
+ *
+ * @author DragonSkulle
+ *     <p>Command pools may only be used by one thread at a time, thus every buffer gets a pool of
+ *     its own, and different buffers can be recorded on different threads without any locking.
+ *     Pools are reset as a whole before every recording, which is cheaper than resetting the
+ *     buffers one by one.
+ *     <p>Pools are created on demand, and kept until the swapchain is recreated.
+ */
+class SecondaryCommandBuffers implements NativeResource {
+    /** Logical device the pools are on. */
+    private final VkDevice mDevice;
+    /** Queue family the buffers will be executed on. */
+    private final int mQueueFamily;
+
+    /** Command pools, one per buffer. */
+    private long[] mPools = new long[0];
+    /** The command buffers. */
+    private VkCommandBuffer[] mBuffers = new VkCommandBuffer[0];
+
+    /**
+     * Create an empty set of secondary command buffers.
+     *
+     * @param device logical device to create pools on.
+     * @param queueFamily queue family the buffers will be executed on.
+     */
+    SecondaryCommandBuffers(VkDevice device, int queueFamily) {
+        mDevice = device;
+        mQueueFamily = queueFamily;
+    }
+
+    /**
+     * Make sure there are at least {@code count} buffers.
+     *
+     * <p>This must be called from a single thread, before any of the buffers get recorded.
+     *
+     * @param count number of buffers needed.
+     * @throws RendererException if pool or buffer creation fails.
+     */
+    void ensureCount(int count) throws RendererException {
+        int oldCount = mBuffers.length;
+
+        if (count <= oldCount) {
+            return;
+        }
+
+        mPools = Arrays.copyOf(mPools, count);
+        mBuffers = Arrays.copyOf(mBuffers, count);
+
+        try (MemoryStack stack = stackPush()) {
+            VkCommandPoolCreateInfo poolInfo = VkCommandPoolCreateInfo.callocStack(stack);
+            poolInfo.sType(VK_STRUCTURE_TYPE_COMMAND_POOL_CREATE_INFO);
+            poolInfo.queueFamilyIndex(mQueueFamily);
+            poolInfo.flags(VK_COMMAND_POOL_CREATE_TRANSIENT_BIT);
+
+            VkCommandBufferAllocateInfo allocInfo = VkCommandBufferAllocateInfo.callocStack(stack);
+            allocInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_ALLOCATE_INFO);
+            allocInfo.level(VK_COMMAND_BUFFER_LEVEL_SECONDARY);
+            allocInfo.commandBufferCount(1);
+
+            LongBuffer pPool = stack.longs(0);
+            PointerBuffer pBuffer = stack.mallocPointer(1);
+
+            for (int i = oldCount; i < count; i++) {
+                int result = vkCreateCommandPool(mDevice, poolInfo, null, pPool);
+
+                if (result != VK_SUCCESS) {
+                    throw new RendererException(
+                            String.format("Failed to create command pool! Err: %x", -result));
+                }
+
+                mPools[i] = pPool.get(0);
+
+                // Freeing the pool frees its buffers too, thus they need no separate cleanup
+                allocInfo.commandPool(mPools[i]);
+
+                result = vkAllocateCommandBuffers(mDevice, allocInfo, pBuffer);
+
+                if (result != VK_SUCCESS) {
+                    throw new RendererException(
+                            String.format("Failed to create command buffers! Err: %x", -result));
+                }
+
+                mBuffers[i] = new VkCommandBuffer(pBuffer.get(0), mDevice);
+            }
+        }
+    }
+
+    /**
+     * Reset a buffer, so that it can be recorded again.
+     *
+     * <p>Different buffers can be reset from different threads at the same time.
+     *
+     * @param index index of the buffer, less than the count passed to {@link #ensureCount}.
+     * @return the buffer, ready to be recorded.
+     */
+    VkCommandBuffer reset(int index) {
+        vkResetCommandPool(mDevice, mPools[index], 0);
+        return mBuffers[index];
+    }
+
+    /**
+     * Get a buffer.
+     *
+     * @param index index of the buffer.
+     * @return the buffer.
+     */
+    VkCommandBuffer get(int index) {
+        return mBuffers[index];
+    }
+
+    /** Free the underlying resources. */
+    @Override
+    public void free() {
+        for (long pool : mPools) {
+            if (pool != 0) {
+                vkDestroyCommandPool(mDevice, pool, null);
+            }
+        }
+        mPools = new long[0];
+        mBuffers = new VkCommandBuffer[0];
+    }
+}
@@ -2,6 +2,8 @@
 package org.dragonskulle.renderer;
 
 import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memFree;
 import static org.lwjgl.util.shaderc.Shaderc.shaderc_compilation_status_success;
 import static org.lwjgl.util.shaderc.Shaderc.shaderc_compile_into_spv;
 import static org.lwjgl.util.shaderc.Shaderc.shaderc_compile_options_add_macro_definition;
@@ -31,11 +33,19 @@ import org.lwjgl.system.NativeResource;
  * Describes a raw SPIR-V shader buffer.
  *
  * @author Aurimas Blažulionis
+ *     <p>Compiled shaders are stored in {@link ShaderCache}, and subsequent loads with identical
+ *     inputs skip the compiler entirely.
  */
 @Log
 public class ShaderBuf implements NativeResource {
     /** Handle to compiled SPIR-V shader. */
     private long mHandle;
+    /** Whether {@link #mBuffer} was allocated by us, rather than shaderc. */
+    private boolean mOwnsBuffer;
+
+    /** Matches #include directives. See https://stackoverflow.com/a/26493311/13240247. */
+    private static final Pattern INCLUDE_PATTERN =
+            Pattern.compile("\\s*#include\\s*([<\"])([^>\"]+)([>\"])");
 
     /** Byte view to the shader. */
     @Accessors(prefix = "m")
@@ -122,13 +132,14 @@ public class ShaderBuf implements NativeResource {
             return data;
         }
 
-        String[] lines = data.split("\\r?\\n");
+        if (data.indexOf("#include") < 0) {
+            return data;
+        }
 
-        // https://stackoverflow.com/a/26493311/13240247
-        Pattern pat = Pattern.compile("\\s*#include\\s*([<\"])([^>\"]+)([>\"])");
+        String[] lines = data.split("\\r?\\n");
 
         for (int i = 0; i < lines.length; i++) {
-            Matcher match = pat.matcher(lines[i]);
+            Matcher match = INCLUDE_PATTERN.matcher(lines[i]);
             if (match.find()) {
                 // Second group contains the file
                 String m = match.group(2);
@@ -158,8 +169,25 @@ public class ShaderBuf implements NativeResource {
      */
     public static ShaderBuf compileShader(
             String data, String name, ShaderKind shaderKind, MacroDefinition[] macros) {
-        log.fine("Compiling " + name);
+        return compileShader(data, name, shaderKind, macros, ShaderCache.getDefault());
+    }
 
+    /**
+     * Compile a shader, or load it from cache.
+     *
+     * @param data shader bytecode
+     * @param name name of the shader
+     * @param shaderKind shader kind (vertex, fragment, geometry)
+     * @param macros custom macro definitions
+     * @param cache cache to use, {@code null} to always compile
+     * @return compiled shader, null if there was an error
+     */
+    static ShaderBuf compileShader(
+            String data,
+            String name,
+            ShaderKind shaderKind,
+            MacroDefinition[] macros,
+            ShaderCache cache) {
         if (data == null) {
             log.warning("Failed to find resource named: " + name);
             return null;
@@ -167,6 +195,44 @@ public class ShaderBuf implements NativeResource {
 
         data = processIncludes(data, 0);
 
+        String key = null;
+
+        if (cache != null) {
+            key = ShaderCache.computeKey(data, shaderKind, macros);
+            byte[] spirv = cache.load(key);
+
+            if (spirv != null) {
+                log.fine("Loaded cached " + name);
+                ShaderBuf ret = new ShaderBuf();
+                ret.mBuffer = memAlloc(spirv.length);
+                ret.mBuffer.put(spirv).flip();
+                ret.mOwnsBuffer = true;
+                return ret;
+            }
+        }
+
+        ShaderBuf ret = compileSource(data, name, shaderKind, macros);
+
+        if (ret != null && cache != null) {
+            cache.store(key, ret.mBuffer);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Compile an already preprocessed shader with shaderc.
+     *
+     * @param data preprocessed shader source
+     * @param name name of the shader
+     * @param shaderKind shader kind (vertex, fragment, geometry)
+     * @param macros custom macro definitions
+     * @return compiled shader, null if there was an error
+     */
+    private static ShaderBuf compileSource(
+            String data, String name, ShaderKind shaderKind, MacroDefinition[] macros) {
+        log.fine("Compiling " + name);
+
         long compiler = shaderc_compiler_initialize();
 
         if (compiler == NULL) {
@@ -213,6 +279,10 @@ public class ShaderBuf implements NativeResource {
             shaderc_result_release(mHandle);
             mHandle = NULL;
         }
+        if (mOwnsBuffer) {
+            memFree(mBuffer);
+            mOwnsBuffer = false;
+        }
         mBuffer = null;
     }
 }
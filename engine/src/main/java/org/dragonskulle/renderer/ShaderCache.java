@@ -0,0 +1,256 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import static org.dragonskulle.utils.Env.envBool;
+import static org.dragonskulle.utils.Env.envString;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import lombok.extern.java.Log;
+import org.dragonskulle.core.ResourceManager;
+import org.dragonskulle.renderer.ShaderBuf.MacroDefinition;
+import org.lwjgl.Version;
+
+/**
+ * Persistent, content addressed cache of compiled SPIR-V shaders.
+ *
+ * @author DragonSkulle
+ *     <p>Compiling GLSL with shaderc is by far the slowest part of loading shaders. This cache
+ *     stores compiled SPIR-V on disk, keyed by a hash of the fully expanded shader source, its
+ *     kind, macro definitions, and compiler version, so that later launches do not need to
+ *     initialise the compiler at all. Any change to the inputs yields a different key, thus stale
+ *     entries never need invalidating - the directory can simply be deleted at any time.
+ *     <p>Entries are written to a temporary file, and then atomically moved in place, so that
+ *     concurrent writers, or a crash mid-write can never leave a truncated entry behind.
+ *     <p>The default cache is placed in {@code SHADER_CACHE_DIR} ({@code shader_cache} by default),
+ *     and can be disabled by setting {@code SHADER_CACHE} environment variable to false.
+ *     <p>Entries are also looked up in mounted asset bundles, under {@link #BUNDLE_DIRECTORY}, so
+ *     that shipped builds do not need to compile shaders even on their very first launch.
+ */
+@Log
+@Accessors(prefix = "m")
+public class ShaderCache {
+    /** Bump this, when changing the way shaders are compiled, to invalidate old entries. */
+    private static final String CACHE_VERSION = "1";
+    /** Compiler version, used as part of every key. */
+    private static final String COMPILER_VERSION =
+            "lwjgl-" + Version.getVersion() + "/shaderc-performance/" + CACHE_VERSION;
+    /** Directory of cache entries inside asset bundles. */
+    public static final String BUNDLE_DIRECTORY = "spirv/";
+    /** SPIR-V magic number, used for validating entries. */
+    private static final int SPIRV_MAGIC = 0x07230203;
+
+    private static final ShaderCache DEFAULT =
+            envBool("SHADER_CACHE", true)
+                    ? new ShaderCache(Paths.get(envString("SHADER_CACHE_DIR", "shader_cache")))
+                    : null;
+
+    /** Directory the entries are stored in. */
+    @Getter private final Path mDirectory;
+
+    /** Number of lookups that found a valid entry. */
+    private final AtomicLong mHits = new AtomicLong();
+    /** Number of lookups that did not. */
+    private final AtomicLong mMisses = new AtomicLong();
+
+    /**
+     * Create a shader cache.
+     *
+     * @param directory directory to store entries in. Created when the first entry is written.
+     */
+    public ShaderCache(Path directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Get the default shader cache.
+     *
+     * @return the default cache, {@code null}, if caching is disabled.
+     */
+    public static ShaderCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Compute the cache key of a shader.
+     *
+     * @param source fully expanded shader source.
+     * @param kind kind of the shader.
+     * @param macros macro definitions the shader is compiled with.
+     * @return hex encoded key.
+     */
+    public static String computeKey(String source, ShaderKind kind, MacroDefinition[] macros) {
+        MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+
+        update(digest, COMPILER_VERSION);
+        update(digest, kind.toString());
+
+        for (MacroDefinition macro : macros) {
+            update(digest, macro.getName());
+            update(digest, macro.getValue() == null ? "" : macro.getValue());
+        }
+
+        update(digest, source);
+
+        StringBuilder builder = new StringBuilder();
+
+        for (byte b : digest.digest()) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Feed a length prefixed string into the digest, so that concatenations can not collide.
+     *
+     * @param digest digest to update.
+     * @param value string to add.
+     */
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+
+    /**
+     * Load a cached SPIR-V binary.
+     *
+     * @param key key of the shader, from {@link #computeKey}.
+     * @return SPIR-V bytes, {@code null} if the entry does not exist, or is invalid.
+     */
+    public byte[] load(String key) {
+        byte[] bundled = ResourceManager.readBundled(BUNDLE_DIRECTORY + key + ".spv");
+
+        if (bundled != null && isValid(bundled)) {
+            mHits.incrementAndGet();
+            return bundled;
+        }
+
+        Path path = entryPath(key);
+
+        if (!Files.isRegularFile(path)) {
+            mMisses.incrementAndGet();
+            return null;
+        }
+
+        try {
+            byte[] spirv = Files.readAllBytes(path);
+
+            if (isValid(spirv)) {
+                mHits.incrementAndGet();
+                return spirv;
+            }
+
+            log.warning("Discarding invalid shader cache entry " + path);
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warning("Failed to read shader cache entry " + path + ": " + e);
+        }
+
+        mMisses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Store a SPIR-V binary in the cache.
+     *
+     * <p>Failures are logged, but otherwise ignored, since the cache is purely an optimisation.
+     *
+     * @param key key of the shader, from {@link #computeKey}.
+     * @param spirv compiled SPIR-V. Its position is left unchanged.
+     */
+    public void store(String key, ByteBuffer spirv) {
+        byte[] bytes = new byte[spirv.remaining()];
+        spirv.duplicate().get(bytes);
+
+        Path path = entryPath(key);
+        Path tmp = null;
+
+        try {
+            Files.createDirectories(mDirectory);
+            tmp = Files.createTempFile(mDirectory, key, ".tmp");
+            Files.write(tmp, bytes);
+
+            try {
+                Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            tmp = null;
+        } catch (IOException e) {
+            log.warning("Failed to write shader cache entry " + path + ": " + e);
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    log.fine("Failed to delete " + tmp);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the number of lookups that found a valid entry.
+     *
+     * @return cache hit count.
+     */
+    public long getHits() {
+        return mHits.get();
+    }
+
+    /**
+     * Get the number of lookups that did not find a valid entry.
+     *
+     * @return cache miss count.
+     */
+    public long getMisses() {
+        return mMisses.get();
+    }
+
+    /**
+     * Get the path of an entry.
+     *
+     * @param key key of the entry.
+     * @return path to the entry's file.
+     */
+    private Path entryPath(String key) {
+        return mDirectory.resolve(key + ".spv");
+    }
+
+    /**
+     * Check whether the bytes look like a SPIR-V module.
+     *
+     * @param spirv bytes to check.
+     * @return {@code true} if the size and magic number are valid.
+     */
+    private static boolean isValid(byte[] spirv) {
+        if (spirv.length < 20 || spirv.length % 4 != 0) {
+            return false;
+        }
+
+        ByteBuffer buf = ByteBuffer.wrap(spirv).order(ByteOrder.LITTLE_ENDIAN);
+        return buf.getInt(0) == SPIRV_MAGIC;
+    }
+}
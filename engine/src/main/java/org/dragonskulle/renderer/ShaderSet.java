@@ -110,6 +110,14 @@ public class ShaderSet implements NativeResource {
     /** Number of lights used by the shader. */
     @Getter protected int mLightCount = 0;
 
+    /**
+     * Controls whether the shaders read the per-frame {@link FrameUniforms} block.
+     *
+     * <p>The block is bound as descriptor set 0, thus any other descriptor sets, like fragment
+     * textures, move one set up.
+     */
+    @Getter protected boolean mFrameUniforms = false;
+
     /**
      * Sets how many textures are used by the shader.
      *
@@ -145,6 +153,19 @@ public class ShaderSet implements NativeResource {
         return mFragmentShader == null ? null : mFragmentShader.get();
     }
 
+    /**
+     * Check whether the shader set uses a shader.
+     *
+     * @param shader shader to check.
+     * @return {@code true} if any stage of the set uses the shader.
+     */
+    public boolean usesShader(ShaderBuf shader) {
+        return shader != null
+                && (getVertexShader() == shader
+                        || getGeometryShader() == shader
+                        || getFragmentShader() == shader);
+    }
+
     /**
      * Write the uniform data used by vertex shader.
      *
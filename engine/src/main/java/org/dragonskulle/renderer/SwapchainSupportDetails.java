@@ -1,7 +1,6 @@
 /* (C) 2021 DragonSkulle */
 package org.dragonskulle.renderer;
 
-import static org.lwjgl.glfw.GLFW.glfwGetFramebufferSize;
 import static org.lwjgl.system.MemoryStack.stackPush;
 import static org.lwjgl.vulkan.KHRSurface.VK_COLOR_SPACE_SRGB_NONLINEAR_KHR;
 import static org.lwjgl.vulkan.KHRSurface.vkGetPhysicalDeviceSurfaceCapabilitiesKHR;
@@ -120,40 +119,35 @@ class SwapchainSupportDetails {
     /**
      * Choose a compatible resolution, targetting current window resolution.
      *
-     * @param window handle to the window
+     * @param width width of the window's framebuffer
+     * @param height height of the window's framebuffer
      * @return window extent bounds
      */
-    public VkExtent2D chooseExtent(long window) {
-        try (MemoryStack stack = stackPush()) {
-            IntBuffer x = stack.ints(0);
-            IntBuffer y = stack.ints(0);
-            glfwGetFramebufferSize(window, x, y);
-
-            log.finer(String.format("Extent TRY: %dx%d", x.get(0), y.get(0)));
-            log.finer(
-                    String.format(
-                            "MAX: %dx%d",
-                            mCapabilities.maxImageExtent().width(),
-                            mCapabilities.maxImageExtent().height()));
-            log.finer(
-                    String.format(
-                            "MIN: %dx%d",
-                            mCapabilities.minImageExtent().width(),
-                            mCapabilities.minImageExtent().height()));
-
-            VkExtent2D extent = VkExtent2D.create();
-            extent.set(
-                    Integer.max(
-                            Integer.min(x.get(0), mCapabilities.maxImageExtent().width()),
-                            mCapabilities.minImageExtent().width()),
-                    Integer.max(
-                            Integer.min(y.get(0), mCapabilities.maxImageExtent().height()),
-                            mCapabilities.minImageExtent().height()));
-
-            log.finer(String.format("Extent: %dx%d", extent.width(), extent.height()));
-
-            return extent;
-        }
+    public VkExtent2D chooseExtent(int width, int height) {
+        log.finer(String.format("Extent TRY: %dx%d", width, height));
+        log.finer(
+                String.format(
+                        "MAX: %dx%d",
+                        mCapabilities.maxImageExtent().width(),
+                        mCapabilities.maxImageExtent().height()));
+        log.finer(
+                String.format(
+                        "MIN: %dx%d",
+                        mCapabilities.minImageExtent().width(),
+                        mCapabilities.minImageExtent().height()));
+
+        VkExtent2D extent = VkExtent2D.create();
+        extent.set(
+                Integer.max(
+                        Integer.min(width, mCapabilities.maxImageExtent().width()),
+                        mCapabilities.minImageExtent().width()),
+                Integer.max(
+                        Integer.min(height, mCapabilities.maxImageExtent().height()),
+                        mCapabilities.minImageExtent().height()));
+
+        log.finer(String.format("Extent: %dx%d", extent.width(), extent.height()));
+
+        return extent;
     }
 
     /**
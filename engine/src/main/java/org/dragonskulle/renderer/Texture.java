@@ -7,11 +7,14 @@ import static org.lwjgl.stb.STBImage.stbi_load_from_memory;
 import static org.lwjgl.system.MemoryStack.stackPush;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 import lombok.Getter;
 import lombok.experimental.Accessors;
+import org.dragonskulle.core.IResourceFootprint;
 import org.dragonskulle.core.Resource;
 import org.dragonskulle.core.ResourceManager;
+import org.dragonskulle.utils.MathUtils;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.MemoryUtil;
 import org.lwjgl.system.NativeResource;
@@ -19,17 +22,28 @@ import org.lwjgl.system.NativeResource;
 /** Describes a texture resource. */
 @Accessors(prefix = "m")
 @Getter
-public class Texture implements NativeResource {
+public class Texture implements NativeResource, IResourceFootprint {
     /** Width of the texture. */
     protected int mWidth;
     /** Height of the texture. */
     protected int mHeight;
     /** Number of colour channels. */
     protected int mChannels;
-    /** Underlying byte view of the texture. */
+    /** Underlying byte view of the texture, with all mip levels one after another. */
     protected ByteBuffer mBuffer;
+    /** Number of mip levels stored in {@link #mBuffer}, starting with the full size one. */
+    protected int mMipLevels = 1;
     /** Name of the texture. */
     protected String mName;
+    /** Whether {@link #mBuffer} was allocated by us, rather than stb_image. */
+    private boolean mCooked;
+
+    /** "DSTM" in little endian, marks cooked, already decoded and mipmapped textures. */
+    private static final int COOKED_MAGIC = 0x4d545344;
+    /** Size of the cooked texture header. */
+    private static final int COOKED_HEADER = 20;
+    /** Bytes per pixel of decoded textures. */
+    private static final int PIXEL_SIZE = 4;
 
     static {
         ResourceManager.registerResource(
@@ -56,6 +70,10 @@ public class Texture implements NativeResource {
      * @return loaded texture.
      */
     private static Texture loadTexture(byte[] buffer, String name) {
+        if (isCooked(buffer)) {
+            return loadCooked(buffer, name);
+        }
+
         Texture ret = new Texture();
         ByteBuffer buf = MemoryUtil.memAlloc(buffer.length);
         buf.put(buffer);
@@ -74,11 +92,175 @@ public class Texture implements NativeResource {
         return ret;
     }
 
+    /**
+     * Check whether the buffer contains a cooked texture.
+     *
+     * @param buffer bytes of the texture file.
+     * @return {@code true} if the buffer starts with cooked texture header.
+     */
+    private static boolean isCooked(byte[] buffer) {
+        return buffer.length >= COOKED_HEADER
+                && ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN).getInt(0) == COOKED_MAGIC;
+    }
+
+    /**
+     * Load an already decoded texture.
+     *
+     * @param buffer cooked texture data, produced by {@link #cook}.
+     * @param name name of the texture.
+     * @return loaded texture.
+     */
+    private static Texture loadCooked(byte[] buffer, String name) {
+        ByteBuffer header = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+        Texture ret = new Texture();
+        ret.mWidth = header.getInt(4);
+        ret.mHeight = header.getInt(8);
+        ret.mChannels = header.getInt(12);
+        ret.mMipLevels = header.getInt(16);
+        ret.mName = name;
+        ret.mCooked = true;
+        ret.mBuffer = MemoryUtil.memAlloc(buffer.length - COOKED_HEADER);
+        ret.mBuffer.put(buffer, COOKED_HEADER, buffer.length - COOKED_HEADER);
+        ret.mBuffer.rewind();
+        return ret;
+    }
+
+    /**
+     * Decode a texture file for storing in an asset bundle.
+     *
+     * <p>Cooked textures skip image decoding when loaded, and come with the full mip chain, the same
+     * one the renderer would otherwise blit on the GPU. Levels are box filtered in stored values, as
+     * blits of linear textures are. Blits of sRGB textures filter in linear space instead, which is
+     * slightly brighter at lower levels than the cooked chain.
+     *
+     * @param buffer bytes of the texture file.
+     * @return cooked texture data, or {@code null}, if the file could not be decoded.
+     */
+    public static byte[] cook(byte[] buffer) {
+        if (isCooked(buffer)) {
+            return buffer;
+        }
+
+        Texture tex = loadTexture(buffer, "");
+
+        if (tex.mBuffer == null) {
+            return null;
+        }
+
+        try {
+            int mipLevels = getMipLevelCount(tex.mWidth, tex.mHeight);
+            ByteBuffer out =
+                    ByteBuffer.allocate(
+                                    COOKED_HEADER
+                                            + getMipOffset(tex.mWidth, tex.mHeight, mipLevels))
+                            .order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(COOKED_MAGIC).putInt(tex.mWidth).putInt(tex.mHeight).putInt(tex.mChannels);
+            out.putInt(mipLevels);
+
+            ByteBuffer pixels = tex.mBuffer.duplicate();
+            pixels.rewind();
+            out.put(pixels);
+
+            int width = tex.mWidth;
+            int height = tex.mHeight;
+
+            for (int level = 1; level < mipLevels; level++) {
+                int srcOffset = COOKED_HEADER + getMipOffset(tex.mWidth, tex.mHeight, level - 1);
+                downsample(out, srcOffset, width, height, out.position());
+                width = Math.max(1, width / 2);
+                height = Math.max(1, height / 2);
+            }
+
+            return out.array();
+        } finally {
+            tex.free();
+        }
+    }
+
+    /**
+     * Get the number of mip levels of a texture.
+     *
+     * <p>This matches the number of levels {@link VulkanImage} creates for sampled textures.
+     *
+     * @param width width of the full size level.
+     * @param height height of the full size level.
+     * @return number of mip levels, including the full size one.
+     */
+    public static int getMipLevelCount(int width, int height) {
+        return MathUtils.log(Math.max(width, height), 2) + 1;
+    }
+
+    /**
+     * Get the offset of a mip level within the texture data.
+     *
+     * <p>Every level is half the size of the previous one, rounded down, but never smaller than a
+     * pixel.
+     *
+     * @param width width of the full size level.
+     * @param height height of the full size level.
+     * @param level level to get the offset of. The level count gives the total size of all levels.
+     * @return offset of the level in bytes.
+     */
+    public static int getMipOffset(int width, int height, int level) {
+        int offset = 0;
+
+        for (int i = 0; i < level; i++) {
+            offset += width * height * PIXEL_SIZE;
+            width = Math.max(1, width / 2);
+            height = Math.max(1, height / 2);
+        }
+
+        return offset;
+    }
+
+    /**
+     * Write the next mip level of an image, averaging every 2x2 block of pixels.
+     *
+     * @param buffer buffer holding the source level, and receiving the new one at its position.
+     * @param srcOffset offset of the source level.
+     * @param width width of the source level.
+     * @param height height of the source level.
+     * @param dstOffset offset to write the new level to.
+     */
+    private static void downsample(
+            ByteBuffer buffer, int srcOffset, int width, int height, int dstOffset) {
+        int dstWidth = Math.max(1, width / 2);
+        int dstHeight = Math.max(1, height / 2);
+
+        for (int y = 0; y < dstHeight; y++) {
+            int y0 = Math.min(y * 2, height - 1);
+            int y1 = Math.min(y * 2 + 1, height - 1);
+
+            for (int x = 0; x < dstWidth; x++) {
+                int x0 = Math.min(x * 2, width - 1);
+                int x1 = Math.min(x * 2 + 1, width - 1);
+
+                for (int c = 0; c < PIXEL_SIZE; c++) {
+                    int sum =
+                            (buffer.get(srcOffset + (y0 * width + x0) * PIXEL_SIZE + c) & 0xff)
+                                    + (buffer.get(srcOffset + (y0 * width + x1) * PIXEL_SIZE + c)
+                                            & 0xff)
+                                    + (buffer.get(srcOffset + (y1 * width + x0) * PIXEL_SIZE + c)
+                                            & 0xff)
+                                    + (buffer.get(srcOffset + (y1 * width + x1) * PIXEL_SIZE + c)
+                                            & 0xff);
+                    buffer.put(dstOffset++, (byte) ((sum + 2) / 4));
+                }
+            }
+        }
+
+        buffer.position(dstOffset);
+    }
+
     /** Free the texture resource. */
     @Override
     public void free() {
         if (mBuffer != null) {
-            stbi_image_free(mBuffer);
+            if (mCooked) {
+                MemoryUtil.memFree(mBuffer);
+            } else {
+                stbi_image_free(mBuffer);
+            }
             mBuffer = null;
         }
     }
@@ -91,4 +273,9 @@ public class Texture implements NativeResource {
     public int size() {
         return mBuffer.capacity();
     }
+
+    @Override
+    public long getFootprintBytes() {
+        return mBuffer != null ? mBuffer.capacity() : 0;
+    }
 }
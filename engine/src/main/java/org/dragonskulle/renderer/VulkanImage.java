@@ -252,6 +252,14 @@ class VulkanImage implements NativeResource {
 
             transitionImageLayout(commandBuffer, VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL);
 
+            // Cooked textures come with the whole mip chain, so the blits can be skipped
+            if (texture.getMipLevels() > 1 && texture.getMipLevels() == mMipLevels) {
+                copyMipsFromBuffer(
+                        mStagingBuffer, commandBuffer, texture.getWidth(), texture.getHeight());
+                transitionImageLayout(commandBuffer, VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL);
+                return;
+            }
+
             copyFromBuffer(mStagingBuffer, commandBuffer, texture.getWidth(), texture.getHeight());
 
             generateMipmaps(
@@ -645,4 +653,44 @@ class VulkanImage implements NativeResource {
                     region);
         }
     }
+
+    /**
+     * Copy all mip levels of the image from a buffer.
+     *
+     * <p>The levels are expected one after another, laid out as described by {@link
+     * Texture#getMipOffset}.
+     *
+     * @param buffer buffer to copy from.
+     * @param commandBuffer buffer for commands.
+     * @param width width of the full size level.
+     * @param height height of the full size level.
+     */
+    private void copyMipsFromBuffer(
+            VulkanBuffer buffer, VkCommandBuffer commandBuffer, int width, int height) {
+        try (MemoryStack stack = stackPush()) {
+            VkBufferImageCopy.Buffer regions = VkBufferImageCopy.callocStack(mMipLevels, stack);
+
+            for (int i = 0; i < mMipLevels; i++) {
+                VkBufferImageCopy region = regions.get(i);
+
+                region.bufferOffset(Texture.getMipOffset(width, height, i));
+
+                region.imageSubresource().aspectMask(mAspectMask);
+                region.imageSubresource().mipLevel(i);
+                region.imageSubresource().layerCount(1);
+                region.imageSubresource().baseArrayLayer(0);
+
+                region.imageExtent().width(Math.max(1, width >> i));
+                region.imageExtent().height(Math.max(1, height >> i));
+                region.imageExtent().depth(1);
+            }
+
+            vkCmdCopyBufferToImage(
+                    commandBuffer,
+                    buffer.mBuffer,
+                    mImage,
+                    VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL,
+                    regions);
+        }
+    }
 }
@@ -9,13 +9,17 @@ import static org.lwjgl.vulkan.VK10.VK_BUFFER_USAGE_VERTEX_BUFFER_BIT;
 import static org.lwjgl.vulkan.VK10.VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT;
 import static org.lwjgl.vulkan.VK10.VK_MEMORY_PROPERTY_HOST_COHERENT_BIT;
 import static org.lwjgl.vulkan.VK10.VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT;
+import static org.lwjgl.vulkan.VK10.vkCmdCopyBuffer;
 import static org.lwjgl.vulkan.VK10.vkMapMemory;
 import static org.lwjgl.vulkan.VK10.vkUnmapMemory;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.experimental.Accessors;
@@ -23,6 +27,7 @@ import lombok.extern.java.Log;
 import org.lwjgl.PointerBuffer;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.NativeResource;
+import org.lwjgl.vulkan.VkBufferCopy;
 import org.lwjgl.vulkan.VkCommandBuffer;
 import org.lwjgl.vulkan.VkDevice;
 import org.lwjgl.vulkan.VkQueue;
@@ -33,10 +38,32 @@ import org.lwjgl.vulkan.VkQueue;
  * <p>This stores all meshes and provides a way to query
  *
  * @author Aurimas Blažulionis
+ *     <p>Meshes are suballocated from persistent vertex and index buffers with {@link
+ *     RangeAllocator}. Adding a mesh only uploads that mesh, and removing one only frees its
+ *     ranges, once frames in flight can no longer be using them. A new mesh buffer is only created
+ *     when the buffers run out of space. Then, they are doubled in size, and the old contents are
+ *     copied over on the GPU.
+ *     <p>Updated dynamic meshes get new ranges, and are uploaded again, while frames in flight keep
+ *     reading the old ranges, until they are freed. If only some of the vertices were replaced, the
+ *     index range is kept, and only the replaced vertices are staged. The rest are copied from the
+ *     old vertex range on the GPU.
+ *     <p>Holes left by removed meshes are compacted incrementally. Every commit moves a limited
+ *     number of the highest placed meshes down into the lowest holes they fit in.
  */
 @Accessors(prefix = "m")
 @Log
 class VulkanMeshBuffer implements NativeResource {
+    /** Initial capacity of the vertex buffer, in vertices. */
+    private static final int INITIAL_VERTICES = 1 << 15;
+    /** Initial capacity of the index buffer, in indices. */
+    private static final int INITIAL_INDICES = 1 << 16;
+    /** Maximum number of vertices, or indices moved by a single commit, while compacting. */
+    private static final int DEFRAG_BUDGET = 1 << 12;
+    /** Minimum number of units in holes, before compaction starts. */
+    private static final int DEFRAG_MIN_HOLES = 1 << 10;
+    /** Size of an index, in bytes. */
+    private static final int INDEX_SIZE = 4;
+
     /** Handle to underlying logical device. */
     private VkDevice mDevice;
     /** Handle to underlying physical device. */
@@ -45,20 +72,27 @@ class VulkanMeshBuffer implements NativeResource {
     private VulkanBuffer mVertexBuffer;
     /** Handle to underlying index buffer. */
     private VulkanBuffer mIndexBuffer;
+    /** Number of vertices that fit in {@link #mVertexBuffer}. */
+    private int mVertexCapacity;
+    /** Number of indices that fit in {@link #mIndexBuffer}. */
+    private int mIndexCapacity;
 
-    /** Vertex count within the buffer. */
-    @Getter private int mMaxVertexOffset;
-    /** Index count within the buffer. */
-    @Getter private int mMaxIndexOffset;
-
-    /** Whether the buffer dirty, and should be rebuilt on commit. */
+    /** Whether the buffer dirty, and changes should be committed. */
     @Getter private boolean mDirty = false;
 
-    /** Map between meshes and array list indices. */
-    private Map<Mesh, Integer> mLoadedMeshes = new HashMap<Mesh, Integer>();
+    /** Allocated ranges of the vertex buffer, in vertices. */
+    private RangeAllocator mVertexAllocator;
+    /** Allocated ranges of the index buffer, in indices. */
+    private RangeAllocator mIndexAllocator;
 
-    /** Mesh entries within the buffer. */
-    private ArrayList<MeshBufferEntry> mEntries = new ArrayList<>();
+    /** Map between meshes and their entries. */
+    private Map<Mesh, MeshBufferEntry> mLoadedMeshes = new HashMap<>();
+    /** Entries with vertices, by their first vertex. */
+    private TreeMap<Integer, MeshBufferEntry> mByVertex = new TreeMap<>();
+    /** Entries with indices, by their first index. */
+    private TreeMap<Integer, MeshBufferEntry> mByIndex = new TreeMap<>();
+    /** Entries that have not been uploaded yet. */
+    private ArrayList<MeshBufferEntry> mUploads = new ArrayList<>();
 
     /** Description where mesh data resides in. */
     @Builder
@@ -80,8 +114,82 @@ class VulkanMeshBuffer implements NativeResource {
     private static class MeshBufferEntry {
         /** Mesh used in the mesh buffer. */
         private Mesh mMesh;
+        /** Vertices to upload, taken from the mesh. */
+        private Vertexc[] mVertices;
+        /** Indices to upload, taken from the mesh. */
+        private int[] mIndices;
+        /** Version of the mesh the data was taken from. */
+        private int mVersion;
         /** Offset descriptor of the mesh. */
         private MeshDescriptor mMeshDescriptor;
+        /** First vertex of the mesh. */
+        private int mVertexStart;
+        /** Number of vertices of the mesh. */
+        private int mVertexCount;
+        /** First index of the mesh. */
+        private int mIndexStart;
+        /** Number of indices of the mesh. */
+        private int mIndexCount;
+        /** Whether the mesh data is on the GPU. */
+        private boolean mUploaded;
+
+        /** Whether only vertices replaced since {@link #mPartialVersion} need staging. */
+        private boolean mPartial;
+        /** Version of the mesh that is in {@link #mOldVertexStart}. */
+        private int mPartialVersion;
+        /** First vertex of the previous range, to copy unchanged vertices from. */
+        private int mOldVertexStart;
+        /** Version every vertex was last replaced at, taken from the mesh. */
+        private int[] mVertexVersions;
+
+        /**
+         * Check whether a vertex has to be staged.
+         *
+         * @param index index of the vertex.
+         * @return {@code true} if the vertex is not on the GPU yet.
+         */
+        private boolean isVertexDirty(int index) {
+            return !mPartial || mVertexVersions[index] > mPartialVersion;
+        }
+
+        /** Update the descriptor to the current ranges. */
+        private void updateDescriptor() {
+            mMeshDescriptor.mVertexOffset = mVertexStart * Vertex.SIZEOF;
+            mMeshDescriptor.mIndexOffset = mIndexStart * INDEX_SIZE;
+            mMeshDescriptor.mIndexCount = mIndexCount;
+        }
+
+        /** Take the current contents of the mesh. */
+        private void takeData() {
+            // Dynamic meshes may get updated from another thread
+            synchronized (mMesh) {
+                mVertices = mMesh.getVertices();
+                mIndices = mMesh.getIndices();
+                mVersion = mMesh.getVersion();
+            }
+            mVertexCount = mVertices.length;
+            mIndexCount = mIndices.length;
+        }
+    }
+
+    /** A region to copy between buffers. */
+    private static class Copy {
+        private final long mSrc;
+        private final long mDst;
+        private final long mSize;
+
+        /**
+         * Create a copy region.
+         *
+         * @param src source offset, in bytes.
+         * @param dst destination offset, in bytes.
+         * @param size number of bytes to copy.
+         */
+        private Copy(long src, long dst, long size) {
+            mSrc = src;
+            mDst = dst;
+            mSize = size;
+        }
     }
 
     /** Constructor for {@link VulkanMeshBuffer}. */
@@ -92,10 +200,15 @@ class VulkanMeshBuffer implements NativeResource {
      *
      * @param device target logical vulkan device.
      * @param physicalDevice target physical device.
+     * @param framesInFlight number of frames that may be using the buffer at once.
      */
-    public VulkanMeshBuffer(VkDevice device, PhysicalDevice physicalDevice) {
+    public VulkanMeshBuffer(VkDevice device, PhysicalDevice physicalDevice, int framesInFlight) {
         mDevice = device;
         mPhysicalDevice = physicalDevice;
+        mVertexAllocator = new RangeAllocator(INITIAL_VERTICES, framesInFlight);
+        mIndexAllocator = new RangeAllocator(INITIAL_INDICES, framesInFlight);
+        // Buffers get created on the first commit
+        mDirty = true;
     }
 
     /**
@@ -116,6 +229,24 @@ class VulkanMeshBuffer implements NativeResource {
         return mIndexBuffer.mBuffer;
     }
 
+    /**
+     * Get the used size of the vertex buffer.
+     *
+     * @return offset after the last used vertex, in bytes.
+     */
+    public int getMaxVertexOffset() {
+        return mVertexAllocator.getEnd() * Vertex.SIZEOF;
+    }
+
+    /**
+     * Get the used size of the index buffer.
+     *
+     * @return offset after the last used index, in bytes.
+     */
+    public int getMaxIndexOffset() {
+        return mIndexAllocator.getEnd() * INDEX_SIZE;
+    }
+
     /**
      * Get the mesh descriptor for a mesh.
      *
@@ -124,107 +255,211 @@ class VulkanMeshBuffer implements NativeResource {
      *     null}, if it does not exist.
      */
     public MeshDescriptor getMeshDescriptor(Mesh mesh) {
-        Integer idx = mLoadedMeshes.get(mesh);
-        return idx == null ? null : mEntries.get(idx).mMeshDescriptor;
+        MeshBufferEntry entry = mLoadedMeshes.get(mesh);
+        return entry == null ? null : entry.mMeshDescriptor;
     }
 
     /**
      * Adds a mesh to the mesh buffer
      *
      * <p>This method will add the mesh in, but if it was not loaded in already, it is necessary to
-     * create a new mesh buffer by calling {@code commitChanges}.
+     * upload it by calling {@code commitChanges}.
      *
      * @param mesh mesh to add
      * @return descriptor of the offsets within mesh buffer for the mesh
      */
     public MeshDescriptor addMesh(Mesh mesh) {
+        MeshBufferEntry entry = mLoadedMeshes.get(mesh);
 
-        Integer idx = mLoadedMeshes.get(mesh);
-        if (idx == null) {
-            mDirty = true;
-            idx = mEntries.size();
-            MeshBufferEntry entry = new MeshBufferEntry();
+        if (entry == null) {
+            entry = new MeshBufferEntry();
             entry.mMesh = mesh;
-            entry.mMeshDescriptor =
-                    new MeshDescriptor(mMaxVertexOffset, mMaxIndexOffset, mesh.getIndices().length);
-            mMaxVertexOffset += mesh.getVertices().length * Vertex.SIZEOF;
-            mMaxIndexOffset += mesh.getIndices().length * 4;
-            mEntries.add(entry);
-            mLoadedMeshes.put(mesh, idx);
+            entry.mMeshDescriptor = new MeshDescriptor(0, 0, 0);
+            mLoadedMeshes.put(mesh, entry);
+            place(entry);
+        } else if (entry.mVersion != mesh.getVersion() && !placeVertices(entry)) {
+            freeRanges(entry);
+            place(entry);
         }
-        return mEntries.get(idx).mMeshDescriptor;
+
+        return entry.mMeshDescriptor;
+    }
+
+    /**
+     * Allocate ranges for the current contents of an entry's mesh, and queue them for upload.
+     *
+     * @param entry entry to place.
+     */
+    private void place(MeshBufferEntry entry) {
+        mDirty = true;
+        entry.takeData();
+        entry.mVertexStart = allocate(mVertexAllocator, entry.mVertexCount);
+        entry.mIndexStart = allocate(mIndexAllocator, entry.mIndexCount);
+        entry.updateDescriptor();
+
+        if (entry.mVertexCount > 0) {
+            mByVertex.put(entry.mVertexStart, entry);
+        }
+
+        if (entry.mIndexCount > 0) {
+            mByIndex.put(entry.mIndexStart, entry);
+        }
+
+        // Updates of meshes still waiting for their upload are already queued
+        if (!mUploads.contains(entry)) {
+            mUploads.add(entry);
+        }
+
+        entry.mUploaded = false;
+        entry.mPartial = false;
+    }
+
+    /**
+     * Move the vertices of an entry to a new range, if only some of them were replaced.
+     *
+     * <p>The index range is kept. The replaced vertices are staged, while the rest are copied from
+     * the old range on upload.
+     *
+     * @param entry entry to update.
+     * @return {@code true} if the entry was updated, {@code false} if it has to be placed again.
+     */
+    private boolean placeVertices(MeshBufferEntry entry) {
+        // The old range has to hold the previous contents, to copy from
+        if (!entry.mUploaded || entry.mVertexCount == 0) {
+            return false;
+        }
+
+        Mesh mesh = entry.mMesh;
+        int oldVersion = entry.mVersion;
+
+        synchronized (mesh) {
+            if (mesh.getShapeVersion() > oldVersion || mesh.getVertexVersions() == null) {
+                return false;
+            }
+
+            entry.takeData();
+            entry.mVertexVersions = mesh.getVertexVersions();
+        }
+
+        mDirty = true;
+
+        int oldStart = entry.mVertexStart;
+        mByVertex.remove(oldStart);
+        mVertexAllocator.free(oldStart, entry.mVertexCount);
+
+        entry.mVertexStart = allocate(mVertexAllocator, entry.mVertexCount);
+        mByVertex.put(entry.mVertexStart, entry);
+        entry.updateDescriptor();
+
+        entry.mOldVertexStart = oldStart;
+        entry.mPartialVersion = oldVersion;
+        entry.mPartial = true;
+        entry.mUploaded = false;
+        mUploads.add(entry);
+
+        return true;
+    }
+
+    /**
+     * Free the ranges of an entry.
+     *
+     * <p>Frames in flight may still be reading them, thus they only get reused after those frames.
+     *
+     * @param entry entry to free the ranges of.
+     */
+    private void freeRanges(MeshBufferEntry entry) {
+        if (entry.mVertexCount > 0) {
+            mByVertex.remove(entry.mVertexStart);
+            mVertexAllocator.free(entry.mVertexStart, entry.mVertexCount);
+        }
+
+        if (entry.mIndexCount > 0) {
+            mByIndex.remove(entry.mIndexStart);
+            mIndexAllocator.free(entry.mIndexStart, entry.mIndexCount);
+        }
+    }
+
+    /**
+     * Allocate a range, growing the allocator if it does not fit.
+     *
+     * @param allocator allocator to allocate from.
+     * @param size number of units to allocate.
+     * @return offset of the range.
+     */
+    private static int allocate(RangeAllocator allocator, int size) {
+        int offset = allocator.allocate(size);
+
+        while (offset < 0) {
+            allocator.grow(allocator.getCapacity() * 2);
+            offset = allocator.allocate(size);
+        }
+
+        return offset;
     }
 
     /**
      * Commits mesh buffer changes.
      *
-     * <p>This method will commit any changes, and return a new mesh buffer, if there were such
-     * changes.
+     * <p>This method will upload any added meshes, and compact the buffers a bit. A new mesh buffer
+     * is only returned if the buffers had to grow.
      *
      * @param graphicsQueue graphics vulkan queue
      * @param commandPool command pool of the device
-     * @return new VulkanMeshBuffer if this one was dirty (check with {@code isDirty}), {@code this}
-     *     otherwise.
+     * @return new VulkanMeshBuffer if the buffers had to grow, {@code this} otherwise. The old mesh
+     *     buffer must be kept around until frames using it are done.
      * @throws RendererException if a buffer fails to be created.
      */
     public VulkanMeshBuffer commitChanges(VkQueue graphicsQueue, long commandPool)
             throws RendererException {
-        if (mDirty) {
-            mDirty = false;
-            VulkanMeshBuffer ret = new VulkanMeshBuffer();
-
-            ret.mDevice = mDevice;
-            ret.mPhysicalDevice = mPhysicalDevice;
+        if (!mDirty) {
+            return this;
+        }
 
-            ret.mMaxVertexOffset = mMaxVertexOffset;
-            ret.mMaxIndexOffset = mMaxIndexOffset;
+        mDirty = false;
 
-            ret.mLoadedMeshes = mLoadedMeshes;
-            ret.mEntries = mEntries;
-            ret.mVertexBuffer = createVertexBuffer(graphicsQueue, commandPool);
-            ret.mIndexBuffer = createIndexBuffer(graphicsQueue, commandPool);
+        VulkanMeshBuffer ret = this;
 
-            return ret;
-        } else {
-            return this;
+        if (mVertexBuffer == null
+                || mVertexCapacity < mVertexAllocator.getCapacity()
+                || mIndexCapacity < mIndexAllocator.getCapacity()) {
+            ret = grow(graphicsQueue, commandPool);
         }
+
+        ret.upload(graphicsQueue, commandPool);
+
+        return ret;
     }
 
     /**
      * Cleanup all unushed meshes
      *
      * <p>This method will walk the mesh buffer and find any meshes that are no longer used (have
-     * their refcount as 0), remove them from the buffer, and then compact all other meshes down.
+     * their refcount as 0), and free their ranges. Call it once per frame.
      */
     public void cleanupUnusedMeshes() {
-        int curIdxSub = 0;
-        int curVertSub = 0;
-
-        for (MeshBufferEntry entry : mEntries) {
-            if (entry.mMesh.getRefCount() <= 0) {
-                mDirty = true;
-                curIdxSub += entry.mMeshDescriptor.mIndexCount * 4;
-                curVertSub += entry.mMesh.getVertices().length * Vertex.SIZEOF;
-            } else {
-                entry.mMeshDescriptor.mIndexOffset -= curIdxSub;
-                entry.mMeshDescriptor.mVertexOffset -= curVertSub;
-            }
-        }
+        mVertexAllocator.nextFrame();
+        mIndexAllocator.nextFrame();
 
-        if (mDirty) {
-            mEntries.removeIf(e -> e.mMesh.getRefCount() <= 0);
+        Iterator<MeshBufferEntry> iter = mLoadedMeshes.values().iterator();
 
-            mLoadedMeshes.clear();
+        while (iter.hasNext()) {
+            MeshBufferEntry entry = iter.next();
 
-            mMaxIndexOffset -= curIdxSub;
-            mMaxVertexOffset -= curVertSub;
+            if (entry.mMesh.getRefCount() > 0) {
+                continue;
+            }
 
-            int len = mEntries.size();
+            iter.remove();
 
-            for (int i = 0; i < len; i++) {
-                MeshBufferEntry entry = mEntries.get(i);
-                mLoadedMeshes.put(entry.mMesh, i);
+            if (!entry.mUploaded) {
+                mUploads.remove(entry);
             }
+
+            freeRanges(entry);
+        }
+
+        if (isFragmented(mVertexAllocator) || isFragmented(mIndexAllocator)) {
+            mDirty = true;
         }
     }
 
@@ -243,147 +478,320 @@ class VulkanMeshBuffer implements NativeResource {
     }
 
     /**
-     * Create a vertex buffer.
+     * Check whether enough of an allocator's used range is in holes for compaction to start.
      *
-     * <p>As the name implies, this buffer holds vertices
+     * @param allocator allocator to check.
+     * @return {@code true} if meshes should be moved down.
+     */
+    private static boolean isFragmented(RangeAllocator allocator) {
+        int holes = allocator.getEnd() - allocator.getUsed();
+        return holes > Math.max(DEFRAG_MIN_HOLES, allocator.getUsed() / 4);
+    }
+
+    /**
+     * Create a mesh buffer with large enough buffers, and copy this buffer's contents over.
+     *
+     * <p>Allocation state is handed over to the new mesh buffer.
      *
      * @param graphicsQueue graphics queue of the device.
      * @param commandPool command pool of the device.
-     * @return new vertex buffer.
-     * @throws RendererException if vertex buffer fails to be created.
+     * @return the new mesh buffer.
+     * @throws RendererException if the buffers fail to be created.
      */
-    private VulkanBuffer createVertexBuffer(VkQueue graphicsQueue, long commandPool)
+    private VulkanMeshBuffer grow(VkQueue graphicsQueue, long commandPool)
             throws RendererException {
-        log.fine("Create vertex buffer");
-
-        int vertexCount = 0;
+        VulkanMeshBuffer ret = new VulkanMeshBuffer();
+
+        ret.mDevice = mDevice;
+        ret.mPhysicalDevice = mPhysicalDevice;
+        ret.mVertexAllocator = mVertexAllocator;
+        ret.mIndexAllocator = mIndexAllocator;
+        ret.mLoadedMeshes = mLoadedMeshes;
+        ret.mByVertex = mByVertex;
+        ret.mByIndex = mByIndex;
+        ret.mUploads = mUploads;
+
+        ret.mVertexCapacity = mVertexAllocator.getCapacity();
+        ret.mIndexCapacity = mIndexAllocator.getCapacity();
+
+        log.fine("Create mesh buffers");
+
+        ret.mVertexBuffer =
+                createLocalBuffer(
+                        (long) ret.mVertexCapacity * Vertex.SIZEOF,
+                        VK_BUFFER_USAGE_VERTEX_BUFFER_BIT);
+        ret.mIndexBuffer =
+                createLocalBuffer(
+                        (long) ret.mIndexCapacity * INDEX_SIZE, VK_BUFFER_USAGE_INDEX_BUFFER_BIT);
 
-        for (Mesh m : mLoadedMeshes.keySet()) {
-            vertexCount += m.getVertices().length;
+        if (mVertexBuffer != null) {
+            VkCommandBuffer commandBuffer =
+                    Renderer.beginSingleUseCommandBuffer(mDevice, commandPool);
+            mVertexBuffer.copyTo(
+                    commandBuffer, ret.mVertexBuffer, (long) mVertexCapacity * Vertex.SIZEOF);
+            mIndexBuffer.copyTo(
+                    commandBuffer, ret.mIndexBuffer, (long) mIndexCapacity * INDEX_SIZE);
+            Renderer.endSingleUseCommandBuffer(commandBuffer, mDevice, graphicsQueue, commandPool);
         }
 
-        try (MemoryStack stack = stackPush()) {
+        return ret;
+    }
 
-            long size = vertexCount * Vertex.SIZEOF;
+    /**
+     * Create a device local buffer, that can be copied to, and from.
+     *
+     * @param size size of the buffer, in bytes.
+     * @param usageBits target usage bits for the buffer.
+     * @return the new buffer.
+     * @throws RendererException if the buffer fails to be created.
+     */
+    private VulkanBuffer createLocalBuffer(long size, int usageBits) throws RendererException {
+        return new VulkanBuffer(
+                mDevice,
+                mPhysicalDevice,
+                size,
+                VK_BUFFER_USAGE_TRANSFER_SRC_BIT | VK_BUFFER_USAGE_TRANSFER_DST_BIT | usageBits,
+                VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT);
+    }
+
+    /**
+     * Move meshes down into holes of an allocator.
+     *
+     * @param allocator allocator of the buffer.
+     * @param byStart entries of the buffer, by their first unit.
+     * @param vertices whether the buffer is the vertex buffer, or the index buffer.
+     * @param copies list to add the needed copies to.
+     */
+    private void defragment(
+            RangeAllocator allocator,
+            TreeMap<Integer, MeshBufferEntry> byStart,
+            boolean vertices,
+            List<Copy> copies) {
+        int unitSize = vertices ? Vertex.SIZEOF : INDEX_SIZE;
+        int budget = DEFRAG_BUDGET;
+
+        while (budget > 0 && isFragmented(allocator)) {
+            Map.Entry<Integer, MeshBufferEntry> last = byStart.lastEntry();
+
+            // Meshes that are not uploaded yet will be moved on a later commit
+            if (last == null || !last.getValue().mUploaded) {
+                return;
+            }
+
+            MeshBufferEntry entry = last.getValue();
+            int start = last.getKey();
+            int count = vertices ? entry.mVertexCount : entry.mIndexCount;
+            int target = allocator.allocateBelow(count, start);
+
+            if (target < 0) {
+                return;
+            }
+
+            // Frames in flight may still read the old range, thus it is only freed after them
+            allocator.free(start, count);
+            byStart.remove(start);
+            byStart.put(target, entry);
+
+            if (vertices) {
+                entry.mVertexStart = target;
+            } else {
+                entry.mIndexStart = target;
+            }
+
+            entry.updateDescriptor();
+            copies.add(
+                    new Copy((long) start * unitSize, (long) target * unitSize, count * unitSize));
+            budget -= count;
+        }
+    }
+
+    /**
+     * Compact the buffers, and upload the new meshes.
+     *
+     * <p>Only the ranges of new meshes are staged and copied.
+     *
+     * @param graphicsQueue graphics queue of the device.
+     * @param commandPool command pool of the device.
+     * @throws RendererException if the staging buffer fails to be created.
+     */
+    private void upload(VkQueue graphicsQueue, long commandPool) throws RendererException {
+        List<Copy> vertexMoves = new ArrayList<>();
+        List<Copy> indexMoves = new ArrayList<>();
+
+        defragment(mVertexAllocator, mByVertex, true, vertexMoves);
+        defragment(mIndexAllocator, mByIndex, false, indexMoves);
+
+        long size = 0;
+
+        for (MeshBufferEntry entry : mUploads) {
+            if (entry.mPartial) {
+                // Unchanged vertices are copied over from the old range
+                for (int v = 0; v < entry.mVertexCount; v++) {
+                    if (entry.isVertexDirty(v)) {
+                        size += Vertex.SIZEOF;
+                    } else {
+                        addVertexMove(entry, v, vertexMoves);
+                    }
+                }
+            } else {
+                size += entry.mVertexCount * Vertex.SIZEOF + entry.mIndexCount * INDEX_SIZE;
+            }
+        }
 
-            try (VulkanBuffer stagingBuffer =
-                    new VulkanBuffer(
-                            mDevice,
-                            mPhysicalDevice,
-                            size,
-                            VK_BUFFER_USAGE_TRANSFER_SRC_BIT,
-                            VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT
-                                    | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT)) {
+        if (size == 0 && vertexMoves.isEmpty() && indexMoves.isEmpty()) {
+            mUploads.clear();
+            return;
+        }
 
+        List<Copy> vertexUploads = new ArrayList<>();
+        List<Copy> indexUploads = new ArrayList<>();
+
+        try (MemoryStack stack = stackPush();
+                VulkanBuffer stagingBuffer =
+                        size == 0
+                                ? null
+                                : new VulkanBuffer(
+                                        mDevice,
+                                        mPhysicalDevice,
+                                        size,
+                                        VK_BUFFER_USAGE_TRANSFER_SRC_BIT,
+                                        VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT
+                                                | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT)) {
+
+            if (stagingBuffer != null) {
                 PointerBuffer pData = stack.pointers(0);
                 vkMapMemory(mDevice, stagingBuffer.mMemory, 0, size, 0, pData);
                 ByteBuffer byteBuffer = pData.getByteBuffer((int) size);
-                for (MeshBufferEntry entry : mEntries) {
-                    int voff = entry.mMeshDescriptor.mVertexOffset;
-                    for (Vertexc v : entry.mMesh.getVertices()) {
-                        v.copyTo(voff, byteBuffer);
-                        voff += Vertex.SIZEOF;
+
+                int offset = 0;
+
+                for (MeshBufferEntry entry : mUploads) {
+                    offset = stageVertices(entry, byteBuffer, offset, vertexUploads);
+
+                    int indexBytes = entry.mPartial ? 0 : entry.mIndexCount * INDEX_SIZE;
+                    if (indexBytes > 0) {
+                        byteBuffer.position(offset);
+                        for (int i : entry.mIndices) {
+                            byteBuffer.putInt(i);
+                        }
+                        byteBuffer.rewind();
+                        indexUploads.add(
+                                new Copy(offset, entry.mMeshDescriptor.mIndexOffset, indexBytes));
+                        offset += indexBytes;
                     }
-                    byteBuffer.rewind();
                 }
+
                 vkUnmapMemory(mDevice, stagingBuffer.mMemory);
+            }
 
-                return transitionToLocalMemory(
-                        stagingBuffer,
-                        size,
-                        VK_BUFFER_USAGE_VERTEX_BUFFER_BIT,
-                        graphicsQueue,
-                        commandPool);
+            for (MeshBufferEntry entry : mUploads) {
+                entry.mUploaded = true;
+                entry.mPartial = false;
+                entry.mVertexVersions = null;
             }
+
+            mUploads.clear();
+
+            VkCommandBuffer commandBuffer =
+                    Renderer.beginSingleUseCommandBuffer(mDevice, commandPool);
+
+            // Moves and uploads never touch the same ranges, thus need no barriers in between
+            copyRegions(commandBuffer, stagingBuffer, mVertexBuffer, vertexUploads, stack);
+            copyRegions(commandBuffer, stagingBuffer, mIndexBuffer, indexUploads, stack);
+            copyRegions(commandBuffer, mVertexBuffer, mVertexBuffer, vertexMoves, stack);
+            copyRegions(commandBuffer, mIndexBuffer, mIndexBuffer, indexMoves, stack);
+
+            Renderer.endSingleUseCommandBuffer(commandBuffer, mDevice, graphicsQueue, commandPool);
         }
     }
 
     /**
-     * Create index buffer
+     * Stage the vertices of an entry that are not on the GPU yet.
      *
-     * <p>This buffer holds indices of the vertices to render in multiples of 3.
+     * <p>Consecutive staged vertices are uploaded with a single copy.
      *
-     * @param graphicsQueue graphics queue of the device.
-     * @param commandPool command pool of the device.
-     * @return new index buffer.
-     * @throws RendererException if index buffer fails to be created.
+     * @param entry entry to stage.
+     * @param byteBuffer mapped staging buffer.
+     * @param offset offset in the staging buffer to write at, in bytes.
+     * @param copies list to add the uploads to.
+     * @return offset after the staged vertices.
      */
-    private VulkanBuffer createIndexBuffer(VkQueue graphicsQueue, long commandPool)
-            throws RendererException {
-        log.fine("Setup index buffer");
+    private static int stageVertices(
+            MeshBufferEntry entry, ByteBuffer byteBuffer, int offset, List<Copy> copies) {
+        int runStart = -1;
 
-        int indexCount = 0;
+        for (int v = 0; v <= entry.mVertexCount; v++) {
+            boolean dirty = v < entry.mVertexCount && entry.isVertexDirty(v);
 
-        for (Mesh m : mLoadedMeshes.keySet()) {
-            indexCount += m.getIndices().length;
+            if (dirty) {
+                if (runStart < 0) {
+                    runStart = v;
+                }
+                entry.mVertices[v].copyTo(offset + (v - runStart) * Vertex.SIZEOF, byteBuffer);
+            } else if (runStart >= 0) {
+                int bytes = (v - runStart) * Vertex.SIZEOF;
+                long dst = entry.mMeshDescriptor.mVertexOffset + (long) runStart * Vertex.SIZEOF;
+                copies.add(new Copy(offset, dst, bytes));
+                offset += bytes;
+                runStart = -1;
+            }
         }
 
-        try (MemoryStack stack = stackPush()) {
-
-            long size = indexCount * 4;
+        return offset;
+    }
 
-            try (VulkanBuffer stagingBuffer =
-                    new VulkanBuffer(
-                            mDevice,
-                            mPhysicalDevice,
-                            size,
-                            VK_BUFFER_USAGE_TRANSFER_SRC_BIT,
-                            VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT
-                                    | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT)) {
+    /**
+     * Queue a copy of an unchanged vertex from the old range of an entry to its new one.
+     *
+     * <p>Copies of consecutive vertices are merged.
+     *
+     * @param entry entry being updated.
+     * @param index index of the vertex.
+     * @param copies list to add the copy to.
+     */
+    private static void addVertexMove(MeshBufferEntry entry, int index, List<Copy> copies) {
+        long src = (long) (entry.mOldVertexStart + index) * Vertex.SIZEOF;
+        long dst = (long) (entry.mVertexStart + index) * Vertex.SIZEOF;
 
-                PointerBuffer pData = stack.pointers(0);
-                vkMapMemory(mDevice, stagingBuffer.mMemory, 0, size, 0, pData);
-                ByteBuffer byteBuffer = pData.getByteBuffer((int) size);
-                for (MeshBufferEntry entry : mEntries) {
-                    ByteBuffer buf =
-                            (ByteBuffer) byteBuffer.position(entry.mMeshDescriptor.mIndexOffset);
-                    for (int i : entry.mMesh.getIndices()) {
-                        buf.putInt(i);
-                    }
-                    byteBuffer.rewind();
-                }
-                vkUnmapMemory(mDevice, stagingBuffer.mMemory);
+        if (!copies.isEmpty()) {
+            Copy last = copies.get(copies.size() - 1);
 
-                return transitionToLocalMemory(
-                        stagingBuffer,
-                        size,
-                        VK_BUFFER_USAGE_INDEX_BUFFER_BIT,
-                        graphicsQueue,
-                        commandPool);
+            if (last.mSrc + last.mSize == src && last.mDst + last.mSize == dst) {
+                Copy merged = new Copy(last.mSrc, last.mDst, last.mSize + Vertex.SIZEOF);
+                copies.set(copies.size() - 1, merged);
+                return;
             }
         }
+
+        copies.add(new Copy(src, dst, Vertex.SIZEOF));
     }
 
     /**
-     * Transition a staging buffer into device local memory.
+     * Record copies of regions between buffers.
      *
-     * @param stagingBuffer staging vulkan buffer.
-     * @param size size of the buffer.
-     * @param usageBits target usage bits for the buffer.
-     * @param graphicsQueue graphics queue of the device.
-     * @param commandPool command pool for the device.
-     * @return buffer inside local graphics memory.
-     * @throws RendererException if local buffer fails to be created.
+     * @param commandBuffer command buffer to record to.
+     * @param src source buffer.
+     * @param dst destination buffer.
+     * @param copies regions to copy.
+     * @param stack stack to allocate copy regions on.
      */
-    private VulkanBuffer transitionToLocalMemory(
-            VulkanBuffer stagingBuffer,
-            long size,
-            int usageBits,
-            VkQueue graphicsQueue,
-            long commandPool)
-            throws RendererException {
-        VulkanBuffer outputBuffer =
-                new VulkanBuffer(
-                        mDevice,
-                        mPhysicalDevice,
-                        size,
-                        VK_BUFFER_USAGE_TRANSFER_DST_BIT | usageBits,
-                        VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT);
-
-        VkCommandBuffer commandBuffer = Renderer.beginSingleUseCommandBuffer(mDevice, commandPool);
-        stagingBuffer.copyTo(commandBuffer, outputBuffer, size);
-        Renderer.endSingleUseCommandBuffer(commandBuffer, mDevice, graphicsQueue, commandPool);
-
-        return outputBuffer;
+    private static void copyRegions(
+            VkCommandBuffer commandBuffer,
+            VulkanBuffer src,
+            VulkanBuffer dst,
+            List<Copy> copies,
+            MemoryStack stack) {
+        if (copies.isEmpty()) {
+            return;
+        }
+
+        VkBufferCopy.Buffer regions = VkBufferCopy.callocStack(copies.size(), stack);
+
+        for (int i = 0; i < copies.size(); i++) {
+            Copy copy = copies.get(i);
+            regions.get(i).srcOffset(copy.mSrc).dstOffset(copy.mDst).size(copy.mSize);
+        }
+
+        vkCmdCopyBuffer(commandBuffer, src.mBuffer, dst.mBuffer, regions);
     }
 }
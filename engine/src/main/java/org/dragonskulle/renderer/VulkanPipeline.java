@@ -343,26 +343,6 @@ class VulkanPipeline implements NativeResource {
 
             // TODO: Dynamic states
 
-            int fragmentConstantSize = mShaderSet.getFragmentPushConstantSize();
-
-            int constantRanges = 1 + fragmentConstantSize > 0 ? 1 : 0;
-
-            VkPushConstantRange.Buffer pushConstantRanges =
-                    VkPushConstantRange.callocStack(constantRanges, stack);
-
-            if (fragmentConstantSize > 0) {
-                VkPushConstantRange fragmentConstantRange =
-                        pushConstantRanges.get(--constantRanges);
-                fragmentConstantRange.offset(0);
-                fragmentConstantRange.size(fragmentConstantSize);
-                fragmentConstantRange.stageFlags(VK_SHADER_STAGE_FRAGMENT_BIT);
-            }
-
-            VkPushConstantRange vertexConstantRange = pushConstantRanges.get(--constantRanges);
-            vertexConstantRange.offset(0);
-            vertexConstantRange.size(VertexConstants.SIZEOF);
-            vertexConstantRange.stageFlags(VK_SHADER_STAGE_VERTEX_BIT);
-
             VkPipelineLayoutCreateInfo pipelineLayoutInfo =
                     VkPipelineLayoutCreateInfo.callocStack(stack);
             pipelineLayoutInfo.sType(VK_STRUCTURE_TYPE_PIPELINE_LAYOUT_CREATE_INFO);
@@ -372,7 +352,20 @@ class VulkanPipeline implements NativeResource {
                 pipelineLayoutInfo.pSetLayouts(pDescriptorSetLayout);
             }
 
-            pipelineLayoutInfo.pPushConstantRanges(pushConstantRanges);
+            int fragmentConstantSize = mShaderSet.getFragmentPushConstantSize();
+
+            // Camera matrices come from frame uniforms, thus only fragment shaders take constants
+            if (fragmentConstantSize > 0) {
+                VkPushConstantRange.Buffer pushConstantRanges =
+                        VkPushConstantRange.callocStack(1, stack);
+
+                VkPushConstantRange fragmentConstantRange = pushConstantRanges.get(0);
+                fragmentConstantRange.offset(0);
+                fragmentConstantRange.size(fragmentConstantSize);
+                fragmentConstantRange.stageFlags(VK_SHADER_STAGE_FRAGMENT_BIT);
+
+                pipelineLayoutInfo.pPushConstantRanges(pushConstantRanges);
+            }
 
             LongBuffer pPipelineLayout = stack.longs(0);
 
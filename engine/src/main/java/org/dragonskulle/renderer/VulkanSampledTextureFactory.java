@@ -4,6 +4,7 @@ package org.dragonskulle.renderer;
 import static org.lwjgl.vulkan.VK10.vkDestroyImageView;
 
 import java.util.HashMap;
+import java.util.Map;
 import org.lwjgl.system.NativeResource;
 import org.lwjgl.vulkan.VkCommandBuffer;
 import org.lwjgl.vulkan.VkDevice;
@@ -27,6 +28,8 @@ class VulkanSampledTextureFactory implements NativeResource {
     private static class Entry {
         VulkanSampledTexture mSampledTexture;
         VulkanImage mImage;
+        /** Texture the image was uploaded from. */
+        Texture mSource;
 
         /**
          * Create a sampled texture entry, loading the texture onto GPU memory.
@@ -39,9 +42,10 @@ class VulkanSampledTextureFactory implements NativeResource {
                 throws RendererException {
             VkCommandBuffer cmd =
                     Renderer.beginSingleUseCommandBuffer(factory.mDevice, factory.mCommandPool);
+            mSource = texture.getTexture().get();
             mImage =
                     new VulkanImage(
-                            texture.getTexture().get(),
+                            mSource,
                             texture.isLinear(),
                             cmd,
                             factory.mDevice,
@@ -97,12 +101,48 @@ class VulkanSampledTextureFactory implements NativeResource {
         return entry.mSampledTexture;
     }
 
+    /**
+     * Free GPU copies of a texture that is no longer used.
+     *
+     * <p>This is used when a texture gets reloaded. Since {@link SampledTexture} hashes by the
+     * underlying texture object, lookups with the reloaded texture already miss the stale entries,
+     * this only releases them. The GPU must not be using them anymore.
+     *
+     * @param texture the texture object that was replaced.
+     * @return {@code true} if any entries were freed.
+     */
+    public boolean invalidate(Texture texture) {
+        // Stale keys hash differently now, thus they can not be removed in place
+        HashMap<SampledTexture, Entry> kept = new HashMap<>();
+
+        for (Map.Entry<SampledTexture, Entry> entry : mTextures.entrySet()) {
+            if (entry.getValue().mSource == texture) {
+                freeEntry(entry.getValue());
+            } else {
+                kept.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        boolean removed = kept.size() != mTextures.size();
+        mTextures = kept;
+        return removed;
+    }
+
     /** Free all textures. */
     @Override
     public void free() {
         for (Entry entry : mTextures.values()) {
-            vkDestroyImageView(mDevice, entry.mSampledTexture.getImageView(), null);
-            entry.mImage.free();
+            freeEntry(entry);
         }
     }
+
+    /**
+     * Free GPU resources of an entry.
+     *
+     * @param entry the entry to free.
+     */
+    private void freeEntry(Entry entry) {
+        vkDestroyImageView(mDevice, entry.mSampledTexture.getImageView(), null);
+        entry.mImage.free();
+    }
 }
@@ -97,16 +97,71 @@ class VulkanShaderDescriptorPool implements NativeResource {
             ShaderSet shaderSet,
             int descriptorCount)
             throws RendererException {
+        int[][] uniformDataInfos = {
+            {shaderSet.getVertexUniformDataSize(), VK_SHADER_STAGE_VERTEX_BIT},
+            {shaderSet.getGeometryUniformDataSize(), VK_SHADER_STAGE_GEOMETRY_BIT},
+            {shaderSet.getFragmentUniformDataSize(), VK_SHADER_STAGE_FRAGMENT_BIT}
+        };
+
+        return createPool(device, physicalDevice, uniformDataInfos, descriptorCount);
+    }
+
+    /**
+     * Create a descriptor pool for {@link FrameUniforms}.
+     *
+     * <p>The pool has a single uniform buffer binding, visible to vertex and fragment shaders, with
+     * one block per descriptor set.
+     *
+     * @param device logical device to use.
+     * @param physicalDevice physical device to use.
+     * @param descriptorCount number of descriptors to allocate, one per swapchain image.
+     * @return vulkan descriptor pool for frame uniforms.
+     * @throws RendererException if there is a severe error creating the pool.
+     */
+    public static VulkanShaderDescriptorPool createFramePool(
+            VkDevice device, PhysicalDevice physicalDevice, int descriptorCount)
+            throws RendererException {
+        int[][] uniformDataInfos = {
+            {FrameUniforms.STRIDE, VK_SHADER_STAGE_VERTEX_BIT | VK_SHADER_STAGE_FRAGMENT_BIT}
+        };
+
+        return createPool(device, physicalDevice, uniformDataInfos, descriptorCount);
+    }
+
+    /**
+     * Create a descriptor pool.
+     *
+     * @param device logical device to use.
+     * @param physicalDevice physical device to use.
+     * @param uniformDataInfos pairs of uniform data sizes and the shader stages they are used in.
+     *     Pairs with zero size are skipped.
+     * @param descriptorCount number of descriptors to allocate.
+     * @return vulkan descriptor pool for the input. {@code null} if there is a failure.
+     * @throws RendererException if there is a severe error creating the pool.
+     */
+    private static VulkanShaderDescriptorPool createPool(
+            VkDevice device,
+            PhysicalDevice physicalDevice,
+            int[][] uniformDataInfos,
+            int descriptorCount)
+            throws RendererException {
+        int bindingCount = 0;
+
+        for (int[] dataInfo : uniformDataInfos) {
+            bindingCount += dataInfo[0] > 0 ? 1 : 0;
+        }
+
         VulkanShaderDescriptorPool ret = new VulkanShaderDescriptorPool();
         ret.mDevice = device;
-        ret.mPool = ret.createDescriptorPool(shaderSet, descriptorCount);
+        ret.mPool = ret.createDescriptorPool(bindingCount, descriptorCount);
 
         if (ret.mPool == 0) {
             return null;
         }
 
         ret.mSetLayout =
-                ret.createDescriptorSetLayoutAndBuffers(shaderSet, physicalDevice, descriptorCount);
+                ret.createDescriptorSetLayoutAndBuffers(
+                        uniformDataInfos, bindingCount, physicalDevice, descriptorCount);
 
         try (MemoryStack stack = stackPush()) {
             // Allocate descriptor sets
@@ -151,6 +206,18 @@ class VulkanShaderDescriptorPool implements NativeResource {
         return mDescriptorSets == null ? 0 : mDescriptorSets[index];
     }
 
+    /**
+     * Get the uniform buffer of a binding.
+     *
+     * <p>Descriptor set {@code i} views the range starting at {@code i} times the binding size.
+     *
+     * @param binding index of the binding.
+     * @return the uniform buffer, which is host visible and coherent.
+     */
+    public VulkanBuffer getUniformBuffer(int binding) {
+        return mDescriptorSetInfos[binding].mUniformBuffer;
+    }
+
     /**
      * Update a descriptor set.
      *
@@ -191,19 +258,17 @@ class VulkanShaderDescriptorPool implements NativeResource {
     /**
      * Create a descriptor pool.
      *
-     * @param shaderSet shader set to use.
+     * @param layoutCount number of uniform bindings per descriptor set.
      * @param descriptorCount number of descriptors to allocate.
      * @return handle to newly created descriptor pool.
      * @throws RendererException if there is an error creating the pool
      */
-    private long createDescriptorPool(ShaderSet shaderSet, int descriptorCount)
+    private long createDescriptorPool(int layoutCount, int descriptorCount)
             throws RendererException {
         log.fine("Setup descriptor pool");
 
         try (MemoryStack stack = stackPush()) {
 
-            int layoutCount = shaderSet.numUniformBindings();
-
             if (layoutCount == 0) {
                 return 0;
             }
@@ -237,38 +302,34 @@ class VulkanShaderDescriptorPool implements NativeResource {
      * <p>This layout is used in creating descriptor sets. It describes the properties shaders have
      * in different stages.
      *
-     * @param shaderSet shader set to use.
+     * @param uniformDataInfos pairs of uniform data sizes and the shader stages they are used in.
+     * @param bindingCount number of pairs with non-zero size.
      * @param physicalDevice physical device to use.
      * @param descriptorCount number of descriptors to create.
      * @return newly created descriptor set layout. Buffers are set inside the method.
      * @throws RendererException if there is an error allocating memory
      */
     private long createDescriptorSetLayoutAndBuffers(
-            ShaderSet shaderSet, PhysicalDevice physicalDevice, int descriptorCount)
+            int[][] uniformDataInfos,
+            int bindingCount,
+            PhysicalDevice physicalDevice,
+            int descriptorCount)
             throws RendererException {
         log.fine("Create descriptor set layout");
 
         try (MemoryStack stack = stackPush()) {
-            int bindingCount = shaderSet.numUniformBindings();
-
             mDescriptorSetInfos = new DescriptorSetInfo[bindingCount];
 
-            int[][] uniformDataInfos = {
-                {shaderSet.getVertexUniformDataSize(), VK_SHADER_STAGE_VERTEX_BIT},
-                {shaderSet.getGeometryUniformDataSize(), VK_SHADER_STAGE_GEOMETRY_BIT},
-                {shaderSet.getFragmentUniformDataSize(), VK_SHADER_STAGE_FRAGMENT_BIT}
-            };
-
             int infoIndex = 0;
 
             for (int[] dataInfo : uniformDataInfos) {
-                if (dataInfo[0] < 0) {
+                if (dataInfo[0] <= 0) {
                     continue;
                 }
 
-                mDescriptorSetInfos[infoIndex++] =
+                mDescriptorSetInfos[infoIndex] =
                         new DescriptorSetInfo(
-                                new DescriptorBinding(bindingCount, dataInfo[0]),
+                                new DescriptorBinding(infoIndex, dataInfo[0]),
                                 new VulkanBuffer(
                                         mDevice,
                                         physicalDevice,
@@ -277,6 +338,7 @@ class VulkanShaderDescriptorPool implements NativeResource {
                                         VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT
                                                 | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT),
                                 dataInfo[1]);
+                infoIndex++;
             }
 
             VkDescriptorSetLayoutBinding.Buffer layoutBindings =
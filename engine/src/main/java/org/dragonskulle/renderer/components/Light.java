@@ -45,14 +45,48 @@ public class Light extends Component {
     /** Colour of the light (float RGB). */
     @Getter private final Vector3f mColour = new Vector3f(1f);
 
+    /** Direction of the light, as of the last {@link #prepareLights} call. */
     private final Vector3f mDownVec = new Vector3f();
+    /** Colour multiplied by intensity, as of the last {@link #prepareLights} call. */
     private final Vector3f mFinalColour = new Vector3f();
 
+    /**
+     * Compute the values written to instance and uniform buffers.
+     *
+     * <p>Call this once per frame, before writing lights. Writing only reads the computed values,
+     * thus it can be done from multiple threads at once.
+     *
+     * @param lights lights to prepare.
+     */
+    public static void prepareLights(List<Light> lights) {
+        for (Light light : lights) {
+            light.getGameObject().getTransform().getUpVector(light.mDownVec);
+            light.mDownVec.negate();
+            light.mFinalColour.set(light.mColour).mul(light.mIntensity);
+        }
+    }
+
+    /**
+     * Copy another light, including the values computed by {@link #prepareLights}.
+     *
+     * <p>The copy does not need to be attached to any object, and can be written from another
+     * thread, while the original keeps changing. It must not be prepared again.
+     *
+     * @param other prepared light to copy.
+     */
+    public void copyPrepared(Light other) {
+        mLightType = other.mLightType;
+        mIntensity = other.mIntensity;
+        mColour.set(other.mColour);
+        mDownVec.set(other.mDownVec);
+        mFinalColour.set(other.mFinalColour);
+    }
+
     /**
      * Write light information to instance buffer.
      *
      * <p>This method will write exactly numLights number of lights. It will fill unused entries
-     * with zeroes.
+     * with zeroes. The lights must be prepared with {@link #prepareLights}.
      *
      * @param offset starting offset to write at.
      * @param buffer buffer to write at.
@@ -62,68 +96,58 @@ public class Light extends Component {
      */
     public static int writeLights(
             int offset, ByteBuffer buffer, List<Light> lights, int numLights) {
+        return writeLights(offset, buffer, lights, numLights, AttributeDescription.LIGHT_HALF_SIZE);
+    }
+
+    /**
+     * Write light information to a buffer, with each direction and colour a set distance apart.
+     *
+     * <p>All directions are written first, followed by all colours. This is used for uniform
+     * buffers, where std140 rules place array elements 16 bytes apart.
+     *
+     * @param offset starting offset to write at.
+     * @param buffer buffer to write at.
+     * @param lights list of lights to choose from.
+     * @param numLights number of lights expected by the shader.
+     * @param stride distance between consecutive entries, at least {@link
+     *     AttributeDescription#LIGHT_HALF_SIZE}.
+     * @return offset after the written bytes.
+     */
+    public static int writeLights(
+            int offset, ByteBuffer buffer, List<Light> lights, int numLights, int stride) {
 
         int lightsSz = lights.size();
 
         for (int i = 0; i < numLights; i++) {
             Light light = lightsSz > i ? lights.get(i) : null;
-            if (light == null) {
-                offset = writeZeroToBuffer(offset, buffer);
-            } else {
-                offset = light.writeDirToBuffer(offset, buffer);
-            }
+            writeVec(offset, buffer, light == null ? null : light.mDownVec);
+            offset += stride;
         }
 
         for (int i = 0; i < numLights; i++) {
             Light light = lightsSz > i ? lights.get(i) : null;
-            if (light == null) {
-                offset = writeZeroToBuffer(offset, buffer);
-            } else {
-                offset = light.writeColToBuffer(offset, buffer);
-            }
+            writeVec(offset, buffer, light == null ? null : light.mFinalColour);
+            offset += stride;
         }
 
         return offset;
     }
 
     /**
-     * Write zero lights to buffer.
+     * Write a vector of light data to buffer.
      *
      * @param offset offset to write at.
      * @param buffer buffer to write to.
-     * @return offset after the written buffer.
+     * @param vec vector to write, {@code null} to write zeroes.
      */
-    private static int writeZeroToBuffer(int offset, ByteBuffer buffer) {
-        buffer.putFloat(offset, 0f);
-        buffer.putFloat(offset + 4, 0f);
-        buffer.putFloat(offset + 8, 0f);
-        return offset + AttributeDescription.LIGHT_HALF_SIZE;
-    }
-
-    /**
-     * Write direction of light to buffer.
-     *
-     * @param offset offset to write to.
-     * @param buffer buffer to write to.
-     * @return offset right after the written data.
-     */
-    private int writeDirToBuffer(int offset, ByteBuffer buffer) {
-        getGameObject().getTransform().getUpVector(mDownVec);
-        mDownVec.negate().get(offset, buffer);
-        return offset + AttributeDescription.LIGHT_HALF_SIZE;
-    }
-
-    /**
-     * Write colour of light to buffer.
-     *
-     * @param offset offset to write to.
-     * @param buffer buffer to write to.
-     * @return offset right after the written data.
-     */
-    private int writeColToBuffer(int offset, ByteBuffer buffer) {
-        mFinalColour.set(mColour).mul(mIntensity);
-        mFinalColour.get(offset, buffer);
-        return offset + AttributeDescription.LIGHT_HALF_SIZE;
+    private static void writeVec(int offset, ByteBuffer buffer, Vector3f vec) {
+        if (vec == null) {
+            buffer.putFloat(offset, 0f);
+            buffer.putFloat(offset + 4, 0f);
+            buffer.putFloat(offset + 8, 0f);
+        } else {
+            vec.get(offset, buffer);
+        }
     }
 
     @Override
@@ -8,7 +8,9 @@ import lombok.Setter;
 import lombok.experimental.Accessors;
 import org.dragonskulle.components.Component;
 import org.dragonskulle.core.Engine;
+import org.dragonskulle.core.SpatialIndex;
 import org.dragonskulle.renderer.Mesh;
+import org.dragonskulle.renderer.MeshLod;
 import org.dragonskulle.renderer.materials.IMaterial;
 import org.dragonskulle.renderer.materials.UnlitMaterial;
 import org.joml.FrustumIntersection;
@@ -20,9 +22,14 @@ import org.joml.Vector3fc;
  * Class describing a renderable object.
  *
  * @author Aurimas Blažulionis
+ *     <p>Objects can have levels of detail, which get chosen by the renderer's culling pass from
+ *     their size on screen. The base mesh is still used for culling, and bounds.
  */
 @Accessors(prefix = "m")
 public class Renderable extends Component {
+    /** Instance data version of objects that have to be rewritten every frame. */
+    public static final long UNVERSIONED = -1;
+
     /** Mesh of the object. */
     @Getter private Mesh mMesh = Mesh.HEXAGON;
     /** Material of the object. */
@@ -35,6 +42,14 @@ public class Renderable extends Component {
     /** Temporary bounding box cooredinates. */
     protected final Vector3f mTmpBB = new Vector3f();
 
+    /** Levels of detail of the mesh, {@code null} if the mesh is always drawn as is. */
+    @Getter private MeshLod mLod;
+    /** Level of detail chosen by the last culling pass, -1 if the object was too small. */
+    @Getter private int mLodLevel = 0;
+
+    /** Entry of the object in the renderer's spatial index, {@code null} if not indexed. */
+    @Getter @Setter private SpatialIndex.Entry<Renderable> mSpatialEntry;
+
     static {
         Engine.getCloner()
                 .registerFastCloner(
@@ -45,6 +60,7 @@ public class Renderable extends Component {
                                     new Renderable(
                                             toClone.mMesh,
                                             cloner.deepClone(toClone.mMaterial, clones));
+                            cloned.setLod(toClone.mLod);
                             clones.put(toClone, cloned);
                             cloned.mGameObject = cloner.deepClone(toClone.mGameObject, clones);
                             return cloned;
@@ -98,6 +114,57 @@ public class Renderable extends Component {
                 offset, buffer, getGameObject().getTransform().getWorldMatrix(), lights);
     }
 
+    /**
+     * Get the number of instances of the mesh this object draws.
+     *
+     * <p>Objects that draw many copies of their mesh, like map terrain, can override this together
+     * with {@link #writeVertexInstanceData(int, int, ByteBuffer, List)}, and have every copy drawn
+     * in the same instanced call, without needing a game object per copy. The count must not change
+     * between the renderer collecting the object, and writing its instance data.
+     *
+     * @return number of instances, 1 by default.
+     */
+    public int getInstanceCount() {
+        return 1;
+    }
+
+    /**
+     * Write vertex data of a single instance into an instance buffer.
+     *
+     * @param instance index of the instance, less than {@link #getInstanceCount}.
+     * @param offset offset into which we should write
+     * @param buffer byte buffer into which we should write
+     * @param lights list of all lights that can be used for rendering
+     */
+    public void writeVertexInstanceData(
+            int instance, int offset, ByteBuffer buffer, List<Light> lights) {
+        writeVertexInstanceData(offset, buffer, lights);
+    }
+
+    /**
+     * Get the version of the object's instance data.
+     *
+     * <p>The renderer skips writing instance data of objects whose version did not change since it
+     * last wrote them. By default, the version changes along with the transform, and the material's
+     * {@link IMaterial#getVersion}. Objects that write anything else into their instance data have
+     * to override this, and either change the version along with that data, or return {@link
+     * #UNVERSIONED}.
+     *
+     * <p>It is called on the renderer's thread, while no instance data is being written.
+     *
+     * @return the version, or {@link #UNVERSIONED}, if the data has to be rewritten every frame.
+     */
+    public long getInstanceVersion() {
+        int materialVersion = mMaterial.getVersion();
+
+        if (materialVersion == IMaterial.UNVERSIONED) {
+            return UNVERSIONED;
+        }
+
+        long changeCount = getGameObject().getTransform().getChangeCount();
+        return changeCount << 32 | (materialVersion & 0xffffffffL);
+    }
+
     /**
      * Get object depth from the camera.
      *
@@ -114,11 +181,15 @@ public class Renderable extends Component {
     /**
      * Set the mesh used on this renderable.
      *
-     * <p>This method will increase the reference count of the given mesh.
+     * <p>This method will increase the reference count of the given mesh. Levels of detail belong
+     * to the previous mesh, thus they are cleared, if the mesh changes.
      *
      * @param mesh new mesh to use.
      */
     public void setMesh(Mesh mesh) {
+        if (mesh != mMesh && mLod != null) {
+            setLod(null);
+        }
         if (mMesh != null) {
             mMesh.decRefCount();
         }
@@ -126,11 +197,112 @@ public class Renderable extends Component {
         if (mMesh != null) {
             mMesh.incRefCount();
         }
+        if (mSpatialEntry != null) {
+            if (mMesh != null) {
+                mSpatialEntry.setLocalBounds(mMesh.getBBMin(), mMesh.getBBMax());
+            } else {
+                mSpatialEntry.remove();
+                mSpatialEntry = null;
+            }
+        }
+    }
+
+    /**
+     * Set the levels of detail used on this renderable.
+     *
+     * <p>This method will increase the reference count of all the level meshes.
+     *
+     * @param lod new levels of detail, {@code null} to always draw the mesh as is.
+     */
+    public void setLod(MeshLod lod) {
+        if (mLod != null) {
+            mLod.decRefCount();
+        }
+        mLod = lod;
+        mLodLevel = 0;
+        if (mLod != null) {
+            mLod.incRefCount();
+        }
+    }
+
+    /**
+     * Get the mesh to draw, at the level of detail chosen by the last culling pass.
+     *
+     * @return mesh to draw.
+     */
+    public Mesh getDrawMesh() {
+        if (mLod == null || mLodLevel < 0) {
+            return mMesh;
+        }
+        return mLod.getMesh(mLodLevel);
+    }
+
+    /**
+     * Compute the fraction of the screen's height the object's bounding sphere covers.
+     *
+     * @param camPosition position of the camera.
+     * @param proj projection matrix of the camera.
+     * @param tmpVec temporary vector that can be used for calculations.
+     * @return screen size of the object.
+     */
+    public float getScreenSize(Vector3fc camPosition, Matrix4fc proj, Vector3f tmpVec) {
+        Matrix4fc worldMatrix = getGameObject().getTransform().getWorldMatrix();
+        worldMatrix.getScale(tmpVec);
+        float scale = Math.max(tmpVec.x, Math.max(tmpVec.y, tmpVec.z));
+        float radius = mMesh.getBBMin().distance(mMesh.getBBMax()) * 0.5f * scale;
+        // The screen's height is 2 in clip space, thus the projected radius is the fraction
+        float size = radius * Math.abs(proj.m11());
+
+        // Orthographic projections do not scale with distance
+        if (proj.m23() == 0) {
+            return size;
+        }
+
+        tmpVec.set(mMesh.getBBCenter()).mulPosition(worldMatrix);
+        float distance = camPosition.distance(tmpVec);
+
+        if (distance <= radius) {
+            return Float.POSITIVE_INFINITY;
+        }
+
+        return size / distance;
+    }
+
+    /**
+     * Choose the level of detail to draw the object at.
+     *
+     * <p>Like {@link #frustumCull}, this only touches state of this object.
+     *
+     * @param camPosition position of the camera.
+     * @param proj projection matrix of the camera.
+     * @return {@code false} if the object is too small to be drawn, {@code true} otherwise.
+     */
+    public boolean selectLod(Vector3fc camPosition, Matrix4fc proj) {
+        if (mLod == null || mMesh == null) {
+            return true;
+        }
+
+        mLodLevel = mLod.select(getScreenSize(camPosition, proj, mTmpBB), mLodLevel);
+        return mLodLevel >= 0;
+    }
+
+    /**
+     * Check whether the object is drawn regardless of where the camera is.
+     *
+     * <p>Such objects are neither culled, nor put into the renderer's spatial index.
+     *
+     * @return {@code true} if the object is never culled.
+     */
+    public boolean isAlwaysVisible() {
+        return false;
     }
 
     /**
      * Perform frustum cull check on the object.
      *
+     * <p>This only touches state of this object, thus different objects can be culled from
+     * different threads, as long as their world matrices are up to date.
+     *
      * @param intersection cached frustum planes used for intersection
      * @return {@code true} if the object is within the frustum plane, {@code false} otherwise
      */
@@ -141,15 +313,8 @@ public class Renderable extends Component {
 
         Matrix4fc worldMatrix = getGameObject().getTransform().getWorldMatrix();
 
-        mAABBMin.set(Float.POSITIVE_INFINITY);
-        mAABBMax.set(Float.NEGATIVE_INFINITY);
-
-        worldMatrix.transformPosition(mMesh.getBBMin(), mTmpBB);
-        mAABBMin.min(mTmpBB);
-        mAABBMax.max(mTmpBB);
-        worldMatrix.transformPosition(mMesh.getBBMax(), mTmpBB);
-        mAABBMin.min(mTmpBB);
-        mAABBMax.max(mTmpBB);
+        // All 8 corners are needed, since rotations move the others outside the 2 extremes
+        worldMatrix.transformAab(mMesh.getBBMin(), mMesh.getBBMax(), mAABBMin, mAABBMax);
 
         return intersection.testAab(mAABBMin, mAABBMax);
     }
@@ -157,7 +322,9 @@ public class Renderable extends Component {
     /** Free the underlying resources. */
     @Override
     public void onDestroy() {
+        // This also removes the object from the spatial index
         setMesh(null);
+        setLod(null);
         mMaterial.free();
     }
 }
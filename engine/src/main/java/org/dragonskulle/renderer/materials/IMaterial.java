@@ -15,6 +15,9 @@ import org.lwjgl.system.NativeResource;
  * @author Aurimas Blažulionis
  */
 public interface IMaterial extends NativeResource {
+    /** Version of materials that do not track changes to their instance properties. */
+    int UNVERSIONED = -1;
+
     /**
      * Gets the shader set of the material. It should be final, and unchanging.
      *
@@ -25,6 +28,9 @@ public interface IMaterial extends NativeResource {
     /**
      * Write instanced material properties to specified offset.
      *
+     * <p>Renderer calls this from multiple threads at once, on different objects, thus it must not
+     * modify any state shared between materials, nor rely on the position of the buffer.
+     *
      * @param offset where to write within the byte buffer
      * @param buffer buffer to write into
      * @param matrix transformation matrix of the object.
@@ -34,6 +40,21 @@ public interface IMaterial extends NativeResource {
     int writeVertexInstanceData(
             int offset, ByteBuffer buffer, Matrix4fc matrix, List<Light> lights);
 
+    /**
+     * Get the version of the material's instance properties.
+     *
+     * <p>The version must change whenever anything {@link #writeVertexInstanceData} writes, apart
+     * from the matrix, changes. The renderer uses it to skip rewriting instance data of objects
+     * that did not change. It is called on the renderer's thread, while no instance data is being
+     * written.
+     *
+     * @return the version, or {@link #UNVERSIONED}, if objects using the material have to be
+     *     rewritten every frame.
+     */
+    default int getVersion() {
+        return UNVERSIONED;
+    }
+
     /**
      * Gets the list of fragment shader textures used. It should be the same size as {@link
      * ShaderSet#mNumFragmentTextures}
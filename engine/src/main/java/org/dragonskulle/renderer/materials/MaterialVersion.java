@@ -0,0 +1,100 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer.materials;
+
+import java.util.Arrays;
+import org.joml.Vector3fc;
+import org.joml.Vector4fc;
+
+/**
+ * Versions the instance properties of a material.
+ *
+ * @author DragonSkulle
+ *     <p>Material properties, like colours, are exposed as mutable vectors, and get changed without
+ *     going through any setter. Thus, the properties are compared with their values at the last
+ *     check instead, and the version only changes when any of them differ. Comparing a handful of
+ *     floats is far cheaper than writing, and comparing the whole instance data of every object
+ *     using the material.
+ *     <p>A check looks like {@code version.begin().add(mColour).add(mRoughness).end()}, and has to
+ *     add the same properties in the same order every time. Checks are not thread safe.
+ */
+public class MaterialVersion {
+    /** Property values as of the last check. */
+    private int[] mValues = new int[8];
+    /** Number of values added in the current check. */
+    private int mCount = 0;
+    /** Number of values added in the last check. */
+    private int mLastCount = 0;
+    /** Whether any value differs in the current check. */
+    private boolean mChanged = false;
+    /** Current version. */
+    private int mVersion = 0;
+
+    /**
+     * Start a check.
+     *
+     * @return this.
+     */
+    public MaterialVersion begin() {
+        mCount = 0;
+        mChanged = false;
+        return this;
+    }
+
+    /**
+     * Add a float property.
+     *
+     * @param value value of the property.
+     * @return this.
+     */
+    public MaterialVersion add(float value) {
+        if (mCount == mValues.length) {
+            mValues = Arrays.copyOf(mValues, mCount * 2);
+        }
+
+        // Bits are compared, so that NaN values do not change the version every check
+        int bits = Float.floatToIntBits(value);
+
+        if (mCount >= mLastCount || mValues[mCount] != bits) {
+            mValues[mCount] = bits;
+            mChanged = true;
+        }
+
+        mCount++;
+        return this;
+    }
+
+    /**
+     * Add a 3 component vector property.
+     *
+     * @param value value of the property.
+     * @return this.
+     */
+    public MaterialVersion add(Vector3fc value) {
+        return add(value.x()).add(value.y()).add(value.z());
+    }
+
+    /**
+     * Add a 4 component vector property.
+     *
+     * @param value value of the property.
+     * @return this.
+     */
+    public MaterialVersion add(Vector4fc value) {
+        return add(value.x()).add(value.y()).add(value.z()).add(value.w());
+    }
+
+    /**
+     * Finish the check.
+     *
+     * @return the version, which differs from the last check's, if any property changed.
+     */
+    public int end() {
+        if (mChanged || mCount != mLastCount) {
+            // Versions skip the untracked value, so that callers do not confuse the two
+            mVersion = mVersion + 1 == IMaterial.UNVERSIONED ? mVersion + 2 : mVersion + 1;
+        }
+
+        mLastCount = mCount;
+        return mVersion;
+    }
+}
@@ -9,20 +9,19 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
-import org.dragonskulle.core.Scene;
 import org.dragonskulle.renderer.AttributeDescription;
 import org.dragonskulle.renderer.BindingDescription;
+import org.dragonskulle.renderer.FrameUniforms;
 import org.dragonskulle.renderer.SampledTexture;
 import org.dragonskulle.renderer.ShaderBuf;
 import org.dragonskulle.renderer.ShaderBuf.MacroDefinition;
 import org.dragonskulle.renderer.ShaderKind;
 import org.dragonskulle.renderer.ShaderSet;
-import org.dragonskulle.renderer.components.Camera;
 import org.dragonskulle.renderer.components.Light;
 import org.joml.Matrix4fc;
 import org.joml.Vector3f;
@@ -39,7 +38,7 @@ import org.joml.Vector4f;
 public class PBRMaterial implements IColouredMaterial, IRefCountedMaterial {
 
     /** Cached shadersets for particular standard material configuration. */
-    private static final Map<Integer, ShaderSet> sShaderSets = new TreeMap<Integer, ShaderSet>();
+    private static final Map<Integer, ShaderSet> sShaderSets = new ConcurrentHashMap<>();
 
     /**
      * Standard shader set used by PBR materials.
@@ -97,11 +96,16 @@ public class PBRMaterial implements IColouredMaterial, IRefCountedMaterial {
             mNumFragmentTextures = textureCount;
 
             mLightCount = 2;
+            mFrameUniforms = true;
 
             MacroDefinition lights =
                     new MacroDefinition("NUM_LIGHTS", Integer.toString(mLightCount));
+            MacroDefinition maxLights =
+                    new MacroDefinition("MAX_LIGHTS", Integer.toString(FrameUniforms.MAX_LIGHTS));
             fragMacroDefs.add(lights);
+            fragMacroDefs.add(maxLights);
             vertMacroDefs.add(lights);
+            vertMacroDefs.add(maxLights);
 
             if (mat.mAlphaBlend) {
                 mRenderOrder = ShaderSet.RenderOrder.TRANSPARENT.getValue();
@@ -121,27 +125,28 @@ public class PBRMaterial implements IColouredMaterial, IRefCountedMaterial {
                             ShaderKind.FRAGMENT_SHADER,
                             fragMacroDefs.stream().toArray(MacroDefinition[]::new));
 
+            // Camera and lights come from frame uniforms, thus only the model matrix and material
+            // properties are per-instance
             mVertexBindingDescription =
-                    BindingDescription.instancedWithMatrixAndLights(
-                            NORMAL_OFFSET + 4 + extraInstanceDataSize, mLightCount);
+                    BindingDescription.instancedWithMatrix(
+                            NORMAL_OFFSET + 4 + extraInstanceDataSize);
 
             ArrayList<AttributeDescription> descriptions = new ArrayList<>();
 
             AttributeDescription[] regAttributes = {
                 new AttributeDescription(1, 0, VK_FORMAT_R32G32B32A32_SFLOAT, COL_OFFSET),
                 new AttributeDescription(1, 1, VK_FORMAT_R32G32B32_SFLOAT, EMISSION_COL_OFFSET),
-                new AttributeDescription(1, 2, VK_FORMAT_R32G32B32_SFLOAT, CAM_OFFSET),
-                new AttributeDescription(1, 3, VK_FORMAT_R32_SFLOAT, ALPHA_CUTOFF_OFFSET),
-                new AttributeDescription(1, 4, VK_FORMAT_R32_SFLOAT, METALLIC_OFFSET),
-                new AttributeDescription(1, 5, VK_FORMAT_R32_SFLOAT, ROUGHNESS_OFFSET),
-                new AttributeDescription(1, 6, VK_FORMAT_R32_SFLOAT, NORMAL_OFFSET),
+                new AttributeDescription(1, 2, VK_FORMAT_R32_SFLOAT, ALPHA_CUTOFF_OFFSET),
+                new AttributeDescription(1, 3, VK_FORMAT_R32_SFLOAT, METALLIC_OFFSET),
+                new AttributeDescription(1, 4, VK_FORMAT_R32_SFLOAT, ROUGHNESS_OFFSET),
+                new AttributeDescription(1, 5, VK_FORMAT_R32_SFLOAT, NORMAL_OFFSET),
             };
 
             for (AttributeDescription desc : regAttributes) {
                 descriptions.add(desc);
             }
 
-            int binding = 5;
+            int binding = 4;
 
             for (AttributeDescription desc : extraDescriptions) {
                 descriptions.add(
@@ -154,9 +159,7 @@ public class PBRMaterial implements IColouredMaterial, IRefCountedMaterial {
 
             mVertexAttributeDescriptions =
                     AttributeDescription.withMatrix(
-                            AttributeDescription.withLights(
-                                    mLightCount,
-                                    descriptions.stream().toArray(AttributeDescription[]::new)));
+                            descriptions.stream().toArray(AttributeDescription[]::new));
         }
     }
 
@@ -183,10 +186,8 @@ public class PBRMaterial implements IColouredMaterial, IRefCountedMaterial {
     private static final int COL_OFFSET = 0;
     /** Emissive colour offset within the instance buffer. */
     private static final int EMISSION_COL_OFFSET = COL_OFFSET + 4 * 4;
-    /** Camera position offset within the instance buffer. */
-    private static final int CAM_OFFSET = EMISSION_COL_OFFSET + 3 * 4;
     /** Alpha cutoff float offset within the instance buffer. */
-    private static final int ALPHA_CUTOFF_OFFSET = CAM_OFFSET + 3 * 4;
+    private static final int ALPHA_CUTOFF_OFFSET = EMISSION_COL_OFFSET + 3 * 4;
     /** Metalness float offset within the instance buffer. */
     private static final int METALLIC_OFFSET = ALPHA_CUTOFF_OFFSET + 4;
     /** Roughness float offset within the instance buffer. */
@@ -219,6 +220,9 @@ public class PBRMaterial implements IColouredMaterial, IRefCountedMaterial {
     /** Have transparency. */
     @Getter @Setter private boolean mAlphaBlend = false;
 
+    /** Version of the instance properties. */
+    private final MaterialVersion mVersion = new MaterialVersion();
+
     /** Internal reference count of the material. */
     private int mRefCount = 0;
 
@@ -338,9 +342,9 @@ public class PBRMaterial implements IColouredMaterial, IRefCountedMaterial {
 
         ShaderSet ret = sShaderSets.get(hash);
 
+        // Renderer looks shader sets up from worker threads
         if (ret == null) {
-            ret = new StandardShaderSet(this);
-            sShaderSets.put(hash, ret);
+            ret = sShaderSets.computeIfAbsent(hash, (__) -> new StandardShaderSet(this));
         }
 
         return ret;
@@ -352,19 +356,13 @@ public class PBRMaterial implements IColouredMaterial, IRefCountedMaterial {
      * @param offset input offset within instance buffer.
      * @param buffer actual vertex buffer.
      * @param matrix transformation matrix of the object.
-     * @param lights list of lights that can be used.
+     * @param lights list of lights that can be used. Unused, since lights come from {@link
+     *     FrameUniforms}.
      * @return offset within the buffer, after the written data.
      */
     public int writeVertexInstanceData(
             int offset, ByteBuffer buffer, Matrix4fc matrix, List<Light> lights) {
         offset = ShaderSet.writeMatrix(offset, buffer, matrix);
-        offset = Light.writeLights(offset, buffer, lights, getShaderSet().getLightCount());
-        Scene.getActiveScene()
-                .getSingleton(Camera.class)
-                .getGameObject()
-                .getTransform()
-                .getPosition()
-                .get(offset + CAM_OFFSET, buffer);
         mColour.get(offset + COL_OFFSET, buffer);
         mEmissionColour.get(offset + EMISSION_COL_OFFSET, buffer);
         ByteBuffer buf = (ByteBuffer) buffer.position(offset + ALPHA_CUTOFF_OFFSET);
@@ -375,6 +373,28 @@ public class PBRMaterial implements IColouredMaterial, IRefCountedMaterial {
         return buf.position();
     }
 
+    @Override
+    public int getVersion() {
+        return addVersionProperties(mVersion.begin()).end();
+    }
+
+    /**
+     * Add the instance properties of the material to a version check.
+     *
+     * <p>Materials writing more instance data must add their properties after these.
+     *
+     * @param version version to add the properties to.
+     * @return {@code version}.
+     */
+    protected MaterialVersion addVersionProperties(MaterialVersion version) {
+        return version.add(mColour)
+                .add(mEmissionColour)
+                .add(mAlphaCutoff)
+                .add(mMetallic)
+                .add(mRoughness)
+                .add(mNormal);
+    }
+
     /**
      * Get the list of fragment textures used by the material.
      *
@@ -43,6 +43,7 @@ public class UnlitMaterial implements IColouredMaterial, IRefCountedMaterial {
                     AttributeDescription.withMatrix(
                             new AttributeDescription(1, 0, VK_FORMAT_R32G32B32A32_SFLOAT, 0));
             mNumFragmentTextures = 1;
+            mFrameUniforms = true;
         }
 
         /**
@@ -74,6 +75,9 @@ public class UnlitMaterial implements IColouredMaterial, IRefCountedMaterial {
     /** Colour of the surface. It will multiply the texture's colour. */
     @Getter private final Vector4f mColour = new Vector4f(1.f);
 
+    /** Version of the instance properties. */
+    private final MaterialVersion mVersion = new MaterialVersion();
+
     /** The internal reference count. */
     private int mRefCount = 0;
 
@@ -135,6 +139,11 @@ public class UnlitMaterial implements IColouredMaterial, IRefCountedMaterial {
         return offset + 4 * 4;
     }
 
+    @Override
+    public int getVersion() {
+        return mVersion.begin().add(mColour).end();
+    }
+
     /**
      * Gets the list of fragment shader textures used. It should be the same size as {@link
      * ShaderSet#mNumFragmentTextures}.
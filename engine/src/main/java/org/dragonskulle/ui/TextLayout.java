@@ -0,0 +1,188 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.ui;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import org.dragonskulle.renderer.Font;
+import org.joml.Vector2f;
+
+/**
+ * Positions of glyphs of a string in a font.
+ *
+ * @author DragonSkulle
+ *     <p>Layouts are stored in flat float arrays, and cached by font and string, thus texts that
+ *     keep switching between the same values, like counters and timers, do not need to look up
+ *     their glyphs again. The cache only holds the most recently used layouts, and must only be
+ *     used from the thread UI is updated on.
+ *     <p>Layouts are shared, and must not be modified.
+ */
+class TextLayout {
+    /** Scale from font units to layout units. */
+    static final float SCALE = 0.003f;
+
+    /** Maximum number of layouts kept in the cache. */
+    private static final int CACHE_SIZE = 512;
+
+    /** Key of a cached layout. */
+    private static class Key {
+        private final Font mFont;
+        private final String mText;
+
+        /**
+         * Create a key.
+         *
+         * @param font font of the layout.
+         * @param text text of the layout.
+         */
+        private Key(Font font, String text) {
+            mFont = font;
+            mText = text;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(mFont), mText);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return mFont == key.mFont && mText.equals(key.mText);
+        }
+    }
+
+    /** Most recently used layouts. */
+    private static final Map<Key, TextLayout> sCache =
+            new LinkedHashMap<Key, TextLayout>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, TextLayout> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    /** Number of glyphs laid out. Line breaks have no glyphs. */
+    final int mGlyphCount;
+    /** Glyph boxes, as start X, start Y, end X, and end Y for every glyph. */
+    final float[] mBoxes;
+    /** Glyph UV coordinates, in the same layout as {@link #mBoxes}. */
+    final float[] mUvs;
+    /** Unscaled pen positions before every character, and after the last one, as X, and Y. */
+    final int[] mPreChar;
+    /** Scaled X, and Y positions cursors get placed at, one more than there are glyphs. */
+    final float[] mPostChar;
+
+    /** Minimum X coordinate of all glyph boxes. */
+    final float mMinX;
+    /** Minimum Y coordinate of all glyph boxes. */
+    final float mMinY;
+    /** Maximum X coordinate of all glyph boxes. */
+    final float mMaxX;
+    /** Maximum Y coordinate of all glyph boxes. */
+    final float mMaxY;
+
+    /**
+     * Get the layout of a string.
+     *
+     * @param font font to lay the string out in.
+     * @param text string to lay out.
+     * @return the layout, possibly shared with other texts.
+     */
+    static TextLayout get(Font font, String text) {
+        Key key = new Key(font, text);
+        TextLayout layout = sCache.get(key);
+
+        if (layout == null) {
+            layout = new TextLayout(font, text);
+            sCache.put(key, layout);
+        }
+
+        return layout;
+    }
+
+    /**
+     * Lay out a string.
+     *
+     * @param font font to lay the string out in.
+     * @param text string to lay out.
+     */
+    private TextLayout(Font font, String text) {
+        int length = text.length();
+        int glyphCount = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c != '\n' && c != '\r') {
+                glyphCount++;
+            }
+        }
+
+        mGlyphCount = glyphCount;
+        mBoxes = new float[glyphCount * 4];
+        mUvs = new float[glyphCount * 4];
+        mPreChar = new int[(length + 1) * 2];
+        mPostChar = new float[(glyphCount + 1) * 2];
+
+        final int[] pos = {0, 0};
+
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+
+        Vector2f startBox = new Vector2f();
+        Vector2f endBox = new Vector2f();
+        Vector2f startUV = new Vector2f();
+        Vector2f endUV = new Vector2f();
+
+        int glyph = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+
+            if (c == '\n') {
+                pos[1] += Font.LINE_HEIGHT;
+                pos[0] = 0;
+            } else if (c == '\r') {
+                pos[0] = 0;
+            } else {
+                font.getGlyph(c, pos, startBox, endBox, startUV, endUV);
+                startBox.mul(SCALE);
+                endBox.mul(SCALE);
+
+                minX = Math.min(minX, startBox.x);
+                minY = Math.min(minY, startBox.y);
+                maxX = Math.max(maxX, endBox.x);
+                maxY = Math.max(maxY, endBox.y);
+
+                int base = glyph * 4;
+                mBoxes[base] = startBox.x;
+                mBoxes[base + 1] = startBox.y;
+                mBoxes[base + 2] = endBox.x;
+                mBoxes[base + 3] = endBox.y;
+                mUvs[base] = startUV.x;
+                mUvs[base + 1] = startUV.y;
+                mUvs[base + 2] = endUV.x;
+                mUvs[base + 3] = endUV.y;
+
+                mPostChar[glyph * 2] = startBox.x;
+                mPostChar[glyph * 2 + 1] = pos[1] * SCALE;
+                mPostChar[glyph * 2 + 2] = endBox.x;
+                mPostChar[glyph * 2 + 3] = pos[1] * SCALE;
+
+                glyph++;
+            }
+
+            mPreChar[i * 2 + 2] = pos[0];
+            mPreChar[i * 2 + 3] = pos[1];
+        }
+
+        mMinX = minX;
+        mMinY = minY;
+        mMaxX = maxX;
+        mMaxY = maxY;
+    }
+}
@@ -82,6 +82,9 @@ public class TransformUI extends Transform {
     /** Current screen aspect ratio. */
     private float mScreenAspectRatio = 1f;
 
+    /** Number of times any UI transform got invalidated. */
+    private static int sLayoutVersion = 0;
+
     /**
      * Create a {@link TransformUI}.
      *
@@ -212,6 +215,40 @@ public class TransformUI extends Transform {
         mScreenAspectRatio = width;
     }
 
+    /**
+     * Get the version of the UI layout.
+     *
+     * <p>The version changes whenever any UI transform gets invalidated, which allows {@link
+     * UIHitIndex} to skip checking individual transforms when nothing moved.
+     *
+     * @return current layout version.
+     */
+    static int getLayoutVersion() {
+        return sLayoutVersion;
+    }
+
+    /**
+     * Get the number of times the transform has changed.
+     *
+     * <p>Screen changes are otherwise only noticed when the matrix is computed, which cached users
+     * of the world matrix would never do, thus they are checked here as well.
+     *
+     * @return number of world matrix invalidations.
+     */
+    @Override
+    public int getChangeCount() {
+        checkScreenChange();
+        return super.getChangeCount();
+    }
+
+    @Override
+    protected void setUpdateFlag() {
+        if (!mShouldUpdate) {
+            sLayoutVersion++;
+        }
+        super.setUpdateFlag();
+    }
+
     @Override
     protected void onDestroy() {}
 
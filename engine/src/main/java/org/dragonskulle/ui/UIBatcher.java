@@ -0,0 +1,611 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.ui;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import org.dragonskulle.components.Transform;
+import org.dragonskulle.core.GameObject;
+import org.dragonskulle.renderer.Mesh;
+import org.dragonskulle.renderer.SampledTexture;
+import org.dragonskulle.renderer.Vertex;
+import org.dragonskulle.renderer.Vertexc;
+import org.dragonskulle.renderer.components.Light;
+import org.dragonskulle.renderer.components.Renderable;
+import org.dragonskulle.renderer.materials.IMaterial;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.joml.Vector4f;
+import org.joml.Vector4fc;
+
+/**
+ * Merges UI elements into a few large meshes, so that the whole UI takes a handful of draws.
+ *
+ * @author DragonSkulle
+ *     <p>Every {@link UIRenderable}, and {@link UIText} would otherwise be drawn on its own, since
+ *     UI is drawn back to front. Instead, elements are sorted the same way, and consecutive ones
+ *     sharing a texture, like all glyphs of a font atlas, are merged into one batch. An element may
+ *     also join an earlier batch with the same texture, as long as it does not overlap any of the
+ *     batches in between, which keeps separate panels from splitting each other's batches.
+ *     <p>Batches are dynamic meshes, with vertices already in screen space, and coloured by their
+ *     element's material, thus they are drawn with an identity matrix, and a white colour. A
+ *     batch's mesh is only rebuilt when its set of elements, or their meshes change. Elements that
+ *     just move, or get recoloured only replace their own vertex range, through {@link
+ *     Mesh#updateVertices}, so a still UI costs one comparison pass over its elements a frame, and
+ *     no uploads, while a hover animation uploads a single quad.
+ *     <p>Batch depths only order batches among themselves. Elements keep their own depths, which
+ *     order them correctly when batching is disabled.
+ *     <p>The batcher must only be used from the thread that updates the UI.
+ */
+@Accessors(prefix = "m")
+public class UIBatcher {
+    /** Number of earlier batches an element is allowed to skip back over. */
+    private static final int LOOKBACK = 8;
+    /**
+     * Fraction of a batch's vertices that may change, before the whole batch is rebuilt instead of
+     * replacing vertex ranges one by one.
+     */
+    private static final float MAX_PARTIAL_FRACTION = 0.25f;
+
+    /** Batch was left as it is. */
+    private static final int BUILD_NONE = 0;
+    /** Some vertex ranges of the batch were replaced. */
+    private static final int BUILD_PARTIAL = 1;
+    /** Batch was rebuilt entirely. */
+    private static final int BUILD_FULL = 2;
+
+    /** Orders elements back to front, as the renderer would. */
+    private static final Comparator<Item> BACK_TO_FRONT =
+            (a, b) -> Float.compare(b.mDepth, a.mDepth);
+
+    /** Draw state of a single UI element. */
+    private static class Item {
+        /** The element. */
+        private final Renderable mRenderable;
+        /** World matrix of the element. */
+        private final Matrix4f mMatrix = new Matrix4f();
+        /** Colour of the element's material. */
+        private final Vector4f mColour = new Vector4f();
+
+        /** Change count of the transform the matrix was taken at. */
+        private int mChangeCount;
+        /** Mesh the element was drawn with. */
+        private Mesh mMesh;
+        /** Version of the mesh. */
+        private int mMeshVersion;
+        /** Texture the element was drawn with. */
+        private SampledTexture mTexture;
+        /** Depth of the element, greater values are drawn first. */
+        private float mDepth;
+
+        /** Screen space bounds of the element, as minimum X, and Y, and maximum X, and Y. */
+        private final Vector4f mBounds = new Vector4f();
+
+        /** Whether the element changed since the last frame. */
+        private boolean mChanged;
+        /** Whether the element's mesh changed since the last frame. */
+        private boolean mShapeChanged;
+        /** First vertex of the element within its batch's mesh. */
+        private int mVertexOffset;
+        /** Last frame the element was seen in. */
+        private int mSeen;
+
+        /**
+         * Create an item.
+         *
+         * @param renderable the element.
+         */
+        private Item(Renderable renderable) {
+            mRenderable = renderable;
+        }
+
+        /**
+         * Read the current state of the element, and check whether it changed.
+         *
+         * @param tmp temporary vector.
+         */
+        private void refresh(Vector3f tmp) {
+            Transform transform = mRenderable.getGameObject().getTransform();
+            Matrix4fc matrix = transform.getWorldMatrix();
+            int changeCount = transform.getChangeCount();
+
+            Mesh mesh = mRenderable.getDrawMesh();
+            int meshVersion = mesh.getVersion();
+            UIMaterial material = (UIMaterial) mRenderable.getMaterial();
+            SampledTexture texture = material.getFragmentTextures()[0];
+            Vector4fc colour = material.getColour();
+
+            mShapeChanged = mesh != mMesh || meshVersion != mMeshVersion;
+            mChanged =
+                    mShapeChanged
+                            || changeCount != mChangeCount
+                            || texture != mTexture
+                            || !colour.equals(mColour);
+
+            mDepth = mRenderable.getDepth(null, tmp);
+
+            if (!mChanged) {
+                return;
+            }
+
+            mMatrix.set(matrix);
+            mChangeCount = changeCount;
+            mMesh = mesh;
+            mMeshVersion = meshVersion;
+            mTexture = texture;
+            mColour.set(colour);
+
+            Vector3fc min = mesh.getBBMin();
+            Vector3fc max = mesh.getBBMax();
+            mBounds.set(
+                    Float.POSITIVE_INFINITY,
+                    Float.POSITIVE_INFINITY,
+                    Float.NEGATIVE_INFINITY,
+                    Float.NEGATIVE_INFINITY);
+
+            for (int corner = 0; corner < 4; corner++) {
+                float x = (corner & 1) == 0 ? min.x() : max.x();
+                float y = (corner & 2) == 0 ? min.y() : max.y();
+                tmp.set(x, y, 0f).mulPosition(mMatrix);
+                mBounds.set(
+                        Math.min(mBounds.x, tmp.x),
+                        Math.min(mBounds.y, tmp.y),
+                        Math.max(mBounds.z, tmp.x),
+                        Math.max(mBounds.w, tmp.y));
+            }
+        }
+
+        /**
+         * Write the element's vertices in screen space, with its colour applied.
+         *
+         * @param out array to write to.
+         * @param offset index in {@code out} to write the first vertex at.
+         * @param tmpPos temporary position.
+         * @param tmpColour temporary colour.
+         */
+        private void writeVertices(Vertexc[] out, int offset, Vector3f tmpPos, Vector4f tmpColour) {
+            Vertexc[] vertices = mMesh.getVertices();
+
+            for (int v = 0; v < vertices.length; v++) {
+                Vertexc vertex = vertices[v];
+                out[offset + v] =
+                        new Vertex(
+                                tmpPos.set(vertex.getPos()).mulPosition(mMatrix),
+                                vertex.getNormal(),
+                                tmpColour.set(vertex.getColor()).mul(mColour),
+                                vertex.getUv());
+            }
+        }
+    }
+
+    /** Merged UI elements, drawn as a single object. */
+    @Accessors(prefix = "m")
+    public static class Batch extends Renderable {
+        /** Matrix batches are drawn with, since vertices are already in screen space. */
+        private static final Matrix4fc IDENTITY = new Matrix4f();
+
+        /** Elements of the batch, in draw order. */
+        private final List<Item> mItems = new ArrayList<>();
+        /** Elements the mesh was last built from. */
+        private final List<Item> mBuiltItems = new ArrayList<>();
+        /** Texture shared by all elements. */
+        @Getter private SampledTexture mTexture;
+        /** Screen space bounds of all elements, as in {@link Item#mBounds}. */
+        private final Vector4f mBounds = new Vector4f();
+        /** Depth of the batch, greater values are drawn first. */
+        private float mDepth;
+
+        /**
+         * Create a batch.
+         *
+         * @param root object the batch pretends to be on, with an identity transform.
+         */
+        private Batch(GameObject root) {
+            super(null, null);
+            mGameObject = root;
+        }
+
+        /**
+         * Get the number of elements in the batch.
+         *
+         * @return number of merged elements.
+         */
+        public int getItemCount() {
+            return mItems.size();
+        }
+
+        /**
+         * Start filling the batch with elements of a texture.
+         *
+         * @param texture texture of the elements.
+         * @param retired list to put the previous material to, if it gets replaced.
+         */
+        private void begin(SampledTexture texture, List<IMaterial> retired) {
+            mItems.clear();
+            mBounds.set(
+                    Float.POSITIVE_INFINITY,
+                    Float.POSITIVE_INFINITY,
+                    Float.NEGATIVE_INFINITY,
+                    Float.NEGATIVE_INFINITY);
+
+            if (mMaterial != null && sameTexture(mTexture, texture)) {
+                return;
+            }
+
+            if (mMaterial != null) {
+                retired.add(mMaterial);
+            }
+
+            mTexture = texture;
+            mMaterial = new UIMaterial(texture == null ? null : texture.clone());
+            // A new texture means a new mesh, otherwise it would be drawn with the old texture
+            mBuiltItems.clear();
+        }
+
+        /**
+         * Add an element to the end of the batch.
+         *
+         * @param item element to add.
+         */
+        private void add(Item item) {
+            mItems.add(item);
+            Vector4f bounds = item.mBounds;
+            mBounds.set(
+                    Math.min(mBounds.x, bounds.x),
+                    Math.min(mBounds.y, bounds.y),
+                    Math.max(mBounds.z, bounds.z),
+                    Math.max(mBounds.w, bounds.w));
+        }
+
+        /**
+         * Check whether an element overlaps the batch.
+         *
+         * @param item element to check.
+         * @return {@code true} if the bounds overlap.
+         */
+        private boolean overlaps(Item item) {
+            Vector4f bounds = item.mBounds;
+            return bounds.x <= mBounds.z
+                    && bounds.z >= mBounds.x
+                    && bounds.y <= mBounds.w
+                    && bounds.w >= mBounds.y;
+        }
+
+        /**
+         * Bring the mesh up to date with the elements.
+         *
+         * @param tmpPos temporary position.
+         * @param tmpColour temporary colour.
+         * @return {@link #BUILD_NONE}, {@link #BUILD_PARTIAL}, or {@link #BUILD_FULL}.
+         */
+        private int build(Vector3f tmpPos, Vector4f tmpColour) {
+            Mesh mesh = getMesh();
+            boolean rebuild = mesh == null || !mItems.equals(mBuiltItems);
+            int changedVertices = 0;
+
+            for (int i = 0; i < mItems.size() && !rebuild; i++) {
+                Item item = mItems.get(i);
+                rebuild = item.mShapeChanged;
+
+                if (item.mChanged) {
+                    changedVertices += item.mMesh.getVertices().length;
+                }
+            }
+
+            if (!rebuild && changedVertices == 0) {
+                return BUILD_NONE;
+            }
+
+            // Every partial update copies the vertex array, thus many of them cost more than one
+            // rebuild
+            if (!rebuild && changedVertices <= mesh.getVertices().length * MAX_PARTIAL_FRACTION) {
+                for (int i = 0; i < mItems.size(); i++) {
+                    Item item = mItems.get(i);
+
+                    if (item.mChanged) {
+                        Vertexc[] vertices = new Vertexc[item.mMesh.getVertices().length];
+                        item.writeVertices(vertices, 0, tmpPos, tmpColour);
+                        mesh.updateVertices(item.mVertexOffset, vertices);
+                    }
+                }
+
+                return BUILD_PARTIAL;
+            }
+
+            mBuiltItems.clear();
+            mBuiltItems.addAll(mItems);
+
+            int vertexCount = 0;
+            int indexCount = 0;
+
+            for (int i = 0; i < mItems.size(); i++) {
+                Mesh itemMesh = mItems.get(i).mMesh;
+                vertexCount += itemMesh.getVertices().length;
+                indexCount += itemMesh.getIndices().length;
+            }
+
+            Vertexc[] vertices = new Vertexc[vertexCount];
+            int[] indices = new int[indexCount];
+            int vertexOffset = 0;
+            int indexOffset = 0;
+
+            for (int i = 0; i < mItems.size(); i++) {
+                Item item = mItems.get(i);
+                int[] itemIndices = item.mMesh.getIndices();
+
+                item.mVertexOffset = vertexOffset;
+                item.writeVertices(vertices, vertexOffset, tmpPos, tmpColour);
+
+                for (int idx = 0; idx < itemIndices.length; idx++) {
+                    indices[indexOffset + idx] = itemIndices[idx] + vertexOffset;
+                }
+
+                vertexOffset += item.mMesh.getVertices().length;
+                indexOffset += itemIndices.length;
+            }
+
+            if (mesh == null) {
+                setMesh(Mesh.createDynamic(vertices, indices));
+            } else {
+                mesh.update(vertices, indices);
+            }
+
+            return BUILD_FULL;
+        }
+
+        /** Drop the elements, and the mesh, while the batch is not used. */
+        private void release() {
+            mItems.clear();
+            mBuiltItems.clear();
+            setMesh(null);
+        }
+
+        @Override
+        public void writeVertexInstanceData(int offset, ByteBuffer buffer, List<Light> lights) {
+            mMaterial.writeVertexInstanceData(offset, buffer, IDENTITY, lights);
+        }
+
+        @Override
+        public float getDepth(Vector3fc camPosition, Vector3f tmpVec) {
+            return mDepth;
+        }
+
+        @Override
+        public boolean frustumCull(FrustumIntersection intersection) {
+            return true;
+        }
+
+        @Override
+        public boolean isAlwaysVisible() {
+            return true;
+        }
+
+        @Override
+        public void onDestroy() {
+            if (mMaterial != null) {
+                mMaterial.free();
+            }
+            release();
+        }
+    }
+
+    /** Object batches pretend to be on. */
+    private final GameObject mRoot = new GameObject("ui_batches");
+
+    /** States of all elements seen recently. */
+    private final Map<Renderable, Item> mItems = new IdentityHashMap<>();
+    /** Elements of the current frame, in draw order. */
+    private final List<Item> mFrameItems = new ArrayList<>();
+    /** All batches, the ones past {@link #mBatchCount} are unused. */
+    private final List<Batch> mBatches = new ArrayList<>();
+    /** Number of batches used in the current frame. */
+    @Getter private int mBatchCount;
+    /** Number of batches rebuilt in the current frame. */
+    @Getter private int mRebuiltCount;
+    /** Number of batches that only had some of their vertices replaced in the current frame. */
+    @Getter private int mUpdatedCount;
+    /** Counter of frames. */
+    private int mFrame = 0;
+
+    /** Materials replaced in the current frame. */
+    private List<IMaterial> mRetiring = new ArrayList<>();
+    /**
+     * Materials replaced in the previous frame.
+     *
+     * <p>They are freed a frame later, since a render thread may still be drawing the previous
+     * frame with them.
+     */
+    private List<IMaterial> mRetired = new ArrayList<>();
+
+    /** Temporary vector. */
+    private final Vector3f mTmpVec = new Vector3f();
+    /** Temporary colour. */
+    private final Vector4f mTmpColour = new Vector4f();
+
+    /**
+     * Check whether an object can be merged with others.
+     *
+     * @param renderable object to check.
+     * @return {@code true} if the object is a UI element drawn with a {@link UIMaterial}.
+     */
+    public static boolean isBatchable(Renderable renderable) {
+        if (!(renderable instanceof UIRenderable) && !(renderable instanceof UIText)) {
+            return false;
+        }
+
+        if (!(renderable.getMaterial() instanceof UIMaterial)) {
+            return false;
+        }
+
+        Mesh mesh = renderable.getDrawMesh();
+
+        return mesh != null && mesh.getVertices().length != 0 && mesh.getIndices().length != 0;
+    }
+
+    /**
+     * Batch UI elements of a frame.
+     *
+     * @param renderables all objects to draw.
+     * @param output list to add the objects to draw to. Objects that can not be batched are added
+     *     as they are, followed by the batches.
+     */
+    public void batch(List<Renderable> renderables, List<Renderable> output) {
+        int frame = ++mFrame;
+        mFrameItems.clear();
+
+        freeRetired();
+        List<IMaterial> retired = mRetired;
+        mRetired = mRetiring;
+        mRetiring = retired;
+
+        for (int i = 0; i < renderables.size(); i++) {
+            Renderable renderable = renderables.get(i);
+
+            if (!isBatchable(renderable)) {
+                output.add(renderable);
+                continue;
+            }
+
+            Item item = mItems.get(renderable);
+
+            if (item == null) {
+                item = new Item(renderable);
+                mItems.put(renderable, item);
+            }
+
+            item.refresh(mTmpVec);
+            item.mSeen = frame;
+            mFrameItems.add(item);
+        }
+
+        if (mItems.size() > mFrameItems.size()) {
+            mItems.values().removeIf(item -> item.mSeen != frame);
+        }
+
+        // Stable, thus elements at the same depth keep their order
+        mFrameItems.sort(BACK_TO_FRONT);
+
+        assignBatches();
+
+        mRebuiltCount = 0;
+        mUpdatedCount = 0;
+
+        for (int i = 0; i < mBatchCount; i++) {
+            Batch batch = mBatches.get(i);
+            int result = batch.build(mTmpVec, mTmpColour);
+
+            if (result == BUILD_FULL) {
+                mRebuiltCount++;
+            } else if (result == BUILD_PARTIAL) {
+                mUpdatedCount++;
+            }
+
+            output.add(batch);
+        }
+
+        for (int i = mBatchCount; i < mBatches.size(); i++) {
+            mBatches.get(i).release();
+        }
+    }
+
+    /**
+     * Get a batch used in the current frame.
+     *
+     * @param index index of the batch, less than {@link #getBatchCount}.
+     * @return the batch.
+     */
+    public Batch getBatch(int index) {
+        return mBatches.get(index);
+    }
+
+    /** Free all batches. */
+    public void free() {
+        for (Batch batch : mBatches) {
+            batch.onDestroy();
+        }
+        mBatches.clear();
+        mItems.clear();
+        mBatchCount = 0;
+
+        freeRetired();
+        List<IMaterial> retired = mRetired;
+        mRetired = mRetiring;
+        mRetiring = retired;
+        freeRetired();
+    }
+
+    /** Free materials replaced before the previous frame. */
+    private void freeRetired() {
+        for (int i = 0; i < mRetired.size(); i++) {
+            mRetired.get(i).free();
+        }
+        mRetired.clear();
+    }
+
+    /** Split the elements of the current frame into batches. */
+    private void assignBatches() {
+        mBatchCount = 0;
+
+        for (int i = 0; i < mFrameItems.size(); i++) {
+            Item item = mFrameItems.get(i);
+            Batch target = null;
+
+            for (int b = mBatchCount - 1; b >= Math.max(0, mBatchCount - LOOKBACK); b--) {
+                Batch batch = mBatches.get(b);
+
+                if (sameTexture(batch.mTexture, item.mTexture)) {
+                    target = batch;
+                    break;
+                }
+
+                // The element can not be drawn before something it overlaps
+                if (batch.overlaps(item)) {
+                    break;
+                }
+            }
+
+            if (target == null) {
+                if (mBatchCount == mBatches.size()) {
+                    mBatches.add(new Batch(mRoot));
+                }
+
+                target = mBatches.get(mBatchCount++);
+                target.begin(item.mTexture, mRetiring);
+            }
+
+            target.add(item);
+        }
+
+        // Earlier batches get drawn first
+        for (int i = 0; i < mBatchCount; i++) {
+            mBatches.get(i).mDepth = mBatchCount - i;
+        }
+    }
+
+    /**
+     * Check whether two textures are the same.
+     *
+     * @param a first texture.
+     * @param b second texture.
+     * @return {@code true} if elements with these textures can be drawn together.
+     */
+    private static boolean sameTexture(SampledTexture a, SampledTexture b) {
+        if (a == b) {
+            return true;
+        }
+
+        if (a == null || b == null || a.getTexture() == null || b.getTexture() == null) {
+            return false;
+        }
+
+        return a.equals(b);
+    }
+}
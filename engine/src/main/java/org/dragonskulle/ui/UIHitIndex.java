@@ -0,0 +1,338 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.ui;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.dragonskulle.components.Transform;
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.joml.Vector3f;
+
+/**
+ * Screen space index of UI elements, used to find the element under the cursor.
+ *
+ * @author DragonSkulle
+ *     <p>Every {@link UIRenderable} keeps its screen space bounding rectangle, and inverse world
+ *     matrix. They are only recomputed when the element's transform changed, which is checked
+ *     through {@link Transform#getChangeCount}, and only if {@link TransformUI#getLayoutVersion}
+ *     says any UI transform changed at all. Rectangles are bucketed into a uniform grid over the
+ *     screen, so that a point query only tests the few elements sharing the cursor's cell.
+ *     <p>The set of elements is synchronised with the scene only when its enabled component lists
+ *     change. Thus, when nothing moves, keeping the index up to date costs a few comparisons.
+ *     <p>The index must only be used from the thread UI is updated on.
+ */
+class UIHitIndex {
+    /** Number of grid cells along each screen axis. */
+    private static final int GRID_SIZE = 16;
+
+    /** Indexed UI element. */
+    static class Entry {
+        /** The indexed renderable. */
+        private final UIRenderable mRenderable;
+        /** Transform of the renderable. */
+        private final Transform mTransform;
+        /** Inverse of the world matrix, as of the last update. */
+        private final Matrix4f mInvMatrix = new Matrix4f();
+
+        /** Change count of the transform, as of the last update. */
+        private int mChangeCount;
+        /** Position of the renderable in the scene's component list. */
+        private int mOrder;
+        /** Last synchronisation the renderable was seen in. */
+        private int mSeen;
+
+        /** First grid column the entry is in. */
+        private int mStartX;
+        /** First grid row the entry is in. */
+        private int mStartY;
+        /** Last grid column the entry is in, below {@link #mStartX} if it is not in any. */
+        private int mEndX = -1;
+        /** Last grid row the entry is in. */
+        private int mEndY = -1;
+
+        /**
+         * Create an entry.
+         *
+         * @param renderable renderable to index.
+         */
+        private Entry(UIRenderable renderable) {
+            mRenderable = renderable;
+            mTransform = renderable.getGameObject().getTransform();
+        }
+
+        /**
+         * Check whether a point is within the entry.
+         *
+         * @param x X coordinate of the point.
+         * @param y Y coordinate of the point.
+         * @param tmp temporary vector.
+         * @return {@code true} if the point is within the rectangle of the entry.
+         */
+        private boolean contains(float x, float y, Vector3f tmp) {
+            tmp.set(x, y, 0f).mulPosition(mInvMatrix);
+
+            return tmp.x() >= 0.f && tmp.x() <= 1.f && tmp.y() >= 0.f && tmp.y() <= 1.f;
+        }
+    }
+
+    /** Elements within each grid cell, row by row. */
+    private final List<List<Entry>> mCells = new ArrayList<>();
+    /** Entries of all indexed renderables. */
+    private final Map<UIRenderable, Entry> mEntries = new IdentityHashMap<>();
+    /** Same entries as in {@link #mEntries}, kept for allocation-free iteration. */
+    private final List<Entry> mEntryList = new ArrayList<>();
+
+    /** Version of the component list the index was synchronised with. */
+    private int mListVersion = -1;
+    /** Layout version the entries were updated at. */
+    private int mLayoutVersion = -1;
+    /** Screen aspect ratio the entries were updated at. */
+    private float mAspectRatio = 0f;
+    /** Counter of synchronisations. */
+    private int mSyncCount = 0;
+
+    /** Temporary vector used for corner transformations, and point tests. */
+    private final Vector3f mTmpVec = new Vector3f();
+
+    /** Create an empty index. */
+    UIHitIndex() {
+        for (int i = 0; i < GRID_SIZE * GRID_SIZE; i++) {
+            mCells.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Bring the index up to date.
+     *
+     * @param renderables all enabled UI renderables.
+     * @param listVersion version of the list. If it did not change since the last update, the list
+     *     is assumed to be the same.
+     * @param aspectRatio current screen aspect ratio.
+     * @return {@code true} if any element was added, removed, or moved.
+     */
+    boolean update(List<UIRenderable> renderables, int listVersion, float aspectRatio) {
+        boolean changed = false;
+
+        if (listVersion != mListVersion) {
+            mListVersion = listVersion;
+            sync(renderables);
+            changed = true;
+        }
+
+        int layoutVersion = TransformUI.getLayoutVersion();
+
+        if (aspectRatio != mAspectRatio) {
+            mAspectRatio = aspectRatio;
+
+            for (int i = 0; i < mEntryList.size(); i++) {
+                updateEntry(mEntryList.get(i));
+            }
+
+            changed = true;
+        } else if (layoutVersion != mLayoutVersion) {
+            for (int i = 0; i < mEntryList.size(); i++) {
+                Entry entry = mEntryList.get(i);
+                if (entry.mTransform.getChangeCount() != entry.mChangeCount) {
+                    updateEntry(entry);
+                    changed = true;
+                }
+            }
+        }
+
+        // Computing the matrices may have invalidated transforms once more
+        mLayoutVersion = TransformUI.getLayoutVersion();
+
+        return changed;
+    }
+
+    /**
+     * Find the top most hoverable element at a point.
+     *
+     * <p>Elements deeper in the object hierarchy are on top. Between elements at the same depth,
+     * the one later in the component list wins.
+     *
+     * @param x X coordinate of the point, in range [-1; 1].
+     * @param y Y coordinate of the point, in range [-1; 1].
+     * @return the top most element, or {@code null} if there is nothing at the point.
+     */
+    UIRenderable query(float x, float y) {
+        int cellX = cell(x);
+        int cellY = cell(y);
+
+        if (cellX < 0 || cellY < 0 || cellX >= GRID_SIZE || cellY >= GRID_SIZE) {
+            return null;
+        }
+
+        List<Entry> cell = mCells.get(cellY * GRID_SIZE + cellX);
+
+        Entry best = null;
+        int bestDepth = 0;
+
+        for (int i = 0; i < cell.size(); i++) {
+            Entry entry = cell.get(i);
+            UIRenderable rend = entry.mRenderable;
+
+            if (!rend.isHoverable()) {
+                continue;
+            }
+
+            int depth = rend.getGameObject().getDepth();
+
+            if (depth < bestDepth
+                    || (best != null && depth == bestDepth && entry.mOrder < best.mOrder)) {
+                continue;
+            }
+
+            if (entry.contains(x, y, mTmpVec)) {
+                best = entry;
+                bestDepth = depth;
+            }
+        }
+
+        return best == null ? null : best.mRenderable;
+    }
+
+    /**
+     * Synchronise the set of entries with a list of renderables.
+     *
+     * @param renderables all enabled UI renderables.
+     */
+    private void sync(List<UIRenderable> renderables) {
+        int syncCount = ++mSyncCount;
+
+        for (int i = 0; i < renderables.size(); i++) {
+            UIRenderable rend = renderables.get(i);
+
+            if (rend.getGameObject() == null) {
+                continue;
+            }
+
+            Entry entry = mEntries.get(rend);
+
+            if (entry == null) {
+                entry = new Entry(rend);
+                mEntries.put(rend, entry);
+                mEntryList.add(entry);
+                updateEntry(entry);
+            }
+
+            entry.mOrder = i;
+            entry.mSeen = syncCount;
+        }
+
+        int count = 0;
+
+        for (int i = 0; i < mEntryList.size(); i++) {
+            Entry entry = mEntryList.get(i);
+
+            if (entry.mSeen != syncCount) {
+                setCells(entry, 0, 0, -1, -1);
+                mEntries.remove(entry.mRenderable);
+            } else {
+                mEntryList.set(count++, entry);
+            }
+        }
+
+        while (mEntryList.size() > count) {
+            mEntryList.remove(mEntryList.size() - 1);
+        }
+    }
+
+    /**
+     * Recompute the screen space bounds of an entry.
+     *
+     * @param entry entry to update.
+     */
+    private void updateEntry(Entry entry) {
+        Matrix4fc matrix = entry.mTransform.getWorldMatrix();
+        entry.mChangeCount = entry.mTransform.getChangeCount();
+        entry.mInvMatrix.set(matrix).invert();
+
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+
+        for (int corner = 0; corner < 4; corner++) {
+            mTmpVec.set(corner & 1, corner >> 1, 0f).mulPosition(matrix);
+            minX = Math.min(minX, mTmpVec.x());
+            minY = Math.min(minY, mTmpVec.y());
+            maxX = Math.max(maxX, mTmpVec.x());
+            maxY = Math.max(maxY, mTmpVec.y());
+        }
+
+        // Degenerate matrices can not be hit, and produce NaN bounds
+        if (!(minX <= maxX && minY <= maxY)) {
+            setCells(entry, 0, 0, -1, -1);
+            return;
+        }
+
+        setCells(
+                entry,
+                Math.max(cell(minX), 0),
+                Math.max(cell(minY), 0),
+                Math.min(cell(maxX), GRID_SIZE - 1),
+                Math.min(cell(maxY), GRID_SIZE - 1));
+    }
+
+    /**
+     * Move an entry to a range of grid cells.
+     *
+     * @param entry entry to move.
+     * @param startX first column.
+     * @param startY first row.
+     * @param endX last column. If it is below {@code startX}, the entry is not in any cell.
+     * @param endY last row. If it is below {@code startY}, the entry is not in any cell.
+     */
+    private void setCells(Entry entry, int startX, int startY, int endX, int endY) {
+        if (endX < startX || endY < startY) {
+            startX = 0;
+            startY = 0;
+            endX = -1;
+            endY = -1;
+        }
+
+        if (entry.mStartX == startX
+                && entry.mStartY == startY
+                && entry.mEndX == endX
+                && entry.mEndY == endY) {
+            return;
+        }
+
+        for (int y = entry.mStartY; y <= entry.mEndY; y++) {
+            for (int x = entry.mStartX; x <= entry.mEndX; x++) {
+                mCells.get(y * GRID_SIZE + x).remove(entry);
+            }
+        }
+
+        entry.mStartX = startX;
+        entry.mStartY = startY;
+        entry.mEndX = endX;
+        entry.mEndY = endY;
+
+        for (int y = startY; y <= endY; y++) {
+            for (int x = startX; x <= endX; x++) {
+                mCells.get(y * GRID_SIZE + x).add(entry);
+            }
+        }
+    }
+
+    /**
+     * Get the grid cell of a screen coordinate.
+     *
+     * @param coord coordinate in range [-1; 1].
+     * @return index of the cell. Coordinates outside the screen are outside the grid.
+     */
+    private static int cell(float coord) {
+        float cell = (coord + 1f) * 0.5f * GRID_SIZE;
+
+        // The bottom, and right edges belong to the last cell
+        if (cell == GRID_SIZE) {
+            return GRID_SIZE - 1;
+        }
+
+        return (int) Math.floor(cell);
+    }
+}
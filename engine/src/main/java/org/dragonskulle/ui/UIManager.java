@@ -1,7 +1,6 @@
 /* (C) 2021 DragonSkulle */
 package org.dragonskulle.ui;
 
-import java.util.Collection;
 import java.util.List;
 import lombok.Getter;
 import lombok.Setter;
@@ -9,16 +8,20 @@ import lombok.experimental.Accessors;
 import org.dragonskulle.components.Component;
 import org.dragonskulle.core.GameObject;
 import org.dragonskulle.core.Reference;
+import org.dragonskulle.core.Scene;
 import org.dragonskulle.input.Actions;
 import org.dragonskulle.input.Cursor;
+import org.dragonskulle.renderer.components.Camera;
+import org.joml.Vector2f;
+import org.joml.Vector2fc;
 
 /**
  * General UI manager.
  *
- * <p>Currently, this manager goes through all objects, and finds which object UI element was
- * hovered.
- *
  * @author Aurimas Blažulionis
+ *     <p>The manager keeps track of which UI element is hovered. Elements are kept in a {@link
+ *     UIHitIndex}, thus finding the hovered element does not need to go through every component,
+ *     and only happens when the cursor, or the UI moves.
  */
 @Accessors(prefix = "m")
 public class UIManager {
@@ -39,17 +42,26 @@ public class UIManager {
     /** Global UI appearance. */
     @Getter @Setter private UIAppearance mAppearance = new UIAppearance();
 
+    /** Screen space index of all UI elements. */
+    private final UIHitIndex mHitIndex = new UIHitIndex();
+    /** Cursor position the hovered element was last looked up at. */
+    private final Vector2f mLastCursorPosition = new Vector2f(Float.NaN);
+    /** Whether the hovered element needs to be looked up again. */
+    private boolean mHoverDirty = true;
+
     /**
      * Update which UI element is currently hovered by the cursor.
      *
-     * @param components a list of currently enabled components
+     * <p>The hovered element is only looked up again when the cursor moves, or UI elements get
+     * added, removed, or moved. Otherwise, this method does next to no work.
+     *
+     * @param scene scene containing the UI elements.
      */
-    public void uiUpdate(Collection<Component> components) {
-        mHoveredObject = null;
-
+    public void uiUpdate(Scene scene) {
         Cursor cursor = Actions.getCursor();
 
         if (cursor == null) {
+            mHoveredObject = null;
             return;
         }
 
@@ -59,18 +71,37 @@ public class UIManager {
         }
         setNextCursor(UIAppearance.getDefaultCursor());
 
-        int curDepth = 0;
+        List<UIRenderable> renderables = scene.getEnabledComponentsOfType(UIRenderable.class);
+        Camera main = scene.getSingleton(Camera.class);
+        float aspectRatio = main == null ? 1f : main.getAspectRatio();
 
-        for (Component component : components) {
-            if (component instanceof UIRenderable) {
-                UIRenderable rend = (UIRenderable) component;
-                int depth = rend.getGameObject().getDepth();
-                if (rend.cursorOver() && depth >= curDepth) {
-                    mHoveredObject = rend.getReference(UIRenderable.class);
-                    curDepth = depth;
-                }
-            }
+        boolean changed =
+                mHitIndex.update(renderables, scene.getEnabledComponentsVersion(), aspectRatio);
+
+        Vector2fc position = cursor.getPosition();
+
+        if (!changed
+                && !mHoverDirty
+                && position.equals(mLastCursorPosition)
+                && (mHoveredObject == null || Reference.isValid(mHoveredObject))) {
+            return;
         }
+
+        mHoverDirty = false;
+        mLastCursorPosition.set(position);
+
+        UIRenderable hovered = mHitIndex.query(position.x(), position.y());
+        mHoveredObject = hovered == null ? null : hovered.getReference(UIRenderable.class);
+    }
+
+    /**
+     * Look up the hovered element again on the next update.
+     *
+     * <p>This needs to be called when something the lookup depends on changes, without the cursor,
+     * or the element moving.
+     */
+    void invalidateHover() {
+        mHoverDirty = true;
     }
 
     /**
@@ -19,6 +19,7 @@ import org.dragonskulle.renderer.TextureMapping.TextureFiltering;
 import org.dragonskulle.renderer.TextureMapping.TextureWrapping;
 import org.dragonskulle.renderer.components.Light;
 import org.dragonskulle.renderer.materials.IColouredMaterial;
+import org.dragonskulle.renderer.materials.MaterialVersion;
 import org.joml.Matrix4fc;
 import org.joml.Vector3fc;
 import org.joml.Vector4f;
@@ -65,6 +66,9 @@ public class UIMaterial implements IColouredMaterial {
     /** Colour of the surface. It will multiply the texture's colour */
     @Getter public Vector4f mColour = new Vector4f(1.f);
 
+    /** Version of the instance properties. */
+    private final MaterialVersion mVersion = new MaterialVersion();
+
     /** Default constructor for {@link UIMaterial}. */
     public UIMaterial() {}
 
@@ -129,6 +133,11 @@ public class UIMaterial implements IColouredMaterial {
         return offset + 4 * 4;
     }
 
+    @Override
+    public int getVersion() {
+        return mVersion.begin().add(mColour).end();
+    }
+
     @Override
     public SampledTexture[] getFragmentTextures() {
         return mFragmentTextures;
@@ -56,7 +56,7 @@ public class UIRenderable extends Renderable implements IOnAwake {
      * make things like buttons behind it not selectable. If set to {@code false}, it will be
      * ignored.
      */
-    @Getter @Setter private boolean mHoverable = true;
+    @Getter private boolean mHoverable = true;
 
     private final Matrix4f mTmpMatrix = new Matrix4f();
 
@@ -95,6 +95,18 @@ public class UIRenderable extends Renderable implements IOnAwake {
         super(Mesh.QUAD, new UIMaterial(texture));
     }
 
+    /**
+     * Set whether the object is hoverable.
+     *
+     * @param hoverable whether the object should obstruct other UI elements.
+     */
+    public void setHoverable(boolean hoverable) {
+        if (mHoverable != hoverable) {
+            mHoverable = hoverable;
+            UIManager.getInstance().invalidateHover();
+        }
+    }
+
     @Override
     public void onAwake() {
 
@@ -131,6 +143,11 @@ public class UIRenderable extends Renderable implements IOnAwake {
         return true;
     }
 
+    @Override
+    public boolean isAlwaysVisible() {
+        return true;
+    }
+
     /**
      * Returns whether the mouse cursor is over the renderable.
      *
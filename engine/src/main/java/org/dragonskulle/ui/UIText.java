@@ -2,7 +2,7 @@
 package org.dragonskulle.ui;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import lombok.AccessLevel;
 import lombok.Getter;
@@ -56,6 +56,18 @@ public class UIText extends Renderable implements IOnAwake, IFrameUpdate, IUIBui
     private Mesh mNormalText;
     private Mesh mTextWithCursor;
 
+    /** Number of text changes after which a dynamic mesh is used. */
+    private static final int DYNAMIC_AFTER_CHANGES = 2;
+    /** Colour of text vertices, the material applies the actual colour. */
+    private static final Vector4fc TEXT_COLOUR = new Vector4f(1f);
+    /** Colour of cursor vertices. */
+    private static final Vector4fc CURSOR_COLOUR = new Vector4f(1f, 1f, 1f, 0.8f);
+
+    /** Number of times the text changed after its mesh was first built. */
+    private int mTextChanges = 0;
+    /** Mesh updated in place, once the text changes often enough. */
+    private Mesh mDynamicText;
+
     @Override
     public void onAwake() {
         setText(mText);
@@ -184,8 +196,8 @@ public class UIText extends Renderable implements IOnAwake, IFrameUpdate, IUIBui
     /**
      * Set a new text value to render
      *
-     * <p>This method can be computationally expensive to call regularly. It is recommended to set
-     * text up once.
+     * <p>Layouts of recent strings are cached, and text that keeps changing gets its mesh updated
+     * in place, thus this is cheap enough to call every time a counter changes.
      *
      * @param text new text value
      */
@@ -193,6 +205,9 @@ public class UIText extends Renderable implements IOnAwake, IFrameUpdate, IUIBui
         if (mText.equals(text) && getMesh() != null) {
             return;
         }
+        if (getMesh() != null) {
+            mTextChanges++;
+        }
         mText = text;
 
         buildMesh();
@@ -232,128 +247,150 @@ public class UIText extends Renderable implements IOnAwake, IFrameUpdate, IUIBui
         }
     }
 
-    /** Builds a new mesh. */
+    /**
+     * Builds the text meshes.
+     *
+     * <p>Glyph positions come from the {@link TextLayout} cache. Once the text has changed a few
+     * times, it is drawn with a dynamic mesh, which gets updated in place from then on.
+     */
     private void buildMesh() {
         Font font = mFont.get();
+        TextLayout layout = TextLayout.get(font, mText);
 
-        ArrayList<Vertex> vertices = new ArrayList<>(mText.length() * 4);
-        ArrayList<Integer> indices = new ArrayList<>(mText.length() * 6);
-
-        /* All startBox positions go here. */
-        ArrayList<Vector2f> preCharPositions = new ArrayList<>(mText.length());
-        /* All endBox positions go here. */
-        ArrayList<Vector2f> postCharPositions = new ArrayList<>(mText.length());
-        final int[] pos = {0, 0};
-        final float scale = 0.003f;
-
-        Vector2f bbmin = new Vector2f(Float.POSITIVE_INFINITY);
-        Vector2f bbmax = new Vector2f(Float.NEGATIVE_INFINITY);
-
-        Vector2f startBox = new Vector2f();
-        Vector2f endBox = new Vector2f();
-        Vector2f startUV = new Vector2f();
-        Vector2f endUV = new Vector2f();
-
-        preCharPositions.add(new Vector2f(pos[0], pos[1]));
-        postCharPositions.add(new Vector2f());
-
-        // Put every character onto the mesh
-        mText.chars()
-                .forEach(
-                        c -> {
-                            if (c == '\n') {
-                                pos[1] += Font.LINE_HEIGHT;
-                                pos[0] = 0;
-                            } else if (c == '\r') {
-                                pos[0] = 0;
-                            } else {
-                                font.getGlyph(c, pos, startBox, endBox, startUV, endUV);
-                                startBox.mul(scale);
-                                endBox.mul(scale);
-                                bbmin.min(startBox);
-                                bbmax.max(endBox);
-                                Mesh.addQuadToList(
-                                        vertices, indices, startBox, endBox, startUV, endUV);
-                                postCharPositions
-                                        .get(postCharPositions.size() - 1)
-                                        .set(startBox.x, pos[1] * scale);
-                                postCharPositions.add(new Vector2f(endBox.x, pos[1] * scale));
-                            }
-
-                            preCharPositions.add(new Vector2f(pos[0], pos[1]));
-                        });
-
-        float width = bbmax.x() - bbmin.x();
-        float height = bbmax.y() - bbmin.y();
+        float width = layout.mMaxX - layout.mMinX;
+        float height = layout.mMaxY - layout.mMinY;
 
         float aspect = width / height;
 
         float widthMul = 1.f / width;
         float heightMul = 1.f / height;
 
-        Vector2f bbcenter =
-                new Vector2f(
-                        MathUtils.lerp(bbmin.x(), bbmax.x(), 0f * mHorizontalAlignment),
-                        MathUtils.lerp(bbmin.y(), bbmax.y(), mVerticalAlignment));
-
         // Align the mesh, shift all vertices by negative of this
-        Vector3f alignmentCenter = new Vector3f(bbcenter.x(), bbcenter.y(), 0f);
+        float centerX = MathUtils.lerp(layout.mMinX, layout.mMaxX, 0f * mHorizontalAlignment);
+        float centerY = MathUtils.lerp(layout.mMinY, layout.mMaxY, mVerticalAlignment);
 
-        bbmin.sub(bbcenter);
-        bbmax.sub(bbcenter);
+        final boolean withCursor = mCursorPos >= 0 && mCursorPos <= mText.length();
+        int quads = layout.mGlyphCount + (withCursor ? 1 : 0);
 
-        // Shift all vertices by alignment
-        vertices.forEach(
-                v -> {
-                    Vector3f newVec = new Vector3f(v.getPos());
-                    newVec.sub(alignmentCenter);
-                    newVec.mul(widthMul, heightMul, 1f);
-                    v.getPos().set(newVec);
-                });
+        Vertex[] vertices = new Vertex[quads * 4];
+        int[] indices = new int[quads * 6];
 
-        int[] indicesArray = indices.stream().mapToInt(Integer::intValue).toArray();
+        for (int i = 0; i < layout.mGlyphCount; i++) {
+            int base = i * 4;
+            putQuad(
+                    vertices,
+                    indices,
+                    i,
+                    (layout.mBoxes[base] - centerX) * widthMul,
+                    (layout.mBoxes[base + 1] - centerY) * heightMul,
+                    (layout.mBoxes[base + 2] - centerX) * widthMul,
+                    (layout.mBoxes[base + 3] - centerY) * heightMul,
+                    layout.mUvs,
+                    base,
+                    TEXT_COLOUR);
+        }
 
         mTargetAspectRatio = aspect;
 
-        mNormalText = new Mesh(vertices.stream().toArray(Vertex[]::new), indicesArray);
+        int glyphVertices = layout.mGlyphCount * 4;
+        int glyphIndices = layout.mGlyphCount * 6;
+        Vertex[] textVertices = withCursor ? Arrays.copyOf(vertices, glyphVertices) : vertices;
+        int[] textIndices = withCursor ? Arrays.copyOf(indices, glyphIndices) : indices;
 
-        final boolean withCursor = mCursorPos >= 0 && mCursorPos <= mText.length();
+        if (mDynamicText != null) {
+            mDynamicText.update(textVertices, textIndices);
+        } else if (mTextChanges >= DYNAMIC_AFTER_CHANGES) {
+            mDynamicText = Mesh.createDynamic(textVertices, textIndices);
+        }
+
+        mNormalText = mDynamicText != null ? mDynamicText : new Mesh(textVertices, textIndices);
 
         if (withCursor) {
-            Vector2f p = preCharPositions.get(mCursorPos);
-            pos[0] = (int) p.x;
-            pos[1] = (int) p.y;
-            Vector2f p2 = postCharPositions.get(mCursorPos);
+            int[] pos = {layout.mPreChar[mCursorPos * 2], layout.mPreChar[mCursorPos * 2 + 1]};
+            float postX = layout.mPostChar[mCursorPos * 2];
+
+            Vector2f startBox = new Vector2f();
+            Vector2f endBox = new Vector2f();
+            Vector2f startUV = new Vector2f();
+            Vector2f endUV = new Vector2f();
 
             font.getGlyph('|', pos, startBox, endBox, startUV, endUV);
-            startBox.mul(scale);
-            endBox.mul(scale);
-            float xdiff = p2.x - startBox.x - 0.01f;
+            startBox.mul(TextLayout.SCALE);
+            endBox.mul(TextLayout.SCALE);
+            float xdiff = postX - startBox.x - 0.01f;
             startBox.x += xdiff;
             endBox.x += xdiff;
 
-            startBox.sub(alignmentCenter.x, alignmentCenter.y);
-            startBox.mul(widthMul, heightMul);
-
-            endBox.sub(alignmentCenter.x, alignmentCenter.y);
-            endBox.mul(widthMul, heightMul);
+            float[] uvs = {startUV.x, startUV.y, endUV.x, endUV.y};
 
-            Mesh.addQuadToList(
+            putQuad(
                     vertices,
                     indices,
-                    startBox,
-                    endBox,
-                    startUV,
-                    endUV,
-                    new Vector4f(1f, 1f, 1f, 0.8f));
-
-            indicesArray = indices.stream().mapToInt(Integer::intValue).toArray();
-            mTextWithCursor = new Mesh(vertices.stream().toArray(Vertex[]::new), indicesArray);
+                    layout.mGlyphCount,
+                    (startBox.x - centerX) * widthMul,
+                    (startBox.y - centerY) * heightMul,
+                    (endBox.x - centerX) * widthMul,
+                    (endBox.y - centerY) * heightMul,
+                    uvs,
+                    0,
+                    CURSOR_COLOUR);
+
+            mTextWithCursor = new Mesh(vertices, indices);
         } else {
             mTextWithCursor = null;
         }
     }
 
+    /**
+     * Write a quad into vertex and index arrays, the same way {@link Mesh#addQuadToList} does.
+     *
+     * @param vertices vertex array to write to.
+     * @param indices index array to write to.
+     * @param quad index of the quad.
+     * @param startX starting X coordinate.
+     * @param startY starting Y coordinate.
+     * @param endX ending X coordinate.
+     * @param endY ending Y coordinate.
+     * @param uvs array holding start U, start V, end U, and end V coordinates.
+     * @param uvOffset offset of the coordinates in the array.
+     * @param colour colour of the quad.
+     */
+    private static void putQuad(
+            Vertex[] vertices,
+            int[] indices,
+            int quad,
+            float startX,
+            float startY,
+            float endX,
+            float endY,
+            float[] uvs,
+            int uvOffset,
+            Vector4fc colour) {
+        float startU = uvs[uvOffset];
+        float startV = uvs[uvOffset + 1];
+        float endU = uvs[uvOffset + 2];
+        float endV = uvs[uvOffset + 3];
+
+        int start = quad * 4;
+        int index = quad * 6;
+
+        indices[index] = start;
+        indices[index + 1] = start + 1;
+        indices[index + 2] = start + 2;
+        indices[index + 3] = start + 1;
+        indices[index + 4] = start + 3;
+        indices[index + 5] = start + 2;
+
+        vertices[start] =
+                new Vertex(new Vector3f(startX, startY, 0f), colour, new Vector2f(startU, startV));
+        vertices[start + 1] =
+                new Vertex(new Vector3f(startX, endY, 0f), colour, new Vector2f(startU, endV));
+        vertices[start + 2] =
+                new Vertex(new Vector3f(endX, startY, 0f), colour, new Vector2f(endU, startV));
+        vertices[start + 3] =
+                new Vertex(new Vector3f(endX, endY, 0f), colour, new Vector2f(endU, endV));
+    }
+
     @Override
     public float getDepth(Vector3fc camPosition, Vector3f tmpVec) {
         return (float) -getGameObject().getDepth() + mDepthShift;
@@ -364,6 +401,11 @@ public class UIText extends Renderable implements IOnAwake, IFrameUpdate, IUIBui
         return true;
     }
 
+    @Override
+    public boolean isAlwaysVisible() {
+        return true;
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
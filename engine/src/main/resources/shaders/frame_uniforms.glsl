@@ -0,0 +1,14 @@
+
+// Per-frame data shared by all objects. Layout must match FrameUniforms.java.
+
+#ifndef MAX_LIGHTS
+#define MAX_LIGHTS 4
+#endif
+
+layout(set = 0, binding = 0) uniform FrameUniforms {
+	mat4 view;
+	mat4 proj;
+	vec4 camPos;
+	vec4 lightDir[MAX_LIGHTS];
+	vec4 lightCol[MAX_LIGHTS];
+} frame;
@@ -10,30 +10,29 @@
 #endif
 
 #include "pbr_base.glsl"
+#include "frame_uniforms.glsl"
 
+// Textures are in set 1, after the frame uniforms
 #ifdef ALBEDO_BINDING
-layout(binding = ALBEDO_BINDING) uniform sampler2D albedo;
+layout(set = 1, binding = ALBEDO_BINDING) uniform sampler2D albedo;
 #endif
 #ifdef NORMAL_BINDING
-layout(binding = NORMAL_BINDING) uniform sampler2D normal;
+layout(set = 1, binding = NORMAL_BINDING) uniform sampler2D normal;
 #endif
 #ifdef METALLIC_BINDING
-layout(binding = METALLIC_BINDING) uniform sampler2D metalnessRoughness;
+layout(set = 1, binding = METALLIC_BINDING) uniform sampler2D metalnessRoughness;
 #endif
 
 layout(location = 0) in vec4 fragColor;
 layout(location = 1) in vec2 fragUV;
 layout(location = 2) in vec3 fragNormal;
-layout(location = 3) in vec3 fragCam;
-layout(location = 4) in vec3 fragPos;
-layout(location = 5) in float fragAlphaCutoff;
-layout(location = 6) in float fragMetallic;
-layout(location = 7) in float fragRoughness;
-layout(location = 8) in float fragNormalMul;
-layout(location = 9) in vec3 fragEmissionCol;
-layout(location = 10) in vec3 fragLightDir[NUM_LIGHTS];
-layout(location = 10 + NUM_LIGHTS) in vec3 fragLightCol[NUM_LIGHTS];
-#define LAST_IN_LOCATION (10 + 2 * NUM_LIGHTS)
+layout(location = 3) in vec3 fragPos;
+layout(location = 4) in float fragAlphaCutoff;
+layout(location = 5) in float fragMetallic;
+layout(location = 6) in float fragRoughness;
+layout(location = 7) in float fragNormalMul;
+layout(location = 8) in vec3 fragEmissionCol;
+#define LAST_IN_LOCATION 8
 
 layout(location = 0) out vec4 outColor;
 
@@ -66,7 +65,7 @@ vec4 pbr_base() {
 
 	normalVec = normalize(tbn * normalVec);
 
-	vec3 viewVec = normalize(fragCam - fragPos);
+	vec3 viewVec = normalize(frame.camPos.xyz - fragPos);
 
 	float roughness = fragRoughness;
 	float metalness = fragMetallic;
@@ -86,9 +85,9 @@ vec4 pbr_base() {
 		accum += calcLightShading(
 			baseReflectivity,
 			viewVec,
-			fragLightDir[i],
+			frame.lightDir[i].xyz,
 			normalVec,
-			fragLightCol[i],
+			frame.lightCol[i].xyz,
 			albedo,
 			roughness,
 			metalness
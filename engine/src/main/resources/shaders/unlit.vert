@@ -1,10 +1,7 @@
 #version 450
 #extension GL_ARB_separate_shader_objects : enable
 
-layout(push_constant) uniform PushConsts {
-	mat4 view;
-	mat4 proj;
-} consts;
+#include "frame_uniforms.glsl"
 
 layout(location = 0) in vec3 inPosition;
 layout(location = 1) in vec3 inNormal;
@@ -18,7 +15,7 @@ layout(location = 0) out vec4 fragColor;
 layout(location = 1) out vec2 fragUV;
 
 void main() {
-	gl_Position = consts.proj * consts.view * model * vec4(inPosition, 1.0);
+	gl_Position = frame.proj * frame.view * model * vec4(inPosition, 1.0);
 	fragColor = inColor * instColor;
 	fragUV = inUV;
 }
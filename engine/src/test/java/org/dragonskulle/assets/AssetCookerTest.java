@@ -0,0 +1,191 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.assets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import org.dragonskulle.core.AssetBundle;
+import org.dragonskulle.core.GameObject;
+import org.dragonskulle.core.Reference;
+import org.dragonskulle.core.ResourceArguments;
+import org.dragonskulle.core.ResourceManager;
+import org.dragonskulle.renderer.Mesh;
+import org.dragonskulle.renderer.MeshSimplifier;
+import org.dragonskulle.renderer.Texture;
+import org.dragonskulle.renderer.components.Renderable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit tests for {@link AssetCooker} and {@link AssetBundle}s. */
+public class AssetCookerTest {
+    private Path mBundlePath;
+    private AssetBundle mBundle;
+
+    @Before
+    public void setUp() throws Exception {
+        mBundlePath = Files.createTempFile("cooked", ".bundle");
+
+        AssetCooker cooker = new AssetCooker();
+        cooker.addResources(Paths.get("src/test/resources"));
+        cooker.write(mBundlePath);
+
+        assertEquals(0, cooker.getFailureCount());
+
+        mBundle = new AssetBundle(mBundlePath);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ResourceManager.unmountBundle(mBundle);
+        Files.deleteIfExists(mBundlePath);
+    }
+
+    /** Test that the expected resources get cooked. */
+    @Test
+    public void cooksResources() {
+        assertTrue(mBundle.contains("gltf/testin.glb"));
+        assertTrue(mBundle.contains("textures/gltf/error.png"));
+    }
+
+    /** Test that a cooked texture loads the same as the original one. */
+    @Test
+    public void cookedTextureMatches() {
+        ResourceArguments<Texture, Object> args =
+                new ResourceArguments<>(Texture.class, "gltf/error.png", null);
+
+        Texture original = ResourceManager.loadResource(args);
+        assertNotNull(original);
+
+        ResourceManager.mountBundle(mBundle);
+        Texture cooked = ResourceManager.loadResource(args);
+        assertNotNull(cooked);
+
+        try {
+            assertEquals(original.getWidth(), cooked.getWidth());
+            assertEquals(original.getHeight(), cooked.getHeight());
+            assertEquals(original.getChannels(), cooked.getChannels());
+
+            int width = original.getWidth();
+            int height = original.getHeight();
+            int mipLevels = Texture.getMipLevelCount(width, height);
+
+            assertEquals(1, original.getMipLevels());
+            assertEquals(mipLevels, cooked.getMipLevels());
+            assertEquals(Texture.getMipOffset(width, height, mipLevels), cooked.size());
+
+            ByteBuffer fullSize = cooked.getBuffer().duplicate();
+            fullSize.limit(Texture.getMipOffset(width, height, 1));
+            assertEquals(original.getBuffer(), fullSize);
+        } finally {
+            original.free();
+            cooked.free();
+        }
+    }
+
+    /** Test that every mip level of a cooked texture averages the level above it. */
+    @Test
+    public void cookedTextureMipChain() {
+        // 2x1 image of a black and a white pixel, as a 24-bit bitmap
+        byte[] bmp = {
+            'B', 'M', 62, 0, 0, 0, 0, 0, 0, 0, 54, 0, 0, 0, 40, 0, 0, 0, 2, 0, 0, 0, 1, 0, 0, 0,
+            1, 0, 24, 0, 0, 0, 0, 0, 8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, -1, -1, -1, 0, 0
+        };
+
+        byte[] cooked = Texture.cook(bmp);
+        assertNotNull(cooked);
+
+        ByteBuffer buffer = ByteBuffer.wrap(cooked).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(2, buffer.getInt(4));
+        assertEquals(1, buffer.getInt(8));
+        assertEquals(2, buffer.getInt(16));
+        assertEquals(20 + Texture.getMipOffset(2, 1, 2), cooked.length);
+
+        // Second level is a single grey pixel, with alpha kept opaque
+        int mip = 20 + Texture.getMipOffset(2, 1, 1);
+        assertEquals(128, cooked[mip] & 0xff);
+        assertEquals(128, cooked[mip + 1] & 0xff);
+        assertEquals(128, cooked[mip + 2] & 0xff);
+        assertEquals(255, cooked[mip + 3] & 0xff);
+    }
+
+    /** Test that glTF loads from the bundle. */
+    @Test
+    public void cookedGltfLoads() {
+        ResourceManager.mountBundle(mBundle);
+
+        GLTF gltf =
+                ResourceManager.loadResource(new ResourceArguments<>(GLTF.class, "testin", null));
+
+        assertNotNull(gltf);
+
+        try {
+            assertEquals("TestScene", gltf.getDefaultScene().getName());
+            assertEquals(5, gltf.getDefaultScene().getGameObjects().size());
+        } finally {
+            gltf.free();
+        }
+    }
+
+    /** Test that glTF meshes come with the same levels of detail they would get at runtime. */
+    @Test
+    public void cookedGltfHasLevels() {
+        ResourceManager.mountBundle(mBundle);
+
+        GLTF gltf =
+                ResourceManager.loadResource(new ResourceArguments<>(GLTF.class, "testin", null));
+
+        assertNotNull(gltf);
+
+        try {
+            List<Reference<Renderable>> renderables = new ArrayList<>();
+
+            for (GameObject root : gltf.getDefaultScene().getGameObjects()) {
+                root.getComponents(Renderable.class, renderables);
+                root.getComponentsInChildren(Renderable.class, renderables);
+            }
+
+            int cooked = 0;
+
+            for (Reference<Renderable> ref : renderables) {
+                Mesh mesh = ref.get().getMesh();
+                Mesh[] levels = mesh.getLevels();
+
+                if (levels == null) {
+                    continue;
+                }
+
+                Mesh[] generated = MeshSimplifier.generateLevels(mesh);
+                assertEquals(generated.length, levels.length);
+
+                for (int i = 0; i < levels.length; i++) {
+                    assertEquals(generated[i] == null, levels[i] == null);
+
+                    if (levels[i] != null) {
+                        assertEquals(
+                                generated[i].getVertices().length,
+                                levels[i].getVertices().length);
+                        assertArrayEquals(generated[i].getIndices(), levels[i].getIndices());
+                    }
+                }
+
+                cooked++;
+            }
+
+            // The sphere and monkey head are detailed enough to be simplified
+            assertTrue(cooked >= 2);
+        } finally {
+            gltf.free();
+        }
+    }
+}
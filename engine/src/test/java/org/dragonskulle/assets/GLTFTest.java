@@ -1,6 +1,7 @@
 /* (C) 2021 DragonSkulle */
 package org.dragonskulle.assets;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -17,6 +18,8 @@ import org.dragonskulle.core.Reference;
 import org.dragonskulle.core.Resource;
 import org.dragonskulle.core.Scene;
 import org.dragonskulle.network.components.NetworkHexTransform;
+import org.dragonskulle.renderer.Mesh;
+import org.dragonskulle.renderer.components.Renderable;
 import org.dragonskulle.ui.UIText;
 import org.joml.Vector3f;
 import org.junit.Test;
@@ -141,4 +144,46 @@ public class GLTFTest {
                     new Vector3f(1f, 2f, 3f), networkHexTransform.get().getAxialCoordinate().get());
         }
     }
+
+    @Test
+    public void binaryMatchesJson() {
+        try (Resource<GLTF> json = GLTF.getResource("testin");
+                Resource<GLTF> binary = GLTF.getResource("testin_binary")) {
+            assertNotNull(json);
+            assertNotNull(binary);
+
+            Scene jsonScene = json.get().getDefaultScene();
+            Scene binaryScene = binary.get().getDefaultScene();
+
+            assertEquals(jsonScene.getName(), binaryScene.getName());
+            assertEquals(jsonScene.getGameObjects().size(), binaryScene.getGameObjects().size());
+
+            Mesh jsonMesh = findRenderable(jsonScene, "Suzanne").getMesh();
+            Mesh binaryMesh = findRenderable(binaryScene, "Suzanne").getMesh();
+
+            assertArrayEquals(jsonMesh.getIndices(), binaryMesh.getIndices());
+            assertEquals(jsonMesh.getVertices().length, binaryMesh.getVertices().length);
+            assertEquals(jsonMesh.getBBMin(), binaryMesh.getBBMin());
+            assertEquals(jsonMesh.getBBMax(), binaryMesh.getBBMax());
+        }
+    }
+
+    /**
+     * Find the renderable of a root object.
+     *
+     * @param scene scene to search in.
+     * @param name name of the root object.
+     * @return the renderable component.
+     */
+    private static Renderable findRenderable(Scene scene, String name) {
+        GameObject go =
+                scene.getGameObjects().stream()
+                        .filter(o -> o.getName().equals(name))
+                        .findFirst()
+                        .orElse(null);
+        assertNotNull(go);
+        Reference<Renderable> rend = go.getComponent(Renderable.class);
+        assertNotNull(rend);
+        return rend.get();
+    }
 }
@@ -0,0 +1,303 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.audio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import org.dragonskulle.audio.components.AudioListener;
+import org.dragonskulle.audio.components.AudioSource;
+import org.dragonskulle.audio.formats.Sound;
+import org.dragonskulle.components.Transform3D;
+import org.dragonskulle.core.GameObject;
+import org.dragonskulle.core.Scene;
+import org.junit.Assume;
+import org.junit.Test;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.openal.AL11;
+import org.lwjgl.openal.ALC11;
+import org.lwjgl.openal.SOFTLoopback;
+
+/** Tests {@link AudioManager} voice allocation on an OpenAL Soft loopback device. */
+public class AudioManagerLoopbackTest {
+    private static final int FREQUENCY = 44100;
+    private static final int SOUND_COUNT = 40;
+    private static final int RENDER_FRAMES = 1024;
+
+    /**
+     * Create a sine tone sound.
+     *
+     * @param length length of the sound in seconds.
+     * @return the sound, with its buffer filled.
+     */
+    private static Sound createTone(float length) {
+        int samples = (int) (FREQUENCY * length);
+        ShortBuffer data = BufferUtils.createShortBuffer(samples);
+
+        for (int i = 0; i < samples; i++) {
+            double phase = 2.0 * Math.PI * 440.0 * i / FREQUENCY;
+            data.put((short) (Math.sin(phase) * Short.MAX_VALUE / 2));
+        }
+
+        data.flip();
+
+        Sound sound = new Sound() {};
+        sound.mBuffer = AL11.alGenBuffers();
+        sound.mLength = length;
+        AL11.alBufferData(sound.mBuffer, AL11.AL_FORMAT_MONO16, data, FREQUENCY);
+        return sound;
+    }
+
+    /**
+     * Count the AudioSources currently holding a voice.
+     *
+     * @param sources sources to check.
+     * @return number of sources with an OpenAL source attached.
+     */
+    private static int countVoiced(List<AudioSource> sources) {
+        int count = 0;
+
+        for (AudioSource source : sources) {
+            if (source.getSource() != null) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Run a fixed, and a late frame update on the sources, and update the manager.
+     *
+     * @param manager manager to update.
+     * @param sources sources to update.
+     * @param deltaTime time passed since the last update.
+     */
+    private static void tick(AudioManager manager, List<AudioSource> sources, float deltaTime) {
+        // No scene is active, nor presented, so the sources consider themselves presented
+        for (AudioSource source : sources) {
+            source.fixedUpdate(deltaTime);
+            source.lateFrameUpdate(deltaTime);
+        }
+
+        manager.update();
+    }
+
+    /**
+     * Test that only the closest sounds get voices, voices are handed over after fading out, and
+     * virtual sounds resume in place.
+     */
+    @Test
+    public void virtualisesDistantSounds() {
+        runOnLoopback(this::checkVirtualisation);
+    }
+
+    /** Test that voices keep being handed over in order, when stolen while others fade out. */
+    @Test
+    public void stealsWhileFading() {
+        runOnLoopback(this::checkStealingWhileFading);
+    }
+
+    /**
+     * Run a check with the manager initialised on a loopback device, skipping the test if OpenAL,
+     * or loopback devices are not available.
+     *
+     * @param check check to run.
+     */
+    private static void runOnLoopback(Consumer<AudioManager> check) {
+        AudioManager manager;
+
+        try {
+            manager = AudioManager.getInstance();
+        } catch (LinkageError e) {
+            Assume.assumeNoException("OpenAL is not available", e);
+            return;
+        }
+
+        manager.cleanup();
+
+        try {
+            Assume.assumeTrue(manager.initLoopback(FREQUENCY));
+            Assume.assumeTrue(manager.getSourceCount() < SOUND_COUNT);
+            check.accept(manager);
+        } finally {
+            manager.cleanup();
+            manager.initAudioManager();
+        }
+    }
+
+    /**
+     * Create a scene with a listener at the origin, and sounds playing along the X axis, 1 unit
+     * apart from each other.
+     *
+     * @param manager manager to give the listener to.
+     * @param sound sound to play.
+     * @return sources of the sounds, from the closest one.
+     */
+    private static List<AudioSource> createSounds(AudioManager manager, Sound sound) {
+        Scene scene = new Scene("audio");
+        List<AudioSource> sources = new ArrayList<>();
+
+        try (Scene.SceneOverride __ = new Scene.SceneOverride(scene)) {
+            AudioListener listener = new AudioListener();
+            new GameObject("listener", new Transform3D()).addComponent(listener);
+            scene.registerSingleton(listener);
+            manager.updateAudioListener();
+
+            for (int i = 0; i < SOUND_COUNT; i++) {
+                AudioSource source = new AudioSource();
+                new GameObject("source", new Transform3D(i + 1f, 0f, 0f)).addComponent(source);
+                source.playSound(sound);
+                sources.add(source);
+            }
+        }
+
+        return sources;
+    }
+
+    /**
+     * Play more sounds than there are voices, and check which are heard.
+     *
+     * @param manager manager initialised on a loopback device.
+     */
+    private void checkVirtualisation(AudioManager manager) {
+        int voices = manager.getSourceCount();
+        Sound sound = createTone(1f);
+        List<AudioSource> sources = createSounds(manager, sound);
+
+        tick(manager, sources, 0f);
+
+        assertEquals(voices, countVoiced(sources));
+        assertNotNull(sources.get(0).getSource());
+        assertNotNull(sources.get(voices - 1).getSource());
+        assertNull(sources.get(voices).getSource());
+
+        long device = ALC11.alcGetContextsDevice(ALC11.alcGetCurrentContext());
+        FloatBuffer output = BufferUtils.createFloatBuffer(RENDER_FRAMES * 2);
+        SOFTLoopback.alcRenderSamplesSOFT(device, output, RENDER_FRAMES);
+
+        float peak = 0f;
+        for (int i = 0; i < output.capacity(); i++) {
+            peak = Math.max(peak, Math.abs(output.get(i)));
+        }
+        assertTrue(peak > 0f);
+
+        // Half way through, the farthest sound comes closest, and takes over a voice
+        AudioSource last = sources.get(SOUND_COUNT - 1);
+        AudioSource losing = sources.get(voices - 1);
+        last.getGameObject().getTransform(Transform3D.class).setPosition(0.5f, 0f, 0f);
+        tick(manager, sources, 0.5f);
+
+        // The losing sound fades out first, and keeps its voice until then
+        assertEquals(voices, countVoiced(sources));
+        assertTrue(losing.isReleasing());
+        assertNotNull(losing.getSource());
+        assertNull(last.getSource());
+
+        int losingVoice = losing.getSource().getSource();
+        tick(manager, sources, 0.025f);
+
+        assertEquals(0.5f, AL11.alGetSourcef(losingVoice, AL11.AL_GAIN), 0.01f);
+        assertNull(last.getSource());
+
+        tick(manager, sources, 0.03f);
+
+        assertEquals(voices, countVoiced(sources));
+        assertNull(losing.getSource());
+        assertNotNull(last.getSource());
+        assertEquals(losingVoice, last.getSource().getSource());
+        assertEquals(0.555f, last.getPlaybackPosition(), 0.0001f);
+        assertEquals(0.555f, AL11.alGetSourcef(losingVoice, AL11.AL_SEC_OFFSET), 0.05f);
+        assertEquals(AL11.AL_NO_ERROR, AL11.alGetError());
+
+        // A sound that wins its voice back while fading out fades back in
+        last.getGameObject().getTransform(Transform3D.class).setPosition(100f, 0f, 0f);
+        tick(manager, sources, 0f);
+        assertTrue(last.isReleasing());
+
+        last.getGameObject().getTransform(Transform3D.class).setPosition(0.5f, 0f, 0f);
+        tick(manager, sources, 0f);
+        assertFalse(last.isReleasing());
+        assertEquals(losingVoice, last.getSource().getSource());
+
+        for (AudioSource source : sources) {
+            source.detachSource();
+        }
+        AL11.alDeleteBuffers(sound.mBuffer);
+    }
+
+    /**
+     * Steal a second voice while the first stolen one is still fading out, and check that both
+     * are handed over once silent, without ever using more voices than there are.
+     *
+     * @param manager manager initialised on a loopback device.
+     */
+    private void checkStealingWhileFading(AudioManager manager) {
+        int voices = manager.getSourceCount();
+        Sound sound = createTone(1f);
+        List<AudioSource> sources = createSounds(manager, sound);
+
+        tick(manager, sources, 0f);
+        assertEquals(voices, countVoiced(sources));
+
+        AudioSource first = sources.get(SOUND_COUNT - 1);
+        AudioSource second = sources.get(SOUND_COUNT - 2);
+        AudioSource firstLosing = sources.get(voices - 1);
+        AudioSource secondLosing = sources.get(voices - 2);
+
+        first.getGameObject().getTransform(Transform3D.class).setPosition(0.5f, 0f, 0f);
+        tick(manager, sources, 0.1f);
+
+        assertTrue(firstLosing.isReleasing());
+        int firstVoice = firstLosing.getSource().getSource();
+
+        // Half way through the fade, another sound comes close and steals the next voice
+        second.getGameObject().getTransform(Transform3D.class).setPosition(0.6f, 0f, 0f);
+        tick(manager, sources, 0.025f);
+
+        assertEquals(voices, countVoiced(sources));
+        assertEquals(0.5f, AL11.alGetSourcef(firstVoice, AL11.AL_GAIN), 0.01f);
+        assertTrue(firstLosing.isReleasing());
+        assertTrue(secondLosing.isReleasing());
+        assertFalse(sources.get(voices - 3).isReleasing());
+        assertNull(first.getSource());
+        assertNull(second.getSource());
+
+        int secondVoice = secondLosing.getSource().getSource();
+
+        // The first voice is silent, and goes to one of the waiting sounds
+        tick(manager, sources, 0.03f);
+
+        assertEquals(voices, countVoiced(sources));
+        assertNull(firstLosing.getSource());
+        assertNotNull(secondLosing.getSource());
+        assertTrue((first.getSource() == null) != (second.getSource() == null));
+
+        AudioSource handedOver = first.getSource() != null ? first : second;
+        assertEquals(firstVoice, handedOver.getSource().getSource());
+        assertFalse(handedOver.isReleasing());
+
+        // Once the second voice is silent too, both sounds are heard
+        tick(manager, sources, 0.03f);
+
+        assertEquals(voices, countVoiced(sources));
+        assertNull(secondLosing.getSource());
+        assertNotNull(first.getSource());
+        assertNotNull(second.getSource());
+        assertEquals(
+                secondVoice, (handedOver == first ? second : first).getSource().getSource());
+        assertEquals(AL11.AL_NO_ERROR, AL11.alGetError());
+
+        for (AudioSource source : sources) {
+            source.detachSource();
+        }
+        AL11.alDeleteBuffers(sound.mBuffer);
+    }
+}
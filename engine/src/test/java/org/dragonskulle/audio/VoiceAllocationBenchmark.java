@@ -0,0 +1,138 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.audio;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures picking voices for a map full of buildings, each playing an effect, as the camera pans.
+ *
+ * <p>The allocator is compared against fully sorting the sounds every tick. OpenAL is not needed.
+ *
+ * <p>Run with {@code java -cp <test classpath> org.openjdk.jmh.Main VoiceAllocation}.
+ *
+ * @author DragonSkulle
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VoiceAllocationBenchmark {
+    private static final int VOICES = 32;
+    private static final float MAP_SIZE = 200f;
+
+    /** Number of playing sounds. */
+    @Param({"256", "1024"})
+    public int mSoundCount;
+
+    private Vector3f[] mPositions;
+    private float[] mPriorities;
+    private boolean[] mHolding;
+    private Integer[] mOrder;
+    private float[] mScores;
+    private final VoiceAllocator mAllocator = new VoiceAllocator();
+    private final Vector3f mListener = new Vector3f();
+    private float mTime = 0f;
+
+    /** Scatter the sounds over the map. */
+    @Setup
+    public void setup() {
+        Random random = new Random(1234);
+
+        mPositions = new Vector3f[mSoundCount];
+        mPriorities = new float[mSoundCount];
+        mHolding = new boolean[mSoundCount];
+        mOrder = new Integer[mSoundCount];
+        mScores = new float[mSoundCount];
+
+        for (int i = 0; i < mSoundCount; i++) {
+            mPositions[i] =
+                    new Vector3f(random.nextFloat() * MAP_SIZE, random.nextFloat() * MAP_SIZE, 0f);
+            mPriorities[i] = random.nextInt(3) + 1f;
+            mOrder[i] = i;
+        }
+    }
+
+    /** Pan the listener in a circle over the map. */
+    private void moveListener() {
+        mTime += 0.01f;
+        float half = MAP_SIZE * 0.5f;
+        mListener.set(
+                half + (float) Math.cos(mTime) * half * 0.5f,
+                half + (float) Math.sin(mTime) * half * 0.5f,
+                20f);
+    }
+
+    /**
+     * Score a sound at the current listener position.
+     *
+     * @param i index of the sound.
+     * @return score of the sound.
+     */
+    private float score(int i) {
+        return VoiceAllocator.score(mPriorities[i], 1f, mListener.distance(mPositions[i]), 100f);
+    }
+
+    /**
+     * Pick voices with the allocator.
+     *
+     * @return number of picked sounds, so that picking is not optimised away.
+     */
+    @Benchmark
+    public int allocator() {
+        moveListener();
+
+        mAllocator.clear();
+        for (int i = 0; i < mSoundCount; i++) {
+            mAllocator.add(score(i), mHolding[i]);
+        }
+
+        int count = mAllocator.select(VOICES);
+
+        for (int i = 0; i < mSoundCount; i++) {
+            mHolding[i] = mAllocator.isSelected(i);
+        }
+
+        return count;
+    }
+
+    /**
+     * Pick voices by sorting all sounds.
+     *
+     * @return number of picked sounds, so that picking is not optimised away.
+     */
+    @Benchmark
+    public int fullSort() {
+        moveListener();
+
+        for (int i = 0; i < mSoundCount; i++) {
+            mScores[i] = score(i);
+        }
+
+        Arrays.sort(mOrder, (a, b) -> Float.compare(mScores[b], mScores[a]));
+
+        int count = 0;
+        for (int i = 0; i < VOICES && i < mSoundCount; i++) {
+            if (mScores[mOrder[i]] > 0f) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+}
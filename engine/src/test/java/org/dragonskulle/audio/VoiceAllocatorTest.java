@@ -0,0 +1,77 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.audio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** Unit tests for {@link VoiceAllocator}. */
+public class VoiceAllocatorTest {
+    /** Test that only the highest scoring, audible candidates are picked. */
+    @Test
+    public void picksHighestScores() {
+        VoiceAllocator allocator = new VoiceAllocator();
+        float[] scores = {1f, 5f, 3f, 0f, 4f, Float.NaN, 2f};
+
+        for (float score : scores) {
+            allocator.add(score, false);
+        }
+
+        assertEquals(3, allocator.select(3));
+        assertTrue(allocator.isSelected(1));
+        assertTrue(allocator.isSelected(2));
+        assertTrue(allocator.isSelected(4));
+        assertFalse(allocator.isSelected(0));
+        assertFalse(allocator.isSelected(6));
+
+        // Silent candidates are not picked, even with voices to spare
+        assertEquals(5, allocator.select(10));
+        assertFalse(allocator.isSelected(3));
+        assertFalse(allocator.isSelected(5));
+    }
+
+    /** Test that candidates holding a voice only lose it to clearly louder ones. */
+    @Test
+    public void keepsHeldVoices() {
+        VoiceAllocator allocator = new VoiceAllocator();
+
+        allocator.add(1f, true);
+        allocator.add(1.1f, false);
+        allocator.select(1);
+        assertTrue(allocator.isSelected(0));
+        assertFalse(allocator.isSelected(1));
+
+        allocator.clear();
+        allocator.add(1f, true);
+        allocator.add(2f, false);
+        allocator.select(1);
+        assertFalse(allocator.isSelected(0));
+        assertTrue(allocator.isSelected(1));
+    }
+
+    /** Test that the score falls off with distance, and is zero outside the radius. */
+    @Test
+    public void scoresByDistance() {
+        assertEquals(2f, VoiceAllocator.score(2f, 1f, 0.5f, 10f), 0.0001f);
+        assertEquals(0.5f, VoiceAllocator.score(2f, 0.5f, 2f, 10f), 0.0001f);
+        assertEquals(0f, VoiceAllocator.score(2f, 1f, 11f, 10f), 0.0001f);
+    }
+
+    /** Test that the candidate storage grows past its initial capacity. */
+    @Test
+    public void growsWithCandidates() {
+        VoiceAllocator allocator = new VoiceAllocator();
+
+        for (int i = 0; i < 1000; i++) {
+            allocator.add(i + 1, false);
+        }
+
+        assertEquals(32, allocator.select(32));
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i >= 1000 - 32, allocator.isSelected(i));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.core;
+
+import org.dragonskulle.components.Component;
+import org.dragonskulle.components.IFixedUpdate;
+import org.dragonskulle.components.Transform3D;
+import org.dragonskulle.core.futures.Future;
+import org.dragonskulle.core.futures.ThenFuture;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class FrameAllocationTest {
+    /** Fixed updates to run before measuring, so that everything gets initialised and compiled. */
+    private static final int WARMUP_UPDATES = 128;
+    /** Fixed updates to measure. */
+    private static final int MEASURED_UPDATES = 64;
+    /** Bytes each fixed update may allocate on average. */
+    private static final long FIXED_UPDATE_BUDGET = AllocationTracker.DEFAULT_BUDGET_BYTES;
+
+    /** Component that moves its object every fixed update. */
+    private static class Mover extends Component implements IFixedUpdate {
+        private int mUpdates = 0;
+
+        @Override
+        public void fixedUpdate(float deltaTime) {
+            Transform3D transform = getGameObject().getTransform(Transform3D.class);
+            transform.translate(deltaTime, 0, 0);
+            transform.getWorldMatrix();
+            mUpdates++;
+        }
+
+        @Override
+        protected void onDestroy() {}
+    }
+
+    /** Test that the steady state headless fixed update loop stays within allocation budget. */
+    @Test
+    public void fixedUpdateWithinBudget() {
+        Engine engine = Engine.getInstance();
+        AllocationTracker tracker = engine.getAllocationTracker();
+
+        Assume.assumeTrue(tracker.isSupported());
+
+        Mover counter = new Mover();
+        GameObject root = new GameObject("root");
+        root.addComponent(counter);
+
+        for (int i = 0; i < 50; i++) {
+            GameObject child = new GameObject("child");
+            child.addComponent(new Mover());
+            child.buildChild("leaf", (go) -> go.addComponent(new Mover()));
+            root.addChild(child);
+        }
+
+        Future future =
+                new ThenFuture((scene) -> scene.addRootObject(root))
+                        .awaitUntil((scene) -> counter.mUpdates >= WARMUP_UPDATES)
+                        .then(
+                                (scene) -> {
+                                    tracker.setEnabled(true);
+                                    tracker.reset();
+                                })
+                        .awaitUntil(
+                                (scene) -> counter.mUpdates >= WARMUP_UPDATES + MEASURED_UPDATES)
+                        .then((scene) -> tracker.setEnabled(false));
+
+        engine.startWithFutures(future);
+
+        Assert.assertTrue(tracker.getEntryCount(EnginePhase.FIXED_UPDATE) > 0);
+
+        // Frames without a fixed update would dilute a per-frame average
+        double fixedUpdateBytes = tracker.getAverageBytesPerEntry(EnginePhase.FIXED_UPDATE);
+
+        Assert.assertTrue(
+                "Fixed update allocated " + fixedUpdateBytes + " bytes per update",
+                fixedUpdateBytes <= FIXED_UPDATE_BUDGET);
+    }
+}
@@ -0,0 +1,237 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.dragonskulle.audio.AudioManager;
+import org.dragonskulle.audio.Source;
+import org.dragonskulle.audio.components.AudioSource;
+import org.dragonskulle.components.Component;
+import org.dragonskulle.components.IOnRecycle;
+import org.dragonskulle.components.IOnStart;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.lwjgl.openal.AL11;
+
+public class GameObjectPoolTest {
+
+    /** Component that counts how many times it was recycled. */
+    private static class RecycleCounter extends Component implements IOnRecycle {
+        private int mRecycleCount = 0;
+
+        @Override
+        public void onRecycle() {
+            mRecycleCount++;
+        }
+
+        @Override
+        protected void onDestroy() {}
+    }
+
+    /** Component that adds an audio source on start, like sound effect players do. */
+    private static class SourceAdder extends Component implements IOnStart, IOnRecycle {
+        private Reference<AudioSource> mSource;
+
+        @Override
+        public void onStart() {
+            AudioSource source = new AudioSource();
+            getGameObject().addComponent(source);
+            mSource = source.getReference(AudioSource.class);
+        }
+
+        @Override
+        public void onRecycle() {
+            if (Reference.isValid(mSource)) {
+                getGameObject().removeComponent(mSource.get());
+            }
+            mSource = null;
+        }
+
+        @Override
+        protected void onDestroy() {}
+    }
+
+    /**
+     * Count the audio sources on an object.
+     *
+     * @param object object to check.
+     * @return number of audio sources.
+     */
+    private static int countSources(GameObject object) {
+        List<Reference<AudioSource>> sources = new ArrayList<>();
+        object.getComponents(AudioSource.class, sources);
+        return sources.size();
+    }
+
+    /**
+     * Build a template with a recycle counter on its child.
+     *
+     * @return the template.
+     */
+    private static GameObject buildTemplate() {
+        return new GameObject(
+                "pooled",
+                (go) -> {
+                    go.buildChild("child", (child) -> child.addComponent(new RecycleCounter()));
+                });
+    }
+
+    /** Test that recycled objects get reused, and notified about recycling. */
+    @Test
+    public void recycledObjectIsReused() {
+        GameObjectPool pool = new GameObjectPool(buildTemplate(), 4);
+
+        GameObject parent = new GameObject("parent");
+        GameObject first = pool.obtain();
+        parent.addChild(first);
+
+        RecycleCounter counter =
+                (RecycleCounter) first.findChildByName("child").getComponents().get(0);
+        counter.setStarted(true);
+        Reference<GameObject> oldRef = first.getReference();
+
+        Assert.assertTrue(first.recycleToPool());
+
+        Assert.assertEquals(1, counter.mRecycleCount);
+        Assert.assertFalse(counter.isStarted());
+        Assert.assertFalse(Reference.isValid(oldRef));
+        Assert.assertTrue(first.isRootObject());
+        Assert.assertTrue(parent.getChildren().isEmpty());
+        Assert.assertEquals(1, pool.getPooledCount());
+
+        GameObject second = pool.obtain();
+
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, pool.getInstantiated());
+        Assert.assertEquals(1, pool.getReused());
+        Assert.assertEquals(1, pool.getRecycled());
+        Assert.assertEquals(0, pool.getPooledCount());
+    }
+
+    /** Test that objects over the pool limit are left for destruction. */
+    @Test
+    public void fullPoolDiscards() {
+        GameObjectPool pool = new GameObjectPool(buildTemplate(), 1);
+
+        GameObject first = pool.obtain();
+        GameObject second = pool.obtain();
+
+        Assert.assertTrue(first.recycleToPool());
+        Assert.assertFalse(second.recycleToPool());
+        Assert.assertEquals(1, pool.getDiscarded());
+        Assert.assertEquals(1, pool.getPooledCount());
+    }
+
+    /** Test that objects not coming from a pool are never recycled. */
+    @Test
+    public void regularObjectsNotRecycled() {
+        GameObject object = GameObject.instantiate(buildTemplate());
+
+        Assert.assertFalse(object.recycleToPool());
+    }
+
+    /** Test that prewarming fills the pool up to its limit. */
+    @Test
+    public void prewarmRespectsLimit() {
+        GameObjectPool pool = new GameObjectPool(buildTemplate(), 3);
+
+        pool.prewarm(10);
+
+        Assert.assertEquals(3, pool.getPooledCount());
+        Assert.assertEquals(3, pool.getInstantiated());
+    }
+
+    /** Test that prewarming compiles the template's plan, just like obtaining does. */
+    @Test
+    public void prewarmCompilesPlan() {
+        GameObject template = buildTemplate();
+        GameObjectPool pool = new GameObjectPool(template, 3);
+
+        pool.prewarm(1);
+
+        Assert.assertTrue(TemplatePlan.isCompiled(template));
+    }
+
+    /** Test that cleared pools destroy their objects, and stop taking objects back. */
+    @Test
+    public void clearedPoolStopsRecycling() {
+        GameObjectPool pool = new GameObjectPool(buildTemplate(), 4);
+
+        GameObject idle = pool.obtain();
+        GameObject used = pool.obtain();
+        Assert.assertTrue(idle.recycleToPool());
+
+        pool.clear();
+
+        Assert.assertEquals(0, pool.getPooledCount());
+        Assert.assertFalse(used.recycleToPool());
+    }
+
+    /** Test that components added on start do not pile up on reused objects. */
+    @Test
+    public void componentsRemovedWhileRecycling() {
+        GameObjectPool pool =
+                new GameObjectPool(
+                        new GameObject("pooled", (go) -> go.addComponent(new SourceAdder())), 4);
+
+        GameObject object = pool.obtain();
+        SourceAdder adder = (SourceAdder) object.getComponents().get(0);
+
+        for (int i = 0; i < 3; i++) {
+            if (i > 0) {
+                Assert.assertSame(object, pool.obtain());
+            }
+
+            adder.onStart();
+            adder.setStarted(true);
+            Assert.assertEquals(1, countSources(object));
+
+            Assert.assertTrue(object.recycleToPool());
+            Assert.assertEquals(0, countSources(object));
+        }
+    }
+
+    /** Test that audio sources of recycled objects give their voice back. */
+    @Test
+    public void recycledAudioSourceGivesBackVoice() {
+        AudioManager manager;
+
+        try {
+            manager = AudioManager.getInstance();
+        } catch (LinkageError e) {
+            Assume.assumeNoException("OpenAL is not available", e);
+            return;
+        }
+
+        manager.cleanup();
+
+        try {
+            Assume.assumeTrue(manager.initLoopback(44100));
+
+            GameObjectPool pool =
+                    new GameObjectPool(
+                            new GameObject("pooled", (go) -> go.addComponent(new AudioSource())),
+                            4);
+
+            GameObject object = pool.obtain();
+            AudioSource audio = (AudioSource) object.getComponents().get(0);
+
+            Source voice = new Source();
+            voice.setSource(AL11.alGenSources());
+            audio.attachSource(voice);
+            Assert.assertTrue(voice.isInUse());
+
+            Assert.assertTrue(object.recycleToPool());
+
+            Assert.assertFalse(voice.isInUse());
+            Assert.assertNull(audio.getSource());
+            Assert.assertSame(object, pool.obtain());
+
+            AL11.alDeleteSources(voice.getSource());
+        } finally {
+            manager.cleanup();
+            manager.initAudioManager();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.core;
+
+import java.io.StringWriter;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProfilerTest {
+
+    /**
+     * Export the profiler's samples and parse them back.
+     *
+     * @param profiler profiler to export.
+     * @return the trace events.
+     */
+    private static JSONArray exportEvents(Profiler profiler) throws Exception {
+        StringWriter writer = new StringWriter();
+        profiler.exportChromeTrace(writer);
+        JSONObject trace = (JSONObject) JSONValue.parseWithException(writer.toString());
+        return (JSONArray) trace.get("traceEvents");
+    }
+
+    /** Test that a disabled profiler records nothing. */
+    @Test
+    public void disabledRecordsNothing() {
+        Profiler profiler = new Profiler(16);
+
+        profiler.enterPhase(EnginePhase.FIXED_UPDATE);
+        try (Profiler.Scope scope = profiler.scope("scope")) {
+            profiler.begin("inner");
+            profiler.end();
+        }
+        profiler.endFrame();
+
+        Assert.assertEquals(0, profiler.getSampleCount());
+        Assert.assertEquals(0, profiler.getFrameCount());
+    }
+
+    /** Test that frames, phases and nested scopes get recorded and exported. */
+    @Test
+    public void recordsNestedScopes() throws Exception {
+        Profiler profiler = new Profiler(16);
+        profiler.setEnabled(true);
+
+        profiler.enterPhase(EnginePhase.FRAME_UPDATE);
+        try (Profiler.Scope outer = profiler.scope("outer")) {
+            profiler.begin("inner");
+            profiler.end();
+        }
+        profiler.enterPhase(EnginePhase.RENDER_FRAME);
+        // Left open on purpose, closed together with the phase
+        profiler.begin("unbalanced");
+        profiler.endFrame();
+
+        // inner, outer, FRAME_UPDATE, unbalanced, RENDER_FRAME, Frame
+        Assert.assertEquals(6, profiler.getSampleCount());
+        Assert.assertEquals(1, profiler.getFrameCount());
+        Assert.assertTrue(profiler.getLastFrameNanos() > 0);
+
+        JSONArray events = exportEvents(profiler);
+        Assert.assertEquals(6, events.size());
+
+        JSONObject inner = (JSONObject) events.get(0);
+        Assert.assertEquals("inner", inner.get("name"));
+        Assert.assertEquals("X", inner.get("ph"));
+        Assert.assertEquals(3L, ((JSONObject) inner.get("args")).get("depth"));
+
+        JSONObject frame = (JSONObject) events.get(5);
+        Assert.assertEquals("Frame", frame.get("name"));
+        Assert.assertEquals(0L, ((JSONObject) frame.get("args")).get("depth"));
+    }
+
+    /** Test that the ring buffer keeps only the newest samples. */
+    @Test
+    public void ringBufferWraps() throws Exception {
+        Profiler profiler = new Profiler(4);
+        profiler.setEnabled(true);
+
+        profiler.enterPhase(EnginePhase.FIXED_UPDATE);
+        for (int i = 0; i < 10; i++) {
+            profiler.begin("scope" + i);
+            profiler.end();
+        }
+
+        Assert.assertEquals(4, profiler.getSampleCount());
+
+        JSONArray events = exportEvents(profiler);
+        Assert.assertEquals("scope6", ((JSONObject) events.get(0)).get("name"));
+        Assert.assertEquals("scope9", ((JSONObject) events.get(3)).get("name"));
+    }
+
+    /** Test that component timing is accumulated per class and phase. */
+    @Test
+    public void timesComponents() {
+        Profiler profiler = new Profiler(16);
+        profiler.setEnabled(true);
+
+        Object component = new Object();
+
+        Assert.assertEquals(0, profiler.startComponent());
+
+        profiler.setComponentTiming(true);
+        profiler.enterPhase(EnginePhase.FIXED_UPDATE);
+
+        for (int i = 0; i < 3; i++) {
+            long start = profiler.startComponent();
+            profiler.endComponent(component, EnginePhase.FIXED_UPDATE, start);
+        }
+
+        profiler.endFrame();
+
+        Assert.assertEquals(1, profiler.getComponentTimings().size());
+
+        Profiler.ComponentTiming timing = profiler.getComponentTimings().get(0);
+        Assert.assertSame(Object.class, timing.getType());
+        Assert.assertEquals(3, timing.getCalls(EnginePhase.FIXED_UPDATE));
+        Assert.assertEquals(0, timing.getCalls(EnginePhase.FRAME_UPDATE));
+    }
+}
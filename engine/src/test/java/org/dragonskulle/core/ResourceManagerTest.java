@@ -9,6 +9,19 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
 /** Unit tests for Resource Manager. */
@@ -16,11 +29,38 @@ public class ResourceManagerTest {
 
     private static boolean sThrowOnLoad = false;
 
+    /** Warm budget the manager had before the test. */
+    private long mWarmBudget;
+
     static {
         ResourceManager.registerResource(
                 TestBytes.class, (a) -> "text/" + a.getName(), (b, __) -> new TestBytes(b));
         ResourceManager.registerResource(
                 TestLines.class, (a) -> "text/" + a.getName(), (b, __) -> new TestLines(b));
+        ResourceManager.registerResource(
+                TestCounted.class, (a) -> "text/" + a.getName(), (b, __) -> new TestCounted());
+    }
+
+    /** Free unused resources immediately, so tests can check when they get closed. */
+    @Before
+    public void disableWarmTier() {
+        mWarmBudget = ResourceManager.getWarmBudget();
+        ResourceManager.setWarmBudget(0);
+    }
+
+    /** Restore the warm budget of the manager. */
+    @After
+    public void restoreWarmTier() {
+        ResourceManager.setWarmBudget(mWarmBudget);
+    }
+
+    /** Class that counts how many times it was loaded. */
+    private static class TestCounted {
+        private static final AtomicInteger sLoads = new AtomicInteger();
+
+        private TestCounted() {
+            sLoads.incrementAndGet();
+        }
     }
 
     /** First class for simple text resource loading. */
@@ -253,4 +293,203 @@ public class ResourceManagerTest {
         assertNotNull(lines);
         assertTrue(lines.mWasClosed);
     }
+
+    /** Test that asynchronously loaded resources end up in the same cache. */
+    @Test
+    public void asyncLoad() {
+        ResourceHandle<TestBytes> handle =
+                ResourceManager.getResourceAsync(TestBytes.class, "b.txt");
+        assertNotNull(handle);
+
+        try (Resource<TestBytes> res = handle.get()) {
+            assertNotNull(res);
+            assertTrue(handle.isDone());
+
+            try (Resource<TestBytes> res2 = TestBytes.getResource("b.txt")) {
+                assertSame(res.get(), res2.get());
+            }
+        }
+    }
+
+    /** Test that a failing asynchronous load yields no resource. */
+    @Test
+    public void asyncMissing() {
+        ResourceHandle<TestBytes> handle =
+                ResourceManager.getResourceAsync(TestBytes.class, "does_not_exist.txt");
+
+        assertNull(handle.get());
+    }
+
+    /** Test that a prefetched resource is picked up, instead of being loaded again. */
+    @Test
+    public void prefetchLoadsOnce() {
+        ResourceArguments<TestCounted, Object> args =
+                new ResourceArguments<>(TestCounted.class, "a.txt", "prefetch");
+        int loads = TestCounted.sLoads.get();
+
+        ResourceManager.prefetch(args);
+
+        try (Resource<TestCounted> res = ResourceManager.getResource(args)) {
+            assertNotNull(res);
+        }
+
+        assertEquals(loads + 1, TestCounted.sLoads.get());
+    }
+
+    /** Test that a prefetched resource, which is never retrieved, can be evicted. */
+    @Test
+    public void unclaimedPrefetchIsEvicted() throws Exception {
+        ResourceArguments<TestCounted, Object> args =
+                new ResourceArguments<>(TestCounted.class, "a.txt", "unclaimed");
+        int loads = TestCounted.sLoads.get();
+
+        ResourceHandle<TestCounted> handle = ResourceManager.getResourceAsync(args);
+
+        while (!handle.isDone()) {
+            Thread.sleep(1);
+        }
+
+        assertEquals(loads + 1, TestCounted.sLoads.get());
+        assertTrue(ResourceManager.getWarmBytes() > 0);
+
+        ResourceManager.clearWarm();
+        assertEquals(0, ResourceManager.getWarmBytes());
+
+        try (Resource<TestCounted> res = ResourceManager.getResource(args)) {
+            assertNotNull(res);
+        }
+
+        assertEquals(loads + 2, TestCounted.sLoads.get());
+    }
+
+    /** Test that mapped resources are looked up in source directories before the classpath. */
+    @Test
+    public void mapResourcePrefersSources() throws Exception {
+        ByteBuffer mapped = ResourceManager.mapResource("text/a.txt");
+        assertNotNull(mapped);
+        assertEquals(64, mapped.remaining());
+
+        Path root = Files.createTempDirectory("sources");
+        Path file = root.resolve("text/a.txt");
+        Files.createDirectories(file.getParent());
+        Files.write(file, "edited".getBytes(StandardCharsets.UTF_8));
+
+        ResourceManager.addSourceDirectory(root);
+
+        try {
+            mapped = ResourceManager.mapResource("text/a.txt");
+            byte[] data = new byte[mapped.remaining()];
+            mapped.get(data);
+            assertEquals("edited", new String(data, StandardCharsets.UTF_8));
+        } finally {
+            ResourceManager.removeSourceDirectory(root);
+            Files.delete(file);
+            Files.delete(file.getParent());
+            Files.delete(root);
+        }
+    }
+
+    /** Test that concurrent requests for the same resource share a single instance. */
+    @Test
+    public void concurrentLoadsShareInstance() throws Exception {
+        ResourceArguments<TestCounted, Object> args =
+                new ResourceArguments<>(TestCounted.class, "b.txt", "concurrent");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            List<Callable<Resource<TestCounted>>> tasks = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                tasks.add(() -> ResourceManager.getResource(args));
+            }
+
+            List<Resource<TestCounted>> resources = new ArrayList<>();
+            for (Future<Resource<TestCounted>> future : executor.invokeAll(tasks)) {
+                resources.add(future.get());
+            }
+
+            TestCounted first = resources.get(0).get();
+            assertNotNull(first);
+
+            for (Resource<TestCounted> res : resources) {
+                assertSame(first, res.get());
+                res.free();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /** Test that unused resources are kept in the warm tier, and reused from it. */
+    @Test
+    public void warmTierKeepsUnused() {
+        ResourceArguments<TestLines, Object> args =
+                new ResourceArguments<>(TestLines.class, "a.txt", "warm");
+        ResourceManager.TypeStats stats = ResourceManager.getTypeStats(TestLines.class);
+
+        ResourceManager.setWarmBudget(1 << 20);
+
+        try {
+            TestLines lines;
+
+            try (Resource<TestLines> res = ResourceManager.getResource(args)) {
+                lines = res.get();
+            }
+
+            assertFalse(lines.mWasClosed);
+            assertTrue(ResourceManager.getWarmBytes() > 0);
+
+            long hits = stats.getHits();
+
+            try (Resource<TestLines> res = ResourceManager.getResource(args)) {
+                assertSame(lines, res.get());
+            }
+
+            assertEquals(hits + 1, stats.getHits());
+
+            ResourceManager.clearWarm();
+
+            assertTrue(lines.mWasClosed);
+            assertEquals(0, ResourceManager.getWarmBytes());
+        } finally {
+            ResourceManager.setWarmBudget(0);
+        }
+    }
+
+    /** Test that the least recently used resources get evicted when over budget. */
+    @Test
+    public void warmTierEvictsLeastRecentlyUsed() {
+        ResourceArguments<TestLines, Object> argsA =
+                new ResourceArguments<>(TestLines.class, "a.txt", "evict");
+        ResourceArguments<TestLines, Object> argsB =
+                new ResourceArguments<>(TestLines.class, "b.txt", "evict");
+        ResourceManager.TypeStats stats = ResourceManager.getTypeStats(TestLines.class);
+
+        ResourceManager.setWarmBudget(1 << 20);
+
+        try {
+            long misses = stats.getMisses();
+            long evictions = stats.getEvictions();
+
+            TestLines linesA;
+            TestLines linesB;
+
+            try (Resource<TestLines> res = ResourceManager.getResource(argsA)) {
+                linesA = res.get();
+            }
+
+            try (Resource<TestLines> res = ResourceManager.getResource(argsB)) {
+                linesB = res.get();
+            }
+
+            assertEquals(misses + 2, stats.getMisses());
+
+            ResourceManager.setWarmBudget(ResourceManager.getWarmBytes() - 1);
+
+            assertTrue(linesA.mWasClosed);
+            assertFalse(linesB.mWasClosed);
+            assertEquals(evictions + 1, stats.getEvictions());
+        } finally {
+            ResourceManager.setWarmBudget(0);
+        }
+    }
 }
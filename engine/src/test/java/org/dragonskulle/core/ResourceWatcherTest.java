@@ -0,0 +1,147 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit tests for {@link ResourceWatcher}. */
+public class ResourceWatcherTest {
+    /** Maximum time to wait for a reload. Some platforms poll for changes every few seconds. */
+    private static final long TIMEOUT_MILLIS = 30000;
+
+    static {
+        ResourceManager.registerResource(
+                TestIncluding.class,
+                (a) -> "hot/" + a.getName(),
+                (b, __) -> new TestIncluding(new String(b, StandardCharsets.UTF_8)));
+    }
+
+    /** Resource that pulls in the contents of another resource, like shader includes. */
+    private static class TestIncluding {
+        private final String mText;
+
+        private TestIncluding(String text) {
+            if (text.startsWith("#include ")) {
+                try (Resource<String> included =
+                        ResourceManager.getResource(
+                                String.class, "hot/" + text.substring(9).trim())) {
+                    mText = included.get();
+                }
+            } else {
+                mText = text;
+            }
+        }
+    }
+
+    private Path mRoot;
+
+    @Before
+    public void setUp() throws IOException {
+        mRoot = Files.createTempDirectory("watched");
+        Files.createDirectories(mRoot.resolve("hot"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> stream = Files.walk(mRoot)) {
+            for (Path path : (Iterable<Path>) stream.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /** Test that a changed file gets swapped into existing handles. */
+    @Test
+    public void reloadsChangedFile() throws Exception {
+        write("hot/value.txt", "one");
+
+        List<Object> previous = new ArrayList<>();
+        IResourceReloadListener listener = (args, prev, cur) -> previous.add(prev);
+
+        try (ResourceWatcher watcher = new ResourceWatcher(Collections.singletonList(mRoot));
+                Resource<String> res = ResourceManager.getResource(String.class, "hot/value.txt")) {
+            assertNotNull(res);
+            assertEquals("one", res.get());
+
+            ResourceManager.addReloadListener(listener);
+
+            try {
+                write("hot/value.txt", "two");
+                waitFor(watcher, () -> "two".equals(res.get()));
+
+                assertTrue(previous.contains("one"));
+                assertEquals(1, watcher.getReloadCount());
+                assertTrue(watcher.getLastLatencyMillis() > 0);
+            } finally {
+                ResourceManager.removeReloadListener(listener);
+            }
+        }
+    }
+
+    /** Test that resources get reloaded when a file they depend on changes. */
+    @Test
+    public void reloadsDependents() throws Exception {
+        write("hot/main.txt", "#include inc.txt");
+        write("hot/inc.txt", "A");
+
+        try (ResourceWatcher watcher = new ResourceWatcher(Collections.singletonList(mRoot));
+                Resource<TestIncluding> res =
+                        ResourceManager.getResource(TestIncluding.class, "main.txt")) {
+            assertNotNull(res);
+            assertEquals("A", res.get().mText);
+
+            write("hot/inc.txt", "B");
+            waitFor(watcher, () -> "B".equals(res.get().mText));
+        }
+    }
+
+    /**
+     * Write a file under the watched directory.
+     *
+     * @param path resource path of the file.
+     * @param text contents of the file.
+     * @throws IOException if writing fails.
+     */
+    private void write(String path, String text) throws IOException {
+        Files.write(mRoot.resolve(path), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Keep swapping in reloaded resources, until a condition is met.
+     *
+     * @param watcher watcher to update.
+     * @param condition condition to wait for.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private static void waitFor(ResourceWatcher watcher, BooleanSupplier condition)
+            throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+        while (System.currentTimeMillis() < end) {
+            watcher.update();
+
+            if (condition.getAsBoolean()) {
+                return;
+            }
+
+            Thread.sleep(20);
+        }
+
+        assertTrue("Resource was not reloaded in time", condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,135 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SceneIndexTest {
+
+    /** Test that objects anywhere in the hierarchy can be found by name. */
+    @Test
+    public void findsNestedObjects() {
+        Scene scene = new Scene("index");
+        GameObject root = new GameObject("root");
+        GameObject child = new GameObject("child");
+        GameObject subchild = new GameObject("subchild");
+
+        child.addChild(subchild);
+        root.addChild(child);
+        scene.addRootObject(root);
+
+        Assert.assertSame(root, scene.findRootObject("root"));
+        Assert.assertNull(scene.findRootObject("child"));
+        Assert.assertSame(subchild, scene.findObjectByName("subchild"));
+        Assert.assertSame(child, root.findChildByName("child"));
+        Assert.assertNull(root.findChildByName("subchild"));
+
+        GameObject late = new GameObject("late");
+        subchild.addChild(late);
+
+        Assert.assertSame(late, scene.findObjectByName("late"));
+    }
+
+    /** Test that removed objects leave the index. */
+    @Test
+    public void removedObjectsUnindexed() {
+        Scene scene = new Scene("index");
+        GameObject root = new GameObject("root");
+        GameObject child = new GameObject("child");
+
+        root.addChild(child);
+        scene.addRootObject(root);
+
+        root.removeChild(child);
+        Assert.assertNull(scene.findObjectByName("child"));
+
+        scene.removeRootObject(root);
+        Assert.assertNull(scene.findRootObject("root"));
+        Assert.assertTrue(scene.findObjectsByName("root").isEmpty());
+    }
+
+    /** Test that renaming and tagging keeps the index up to date. */
+    @Test
+    public void renameAndTag() {
+        Scene scene = new Scene("index");
+        GameObject root = new GameObject("root");
+        GameObject child = new GameObject("child");
+        child.addTag("effect");
+
+        root.addChild(child);
+        scene.addRootObject(root);
+
+        Assert.assertEquals(1, scene.findObjectsByTag("effect").size());
+
+        child.setName("renamed");
+        Assert.assertNull(scene.findObjectByName("child"));
+        Assert.assertSame(child, scene.findObjectByName("renamed"));
+
+        root.addTag("effect");
+        Assert.assertEquals(2, scene.findObjectsByTag("effect").size());
+
+        child.removeTag("effect");
+        Assert.assertEquals(1, scene.findObjectsByTag("effect").size());
+        Assert.assertSame(root, scene.findObjectsByTag("effect").get(0));
+    }
+
+    /** Test that clones of scene objects are only indexed once they are added to it. */
+    @Test
+    public void clonesIndexedOnAttach() {
+        Scene scene = new Scene("index");
+        GameObject template = new GameObject("template");
+        template.addTag("tagged");
+        scene.addRootObject(template);
+
+        GameObject clone = GameObject.instantiate(template);
+
+        Assert.assertEquals(1, scene.findObjectsByName("template").size());
+        Assert.assertTrue(clone.hasTag("tagged"));
+
+        template.addChild(clone);
+
+        Assert.assertEquals(2, scene.findObjectsByName("template").size());
+        Assert.assertEquals(2, scene.findObjectsByTag("tagged").size());
+    }
+
+    /** Test that objects sharing a name are found in hierarchy order, not in index order. */
+    @Test
+    public void sharedNamesInHierarchyOrder() {
+        Scene scene = new Scene("index");
+        GameObject first = new GameObject("root");
+        GameObject second = new GameObject("root");
+        scene.addRootObject(first);
+        scene.addRootObject(second);
+
+        // Added to the index before its sibling, but comes after it in the hierarchy
+        GameObject late = new GameObject("item");
+        GameObject early = new GameObject("item");
+        second.addChild(late);
+        first.addChild(early);
+
+        Assert.assertSame(first, scene.findRootObject("root"));
+        Assert.assertSame(early, scene.findObjectByName("item"));
+
+        GameObject parent = new GameObject("parent");
+        GameObject renamed = new GameObject("renamed");
+        GameObject child = new GameObject("child");
+        parent.addChild(renamed);
+        parent.addChild(child);
+        parent.addChild(new GameObject("other"));
+        parent.addChild(new GameObject("other"));
+        scene.addRootObject(parent);
+
+        // Renaming moves the object to the back of the index
+        renamed.setName("child");
+        Assert.assertSame(renamed, parent.findChildByName("child"));
+    }
+
+    /** Test that lists handed out by the index can not be changed. */
+    @Test(expected = UnsupportedOperationException.class)
+    public void foundListsAreReadOnly() {
+        Scene scene = new Scene("index");
+        scene.addRootObject(new GameObject("root"));
+
+        scene.findObjectsByName("root").clear();
+    }
+}
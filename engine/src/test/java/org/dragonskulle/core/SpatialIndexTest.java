@@ -0,0 +1,185 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.dragonskulle.components.Transform3D;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.junit.Test;
+
+/** Unit tests for {@link SpatialIndex}. */
+public class SpatialIndexTest {
+    /** Frustum that sees x and y within [-10; 10], and z within [-100; -0.1]. */
+    private static final FrustumIntersection FRUSTUM =
+            new FrustumIntersection(new Matrix4f().ortho(-10, 10, -10, 10, 0.1f, 100));
+
+    private static final Vector3fc MIN = new Vector3f(-0.5f);
+    private static final Vector3fc MAX = new Vector3f(0.5f);
+
+    /**
+     * Create an object, and add it to the index.
+     *
+     * @param index index to add the object to.
+     * @param x X position of the object.
+     * @param z Z position of the object.
+     * @return the object.
+     */
+    private static GameObject add(SpatialIndex<GameObject> index, float x, float z) {
+        GameObject object = new GameObject("indexed");
+        object.getTransform(Transform3D.class).setPosition(x, 0, z);
+        index.add(object, object.getTransform(), MIN, MAX);
+        return object;
+    }
+
+    /**
+     * Create a grid of objects, and build the tree out of them.
+     *
+     * @param index index to add the objects to.
+     * @param size number of objects along each side.
+     * @return all the objects.
+     */
+    private static List<GameObject> addGrid(SpatialIndex<GameObject> index, int size) {
+        List<GameObject> objects = new ArrayList<>();
+
+        for (int x = 0; x < size; x++) {
+            for (int z = 0; z < size; z++) {
+                objects.add(add(index, x * 2 - size, -z * 2 - 1));
+            }
+        }
+
+        index.rebuild();
+        return objects;
+    }
+
+    /**
+     * Find the objects a frustum sees by testing them one by one.
+     *
+     * @param objects objects to test.
+     * @return visible objects.
+     */
+    private static Set<GameObject> linearCull(List<GameObject> objects) {
+        Set<GameObject> visible = new HashSet<>();
+        Vector3f pos = new Vector3f();
+
+        for (GameObject object : objects) {
+            object.getTransform().getPosition(pos);
+            if (FRUSTUM.testAab(pos.add(MIN, new Vector3f()), pos.add(MAX, new Vector3f()))) {
+                visible.add(object);
+            }
+        }
+
+        return visible;
+    }
+
+    /** Test that culling the tree finds the same objects as testing each one. */
+    @Test
+    public void cullMatchesLinear() {
+        SpatialIndex<GameObject> index = new SpatialIndex<>();
+        List<GameObject> objects = addGrid(index, 32);
+
+        List<GameObject> found = new ArrayList<>();
+        index.cull(FRUSTUM, found);
+
+        assertEquals(linearCull(objects), new HashSet<>(found));
+        assertEquals(found.size(), new HashSet<>(found).size());
+    }
+
+    /** Test that moved objects are found at their new positions after a refresh. */
+    @Test
+    public void refreshTracksMoves() {
+        SpatialIndex<GameObject> index = new SpatialIndex<>();
+        List<GameObject> objects = addGrid(index, 16);
+
+        GameObject moved = objects.get(0);
+        moved.getTransform(Transform3D.class).setPosition(100, 0, -5);
+        index.refresh();
+
+        List<GameObject> found = new ArrayList<>();
+        index.cull(FRUSTUM, found);
+        assertFalse(found.contains(moved));
+
+        moved.getTransform(Transform3D.class).setPosition(0, 0, -5);
+        index.refresh();
+
+        found.clear();
+        index.cull(FRUSTUM, found);
+        assertTrue(found.contains(moved));
+
+        // Enough moves trigger a rebuild, which must keep every object
+        for (GameObject object : objects) {
+            object.getTransform(Transform3D.class).translate(0.5f, 0, 0);
+        }
+        index.refresh();
+
+        found.clear();
+        index.cull(FRUSTUM, found);
+        assertEquals(linearCull(objects), new HashSet<>(found));
+    }
+
+    /** Test that removed entries are no longer returned. */
+    @Test
+    public void removedEntriesAreGone() {
+        SpatialIndex<GameObject> index = new SpatialIndex<>();
+        GameObject object = new GameObject("removed");
+        object.getTransform(Transform3D.class).setPosition(0, 0, -5);
+        SpatialIndex.Entry<GameObject> entry = index.add(object, object.getTransform(), MIN, MAX);
+        addGrid(index, 8);
+
+        entry.remove();
+        entry.remove();
+
+        List<GameObject> found = new ArrayList<>();
+        index.cull(FRUSTUM, found);
+
+        assertFalse(found.contains(object));
+        assertEquals(64, index.size());
+        assertNull(entry.getIndex());
+    }
+
+    /** Test that ray hits are ordered from the nearest one. */
+    @Test
+    public void raycastIsSorted() {
+        SpatialIndex<GameObject> index = new SpatialIndex<>();
+        GameObject far = add(index, 0, -20);
+        GameObject near = add(index, 0, -5);
+        GameObject middle = add(index, 0, -10);
+        add(index, 5, -10);
+        index.rebuild();
+
+        List<GameObject> hits = new ArrayList<>();
+        index.raycast(new Vector3f(), new Vector3f(0, 0, -1), hits);
+
+        assertEquals(Arrays.asList(near, middle, far), hits);
+
+        hits.clear();
+        index.raycast(new Vector3f(), new Vector3f(0, 0, 1), hits);
+
+        assertEquals(Collections.emptyList(), hits);
+    }
+
+    /** Test that point queries find the objects containing the point. */
+    @Test
+    public void queryPointFindsContaining() {
+        SpatialIndex<GameObject> index = new SpatialIndex<>();
+        List<GameObject> objects = addGrid(index, 8);
+
+        List<GameObject> found = new ArrayList<>();
+        Vector3f pos = new Vector3f();
+        objects.get(10).getTransform().getPosition(pos);
+        index.queryPoint(pos.add(0.25f, 0.25f, 0.25f), found);
+
+        assertEquals(Arrays.asList(objects.get(10)), found);
+    }
+}
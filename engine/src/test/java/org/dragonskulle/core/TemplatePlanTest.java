@@ -0,0 +1,115 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.core;
+
+import java.util.ArrayList;
+import org.dragonskulle.components.Component;
+import org.dragonskulle.components.Transform3D;
+import org.dragonskulle.network.components.sync.SyncInt;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TemplatePlanTest {
+
+    /** Component that refers to other objects within the same template. */
+    private static class LinkedComponent extends Component {
+        private Reference<GameObject> mLinked;
+        private final SyncInt mValue = new SyncInt(5);
+
+        @Override
+        protected void onDestroy() {}
+    }
+
+    /**
+     * Build a small template hierarchy.
+     *
+     * @return root of the template.
+     */
+    private static GameObject buildTemplate() {
+        GameObject root = new GameObject("root", new Transform3D(1f, 2f, 3f));
+        GameObject child = new GameObject("child");
+        GameObject subchild = new GameObject("subchild", false);
+
+        LinkedComponent comp = new LinkedComponent();
+        comp.mLinked = subchild.getReference();
+        child.addComponent(comp);
+
+        child.addChild(subchild);
+        root.addChild(child);
+        root.addChild(new GameObject("second"));
+
+        return root;
+    }
+
+    /** Test that a planned clone has the same structure as the template. */
+    @Test
+    public void plannedCloneMatchesStructure() {
+        GameObject template = buildTemplate();
+        TemplatePlan plan = TemplatePlan.compile(template);
+
+        Assert.assertNotNull(plan);
+        Assert.assertEquals(4, plan.getObjectCount());
+
+        GameObject clone = GameObject.instantiate(template);
+
+        Assert.assertNotSame(template, clone);
+        Assert.assertEquals("root", clone.getName());
+        Assert.assertEquals(2, clone.getChildren().size());
+        Assert.assertEquals(3f, clone.getTransform().getPosition().z, 0.0001f);
+
+        GameObject child = clone.findChildByName("child");
+        GameObject subchild = child.findChildByName("subchild");
+
+        Assert.assertSame(clone, child.getParent());
+        Assert.assertSame(clone, subchild.getRoot());
+        Assert.assertSame(child, subchild.getParent());
+        Assert.assertEquals(2, subchild.getDepth());
+        Assert.assertFalse(subchild.isEnabled());
+        Assert.assertSame(subchild, subchild.getTransform().getGameObject());
+    }
+
+    /** Test that links between objects of the template point into the clone. */
+    @Test
+    public void plannedCloneRemapsReferences() {
+        GameObject template = buildTemplate();
+        TemplatePlan.compile(template);
+
+        GameObject clone = GameObject.instantiate(template);
+        GameObject child = clone.findChildByName("child");
+
+        LinkedComponent original =
+                (LinkedComponent) template.findChildByName("child").getComponents().get(0);
+        LinkedComponent cloned = (LinkedComponent) child.getComponents().get(0);
+
+        Assert.assertNotSame(original, cloned);
+        Assert.assertSame(child, cloned.getGameObject());
+        Assert.assertSame(child.findChildByName("subchild"), cloned.mLinked.get());
+        Assert.assertNotSame(original.mValue, cloned.mValue);
+        Assert.assertEquals(5, cloned.mValue.get());
+    }
+
+    /** Test that changing the structure of the template drops its plan. */
+    @Test
+    public void structureChangeDiscardsPlan() {
+        GameObject template = buildTemplate();
+        TemplatePlan.compile(template);
+
+        Assert.assertTrue(TemplatePlan.isCompiled(template));
+
+        template.findChildByName("second").addChild(new GameObject("third"));
+
+        Assert.assertFalse(TemplatePlan.isCompiled(template));
+
+        ArrayList<GameObject> children = new ArrayList<>();
+        GameObject.instantiate(template).getAllChildren(children);
+
+        Assert.assertEquals(4, children.size());
+    }
+
+    /** Test that only root objects can be compiled. */
+    @Test
+    public void childCannotBeCompiled() {
+        GameObject template = buildTemplate();
+
+        Assert.assertNull(TemplatePlan.compile(template.findChildByName("child")));
+    }
+}
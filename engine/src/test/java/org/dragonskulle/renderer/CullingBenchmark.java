@@ -0,0 +1,94 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.dragonskulle.components.TransformHex;
+import org.dragonskulle.core.GameObject;
+import org.dragonskulle.renderer.components.Renderable;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures culling of a large static hex map, with and without the spatial index.
+ *
+ * <p>Run with {@code java -cp <test classpath> org.openjdk.jmh.Main Culling}.
+ *
+ * @author DragonSkulle
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CullingBenchmark {
+
+    /** Number of tiles along each side of the map, 224 gives just over 50 thousand tiles. */
+    @Param({"224"})
+    public int mMapSize;
+
+    /** Whether to cull through the spatial index, or test every tile separately. */
+    @Param({"true", "false"})
+    public boolean mIndexed;
+
+    private final List<Renderable> mRenderables = new ArrayList<>();
+    private FrustumIntersection mFrustum;
+    private RenderBatcher mBatcher;
+
+    /** Create the tiles, and a camera looking at a part of the map, like in game. */
+    @Setup
+    public void setup() {
+        ShaderSet shaderSet = new ShaderSet();
+        int half = mMapSize / 2;
+
+        for (int q = -half; q < mMapSize - half; q++) {
+            for (int r = -half; r < mMapSize - half; r++) {
+                GameObject tile = new GameObject("tile", new TransformHex(q, r, 0));
+                Renderable renderable = new Renderable(Mesh.HEXAGON, new TestMaterial(shaderSet));
+                tile.addComponent(renderable);
+                mRenderables.add(renderable);
+            }
+        }
+
+        Matrix4f viewProj =
+                new Matrix4f()
+                        .perspective((float) Math.toRadians(60), 16f / 9f, 0.1f, 100f)
+                        .lookAt(0, -20, 25, 0, 0, 0, 0, 0, 1);
+        mFrustum = new FrustumIntersection(viewProj);
+
+        mBatcher = new RenderBatcher(1, mIndexed);
+        // The first call fills and builds the index
+        mBatcher.cull(mRenderables, mFrustum);
+    }
+
+    /** Stop the batcher. */
+    @TearDown
+    public void tearDown() {
+        mBatcher.close();
+    }
+
+    /**
+     * Cull the map once.
+     *
+     * @return visible tiles, so that culling is not optimised away.
+     */
+    @Benchmark
+    public Map<ShaderSet, List<Renderable>> cull() {
+        return mBatcher.cull(mRenderables, mFrustum);
+    }
+}
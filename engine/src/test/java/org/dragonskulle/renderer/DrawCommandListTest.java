@@ -0,0 +1,172 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+
+/** Unit tests for key packing and sorting in {@link DrawCommandList}. */
+public class DrawCommandListTest {
+    private static final int OPAQUE = ShaderSet.RenderOrder.OPAQUE.getValue();
+    private static final int TRANSPARENT = ShaderSet.RenderOrder.TRANSPARENT.getValue();
+    private static final int UI = ShaderSet.RenderOrder.UI.getValue();
+
+    /**
+     * Read back object IDs of a sorted list.
+     *
+     * @param list list to read.
+     * @return object IDs, in sorted order.
+     */
+    private static int[] sortedIds(DrawCommandList list) {
+        int[] ids = new int[list.getSize()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = list.getObjectId(i);
+        }
+        return ids;
+    }
+
+    /** Test that keys order by render order, then by pipeline, then by material. */
+    @Test
+    public void instancedKeysOrder() {
+        assertTrue(
+                DrawCommandList.instancedKey(OPAQUE, 5, 5)
+                        < DrawCommandList.instancedKey(TRANSPARENT, 0, 0));
+        assertTrue(
+                DrawCommandList.instancedKey(OPAQUE, 1, 100)
+                        < DrawCommandList.instancedKey(OPAQUE, 2, 0));
+        assertTrue(
+                DrawCommandList.instancedKey(OPAQUE, 1, 1)
+                        < DrawCommandList.instancedKey(OPAQUE, 1, 2));
+        assertTrue(DrawCommandList.instancedKey(-5, 0, 0) < DrawCommandList.instancedKey(0, 0, 0));
+    }
+
+    /** Test that presorted keys come after all instanced ones, and go back to front. */
+    @Test
+    public void sortedKeysOrder() {
+        assertTrue(
+                DrawCommandList.instancedKey(UI, 0, 0) < DrawCommandList.sortedKey(OPAQUE, 1e30f));
+        assertTrue(DrawCommandList.sortedKey(UI, 100) < DrawCommandList.sortedKey(UI, 2));
+        assertTrue(DrawCommandList.sortedKey(UI, 2) < DrawCommandList.sortedKey(UI, 0));
+        assertTrue(DrawCommandList.sortedKey(UI, 0) < DrawCommandList.sortedKey(UI, -1));
+        assertTrue(DrawCommandList.sortedKey(UI, -1) < DrawCommandList.sortedKey(UI, -2));
+        assertEquals(DrawCommandList.sortedKey(UI, 0f), DrawCommandList.sortedKey(UI, -0f));
+        assertTrue(
+                DrawCommandList.sortedKey(OPAQUE, 0)
+                        < DrawCommandList.sortedKey(TRANSPARENT, 1e30f));
+    }
+
+    /** Test that the radix sort matches a regular sort on random keys, and keeps growing. */
+    @Test
+    public void sortMatchesArraysSort() {
+        Random rand = new Random(1234);
+        DrawCommandList list = new DrawCommandList();
+
+        for (int size : new int[] {0, 1, 63, 64, 65, 1000}) {
+            list.clear();
+            long[] expected = new long[size];
+
+            for (int i = 0; i < size; i++) {
+                long key = rand.nextLong() & Long.MAX_VALUE;
+                expected[i] = key;
+                list.add(key, null, null, i);
+            }
+
+            list.sort();
+            Arrays.sort(expected);
+
+            assertEquals(size, list.getSize());
+
+            for (int i = 0; i < size; i++) {
+                assertEquals(expected[i], list.getKey(i));
+            }
+        }
+    }
+
+    /**
+     * Test that mixed negative, and positive depths sort back to front, with equal depths in the
+     * order they were added, like a descending tree map of depths does.
+     */
+    @Test
+    public void mixedDepthsMatchDescendingOrder() {
+        float[] depths = {-3f, 2.5f, -0.5f, 0f, -3f, 1e6f, -1e6f, 2.5f, -0f, 0.25f, -7.75f};
+        TreeMap<Float, List<Integer>> expectedMap = new TreeMap<>();
+        DrawCommandList list = new DrawCommandList();
+
+        for (int i = 0; i < depths.length; i++) {
+            // Map keys treat -0 as a separate value, while the draw order does not
+            float depth = depths[i] + 0f;
+            expectedMap.computeIfAbsent(depth, (__) -> new ArrayList<>()).add(i);
+            list.addSorted(UI, depths[i], null, null, i);
+        }
+
+        list.sort();
+
+        int[] expected = new int[depths.length];
+        int count = 0;
+        for (List<Integer> ids : expectedMap.descendingMap().values()) {
+            for (int id : ids) {
+                expected[count++] = id;
+            }
+        }
+
+        assertTrue(Arrays.equals(expected, sortedIds(list)));
+    }
+
+    /** Test that equal keys keep the order they were added in. */
+    @Test
+    public void sortIsStable() {
+        DrawCommandList list = new DrawCommandList();
+
+        list.addSorted(UI, 4, null, null, 0);
+        list.addSorted(UI, 9, null, null, 1);
+        list.addSorted(UI, 4, null, null, 2);
+        list.addInstanced(OPAQUE, 0, 0, null, null, 0);
+        list.addSorted(UI, 9, null, null, 3);
+        list.addSorted(UI, 4, null, null, 4);
+        list.sort();
+
+        assertTrue(list.isInstanced(0));
+        assertFalse(list.isInstanced(1));
+        assertTrue(Arrays.equals(new int[] {0, 1, 3, 0, 2, 4}, sortedIds(list)));
+    }
+
+    /** Test that commands split into even ranges, covering the whole list. */
+    @Test
+    public void splitRangesCoverList() {
+        DrawCommandList list = new DrawCommandList();
+        int[] ends = new int[32];
+
+        assertEquals(0, list.splitRanges(64, 4, ends));
+
+        for (int i = 0; i < 100; i++) {
+            list.addSorted(UI, i, null, null, i);
+        }
+        list.sort();
+
+        assertEquals(1, list.splitRanges(64, 4, ends));
+        assertEquals(100, ends[0]);
+
+        for (int i = 100; i < 1000; i++) {
+            list.addSorted(UI, i, null, null, i);
+        }
+        list.sort();
+
+        assertEquals(4, list.splitRanges(64, 4, ends));
+        assertTrue(Arrays.equals(new int[] {250, 500, 750, 1000}, Arrays.copyOf(ends, 4)));
+
+        int count = list.splitRanges(64, ends.length, ends);
+        assertEquals(1000 / 64, count);
+        assertEquals(1000, ends[count - 1]);
+
+        for (int i = 1; i < count; i++) {
+            assertTrue(ends[i - 1] < ends[i]);
+        }
+    }
+}
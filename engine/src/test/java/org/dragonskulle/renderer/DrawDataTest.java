@@ -0,0 +1,483 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.dragonskulle.components.Transform3D;
+import org.dragonskulle.core.GameObject;
+import org.dragonskulle.renderer.DrawCallState.DrawData;
+import org.dragonskulle.renderer.components.Light;
+import org.dragonskulle.renderer.components.Renderable;
+import org.dragonskulle.renderer.materials.IMaterial;
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.junit.Test;
+
+/** Unit tests for instance buffer ranges, slots, and cached writes of {@link DrawData}. */
+public class DrawDataTest {
+    private static final int BUFFER_SIZE = 4096;
+
+    /** Tiles along each side of the hex map in {@link #staticSceneWritesOnlyMovedObjects}. */
+    private static final int MAP_SIZE = 51;
+    /** Buildings on the map. */
+    private static final int BUILDINGS = 60;
+    /** Units moving every frame. */
+    private static final int UNITS = 20;
+    /** Frames measured after the first one. */
+    private static final int FRAMES = 60;
+
+    /** Shader set with just a matrix per instance. */
+    private static class MatrixShaderSet extends ShaderSet {
+        MatrixShaderSet() {
+            mVertexBindingDescription = BindingDescription.instancedWithMatrix(0);
+        }
+    }
+
+    /** Renderable that draws its mesh several times, moved along the X axis. */
+    private static class RowRenderable extends Renderable {
+        private final int mCount;
+
+        /**
+         * Create the renderable.
+         *
+         * @param shaderSet shader set of the material.
+         * @param count number of instances.
+         */
+        RowRenderable(ShaderSet shaderSet, int count) {
+            super(Mesh.HEXAGON, new TestMaterial(shaderSet));
+            mCount = count;
+        }
+
+        @Override
+        public int getInstanceCount() {
+            return mCount;
+        }
+
+        @Override
+        public void writeVertexInstanceData(
+                int instance, int offset, ByteBuffer buffer, List<Light> lights) {
+            ShaderSet.writeMatrix(offset, buffer, new Matrix4f().translate(instance, 0, 0));
+        }
+    }
+
+    /** Material that versions nothing but the transform, and counts its writes. */
+    private static class CountingMaterial extends TestMaterial {
+        private int mWrites = 0;
+
+        CountingMaterial(ShaderSet shaderSet) {
+            super(shaderSet);
+        }
+
+        @Override
+        public int writeVertexInstanceData(
+                int offset, ByteBuffer buffer, Matrix4fc matrix, List<Light> lights) {
+            mWrites++;
+            return super.writeVertexInstanceData(offset, buffer, matrix, lights);
+        }
+
+        @Override
+        public int getVersion() {
+            return 0;
+        }
+    }
+
+    /**
+     * Add a renderable object to draw data.
+     *
+     * @param data draw data to add to.
+     * @param shaderSet shader set of the object's material.
+     * @param x X position of the object.
+     * @return the renderable of the object.
+     */
+    private static Renderable add(DrawData data, ShaderSet shaderSet, float x) {
+        return add(data, new TestMaterial(shaderSet), x);
+    }
+
+    /**
+     * Add a renderable object to draw data.
+     *
+     * @param data draw data to add to.
+     * @param material material of the object.
+     * @param x X position of the object.
+     * @return the renderable of the object.
+     */
+    private static Renderable add(DrawData data, IMaterial material, float x) {
+        Renderable renderable = new Renderable(Mesh.HEXAGON, material);
+        GameObject object = new GameObject("renderable");
+        object.getTransform(Transform3D.class).setPosition(x, 0, -5);
+        object.addComponent(renderable);
+        data.addObject(renderable);
+        return renderable;
+    }
+
+    /**
+     * Allocate a buffer in native byte order.
+     *
+     * @param size size of the buffer.
+     * @return the buffer.
+     */
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Read a matrix from a buffer.
+     *
+     * @param buffer buffer to read from.
+     * @param offset offset of the matrix.
+     * @return the read matrix.
+     */
+    private static Matrix4f readMatrix(ByteBuffer buffer, int offset) {
+        ByteBuffer view = buffer.duplicate().order(buffer.order());
+        view.position(offset);
+        return new Matrix4f().set(view);
+    }
+
+    /** Test that only data that changed since the last write reaches the instance buffer. */
+    @Test
+    public void unchangedDataIsNotRewritten() {
+        ShaderSet shaderSet = new MatrixShaderSet();
+        DrawData data = new DrawData();
+        add(data, shaderSet, 0);
+        Renderable moved = add(data, shaderSet, 1);
+        add(data, shaderSet, 2);
+
+        RangeAllocator allocator = new RangeAllocator(BUFFER_SIZE, 0);
+        assertTrue(data.reserveInstanceRange(shaderSet, allocator));
+
+        ByteBuffer buffer = allocate(BUFFER_SIZE);
+        ByteBuffer shadow = allocate(BUFFER_SIZE);
+        ByteBuffer scratch = allocate(AttributeDescription.MATRIX_SIZE);
+
+        int written =
+                data.updateInstanceBuffer(
+                        shaderSet, buffer, shadow, scratch, Collections.emptyList(), 0, 0, 3);
+        assertTrue(written > 0);
+        assertEquals(shadow, buffer);
+
+        written =
+                data.updateInstanceBuffer(
+                        shaderSet, buffer, shadow, scratch, Collections.emptyList(), 0, 0, 3);
+        assertEquals(0, written);
+
+        // Only the X translation of the matrix changes
+        moved.getGameObject().getTransform(Transform3D.class).setPosition(5, 0, -5);
+
+        written =
+                data.updateInstanceBuffer(
+                        shaderSet, buffer, shadow, scratch, Collections.emptyList(), 0, 0, 3);
+        assertEquals(4, written);
+        assertEquals(shadow, buffer);
+    }
+
+    /** Test that ranges are kept while objects fit, and move once they do not. */
+    @Test
+    public void rangesAreKeptUntilFull() {
+        ShaderSet shaderSet = new MatrixShaderSet();
+        int stride = shaderSet.getVertexBindingDescription().mSize;
+        DrawData data = new DrawData();
+        RangeAllocator allocator = new RangeAllocator(BUFFER_SIZE, 0);
+
+        add(data, shaderSet, 0);
+        add(data, shaderSet, 0);
+        add(data, shaderSet, 0);
+        assertTrue(data.reserveInstanceRange(shaderSet, allocator));
+        int offset = data.getInstanceBufferOffset();
+
+        add(data, shaderSet, 0);
+        assertTrue(data.reserveInstanceRange(shaderSet, allocator));
+        assertEquals(offset, data.getInstanceBufferOffset());
+
+        add(data, shaderSet, 0);
+        assertTrue(data.reserveInstanceRange(shaderSet, allocator));
+        assertNotEquals(offset, data.getInstanceBufferOffset());
+        assertEquals(8 * stride, data.getInstanceRangeSize());
+
+        data.freeInstanceRange(allocator);
+        allocator.nextFrame();
+        assertEquals(0, allocator.getUsed());
+    }
+
+    /** Test that objects with several instances get consecutive slots in the range. */
+    @Test
+    public void multipleInstancesShareTheRange() {
+        ShaderSet shaderSet = new MatrixShaderSet();
+        int stride = shaderSet.getVertexBindingDescription().mSize;
+        DrawData data = new DrawData();
+        add(data, shaderSet, 0);
+        data.addObject(new RowRenderable(shaderSet, 5));
+        add(data, shaderSet, 0);
+
+        assertEquals(7, data.getInstanceCount());
+        assertEquals(1, data.getFirstInstance(1));
+        assertEquals(6, data.getFirstInstance(2));
+
+        RangeAllocator allocator = new RangeAllocator(BUFFER_SIZE, 0);
+        assertTrue(data.reserveInstanceRange(shaderSet, allocator));
+        assertEquals(8 * stride, data.getInstanceRangeSize());
+
+        ByteBuffer buffer = allocate(BUFFER_SIZE);
+        ByteBuffer shadow = allocate(BUFFER_SIZE);
+        ByteBuffer scratch = allocate(stride);
+
+        // Only the row is written, starting at its first instance
+        data.updateInstanceBuffer(
+                shaderSet, buffer, shadow, scratch, Collections.emptyList(), 0, 1, 2);
+
+        for (int instance = 0; instance < 5; instance++) {
+            int offset = data.getInstanceBufferOffset() + stride * (1 + instance);
+            Matrix4f matrix = readMatrix(buffer, offset);
+            assertEquals(instance, matrix.m30(), 0f);
+            assertEquals(1f, matrix.m33(), 0f);
+        }
+
+        int last = data.getInstanceBufferOffset() + stride * 6;
+        assertEquals(0f, buffer.getFloat(last + 15 * 4), 0f);
+
+        data.clearObjects();
+        assertEquals(0, data.getInstanceCount());
+    }
+
+    /** Test that objects whose version did not change are not written to the same image again. */
+    @Test
+    public void unchangedVersionsAreSkipped() {
+        ShaderSet shaderSet = new MatrixShaderSet();
+        CountingMaterial material = new CountingMaterial(shaderSet);
+        DrawData data = new DrawData();
+        Renderable moved = add(data, material, 0);
+        Renderable still = add(data, material, 1);
+
+        RangeAllocator allocator = new RangeAllocator(BUFFER_SIZE, 0);
+        assertTrue(data.reserveInstanceRange(shaderSet, allocator));
+
+        ByteBuffer scratch = allocate(AttributeDescription.MATRIX_SIZE);
+        ByteBuffer[] buffers = {allocate(BUFFER_SIZE), allocate(BUFFER_SIZE)};
+        ByteBuffer[] shadows = {allocate(BUFFER_SIZE), allocate(BUFFER_SIZE)};
+
+        // Every image has its own buffer, which needs the data written once
+        for (int image = 0; image < 2; image++) {
+            data.updateInstanceBuffer(
+                    shaderSet,
+                    buffers[image],
+                    shadows[image],
+                    scratch,
+                    Collections.emptyList(),
+                    image,
+                    0,
+                    2);
+        }
+        assertEquals(4, material.mWrites);
+
+        data.clearObjects();
+        moved.getGameObject().getTransform(Transform3D.class).setPosition(5, 0, -5);
+        data.addObject(moved);
+        data.addObject(still);
+        assertTrue(data.reserveInstanceRange(shaderSet, allocator));
+
+        int written =
+                data.updateInstanceBuffer(
+                        shaderSet,
+                        buffers[0],
+                        shadows[0],
+                        scratch,
+                        Collections.emptyList(),
+                        0,
+                        0,
+                        2);
+        assertEquals(5, material.mWrites);
+        assertEquals(4, written);
+        assertEquals(5f, readMatrix(buffers[0], data.getInstanceBufferOffset()).m30(), 0f);
+    }
+
+    /** Test that culled objects keep their slots, splitting the visible ones into runs. */
+    @Test
+    public void culledObjectsKeepTheirSlots() {
+        ShaderSet shaderSet = new MatrixShaderSet();
+        DrawData data = new DrawData();
+        Renderable first = add(data, shaderSet, 0);
+        Renderable second = add(data, shaderSet, 1);
+        Renderable third = add(data, shaderSet, 2);
+
+        assertEquals(1, data.getRunCount());
+        assertEquals(3, data.getRunLength(0));
+
+        data.clearObjects();
+        data.addObject(second);
+        data.addObject(third);
+
+        assertEquals(1, data.getFirstInstance(0));
+        assertEquals(2, data.getFirstInstance(1));
+        assertEquals(1, data.getRunCount());
+        assertEquals(1, data.getRunStart(0));
+        assertEquals(2, data.getRunLength(0));
+
+        data.clearObjects();
+        data.addObject(third);
+        data.addObject(first);
+
+        assertEquals(2, data.getFirstInstance(0));
+        assertEquals(0, data.getFirstInstance(1));
+        assertEquals(2, data.getRunCount());
+        assertEquals(0, data.getRunStart(0));
+        assertEquals(1, data.getRunLength(0));
+        assertEquals(2, data.getRunStart(1));
+        assertEquals(1, data.getRunLength(1));
+
+        // A new object takes a slot after all the kept ones
+        add(data, shaderSet, 3);
+        assertEquals(3, data.getFirstInstance(2));
+        assertEquals(2, data.getRunCount());
+        assertEquals(2, data.getRunLength(1));
+    }
+
+    /** Test that slots of objects that stop being drawn are eventually given back. */
+    @Test
+    public void idleSlotsAreFreed() {
+        ShaderSet shaderSet = new MatrixShaderSet();
+        DrawData data = new DrawData();
+        Renderable kept = add(data, shaderSet, 0);
+        add(data, shaderSet, 1);
+
+        for (int i = 0; i < DrawCallState.MAX_IDLE_FRAMES; i++) {
+            data.clearObjects();
+            data.addObject(kept);
+        }
+
+        assertFalse(data.isUnused());
+
+        // The freed slot is reused by the next new object
+        add(data, shaderSet, 2);
+        assertEquals(1, data.getFirstInstance(1));
+
+        for (int i = 0; i < DrawCallState.MAX_IDLE_FRAMES; i++) {
+            data.clearObjects();
+        }
+
+        assertTrue(data.isUnused());
+    }
+
+    /**
+     * Test instance buffer writes of a scene shaped like the main game scene: a static hex map,
+     * static buildings, and a few units moving every frame.
+     *
+     * <p>Rewriting every visible object each frame, as the renderer did before instance data was
+     * retained, writes all visible instance data. Retained data only writes the moved units.
+     */
+    @Test
+    public void staticSceneWritesOnlyMovedObjects() {
+        ShaderSet shaderSet = new MatrixShaderSet();
+        int stride = shaderSet.getVertexBindingDescription().mSize;
+
+        DrawData tiles = new DrawData();
+        DrawData buildings = new DrawData();
+        DrawData units = new DrawData();
+        DrawData[] layers = {tiles, buildings, units};
+        List<Renderable> objects = new ArrayList<>();
+        List<Renderable> moving = new ArrayList<>();
+
+        for (int i = 0; i < MAP_SIZE * MAP_SIZE; i++) {
+            objects.add(add(tiles, shaderSet, i % MAP_SIZE));
+        }
+
+        for (int i = 0; i < BUILDINGS; i++) {
+            objects.add(add(buildings, shaderSet, i));
+        }
+
+        for (int i = 0; i < UNITS; i++) {
+            moving.add(add(units, shaderSet, i));
+        }
+
+        int bufferSize = 0;
+        for (DrawData data : layers) {
+            bufferSize += data.getInstanceCount() * stride * 2;
+        }
+
+        RangeAllocator allocator = new RangeAllocator(bufferSize, 0);
+        int fullRewrite = 0;
+
+        for (DrawData data : layers) {
+            assertTrue(data.reserveInstanceRange(shaderSet, allocator));
+            fullRewrite += data.getInstanceCount() * stride;
+        }
+
+        ByteBuffer buffer = allocate(bufferSize);
+        ByteBuffer shadow = allocate(bufferSize);
+        ByteBuffer scratch = allocate(stride);
+
+        // The first frame has to write everything
+        int firstFrame = 0;
+        for (DrawData data : layers) {
+            firstFrame +=
+                    data.updateInstanceBuffer(
+                            shaderSet,
+                            buffer,
+                            shadow,
+                            scratch,
+                            Collections.emptyList(),
+                            0,
+                            0,
+                            data.getObjects().size());
+        }
+        assertTrue(firstFrame > 0);
+        assertTrue(firstFrame <= fullRewrite);
+
+        long written = 0;
+
+        for (int frame = 1; frame <= FRAMES; frame++) {
+            for (int i = 0; i < UNITS; i++) {
+                moving.get(i)
+                        .getGameObject()
+                        .getTransform(Transform3D.class)
+                        .setPosition(i + frame * 0.1f, 0, -5);
+            }
+
+            // Every frame, the renderer adds all visible objects again
+            for (DrawData data : layers) {
+                data.clearObjects();
+            }
+
+            for (int i = 0; i < objects.size(); i++) {
+                Renderable object = objects.get(i);
+                (i < MAP_SIZE * MAP_SIZE ? tiles : buildings).addObject(object);
+            }
+
+            for (Renderable unit : moving) {
+                units.addObject(unit);
+            }
+
+            for (DrawData data : layers) {
+                assertTrue(data.reserveInstanceRange(shaderSet, allocator));
+                written +=
+                        data.updateInstanceBuffer(
+                                shaderSet,
+                                buffer,
+                                shadow,
+                                scratch,
+                                Collections.emptyList(),
+                                0,
+                                0,
+                                data.getObjects().size());
+            }
+        }
+
+        assertEquals(shadow, buffer);
+
+        // Only the X translation of each unit changes, that is 4 bytes per unit
+        double perFrame = written / (double) FRAMES;
+        String report =
+                String.format(
+                        "Full rewrite: %d bytes per frame, retained: %.1f bytes per frame",
+                        fullRewrite, perFrame);
+
+        assertEquals(report, UNITS * 4, perFrame, 0.0);
+        assertTrue(report, perFrame * 100 < fullRewrite);
+    }
+}
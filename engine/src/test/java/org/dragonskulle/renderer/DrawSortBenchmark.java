@@ -0,0 +1,91 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures sorting presorted draws back to front with packed keys, against a map keyed by boxed
+ * depths.
+ *
+ * <p>Run with {@code java -cp <test classpath> org.openjdk.jmh.Main DrawSort}.
+ *
+ * @author DragonSkulle
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DrawSortBenchmark {
+
+    /** Number of draws to sort. */
+    @Param({"1000", "10000"})
+    public int mDrawCount;
+
+    private float[] mDepths;
+    private final DrawCommandList mCommands = new DrawCommandList();
+
+    /** Generate random depths. */
+    @Setup
+    public void setup() {
+        Random rand = new Random(1234);
+        mDepths = new float[mDrawCount];
+
+        for (int i = 0; i < mDrawCount; i++) {
+            mDepths[i] = rand.nextFloat() * 1000;
+        }
+    }
+
+    /**
+     * Build and sort the draw commands.
+     *
+     * @return the sorted list.
+     */
+    @Benchmark
+    public DrawCommandList radixSort() {
+        mCommands.clear();
+
+        for (int i = 0; i < mDrawCount; i++) {
+            mCommands.addSorted(i % 3, mDepths[i], null, null, i);
+        }
+
+        mCommands.sort();
+        return mCommands;
+    }
+
+    /**
+     * Sort the draws with a map per render order, keyed by depth.
+     *
+     * @return the sorted maps.
+     */
+    @Benchmark
+    public List<TreeMap<Float, List<Integer>>> treeMapSort() {
+        List<TreeMap<Float, List<Integer>>> orders = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            orders.add(new TreeMap<>((a, b) -> Float.compare(b, a)));
+        }
+
+        for (int i = 0; i < mDrawCount; i++) {
+            orders.get(i % 3).computeIfAbsent(mDepths[i], k -> new ArrayList<>()).add(i);
+        }
+
+        return orders;
+    }
+}
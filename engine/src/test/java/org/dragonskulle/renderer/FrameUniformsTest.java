@@ -0,0 +1,145 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import org.dragonskulle.core.GameObject;
+import org.dragonskulle.renderer.components.Light;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.junit.Test;
+
+/** Unit tests for the std140 layout of {@link FrameUniforms}. */
+public class FrameUniformsTest {
+    private static final float EPSILON = 1e-6f;
+
+    /**
+     * Create a light.
+     *
+     * @param intensity intensity of the light.
+     * @return a light on its own game object.
+     */
+    private static Light createLight(float intensity) {
+        Light light = new Light();
+        light.setIntensity(intensity);
+        GameObject object = new GameObject("light");
+        object.addComponent(light);
+        return light;
+    }
+
+    /**
+     * Read a vector from a buffer.
+     *
+     * @param buffer buffer to read from.
+     * @param offset offset of the vector.
+     * @return the read vector.
+     */
+    private static Vector3f readVec(ByteBuffer buffer, int offset) {
+        return new Vector3f(
+                buffer.getFloat(offset), buffer.getFloat(offset + 4), buffer.getFloat(offset + 8));
+    }
+
+    /**
+     * Read a matrix from a buffer.
+     *
+     * @param buffer buffer to read from.
+     * @param offset offset of the matrix.
+     * @return the read matrix.
+     */
+    private static Matrix4f readMatrix(ByteBuffer buffer, int offset) {
+        ByteBuffer view = buffer.duplicate().order(buffer.order());
+        view.position(offset);
+        return new Matrix4f().set(view);
+    }
+
+    /**
+     * Assert that a vector in a buffer matches the expected one.
+     *
+     * @param expected expected vector.
+     * @param buffer buffer to read from.
+     * @param offset offset of the vector.
+     */
+    private static void assertVec(Vector3fc expected, ByteBuffer buffer, int offset) {
+        Vector3f actual = readVec(buffer, offset);
+        assertEquals(expected.x(), actual.x, EPSILON);
+        assertEquals(expected.y(), actual.y, EPSILON);
+        assertEquals(expected.z(), actual.z, EPSILON);
+    }
+
+    /** Test that every field is aligned the way std140 requires, and blocks can be offset. */
+    @Test
+    public void layoutIsStd140() {
+        int[] vec4Offsets = {
+            FrameUniforms.VIEW_OFFSET,
+            FrameUniforms.PROJ_OFFSET,
+            FrameUniforms.CAM_OFFSET,
+            FrameUniforms.LIGHT_DIR_OFFSET,
+            FrameUniforms.LIGHT_COL_OFFSET
+        };
+
+        for (int offset : vec4Offsets) {
+            assertEquals(0, offset % 16);
+        }
+
+        assertEquals(128, FrameUniforms.CAM_OFFSET);
+        assertEquals(144 + 32 * FrameUniforms.MAX_LIGHTS, FrameUniforms.SIZEOF);
+        assertEquals(0, FrameUniforms.STRIDE % FrameUniforms.MAX_OFFSET_ALIGNMENT);
+        assertTrue(FrameUniforms.STRIDE >= FrameUniforms.SIZEOF);
+    }
+
+    /** Test that the camera and lights land at their offsets, and missing lights are zeroed. */
+    @Test
+    public void copyToPacksFields() {
+        Light bright = createLight(2f);
+        bright.getColour().set(1f, 0.5f, 0.25f);
+        Light dim = createLight(1f);
+        List<Light> lights = Arrays.asList(bright, dim);
+        Light.prepareLights(lights);
+
+        FrameUniforms uniforms = new FrameUniforms();
+        uniforms.mView = new Matrix4f().translate(1, 2, 3);
+        uniforms.mProj = new Matrix4f().perspective(1f, 1f, 0.1f, 100f);
+        uniforms.mCamPosition = new Vector3f(4, 5, 6);
+        uniforms.mLights = lights;
+
+        int base = 32;
+        ByteBuffer buffer =
+                ByteBuffer.allocateDirect(base + FrameUniforms.SIZEOF)
+                        .order(ByteOrder.nativeOrder());
+        // Garbage from a previous frame must be overwritten
+        for (int i = 0; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) 0x7f);
+        }
+
+        uniforms.copyTo(buffer, base);
+
+        Matrix4f view = readMatrix(buffer, base + FrameUniforms.VIEW_OFFSET);
+        Matrix4f proj = readMatrix(buffer, base + FrameUniforms.PROJ_OFFSET);
+        assertArrayEquals(uniforms.mView.get(new float[16]), view.get(new float[16]), EPSILON);
+        assertArrayEquals(uniforms.mProj.get(new float[16]), proj.get(new float[16]), EPSILON);
+
+        assertVec(uniforms.mCamPosition, buffer, base + FrameUniforms.CAM_OFFSET);
+
+        Vector3f expectedDir = bright.getGameObject().getTransform().getUpVector().negate();
+        assertVec(expectedDir, buffer, base + FrameUniforms.LIGHT_DIR_OFFSET);
+        assertVec(new Vector3f(2f, 1f, 0.5f), buffer, base + FrameUniforms.LIGHT_COL_OFFSET);
+        assertVec(
+                new Vector3f(1f),
+                buffer,
+                base + FrameUniforms.LIGHT_COL_OFFSET + FrameUniforms.VEC4_SIZE);
+
+        for (int i = lights.size(); i < FrameUniforms.MAX_LIGHTS; i++) {
+            int dirOffset = base + FrameUniforms.LIGHT_DIR_OFFSET + i * FrameUniforms.VEC4_SIZE;
+            int colOffset = base + FrameUniforms.LIGHT_COL_OFFSET + i * FrameUniforms.VEC4_SIZE;
+            assertVec(new Vector3f(), buffer, dirOffset);
+            assertVec(new Vector3f(), buffer, colOffset);
+        }
+    }
+}
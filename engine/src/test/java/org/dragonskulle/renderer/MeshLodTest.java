@@ -0,0 +1,185 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.dragonskulle.components.Transform3D;
+import org.dragonskulle.core.GameObject;
+import org.dragonskulle.renderer.components.Renderable;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+/** Unit tests for level of detail selection, and generation. */
+public class MeshLodTest {
+    /** Perspective projection with a 90 degree vertical field of view. */
+    private static final Matrix4f PROJ =
+            new Matrix4f().perspective((float) Math.toRadians(90), 1, 0.1f, 1000);
+
+    /**
+     * Build levels of detail out of 3 meshes.
+     *
+     * @param meshes meshes of the levels.
+     * @return levels of detail.
+     */
+    private static MeshLod lod(Mesh... meshes) {
+        return new MeshLod.Builder()
+                .level(meshes[0], 0.5f)
+                .level(meshes[1], 0.2f)
+                .level(meshes[2], 0.05f)
+                .hysteresis(0.1f)
+                .build();
+    }
+
+    /**
+     * Build a grid of quads on the XY plane, which can be simplified.
+     *
+     * @param size number of quads along each side.
+     * @return the grid mesh.
+     */
+    private static Mesh grid(int size) {
+        List<Vertex> vertices = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                Mesh.addQuadToList(
+                        vertices,
+                        indices,
+                        new Vector2f(x, y),
+                        new Vector2f(x + 1, y + 1),
+                        new Vector2f(0, 0),
+                        new Vector2f(1, 1));
+            }
+        }
+
+        return new Mesh(
+                vertices.toArray(new Vertexc[0]),
+                indices.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /** Test that levels are picked by screen size, and only switch past the hysteresis. */
+    @Test
+    public void selectsWithHysteresis() {
+        MeshLod lod = lod(Mesh.CUBE, Mesh.HEXAGON, Mesh.QUAD);
+
+        assertEquals(0, lod.select(0.6f, 0));
+        assertEquals(1, lod.select(0.3f, 0));
+        assertEquals(2, lod.select(0.1f, 0));
+        assertEquals(-1, lod.select(0.01f, 0));
+
+        // Just below the threshold keeps the detailed level, and just above the coarse one
+        assertEquals(0, lod.select(0.48f, 0));
+        assertEquals(1, lod.select(0.52f, 1));
+        assertEquals(1, lod.select(0.4f, 0));
+        assertEquals(0, lod.select(0.6f, 1));
+
+        assertEquals(2, lod.select(0.048f, 2));
+        assertEquals(-1, lod.select(0.052f, -1));
+        assertEquals(2, lod.select(0.06f, -1));
+    }
+
+    /** Test that levels must get less detailed. */
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsIncreasingSizes() {
+        new MeshLod.Builder().level(Mesh.CUBE, 0.1f).level(Mesh.QUAD, 0.2f);
+    }
+
+    /** Test that objects far away get drawn with less detailed meshes, or not at all. */
+    @Test
+    public void renderableSelectsByDistance() {
+        MeshLod lod = lod(Mesh.CUBE, Mesh.HEXAGON, Mesh.QUAD);
+        Renderable renderable = new Renderable(Mesh.CUBE, new TestMaterial(new ShaderSet()));
+        GameObject object = new GameObject("renderable");
+        object.addComponent(renderable);
+
+        // Levels of detail are referenced as long as the object uses them
+        int refs = Mesh.HEXAGON.getRefCount();
+        renderable.setLod(lod);
+        assertEquals(refs + 1, Mesh.HEXAGON.getRefCount());
+
+        Vector3f camPosition = new Vector3f();
+        Transform3D transform = object.getTransform(Transform3D.class);
+
+        // The cube's bounding sphere has a radius of about 0.87
+        transform.setPosition(0, 0, -1.5f);
+        assertTrue(renderable.selectLod(camPosition, PROJ));
+        assertSame(Mesh.CUBE, renderable.getDrawMesh());
+
+        transform.setPosition(0, 0, -10);
+        assertTrue(renderable.selectLod(camPosition, PROJ));
+        assertSame(Mesh.QUAD, renderable.getDrawMesh());
+
+        transform.setPosition(0, 0, -100);
+        assertFalse(renderable.selectLod(camPosition, PROJ));
+
+        renderable.setLod(null);
+        assertEquals(refs, Mesh.HEXAGON.getRefCount());
+    }
+
+    /** Test that the culling pass drops objects too small to be drawn. */
+    @Test
+    public void cullingSelectsLevels() {
+        ShaderSet shaderSet = new ShaderSet();
+        MeshLod lod = lod(Mesh.CUBE, Mesh.HEXAGON, Mesh.QUAD);
+        List<Renderable> renderables = new ArrayList<>();
+
+        for (float z : new float[] {-1.5f, -100}) {
+            Renderable renderable = new Renderable(Mesh.CUBE, new TestMaterial(shaderSet));
+            GameObject object = new GameObject("renderable");
+            object.getTransform(Transform3D.class).setPosition(0, 0, z);
+            object.addComponent(renderable);
+            renderable.setLod(lod);
+            renderables.add(renderable);
+        }
+
+        FrustumIntersection frustum = new FrustumIntersection(PROJ);
+
+        try (RenderBatcher batcher = new RenderBatcher(1, false)) {
+            Map<ShaderSet, List<Renderable>> buckets =
+                    batcher.cull(renderables, frustum, new Vector3f(), PROJ);
+
+            assertEquals(Arrays.asList(renderables.get(0)), buckets.get(shaderSet));
+        }
+    }
+
+    /** Test that simplified meshes have fewer triangles, and stay within the original bounds. */
+    @Test
+    public void simplifiesWithinBounds() {
+        Mesh mesh = grid(16);
+        Mesh simplified = MeshSimplifier.simplify(mesh, 4);
+
+        assertTrue(simplified.getIndices().length > 0);
+        assertTrue(simplified.getIndices().length < mesh.getIndices().length);
+        assertTrue(simplified.getVertices().length < mesh.getVertices().length);
+
+        for (Vertexc vertex : simplified.getVertices()) {
+            Vector3f pos = new Vector3f(vertex.getPos());
+            assertTrue(pos.x >= 0 && pos.x <= 16 && pos.y >= 0 && pos.y <= 16);
+        }
+
+        for (int index : simplified.getIndices()) {
+            assertTrue(index < simplified.getVertices().length);
+        }
+    }
+
+    /** Test that impostors span the bounding box of the original mesh. */
+    @Test
+    public void impostorKeepsBounds() {
+        Mesh impostor = MeshSimplifier.impostor(Mesh.CUBE);
+
+        assertEquals(Mesh.CUBE.getBBMin(), impostor.getBBMin());
+        assertEquals(Mesh.CUBE.getBBMax(), impostor.getBBMax());
+        // 3 double-sided planes
+        assertEquals(3 * 4 * 3, impostor.getIndices().length);
+    }
+}
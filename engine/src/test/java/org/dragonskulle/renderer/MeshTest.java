@@ -0,0 +1,96 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+/** Unit tests for dynamic {@link Mesh}es. */
+public class MeshTest {
+    /**
+     * Build a quad mesh's vertices.
+     *
+     * @param size size of the quad.
+     * @return vertices of the quad.
+     */
+    private static Vertexc[] quad(float size) {
+        return Mesh.buildQuad(new Vector2f(0), new Vector2f(size), new Vector2f(0), new Vector2f(1))
+                .getVertices();
+    }
+
+    /** Test that static meshes with the same contents are equal, but dynamic ones are not. */
+    @Test
+    public void dynamicMeshesAreComparedByIdentity() {
+        int[] indices = {0, 1, 2, 1, 3, 2};
+        Mesh first = new Mesh(quad(1), indices);
+        Mesh second = new Mesh(quad(1), indices);
+        Mesh dynamic = Mesh.createDynamic(quad(1), indices);
+
+        assertEquals(first, second);
+        assertNotEquals(first, dynamic);
+        assertNotEquals(dynamic, first);
+        assertNotEquals(dynamic, Mesh.createDynamic(quad(1), indices));
+    }
+
+    /** Test that updates keep the mesh usable as the same map key, and bump its version. */
+    @Test
+    public void updatesKeepIdentity() {
+        int[] indices = {0, 1, 2, 1, 3, 2};
+        Mesh mesh = Mesh.createDynamic(quad(1), indices);
+        Map<Mesh, String> entries = new HashMap<>();
+        entries.put(mesh, "entry");
+
+        mesh.update(quad(2), new int[] {0, 1, 2});
+
+        assertSame("entry", entries.get(mesh));
+        assertEquals(1, mesh.getVersion());
+        assertEquals(3, mesh.getIndices().length);
+        assertEquals(new Vector3f(2, 2, 0), mesh.getBBMax());
+    }
+
+    /** Test that replacing some vertices keeps the rest, and records which were replaced. */
+    @Test
+    public void updatesVerticesInPart() {
+        int[] indices = {0, 1, 2, 1, 3, 2, 4, 5, 6, 5, 7, 6};
+        Vertexc[] vertices = new Vertexc[8];
+        System.arraycopy(quad(1), 0, vertices, 0, 4);
+        System.arraycopy(quad(1), 0, vertices, 4, 4);
+        Mesh mesh = Mesh.createDynamic(vertices, indices);
+
+        Vertexc[] before = mesh.getVertices();
+        mesh.updateVertices(4, quad(3));
+
+        assertEquals(1, mesh.getVersion());
+        assertEquals(0, mesh.getShapeVersion());
+        assertSame(indices, mesh.getIndices());
+        assertSame(before[0], mesh.getVertices()[0]);
+        assertEquals(new Vector3f(1, 1, 0), before[7].getPos());
+        assertEquals(new Vector3f(3, 3, 0), mesh.getVertices()[7].getPos());
+        assertEquals(new Vector3f(3, 3, 0), mesh.getBBMax());
+        assertArrayEquals(new int[] {0, 0, 0, 0, 1, 1, 1, 1}, mesh.getVertexVersions());
+
+        mesh.update(quad(2), new int[] {0, 1, 2});
+        assertEquals(2, mesh.getShapeVersion());
+        assertNull(mesh.getVertexVersions());
+    }
+
+    /** Test that replaced vertices have to fit in the mesh. */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void partialUpdatesMustFit() {
+        Mesh.createDynamic(quad(1), new int[] {0, 1, 2}).updateVertices(2, quad(1));
+    }
+
+    /** Test that static meshes can not be updated. */
+    @Test(expected = IllegalStateException.class)
+    public void staticMeshesCanNotBeUpdated() {
+        new Mesh(quad(1), new int[] {0, 1, 2}).update(quad(2), new int[] {0, 1, 2});
+    }
+}
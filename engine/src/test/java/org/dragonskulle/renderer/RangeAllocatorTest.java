@@ -0,0 +1,87 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/** Unit tests for {@link RangeAllocator}. */
+public class RangeAllocatorTest {
+    /** Test that ranges are packed from the start, until they no longer fit. */
+    @Test
+    public void allocatesFirstFit() {
+        RangeAllocator allocator = new RangeAllocator(100, 2);
+
+        assertEquals(0, allocator.allocate(40));
+        assertEquals(40, allocator.allocate(40));
+        assertEquals(-1, allocator.allocate(40));
+        assertEquals(80, allocator.allocate(20));
+        assertEquals(100, allocator.getUsed());
+        assertEquals(100, allocator.getEnd());
+    }
+
+    /** Test that freed ranges only become available after enough frames. */
+    @Test
+    public void freesAfterFrameDelay() {
+        RangeAllocator allocator = new RangeAllocator(100, 2);
+        allocator.allocate(50);
+        int second = allocator.allocate(50);
+
+        allocator.free(second, 50);
+        assertEquals(-1, allocator.allocate(10));
+
+        allocator.nextFrame();
+        assertEquals(-1, allocator.allocate(10));
+
+        allocator.nextFrame();
+        assertEquals(50, allocator.getUsed());
+        assertEquals(50, allocator.getEnd());
+        assertEquals(second, allocator.allocate(10));
+    }
+
+    /** Test that adjacent free ranges merge, so that larger allocations fit in them. */
+    @Test
+    public void mergesNeighbours() {
+        RangeAllocator allocator = new RangeAllocator(90, 1);
+        int a = allocator.allocate(30);
+        int b = allocator.allocate(30);
+        int c = allocator.allocate(30);
+
+        allocator.free(a, 30);
+        allocator.free(c, 30);
+        allocator.free(b, 30);
+        allocator.nextFrame();
+
+        assertEquals(0, allocator.getUsed());
+        assertEquals(0, allocator.allocate(90));
+    }
+
+    /** Test that ranges can be placed below a limit, for compaction. */
+    @Test
+    public void allocatesBelowLimit() {
+        RangeAllocator allocator = new RangeAllocator(100, 1);
+        int hole = allocator.allocate(10);
+        allocator.allocate(10);
+        int top = allocator.allocate(20);
+        allocator.free(hole, 10);
+        allocator.nextFrame();
+
+        assertEquals(-1, allocator.allocateBelow(20, top));
+        assertEquals(hole, allocator.allocateBelow(10, top));
+    }
+
+    /** Test that growing adds space at the end, merged with the free space already there. */
+    @Test
+    public void growsAtTheEnd() {
+        RangeAllocator allocator = new RangeAllocator(100, 1);
+        allocator.allocate(60);
+
+        assertEquals(-1, allocator.allocate(60));
+
+        allocator.grow(200);
+
+        assertEquals(60, allocator.allocate(60));
+        assertEquals(200, allocator.getCapacity());
+        assertEquals(120, allocator.getEnd());
+    }
+}
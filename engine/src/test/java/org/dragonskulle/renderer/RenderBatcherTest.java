@@ -0,0 +1,148 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.dragonskulle.components.Transform3D;
+import org.dragonskulle.core.GameObject;
+import org.dragonskulle.renderer.components.Renderable;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.junit.Test;
+
+/** Unit tests for culling and grouping in {@link RenderBatcher}. */
+public class RenderBatcherTest {
+    /** Frustum that sees x and y within [-10; 10], and z within [-100; -0.1]. */
+    private static final FrustumIntersection FRUSTUM =
+            new FrustumIntersection(new Matrix4f().ortho(-10, 10, -10, 10, 0.1f, 100));
+
+    /**
+     * Create a renderable object.
+     *
+     * @param shaderSet shader set of the object's material.
+     * @param x X position of the object.
+     * @return the renderable of the object.
+     */
+    private static Renderable create(ShaderSet shaderSet, float x) {
+        Renderable renderable = new Renderable(Mesh.HEXAGON, new TestMaterial(shaderSet));
+        GameObject object = new GameObject("renderable");
+        object.getTransform(Transform3D.class).setPosition(x, 0, -5);
+        object.addComponent(renderable);
+        return renderable;
+    }
+
+    /** Test that objects outside the frustum, or without meshes get dropped. */
+    @Test
+    public void cullsInvisibleObjects() {
+        ShaderSet shaderSet = new ShaderSet();
+        Renderable visible = create(shaderSet, 0);
+        Renderable outside = create(shaderSet, 50);
+        Renderable noMesh = create(shaderSet, 0);
+        noMesh.setMesh(null);
+
+        try (RenderBatcher batcher = new RenderBatcher(1, false)) {
+            Map<ShaderSet, List<Renderable>> buckets =
+                    batcher.cull(Arrays.asList(visible, outside, noMesh), FRUSTUM);
+
+            assertEquals(1, buckets.size());
+            assertEquals(Arrays.asList(visible), buckets.get(shaderSet));
+        }
+    }
+
+    /** Test that bounds of rotated objects include all corners of their meshes. */
+    @Test
+    public void cullsRotatedBounds() {
+        ShaderSet shaderSet = new ShaderSet();
+        // The hexagon's min and max corners end up within 0.1 of the centre, beyond the frustum
+        Renderable rotated = create(shaderSet, 10.5f);
+        rotated.getGameObject().getTransform(Transform3D.class).setRotationDeg(0, 0, 45);
+
+        try (RenderBatcher batcher = new RenderBatcher(1, false)) {
+            Map<ShaderSet, List<Renderable>> buckets =
+                    batcher.cull(Arrays.asList(rotated), FRUSTUM);
+
+            assertEquals(Arrays.asList(rotated), buckets.get(shaderSet));
+        }
+    }
+
+    /** Test that parallel grouping gives the same result as serial, in the same order. */
+    @Test
+    public void parallelMatchesSerial() {
+        ShaderSet[] shaderSets = {new ShaderSet(), new ShaderSet(), new ShaderSet()};
+        List<Renderable> renderables = new ArrayList<>();
+        List<List<Renderable>> expected = new ArrayList<>();
+
+        for (int i = 0; i < shaderSets.length; i++) {
+            expected.add(new ArrayList<>());
+        }
+
+        for (int i = 0; i < RenderBatcher.CHUNK_SIZE * 5 + 7; i++) {
+            boolean visible = i % 4 != 0;
+            Renderable renderable = create(shaderSets[i % 3], visible ? 0 : 50);
+            renderables.add(renderable);
+
+            if (visible) {
+                expected.get(i % 3).add(renderable);
+            }
+        }
+
+        try (RenderBatcher serial = new RenderBatcher(1, false);
+                RenderBatcher parallel = new RenderBatcher(4, false)) {
+            Map<ShaderSet, List<Renderable>> serialBuckets = serial.cull(renderables, FRUSTUM);
+            Map<ShaderSet, List<Renderable>> parallelBuckets = parallel.cull(renderables, FRUSTUM);
+
+            for (int i = 0; i < shaderSets.length; i++) {
+                assertEquals(expected.get(i), serialBuckets.get(shaderSets[i]));
+                assertEquals(expected.get(i), parallelBuckets.get(shaderSets[i]));
+            }
+
+            // Shader sets that went out of view get dropped a frame later
+            List<Renderable> single = renderables.subList(1, 2);
+            parallel.cull(single, FRUSTUM);
+            parallelBuckets = parallel.cull(single, FRUSTUM);
+
+            assertEquals(1, parallelBuckets.size());
+            assertEquals(single, parallelBuckets.get(shaderSets[1]));
+            assertNull(parallelBuckets.get(shaderSets[0]));
+        }
+    }
+
+    /** Test that culling through the spatial index matches culling every object, as they move. */
+    @Test
+    public void indexMatchesLinear() {
+        ShaderSet shaderSet = new ShaderSet();
+        List<Renderable> renderables = new ArrayList<>();
+
+        for (int i = 0; i < RenderBatcher.CHUNK_SIZE * 2; i++) {
+            renderables.add(create(shaderSet, i % 40 - 20));
+        }
+
+        try (RenderBatcher linear = new RenderBatcher(1, false);
+                RenderBatcher indexed = new RenderBatcher(4, true)) {
+            for (int frame = 0; frame < 3; frame++) {
+                List<Renderable> expected =
+                        new ArrayList<>(linear.cull(renderables, FRUSTUM).get(shaderSet));
+
+                assertEquals(expected, indexed.cull(renderables, FRUSTUM).get(shaderSet));
+
+                for (int i = frame; i < renderables.size(); i += 3) {
+                    renderables
+                            .get(i)
+                            .getGameObject()
+                            .getTransform(Transform3D.class)
+                            .translate(7, 0, 0);
+                }
+            }
+
+            // Objects without meshes leave the index
+            Renderable removed = renderables.get(10);
+            removed.setMesh(null);
+            assertNull(removed.getSpatialEntry());
+        }
+    }
+}
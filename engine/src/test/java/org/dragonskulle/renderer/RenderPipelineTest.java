@@ -0,0 +1,216 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.dragonskulle.components.Transform3D;
+import org.dragonskulle.core.GameObject;
+import org.dragonskulle.renderer.components.Camera;
+import org.dragonskulle.renderer.components.Light;
+import org.dragonskulle.renderer.components.Renderable;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+/** Unit tests for snapshot extraction, and hand-over in {@link RenderPipeline}. */
+public class RenderPipelineTest {
+    private static final int SIZE = 100;
+
+    /** Shader set with just a matrix per instance. */
+    private static class MatrixShaderSet extends ShaderSet {
+        MatrixShaderSet() {
+            mVertexBindingDescription = BindingDescription.instancedWithMatrix(0);
+        }
+    }
+
+    /** Backend that records what it draws, without any GPU. */
+    private static class FakeBackend implements IRenderBackend {
+        /** Released once the first frame may finish drawing. */
+        private final CountDownLatch mRelease;
+        /** Error to throw instead of drawing, if any. */
+        private final RendererException mError;
+
+        /** Frames drawn so far. */
+        private final List<Integer> mFrames = Collections.synchronizedList(new ArrayList<>());
+        /** Object positions of the frames drawn so far. */
+        private final List<Vector3f> mPositions = Collections.synchronizedList(new ArrayList<>());
+        /** Thread the frames were drawn on. */
+        private volatile Thread mThread;
+
+        /**
+         * Create a fake backend.
+         *
+         * @param release latch to wait on before drawing.
+         * @param error error to throw, {@code null} to draw normally.
+         */
+        FakeBackend(CountDownLatch release, RendererException error) {
+            mRelease = release;
+            mError = error;
+        }
+
+        @Override
+        public void render(RenderSnapshot snapshot) throws RendererException {
+            mThread = Thread.currentThread();
+
+            try {
+                mRelease.await();
+            } catch (InterruptedException e) {
+                throw new RendererException("Interrupted");
+            }
+
+            if (mError != null) {
+                throw mError;
+            }
+
+            mFrames.add(snapshot.getFrame());
+
+            for (Renderable renderable : snapshot.getRenderables()) {
+                mPositions.add(position(renderable));
+            }
+        }
+    }
+
+    /**
+     * Read back the position an object's instance data places it at.
+     *
+     * @param renderable object to read.
+     * @return position of the object.
+     */
+    private static Vector3f position(Renderable renderable) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64).order(ByteOrder.nativeOrder());
+        renderable.writeVertexInstanceData(0, 0, buffer, Collections.emptyList());
+        return new Matrix4f().set(buffer).getTranslation(new Vector3f());
+    }
+
+    /**
+     * Create a renderable object.
+     *
+     * @param shaderSet shader set of the object's material.
+     * @param y Y position of the object, which is forward from the camera.
+     * @return the renderable of the object.
+     */
+    private static Renderable create(ShaderSet shaderSet, float y) {
+        Renderable renderable = new Renderable(Mesh.HEXAGON, new TestMaterial(shaderSet));
+        GameObject object = new GameObject("renderable");
+        object.getTransform(Transform3D.class).setPosition(0, y, 0);
+        object.addComponent(renderable);
+        return renderable;
+    }
+
+    /**
+     * Create a camera at the origin, looking forward.
+     *
+     * @return the camera.
+     */
+    private static Camera camera() {
+        Camera camera = new Camera();
+        new GameObject("camera").addComponent(camera);
+        return camera;
+    }
+
+    /**
+     * Create an extractor that runs everything on the calling thread.
+     *
+     * @return the extractor.
+     */
+    private static RenderSnapshotExtractor extractor() {
+        return new RenderSnapshotExtractor(new RenderBatcher(1, false));
+    }
+
+    /** Test that snapshots hold culled copies, which do not change with the originals. */
+    @Test
+    public void extractsFrozenCopies() {
+        ShaderSet shaderSet = new MatrixShaderSet();
+        Renderable visible = create(shaderSet, 5);
+        Renderable behind = create(shaderSet, -5);
+
+        Light light = new Light();
+        light.setIntensity(3);
+        new GameObject("light").addComponent(light);
+
+        Camera camera = camera();
+        Vector3f camPosition = new Vector3f();
+        float depth = visible.getDepth(camPosition, new Vector3f());
+
+        RenderSnapshot snapshot = new RenderSnapshot();
+
+        try (RenderSnapshotExtractor extractor = extractor()) {
+            extractor.extract(
+                    snapshot,
+                    camera,
+                    Arrays.asList(visible, behind),
+                    Arrays.asList(light),
+                    SIZE,
+                    SIZE);
+        }
+
+        assertEquals(1, snapshot.getFrame());
+        assertEquals(1, snapshot.getRenderables().size());
+        assertEquals(1, snapshot.getLights().size());
+
+        Renderable copy = snapshot.getRenderables().get(0);
+        assertNotSame(visible, copy);
+        assertSame(visible.getMesh(), copy.getMesh());
+        assertSame(visible.getMaterial(), copy.getMaterial());
+        assertNotSame(light, snapshot.getLights().get(0));
+        assertEquals(3f, snapshot.getLights().get(0).getIntensity(), 0f);
+
+        visible.getGameObject().getTransform(Transform3D.class).setPosition(1, 5, 0);
+
+        assertEquals(new Vector3f(0, 5, 0), position(copy));
+        assertEquals(depth, copy.getDepth(camPosition, new Vector3f()), 0f);
+    }
+
+    /** Test that frames are drawn on the render thread, while the next one gets extracted. */
+    @Test
+    public void rendersWhileNextFrameIsExtracted() throws RendererException {
+        ShaderSet shaderSet = new MatrixShaderSet();
+        Renderable renderable = create(shaderSet, 5);
+        Camera camera = camera();
+        List<Renderable> renderables = Arrays.asList(renderable);
+        List<Light> lights = new ArrayList<>();
+
+        CountDownLatch release = new CountDownLatch(1);
+        FakeBackend backend = new FakeBackend(release, null);
+
+        try (RenderPipeline pipeline = new RenderPipeline(backend, extractor())) {
+            pipeline.submit(camera, renderables, lights, SIZE, SIZE);
+
+            // The first frame is still being drawn, which does not stop the next one changing
+            renderable.getGameObject().getTransform(Transform3D.class).setPosition(0, 6, 0);
+            assertTrue(backend.mFrames.isEmpty());
+
+            release.countDown();
+            pipeline.submit(camera, renderables, lights, SIZE, SIZE);
+            pipeline.waitIdle();
+
+            assertEquals(Arrays.asList(1, 2), backend.mFrames);
+            assertEquals(
+                    Arrays.asList(new Vector3f(0, 5, 0), new Vector3f(0, 6, 0)),
+                    backend.mPositions);
+            assertNotSame(Thread.currentThread(), backend.mThread);
+        }
+    }
+
+    /** Test that errors of the render thread are thrown on the calling thread. */
+    @Test(expected = RendererException.class)
+    public void errorsReachCaller() throws RendererException {
+        CountDownLatch release = new CountDownLatch(0);
+        FakeBackend backend = new FakeBackend(release, new RendererException("Failed"));
+
+        try (RenderPipeline pipeline = new RenderPipeline(backend, extractor())) {
+            pipeline.submit(camera(), new ArrayList<>(), new ArrayList<>(), SIZE, SIZE);
+            pipeline.waitIdle();
+        }
+    }
+}
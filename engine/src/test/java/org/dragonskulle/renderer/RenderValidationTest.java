@@ -0,0 +1,133 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import static org.dragonskulle.utils.Env.envBool;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.dragonskulle.components.Component;
+import org.dragonskulle.components.IFrameUpdate;
+import org.dragonskulle.components.Transform3D;
+import org.dragonskulle.core.Engine;
+import org.dragonskulle.core.GameObject;
+import org.dragonskulle.core.Scene;
+import org.dragonskulle.input.Bindings;
+import org.dragonskulle.renderer.components.Camera;
+import org.dragonskulle.renderer.components.Light;
+import org.dragonskulle.renderer.components.Renderable;
+import org.dragonskulle.renderer.materials.PBRMaterial;
+import org.dragonskulle.settings.Settings;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Renders a scene on a real Vulkan device with the validation layers on.
+ *
+ * <p>The test only runs with {@code VULKAN_TESTS=true} and {@code DEBUG_RENDERER=true}, since it
+ * opens a window. On machines without a GPU, it runs on lavapipe under a virtual X server:
+ *
+ * <pre>
+ * xvfb-run -a env VULKAN_TESTS=true DEBUG_RENDERER=true TARGET_GPU=llvm \
+ *     RENDER_SECONDARY_COMMANDS=true mvn -pl engine test -Dtest=RenderValidationTest
+ * </pre>
+ *
+ * <p>Running it with {@code RENDER_SECONDARY_COMMANDS} set to both {@code true}, and {@code false}
+ * checks the draws recorded on worker threads, and the ones recorded inline.
+ */
+public class RenderValidationTest {
+    /** Frames to render before stopping. */
+    private static final int FRAMES = 120;
+    /** Number of objects, each with its own mesh, so that each gets its own draw command. */
+    private static final int OBJECTS = 512;
+
+    /** Stops the engine after {@link #FRAMES} frames. */
+    private static class FrameCounter extends Component implements IFrameUpdate {
+        private int mFrames = 0;
+        /** Largest number of secondary command buffers a frame was recorded into. */
+        private int mMaxSecondaryBuffers = 0;
+
+        @Override
+        public void frameUpdate(float deltaTime) {
+            Renderer renderer = Engine.getInstance().getGLFWState().getRenderer();
+            int secondaryBuffers = renderer.getSecondaryBufferCount();
+            mMaxSecondaryBuffers = Math.max(mMaxSecondaryBuffers, secondaryBuffers);
+
+            if (++mFrames >= FRAMES) {
+                Engine.getInstance().stop();
+            }
+        }
+
+        @Override
+        protected void onDestroy() {}
+    }
+
+    /**
+     * Create a cube mesh, moved by an offset, so that no 2 cubes share their mesh.
+     *
+     * @param offset offset of the vertices.
+     * @return the mesh.
+     */
+    private static Mesh cube(float offset) {
+        Vertexc[] vertices = Mesh.CUBE.getVertices();
+        Vertexc[] moved = new Vertexc[vertices.length];
+
+        for (int i = 0; i < vertices.length; i++) {
+            Vertexc vertex = vertices[i];
+            moved[i] =
+                    new Vertex(
+                            new Vector3f(vertex.getPos()).add(offset, 0, 0),
+                            vertex.getNormal(),
+                            vertex.getColor(),
+                            vertex.getUv());
+        }
+
+        return new Mesh(moved, Mesh.CUBE.getIndices());
+    }
+
+    /** Test that rendering reports no validation errors. */
+    @Test
+    public void rendersWithoutValidationErrors() {
+        Assume.assumeTrue(envBool("VULKAN_TESTS", false));
+        Assume.assumeTrue(Renderer.DEBUG_MODE);
+
+        Scene scene = new Scene("validation");
+        FrameCounter counter = new FrameCounter();
+
+        scene.addRootObject(
+                new GameObject(
+                        "camera",
+                        new Transform3D(),
+                        (go) -> {
+                            go.addComponent(new Camera());
+                            go.addComponent(counter);
+                        }));
+
+        scene.addRootObject(new GameObject("light", (go) -> go.addComponent(new Light())));
+
+        for (int i = 0; i < OBJECTS; i++) {
+            float x = (i % 32) - 16f;
+            float z = (i / 32) - 8f;
+            Vector4f colour = new Vector4f((i % 7) / 7f, (i % 5) / 5f, (i % 3) / 3f, 1f);
+            Renderable renderable = new Renderable(cube(i * 0.001f), new PBRMaterial(colour));
+
+            scene.addRootObject(
+                    new GameObject(
+                            "cube",
+                            new Transform3D(x, 30f, z),
+                            (go) -> go.addComponent(renderable)));
+        }
+
+        Engine.getInstance().loadPresentationScene(scene);
+        Engine.getInstance().start("Render validation", new Bindings(), Settings.getInstance());
+
+        assertEquals(FRAMES, counter.mFrames);
+        assertEquals(0, Renderer.getValidationErrorCount());
+
+        // Without worker threads, everything is recorded inline
+        if (Renderer.SECONDARY_COMMANDS && Runtime.getRuntime().availableProcessors() > 1) {
+            assertTrue(counter.mMaxSecondaryBuffers > 1);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.dragonskulle.core.Resource;
+import org.dragonskulle.core.ResourceManager;
+import org.dragonskulle.renderer.ShaderBuf.MacroDefinition;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for the on-disk SPIR-V cache. */
+public class ShaderCacheTest {
+    private static final MacroDefinition[] NO_MACROS = new MacroDefinition[0];
+
+    private Path mDirectory;
+    private ShaderCache mCache;
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = Files.createTempDirectory("shader_cache_test");
+        mCache = new ShaderCache(mDirectory);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.toFile().delete();
+    }
+
+    /**
+     * Read shader source from test resources.
+     *
+     * @param name name of the shader file.
+     * @return the source.
+     */
+    private static String source(String name) {
+        try (Resource<String> res = ResourceManager.getResource(String.class, "shaders/" + name)) {
+            assertNotNull(res);
+            return res.get();
+        }
+    }
+
+    /**
+     * Copy out the shader's SPIR-V.
+     *
+     * @param shader shader to copy.
+     * @return SPIR-V bytes.
+     */
+    private static byte[] bytes(ShaderBuf shader) {
+        ByteBuffer buf = shader.getBuffer();
+        byte[] ret = new byte[buf.remaining()];
+        buf.duplicate().get(ret);
+        return ret;
+    }
+
+    /** Test that a second compile is served from cache, with identical output. */
+    @Test
+    public void secondCompileHitsCache() {
+        String src = source("simple.vert");
+
+        ShaderBuf first =
+                ShaderBuf.compileShader(src, "simple", ShaderKind.VERTEX_SHADER, NO_MACROS, mCache);
+        assertNotNull(first);
+        assertEquals(0, mCache.getHits());
+        assertEquals(1, mCache.getMisses());
+
+        ShaderBuf second =
+                ShaderBuf.compileShader(src, "simple", ShaderKind.VERTEX_SHADER, NO_MACROS, mCache);
+        assertNotNull(second);
+        assertEquals(1, mCache.getHits());
+
+        assertArrayEquals(bytes(first), bytes(second));
+
+        first.free();
+        second.free();
+        assertNull(second.getBuffer());
+    }
+
+    /** Test that every input of the compiler changes the key. */
+    @Test
+    public void keyCoversInputs() {
+        String key = ShaderCache.computeKey("void main() {}", ShaderKind.VERTEX_SHADER, NO_MACROS);
+
+        assertEquals(
+                key, ShaderCache.computeKey("void main() {}", ShaderKind.VERTEX_SHADER, NO_MACROS));
+        assertNotEquals(
+                key,
+                ShaderCache.computeKey("void main() { }", ShaderKind.VERTEX_SHADER, NO_MACROS));
+        assertNotEquals(
+                key,
+                ShaderCache.computeKey("void main() {}", ShaderKind.FRAGMENT_SHADER, NO_MACROS));
+        assertNotEquals(
+                key,
+                ShaderCache.computeKey(
+                        "void main() {}",
+                        ShaderKind.VERTEX_SHADER,
+                        new MacroDefinition[] {new MacroDefinition("A", "1")}));
+        assertNotEquals(
+                ShaderCache.computeKey(
+                        "",
+                        ShaderKind.VERTEX_SHADER,
+                        new MacroDefinition[] {new MacroDefinition("AB", "")}),
+                ShaderCache.computeKey(
+                        "",
+                        ShaderKind.VERTEX_SHADER,
+                        new MacroDefinition[] {new MacroDefinition("A", "B")}));
+    }
+
+    /** Test that corrupt entries are discarded, instead of being handed to Vulkan. */
+    @Test
+    public void corruptEntryIgnored() throws Exception {
+        String key = ShaderCache.computeKey("garbage", ShaderKind.VERTEX_SHADER, NO_MACROS);
+
+        mCache.store(key, ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5, 6, 7}));
+
+        assertNull(mCache.load(key));
+        assertEquals(1, mCache.getMisses());
+        assertEquals(0, mDirectory.toFile().listFiles().length);
+    }
+}
@@ -0,0 +1,43 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.renderer;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.dragonskulle.renderer.components.Light;
+import org.dragonskulle.renderer.materials.IMaterial;
+import org.joml.Matrix4fc;
+
+/**
+ * Material that only has a shader set, used to test batching without any GPU resources.
+ *
+ * <p>If the shader set has per-instance data, only the matrix is written.
+ */
+class TestMaterial implements IMaterial {
+    private final ShaderSet mShaderSet;
+
+    TestMaterial(ShaderSet shaderSet) {
+        mShaderSet = shaderSet;
+    }
+
+    @Override
+    public ShaderSet getShaderSet() {
+        return mShaderSet;
+    }
+
+    @Override
+    public int writeVertexInstanceData(
+            int offset, ByteBuffer buffer, Matrix4fc matrix, List<Light> lights) {
+        if (mShaderSet.getVertexBindingDescription() == null) {
+            return offset;
+        }
+        return ShaderSet.writeMatrix(offset, buffer, matrix);
+    }
+
+    @Override
+    public SampledTexture[] getFragmentTextures() {
+        return new SampledTexture[0];
+    }
+
+    @Override
+    public void free() {}
+}
@@ -0,0 +1,146 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.ui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.dragonskulle.core.GameObject;
+import org.dragonskulle.core.Scene;
+import org.dragonskulle.renderer.SampledTexture;
+import org.dragonskulle.renderer.components.Renderable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures batching of a full HUD, made of panels of buttons with icons.
+ *
+ * <p>Run with {@code java -cp <test classpath> org.openjdk.jmh.Main UIBatch}.
+ *
+ * @author DragonSkulle
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UIBatchBenchmark {
+
+    /** Number of panels, each with 8 buttons, and their icons. */
+    @Param({"4", "16"})
+    public int mPanelCount;
+
+    private final List<Renderable> mRenderables = new ArrayList<>();
+    private final List<Renderable> mOutput = new ArrayList<>();
+    private Scene.SceneOverride mSceneOverride;
+    private UIBatcher mBatcher;
+    private TransformUI mMoving;
+    private float mOffset = 0f;
+
+    /** Build the HUD, and batch it once. */
+    @Setup
+    public void setup() {
+        mSceneOverride = new Scene.SceneOverride(new Scene("hud"));
+
+        SampledTexture button = new SampledTexture("ui/wide_button.png");
+        SampledTexture icon = new SampledTexture("error.png");
+
+        for (int p = 0; p < mPanelCount; p++) {
+            float panelX = (float) p / mPanelCount;
+            GameObject panel = new GameObject("panel", new TransformUI(false));
+            panel.getTransform(TransformUI.class)
+                    .setParentAnchor(panelX, 0f, panelX + 1f / mPanelCount, 1f);
+            UIRenderable background = new UIRenderable();
+            panel.addComponent(background);
+            mRenderables.add(background);
+
+            for (int b = 0; b < 8; b++) {
+                float y = b / 8f;
+                panel.buildChild(
+                        "button",
+                        new TransformUI(false),
+                        (go) -> {
+                            go.getTransform(TransformUI.class)
+                                    .setParentAnchor(0.1f, y, 0.9f, y + 0.1f);
+                            UIRenderable rend = new UIRenderable(button);
+                            go.addComponent(rend);
+                            mRenderables.add(rend);
+
+                            go.buildChild(
+                                    "icon",
+                                    new TransformUI(true),
+                                    (child) -> {
+                                        child.getTransform(TransformUI.class)
+                                                .setParentAnchor(0f, 0f, 0.2f, 1f);
+                                        UIRenderable iconRend = new UIRenderable(icon);
+                                        child.addComponent(iconRend);
+                                        mRenderables.add(iconRend);
+                                    });
+                        });
+            }
+
+            mMoving = panel.getTransform(TransformUI.class);
+        }
+
+        mBatcher = new UIBatcher();
+        mBatcher.batch(mRenderables, mOutput);
+    }
+
+    /** Free the batches. */
+    @TearDown
+    public void tearDown() {
+        mBatcher.free();
+        mSceneOverride.close();
+    }
+
+    /**
+     * Batch the HUD, while nothing changes.
+     *
+     * @return number of batches, so that batching is not optimised away.
+     */
+    @Benchmark
+    public int still() {
+        mOutput.clear();
+        mBatcher.batch(mRenderables, mOutput);
+        return mBatcher.getBatchCount();
+    }
+
+    /**
+     * Batch the HUD, while one of the panels slides.
+     *
+     * @return number of batches, so that batching is not optimised away.
+     */
+    @Benchmark
+    public int slidingPanel() {
+        mOffset = mOffset > 0.1f ? 0f : mOffset + 0.001f;
+        mMoving.setPosition(mOffset, 0f);
+        mOutput.clear();
+        mBatcher.batch(mRenderables, mOutput);
+        return mBatcher.getBatchCount();
+    }
+
+    /**
+     * Batch the HUD from scratch, as on the first frame it is shown.
+     *
+     * @return number of batches, so that batching is not optimised away.
+     */
+    @Benchmark
+    public int fromScratch() {
+        UIBatcher batcher = new UIBatcher();
+        mOutput.clear();
+        batcher.batch(mRenderables, mOutput);
+        int count = batcher.getBatchCount();
+        batcher.free();
+        return count;
+    }
+}
@@ -0,0 +1,178 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.ui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.dragonskulle.core.GameObject;
+import org.dragonskulle.core.Scene;
+import org.dragonskulle.renderer.Mesh;
+import org.dragonskulle.renderer.SampledTexture;
+import org.dragonskulle.renderer.Vertexc;
+import org.dragonskulle.renderer.components.Renderable;
+import org.joml.Vector4f;
+import org.junit.Test;
+
+/** Unit tests for {@link UIBatcher}. */
+public class UIBatcherTest {
+    /**
+     * Add a UI element under an object.
+     *
+     * @param parent object to add the element under.
+     * @param renderable the element.
+     * @param startX left anchor of the element.
+     * @param endX right anchor of the element.
+     */
+    private static void addChild(
+            GameObject parent, UIRenderable renderable, float startX, float endX) {
+        parent.buildChild(
+                "child",
+                new TransformUI(false),
+                (go) -> {
+                    go.getTransform(TransformUI.class).setParentAnchor(startX, 0f, endX, 0.5f);
+                    go.addComponent(renderable);
+                });
+    }
+
+    /** Test that elements sharing a texture are merged into screen space vertices. */
+    @Test
+    public void mergesElements() {
+        Scene scene = new Scene("ui");
+
+        try (Scene.SceneOverride __ = new Scene.SceneOverride(scene)) {
+            UIRenderable back = new UIRenderable(new Vector4f(1f, 0f, 0f, 1f));
+            UIRenderable front = new UIRenderable();
+
+            // Without a camera, the root covers the whole [-1; 1] screen
+            GameObject root = new GameObject("root", new TransformUI(false));
+            root.addComponent(back);
+            addChild(root, front, 0f, 0.5f);
+
+            Renderable other = new Renderable();
+            List<Renderable> renderables = Arrays.asList(front, other, back);
+            List<Renderable> output = new ArrayList<>();
+            UIBatcher batcher = new UIBatcher();
+
+            batcher.batch(renderables, output);
+
+            assertEquals(1, batcher.getBatchCount());
+            assertEquals(Arrays.asList(other, batcher.getBatch(0)), output);
+
+            Mesh mesh = batcher.getBatch(0).getMesh();
+            assertEquals(8, mesh.getVertices().length);
+            assertEquals(12, mesh.getIndices().length);
+            assertEquals(-1f, mesh.getBBMin().x(), 0.0001f);
+            assertEquals(-1f, mesh.getBBMin().y(), 0.0001f);
+            assertEquals(1f, mesh.getBBMax().x(), 0.0001f);
+            assertEquals(1f, mesh.getBBMax().y(), 0.0001f);
+
+            // The back element is drawn first, and has its colour baked in
+            Vertexc first = mesh.getVertices()[0];
+            assertEquals(new Vector4f(1f, 0f, 0f, 1f), first.getColor());
+
+            // Nothing changed, so nothing gets rebuilt
+            output.clear();
+            batcher.batch(renderables, output);
+            assertEquals(0, batcher.getRebuiltCount());
+            assertSame(mesh, batcher.getBatch(0).getMesh());
+
+            back.getMaterial(UIMaterial.class).getColour().set(0f, 1f, 0f, 1f);
+            output.clear();
+            batcher.batch(renderables, output);
+            assertEquals(1, batcher.getRebuiltCount());
+            assertEquals(new Vector4f(0f, 1f, 0f, 1f), mesh.getVertices()[0].getColor());
+        }
+    }
+
+    /** Test that a recoloured element only replaces its own vertices. */
+    @Test
+    public void updatesChangedElementInPlace() {
+        Scene scene = new Scene("ui");
+
+        try (Scene.SceneOverride __ = new Scene.SceneOverride(scene)) {
+            GameObject root = new GameObject("root", new TransformUI(false));
+            UIRenderable back = new UIRenderable();
+            root.addComponent(back);
+
+            List<Renderable> renderables = new ArrayList<>();
+            renderables.add(back);
+
+            UIRenderable hovered = null;
+
+            for (int i = 0; i < 4; i++) {
+                UIRenderable child = new UIRenderable();
+                addChild(root, child, i * 0.25f, i * 0.25f + 0.2f);
+                renderables.add(child);
+                hovered = child;
+            }
+
+            List<Renderable> output = new ArrayList<>();
+            UIBatcher batcher = new UIBatcher();
+            batcher.batch(renderables, output);
+
+            assertEquals(1, batcher.getBatchCount());
+            Mesh mesh = batcher.getBatch(0).getMesh();
+            Vertexc[] before = mesh.getVertices();
+            int[] indices = mesh.getIndices();
+            assertEquals(20, before.length);
+
+            hovered.getMaterial(UIMaterial.class).getColour().set(0.5f, 0.5f, 0.5f, 1f);
+            output.clear();
+            batcher.batch(renderables, output);
+
+            assertEquals(0, batcher.getRebuiltCount());
+            assertEquals(1, batcher.getUpdatedCount());
+            assertSame(mesh, batcher.getBatch(0).getMesh());
+            assertSame(indices, mesh.getIndices());
+
+            // The hovered element is drawn last, thus its vertices are the last four
+            Vertexc[] after = mesh.getVertices();
+            for (int i = 0; i < 16; i++) {
+                assertSame(before[i], after[i]);
+            }
+            for (int i = 16; i < 20; i++) {
+                assertEquals(new Vector4f(0.5f, 0.5f, 0.5f, 1f), after[i].getColor());
+            }
+        }
+    }
+
+    /** Test that only overlapping elements with different textures split batches. */
+    @Test
+    public void splitsOnOverlap() {
+        Scene scene = new Scene("ui");
+
+        try (Scene.SceneOverride __ = new Scene.SceneOverride(scene)) {
+            UIRenderable back = new UIRenderable();
+            UIRenderable image = new UIRenderable(new SampledTexture("error.png"));
+            UIRenderable front = new UIRenderable();
+
+            GameObject root = new GameObject("root", new TransformUI(false));
+            root.addComponent(back);
+            addChild(root, image, 0f, 0.25f);
+            addChild(root, front, 0.5f, 0.75f);
+
+            List<Renderable> renderables = Arrays.asList(back, image, front);
+            List<Renderable> output = new ArrayList<>();
+            UIBatcher batcher = new UIBatcher();
+
+            // The front element does not overlap the image, so it joins the back one
+            batcher.batch(renderables, output);
+            assertEquals(2, batcher.getBatchCount());
+            assertEquals(2, batcher.getBatch(0).getItemCount());
+            assertTrue(
+                    batcher.getBatch(0).getDepth(null, null)
+                            > batcher.getBatch(1).getDepth(null, null));
+
+            // Once it does, it has to be drawn after the image
+            front.getGameObject().getTransform(TransformUI.class).setParentAnchor(0f, 0f, 1f, 1f);
+            output.clear();
+            batcher.batch(renderables, output);
+            assertEquals(3, batcher.getBatchCount());
+            assertEquals(1, batcher.getBatch(2).getItemCount());
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.ui;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import org.dragonskulle.core.GameObject;
+import org.dragonskulle.core.Scene;
+import org.junit.Test;
+
+/** Unit tests for {@link UIHitIndex}. */
+public class UIHitIndexTest {
+    /** Test that the deepest element under the cursor is found, and follows its transform. */
+    @Test
+    public void findsTopMostElement() {
+        Scene scene = new Scene("ui");
+
+        try (Scene.SceneOverride __ = new Scene.SceneOverride(scene)) {
+            UIRenderable back = new UIRenderable();
+            UIRenderable front = new UIRenderable();
+
+            // Without a camera, the root covers the whole [-1; 1] screen
+            GameObject root = new GameObject("back", new TransformUI(false));
+            root.addComponent(back);
+            root.buildChild(
+                    "front",
+                    new TransformUI(false),
+                    (go) -> {
+                        go.getTransform(TransformUI.class).setParentAnchor(0f, 0f, 0.5f, 0.5f);
+                        go.addComponent(front);
+                    });
+
+            List<UIRenderable> renderables = Arrays.asList(back, front);
+            UIHitIndex index = new UIHitIndex();
+
+            assertTrue(index.update(renderables, 0, 1f));
+            assertSame(front, index.query(-0.5f, -0.5f));
+            assertSame(back, index.query(0.5f, 0.5f));
+            assertNull(index.query(1.5f, 0f));
+
+            // Nothing changed
+            assertFalse(index.update(renderables, 0, 1f));
+
+            TransformUI frontTransform = front.getGameObject().getTransform(TransformUI.class);
+            frontTransform.setParentAnchor(0.5f, 0.5f, 1f, 1f);
+
+            assertTrue(index.update(renderables, 0, 1f));
+            assertSame(back, index.query(-0.5f, -0.5f));
+            assertSame(front, index.query(0.75f, 0.75f));
+
+            // Elements that are not hoverable do not obstruct others
+            front.setHoverable(false);
+            assertSame(back, index.query(0.75f, 0.75f));
+            front.setHoverable(true);
+
+            // Elements no longer in the list are removed
+            assertTrue(index.update(Arrays.asList(back), 1, 1f));
+            assertSame(back, index.query(0.75f, 0.75f));
+        }
+    }
+}
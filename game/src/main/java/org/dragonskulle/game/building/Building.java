@@ -261,6 +261,8 @@ public class Building extends NetworkableComponent implements IOnAwake, IOnStart
         mDefenceMesh = defenceMesh.getReference();
         mAttackMesh = attackMesh.getReference();
         mGenerationMesh = generationMesh.getReference();
+
+        BuildingLod.assignBuilding(getGameObject());
     }
 
     /** Initialise the building only when it is properly on the map and the tile is synced. */
@@ -326,6 +328,7 @@ public class Building extends NetworkableComponent implements IOnAwake, IOnStart
                             gltf.getDefaultScene().findRootObject("capital_building"));
 
             getGameObject().addChild(capital_mesh);
+            BuildingLod.assignBuilding(capital_mesh);
             capital_mesh.setEnabled(true);
             mVisibleMesh = capital_mesh.getReference();
             return;
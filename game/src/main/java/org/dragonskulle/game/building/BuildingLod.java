@@ -0,0 +1,120 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.game.building;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.dragonskulle.core.GameObject;
+import org.dragonskulle.core.Reference;
+import org.dragonskulle.renderer.Mesh;
+import org.dragonskulle.renderer.MeshLod;
+import org.dragonskulle.renderer.MeshSimplifier;
+import org.dragonskulle.renderer.components.Renderable;
+
+/**
+ * Gives building, and prop meshes levels of detail, so that zooming out over the whole map does not
+ * draw every one of them in full detail.
+ *
+ * @author DragonSkulle
+ *     <p>Lower levels come cooked with the template meshes, or are generated from them the first
+ *     time they are seen, and are shared by every object using the same mesh afterwards. Levels are dropped once their mesh is
+ *     no longer used by anything, like when the templates get freed, or reloaded. The least
+ *     detailed level is an impostor. Buildings keep their impostors no matter how far away they
+ *     are, since they matter for gameplay, while props eventually stop being drawn.
+ */
+public class BuildingLod {
+    /** Screen size below which the full mesh is replaced with the first simplified one. */
+    private static final float DETAILED_SIZE = 0.08f;
+    /** Screen size below which the second simplified mesh is used. */
+    private static final float SIMPLIFIED_SIZE = 0.04f;
+    /** Screen size below which impostors are used. */
+    private static final float IMPOSTOR_SIZE = 0.015f;
+    /** Screen size below which props are not drawn. */
+    private static final float PROP_CULL_SIZE = 0.004f;
+
+    /** Generated levels of building meshes. */
+    private static final Map<Mesh, MeshLod> sBuildingLods = new IdentityHashMap<>();
+    /** Generated levels of prop meshes. */
+    private static final Map<Mesh, MeshLod> sPropLods = new IdentityHashMap<>();
+
+    private BuildingLod() {}
+
+    /**
+     * Give all renderables of a building levels of detail.
+     *
+     * @param root root object of the building.
+     */
+    public static void assignBuilding(GameObject root) {
+        assign(root, sBuildingLods, 0);
+    }
+
+    /**
+     * Give all renderables of props levels of detail.
+     *
+     * @param root root object of the props.
+     */
+    public static void assignProps(GameObject root) {
+        assign(root, sPropLods, PROP_CULL_SIZE);
+    }
+
+    /**
+     * Give all renderables under an object levels of detail.
+     *
+     * @param root root object.
+     * @param cache generated levels of each mesh.
+     * @param impostorMinSize screen size below which impostors are not drawn.
+     */
+    private static void assign(GameObject root, Map<Mesh, MeshLod> cache, float impostorMinSize) {
+        // Renderables and templates reference their meshes, thus unreferenced ones are gone
+        cache.keySet().removeIf(mesh -> mesh.getRefCount() <= 0);
+
+        List<Reference<Renderable>> renderables = new ArrayList<>();
+        root.getComponents(Renderable.class, renderables);
+        root.getComponentsInChildren(Renderable.class, renderables);
+
+        for (Reference<Renderable> ref : renderables) {
+            if (!Reference.isValid(ref)) {
+                continue;
+            }
+
+            Renderable renderable = ref.get();
+            Mesh mesh = renderable.getMesh();
+
+            if (mesh == null || renderable.getLod() != null) {
+                continue;
+            }
+
+            MeshLod lod = cache.computeIfAbsent(mesh, m -> generate(m, impostorMinSize));
+            renderable.setLod(lod);
+        }
+    }
+
+    /**
+     * Generate levels of detail of a mesh.
+     *
+     * @param mesh most detailed mesh.
+     * @param impostorMinSize screen size below which impostors are not drawn.
+     * @return levels of detail.
+     */
+    private static MeshLod generate(Mesh mesh, float impostorMinSize) {
+        MeshLod.Builder builder = new MeshLod.Builder().level(mesh, DETAILED_SIZE);
+        Mesh[] levels = MeshSimplifier.getLevels(mesh);
+        int simplifiedCount = levels.length - 1;
+        Mesh previous = mesh;
+
+        for (int i = 0; i < simplifiedCount; i++) {
+            if (levels[i] == null) {
+                continue;
+            }
+
+            builder.level(levels[i], i == 0 ? SIMPLIFIED_SIZE : IMPOSTOR_SIZE);
+            previous = levels[i];
+        }
+
+        // Without a simpler impostor, the last simplified level stays until objects get culled
+        Mesh impostor = levels[simplifiedCount] != null ? levels[simplifiedCount] : previous;
+
+        return builder.level(impostor, impostorMinSize).build();
+    }
+}
@@ -82,6 +82,7 @@ public class BuildingProps extends NetworkableComponent
     public void onStart() {
         mStatType = StatType.valueOf(mStat);
         getGameObject().getComponents(TileProp.class, mProps);
+        BuildingLod.assignProps(getGameObject());
 
         NetworkObject nob = getNetworkManager().getObjectById(mBuildingNetId.get());
 
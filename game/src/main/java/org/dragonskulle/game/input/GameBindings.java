@@ -49,6 +49,7 @@ public class GameBindings extends Bindings {
         addBinding(GLFW.GLFW_MOUSE_BUTTON_MIDDLE, GameActions.MIDDLE_CLICK);
 
         addBinding(GLFW.GLFW_KEY_F3, RenderDebug.DEBUG_ACTION);
+        addBinding(GLFW.GLFW_KEY_F4, RenderDebug.PROFILE_ACTION);
 
         addBinding(GLFW.GLFW_KEY_ESCAPE, GameActions.TOGGLE_PAUSE);
 
@@ -4,9 +4,12 @@ package org.dragonskulle.game.map;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.stream.Stream;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
@@ -14,6 +17,7 @@ import lombok.extern.java.Log;
 import org.dragonskulle.components.IOnAwake;
 import org.dragonskulle.components.TransformHex;
 import org.dragonskulle.core.Scene;
+import org.dragonskulle.core.SpatialIndex;
 import org.dragonskulle.game.GameConfig;
 import org.dragonskulle.game.GameConfig.StatConfig;
 import org.dragonskulle.game.GameState;
@@ -22,9 +26,12 @@ import org.dragonskulle.input.Actions;
 import org.dragonskulle.input.Cursor;
 import org.dragonskulle.network.components.NetworkableComponent;
 import org.dragonskulle.renderer.components.Camera;
+import org.dragonskulle.utils.Env;
+import org.joml.Matrix4fc;
 import org.joml.Vector2f;
 import org.joml.Vector2fc;
 import org.joml.Vector3f;
+import org.joml.Vector3fc;
 
 /**
  * Store and synchronize the game map.
@@ -60,18 +67,56 @@ public class HexagonMap extends NetworkableComponent implements IOnAwake {
                 Deque<HexagonTile> tilesToFill);
     }
 
+    /**
+     * Whether the terrain is drawn by a {@link TerrainRenderer}, instead of tile objects.
+     *
+     * <p>Set with {@code HEX_TERRAIN} environment variable.
+     */
+    static final boolean TERRAIN_RENDERER = Env.envBool("HEX_TERRAIN", false);
+
     /** The size that is used to create the map. */
     @Getter @Setter private int mSize = 51;
 
     /** The map that is created which is made of a 2d array of HexagonTiles. */
     private HexagonTileStore mTiles;
 
+    /** Visual state of the tiles, if they are drawn by a {@link TerrainRenderer}. */
+    @Getter(AccessLevel.PACKAGE)
+    private TerrainTiles mTerrain;
+
     /** This will store what the largest landMass is. */
     private int[] mLargestLandMass;
 
     /** This will store what the next land mass number is. */
     private int mLandMass = 0;
 
+    /** Minimum coordinates of a tile's picking bounds, relative to the tile. */
+    private static final Vector3fc TILE_BOUNDS_MIN =
+            new Vector3f(-TransformHex.HEX_SIZE, -TransformHex.HEX_SIZE, -0.01f);
+    /** Maximum coordinates of a tile's picking bounds, relative to the tile. */
+    private static final Vector3fc TILE_BOUNDS_MAX =
+            new Vector3f(TransformHex.HEX_SIZE, TransformHex.HEX_SIZE, 0.01f);
+
+    /** Tile game objects indexed for picking them with the cursor. */
+    private final SpatialIndex<HexagonTile> mTileIndex = new SpatialIndex<>();
+    /** Entries of the tiles in {@link #mTileIndex}. */
+    private final Map<HexagonTile, SpatialIndex.Entry<HexagonTile>> mTileEntries = new HashMap<>();
+
+    /** Temporary cursor position on the map plane, used by {@link #cursorToTile}. */
+    private final Vector3f mTmpCursorPos = new Vector3f();
+    /** Temporary axial coordinates, used by {@link #cursorToTile}. */
+    private final Vector2f mTmpAxial = new Vector2f();
+    /** Temporary vector, used by {@link #cursorToTile}. */
+    private final Vector3f mTmpTilePos = new Vector3f();
+    /** Temporary camera position, used by {@link #cursorToTile}. */
+    private final Vector3f mTmpCamPos = new Vector3f();
+    /** Temporary cursor ray direction, used by {@link #cursorToTile}. */
+    private final Vector3f mTmpRayDir = new Vector3f();
+    /** Tiles near the cursor, used by {@link #cursorToTile}. */
+    private final ArrayList<HexagonTile> mTmpTiles = new ArrayList<>();
+    /** Distances of mTmpTiles from the camera. */
+    private float[] mTmpTileDistances = new float[64];
+
     /** This will go through all the tiles and find all islands. */
     private void checkIslands() {
 
@@ -290,6 +335,16 @@ public class HexagonMap extends NetworkableComponent implements IOnAwake {
 
         Vector2fc screenPos = cursor.getPosition();
 
+        if (mTerrain != null) {
+            return pickTerrain(mainCam, screenPos);
+        }
+
+        HexagonTile hit = raycastTile(mainCam, screenPos);
+
+        if (hit != null) {
+            return hit;
+        }
+
         // Convert those coordinates to local coordinates within the map
         Vector3f pos =
                 mainCam.screenToPlane(
@@ -297,9 +352,9 @@ public class HexagonMap extends NetworkableComponent implements IOnAwake {
                         0,
                         screenPos.x(),
                         screenPos.y(),
-                        new Vector3f());
+                        mTmpCursorPos);
 
-        Vector2f axial = new Vector2f();
+        Vector2f axial = mTmpAxial;
 
         // Convert those coordinates to axial
         TransformHex.cartesianToAxial(pos, axial);
@@ -309,26 +364,13 @@ public class HexagonMap extends NetworkableComponent implements IOnAwake {
         HexagonTile closestTile = null;
         float closestDistance = 1e30f;
 
-        List<HexagonTile> tiles =
-                getTilesInRadius((int) axial.x, (int) axial.y, 0, 4, new ArrayList<>());
-
-        Vector3f va = new Vector3f();
-        Vector3f vb = new Vector3f();
-        Vector3f camPos = mainCam.getGameObject().getTransform().getPosition();
-
-        tiles.sort(
-                (a, b) ->
-                        Float.compare(
-                                a.getGameObject()
-                                        .getTransform()
-                                        .getPosition(va)
-                                        .distanceSquared(camPos),
-                                b.getGameObject()
-                                        .getTransform()
-                                        .getPosition(vb)
-                                        .distanceSquared(camPos)));
-
-        for (HexagonTile tile : tiles) {
+        mTmpTiles.clear();
+        List<HexagonTile> tiles = getTilesInRadius((int) axial.x, (int) axial.y, 0, 4, mTmpTiles);
+
+        sortByCameraDistance(tiles, mainCam.getGameObject().getTransform().getPosition(mTmpCamPos));
+
+        for (int i = 0; i < tiles.size(); i++) {
+            HexagonTile tile = tiles.get(i);
             float dist = cursorDistanceFromCenter(tile, mainCam, screenPos, pos);
             if (dist < closestDistance) {
                 closestDistance = dist;
@@ -340,9 +382,116 @@ public class HexagonMap extends NetworkableComponent implements IOnAwake {
             }
         }
 
+        mTmpTiles.clear();
+
         return closestTile;
     }
 
+    /**
+     * Find the nearest tile under the cursor, using the tile index.
+     *
+     * <p>Tiles whose bounds the cursor ray hits are checked from the nearest one, the same way
+     * {@link #cursorToTile} checks tiles around the cursor, without having to look up and sort
+     * every one of them.
+     *
+     * @param cam camera to cast the ray from.
+     * @param screenPos cursor position on screen.
+     * @return the nearest tile the cursor is over, or {@code null} if none was found.
+     */
+    private HexagonTile raycastTile(Camera cam, Vector2fc screenPos) {
+        mTileIndex.refresh();
+
+        Vector3f camPos = cam.getGameObject().getTransform().getPosition(mTmpCamPos);
+        Vector3f dir = cam.screenToWorldDir(screenPos.x(), screenPos.y(), mTmpRayDir);
+
+        mTmpTiles.clear();
+        mTileIndex.raycast(camPos, dir, mTmpTiles);
+
+        HexagonTile hit = null;
+
+        for (int i = 0; i < mTmpTiles.size(); i++) {
+            HexagonTile tile = mTmpTiles.get(i);
+            if (cursorDistanceFromCenter(tile, cam, screenPos, mTmpCursorPos)
+                    <= TransformHex.HEX_SIZE) {
+                hit = tile;
+                break;
+            }
+        }
+
+        mTmpTiles.clear();
+
+        return hit;
+    }
+
+    /**
+     * Find the tile under the cursor analytically, from the terrain state.
+     *
+     * @param cam camera to cast the ray from.
+     * @param screenPos cursor position on screen.
+     * @return the nearest tile the cursor is over, or {@code null} if none was found.
+     */
+    private HexagonTile pickTerrain(Camera cam, Vector2fc screenPos) {
+        Vector3f camPos = cam.getGameObject().getTransform().getPosition(mTmpCamPos);
+        Vector3f dir = cam.screenToWorldDir(screenPos.x(), screenPos.y(), mTmpRayDir);
+
+        // Tiles are stored relative to the map
+        Matrix4fc invMap = getGameObject().getTransform().getInvWorldMatrix();
+        invMap.transformPosition(camPos);
+        invMap.transformDirection(dir);
+
+        int index = mTerrain.pick(camPos, dir);
+
+        if (index < 0) {
+            return null;
+        }
+
+        return getTile(mTerrain.getQ(index), mTerrain.getR(index));
+    }
+
+    /**
+     * Sort tiles from the nearest to the furthest from the camera.
+     *
+     * <p>Distances are computed once per tile, and the sort is done in place, so that it does not
+     * allocate.
+     *
+     * @param tiles tiles to sort.
+     * @param camPos position of the camera.
+     */
+    private void sortByCameraDistance(List<HexagonTile> tiles, Vector3f camPos) {
+        int count = tiles.size();
+
+        if (mTmpTileDistances.length < count) {
+            mTmpTileDistances = new float[count];
+        }
+
+        float[] distances = mTmpTileDistances;
+
+        for (int i = 0; i < count; i++) {
+            distances[i] =
+                    tiles.get(i)
+                            .getGameObject()
+                            .getTransform()
+                            .getPosition(mTmpTilePos)
+                            .distanceSquared(camPos);
+        }
+
+        // Insertion sort, there are only a few dozen tiles near the cursor
+        for (int i = 1; i < count; i++) {
+            HexagonTile tile = tiles.get(i);
+            float dist = distances[i];
+            int j = i - 1;
+
+            while (j >= 0 && distances[j] > dist) {
+                tiles.set(j + 1, tiles.get(j));
+                distances[j + 1] = distances[j];
+                j--;
+            }
+
+            tiles.set(j + 1, tile);
+            distances[j + 1] = dist;
+        }
+    }
+
     /**
      * How far away the cursor is from the center of a tile.
      *
@@ -358,7 +507,7 @@ public class HexagonMap extends NetworkableComponent implements IOnAwake {
                 cam.screenToPlane(
                         tile.getGameObject().getTransform(), 0, screenPos.x(), screenPos.y(), pos);
 
-        Vector2f axial = new Vector2f();
+        Vector2f axial = mTmpAxial;
 
         // Convert those coordinates to axial
         TransformHex.cartesianToAxial(pos, axial);
@@ -418,13 +567,21 @@ public class HexagonMap extends NetworkableComponent implements IOnAwake {
             mSize = gameState.getConfig().getGlobal().getMapSize();
         }
 
+        if (TERRAIN_RENDERER) {
+            mTerrain = new TerrainTiles(mSize, HexagonTile.WATER_THRESHOLD);
+            getGameObject().addComponent(new TerrainRenderer());
+        }
+
         Random rand = new Random();
         mTiles = new HexagonTileStore(mSize, rand.nextInt(), this);
         checkIslands();
     }
 
     @Override
-    public void onDestroy() {}
+    public void onDestroy() {
+        mTileIndex.clear();
+        mTileEntries.clear();
+    }
 
     @Override
     public void onAwake() {
@@ -445,5 +602,24 @@ public class HexagonMap extends NetworkableComponent implements IOnAwake {
      */
     void updateTileGameObject(HexagonTile tile) {
         getGameObject().addChild(tile.getGameObject());
+
+        // Terrain is picked without the index
+        if (mTerrain != null) {
+            return;
+        }
+
+        SpatialIndex.Entry<HexagonTile> entry = mTileEntries.get(tile);
+
+        if (entry != null) {
+            entry.remove();
+        }
+
+        entry =
+                mTileIndex.add(
+                        tile,
+                        tile.getGameObject().getTransform(),
+                        TILE_BOUNDS_MIN,
+                        TILE_BOUNDS_MAX);
+        mTileEntries.put(tile, entry);
     }
 }
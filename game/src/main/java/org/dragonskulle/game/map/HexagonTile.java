@@ -502,6 +502,12 @@ public class HexagonTile implements INetSerializable {
      *     current visual height.
      */
     public float getSurfaceHeight() {
+        TerrainTiles terrain = mHandler.getTerrain();
+
+        if (terrain != null) {
+            return terrain.getHeight(terrain.index(mQ, mR));
+        }
+
         return mGameObject.getTransform(TransformHex.class).getHeight();
     }
 
@@ -513,6 +519,18 @@ public class HexagonTile implements INetSerializable {
      */
     void updateHeight(boolean fadeIn, boolean destroyOnFadeOut) {
 
+        TerrainTiles terrain = mHandler.getTerrain();
+
+        // Terrain tiles fade in on type changes by themselves
+        if (terrain != null) {
+            if (fadeIn) {
+                float height = getDisplayHeight();
+                mGameObject.getTransform(TransformHex.class).setHeight(height);
+                terrain.setTargetHeight(terrain.index(mQ, mR), height);
+            }
+            return;
+        }
+
         mFadeControl.get().setDestroyOnFadeOut(destroyOnFadeOut);
 
         if (Reference.isValid(mSecondaryFade)) {
@@ -528,8 +546,46 @@ public class HexagonTile implements INetSerializable {
         }
     }
 
+    /**
+     * Get the height the tile surface is shown at.
+     *
+     * @return height of the tile, or water level for water tiles.
+     */
+    private float getDisplayHeight() {
+        return mTileType == TileType.WATER ? WATER_THRESHOLD : mHeight;
+    }
+
+    /**
+     * Build a bare tile object, and put the tile into the terrain that draws it.
+     *
+     * @param terrain terrain of the map.
+     */
+    private void buildTerrainTile(TerrainTiles terrain) {
+        if (mGameObject != null) {
+            mGameObject.destroy();
+        }
+
+        float height = getDisplayHeight();
+
+        mGameObject = new GameObject("Hex Tile", new TransformHex(mQ, mR, height));
+        mFadeControl = null;
+        mSecondaryFade = null;
+        mHighlightControls = null;
+
+        terrain.setTile(terrain.index(mQ, mR), mTileType, height);
+
+        mHandler.updateGameObject(this);
+    }
+
     /** Builds the tile object, and notifies {@link HexagonMap} of this change. */
     private void buildGameObject() {
+        TerrainTiles terrain = mHandler.getTerrain();
+
+        if (terrain != null) {
+            buildTerrainTile(terrain);
+            return;
+        }
+
         mSecondaryFade = null;
 
         switch (mTileType) {
@@ -86,6 +86,15 @@ class HexagonTileStore implements ISyncVar {
             return mMap.getNetworkManager();
         }
 
+        /**
+         * Get the terrain state of the map.
+         *
+         * @return terrain tiles, or {@code null} if tiles are drawn with their own objects.
+         */
+        TerrainTiles getTerrain() {
+            return mMap.getTerrain();
+        }
+
         /**
          * Update (change) tile game object.
          *
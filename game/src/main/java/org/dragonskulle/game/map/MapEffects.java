@@ -172,6 +172,9 @@ public class MapEffects extends Component implements IOnStart, ILateFrameUpdate
     /** List of active pulse highlight on each tile. */
     private final Map<HexagonTile, PulseHighlight> mPulseHighlights = new HashMap<>();
 
+    /** Highlight returned by {@link #getTileHighlight} for terrain tiles. */
+    private final Vector4f mTmpHighlight = new Vector4f();
+
     /** Active player used for fog highlights. */
     @Getter @Setter private Reference<Player> mActivePlayer;
 
@@ -221,6 +224,13 @@ public class MapEffects extends Component implements IOnStart, ILateFrameUpdate
             return;
         }
 
+        TerrainTiles terrain = mMapReference.get().getTerrain();
+
+        if (terrain != null) {
+            terrain.setHighlight(terrain.index(tile.getQ(), tile.getR()), selection);
+            return;
+        }
+
         Reference<HighlightControls> controls = tile.getHighlightControls();
 
         if (Reference.isValid(controls)) {
@@ -271,9 +281,19 @@ public class MapEffects extends Component implements IOnStart, ILateFrameUpdate
      * Check whether tile is highlighted.
      *
      * @param tile tile to check
-     * @return The {@link Vector4f} if the tile has any highlighting, {@code null} otherwise.
+     * @return The {@link Vector4f} if the tile has any highlighting, {@code null} otherwise. When
+     *     the map terrain is drawn by a {@link TerrainRenderer}, the vector is only valid until the
+     *     next call.
      */
     public Vector4f getTileHighlight(HexagonTile tile) {
+        TerrainTiles terrain =
+                Reference.isValid(mMapReference) ? mMapReference.get().getTerrain() : null;
+
+        if (terrain != null) {
+            return terrain.getTargetHighlight(
+                    terrain.index(tile.getQ(), tile.getR()), mTmpHighlight);
+        }
+
         Reference<HighlightControls> controls = tile.getHighlightControls();
 
         if (Reference.isValid(controls)) {
@@ -0,0 +1,152 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.game.map;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.List;
+import org.dragonskulle.components.TransformHex;
+import org.dragonskulle.game.map.HexagonTile.TileType;
+import org.dragonskulle.game.materials.PBRHighlightMaterial;
+import org.dragonskulle.renderer.Mesh;
+import org.dragonskulle.renderer.components.Light;
+import org.dragonskulle.renderer.components.Renderable;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+
+/**
+ * Draws one part of every tile of a type, in a single instanced draw.
+ *
+ * @author DragonSkulle
+ *     <p>Every renderable of a tile template becomes a layer, which draws its mesh once for every
+ *     tile of the template's type in {@link TerrainTiles}. Instance data of the tiles is kept
+ *     packed in a buffer, and only rebuilt for tiles {@link #updateInstance updated} by {@link
+ *     TerrainRenderer}. The renderer then only copies the packed data, and uploads the parts that
+ *     differ, when any tile got updated.
+ *     <p>Tiles are not culled individually, the layer is always drawn as a whole.
+ */
+class TerrainLayer extends Renderable {
+    /** Smallest scale of faded out tiles, which keeps their matrices invertible. */
+    private static final float MIN_FADE_SCALE = 1e-3f;
+
+    /** Tiles drawn by the layer. */
+    private final TerrainTiles mTiles;
+    /** Type of the tiles drawn. */
+    private final TileType mType;
+    /** Material of the layer, used to write the instance data. */
+    private final PBRHighlightMaterial mHighlightMaterial;
+    /** Transformation of the mesh, relative to the tile. */
+    private final Matrix4fc mLocalMatrix;
+    /** Size of a single instance's data. */
+    private final int mStride;
+
+    /** Packed instance data of all tiles. */
+    private ByteBuffer mInstanceData;
+    /** Number of times the packed instance data changed. */
+    private long mVersion = 0;
+
+    private final Matrix4f mTmpMatrix = new Matrix4f();
+    private final Vector3f mTmpPos = new Vector3f();
+    private final Vector2f mTmpAxial = new Vector2f();
+
+    /**
+     * Create a terrain layer.
+     *
+     * @param mesh mesh drawn for every tile.
+     * @param material material of the mesh.
+     * @param localMatrix transformation of the mesh, relative to the tile.
+     * @param tiles tiles to draw.
+     * @param type type of the tiles to draw.
+     */
+    TerrainLayer(
+            Mesh mesh,
+            PBRHighlightMaterial material,
+            Matrix4fc localMatrix,
+            TerrainTiles tiles,
+            TileType type) {
+        super(mesh, material);
+        mHighlightMaterial = material;
+        mLocalMatrix = new Matrix4f(localMatrix);
+        mTiles = tiles;
+        mType = type;
+        mStride = material.getShaderSet().getVertexBindingDescription().mSize;
+        mInstanceData = ByteBuffer.allocate(mStride * 64).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Get the type of the tiles drawn.
+     *
+     * @return type of the tiles.
+     */
+    TileType getType() {
+        return mType;
+    }
+
+    /**
+     * Rebuild packed data of a tile instance.
+     *
+     * @param instance instance index of the tile.
+     */
+    void updateInstance(int instance) {
+        int required = (instance + 1) * mStride;
+
+        if (required > mInstanceData.capacity()) {
+            int capacity = Math.max(required, mInstanceData.capacity() * 2);
+            ByteBuffer data = ByteBuffer.allocate(capacity).order(ByteOrder.nativeOrder());
+            mInstanceData.clear();
+            data.put(mInstanceData);
+            mInstanceData = data;
+        }
+
+        int tile = mTiles.getInstanceTile(mType, instance);
+
+        mTmpAxial.set(mTiles.getQ(tile), mTiles.getR(tile));
+        TransformHex.axialToCartesian(mTmpAxial, mTiles.getHeight(tile), mTmpPos);
+
+        float scale = Math.max(mTiles.getFade(tile), MIN_FADE_SCALE);
+
+        mTmpMatrix
+                .set(getGameObject().getTransform().getWorldMatrix())
+                .translate(mTmpPos)
+                .scale(scale)
+                .mul(mLocalMatrix);
+
+        mTiles.getHighlight(tile, mHighlightMaterial.getOverlayColour());
+
+        mHighlightMaterial.writeVertexInstanceData(
+                instance * mStride, mInstanceData, mTmpMatrix, Collections.emptyList());
+        mVersion++;
+    }
+
+    @Override
+    public int getInstanceCount() {
+        return mTiles.getInstanceCount(mType);
+    }
+
+    @Override
+    public long getInstanceVersion() {
+        return mVersion;
+    }
+
+    @Override
+    public void writeVertexInstanceData(
+            int instance, int offset, ByteBuffer buffer, List<Light> lights) {
+        int base = instance * mStride;
+        for (int i = 0; i < mStride; i += 4) {
+            buffer.putInt(offset + i, mInstanceData.getInt(base + i));
+        }
+    }
+
+    @Override
+    public boolean isAlwaysVisible() {
+        return true;
+    }
+
+    @Override
+    public boolean frustumCull(FrustumIntersection intersection) {
+        return true;
+    }
+}
@@ -0,0 +1,160 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.game.map;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.dragonskulle.components.Component;
+import org.dragonskulle.components.IFrameUpdate;
+import org.dragonskulle.components.Transform;
+import org.dragonskulle.core.GameObject;
+import org.dragonskulle.core.Reference;
+import org.dragonskulle.game.map.HexagonTile.TileType;
+import org.dragonskulle.game.materials.PBRHighlightMaterial;
+import org.dragonskulle.renderer.components.Renderable;
+import org.dragonskulle.renderer.materials.PBRMaterial;
+import org.joml.Matrix4f;
+
+/**
+ * Draws the whole map terrain from {@link TerrainTiles}.
+ *
+ * @author DragonSkulle
+ *     <p>This replaces a game object with renderables, fade, height, and highlight controls per
+ *     tile. Every renderable of the tile templates becomes a {@link TerrainLayer}, thus every part
+ *     of every tile type is drawn in a single instanced call, and only tiles whose state changed
+ *     get their instance data rebuilt.
+ *     <p>This component must be on the same object as the {@link HexagonMap} whose terrain it
+ *     draws.
+ */
+public class TerrainRenderer extends Component implements IFrameUpdate {
+
+    /** Layers drawing the tiles. */
+    private final List<TerrainLayer> mLayers = new ArrayList<>();
+    /** Layers of every tile type. */
+    private final List<List<TerrainLayer>> mTypeLayers = new ArrayList<>();
+    /** Change count of the map transform, when instance data was last rebuilt. */
+    private int mChangeCount = -1;
+
+    /** Temporary list of template renderables. */
+    private final List<Reference<Renderable>> mTmpRenderables = new ArrayList<>();
+
+    @Override
+    public void frameUpdate(float deltaTime) {
+        Reference<HexagonMap> map = getGameObject().getComponent(HexagonMap.class);
+
+        if (!Reference.isValid(map)) {
+            return;
+        }
+
+        TerrainTiles tiles = map.get().getTerrain();
+
+        if (tiles == null) {
+            return;
+        }
+
+        if (mLayers.isEmpty()) {
+            createLayers(tiles);
+        }
+
+        tiles.step(deltaTime);
+
+        Transform transform = getGameObject().getTransform();
+
+        // Moving the whole map changes every instance
+        if (transform.getChangeCount() != mChangeCount) {
+            mChangeCount = transform.getChangeCount();
+
+            for (TerrainLayer layer : mLayers) {
+                int count = layer.getInstanceCount();
+                for (int i = 0; i < count; i++) {
+                    layer.updateInstance(i);
+                }
+            }
+
+            tiles.clearDirty();
+            return;
+        }
+
+        for (int i = 0; i < tiles.getDirtyCount(); i++) {
+            int tile = tiles.getDirty(i);
+            int instance = tiles.getInstanceIndex(tile);
+
+            for (TerrainLayer layer : mTypeLayers.get(tiles.getType(tile).ordinal())) {
+                layer.updateInstance(instance);
+            }
+        }
+
+        tiles.clearDirty();
+    }
+
+    /**
+     * Create layers out of tile templates.
+     *
+     * @param tiles tiles the layers will draw.
+     */
+    private void createLayers(TerrainTiles tiles) {
+        for (TileType type : TileType.values()) {
+            List<TerrainLayer> typeLayers = new ArrayList<>();
+            mTypeLayers.add(typeLayers);
+
+            GameObject template = getTemplate(type);
+
+            mTmpRenderables.clear();
+            template.getComponents(Renderable.class, mTmpRenderables);
+            template.getComponentsInChildren(Renderable.class, mTmpRenderables);
+
+            Matrix4f invRoot = new Matrix4f(template.getTransform().getInvWorldMatrix());
+
+            for (Reference<Renderable> ref : mTmpRenderables) {
+                Renderable renderable = ref.get();
+                PBRMaterial material = renderable.getMaterial(PBRMaterial.class);
+
+                if (material == null || renderable.getMesh() == null) {
+                    continue;
+                }
+
+                Matrix4f local =
+                        new Matrix4f(invRoot)
+                                .mul(renderable.getGameObject().getTransform().getWorldMatrix());
+
+                TerrainLayer layer =
+                        new TerrainLayer(
+                                renderable.getMesh(),
+                                new PBRHighlightMaterial(material),
+                                local,
+                                tiles,
+                                type);
+
+                GameObject layerObject = new GameObject("Terrain " + type);
+                layerObject.addComponent(layer);
+                getGameObject().addChild(layerObject);
+
+                typeLayers.add(layer);
+                mLayers.add(layer);
+            }
+        }
+
+        mTmpRenderables.clear();
+    }
+
+    /**
+     * Get the template object of a tile type.
+     *
+     * @param type tile type.
+     * @return the template used for tiles of the type.
+     */
+    private static GameObject getTemplate(TileType type) {
+        switch (type) {
+            case WATER:
+                return HexagonTile.WATER_TILE;
+            case MOUNTAIN:
+                return HexagonTile.MOUNTAIN_TILE;
+            case FOG:
+                return HexagonTile.FOG_TILE;
+            default:
+                return HexagonTile.LAND_TILE;
+        }
+    }
+
+    @Override
+    protected void onDestroy() {}
+}
@@ -0,0 +1,568 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.game.map;
+
+import java.util.Arrays;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import org.dragonskulle.components.TransformHex;
+import org.dragonskulle.game.map.HexagonTile.TileType;
+import org.dragonskulle.utils.MathUtils;
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.joml.Vector4f;
+import org.joml.Vector4fc;
+
+/**
+ * Compact visual state of every map tile.
+ *
+ * @author DragonSkulle
+ *     <p>Heights, types, fade and highlight values of tiles are kept in flat arrays indexed by
+ *     their axial coordinates, instead of a game object with its own components per tile. Every
+ *     value has a target, which the current one moves towards in {@link #step}, the same way {@link
+ *     HeightController}, {@link FadeTile} and highlight controls animate tile objects.
+ *     <p>Tiles whose current state changes are marked dirty, and stay so until {@link #clearDirty},
+ *     so that only their instance data needs rebuilding. Tiles of every type are also kept in a
+ *     dense list, which gives every tile its instance index within the draw of its type.
+ *     <p>None of this touches the GPU, thus it can be used, and tested without a renderer.
+ */
+@Accessors(prefix = "m")
+class TerrainTiles {
+    /** Value of {@link #mTypes} where there is no tile. */
+    private static final byte NO_TILE = -1;
+    /** Number of floats per tile highlight colour. */
+    private static final int HIGHLIGHT_SIZE = 4;
+    /** Difference below which animated values snap to their targets. */
+    private static final float SNAP_DISTANCE = 1e-3f;
+    /** How fast heights move towards their targets. */
+    private static final float HEIGHT_SPEED = 3f;
+    /** How long it takes for a tile to fade in. */
+    private static final float FADE_TIME = 0.4f;
+    /** How fast highlights move towards their targets. */
+    private static final float HIGHLIGHT_SPEED = 10f;
+    /** Number of different tile types. */
+    private static final int TYPE_COUNT = TileType.values().length;
+
+    /** Width and height of the tile grid. */
+    @Getter private final int mSize;
+    /** Offset added to axial coordinates to get grid coordinates. */
+    private final int mCoordShift;
+    /** Height new tiles start rising from. */
+    private final float mBaseHeight;
+
+    /** Tile type ordinals, {@link #NO_TILE} where there is no tile. */
+    private final byte[] mTypes;
+    /** Current tile heights. */
+    private final float[] mHeights;
+    /** Heights the tiles move towards. */
+    private final float[] mTargetHeights;
+    /** Current visibility of tiles, from 0 to 1. */
+    private final float[] mFades;
+    /** Current highlight colours, 4 floats per tile. */
+    private final float[] mHighlights;
+    /** Highlight colours the tiles move towards, 4 floats per tile. */
+    private final float[] mTargetHighlights;
+
+    /** Lowest height any tile had. */
+    private float mMinHeight = Float.POSITIVE_INFINITY;
+    /** Highest height any tile had. */
+    private float mMaxHeight = Float.NEGATIVE_INFINITY;
+
+    /** Whether a tile is in {@link #mDirty}. */
+    private final boolean[] mDirtyFlags;
+    /** Tiles whose state changed since the last {@link #clearDirty} call. */
+    private final int[] mDirty;
+    /** Number of dirty tiles. */
+    @Getter private int mDirtyCount = 0;
+
+    /** Whether a tile is in {@link #mAnimating}. */
+    private final boolean[] mAnimatingFlags;
+    /** Tiles that have not reached their targets yet. */
+    private final int[] mAnimating;
+    /** Number of animating tiles. */
+    @Getter private int mAnimatingCount = 0;
+
+    /** Tiles of every type, in instance order. */
+    private final int[][] mInstances;
+    /** Number of tiles of every type. */
+    private final int[] mInstanceCounts = new int[TYPE_COUNT];
+    /** Instance index of every tile, within the tiles of its type. */
+    private final int[] mInstanceIndices;
+
+    /** Temporary point on the picking ray. */
+    private final Vector3f mTmpPoint = new Vector3f();
+    /** Temporary axial coordinates used for picking. */
+    private final Vector2f mTmpAxial = new Vector2f();
+    /** Temporary cube coordinates used for picking. */
+    private final Vector3f mTmpCube = new Vector3f();
+
+    /** Axial offsets of the 6 neighbours of a tile. */
+    private static final int[][] NEIGHBOURS = {{1, 0}, {1, -1}, {0, -1}, {-1, 0}, {-1, 1}, {0, 1}};
+
+    /**
+     * Create terrain tiles of a map.
+     *
+     * @param size width and height of the map, the same as in {@link HexagonTileStore}.
+     * @param baseHeight height new tiles start rising from.
+     */
+    TerrainTiles(int size, float baseHeight) {
+        mSize = size;
+        mCoordShift = size / 2;
+        mBaseHeight = baseHeight;
+
+        int count = size * size;
+        mTypes = new byte[count];
+        Arrays.fill(mTypes, NO_TILE);
+        mHeights = new float[count];
+        mTargetHeights = new float[count];
+        mFades = new float[count];
+        mHighlights = new float[count * HIGHLIGHT_SIZE];
+        mTargetHighlights = new float[count * HIGHLIGHT_SIZE];
+
+        mDirtyFlags = new boolean[count];
+        mDirty = new int[count];
+        mAnimatingFlags = new boolean[count];
+        mAnimating = new int[count];
+
+        mInstances = new int[TYPE_COUNT][count];
+        mInstanceIndices = new int[count];
+    }
+
+    /**
+     * Get the index of a tile.
+     *
+     * @param q q coordinate of the tile.
+     * @param r r coordinate of the tile.
+     * @return index of the tile, or -1 if the coordinates are outside the map.
+     */
+    int index(int q, int r) {
+        q += mCoordShift;
+        r += mCoordShift;
+
+        if (q < 0 || r < 0 || q >= mSize || r >= mSize) {
+            return -1;
+        }
+
+        return q * mSize + r;
+    }
+
+    /**
+     * Get the q coordinate of a tile.
+     *
+     * @param index index of the tile.
+     * @return q coordinate.
+     */
+    int getQ(int index) {
+        return index / mSize - mCoordShift;
+    }
+
+    /**
+     * Get the r coordinate of a tile.
+     *
+     * @param index index of the tile.
+     * @return r coordinate.
+     */
+    int getR(int index) {
+        return index % mSize - mCoordShift;
+    }
+
+    /**
+     * Get the type of a tile.
+     *
+     * @param index index of the tile.
+     * @return type of the tile, {@code null} if there is no tile.
+     */
+    TileType getType(int index) {
+        byte type = mTypes[index];
+        return type == NO_TILE ? null : TileType.values()[type];
+    }
+
+    /**
+     * Get the current height of a tile.
+     *
+     * @param index index of the tile.
+     * @return current height.
+     */
+    float getHeight(int index) {
+        return mHeights[index];
+    }
+
+    /**
+     * Get the current visibility of a tile.
+     *
+     * @param index index of the tile.
+     * @return value from 0, when fully faded out, to 1.
+     */
+    float getFade(int index) {
+        return mFades[index];
+    }
+
+    /**
+     * Get the current highlight of a tile.
+     *
+     * @param index index of the tile.
+     * @param dest vector to write the colour to.
+     * @return {@code dest}.
+     */
+    Vector4f getHighlight(int index, Vector4f dest) {
+        return getColour(mHighlights, index, dest);
+    }
+
+    /**
+     * Get the highlight a tile is moving towards.
+     *
+     * @param index index of the tile.
+     * @param dest vector to write the colour to.
+     * @return {@code dest}.
+     */
+    Vector4f getTargetHighlight(int index, Vector4f dest) {
+        return getColour(mTargetHighlights, index, dest);
+    }
+
+    /**
+     * Set the type and height of a tile.
+     *
+     * <p>New tiles start at the base height, and tiles that change their type fade in again, as
+     * they would with new tile objects.
+     *
+     * @param index index of the tile.
+     * @param type new type of the tile.
+     * @param height height the tile should move to.
+     */
+    void setTile(int index, TileType type, float height) {
+        byte newType = (byte) type.ordinal();
+        byte oldType = mTypes[index];
+
+        if (oldType != newType) {
+            if (oldType == NO_TILE) {
+                mHeights[index] = mBaseHeight;
+                expandHeights(mBaseHeight);
+            } else {
+                removeInstance(oldType, index);
+            }
+
+            mTypes[index] = newType;
+            mInstanceIndices[index] = mInstanceCounts[newType];
+            mInstances[newType][mInstanceCounts[newType]++] = index;
+            mFades[index] = 0f;
+            markDirty(index);
+            markAnimating(index);
+        }
+
+        setTargetHeight(index, height);
+    }
+
+    /**
+     * Set the height a tile should move to.
+     *
+     * @param index index of the tile.
+     * @param height target height.
+     */
+    void setTargetHeight(int index, float height) {
+        if (mTargetHeights[index] != height) {
+            mTargetHeights[index] = height;
+            expandHeights(height);
+            markAnimating(index);
+        }
+    }
+
+    /**
+     * Set the highlight a tile should move to.
+     *
+     * <p>Setting the same highlight again does not mark the tile in any way, thus highlights can be
+     * set every frame.
+     *
+     * @param index index of the tile.
+     * @param colour target highlight colour.
+     */
+    void setHighlight(int index, Vector4fc colour) {
+        int base = index * HIGHLIGHT_SIZE;
+        float[] target = mTargetHighlights;
+
+        if (target[base] == colour.x()
+                && target[base + 1] == colour.y()
+                && target[base + 2] == colour.z()
+                && target[base + 3] == colour.w()) {
+            return;
+        }
+
+        target[base] = colour.x();
+        target[base + 1] = colour.y();
+        target[base + 2] = colour.z();
+        target[base + 3] = colour.w();
+        markAnimating(index);
+    }
+
+    /**
+     * Move animating tiles towards their targets.
+     *
+     * <p>Every tile that moves is marked dirty. Tiles that reach their targets stop being animated.
+     *
+     * @param deltaTime time since the last step, in seconds.
+     */
+    void step(float deltaTime) {
+        float heightLerp = Math.min(deltaTime * HEIGHT_SPEED, 1f);
+        float highlightLerp = Math.min(deltaTime * HIGHLIGHT_SPEED, 1f);
+        float fadeStep = deltaTime / FADE_TIME;
+
+        int kept = 0;
+
+        for (int i = 0; i < mAnimatingCount; i++) {
+            int index = mAnimating[i];
+
+            boolean done = true;
+
+            float height = mHeights[index];
+            float targetHeight = mTargetHeights[index];
+
+            if (Math.abs(targetHeight - height) > SNAP_DISTANCE) {
+                mHeights[index] = MathUtils.lerp(height, targetHeight, heightLerp);
+                done = false;
+            } else {
+                mHeights[index] = targetHeight;
+            }
+
+            mFades[index] = Math.min(mFades[index] + fadeStep, 1f);
+            done &= mFades[index] >= 1f;
+
+            int base = index * HIGHLIGHT_SIZE;
+            for (int c = base; c < base + HIGHLIGHT_SIZE; c++) {
+                float value = mHighlights[c];
+                float target = mTargetHighlights[c];
+
+                if (Math.abs(target - value) > SNAP_DISTANCE) {
+                    mHighlights[c] = MathUtils.lerp(value, target, highlightLerp);
+                    done = false;
+                } else {
+                    mHighlights[c] = target;
+                }
+            }
+
+            markDirty(index);
+
+            if (done) {
+                mAnimatingFlags[index] = false;
+            } else {
+                mAnimating[kept++] = index;
+            }
+        }
+
+        mAnimatingCount = kept;
+    }
+
+    /**
+     * Get a dirty tile.
+     *
+     * @param i index within the dirty tiles, less than {@link #getDirtyCount}.
+     * @return index of the tile.
+     */
+    int getDirty(int i) {
+        return mDirty[i];
+    }
+
+    /** Unmark all dirty tiles. */
+    void clearDirty() {
+        for (int i = 0; i < mDirtyCount; i++) {
+            mDirtyFlags[mDirty[i]] = false;
+        }
+        mDirtyCount = 0;
+    }
+
+    /**
+     * Get the number of tiles of a type.
+     *
+     * @param type tile type.
+     * @return number of tiles, which is also the number of instances drawn for the type.
+     */
+    int getInstanceCount(TileType type) {
+        return mInstanceCounts[type.ordinal()];
+    }
+
+    /**
+     * Get the tile drawn by an instance.
+     *
+     * @param type tile type.
+     * @param instance instance index, less than {@link #getInstanceCount}.
+     * @return index of the tile.
+     */
+    int getInstanceTile(TileType type, int instance) {
+        return mInstances[type.ordinal()][instance];
+    }
+
+    /**
+     * Get the instance index of a tile.
+     *
+     * @param index index of the tile.
+     * @return instance index of the tile, within the tiles of its type.
+     */
+    int getInstanceIndex(int index) {
+        return mInstanceIndices[index];
+    }
+
+    /**
+     * Find the tile a ray hits first.
+     *
+     * <p>The ray is checked against the top surfaces of tiles at their current heights. Instead of
+     * checking objects one by one, the ray is walked from where it enters the range of tile
+     * heights, to where it leaves it, in half tile steps. Around every step, the top surface of the
+     * tile and its neighbours is intersected with the ray, and the intersection converted to axial
+     * coordinates tells whether the surface was hit.
+     *
+     * @param origin origin of the ray, relative to the map.
+     * @param dir direction of the ray, relative to the map.
+     * @return index of the nearest tile hit, or -1 if the ray hits no tile.
+     */
+    int pick(Vector3fc origin, Vector3fc dir) {
+        if (mMinHeight > mMaxHeight || Math.abs(dir.z()) < 1e-6f) {
+            return -1;
+        }
+
+        float enter = (mMaxHeight - origin.z()) / dir.z();
+        float exit = (mMinHeight - origin.z()) / dir.z();
+
+        float start = Math.max(0f, Math.min(enter, exit));
+        float end = Math.max(enter, exit);
+
+        if (end < 0f) {
+            return -1;
+        }
+
+        float horizontal = (float) Math.sqrt(dir.x() * dir.x() + dir.y() * dir.y());
+        float step =
+                horizontal > 0f
+                        ? TransformHex.HEX_SIZE * 0.5f / horizontal
+                        : Math.max(end - start, 1f);
+
+        int hit = -1;
+        float hitDistance = Float.POSITIVE_INFINITY;
+
+        for (float t = start; t <= end + step; t += step) {
+            origin.fma(t, dir, mTmpPoint);
+            TransformHex.cartesianToAxial(mTmpPoint, mTmpAxial);
+            TransformHex.roundAxial(mTmpAxial, mTmpCube);
+
+            int q = (int) mTmpAxial.x;
+            int r = (int) mTmpAxial.y;
+
+            for (int n = -1; n < NEIGHBOURS.length; n++) {
+                int nq = n < 0 ? q : q + NEIGHBOURS[n][0];
+                int nr = n < 0 ? r : r + NEIGHBOURS[n][1];
+                float distance = surfaceHitDistance(nq, nr, origin, dir);
+
+                if (distance < hitDistance) {
+                    hitDistance = distance;
+                    hit = index(nq, nr);
+                }
+            }
+
+            // Steps after the hit can only find surfaces behind it
+            if (hit >= 0 && t > hitDistance + step) {
+                break;
+            }
+        }
+
+        return hit;
+    }
+
+    /**
+     * Intersect a ray with the top surface of a tile.
+     *
+     * @param q q coordinate of the tile.
+     * @param r r coordinate of the tile.
+     * @param origin origin of the ray.
+     * @param dir direction of the ray.
+     * @return distance along the ray to the surface, or infinity if it is not hit.
+     */
+    private float surfaceHitDistance(int q, int r, Vector3fc origin, Vector3fc dir) {
+        int index = index(q, r);
+
+        if (index < 0 || mTypes[index] == NO_TILE) {
+            return Float.POSITIVE_INFINITY;
+        }
+
+        float distance = (mHeights[index] - origin.z()) / dir.z();
+
+        if (distance < 0f) {
+            return Float.POSITIVE_INFINITY;
+        }
+
+        origin.fma(distance, dir, mTmpPoint);
+        TransformHex.cartesianToAxial(mTmpPoint, mTmpAxial);
+        TransformHex.roundAxial(mTmpAxial, mTmpCube);
+
+        if ((int) mTmpAxial.x != q || (int) mTmpAxial.y != r) {
+            return Float.POSITIVE_INFINITY;
+        }
+
+        return distance;
+    }
+
+    /**
+     * Take a tile out of the instances of its type.
+     *
+     * <p>The last tile of the type takes its place, and gets marked dirty, since its instance
+     * moved.
+     *
+     * @param type type the tile had.
+     * @param index index of the tile.
+     */
+    private void removeInstance(byte type, int index) {
+        int instance = mInstanceIndices[index];
+        int last = --mInstanceCounts[type];
+        int moved = mInstances[type][last];
+
+        mInstances[type][instance] = moved;
+        mInstanceIndices[moved] = instance;
+
+        if (moved != index) {
+            markDirty(moved);
+        }
+    }
+
+    /**
+     * Make sure the range of heights includes a height.
+     *
+     * @param height height to include.
+     */
+    private void expandHeights(float height) {
+        mMinHeight = Math.min(mMinHeight, height);
+        mMaxHeight = Math.max(mMaxHeight, height);
+    }
+
+    /**
+     * Add a tile to the dirty tiles, if it is not there yet.
+     *
+     * @param index index of the tile.
+     */
+    private void markDirty(int index) {
+        if (!mDirtyFlags[index]) {
+            mDirtyFlags[index] = true;
+            mDirty[mDirtyCount++] = index;
+        }
+    }
+
+    /**
+     * Add a tile to the animating tiles, if it is not there yet.
+     *
+     * @param index index of the tile.
+     */
+    private void markAnimating(int index) {
+        if (!mAnimatingFlags[index]) {
+            mAnimatingFlags[index] = true;
+            mAnimating[mAnimatingCount++] = index;
+        }
+    }
+
+    /**
+     * Read a colour of a tile.
+     *
+     * @param colours colour array to read from.
+     * @param index index of the tile.
+     * @param dest vector to write the colour to.
+     * @return {@code dest}.
+     */
+    private static Vector4f getColour(float[] colours, int index, Vector4f dest) {
+        int base = index * HIGHLIGHT_SIZE;
+        return dest.set(colours[base], colours[base + 1], colours[base + 2], colours[base + 3]);
+    }
+}
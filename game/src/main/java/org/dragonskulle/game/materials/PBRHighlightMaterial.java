@@ -8,7 +8,7 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
@@ -16,6 +16,7 @@ import org.dragonskulle.renderer.AttributeDescription;
 import org.dragonskulle.renderer.SampledTexture;
 import org.dragonskulle.renderer.ShaderSet;
 import org.dragonskulle.renderer.components.Light;
+import org.dragonskulle.renderer.materials.MaterialVersion;
 import org.dragonskulle.renderer.materials.PBRMaterial;
 import org.joml.Matrix4fc;
 import org.joml.Vector4f;
@@ -32,7 +33,7 @@ import org.joml.Vector4f;
 public class PBRHighlightMaterial extends PBRMaterial {
 
     /** Map from various material properties and cached shadersets. */
-    private static final Map<Integer, ShaderSet> sShaderSets = new TreeMap<Integer, ShaderSet>();
+    private static final Map<Integer, ShaderSet> sShaderSets = new ConcurrentHashMap<>();
 
     /**
      * This is a modified shader set that appends extra options on top of the {@link
@@ -161,15 +162,26 @@ public class PBRHighlightMaterial extends PBRMaterial {
         return offset + OVERLAY_ALPHAMUL_OFFSET + 4;
     }
 
+    @Override
+    protected MaterialVersion addVersionProperties(MaterialVersion version) {
+        return super.addVersionProperties(version)
+                .add(mOverlayColour)
+                .add(mMinDist)
+                .add(mMaxDist)
+                .add(mMinLerp)
+                .add(mDistPow)
+                .add(mAlphaMul);
+    }
+
     @Override
     public ShaderSet getShaderSet() {
         Integer hash = hashShaderSet();
 
         ShaderSet ret = sShaderSets.get(hash);
 
+        // Renderer looks shader sets up from worker threads
         if (ret == null) {
-            ret = new HighlightShaderSet(this);
-            sShaderSets.put(hash, ret);
+            ret = sShaderSets.computeIfAbsent(hash, (__) -> new HighlightShaderSet(this));
         }
 
         return ret;
@@ -9,6 +9,7 @@ import lombok.experimental.Accessors;
 import org.dragonskulle.components.Component;
 import org.dragonskulle.components.IFrameUpdate;
 import org.dragonskulle.components.Transform3D;
+import org.dragonskulle.core.Engine;
 import org.dragonskulle.core.GameObject;
 import org.dragonskulle.core.Reference;
 import org.joml.Vector3f;
@@ -222,7 +223,13 @@ public class ArcPath extends Component implements IFrameUpdate {
 
             if (Reference.isValid(mUpdater)) {
                 for (float off = mSpawnStart; off < mSpawnEnd; off += mObjGap) {
-                    GameObject go = GameObject.instantiate(mTemplate, new Transform3D());
+                    // Arc objects churn a lot during attacks, so they are recycled
+                    GameObject go = Engine.getInstance().getPool(mTemplate).obtain();
+                    // Reused objects keep their last transform, so start from a fresh one
+                    Transform3D transform = go.getTransform(Transform3D.class);
+                    transform.setPosition(0, 0, 0);
+                    transform.setRotation(0, 0, 0);
+                    transform.setScale(1, 1, 1);
                     mGameObject.addChild(go);
                     mSpawnedObjects.add(new SpawnedEntry(go, off));
                 }
@@ -9,6 +9,7 @@ import lombok.experimental.Accessors;
 import org.dragonskulle.audio.components.AudioSource;
 import org.dragonskulle.components.Component;
 import org.dragonskulle.components.IFrameUpdate;
+import org.dragonskulle.components.IOnRecycle;
 import org.dragonskulle.components.IOnStart;
 import org.dragonskulle.core.Reference;
 
@@ -18,7 +19,8 @@ import org.dragonskulle.core.Reference;
  * @author Aurimas Blažulionis
  */
 @Accessors(prefix = "m")
-public class SoundEffectSource extends Component implements IOnStart, IFrameUpdate {
+public class SoundEffectSource extends Component
+        implements IOnStart, IFrameUpdate, IOnRecycle {
 
     /** List of sound effect descriptors to choose from. */
     private List<Reference<SoundEffectDescriptor>> mEffects = new ArrayList<>();
@@ -79,6 +81,18 @@ public class SoundEffectSource extends Component implements IOnStart, IFrameUpda
         }
     }
 
+    @Override
+    public void onRecycle() {
+        // onStart runs again on reuse, and adds a new audio source
+        if (Reference.isValid(mSource)) {
+            getGameObject().removeComponent(mSource.get());
+        }
+
+        mSource = null;
+        mEffects.clear();
+        mPlayed = false;
+    }
+
     @Override
     protected void onDestroy() {}
 }
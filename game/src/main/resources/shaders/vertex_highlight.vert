@@ -1,10 +1,7 @@
 #version 450
 #extension GL_ARB_separate_shader_objects : enable
 
-layout(push_constant) uniform PushConsts {
-	mat4 view;
-	mat4 proj;
-} consts;
+#include "frame_uniforms.glsl"
 
 layout(location = 0) in vec3 inPosition;
 layout(location = 1) in vec3 inNormal;
@@ -24,7 +21,7 @@ layout(location = 3) out float outDistPow;
 layout(location = 4) out float outMaxDist;
 
 void main() {
-	gl_Position = consts.proj * consts.view * model * vec4(inPosition, 1.0);
+	gl_Position = frame.proj * frame.view * model * vec4(inPosition, 1.0);
 	fragColor = vec4(inColor, 1.0) * instColor;
 	fragTexColor = instTexColor;
 	fragUV = inUV;
@@ -24,4 +24,20 @@ public class MaterialsTest {
             assertNotNull(res);
         }
     }
+
+    @Test
+    public void testLoadVertexHighlightVert() {
+        try (Resource<ShaderBuf> res =
+                ShaderBuf.getResource("vertex_highlight", ShaderKind.VERTEX_SHADER)) {
+            assertNotNull(res);
+        }
+    }
+
+    @Test
+    public void testLoadVertexHighlightFrag() {
+        try (Resource<ShaderBuf> res =
+                ShaderBuf.getResource("vertex_highlight", ShaderKind.FRAGMENT_SHADER)) {
+            assertNotNull(res);
+        }
+    }
 }
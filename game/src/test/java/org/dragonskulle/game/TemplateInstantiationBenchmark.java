@@ -0,0 +1,87 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.game;
+
+import java.util.concurrent.TimeUnit;
+import org.dragonskulle.assets.GLTF;
+import org.dragonskulle.core.GameObject;
+import org.dragonskulle.core.Resource;
+import org.dragonskulle.core.TemplateManager;
+import org.dragonskulle.core.TemplatePlan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures instantiation throughput of network templates.
+ *
+ * <p>Planned instantiation goes through {@link TemplateManager#instantiate}, the same path network
+ * spawns take. Unplanned instantiation clones the same registered template after its plan has
+ * been discarded.
+ *
+ * <p>Run with {@code java -cp <test classpath> org.openjdk.jmh.Main TemplateInstantiation}.
+ *
+ * @author DragonSkulle
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TemplateInstantiationBenchmark {
+
+    /** Name of the network template to spawn. */
+    @Param({"building", "player", "game_state", "attack_prop", "defence_prop"})
+    public String mTemplate;
+
+    /** Whether to spawn through a compiled {@link TemplatePlan}, or through the deep cloner. */
+    @Param({"true", "false"})
+    public boolean mPlanned;
+
+    private Resource<GLTF> mTemplatesGltf;
+    private TemplateManager mTemplates;
+    private GameObject mTemplateObject;
+    private int mTemplateId;
+
+    /** Load the network templates, and register the template to spawn. */
+    @Setup
+    public void setup() {
+        mTemplatesGltf = GLTF.getResource("network_templates");
+        mTemplateObject = mTemplatesGltf.get().getDefaultScene().findRootObject(mTemplate);
+
+        mTemplates = new TemplateManager();
+        mTemplateId = mTemplates.addObject(mTemplateObject);
+
+        if (!mPlanned) {
+            TemplatePlan.discard(mTemplateObject);
+        }
+    }
+
+    /** Free the loaded templates. */
+    @TearDown
+    public void tearDown() {
+        mTemplatesGltf.free();
+    }
+
+    /**
+     * Instantiate the template once.
+     *
+     * @return the new instance, so that it is not optimised away.
+     */
+    @Benchmark
+    public GameObject instantiate() {
+        if (mPlanned) {
+            return mTemplates.instantiate(mTemplateId);
+        }
+        return GameObject.instantiate(mTemplateObject);
+    }
+}
@@ -0,0 +1,146 @@
+/* (C) 2021 DragonSkulle */
+package org.dragonskulle.game.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.dragonskulle.components.TransformHex;
+import org.dragonskulle.game.map.HexagonTile.TileType;
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.junit.Test;
+
+/** Unit tests for the tile state layout, and update tracking of {@link TerrainTiles}. */
+public class TerrainTilesTest {
+    private static final int SIZE = 11;
+
+    /**
+     * Check whether a tile is dirty.
+     *
+     * @param tiles tiles to check.
+     * @param index index of the tile.
+     * @return {@code true} if the tile is among the dirty ones.
+     */
+    private static boolean isDirty(TerrainTiles tiles, int index) {
+        for (int i = 0; i < tiles.getDirtyCount(); i++) {
+            if (tiles.getDirty(i) == index) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fill every tile of the map with land.
+     *
+     * @param tiles tiles to fill.
+     * @param height height of the tiles.
+     */
+    private static void fill(TerrainTiles tiles, float height) {
+        for (int q = -SIZE / 2; q <= SIZE / 2; q++) {
+            for (int r = -SIZE / 2; r <= SIZE / 2; r++) {
+                tiles.setTile(tiles.index(q, r), TileType.LAND, height);
+            }
+        }
+    }
+
+    /** Test that indices map back to the same axial coordinates. */
+    @Test
+    public void indicesRoundTrip() {
+        TerrainTiles tiles = new TerrainTiles(SIZE, 0f);
+
+        int index = tiles.index(-3, 4);
+        assertEquals(-3, tiles.getQ(index));
+        assertEquals(4, tiles.getR(index));
+        assertEquals(-1, tiles.index(SIZE, 0));
+    }
+
+    /** Test that tiles are only dirty while their state changes. */
+    @Test
+    public void onlyChangesAreDirty() {
+        TerrainTiles tiles = new TerrainTiles(SIZE, 0f);
+        int index = tiles.index(1, 2);
+
+        tiles.setTile(index, TileType.LAND, 1f);
+        assertTrue(isDirty(tiles, index));
+        assertEquals(0f, tiles.getHeight(index), 0f);
+
+        tiles.step(1f);
+        tiles.step(1f);
+        tiles.clearDirty();
+        assertEquals(1f, tiles.getHeight(index), 0f);
+        assertEquals(1f, tiles.getFade(index), 0f);
+        assertEquals(0, tiles.getAnimatingCount());
+
+        // Setting the same state again is free, so highlights can be set every frame
+        tiles.setTile(index, TileType.LAND, 1f);
+        tiles.setHighlight(index, new Vector4f(0f));
+        tiles.step(1f);
+        assertEquals(0, tiles.getDirtyCount());
+
+        Vector4f colour = new Vector4f(1f, 0f, 0f, 0.5f);
+        tiles.setHighlight(index, colour);
+        tiles.step(0.01f);
+        assertEquals(1, tiles.getDirtyCount());
+        assertTrue(isDirty(tiles, index));
+        assertEquals(colour, tiles.getTargetHighlight(index, new Vector4f()));
+        assertTrue(tiles.getHighlight(index, new Vector4f()).x < 1f);
+    }
+
+    /** Test that tiles of every type stay densely packed when types change. */
+    @Test
+    public void instancesStayDense() {
+        TerrainTiles tiles = new TerrainTiles(SIZE, 0f);
+        int first = tiles.index(0, 0);
+        int second = tiles.index(0, 1);
+        int third = tiles.index(0, 2);
+
+        tiles.setTile(first, TileType.LAND, 0f);
+        tiles.setTile(second, TileType.LAND, 0f);
+        tiles.setTile(third, TileType.LAND, 0f);
+        tiles.clearDirty();
+
+        tiles.setTile(first, TileType.WATER, 0f);
+
+        assertEquals(2, tiles.getInstanceCount(TileType.LAND));
+        assertEquals(1, tiles.getInstanceCount(TileType.WATER));
+        assertEquals(TileType.WATER, tiles.getType(first));
+        assertEquals(0, tiles.getInstanceIndex(first));
+
+        // The last land tile moved into the freed instance, thus it needs rewriting
+        assertEquals(third, tiles.getInstanceTile(TileType.LAND, 0));
+        assertEquals(0, tiles.getInstanceIndex(third));
+        assertTrue(isDirty(tiles, third));
+        assertFalse(isDirty(tiles, second));
+        assertEquals(0f, tiles.getFade(first), 0f);
+    }
+
+    /** Test that rays resolve to tiles from their axial coordinates. */
+    @Test
+    public void picksTopSurfaces() {
+        TerrainTiles tiles = new TerrainTiles(SIZE, 0f);
+        fill(tiles, 0f);
+        tiles.step(1f);
+
+        Vector3f center = TransformHex.axialToCartesian(new Vector2f(2, -1), 0f, new Vector3f());
+        Vector3f origin = new Vector3f(center).add(0, 0, 10);
+        Vector3f down = new Vector3f(0, 0, -1);
+
+        assertEquals(tiles.index(2, -1), tiles.pick(origin, down));
+        assertEquals(-1, tiles.pick(origin, new Vector3f(0, 0, 1)));
+
+        // A raised tile in front hides the one behind it
+        int raised = tiles.index(1, -1);
+        tiles.setTargetHeight(raised, 5f);
+        tiles.step(1f);
+
+        Vector3f front = TransformHex.axialToCartesian(new Vector2f(1, -1), 5f, new Vector3f());
+        Vector3f dir = new Vector3f(center).sub(front).normalize().add(0, 0, -1);
+        Vector3f slanted = new Vector3f(front).fma(-2f, dir);
+
+        assertEquals(raised, tiles.pick(slanted, dir));
+        assertEquals(-1, tiles.pick(new Vector3f(100, 100, 10), down));
+    }
+}